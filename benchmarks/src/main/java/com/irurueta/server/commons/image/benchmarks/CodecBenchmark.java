@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.ImageFormat;
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageOrientation;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.ImageReaderResultCodec;
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of frames of results with typical camera
+ * metadata, location and hashes into a reused direct buffer.
+ * Run main method to execute all benchmarks and report the encoded bytes per
+ * result of each frame size afterwards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    /**
+     * Number of results per frame.
+     */
+    @Param({"1", "1000"})
+    public int size;
+
+    /**
+     * Results to be encoded.
+     */
+    private List<ImageReaderResult> mResults;
+
+    /**
+     * Codec.
+     */
+    private ImageReaderResultCodec mCodec;
+
+    /**
+     * Buffer where results are encoded.
+     */
+    private ByteBuffer mEncodeBuffer;
+
+    /**
+     * Buffer containing encoded results.
+     */
+    private ByteBuffer mDecodeBuffer;
+
+    /**
+     * Number of bytes of encoded results.
+     */
+    private int mEncodedLength;
+
+    /**
+     * Sets up results and encoded frame.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(0);
+        final String[] makers = {"Canon", "NIKON CORPORATION", "Apple",
+                "Some Maker"};
+        mResults = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            mResults.add(createResult(random,
+                    makers[random.nextInt(makers.length)]));
+        }
+
+        mCodec = new ImageReaderResultCodec();
+        mEncodeBuffer = ByteBuffer.allocateDirect(1 << 20);
+        mDecodeBuffer = ByteBuffer.allocateDirect(1 << 20);
+        mEncodedLength = mCodec.encode(mResults, mDecodeBuffer);
+        mDecodeBuffer.flip();
+    }
+
+    /**
+     * Encodes all results into a frame.
+     *
+     * @return number of written bytes.
+     */
+    @Benchmark
+    public int encode() {
+        mEncodeBuffer.clear();
+        return mCodec.encode(mResults, mEncodeBuffer);
+    }
+
+    /**
+     * Decodes all results of a frame.
+     *
+     * @return decoded results.
+     */
+    @Benchmark
+    public List<ImageReaderResult> decode() {
+        mDecodeBuffer.rewind();
+        return mCodec.decodeAll(mDecodeBuffer);
+    }
+
+    /**
+     * Runs all benchmarks of this class and reports encoded bytes per result
+     * of each number of results per frame.
+     *
+     * @param args arguments (ignored).
+     * @throws RunnerException      if benchmarks fail.
+     * @throws NoSuchFieldException never thrown.
+     */
+    public static void main(final String[] args) throws RunnerException,
+            NoSuchFieldException {
+        final Options options = new OptionsBuilder()
+                .include(CodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+
+        for (final String size : CodecBenchmark.class.getField("size")
+                .getAnnotation(Param.class).value()) {
+            final CodecBenchmark benchmark = new CodecBenchmark();
+            benchmark.size = Integer.parseInt(size);
+            benchmark.setUp();
+            System.out.println("encoded bytes per result (size " + size +
+                    "): " + (double) benchmark.mEncodedLength / benchmark.size);
+        }
+    }
+
+    /**
+     * Creates a result.
+     *
+     * @param random randomizer.
+     * @param maker  camera maker.
+     * @return created result.
+     */
+    private static ImageReaderResult createResult(final Random random,
+                                                  final String maker) {
+        final ImageMetadata metadata = new ImageMetadata();
+        metadata.setWidth(4000);
+        metadata.setHeight(3000);
+        metadata.setMaker(maker);
+        metadata.setModel(maker + " model " + random.nextInt(3));
+        metadata.setFocalLength(4.0 + random.nextInt(50));
+        metadata.setOrientation(ImageOrientation.TOP_LEFT);
+        metadata.setLocation(new GPSCoordinates(
+                -90.0 + 180.0 * random.nextDouble(),
+                -180.0 + 360.0 * random.nextDouble()));
+        metadata.setSoftware("software " + random.nextInt(5));
+        metadata.setExposureTime(1.0 / (1 + random.nextInt(1000)));
+        metadata.setFNumber(1.8);
+        metadata.setISO(100 * (1 + random.nextInt(32)));
+
+        final EnumMap<HashAlgorithm, byte[]> digests =
+                new EnumMap<>(HashAlgorithm.class);
+        final byte[] md5 = new byte[HashAlgorithm.MD5.getDigestLength()];
+        random.nextBytes(md5);
+        digests.put(HashAlgorithm.MD5, md5);
+        final byte[] crc = new byte[HashAlgorithm.CRC32.getDigestLength()];
+        random.nextBytes(crc);
+        digests.put(HashAlgorithm.CRC32, crc);
+        final HashResult hashes = HashResult.create(digests,
+                1000000 + random.nextInt(5000000), 0);
+
+        final ImageReaderResult result = new ImageReaderResult();
+        result.setValid(true);
+        result.setHashes(hashes);
+        result.setCrc(hashes.getValue(HashAlgorithm.CRC32));
+        result.setMd5(hashes.getBase64(HashAlgorithm.MD5));
+        result.setFileLength(hashes.getLength());
+        result.setLastModified(1500000000000L + random.nextInt());
+        result.setContentType("image/jpeg");
+        result.setImageFormat(ImageFormat.JPEG);
+        result.setMetadata(metadata);
+        return result;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.index.DigestIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lookups of contained and missing digests, and insertion of
+ * digests into a DigestIndex having an increasing number of entries.
+ * Missing digests are mostly rejected by the Bloom filter, so comparing
+ * getMissing with getContained shows how much probing the table costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=4g")
+@State(Scope.Benchmark)
+public class DigestIndexBenchmark {
+
+    /**
+     * Number of distinct digests used by lookups. Must be a power of 2.
+     */
+    private static final int LOOKUP_KEYS = 1 << 20;
+
+    /**
+     * Number of entries of the index.
+     */
+    @Param({"1000000", "10000000", "100000000"})
+    public int size;
+
+    /**
+     * Index containing size entries.
+     */
+    private DigestIndex mIndex;
+
+    /**
+     * Contained digests used by lookups.
+     */
+    private long[] mContained;
+
+    /**
+     * Missing digests used by lookups.
+     */
+    private long[] mMissing;
+
+    /**
+     * Position of next digest to be looked up.
+     */
+    private int mPosition;
+
+    /**
+     * Creates index and digests to be looked up.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(0);
+        mIndex = new DigestIndex(size);
+        mContained = new long[2 * LOOKUP_KEYS];
+        for (int i = 0; i < size; i++) {
+            final long high = random.nextLong();
+            final long low = random.nextLong();
+            mIndex.putIfAbsent(high, low, i);
+
+            // keep a sample of contained digests spread over the whole index
+            final int sample = i % LOOKUP_KEYS;
+            mContained[2 * sample] = high;
+            mContained[2 * sample + 1] = low;
+        }
+
+        mMissing = new long[2 * LOOKUP_KEYS];
+        for (int i = 0; i < mMissing.length; i++) {
+            mMissing[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Looks up a contained digest.
+     *
+     * @return id of digest.
+     */
+    @Benchmark
+    public int getContained() {
+        final int i = 2 * (mPosition++ & (LOOKUP_KEYS - 1));
+        return mIndex.get(mContained[i], mContained[i + 1]);
+    }
+
+    /**
+     * Looks up a missing digest.
+     *
+     * @return NOT_FOUND.
+     */
+    @Benchmark
+    public int getMissing() {
+        final int i = 2 * (mPosition++ & (LOOKUP_KEYS - 1));
+        return mIndex.get(mMissing[i], mMissing[i + 1]);
+    }
+
+    /**
+     * Inserts digests into an index having size entries.
+     */
+    @State(Scope.Benchmark)
+    public static class InsertState {
+
+        /**
+         * Number of digests inserted on each iteration.
+         */
+        static final int BATCH = 1 << 16;
+
+        /**
+         * Maximum number of batches inserted during a trial, so that index is
+         * never doubled while measuring.
+         */
+        static final int MAX_BATCHES = 16;
+
+        /**
+         * Index where digests are inserted.
+         */
+        DigestIndex mIndex;
+
+        /**
+         * Digests to be inserted.
+         */
+        long[] mDigests;
+
+        /**
+         * Position of next digest to be inserted.
+         */
+        int mPosition;
+
+        /**
+         * Creates digests to be inserted.
+         *
+         * @param benchmark benchmark state containing size.
+         */
+        @Setup(Level.Trial)
+        public void setUp(final DigestIndexBenchmark benchmark) {
+            final Random random = new Random(1);
+            mIndex = new DigestIndex(benchmark.size + MAX_BATCHES * BATCH);
+            for (int i = 0; i < benchmark.size; i++) {
+                mIndex.putIfAbsent(random.nextLong(), random.nextLong(), i);
+            }
+            mDigests = new long[2 * BATCH];
+        }
+
+        /**
+         * Creates a new batch of digests not yet inserted.
+         */
+        @Setup(Level.Iteration)
+        public void setUpIteration() {
+            final Random random = new Random(mIndex.getSize());
+            for (int i = 0; i < mDigests.length; i++) {
+                mDigests[i] = random.nextLong();
+            }
+            mPosition = 0;
+        }
+    }
+
+    /**
+     * Inserts a new digest. Each iteration inserts a whole batch of new
+     * digests, so score is time per batch of BATCH insertions.
+     *
+     * @param state insertion state.
+     * @return NOT_FOUND if digest was inserted.
+     */
+    @Benchmark
+    @Warmup(iterations = 3, batchSize = InsertState.BATCH)
+    @Measurement(iterations = 5, batchSize = InsertState.BATCH)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int putIfAbsent(final InsertState state) {
+        final int i = 2 * state.mPosition++;
+        return state.mIndex.putIfAbsent(state.mDigests[i],
+                state.mDigests[i + 1], state.mPosition);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.ReadOptions;
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.Hasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures computation of CRC and MD5 hashes of files of several sizes, as
+ * done by ImageReader when reading an image using default options.
+ * Unlike HashingBenchmark, data is read from a temporary file, so results
+ * include the cost of file access (usually served from the page cache).
+ * Both throughput and latency distribution are reported. Run main method, or
+ * use JMH -prof gc option, to also report allocation rate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileHashingBenchmark {
+
+    /**
+     * Size of hashed file in bytes.
+     */
+    @Param({"65536", "1048576", "16777216"})
+    public int fileSize;
+
+    /**
+     * Hasher computing same hashes as ImageReader using default options.
+     */
+    private Hasher mHasher;
+
+    /**
+     * File to be hashed.
+     */
+    private File mFile;
+
+    /**
+     * Creates file to be hashed containing random data.
+     *
+     * @throws IOException if file cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mHasher = new Hasher(ReadOptions.DEFAULT.getAllHashAlgorithms(),
+                ReadOptions.DEFAULT.getHashBufferSize());
+
+        final byte[] data = new byte[fileSize];
+        new Random(0).nextBytes(data);
+        mFile = File.createTempFile("hashing", ".bin");
+        try (OutputStream stream = new FileOutputStream(mFile)) {
+            stream.write(data);
+        }
+    }
+
+    /**
+     * Removes hashed file.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    /**
+     * Computes CRC and MD5 hashes of file.
+     *
+     * @return computed hashes.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Benchmark
+    public HashResult computeCrcAndMd5() throws IOException {
+        return mHasher.hash(mFile);
+    }
+
+    /**
+     * Runs all benchmarks of this class reporting allocation rate.
+     *
+     * @param args arguments (ignored).
+     * @throws RunnerException if benchmarks fail.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(FileHashingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.geo.GeoClusters;
+import com.irurueta.server.commons.image.geo.GeoPoints;
+import com.irurueta.server.commons.image.geo.LocationClusterer;
+import com.irurueta.server.commons.image.index.SpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures distance computations over a batch of locations, comparing
+ * per-pair haversine over GPSCoordinates objects against the structure of
+ * arrays kernels of GeoPoints, and measures clustering of locations.
+ * Locations are spread around a few cities, as in a photo library.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoDistanceBenchmark {
+
+    /**
+     * Number of locations.
+     */
+    @Param({"1000", "4000"})
+    public int size;
+
+    /**
+     * Locations as objects.
+     */
+    private GPSCoordinates[] mCoordinates;
+
+    /**
+     * Locations as structure of arrays.
+     */
+    private GeoPoints mPoints;
+
+    /**
+     * Clusterer of locations.
+     */
+    private LocationClusterer mClusterer;
+
+    /**
+     * Array where distances are stored.
+     */
+    private double[] mDistances;
+
+    /**
+     * Array where nearest locations are stored.
+     */
+    private int[] mNearest;
+
+    /**
+     * Sets up locations.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(0);
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        mCoordinates = new GPSCoordinates[size];
+        for (int i = 0; i < size; i++) {
+            final int city = random.nextInt(8);
+            latitudes[i] = -40.0 + 10.0 * city + 0.05 * random.nextGaussian();
+            longitudes[i] = -150.0 + 40.0 * city +
+                    0.05 * random.nextGaussian();
+            mCoordinates[i] = new GPSCoordinates(latitudes[i], longitudes[i]);
+        }
+        mPoints = new GeoPoints(latitudes, longitudes);
+        mClusterer = new LocationClusterer(1000.0, 5);
+        mDistances = new double[size];
+        mNearest = new int[size];
+    }
+
+    /**
+     * Finds nearest location of each location comparing all pairs with
+     * haversine over objects.
+     *
+     * @return sum of nearest distances.
+     */
+    @Benchmark
+    public double nearestHaversine() {
+        double sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < size; j++) {
+                if (i != j) {
+                    best = Math.min(best, SpatialIndex.distance(
+                            mCoordinates[i], mCoordinates[j]));
+                }
+            }
+            sum += best;
+        }
+        return sum;
+    }
+
+    /**
+     * Finds nearest location of each location using structure of arrays
+     * kernels.
+     *
+     * @return distances to nearest locations.
+     */
+    @Benchmark
+    public double[] nearestBatch() {
+        mPoints.nearest(mNearest, mDistances);
+        return mDistances;
+    }
+
+    /**
+     * Clusters all locations.
+     *
+     * @return found clusters.
+     */
+    @Benchmark
+    public GeoClusters cluster() {
+        return mClusterer.cluster(mPoints);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.Hasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of each hash algorithm for several read buffer sizes,
+ * and of computing all algorithms in a single pass.
+ * Data is kept in memory so that results are not affected by disk speed.
+ * Throughput in MB/s can be obtained by multiplying the score by the data
+ * size in MB.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashingBenchmark {
+
+    /**
+     * Algorithm to be measured.
+     */
+    @Param({"CRC32", "CRC32C", "MD5", "SHA256", "XXH64", "MURMUR3_128"})
+    public HashAlgorithm algorithm;
+
+    /**
+     * Size of read buffer in bytes.
+     */
+    @Param({"1024", "8192", "65536", "1048576"})
+    public int bufferSize;
+
+    /**
+     * Size of hashed data in bytes.
+     */
+    @Param({"16777216"})
+    public int dataSize;
+
+    /**
+     * Data to be hashed.
+     */
+    private byte[] mData;
+
+    /**
+     * Hasher computing a single algorithm.
+     */
+    private Hasher mHasher;
+
+    /**
+     * Hasher computing all algorithms.
+     */
+    private Hasher mFusedHasher;
+
+    /**
+     * Sets up data and hashers.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        mData = new byte[dataSize];
+        new Random(0).nextBytes(mData);
+        mHasher = new Hasher(EnumSet.of(algorithm), bufferSize);
+        mFusedHasher = new Hasher(EnumSet.allOf(HashAlgorithm.class),
+                bufferSize);
+    }
+
+    /**
+     * Hashes data using a single algorithm.
+     *
+     * @return hash result.
+     * @throws IOException if hashing fails.
+     */
+    @Benchmark
+    public HashResult hash() throws IOException {
+        return mHasher.hash(new ByteArrayInputStream(mData));
+    }
+
+    /**
+     * Hashes data using all algorithms in a single pass. Score does not
+     * depend on the algorithm parameter.
+     *
+     * @return hash result.
+     * @throws IOException if hashing fails.
+     */
+    @Benchmark
+    public HashResult hashAllFused() throws IOException {
+        return mFusedHasher.hash(new ByteArrayInputStream(mData));
+    }
+}
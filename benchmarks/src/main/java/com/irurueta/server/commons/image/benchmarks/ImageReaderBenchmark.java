@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.InvalidImageException;
+import com.irurueta.server.commons.image.ReadOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ImageReader operations on test images of each supported format.
+ * Benchmarks measure a full read using default options (metadata, EXIF and
+ * CRC and MD5 hashes), a read of metadata and EXIF tags only, and a validity
+ * check of a file.
+ * Both throughput and latency distribution are reported. Run main method, or
+ * use JMH -prof gc option, to also report allocation rate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageReaderBenchmark {
+
+    /**
+     * Folder containing test images, relative to the root folder of the
+     * library.
+     */
+    private static final String IMAGES_FOLDER =
+            "src/test/java/com/irurueta/server/commons/image/";
+
+    /**
+     * Name of image to be read. JPEG images contain EXIF tags, carlos1.jpg
+     * also contains a location.
+     */
+    @Param({"batllo1.jpg", "carlos1.jpg", "polo.png", "Svalbard.bmp"})
+    public String image;
+
+    /**
+     * Reader.
+     */
+    private ImageReader mReader;
+
+    /**
+     * Options to read metadata and EXIF tags without computing hashes.
+     */
+    private ReadOptions mMetadataOptions;
+
+    /**
+     * Image file to be read.
+     */
+    private File mFile;
+
+    /**
+     * Sets up reader and image file.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        mReader = new ImageReader.Builder().build();
+        mMetadataOptions = new ReadOptions.Builder()
+                .setComputeCrcEnabled(false)
+                .setComputeMd5Enabled(false).build();
+        mFile = new File(IMAGES_FOLDER, image);
+    }
+
+    /**
+     * Reads an image using default options.
+     *
+     * @return read result.
+     * @throws InvalidImageException if image is not valid.
+     * @throws IOException           if an I/O error occurs.
+     */
+    @Benchmark
+    public ImageReaderResult readImage() throws InvalidImageException,
+            IOException {
+        return mReader.readImage(mFile);
+    }
+
+    /**
+     * Reads image metadata and, for JPEG images, EXIF tags, without computing
+     * any hash.
+     *
+     * @return read result.
+     * @throws InvalidImageException if image is not valid.
+     * @throws IOException           if an I/O error occurs.
+     */
+    @Benchmark
+    public ImageReaderResult readMetadata() throws InvalidImageException,
+            IOException {
+        return mReader.readImage(mFile, mMetadataOptions);
+    }
+
+    /**
+     * Checks whether image file is valid.
+     *
+     * @return true if file is valid.
+     * @throws InvalidImageException if image is not valid.
+     * @throws IOException           if an I/O error occurs.
+     */
+    @Benchmark
+    public boolean checkValidFile() throws InvalidImageException,
+            IOException {
+        return ImageReader.checkValidFile(mFile);
+    }
+
+    /**
+     * Runs all benchmarks of this class reporting allocation rate.
+     *
+     * @param args arguments (ignored).
+     * @throws RunnerException if benchmarks fail.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ImageReaderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
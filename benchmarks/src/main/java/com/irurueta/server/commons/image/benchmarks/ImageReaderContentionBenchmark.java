@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.InvalidImageException;
+import com.irurueta.server.commons.image.ReadOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures contention of ImageReader configuration when many threads read
+ * images at the same time.
+ * Benchmarks compare reading the shared default options of a reader, reading
+ * with per-call immutable options, and reading while another thread keeps
+ * changing the default options.
+ * Run main method to execute all benchmarks using 1, 8 and 64 threads, or
+ * use JMH -t option to choose a different number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageReaderContentionBenchmark {
+
+    /**
+     * Number of threads used by main method.
+     */
+    private static final int[] THREADS = {1, 8, 64};
+
+    /**
+     * Image to be read, relative to the root folder of the library.
+     */
+    @Param({"src/test/java/com/irurueta/server/commons/image/polo.png"})
+    public String imagePath;
+
+    /**
+     * Reader shared by all threads.
+     */
+    private ImageReader mReader;
+
+    /**
+     * Image file to be read.
+     */
+    private File mFile;
+
+    /**
+     * Sets up shared reader.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        mReader = new ImageReader.Builder().build();
+        mFile = new File(imagePath);
+    }
+
+    /**
+     * Per-thread options, so that each thread has different hashing needs.
+     */
+    @State(Scope.Thread)
+    public static class ThreadOptions {
+
+        /**
+         * Options of a thread.
+         */
+        private ReadOptions mOptions;
+
+        /**
+         * Randomly chooses options of a thread.
+         */
+        @Setup(Level.Trial)
+        public void setUp() {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            mOptions = new ReadOptions.Builder()
+                    .setComputeCrcEnabled(random.nextBoolean())
+                    .setComputeMd5Enabled(random.nextBoolean()).build();
+        }
+    }
+
+    /**
+     * Reads configuration flags of shared reader, as done on every image read
+     * using default options.
+     *
+     * @return configuration flags.
+     */
+    @Benchmark
+    public int readDefaultConfiguration() {
+        return (mReader.isComputeCrcEnabled() ? 1 : 0) |
+                (mReader.isComputeMd5Enabled() ? 2 : 0);
+    }
+
+    /**
+     * Reads configuration flags while they are concurrently modified, which
+     * is the worst case for shared mutable configuration.
+     *
+     * @return configuration flags.
+     */
+    @Benchmark
+    public int readAndWriteDefaultConfiguration() {
+        if (ThreadLocalRandom.current().nextInt(64) == 0) {
+            mReader.setComputeCrcEnabled(!mReader.isComputeCrcEnabled());
+        }
+        return readDefaultConfiguration();
+    }
+
+    /**
+     * Reads an image using default options of shared reader.
+     *
+     * @return read result.
+     * @throws InvalidImageException if image is not valid.
+     * @throws IOException           if an I/O error occurs.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ImageReaderResult readImageDefaultOptions()
+            throws InvalidImageException, IOException {
+        return mReader.readImage(mFile);
+    }
+
+    /**
+     * Reads an image using options of current thread.
+     *
+     * @param options options of current thread.
+     * @return read result.
+     * @throws InvalidImageException if image is not valid.
+     * @throws IOException           if an I/O error occurs.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ImageReaderResult readImageThreadOptions(
+            final ThreadOptions options) throws InvalidImageException,
+            IOException {
+        return mReader.readImage(mFile, options.mOptions);
+    }
+
+    /**
+     * Runs all benchmarks of this class using 1, 8 and 64 threads.
+     *
+     * @param args arguments (ignored).
+     * @throws RunnerException if benchmarks fail.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        for (final int threads : THREADS) {
+            final Options options = new OptionsBuilder()
+                    .include(ImageReaderContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.store.ColumnStatistics;
+import com.irurueta.server.commons.image.store.DictionaryField;
+import com.irurueta.server.commons.image.store.MetadataStore;
+import com.irurueta.server.commons.image.store.NumericField;
+import com.irurueta.server.commons.image.store.RowSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures typical reporting queries over a large collection of image
+ * metadata, comparing iteration over ImageMetadata objects against scans of
+ * a MetadataStore.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class MetadataStoreBenchmark {
+
+    /**
+     * Camera makers of generated metadata.
+     */
+    private static final String[] MAKERS = {"Canon", "NIKON", "Apple", "SONY",
+            "FUJIFILM", "samsung"};
+
+    /**
+     * Number of images.
+     */
+    @Param({"1000000"})
+    public int size;
+
+    /**
+     * Metadata as objects.
+     */
+    private ImageMetadata[] mMetadata;
+
+    /**
+     * Metadata as columns.
+     */
+    private MetadataStore mStore;
+
+    /**
+     * Sets up metadata.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        final Random random = new Random(0);
+        mMetadata = new ImageMetadata[size];
+        final MetadataStore.Builder builder = new MetadataStore.Builder();
+        for (int i = 0; i < size; i++) {
+            final ImageMetadata metadata = new ImageMetadata();
+            metadata.setWidth(640 + random.nextInt(4000));
+            metadata.setHeight(480 + random.nextInt(3000));
+            metadata.setMaker(MAKERS[random.nextInt(MAKERS.length)]);
+            if (random.nextInt(10) > 0) {
+                metadata.setISO(50 * (1 + random.nextInt(64)));
+                metadata.setFocalLength(4.0 + 200.0 * random.nextDouble());
+            }
+            mMetadata[i] = metadata;
+            builder.add(metadata);
+        }
+        mStore = builder.build();
+    }
+
+    /**
+     * Counts images by maker iterating objects.
+     *
+     * @return counts by maker.
+     */
+    @Benchmark
+    public Map<String, Integer> countByMakerObjects() {
+        final Map<String, Integer> result = new HashMap<>();
+        for (final ImageMetadata metadata : mMetadata) {
+            final Integer count = result.get(metadata.getMaker());
+            result.put(metadata.getMaker(), count != null ? count + 1 : 1);
+        }
+        return result;
+    }
+
+    /**
+     * Counts images by maker scanning columns.
+     *
+     * @return counts by maker code.
+     */
+    @Benchmark
+    public int[] countByMakerColumns() {
+        return mStore.countBy(DictionaryField.MAKER, null);
+    }
+
+    /**
+     * Computes ISO histogram of Canon images iterating objects.
+     *
+     * @return histogram.
+     */
+    @Benchmark
+    public int[] isoHistogramObjects() {
+        final int[] result = new int[8];
+        for (final ImageMetadata metadata : mMetadata) {
+            final Integer iso = metadata.getISO();
+            if (iso != null && "Canon".equals(metadata.getMaker()) &&
+                    iso <= 3200) {
+                result[Math.min(iso / 400, 7)]++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes ISO histogram of Canon images scanning columns.
+     *
+     * @return histogram.
+     */
+    @Benchmark
+    public int[] isoHistogramColumns() {
+        final RowSet canon = mStore.filterEquals(DictionaryField.MAKER,
+                "Canon");
+        return mStore.histogram(NumericField.ISO, 0.0, 3200.0, 8, canon);
+    }
+
+    /**
+     * Computes mean focal length of wide images iterating objects.
+     *
+     * @return mean focal length.
+     */
+    @Benchmark
+    public double meanFocalLengthObjects() {
+        double sum = 0.0;
+        int count = 0;
+        for (final ImageMetadata metadata : mMetadata) {
+            final Double focalLength = metadata.getFocalLength();
+            if (focalLength != null && metadata.getWidth() >= 2000) {
+                sum += focalLength;
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    /**
+     * Computes mean focal length of wide images scanning columns.
+     *
+     * @return mean focal length.
+     */
+    @Benchmark
+    public double meanFocalLengthColumns() {
+        final RowSet wide = mStore.filterRange(NumericField.WIDTH, 2000.0,
+                Double.POSITIVE_INFINITY);
+        final ColumnStatistics statistics = mStore.statistics(
+                NumericField.FOCAL_LENGTH, wide);
+        return statistics.getMean();
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageOrientation;
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.InvalidImageException;
+import com.irurueta.server.commons.image.ThumbnailCreator;
+import com.irurueta.server.commons.image.ThumbnailFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures memory allocated by each thumbnail generation in steady state,
+ * with and without buffer pooling, for a fixed input image and thumbnail
+ * size.
+ * Run main method, which enables the GC profiler and prints the normalized
+ * allocation rate (bytes allocated per generated thumbnail) of each
+ * combination of parameters, along with the reduction achieved by pooling.
+ * JMH options (i.e. -p image=polo.png) can be provided as arguments of main.
+ * Off-heap decoding of input images can be compared by providing
+ * -p offHeap=false,true.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ThumbnailAllocationBenchmark {
+
+    /**
+     * Folder containing test images, relative to the root folder of the
+     * library.
+     */
+    private static final String IMAGES_FOLDER =
+            "src/test/java/com/irurueta/server/commons/image/";
+
+    /**
+     * Suffix of the name of the secondary result containing normalized
+     * allocation rate, as reported by GC profiler.
+     */
+    private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    /**
+     * Indicates whether buffer pooling is enabled.
+     */
+    @Param({"false", "true"})
+    public boolean pooling;
+
+    /**
+     * Indicates whether input images are decoded off-heap.
+     */
+    @Param({"false"})
+    public boolean offHeap;
+
+    /**
+     * Name of input image.
+     */
+    @Param({"abishek.jpg"})
+    public String image;
+
+    /**
+     * Length in pixels of largest side of generated thumbnail.
+     */
+    @Param({"256"})
+    public int size;
+
+    /**
+     * Format of generated thumbnail.
+     */
+    @Param({"JPEG"})
+    public ThumbnailFormat format;
+
+    /**
+     * Orientation of input image. RIGHT_TOP also requires rotating the
+     * scaled image.
+     */
+    @Param({"TOP_LEFT", "RIGHT_TOP"})
+    public ImageOrientation orientation;
+
+    /**
+     * Creator generating thumbnails.
+     */
+    private ThumbnailCreator mCreator;
+
+    /**
+     * Input image file.
+     */
+    private File mInputFile;
+
+    /**
+     * File where thumbnails are stored.
+     */
+    private File mOutputFile;
+
+    /**
+     * Width of thumbnails.
+     */
+    private int mWidth;
+
+    /**
+     * Height of thumbnails.
+     */
+    private int mHeight;
+
+    /**
+     * Sets up creator, thumbnail size and files.
+     *
+     * @throws InvalidImageException if input image is not valid.
+     * @throws IOException           if an I/O error occurs.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws InvalidImageException, IOException {
+        mCreator = new ThumbnailCreator.Builder()
+                .setBufferPoolingEnabled(pooling)
+                .setOffHeapDecodingEnabled(offHeap).build();
+        mInputFile = new File(IMAGES_FOLDER, image);
+        mOutputFile = File.createTempFile("thumbnail",
+                "." + format.getValue());
+
+        final ImageMetadata metadata = ImageReader.getInstance()
+                .readImage(mInputFile).getMetadata();
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        if (orientation == ImageOrientation.RIGHT_TOP) {
+            final int tmp = width;
+            width = height;
+            height = tmp;
+        }
+        final double scale = Math.min(1.0,
+                (double) size / Math.max(width, height));
+        mWidth = Math.max(1, (int) (width * scale));
+        mHeight = Math.max(1, (int) (height * scale));
+    }
+
+    /**
+     * Removes generated thumbnail.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mOutputFile.delete();
+    }
+
+    /**
+     * Generates and saves a thumbnail.
+     *
+     * @return generated thumbnail file.
+     * @throws IOException          if an I/O error occurs.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    @Benchmark
+    public File generateAndSaveThumbnail() throws IOException,
+            InterruptedException {
+        mCreator.generateAndSaveThumbnail(mInputFile, orientation,
+                mOutputFile, mWidth, mHeight, format);
+        return mOutputFile;
+    }
+
+    /**
+     * Runs all benchmarks of this class with the GC profiler and prints the
+     * bytes allocated per thumbnail with and without pooling.
+     *
+     * @param args JMH command line options.
+     * @throws RunnerException             if benchmarks fail.
+     * @throws CommandLineOptionException if arguments are not valid.
+     */
+    public static void main(final String[] args) throws RunnerException,
+            CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(ThumbnailAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        final Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.println("Bytes allocated per thumbnail:");
+        for (final RunResult result : results) {
+            final BenchmarkParams params = result.getParams();
+            if (Boolean.parseBoolean(params.getParam("pooling"))) {
+                continue;
+            }
+            final double unpooled = getAllocatedBytes(result);
+            final double pooled = getAllocatedBytes(
+                    findPooled(results, params));
+            System.out.printf("%s %s %s %s offHeap=%s: unpooled=%.0f B/op, " +
+                            "pooled=%.0f B/op, reduction=%.1f%%%n",
+                    params.getParam("image"), params.getParam("size"),
+                    params.getParam("format"), params.getParam("orientation"),
+                    params.getParam("offHeap"), unpooled, pooled, unpooled > 0.0 ?
+                            100.0 * (unpooled - pooled) / unpooled : 0.0);
+        }
+    }
+
+    /**
+     * Finds result of the pooled run having same parameters as provided
+     * unpooled run.
+     *
+     * @param results results of all runs.
+     * @param params  parameters of an unpooled run.
+     * @return result of pooled run or null if not found.
+     */
+    private static RunResult findPooled(final Collection<RunResult> results,
+                                        final BenchmarkParams params) {
+        for (final RunResult result : results) {
+            final BenchmarkParams other = result.getParams();
+            if (Boolean.parseBoolean(other.getParam("pooling")) &&
+                    other.getParam("image").equals(params.getParam("image")) &&
+                    other.getParam("size").equals(params.getParam("size")) &&
+                    other.getParam("format").equals(
+                            params.getParam("format")) &&
+                    other.getParam("orientation").equals(
+                            params.getParam("orientation")) &&
+                    other.getParam("offHeap").equals(
+                            params.getParam("offHeap"))) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns normalized allocation rate of a run.
+     *
+     * @param result result of a run (optional).
+     * @return bytes allocated per operation or NaN if not available.
+     */
+    private static double getAllocatedBytes(final RunResult result) {
+        if (result == null) {
+            return Double.NaN;
+        }
+        for (final String name : result.getSecondaryResults().keySet()) {
+            // name is prefixed by a separator depending on JMH version
+            if (name.endsWith(ALLOC_RATE_NORM)) {
+                final Result<?> secondaryResult =
+                        result.getSecondaryResults().get(name);
+                return secondaryResult.getScore();
+            }
+        }
+        return Double.NaN;
+    }
+}
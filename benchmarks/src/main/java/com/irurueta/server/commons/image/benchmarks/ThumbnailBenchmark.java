@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageOrientation;
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.InvalidImageException;
+import com.irurueta.server.commons.image.ThumbnailCreator;
+import com.irurueta.server.commons.image.ThumbnailFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures thumbnail generation for input images of several formats, several
+ * thumbnail sizes, output formats and input orientations.
+ * Thumbnail size is the length of the largest side of generated thumbnails,
+ * which keep aspect ratio of input images, and is limited to the size of input
+ * images.
+ * Both throughput and latency distribution are reported. Run main method, or
+ * use JMH -prof gc option, to also report allocation rate.
+ * Running all combinations takes a long time, use JMH -p option to choose
+ * parameter values (i.e. -p image=polo.png -p orientation=TOP_LEFT).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThumbnailBenchmark {
+
+    /**
+     * Folder containing test images, relative to the root folder of the
+     * library.
+     */
+    private static final String IMAGES_FOLDER =
+            "src/test/java/com/irurueta/server/commons/image/";
+
+    /**
+     * Name of input image.
+     */
+    @Param({"batllo1.jpg", "polo.png", "Svalbard.bmp"})
+    public String image;
+
+    /**
+     * Length in pixels of largest side of generated thumbnail.
+     */
+    @Param({"64", "256", "1024"})
+    public int size;
+
+    /**
+     * Format of generated thumbnail.
+     */
+    @Param({"JPEG", "PNG"})
+    public ThumbnailFormat format;
+
+    /**
+     * Orientation of input image. Only TOP_LEFT does not require rotation,
+     * RIGHT_TOP also exchanges width and height.
+     */
+    @Param({"TOP_LEFT", "RIGHT_TOP", "BOTTOM_RIGHT"})
+    public ImageOrientation orientation;
+
+    /**
+     * Creator generating thumbnails.
+     */
+    private ThumbnailCreator mCreator;
+
+    /**
+     * Input image file.
+     */
+    private File mInputFile;
+
+    /**
+     * File where thumbnails are stored.
+     */
+    private File mOutputFile;
+
+    /**
+     * Width of thumbnails.
+     */
+    private int mWidth;
+
+    /**
+     * Height of thumbnails.
+     */
+    private int mHeight;
+
+    /**
+     * Sets up thumbnail size and files.
+     *
+     * @throws InvalidImageException if input image is not valid.
+     * @throws IOException           if an I/O error occurs.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws InvalidImageException, IOException {
+        mCreator = ThumbnailCreator.getInstance();
+        mInputFile = new File(IMAGES_FOLDER, image);
+        mOutputFile = File.createTempFile("thumbnail",
+                "." + format.getValue());
+
+        final ImageMetadata metadata = ImageReader.getInstance()
+                .readImage(mInputFile).getMetadata();
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        if (orientation == ImageOrientation.RIGHT_TOP) {
+            final int tmp = width;
+            width = height;
+            height = tmp;
+        }
+        final double scale = Math.min(1.0,
+                (double) size / Math.max(width, height));
+        mWidth = Math.max(1, (int) (width * scale));
+        mHeight = Math.max(1, (int) (height * scale));
+    }
+
+    /**
+     * Removes generated thumbnail.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mOutputFile.delete();
+    }
+
+    /**
+     * Generates and saves a thumbnail.
+     *
+     * @return generated thumbnail file.
+     * @throws IOException          if an I/O error occurs.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    @Benchmark
+    public File generateAndSaveThumbnail() throws IOException,
+            InterruptedException {
+        mCreator.generateAndSaveThumbnail(mInputFile, orientation,
+                mOutputFile, mWidth, mHeight, format);
+        return mOutputFile;
+    }
+
+    /**
+     * Runs all benchmarks of this class reporting allocation rate.
+     *
+     * @param args arguments (ignored).
+     * @throws RunnerException if benchmarks fail.
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(ThumbnailBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks;
+
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.Hasher;
+import com.irurueta.server.commons.image.hash.TreeHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures wall-clock time to hash a large file sequentially and in parallel
+ * chunks using an increasing number of threads.
+ * The file is written once before the benchmark, so after the first
+ * iteration it is usually served from the OS page cache and results reflect
+ * hashing speed rather than disk speed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeHashingBenchmark {
+
+    /**
+     * Algorithms to be computed, separated by "+".
+     */
+    @Param({"CRC32", "CRC32+MD5"})
+    public String algorithms;
+
+    /**
+     * Number of threads of the pool hashing chunks.
+     */
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    /**
+     * Size of hashed file in bytes.
+     */
+    @Param({"268435456"})
+    public int fileSize;
+
+    /**
+     * Size of chunks in bytes.
+     */
+    @Param({"4194304"})
+    public int chunkSize;
+
+    /**
+     * Hashed file.
+     */
+    private File mFile;
+
+    /**
+     * Pool hashing chunks.
+     */
+    private ForkJoinPool mPool;
+
+    /**
+     * Sequential hasher.
+     */
+    private Hasher mHasher;
+
+    /**
+     * Tree hasher.
+     */
+    private TreeHasher mTreeHasher;
+
+    /**
+     * Creates hashed file and hashers.
+     *
+     * @throws IOException if file cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("tree-hash", ".bin");
+        final Random random = new Random(0);
+        final byte[] buffer = new byte[1 << 20];
+        try (final OutputStream stream = new FileOutputStream(mFile)) {
+            for (int written = 0; written < fileSize;
+                 written += buffer.length) {
+                random.nextBytes(buffer);
+                stream.write(buffer, 0, Math.min(buffer.length,
+                        fileSize - written));
+            }
+        }
+
+        final EnumSet<HashAlgorithm> set = EnumSet.noneOf(HashAlgorithm.class);
+        for (final String value : algorithms.split("\\+")) {
+            set.add(HashAlgorithm.valueOf(value));
+        }
+        mPool = new ForkJoinPool(parallelism);
+        mHasher = new Hasher(set, Hasher.DEFAULT_BUFFER_SIZE);
+        mTreeHasher = new TreeHasher(set, Hasher.DEFAULT_BUFFER_SIZE,
+                chunkSize, mPool);
+    }
+
+    /**
+     * Deletes hashed file and stops pool.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mPool.shutdown();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    /**
+     * Hashes file sequentially. Score does not depend on parallelism.
+     *
+     * @return hash result.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Benchmark
+    public HashResult sequential() throws IOException {
+        return mHasher.hash(mFile);
+    }
+
+    /**
+     * Hashes file in parallel chunks.
+     *
+     * @return hash result.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Benchmark
+    public HashResult tree() throws IOException {
+        return mTreeHasher.hash(mFile);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.corpus;
+
+import com.irurueta.server.commons.image.ImageFormat;
+import com.irurueta.server.commons.image.ImageOrientation;
+
+import java.io.File;
+
+/**
+ * Describes a file of a synthetic corpus.
+ * Instances are immutable.
+ */
+public class CorpusFile {
+
+    /**
+     * Image file.
+     */
+    private final File mFile;
+
+    /**
+     * Image format.
+     */
+    private final ImageFormat mFormat;
+
+    /**
+     * Size class of image.
+     */
+    private final SizeClass mSizeClass;
+
+    /**
+     * Amount of EXIF metadata.
+     */
+    private final ExifRichness mExif;
+
+    /**
+     * Orientation stored in EXIF metadata or null if not stored.
+     */
+    private final ImageOrientation mOrientation;
+
+    /**
+     * Variant of file.
+     */
+    private final Variant mVariant;
+
+    /**
+     * Constructor.
+     *
+     * @param file        image file.
+     * @param format      image format.
+     * @param sizeClass   size class of image.
+     * @param exif        amount of EXIF metadata.
+     * @param orientation orientation stored in EXIF metadata or null.
+     * @param variant     variant of file.
+     */
+    CorpusFile(final File file, final ImageFormat format,
+               final SizeClass sizeClass, final ExifRichness exif,
+               final ImageOrientation orientation, final Variant variant) {
+        mFile = file;
+        mFormat = format;
+        mSizeClass = sizeClass;
+        mExif = exif;
+        mOrientation = orientation;
+        mVariant = variant;
+    }
+
+    /**
+     * Returns image file.
+     *
+     * @return image file.
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Returns image format.
+     *
+     * @return image format.
+     */
+    public ImageFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Returns size class of image.
+     *
+     * @return size class of image.
+     */
+    public SizeClass getSizeClass() {
+        return mSizeClass;
+    }
+
+    /**
+     * Returns width of image in pixels.
+     *
+     * @return width of image in pixels.
+     */
+    public int getWidth() {
+        return mSizeClass.getWidth();
+    }
+
+    /**
+     * Returns height of image in pixels.
+     *
+     * @return height of image in pixels.
+     */
+    public int getHeight() {
+        return mSizeClass.getHeight();
+    }
+
+    /**
+     * Returns amount of EXIF metadata.
+     *
+     * @return amount of EXIF metadata.
+     */
+    public ExifRichness getExif() {
+        return mExif;
+    }
+
+    /**
+     * Returns orientation stored in EXIF metadata.
+     *
+     * @return orientation or null if not stored.
+     */
+    public ImageOrientation getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * Returns variant of file.
+     *
+     * @return variant of file.
+     */
+    public Variant getVariant() {
+        return mVariant;
+    }
+
+    /**
+     * Indicates whether file is an intact image.
+     *
+     * @return true if file is an intact image, false otherwise.
+     */
+    public boolean isIntact() {
+        return mVariant.isIntact();
+    }
+
+    /**
+     * Returns name of file.
+     *
+     * @return name of file.
+     */
+    @Override
+    public String toString() {
+        return mFile.getName();
+    }
+}
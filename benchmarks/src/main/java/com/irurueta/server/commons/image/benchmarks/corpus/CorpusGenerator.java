@@ -0,0 +1,780 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.corpus;
+
+import com.irurueta.server.commons.image.ImageFormat;
+import com.irurueta.server.commons.image.ImageOrientation;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.common.RationalNumber;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates deterministic corpora of synthetic JPEG, PNG, GIF and BMP images,
+ * so that benchmarks and load tests can run on realistic and reproducible
+ * data without network access.
+ * A corpus contains, for each selected format and size class, a baseline
+ * image and a progressive (or interlaced) image when the format supports it.
+ * Using the smallest selected size class (but at least SMALL if selected), it
+ * also contains JPEG images having each amount of EXIF metadata and each of
+ * the 8 EXIF orientations, and truncated, corrupted and garbage files of each
+ * format.
+ * Pixels combine smooth gradients, rectangles and noise, so that images
+ * compress like photos rather than like flat synthetic images. Generated
+ * files only depend on the seed and on the image encoders of the JVM, and a
+ * manifest describing all files is written along with them.
+ * Run main method to generate a corpus from command line.
+ */
+public class CorpusGenerator {
+
+    /**
+     * Default seed.
+     */
+    public static final long DEFAULT_SEED = 0x5EEDL;
+
+    /**
+     * Name of manifest file describing all files of a corpus.
+     */
+    public static final String MANIFEST = "corpus.csv";
+
+    /**
+     * Length in bytes of maker notes of images having MAKER_NOTES EXIF
+     * richness. EXIF metadata of JPEG images must fit into a 64KB segment.
+     */
+    public static final int MAKER_NOTE_LENGTH = 48 * 1024;
+
+    /**
+     * Quality of generated JPEG images.
+     */
+    private static final float JPEG_QUALITY = 0.9f;
+
+    /**
+     * Number of rectangles drawn on each image.
+     */
+    private static final int RECTANGLES = 12;
+
+    /**
+     * Number of levels of each color channel in GIF palettes.
+     */
+    private static final int PALETTE_LEVELS = 6;
+
+    /**
+     * Camera makers and models stored in EXIF metadata.
+     */
+    private static final String[][] CAMERAS = {
+            {"Canon", "Canon EOS 5D Mark IV"},
+            {"NIKON CORPORATION", "NIKON D850"},
+            {"Apple", "iPhone 12"},
+            {"SONY", "ILCE-7M3"},
+            {"samsung", "SM-G991B"},
+            {"FUJIFILM", "X-T4"}
+    };
+
+    /**
+     * Seed of generated corpora.
+     */
+    private final long mSeed;
+
+    /**
+     * Size classes of generated images.
+     */
+    private final Set<SizeClass> mSizeClasses;
+
+    /**
+     * Formats of generated images.
+     */
+    private final Set<ImageFormat> mFormats;
+
+    /**
+     * Constructor.
+     *
+     * @param builder builder containing configuration.
+     */
+    private CorpusGenerator(final Builder builder) {
+        mSeed = builder.mSeed;
+        mSizeClasses = Collections.unmodifiableSet(
+                EnumSet.copyOf(builder.mSizeClasses));
+        mFormats = Collections.unmodifiableSet(
+                EnumSet.copyOf(builder.mFormats));
+    }
+
+    /**
+     * Returns seed of generated corpora.
+     *
+     * @return seed of generated corpora.
+     */
+    public long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * Returns size classes of generated images.
+     *
+     * @return size classes of generated images.
+     */
+    public Set<SizeClass> getSizeClasses() {
+        return mSizeClasses;
+    }
+
+    /**
+     * Returns formats of generated images.
+     *
+     * @return formats of generated images.
+     */
+    public Set<ImageFormat> getFormats() {
+        return mFormats;
+    }
+
+    /**
+     * Returns files of a corpus without generating them.
+     *
+     * @param folder folder where files would be generated.
+     * @return files of corpus.
+     */
+    public List<CorpusFile> plan(final File folder) {
+        final Map<String, CorpusFile> files = new LinkedHashMap<>();
+        final SizeClass detailSize = getDetailSizeClass();
+        for (final ImageFormat format : mFormats) {
+            final boolean jpeg = format == ImageFormat.JPEG;
+            final ExifRichness exif = jpeg ? ExifRichness.BASIC :
+                    ExifRichness.NONE;
+            final ImageOrientation orientation = jpeg ?
+                    ImageOrientation.TOP_LEFT : null;
+            for (final SizeClass size : mSizeClasses) {
+                add(files, folder, format, size, exif, orientation,
+                        Variant.BASELINE);
+                if (format != ImageFormat.BMP) {
+                    add(files, folder, format, size, exif, orientation,
+                            Variant.PROGRESSIVE);
+                }
+            }
+
+            if (jpeg) {
+                for (final ExifRichness richness : ExifRichness.values()) {
+                    add(files, folder, format, detailSize, richness,
+                            richness != ExifRichness.NONE ? orientation : null,
+                            Variant.BASELINE);
+                }
+                for (final ImageOrientation o : ImageOrientation.values()) {
+                    if (o != ImageOrientation.UNKNOWN) {
+                        add(files, folder, format, detailSize, exif, o,
+                                Variant.BASELINE);
+                    }
+                }
+            }
+
+            add(files, folder, format, detailSize, exif, orientation,
+                    Variant.TRUNCATED);
+            add(files, folder, format, detailSize, exif, orientation,
+                    Variant.CORRUPTED);
+            add(files, folder, format, detailSize, ExifRichness.NONE, null,
+                    Variant.GARBAGE);
+        }
+        return new ArrayList<>(files.values());
+    }
+
+    /**
+     * Generates all files of a corpus and its manifest into provided folder,
+     * replacing any existing file.
+     *
+     * @param folder folder where files will be generated. It is created if
+     *               needed.
+     * @return generated files.
+     * @throws IOException if files cannot be written.
+     */
+    public List<CorpusFile> generate(final File folder) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Can't create folder " + folder);
+        }
+
+        final List<CorpusFile> files = plan(folder);
+        for (final CorpusFile file : files) {
+            generate(file);
+        }
+        writeManifest(new File(folder, MANIFEST), files);
+        return files;
+    }
+
+    /**
+     * Generates a single file of a corpus.
+     *
+     * @param file file to be generated.
+     * @throws IOException if file cannot be written.
+     */
+    public void generate(final CorpusFile file) throws IOException {
+        // damaged files are generated from same image as baseline files
+        final Variant variant = file.isIntact() ||
+                file.getVariant() == Variant.GARBAGE ? file.getVariant() :
+                Variant.BASELINE;
+        final Random random = new Random(mSeed ^ getName(file.getFormat(),
+                file.getSizeClass(), file.getExif(), file.getOrientation(),
+                variant).hashCode());
+        final byte[] data;
+        if (file.getVariant() == Variant.GARBAGE) {
+            data = new byte[file.getWidth() * file.getHeight() / 4];
+            random.nextBytes(data);
+        } else {
+            data = encode(file, random);
+            if (file.getVariant() == Variant.CORRUPTED) {
+                // overwrite an eighth of the data after its first half
+                final byte[] garbage = new byte[data.length / 8];
+                random.nextBytes(garbage);
+                System.arraycopy(garbage, 0, data, data.length / 2,
+                        garbage.length);
+            }
+        }
+
+        final int length = file.getVariant() == Variant.TRUNCATED ?
+                data.length / 2 : data.length;
+        try (OutputStream stream = new FileOutputStream(file.getFile())) {
+            stream.write(data, 0, length);
+        }
+    }
+
+    /**
+     * Generates a corpus from command line.
+     * Arguments are the folder where the corpus is generated, and optionally
+     * the largest size class to be generated (LARGE by default) and the seed.
+     *
+     * @param args command line arguments.
+     * @throws IOException if files cannot be written.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: CorpusGenerator <folder> " +
+                    "[largest size class] [seed]");
+            System.exit(1);
+        }
+
+        final SizeClass largest = args.length > 1 ?
+                SizeClass.valueOf(args[1].toUpperCase(Locale.ENGLISH)) :
+                SizeClass.LARGE;
+        final Builder builder = new Builder().setSizeClasses(
+                EnumSet.range(SizeClass.THUMBNAIL, largest));
+        if (args.length > 2) {
+            builder.setSeed(Long.parseLong(args[2]));
+        }
+
+        final long start = System.nanoTime();
+        final List<CorpusFile> files = builder.build().generate(
+                new File(args[0]));
+        System.out.println("Generated " + files.size() + " files in " +
+                (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Returns size class used for EXIF, orientation and damaged variants.
+     *
+     * @return smallest selected size class, but at least SMALL if selected.
+     */
+    private SizeClass getDetailSizeClass() {
+        if (mSizeClasses.contains(SizeClass.SMALL)) {
+            return SizeClass.SMALL;
+        }
+        return mSizeClasses.iterator().next();
+    }
+
+    /**
+     * Adds a file to a corpus unless already added.
+     *
+     * @param files       files of corpus by name.
+     * @param folder      folder where file is generated.
+     * @param format      image format.
+     * @param size        size class of image.
+     * @param exif        amount of EXIF metadata.
+     * @param orientation orientation stored in EXIF metadata or null.
+     * @param variant     variant of file.
+     */
+    private static void add(final Map<String, CorpusFile> files,
+                            final File folder, final ImageFormat format,
+                            final SizeClass size, final ExifRichness exif,
+                            final ImageOrientation orientation,
+                            final Variant variant) {
+        final String name = getName(format, size, exif, orientation,
+                variant);
+        if (!files.containsKey(name)) {
+            files.put(name, new CorpusFile(new File(folder, name), format,
+                    size, exif, orientation, variant));
+        }
+    }
+
+    /**
+     * Returns name of a file, i.e. small-basic-o6-baseline.jpg.
+     *
+     * @param format      image format.
+     * @param size        size class of image.
+     * @param exif        amount of EXIF metadata.
+     * @param orientation orientation stored in EXIF metadata or null.
+     * @param variant     variant of file.
+     * @return name of file.
+     */
+    private static String getName(final ImageFormat format,
+                                  final SizeClass size,
+                                  final ExifRichness exif,
+                                  final ImageOrientation orientation,
+                                  final Variant variant) {
+        return (size + "-" + exif + "-o" +
+                (orientation != null ? orientation.getValue() : 0) + "-" +
+                variant).toLowerCase(Locale.ENGLISH) + "." +
+                getExtension(format);
+    }
+
+    /**
+     * Returns file extension of an image format.
+     *
+     * @param format image format.
+     * @return file extension.
+     */
+    private static String getExtension(final ImageFormat format) {
+        switch (format) {
+            case JPEG:
+                return "jpg";
+            case PNG:
+                return "png";
+            case GIF:
+                return "gif";
+            default:
+                return "bmp";
+        }
+    }
+
+    /**
+     * Renders and encodes an image, adding EXIF metadata if needed.
+     *
+     * @param file   file to be generated.
+     * @param random randomizer of file.
+     * @return encoded image.
+     * @throws IOException if image cannot be encoded.
+     */
+    private static byte[] encode(final CorpusFile file, final Random random)
+            throws IOException {
+        final ImageFormat format = file.getFormat();
+        final BufferedImage image = render(file.getWidth(), file.getHeight(),
+                format == ImageFormat.GIF, random);
+
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName(
+                getExtension(format)).next();
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (ImageOutputStream output =
+                     ImageIO.createImageOutputStream(stream)) {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteProgressive()) {
+                param.setProgressiveMode(
+                        file.getVariant() == Variant.PROGRESSIVE ?
+                                ImageWriteParam.MODE_DEFAULT :
+                                ImageWriteParam.MODE_DISABLED);
+            }
+            if (format == ImageFormat.JPEG) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+
+        if (file.getExif() == ExifRichness.NONE) {
+            return stream.toByteArray();
+        }
+        try {
+            final ByteArrayOutputStream result = new ByteArrayOutputStream();
+            new ExifRewriter().updateExifMetadataLossless(stream.toByteArray(),
+                    result, createExif(file, random));
+            return result.toByteArray();
+        } catch (final ImageReadException | ImageWriteException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Renders image pixels.
+     * Each channel is the sum of two low frequency waves along each axis,
+     * with some rectangles blended on top and luminance noise added.
+     *
+     * @param width   width in pixels.
+     * @param height  height in pixels.
+     * @param indexed true to render an image using a palette of 216 colors,
+     *                false to render a 24-bit image.
+     * @param random  randomizer.
+     * @return rendered image.
+     */
+    private static BufferedImage render(final int width, final int height,
+                                        final boolean indexed,
+                                        final Random random) {
+        final int[][] columns = new int[3][];
+        final int[][] rows = new int[3][];
+        for (int c = 0; c < 3; c++) {
+            columns[c] = wave(width, 64 + random.nextInt(128), random);
+            rows[c] = wave(height, 0, random);
+        }
+
+        final int[][] rectangles = new int[RECTANGLES][];
+        for (int i = 0; i < RECTANGLES; i++) {
+            final int x = random.nextInt(width);
+            final int y = random.nextInt(height);
+            rectangles[i] = new int[]{x, y,
+                    Math.min(width, x + 1 + random.nextInt(width / 4 + 1)),
+                    Math.min(height, y + 1 + random.nextInt(height / 4 + 1)),
+                    random.nextInt(256), random.nextInt(256),
+                    random.nextInt(256)};
+        }
+
+        final BufferedImage image;
+        if (indexed) {
+            final int colors = PALETTE_LEVELS * PALETTE_LEVELS *
+                    PALETTE_LEVELS;
+            final byte[] r = new byte[colors];
+            final byte[] g = new byte[colors];
+            final byte[] b = new byte[colors];
+            for (int i = 0; i < colors; i++) {
+                r[i] = (byte) (i / (PALETTE_LEVELS * PALETTE_LEVELS) * 51);
+                g[i] = (byte) (i / PALETTE_LEVELS % PALETTE_LEVELS * 51);
+                b[i] = (byte) (i % PALETTE_LEVELS * 51);
+            }
+            image = new BufferedImage(width, height,
+                    BufferedImage.TYPE_BYTE_INDEXED,
+                    new IndexColorModel(8, colors, r, g, b));
+        } else {
+            image = new BufferedImage(width, height,
+                    BufferedImage.TYPE_3BYTE_BGR);
+        }
+        final byte[] data = ((DataBufferByte) image.getRaster()
+                .getDataBuffer()).getData();
+
+        long noise = random.nextLong() | 1L;
+        final int[] rgb = new int[3];
+        int pos = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // xorshift generator, much faster than Random
+                noise ^= noise << 13;
+                noise ^= noise >>> 7;
+                noise ^= noise << 17;
+                // luminance noise, as most noise of camera sensors
+                final int luminance = (int) (noise & 0x7) - 4;
+                for (int c = 0; c < 3; c++) {
+                    rgb[c] = columns[c][x] + rows[c][y] + luminance;
+                }
+                for (final int[] rectangle : rectangles) {
+                    if (x >= rectangle[0] && y >= rectangle[1] &&
+                            x < rectangle[2] && y < rectangle[3]) {
+                        for (int c = 0; c < 3; c++) {
+                            rgb[c] = (rgb[c] + rectangle[4 + c]) / 2;
+                        }
+                    }
+                }
+                for (int c = 0; c < 3; c++) {
+                    rgb[c] = rgb[c] < 0 ? 0 : (rgb[c] > 255 ? 255 : rgb[c]);
+                }
+
+                if (indexed) {
+                    data[pos++] = (byte) (
+                            rgb[0] * PALETTE_LEVELS / 256 * PALETTE_LEVELS *
+                                    PALETTE_LEVELS +
+                            rgb[1] * PALETTE_LEVELS / 256 * PALETTE_LEVELS +
+                            rgb[2] * PALETTE_LEVELS / 256);
+                } else {
+                    data[pos++] = (byte) rgb[2];
+                    data[pos++] = (byte) rgb[1];
+                    data[pos++] = (byte) rgb[0];
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Computes a low frequency wave.
+     *
+     * @param length number of samples.
+     * @param offset value added to all samples.
+     * @param random randomizer.
+     * @return samples of wave.
+     */
+    private static int[] wave(final int length, final int offset,
+                              final Random random) {
+        final double amplitude = 10.0 + random.nextInt(40);
+        final double frequency = (1 + random.nextInt(4)) * 2.0 * Math.PI /
+                length;
+        final double phase1 = 2.0 * Math.PI * random.nextDouble();
+        final double phase2 = 2.0 * Math.PI * random.nextDouble();
+        final int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = offset + (int) (amplitude *
+                    Math.sin(frequency * i + phase1) + amplitude / 3.0 *
+                    Math.sin(3.7 * frequency * i + phase2));
+        }
+        return result;
+    }
+
+    /**
+     * Creates EXIF metadata of a JPEG image.
+     *
+     * @param file   file to be generated.
+     * @param random randomizer.
+     * @return EXIF metadata.
+     * @throws ImageWriteException if metadata cannot be created.
+     */
+    private static TiffOutputSet createExif(final CorpusFile file,
+                                            final Random random)
+            throws ImageWriteException {
+        final TiffOutputSet exif = new TiffOutputSet();
+        final TiffOutputDirectory root = exif.getOrCreateRootDirectory();
+        final TiffOutputDirectory exifDirectory =
+                exif.getOrCreateExifDirectory();
+
+        final String[] camera = CAMERAS[random.nextInt(CAMERAS.length)];
+        final String date = String.format(Locale.ENGLISH,
+                "%04d:%02d:%02d %02d:%02d:%02d", 2010 + random.nextInt(10),
+                1 + random.nextInt(12), 1 + random.nextInt(28),
+                random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        root.add(TiffTagConstants.TIFF_TAG_MAKE, camera[0]);
+        root.add(TiffTagConstants.TIFF_TAG_MODEL, camera[1]);
+        root.add(TiffTagConstants.TIFF_TAG_SOFTWARE, "Firmware 1." +
+                random.nextInt(10));
+        root.add(TiffTagConstants.TIFF_TAG_DATE_TIME, date);
+        if (file.getOrientation() != null) {
+            root.add(TiffTagConstants.TIFF_TAG_ORIENTATION,
+                    (short) file.getOrientation().getValue());
+        }
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, date);
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_EXPOSURE_TIME,
+                new RationalNumber(1, 30 + random.nextInt(4000)));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_FNUMBER,
+                new RationalNumber(14 + random.nextInt(200), 10));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_ISO,
+                (short) (100 << random.nextInt(6)));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_FOCAL_LENGTH,
+                new RationalNumber(40 + random.nextInt(2000), 10));
+        if (file.getExif() == ExifRichness.BASIC) {
+            return exif;
+        }
+
+        root.add(TiffTagConstants.TIFF_TAG_ARTIST, "Photographer " +
+                random.nextInt(100));
+        root.add(TiffTagConstants.TIFF_TAG_COPYRIGHT,
+                "Copyright (c) Photographer");
+        root.add(TiffTagConstants.TIFF_TAG_DOCUMENT_NAME, "Document " +
+                random.nextInt(1000));
+        root.add(TiffTagConstants.TIFF_TAG_HOST_COMPUTER, "Host computer");
+        root.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION,
+                "Synthetic image " + file);
+        root.add(TiffTagConstants.TIFF_TAG_TARGET_PRINTER, "Target printer");
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_BODY_SERIAL_NUMBER,
+                Integer.toString(100000 + random.nextInt(900000)));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_DIGITAL_ZOOM_RATIO,
+                new RationalNumber(10 + random.nextInt(30), 10));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_FLASH, (short)
+                (random.nextBoolean() ? ExifTagConstants.FLASH_VALUE_FIRED :
+                        ExifTagConstants.FLASH_VALUE_NO_FLASH));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_FLASH_ENERGY_EXIF_IFD,
+                new RationalNumber(random.nextInt(100), 10));
+        exifDirectory.add(
+                ExifTagConstants.EXIF_TAG_FOCAL_LENGTH_IN_35MM_FORMAT,
+                (short) (14 + random.nextInt(300)));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_SUBJECT_DISTANCE,
+                new RationalNumber(1 + random.nextInt(10000), 100));
+        exifDirectory.add(ExifTagConstants.EXIF_TAG_SHUTTER_SPEED_VALUE,
+                new RationalNumber(random.nextInt(1200), 100));
+        exifDirectory.add(
+                ExifTagConstants.EXIF_TAG_FOCAL_PLANE_XRESOLUTION_EXIF_IFD,
+                new RationalNumber(file.getWidth() * 10, 36));
+        exifDirectory.add(
+                ExifTagConstants.EXIF_TAG_FOCAL_PLANE_YRESOLUTION_EXIF_IFD,
+                new RationalNumber(file.getHeight() * 10, 24));
+        exifDirectory.add(
+                ExifTagConstants.EXIF_TAG_FOCAL_PLANE_RESOLUTION_UNIT_EXIF_IFD,
+                (short) ExifTagConstants
+                        .FOCAL_PLANE_RESOLUTION_UNIT_EXIF_IFD_VALUE_CM);
+
+        exif.setGPSInDegrees(-180.0 + 360.0 * random.nextDouble(),
+                -80.0 + 160.0 * random.nextDouble());
+        final TiffOutputDirectory gps = exif.getOrCreateGPSDirectory();
+        gps.add(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF, (byte)
+                GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF_VALUE_ABOVE_SEA_LEVEL);
+        gps.add(GpsTagConstants.GPS_TAG_GPS_ALTITUDE,
+                new RationalNumber(random.nextInt(40000), 10));
+
+        if (file.getExif() == ExifRichness.MAKER_NOTES) {
+            final byte[] makerNote = new byte[MAKER_NOTE_LENGTH];
+            random.nextBytes(makerNote);
+            exifDirectory.add(ExifTagConstants.EXIF_TAG_MAKER_NOTE,
+                    makerNote);
+        }
+        return exif;
+    }
+
+    /**
+     * Writes manifest describing all files of a corpus.
+     *
+     * @param manifest manifest file.
+     * @param files    files of corpus.
+     * @throws IOException if manifest cannot be written.
+     */
+    private static void writeManifest(final File manifest,
+                                      final List<CorpusFile> files)
+            throws IOException {
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(manifest), Charset.forName("UTF-8"))) {
+            writer.write("name,format,sizeClass,width,height,exif," +
+                    "orientation,variant,intact,length\n");
+            for (final CorpusFile file : files) {
+                writer.write(file.getFile().getName() + "," +
+                        file.getFormat() + "," + file.getSizeClass() + "," +
+                        file.getWidth() + "," + file.getHeight() + "," +
+                        file.getExif() + "," +
+                        (file.getOrientation() != null ?
+                                file.getOrientation() : "") + "," +
+                        file.getVariant() + "," + file.isIntact() + "," +
+                        file.getFile().length() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Builder of corpus generators.
+     */
+    public static class Builder {
+
+        /**
+         * Seed of generated corpora.
+         */
+        private long mSeed = DEFAULT_SEED;
+
+        /**
+         * Size classes of generated images.
+         */
+        private Set<SizeClass> mSizeClasses = EnumSet.range(
+                SizeClass.THUMBNAIL, SizeClass.LARGE);
+
+        /**
+         * Formats of generated images.
+         */
+        private Set<ImageFormat> mFormats = EnumSet.of(ImageFormat.JPEG,
+                ImageFormat.PNG, ImageFormat.GIF, ImageFormat.BMP);
+
+        /**
+         * Sets seed of generated corpora. Same seed always generates same
+         * files on same JVM.
+         *
+         * @param seed seed of generated corpora.
+         * @return this builder.
+         */
+        public Builder setSeed(final long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Sets size classes of generated images. By default, all size
+         * classes up to LARGE are generated.
+         *
+         * @param sizeClasses size classes of generated images.
+         * @return this builder.
+         * @throws IllegalArgumentException if no size class is provided.
+         */
+        public Builder setSizeClasses(final SizeClass... sizeClasses) {
+            if (sizeClasses == null) {
+                throw new IllegalArgumentException();
+            }
+            return setSizeClasses(Arrays.asList(sizeClasses));
+        }
+
+        /**
+         * Sets size classes of generated images. By default, all size
+         * classes up to LARGE are generated.
+         *
+         * @param sizeClasses size classes of generated images.
+         * @return this builder.
+         * @throws IllegalArgumentException if no size class is provided.
+         */
+        public Builder setSizeClasses(
+                final Collection<SizeClass> sizeClasses) {
+            if (sizeClasses == null || sizeClasses.isEmpty()) {
+                throw new IllegalArgumentException();
+            }
+            mSizeClasses = EnumSet.copyOf(sizeClasses);
+            return this;
+        }
+
+        /**
+         * Sets formats of generated images. By default, JPEG, PNG, GIF and
+         * BMP images are generated.
+         *
+         * @param formats formats of generated images.
+         * @return this builder.
+         * @throws IllegalArgumentException if no format is provided or if
+         *                                  UNKNOWN format is provided.
+         */
+        public Builder setFormats(final ImageFormat... formats) {
+            if (formats == null || formats.length == 0) {
+                throw new IllegalArgumentException();
+            }
+            final Set<ImageFormat> result = EnumSet.noneOf(ImageFormat.class);
+            for (final ImageFormat format : formats) {
+                if (format == null || format == ImageFormat.UNKNOWN) {
+                    throw new IllegalArgumentException();
+                }
+                result.add(format);
+            }
+            mFormats = result;
+            return this;
+        }
+
+        /**
+         * Builds a corpus generator.
+         *
+         * @return a corpus generator.
+         */
+        public CorpusGenerator build() {
+            return new CorpusGenerator(this);
+        }
+    }
+}
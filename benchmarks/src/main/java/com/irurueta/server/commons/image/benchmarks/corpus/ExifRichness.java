@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.corpus;
+
+/**
+ * Amount of EXIF metadata contained in generated JPEG images. Images of other
+ * formats never contain EXIF metadata.
+ */
+public enum ExifRichness {
+    /**
+     * No EXIF metadata at all.
+     */
+    NONE,
+
+    /**
+     * Camera maker, model, orientation, date, software and basic exposure
+     * settings, as written by most cameras.
+     */
+    BASIC,
+
+    /**
+     * Every tag read by ImageReader, including a GPS location with altitude.
+     */
+    FULL_GPS,
+
+    /**
+     * Every tag read by ImageReader and a large maker note, as written by some
+     * camera makers, filling most of the EXIF segment.
+     */
+    MAKER_NOTES
+}
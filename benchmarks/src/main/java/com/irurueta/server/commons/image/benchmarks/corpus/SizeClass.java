@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.corpus;
+
+/**
+ * Size classes of generated images, from thumbnails to 100 megapixel images.
+ * All classes have a 4:3 aspect ratio, as most camera sensors.
+ */
+public enum SizeClass {
+    /**
+     * Thumbnail of 160x120 pixels.
+     */
+    THUMBNAIL(160, 120),
+
+    /**
+     * Small image of 640x480 pixels (0.3 megapixels).
+     */
+    SMALL(640, 480),
+
+    /**
+     * Medium image of 2048x1536 pixels (3 megapixels).
+     */
+    MEDIUM(2048, 1536),
+
+    /**
+     * Large image of 4000x3000 pixels (12 megapixels).
+     */
+    LARGE(4000, 3000),
+
+    /**
+     * Huge image of 6000x4500 pixels (27 megapixels).
+     */
+    HUGE(6000, 4500),
+
+    /**
+     * Giant image of 11548x8661 pixels (100 megapixels). Generating images of
+     * this size requires about 1GB of heap.
+     */
+    GIANT(11548, 8661);
+
+    /**
+     * Width in pixels.
+     */
+    private final int mWidth;
+
+    /**
+     * Height in pixels.
+     */
+    private final int mHeight;
+
+    /**
+     * Constructor.
+     *
+     * @param width  width in pixels.
+     * @param height height in pixels.
+     */
+    SizeClass(final int width, final int height) {
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Returns width in pixels.
+     *
+     * @return width in pixels.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns height in pixels.
+     *
+     * @return height in pixels.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+}
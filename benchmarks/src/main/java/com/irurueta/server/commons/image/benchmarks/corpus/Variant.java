@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.corpus;
+
+/**
+ * Variants of generated image files.
+ */
+public enum Variant {
+    /**
+     * Sequential (baseline) encoding.
+     */
+    BASELINE(true),
+
+    /**
+     * Progressive JPEG or interlaced PNG and GIF encoding. Not available for
+     * BMP images.
+     */
+    PROGRESSIVE(true),
+
+    /**
+     * Valid image truncated to half its length, as left by an interrupted
+     * upload.
+     */
+    TRUNCATED(false),
+
+    /**
+     * Valid image having random bytes written over part of its encoded pixel
+     * data, while keeping its header intact.
+     */
+    CORRUPTED(false),
+
+    /**
+     * Random bytes having the extension of an image file.
+     */
+    GARBAGE(false);
+
+    /**
+     * Indicates whether files of this variant are intact images.
+     */
+    private final boolean mIntact;
+
+    /**
+     * Constructor.
+     *
+     * @param intact true if files of this variant are intact images.
+     */
+    Variant(final boolean intact) {
+        mIntact = intact;
+    }
+
+    /**
+     * Indicates whether files of this variant are intact images. Files that
+     * are not intact may still be partially decodable.
+     *
+     * @return true if files are intact images, false otherwise.
+     */
+    public boolean isIntact() {
+        return mIntact;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.load;
+
+import com.irurueta.server.commons.image.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Report of a load test sweep, formatted as a markdown table with a row for
+ * each concurrency level, along with the knee of the throughput curve.
+ */
+public class LoadReport {
+
+    /**
+     * Fraction of best throughput that the knee must reach.
+     */
+    public static final double KNEE_THRESHOLD = 0.95;
+
+    /**
+     * Number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLISECOND = 1e6;
+
+    /**
+     * Number of bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * Result of each concurrency level.
+     */
+    private final List<LoadStepResult> mResults;
+
+    /**
+     * Constructor.
+     *
+     * @param results result of each concurrency level.
+     * @throws IllegalArgumentException if results are not provided.
+     */
+    public LoadReport(final List<LoadStepResult> results) {
+        if (results == null) {
+            throw new IllegalArgumentException();
+        }
+        mResults = new ArrayList<>(results);
+    }
+
+    /**
+     * Returns knee of the throughput curve, which is the lowest concurrency
+     * level reaching at least 95% of the best throughput without failures.
+     * Higher levels only increase latency and memory usage.
+     *
+     * @return result at knee or null if there are no results.
+     */
+    public LoadStepResult getKnee() {
+        double best = 0.0;
+        for (final LoadStepResult result : mResults) {
+            best = Math.max(best, result.getThroughput());
+        }
+
+        LoadStepResult knee = null;
+        for (final LoadStepResult result : mResults) {
+            if (result.getThroughput() >= KNEE_THRESHOLD * best &&
+                    result.getFailed() == 0 && (knee == null ||
+                    result.getConcurrency() < knee.getConcurrency())) {
+                knee = result;
+            }
+        }
+        return knee;
+    }
+
+    /**
+     * Returns report formatted as markdown.
+     *
+     * @return report as markdown.
+     */
+    public String toMarkdown() {
+        final StringBuilder builder = new StringBuilder(header());
+        for (final LoadStepResult result : mResults) {
+            builder.append(toRow(result)).append('\n');
+        }
+        builder.append('\n').append(getKneeSummary()).append('\n');
+        return builder.toString();
+    }
+
+    /**
+     * Returns a sentence describing the knee of the throughput curve.
+     *
+     * @return description of knee.
+     */
+    public String getKneeSummary() {
+        final LoadStepResult knee = getKnee();
+        if (knee == null) {
+            return "No knee found";
+        }
+        final String summary = String.format(Locale.ENGLISH,
+                "Knee at %d concurrent threads: %.2f req/s, p99 %.1f ms, " +
+                        "peak heap %.0f MB", knee.getConcurrency(),
+                knee.getThroughput(), millis(knee.getLatency(), 99.0),
+                knee.getPeakHeap() / BYTES_PER_MEGABYTE);
+        if (knee.getRejected() > 0 ||
+                knee.getThroughput() < KNEE_THRESHOLD * knee.getArrivalRate()) {
+            // offered load is beyond capacity of every level
+            return summary + " (saturated, increase concurrency levels or " +
+                    "reduce arrival rate)";
+        }
+        return summary;
+    }
+
+    /**
+     * Returns header of markdown table.
+     *
+     * @return header of markdown table.
+     */
+    public static String header() {
+        return "| Threads | Offered req/s | Throughput req/s | p50 ms | " +
+                "p99 ms | p99.9 ms | Wait p50/p99 ms | Service p50/p99 ms | " +
+                "Peak heap MB | Failed | Rejected | Unfinished |\n" +
+                "|---:|---:|---:|---:|---:|---:|---:|---:|---:|---:|---:|---:|\n";
+    }
+
+    /**
+     * Formats result of a concurrency level as a markdown table row.
+     *
+     * @param result result of a concurrency level.
+     * @return markdown table row.
+     */
+    public static String toRow(final LoadStepResult result) {
+        return String.format(Locale.ENGLISH,
+                "| %d | %.2f | %.2f | %.1f | %.1f | %.1f | %.1f / %.1f | " +
+                        "%.1f / %.1f | %.0f | %d | %d | %d |",
+                result.getConcurrency(), result.getArrivalRate(),
+                result.getThroughput(),
+                millis(result.getLatency(), 50.0),
+                millis(result.getLatency(), 99.0),
+                millis(result.getLatency(), 99.9),
+                millis(result.getWait(), 50.0),
+                millis(result.getWait(), 99.0),
+                millis(result.getService(), 50.0),
+                millis(result.getService(), 99.0),
+                result.getPeakHeap() / BYTES_PER_MEGABYTE,
+                result.getFailed(), result.getRejected(),
+                result.getUnfinished());
+    }
+
+    /**
+     * Returns a percentile of a histogram in milliseconds.
+     *
+     * @param histogram  histogram of nanoseconds.
+     * @param percentile percentile between 0.0 and 100.0.
+     * @return percentile in milliseconds.
+     */
+    private static double millis(final LatencyHistogram histogram,
+                                 final double percentile) {
+        return histogram.getPercentile(percentile) / NANOS_PER_MILLISECOND;
+    }
+}
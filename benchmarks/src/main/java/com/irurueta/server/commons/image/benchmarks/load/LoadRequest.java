@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.load;
+
+import com.irurueta.server.commons.image.ImageOrientation;
+import com.irurueta.server.commons.image.ThumbnailFormat;
+
+import java.io.File;
+
+/**
+ * Thumbnail generation request of a load test workload.
+ */
+public class LoadRequest {
+
+    /**
+     * Input image file.
+     */
+    private final File mFile;
+
+    /**
+     * Input image orientation.
+     */
+    private final ImageOrientation mOrientation;
+
+    /**
+     * Width of thumbnail to be generated.
+     */
+    private final int mWidth;
+
+    /**
+     * Height of thumbnail to be generated.
+     */
+    private final int mHeight;
+
+    /**
+     * Format of thumbnail to be generated.
+     */
+    private final ThumbnailFormat mFormat;
+
+    /**
+     * Number of pixels of input image.
+     */
+    private final long mInputPixels;
+
+    /**
+     * Constructor.
+     *
+     * @param file        input image file.
+     * @param orientation input image orientation.
+     * @param width       width of thumbnail to be generated.
+     * @param height      height of thumbnail to be generated.
+     * @param format      format of thumbnail to be generated.
+     * @param inputPixels number of pixels of input image.
+     */
+    LoadRequest(final File file, final ImageOrientation orientation,
+                final int width, final int height,
+                final ThumbnailFormat format, final long inputPixels) {
+        mFile = file;
+        mOrientation = orientation;
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        mInputPixels = inputPixels;
+    }
+
+    /**
+     * Returns input image file.
+     *
+     * @return input image file.
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Returns input image orientation.
+     *
+     * @return input image orientation.
+     */
+    public ImageOrientation getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * Returns width of thumbnail to be generated.
+     *
+     * @return width of thumbnail to be generated.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns height of thumbnail to be generated.
+     *
+     * @return height of thumbnail to be generated.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns format of thumbnail to be generated.
+     *
+     * @return format of thumbnail to be generated.
+     */
+    public ThumbnailFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Returns number of pixels of input image.
+     *
+     * @return number of pixels of input image.
+     */
+    public long getInputPixels() {
+        return mInputPixels;
+    }
+
+    /**
+     * Returns a string representation of this request.
+     *
+     * @return string representation.
+     */
+    @Override
+    public String toString() {
+        return mFile.getName() + " -> " + mWidth + "x" + mHeight + " " +
+                mFormat;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.load;
+
+import com.irurueta.server.commons.image.LatencyHistogram;
+
+/**
+ * Result of running a load test at a given concurrency level.
+ * Latencies are measured from the time each request was scheduled to arrive,
+ * not from the time it was actually submitted, so that a driver falling
+ * behind does not hide queueing delays. Latency is split into the time spent
+ * waiting to be allowed to run by the thumbnail creator and the time spent
+ * generating the thumbnail once allowed (service time).
+ */
+public class LoadStepResult {
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Maximum number of concurrent threads of thumbnail creator.
+     */
+    private final int mConcurrency;
+
+    /**
+     * Offered arrival rate in requests per second.
+     */
+    private final double mArrivalRate;
+
+    /**
+     * Duration of measurement in nanoseconds.
+     */
+    private final long mDuration;
+
+    /**
+     * Number of requests completed during measurement.
+     */
+    private final long mCompleted;
+
+    /**
+     * Number of requests that failed during measurement.
+     */
+    private final long mFailed;
+
+    /**
+     * Number of requests rejected because too many requests were in flight.
+     */
+    private final long mRejected;
+
+    /**
+     * Number of requests that were still unfinished when the test ended.
+     */
+    private final long mUnfinished;
+
+    /**
+     * Histogram of end to end latencies of requests scheduled during
+     * measurement.
+     */
+    private final LatencyHistogram mLatency;
+
+    /**
+     * Histogram of time spent waiting to be allowed to run.
+     */
+    private final LatencyHistogram mWait;
+
+    /**
+     * Histogram of time spent generating thumbnails once allowed to run.
+     */
+    private final LatencyHistogram mService;
+
+    /**
+     * Peak heap usage in bytes during measurement.
+     */
+    private final long mPeakHeap;
+
+    /**
+     * Constructor.
+     *
+     * @param concurrency maximum number of concurrent threads.
+     * @param arrivalRate offered arrival rate in requests per second.
+     * @param duration    duration of measurement in nanoseconds.
+     * @param completed   number of completed requests.
+     * @param failed      number of failed requests.
+     * @param rejected    number of rejected requests.
+     * @param unfinished  number of unfinished requests.
+     * @param latency     histogram of end to end latencies.
+     * @param wait        histogram of waiting times.
+     * @param service     histogram of service times.
+     * @param peakHeap    peak heap usage in bytes.
+     */
+    LoadStepResult(final int concurrency, final double arrivalRate,
+                   final long duration, final long completed,
+                   final long failed, final long rejected,
+                   final long unfinished, final LatencyHistogram latency,
+                   final LatencyHistogram wait,
+                   final LatencyHistogram service, final long peakHeap) {
+        mConcurrency = concurrency;
+        mArrivalRate = arrivalRate;
+        mDuration = duration;
+        mCompleted = completed;
+        mFailed = failed;
+        mRejected = rejected;
+        mUnfinished = unfinished;
+        mLatency = latency;
+        mWait = wait;
+        mService = service;
+        mPeakHeap = peakHeap;
+    }
+
+    /**
+     * Returns maximum number of concurrent threads of thumbnail creator.
+     *
+     * @return maximum number of concurrent threads.
+     */
+    public int getConcurrency() {
+        return mConcurrency;
+    }
+
+    /**
+     * Returns offered arrival rate in requests per second.
+     *
+     * @return offered arrival rate.
+     */
+    public double getArrivalRate() {
+        return mArrivalRate;
+    }
+
+    /**
+     * Returns duration of measurement in nanoseconds.
+     *
+     * @return duration of measurement.
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * Returns number of requests completed during measurement.
+     *
+     * @return number of completed requests.
+     */
+    public long getCompleted() {
+        return mCompleted;
+    }
+
+    /**
+     * Returns number of requests that failed during measurement.
+     *
+     * @return number of failed requests.
+     */
+    public long getFailed() {
+        return mFailed;
+    }
+
+    /**
+     * Returns number of requests rejected by the driver because too many
+     * requests were in flight, which indicates that the offered load is
+     * beyond capacity.
+     *
+     * @return number of rejected requests.
+     */
+    public long getRejected() {
+        return mRejected;
+    }
+
+    /**
+     * Returns number of requests scheduled during measurement that had not
+     * finished when the test ended and were cancelled.
+     *
+     * @return number of unfinished requests.
+     */
+    public long getUnfinished() {
+        return mUnfinished;
+    }
+
+    /**
+     * Returns throughput in completed requests per second.
+     *
+     * @return throughput.
+     */
+    public double getThroughput() {
+        return mDuration > 0 ?
+                mCompleted * NANOS_PER_SECOND / mDuration : 0.0;
+    }
+
+    /**
+     * Returns histogram of end to end latencies (in nanoseconds) of requests
+     * scheduled during measurement, from their scheduled arrival until their
+     * thumbnail was saved.
+     *
+     * @return histogram of latencies.
+     */
+    public LatencyHistogram getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * Returns histogram of time (in nanoseconds) spent by requests waiting to
+     * be allowed to run by the thumbnail creator.
+     *
+     * @return histogram of waiting times.
+     */
+    public LatencyHistogram getWait() {
+        return mWait;
+    }
+
+    /**
+     * Returns histogram of time (in nanoseconds) spent by requests generating
+     * their thumbnail once allowed to run.
+     *
+     * @return histogram of service times.
+     */
+    public LatencyHistogram getService() {
+        return mService;
+    }
+
+    /**
+     * Returns peak heap usage in bytes during measurement. This is the sum of
+     * the peak usage of each heap memory pool, hence an upper bound of actual
+     * peak usage.
+     *
+     * @return peak heap usage.
+     */
+    public long getPeakHeap() {
+        return mPeakHeap;
+    }
+}
@@ -0,0 +1,722 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.load;
+
+import com.irurueta.server.commons.image.CancellationToken;
+import com.irurueta.server.commons.image.LatencyHistogram;
+import com.irurueta.server.commons.image.ThumbnailCreator;
+import com.irurueta.server.commons.image.ThumbnailPriority;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test driver for thumbnail creators.
+ * Requests of a workload arrive following a Poisson process with a configured
+ * rate, independently of how fast they are served, as happens with the users
+ * of a server. Each arrival is submitted from its own thread to a thumbnail
+ * creator limiting its number of concurrent threads to the level being tested,
+ * hence requests that cannot run yet wait inside the creator.
+ * The test is repeated for increasing concurrency levels, each one using a new
+ * creator, reporting throughput, latency percentiles, waiting versus service
+ * times and peak heap usage of each level. The knee of the curve is the lowest
+ * level beyond which throughput no longer improves significantly while
+ * latency and memory keep growing.
+ * To keep the driver from exhausting memory when the offered load exceeds
+ * capacity, the number of requests in flight is limited, and any arrival
+ * beyond that limit is rejected and reported.
+ */
+public class LoadTest {
+
+    /**
+     * Default arrival rate in requests per second.
+     */
+    public static final double DEFAULT_ARRIVAL_RATE = 10.0;
+
+    /**
+     * Default warmup time in seconds of each concurrency level.
+     */
+    public static final long DEFAULT_WARMUP_SECONDS = 5;
+
+    /**
+     * Default measurement time in seconds of each concurrency level.
+     */
+    public static final long DEFAULT_MEASUREMENT_SECONDS = 20;
+
+    /**
+     * Default maximum number of requests in flight.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    /**
+     * Default seed of random generator.
+     */
+    public static final long DEFAULT_SEED = 0x5EED;
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Workload to be replayed.
+     */
+    private final Workload mWorkload;
+
+    /**
+     * Arrival rate in requests per second.
+     */
+    private final double mArrivalRate;
+
+    /**
+     * Warmup time in nanoseconds.
+     */
+    private final long mWarmupNanos;
+
+    /**
+     * Measurement time in nanoseconds.
+     */
+    private final long mMeasurementNanos;
+
+    /**
+     * Concurrency levels to be tested.
+     */
+    private final int[] mConcurrencyLevels;
+
+    /**
+     * Maximum number of requests in flight.
+     */
+    private final int mMaxInFlight;
+
+    /**
+     * Seed of random generator.
+     */
+    private final long mSeed;
+
+    /**
+     * Constructor.
+     *
+     * @param builder builder containing configuration of this test.
+     */
+    private LoadTest(final Builder builder) {
+        mWorkload = builder.mWorkload;
+        mArrivalRate = builder.mArrivalRate;
+        mWarmupNanos = builder.mWarmupNanos;
+        mMeasurementNanos = builder.mMeasurementNanos;
+        mConcurrencyLevels = builder.mConcurrencyLevels.clone();
+        mMaxInFlight = builder.mMaxInFlight;
+        mSeed = builder.mSeed;
+    }
+
+    /**
+     * Returns concurrency levels to be tested.
+     *
+     * @return concurrency levels.
+     */
+    public int[] getConcurrencyLevels() {
+        return mConcurrencyLevels.clone();
+    }
+
+    /**
+     * Runs the test for every concurrency level.
+     *
+     * @param outputFolder folder where thumbnails are temporarily written.
+     * @return result of each level.
+     * @throws IOException          if output folder cannot be used.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    public List<LoadStepResult> sweep(final File outputFolder)
+            throws IOException, InterruptedException {
+        final List<LoadStepResult> results = new ArrayList<>();
+        for (final int concurrency : mConcurrencyLevels) {
+            results.add(run(concurrency, outputFolder));
+        }
+        return results;
+    }
+
+    /**
+     * Runs the test for a concurrency level.
+     *
+     * @param concurrency  maximum number of concurrent threads of thumbnail
+     *                     creator.
+     * @param outputFolder folder where thumbnails are temporarily written.
+     * @return result of test.
+     * @throws IllegalArgumentException if concurrency is less than 1.
+     * @throws IOException              if output folder cannot be used.
+     * @throws InterruptedException     if thread is interrupted.
+     */
+    public LoadStepResult run(final int concurrency, final File outputFolder)
+            throws IOException, InterruptedException {
+        final ThumbnailCreator creator = new ThumbnailCreator.Builder()
+                .setMaxConcurrentThreads(concurrency).build();
+
+        // each request in flight writes into its own file
+        Files.createDirectories(outputFolder.toPath());
+        final ConcurrentLinkedQueue<File> slots =
+                new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < mMaxInFlight; i++) {
+            slots.add(new File(outputFolder, "load" + i));
+        }
+
+        final Set<CancellationToken> tokens = Collections.newSetFromMap(
+                new ConcurrentHashMap<CancellationToken, Boolean>());
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong unfinished = new AtomicLong();
+        final LatencyHistogram latency = new LatencyHistogram();
+        long rejected = 0;
+
+        final ExecutorService executor = Executors.newCachedThreadPool(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "load-test");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        final Random random = new Random(mSeed);
+        final List<MemoryPoolMXBean> heapPools = getHeapPools();
+
+        // start each level from a clean heap
+        System.gc();
+        final long start = System.nanoTime();
+        final long measurementStart = start + mWarmupNanos;
+        final long measurementEnd = measurementStart + mMeasurementNanos;
+        boolean measuring = false;
+        long scheduled = start;
+        try {
+            while (scheduled - measurementEnd < 0) {
+                parkUntil(scheduled);
+                if (!measuring && scheduled - measurementStart >= 0) {
+                    // discard warmup
+                    measuring = true;
+                    creator.getWaitHistogram(ThumbnailPriority.NORMAL).reset();
+                    creator.getServiceHistogram(ThumbnailPriority.NORMAL)
+                            .reset();
+                    for (final MemoryPoolMXBean pool : heapPools) {
+                        pool.resetPeakUsage();
+                    }
+                }
+
+                final File slot = slots.poll();
+                if (slot == null) {
+                    if (measuring) {
+                        rejected++;
+                    }
+                } else {
+                    final CancellationToken token = new CancellationToken();
+                    tokens.add(token);
+                    executor.execute(new Request(creator,
+                            mWorkload.next(random), slot, token, scheduled,
+                            measuring, measurementStart, measurementEnd,
+                            slots, tokens, completed, failed, unfinished,
+                            latency));
+                }
+
+                scheduled += (long) (-Math.log(1.0 - random.nextDouble()) /
+                        mArrivalRate * NANOS_PER_SECOND);
+            }
+            parkUntil(measurementEnd);
+            final long peakHeap = getPeakHeap(heapPools);
+
+            // let requests scheduled during measurement finish within a
+            // reasonable time, and cancel the rest
+            executor.shutdown();
+            if (!executor.awaitTermination(mMeasurementNanos,
+                    TimeUnit.NANOSECONDS)) {
+                for (final CancellationToken token : tokens) {
+                    token.cancel();
+                }
+                executor.awaitTermination(mMeasurementNanos,
+                        TimeUnit.NANOSECONDS);
+            }
+
+            return new LoadStepResult(concurrency, mArrivalRate,
+                    mMeasurementNanos, completed.get(), failed.get(), rejected,
+                    unfinished.get(), latency,
+                    creator.getWaitHistogram(ThumbnailPriority.NORMAL),
+                    creator.getServiceHistogram(ThumbnailPriority.NORMAL),
+                    peakHeap);
+        } finally {
+            executor.shutdownNow();
+            for (int i = 0; i < mMaxInFlight; i++) {
+                //noinspection ResultOfMethodCallIgnored
+                new File(outputFolder, "load" + i).delete();
+            }
+        }
+    }
+
+    /**
+     * Runs a load test sweep and prints its report.
+     * Usage: LoadTest &lt;images folder&gt; [arrivals per second]
+     * [concurrency levels] [measurement seconds], where concurrency levels are
+     * comma separated. Images can be generated using CorpusGenerator.
+     *
+     * @param args command line arguments.
+     * @throws IOException          if images cannot be read.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    public static void main(final String[] args) throws IOException,
+            InterruptedException {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: LoadTest <images folder> " +
+                    "[arrivals per second] [concurrency levels] " +
+                    "[measurement seconds]");
+            System.exit(1);
+        }
+
+        final Builder builder = new Builder().setWorkload(Workload.fromFolder(
+                new File(args[0]), Workload.DEFAULT_SIZES));
+        if (args.length > 1) {
+            builder.setArrivalRate(Double.parseDouble(args[1]));
+        }
+        if (args.length > 2) {
+            final String[] values = args[2].split(",");
+            final int[] levels = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                levels[i] = Integer.parseInt(values[i].trim());
+            }
+            builder.setConcurrencyLevels(levels);
+        }
+        if (args.length > 3) {
+            builder.setMeasurementTime(Long.parseLong(args[3]),
+                    TimeUnit.SECONDS);
+        }
+
+        final LoadTest test = builder.build();
+        final File outputFolder = Files.createTempDirectory("load").toFile();
+        final List<LoadStepResult> results = new ArrayList<>();
+        System.out.print(LoadReport.header());
+        try {
+            for (final int concurrency : test.getConcurrencyLevels()) {
+                final LoadStepResult result = test.run(concurrency,
+                        outputFolder);
+                System.out.println(LoadReport.toRow(result));
+                results.add(result);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            outputFolder.delete();
+        }
+        System.out.println();
+        System.out.println(new LoadReport(results).getKneeSummary());
+    }
+
+    /**
+     * Returns heap memory pools.
+     *
+     * @return heap memory pools.
+     */
+    private static List<MemoryPoolMXBean> getHeapPools() {
+        final List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (final MemoryPoolMXBean pool :
+                ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * Returns sum of peak usage of provided heap memory pools.
+     *
+     * @param pools heap memory pools.
+     * @return peak heap usage in bytes.
+     */
+    private static long getPeakHeap(final List<MemoryPoolMXBean> pools) {
+        long peak = 0;
+        for (final MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * Waits until provided system time.
+     *
+     * @param time system time in nanoseconds (as returned by
+     *             System.nanoTime()).
+     * @throws InterruptedException if thread is interrupted.
+     */
+    private static void parkUntil(final long time)
+            throws InterruptedException {
+        long remaining;
+        while ((remaining = time - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * A request submitted to a thumbnail creator.
+     */
+    private static class Request implements Runnable {
+
+        /**
+         * Thumbnail creator.
+         */
+        private final ThumbnailCreator mCreator;
+
+        /**
+         * Request to be generated.
+         */
+        private final LoadRequest mRequest;
+
+        /**
+         * File where thumbnail is written.
+         */
+        private final File mSlot;
+
+        /**
+         * Cancellation token of request.
+         */
+        private final CancellationToken mToken;
+
+        /**
+         * System time in nanoseconds when request was scheduled to arrive.
+         */
+        private final long mScheduled;
+
+        /**
+         * Indicates whether request was scheduled during measurement.
+         */
+        private final boolean mMeasured;
+
+        /**
+         * System time in nanoseconds when measurement starts.
+         */
+        private final long mMeasurementStart;
+
+        /**
+         * System time in nanoseconds when measurement ends.
+         */
+        private final long mMeasurementEnd;
+
+        /**
+         * Free files where thumbnails can be written.
+         */
+        private final ConcurrentLinkedQueue<File> mSlots;
+
+        /**
+         * Tokens of requests in flight.
+         */
+        private final Set<CancellationToken> mTokens;
+
+        /**
+         * Number of requests completed during measurement.
+         */
+        private final AtomicLong mCompleted;
+
+        /**
+         * Number of measured requests that failed.
+         */
+        private final AtomicLong mFailed;
+
+        /**
+         * Number of measured requests that were cancelled.
+         */
+        private final AtomicLong mUnfinished;
+
+        /**
+         * Histogram of latencies of measured requests.
+         */
+        private final LatencyHistogram mLatency;
+
+        /**
+         * Constructor.
+         *
+         * @param creator          thumbnail creator.
+         * @param request          request to be generated.
+         * @param slot             file where thumbnail is written.
+         * @param token            cancellation token of request.
+         * @param scheduled        time when request was scheduled.
+         * @param measured         whether request is measured.
+         * @param measurementStart time when measurement starts.
+         * @param measurementEnd   time when measurement ends.
+         * @param slots            free files where thumbnails can be written.
+         * @param tokens           tokens of requests in flight.
+         * @param completed        number of completed requests.
+         * @param failed           number of failed requests.
+         * @param unfinished       number of cancelled requests.
+         * @param latency          histogram of latencies.
+         */
+        Request(final ThumbnailCreator creator, final LoadRequest request,
+                final File slot, final CancellationToken token,
+                final long scheduled, final boolean measured,
+                final long measurementStart, final long measurementEnd,
+                final ConcurrentLinkedQueue<File> slots,
+                final Set<CancellationToken> tokens,
+                final AtomicLong completed, final AtomicLong failed,
+                final AtomicLong unfinished, final LatencyHistogram latency) {
+            mCreator = creator;
+            mRequest = request;
+            mSlot = slot;
+            mToken = token;
+            mScheduled = scheduled;
+            mMeasured = measured;
+            mMeasurementStart = measurementStart;
+            mMeasurementEnd = measurementEnd;
+            mSlots = slots;
+            mTokens = tokens;
+            mCompleted = completed;
+            mFailed = failed;
+            mUnfinished = unfinished;
+            mLatency = latency;
+        }
+
+        /**
+         * Generates thumbnail of request and records its outcome.
+         */
+        @Override
+        public void run() {
+            try {
+                mCreator.generateAndSaveThumbnail(mRequest.getFile(),
+                        mRequest.getOrientation(), mSlot, mRequest.getWidth(),
+                        mRequest.getHeight(), mRequest.getFormat(),
+                        ThumbnailPriority.NORMAL, null, mToken);
+                final long end = System.nanoTime();
+                if (mMeasured) {
+                    mLatency.record(end - mScheduled);
+                }
+                // throughput counts completions within measurement, no
+                // matter when requests arrived
+                if (end - mMeasurementStart >= 0 &&
+                        end - mMeasurementEnd < 0) {
+                    mCompleted.incrementAndGet();
+                }
+            } catch (final CancellationException e) {
+                if (mMeasured) {
+                    mUnfinished.incrementAndGet();
+                }
+            } catch (final Exception e) {
+                if (mMeasured) {
+                    mFailed.incrementAndGet();
+                }
+            } finally {
+                mTokens.remove(mToken);
+                mSlots.add(mSlot);
+            }
+        }
+    }
+
+    /**
+     * Builder to configure load tests.
+     */
+    public static class Builder {
+
+        /**
+         * Workload to be replayed.
+         */
+        private Workload mWorkload;
+
+        /**
+         * Arrival rate in requests per second.
+         */
+        private double mArrivalRate = DEFAULT_ARRIVAL_RATE;
+
+        /**
+         * Warmup time in nanoseconds.
+         */
+        private long mWarmupNanos =
+                TimeUnit.SECONDS.toNanos(DEFAULT_WARMUP_SECONDS);
+
+        /**
+         * Measurement time in nanoseconds.
+         */
+        private long mMeasurementNanos =
+                TimeUnit.SECONDS.toNanos(DEFAULT_MEASUREMENT_SECONDS);
+
+        /**
+         * Concurrency levels to be tested.
+         */
+        private int[] mConcurrencyLevels = getDefaultConcurrencyLevels();
+
+        /**
+         * Maximum number of requests in flight.
+         */
+        private int mMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+        /**
+         * Seed of random generator.
+         */
+        private long mSeed = DEFAULT_SEED;
+
+        /**
+         * Sets workload to be replayed.
+         *
+         * @param workload workload to be replayed.
+         * @return this builder.
+         * @throws IllegalArgumentException if workload is not provided.
+         */
+        public Builder setWorkload(final Workload workload) {
+            if (workload == null) {
+                throw new IllegalArgumentException();
+            }
+            mWorkload = workload;
+            return this;
+        }
+
+        /**
+         * Sets arrival rate.
+         *
+         * @param arrivalRate arrival rate in requests per second.
+         * @return this builder.
+         * @throws IllegalArgumentException if arrival rate is not positive.
+         */
+        public Builder setArrivalRate(final double arrivalRate) {
+            if (!(arrivalRate > 0.0)) {
+                throw new IllegalArgumentException();
+            }
+            mArrivalRate = arrivalRate;
+            return this;
+        }
+
+        /**
+         * Sets warmup time of each concurrency level.
+         *
+         * @param time warmup time.
+         * @param unit time unit.
+         * @return this builder.
+         * @throws IllegalArgumentException if time is negative.
+         */
+        public Builder setWarmupTime(final long time, final TimeUnit unit) {
+            if (time < 0) {
+                throw new IllegalArgumentException();
+            }
+            mWarmupNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets measurement time of each concurrency level.
+         *
+         * @param time measurement time.
+         * @param unit time unit.
+         * @return this builder.
+         * @throws IllegalArgumentException if time is not positive.
+         */
+        public Builder setMeasurementTime(final long time,
+                                          final TimeUnit unit) {
+            if (time <= 0) {
+                throw new IllegalArgumentException();
+            }
+            mMeasurementNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Sets concurrency levels to be tested, in order.
+         *
+         * @param concurrencyLevels concurrency levels.
+         * @return this builder.
+         * @throws IllegalArgumentException if no level is provided or any
+         *                                  level is less than 1.
+         */
+        public Builder setConcurrencyLevels(final int... concurrencyLevels) {
+            if (concurrencyLevels == null || concurrencyLevels.length == 0) {
+                throw new IllegalArgumentException();
+            }
+            for (final int level : concurrencyLevels) {
+                if (level < ThumbnailCreator.MIN_CONCURRENT_THREADS) {
+                    throw new IllegalArgumentException();
+                }
+            }
+            mConcurrencyLevels = concurrencyLevels.clone();
+            return this;
+        }
+
+        /**
+         * Sets maximum number of requests in flight.
+         *
+         * @param maxInFlight maximum number of requests in flight.
+         * @return this builder.
+         * @throws IllegalArgumentException if value is less than 1.
+         */
+        public Builder setMaxInFlight(final int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException();
+            }
+            mMaxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Sets seed of random generator used to pick requests and their
+         * arrival times.
+         *
+         * @param seed seed.
+         * @return this builder.
+         */
+        public Builder setSeed(final long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Creates a load test using the configuration of this builder.
+         *
+         * @return a new load test.
+         * @throws IllegalStateException if no workload has been provided.
+         */
+        public LoadTest build() {
+            if (mWorkload == null) {
+                throw new IllegalStateException();
+            }
+            return new LoadTest(this);
+        }
+
+        /**
+         * Returns default concurrency levels, which are powers of two up to
+         * twice the number of available processors.
+         *
+         * @return default concurrency levels.
+         */
+        private static int[] getDefaultConcurrencyLevels() {
+            final int max = 2 * Runtime.getRuntime().availableProcessors();
+            final List<Integer> levels = new ArrayList<>();
+            for (int level = 1; level <= max; level *= 2) {
+                levels.add(level);
+            }
+            final int[] result = new int[levels.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = levels.get(i);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.load;
+
+import com.irurueta.server.commons.image.ImageFormat;
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageOrientation;
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.InvalidImageException;
+import com.irurueta.server.commons.image.ThumbnailFormat;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mix of thumbnail generation requests replayed by a load test.
+ * A request is created for every combination of input image and thumbnail
+ * size that is not larger than the image, and requests are picked uniformly
+ * at random, hence the mix of image sizes is determined by the provided
+ * images (i.e. a corpus generated by CorpusGenerator).
+ * Thumbnails keep the aspect ratio of their images, with their longest side
+ * being the requested size. JPEG and BMP images produce JPEG thumbnails, while
+ * PNG and GIF images produce PNG thumbnails.
+ */
+public class Workload {
+
+    /**
+     * Default sizes (longest side in pixels) of thumbnails.
+     */
+    public static final int[] DEFAULT_SIZES = {64, 256, 1024};
+
+    /**
+     * Requests of workload.
+     */
+    private final List<LoadRequest> mRequests;
+
+    /**
+     * Constructor.
+     *
+     * @param requests requests of workload.
+     * @throws IllegalArgumentException if there are no requests.
+     */
+    public Workload(final List<LoadRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        mRequests = Collections.unmodifiableList(new ArrayList<>(requests));
+    }
+
+    /**
+     * Returns requests of workload.
+     *
+     * @return requests of workload.
+     */
+    public List<LoadRequest> getRequests() {
+        return mRequests;
+    }
+
+    /**
+     * Picks a request at random.
+     *
+     * @param random random generator.
+     * @return picked request.
+     */
+    public LoadRequest next(final Random random) {
+        return mRequests.get(random.nextInt(mRequests.size()));
+    }
+
+    /**
+     * Creates a workload for all valid images contained in a folder.
+     *
+     * @param folder folder containing images.
+     * @param sizes  sizes (longest side in pixels) of thumbnails.
+     * @return created workload.
+     * @throws IOException              if folder cannot be read.
+     * @throws IllegalArgumentException if folder contains no valid images
+     *                                  or no size fits them.
+     */
+    public static Workload fromFolder(final File folder, final int... sizes)
+            throws IOException {
+        final File[] files = folder.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot read " + folder);
+        }
+        Arrays.sort(files);
+        return fromFiles(Arrays.asList(files), sizes);
+    }
+
+    /**
+     * Creates a workload for provided images. Invalid or damaged images and
+     * files of other types are ignored.
+     *
+     * @param files image files.
+     * @param sizes sizes (longest side in pixels) of thumbnails.
+     * @return created workload.
+     * @throws IllegalArgumentException if there are no valid images or no
+     *                                  size fits them.
+     */
+    public static Workload fromFiles(final Collection<File> files,
+                                     final int... sizes) {
+        final List<LoadRequest> requests = new ArrayList<>();
+        for (final File file : files) {
+            if (!file.isFile()) {
+                continue;
+            }
+
+            final ImageReaderResult result;
+            try {
+                result = ImageReader.getInstance().readImage(file);
+            } catch (final InvalidImageException | IOException |
+                    RuntimeException e) {
+                continue;
+            }
+            final ImageMetadata metadata = result.getMetadata();
+            if (metadata == null || metadata.getWidth() <= 0 ||
+                    metadata.getHeight() <= 0 || !canDecode(file)) {
+                continue;
+            }
+
+            final ImageFormat imageFormat = result.getImageFormat();
+            final ThumbnailFormat format = imageFormat == ImageFormat.PNG ||
+                    imageFormat == ImageFormat.GIF ? ThumbnailFormat.PNG :
+                    ThumbnailFormat.JPEG;
+            final int imageWidth = metadata.getWidth();
+            final int imageHeight = metadata.getHeight();
+            final ImageOrientation orientation = metadata.getOrientation();
+            // thumbnails of rotated images have their size exchanged
+            final boolean exchange =
+                    orientation == ImageOrientation.RIGHT_TOP ||
+                    orientation == ImageOrientation.LEFT_BOTTOM;
+            for (final int size : sizes) {
+                final int longest = Math.max(imageWidth, imageHeight);
+                if (size <= 0 || size > longest) {
+                    continue;
+                }
+                final int scaledWidth = Math.max(1, (int) ((long) imageWidth *
+                        size / longest));
+                final int scaledHeight = Math.max(1, (int) ((long) imageHeight *
+                        size / longest));
+                requests.add(new LoadRequest(file, orientation,
+                        exchange ? scaledHeight : scaledWidth,
+                        exchange ? scaledWidth : scaledHeight, format,
+                        (long) imageWidth * imageHeight));
+            }
+        }
+        return new Workload(requests);
+    }
+
+    /**
+     * Indicates whether image data of provided file can be decoded, since
+     * damaged files might have valid headers.
+     *
+     * @param file image file.
+     * @return true if image can be decoded, false otherwise.
+     */
+    private static boolean canDecode(final File file) {
+        try {
+            return ImageIO.read(file) != null;
+        } catch (final IOException | RuntimeException e) {
+            return false;
+        }
+    }
+}
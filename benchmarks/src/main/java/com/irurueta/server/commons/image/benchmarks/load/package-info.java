@@ -0,0 +1,22 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * This package contains a load test driver that replays a workload of mixed
+ * image sizes at a given arrival rate against thumbnail creators configured
+ * with an increasing number of concurrent threads, in order to find the
+ * concurrency level beyond which throughput no longer improves.
+ */
+package com.irurueta.server.commons.image.benchmarks.load;
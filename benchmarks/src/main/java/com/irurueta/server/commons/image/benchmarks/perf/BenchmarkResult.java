@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of a single benchmark (with a given combination of parameters and
+ * mode) as stored by JMH in a JSON result file.
+ * Besides the aggregated score, the score of each measurement iteration is
+ * kept so that results of different runs can be statistically compared, along
+ * with the normalized allocation rate (bytes per operation) when the GC
+ * profiler was enabled.
+ */
+public class BenchmarkResult {
+
+    /**
+     * Name of JMH secondary metric containing normalized allocation rate.
+     * JMH prefixes profiler metrics with a middle dot.
+     */
+    static final String ALLOCATION_METRIC = "·gc.alloc.rate.norm";
+
+    /**
+     * Fully qualified name of benchmark method.
+     */
+    private final String mBenchmark;
+
+    /**
+     * Benchmark mode (i.e. thrpt, avgt, sample or ss).
+     */
+    private final String mMode;
+
+    /**
+     * Benchmark parameters sorted by name.
+     */
+    private final Map<String, String> mParams;
+
+    /**
+     * Aggregated score.
+     */
+    private final double mScore;
+
+    /**
+     * Error of aggregated score at 99.9% confidence.
+     */
+    private final double mScoreError;
+
+    /**
+     * Unit of score.
+     */
+    private final String mScoreUnit;
+
+    /**
+     * Score of each measurement iteration.
+     */
+    private final double[] mSamples;
+
+    /**
+     * Normalized allocation rate in bytes per operation or NaN if not
+     * available.
+     */
+    private final double mAllocation;
+
+    /**
+     * Normalized allocation rate of each measurement iteration.
+     */
+    private final double[] mAllocationSamples;
+
+    /**
+     * Constructor.
+     *
+     * @param benchmark         fully qualified name of benchmark method.
+     * @param mode              benchmark mode.
+     * @param params            benchmark parameters.
+     * @param score             aggregated score.
+     * @param scoreError        error of aggregated score.
+     * @param scoreUnit         unit of score.
+     * @param samples           score of each measurement iteration.
+     * @param allocation        normalized allocation rate or NaN.
+     * @param allocationSamples normalized allocation rate of each measurement
+     *                          iteration.
+     * @throws IllegalArgumentException if benchmark, mode or samples are not
+     *                                  provided.
+     */
+    public BenchmarkResult(final String benchmark, final String mode,
+                           final Map<String, String> params, final double score,
+                           final double scoreError, final String scoreUnit,
+                           final double[] samples, final double allocation,
+                           final double[] allocationSamples) {
+        if (benchmark == null || mode == null || samples == null) {
+            throw new IllegalArgumentException();
+        }
+        mBenchmark = benchmark;
+        mMode = mode;
+        mParams = params != null ?
+                Collections.unmodifiableMap(new TreeMap<>(params)) :
+                Collections.<String, String>emptyMap();
+        mScore = score;
+        mScoreError = scoreError;
+        mScoreUnit = scoreUnit;
+        mSamples = samples.clone();
+        mAllocation = allocation;
+        mAllocationSamples = allocationSamples != null ?
+                allocationSamples.clone() : new double[0];
+    }
+
+    /**
+     * Returns fully qualified name of benchmark method.
+     *
+     * @return fully qualified name of benchmark method.
+     */
+    public String getBenchmark() {
+        return mBenchmark;
+    }
+
+    /**
+     * Returns benchmark name without package, i.e. Class.method.
+     *
+     * @return short name of benchmark.
+     */
+    public String getShortName() {
+        final int method = mBenchmark.lastIndexOf('.');
+        final int type = method > 0 ?
+                mBenchmark.lastIndexOf('.', method - 1) : -1;
+        return mBenchmark.substring(type + 1);
+    }
+
+    /**
+     * Returns benchmark mode (i.e. thrpt, avgt, sample or ss).
+     *
+     * @return benchmark mode.
+     */
+    public String getMode() {
+        return mMode;
+    }
+
+    /**
+     * Returns benchmark parameters sorted by name.
+     *
+     * @return benchmark parameters.
+     */
+    public Map<String, String> getParams() {
+        return mParams;
+    }
+
+    /**
+     * Returns key uniquely identifying this benchmark, its parameters and mode
+     * within a run, so that results of different runs can be matched.
+     *
+     * @return key of this result.
+     */
+    public String getKey() {
+        final StringBuilder builder = new StringBuilder(getShortName());
+        if (!mParams.isEmpty()) {
+            builder.append(mParams);
+        }
+        return builder.append(' ').append(mMode).toString();
+    }
+
+    /**
+     * Returns aggregated score.
+     *
+     * @return aggregated score.
+     */
+    public double getScore() {
+        return mScore;
+    }
+
+    /**
+     * Returns error of aggregated score at 99.9% confidence.
+     *
+     * @return error of aggregated score.
+     */
+    public double getScoreError() {
+        return mScoreError;
+    }
+
+    /**
+     * Returns unit of score.
+     *
+     * @return unit of score.
+     */
+    public String getScoreUnit() {
+        return mScoreUnit;
+    }
+
+    /**
+     * Indicates whether higher scores are better, which is the case for
+     * throughput mode. For the rest of modes score is a time per operation.
+     *
+     * @return true if higher scores are better, false otherwise.
+     */
+    public boolean isHigherBetter() {
+        return "thrpt".equals(mMode);
+    }
+
+    /**
+     * Returns score of each measurement iteration.
+     *
+     * @return score of each measurement iteration.
+     */
+    public double[] getSamples() {
+        return mSamples.clone();
+    }
+
+    /**
+     * Returns normalized allocation rate in bytes per operation.
+     *
+     * @return normalized allocation rate or NaN if GC profiler was not
+     * enabled.
+     */
+    public double getAllocation() {
+        return mAllocation;
+    }
+
+    /**
+     * Returns normalized allocation rate of each measurement iteration.
+     *
+     * @return normalized allocation rate of each measurement iteration.
+     */
+    public double[] getAllocationSamples() {
+        return mAllocationSamples.clone();
+    }
+
+    /**
+     * Returns a string representation of this result.
+     *
+     * @return string representation.
+     */
+    @Override
+    public String toString() {
+        return getKey() + ": " + mScore + " ± " + mScoreError + " " +
+                mScoreUnit;
+    }
+
+    /**
+     * Parses the contents of a JMH JSON result file.
+     *
+     * @param json contents of a JMH JSON result file.
+     * @return parsed results.
+     * @throws IllegalArgumentException if json is not a valid JMH result
+     *                                  file.
+     */
+    public static List<BenchmarkResult> parse(final String json) {
+        final Object root = Json.parse(json);
+        if (!(root instanceof List)) {
+            throw new IllegalArgumentException();
+        }
+
+        final List<BenchmarkResult> results = new ArrayList<>();
+        for (final Object item : (List<?>) root) {
+            if (!(item instanceof Map)) {
+                throw new IllegalArgumentException();
+            }
+            results.add(parse((Map<?, ?>) item));
+        }
+        return results;
+    }
+
+    /**
+     * Parses a single benchmark result of a JMH JSON result file.
+     *
+     * @param item JSON object of benchmark result.
+     * @return parsed result.
+     * @throws IllegalArgumentException if item is not a valid JMH benchmark
+     *                                  result.
+     */
+    private static BenchmarkResult parse(final Map<?, ?> item) {
+        final Object benchmark = item.get("benchmark");
+        final Object mode = item.get("mode");
+        final Object primary = item.get("primaryMetric");
+        if (!(benchmark instanceof String) || !(mode instanceof String) ||
+                !(primary instanceof Map)) {
+            throw new IllegalArgumentException();
+        }
+
+        final Map<String, String> params = new TreeMap<>();
+        final Object paramsItem = item.get("params");
+        if (paramsItem instanceof Map) {
+            for (final Map.Entry<?, ?> entry :
+                    ((Map<?, ?>) paramsItem).entrySet()) {
+                params.put(String.valueOf(entry.getKey()),
+                        String.valueOf(entry.getValue()));
+            }
+        }
+
+        final Map<?, ?> primaryMetric = (Map<?, ?>) primary;
+        double allocation = Double.NaN;
+        double[] allocationSamples = null;
+        final Object secondary = item.get("secondaryMetrics");
+        if (secondary instanceof Map) {
+            final Object alloc = ((Map<?, ?>) secondary).get(
+                    ALLOCATION_METRIC);
+            if (alloc instanceof Map) {
+                allocation = Json.getNumber((Map<?, ?>) alloc, "score");
+                allocationSamples = samples((Map<?, ?>) alloc);
+            }
+        }
+
+        final Object unit = primaryMetric.get("scoreUnit");
+        return new BenchmarkResult((String) benchmark, (String) mode, params,
+                Json.getNumber(primaryMetric, "score"),
+                Json.getNumber(primaryMetric, "scoreError"),
+                unit != null ? unit.toString() : null,
+                samples(primaryMetric), allocation, allocationSamples);
+    }
+
+    /**
+     * Obtains score of each measurement iteration of a metric.
+     * Iterations of all forks are flattened. When a metric only contains
+     * histograms (sample time mode), the mean of each iteration histogram is
+     * used.
+     *
+     * @param metric JSON object of metric.
+     * @return score of each measurement iteration.
+     */
+    private static double[] samples(final Map<?, ?> metric) {
+        final List<Double> values = new ArrayList<>();
+        final Object raw = metric.get("rawData");
+        final Object histogram = metric.get("rawDataHistogram");
+        if (raw instanceof List) {
+            for (final Object fork : (List<?>) raw) {
+                for (final Object iteration : asList(fork)) {
+                    values.add(toDouble(iteration));
+                }
+            }
+        } else if (histogram instanceof List) {
+            for (final Object fork : (List<?>) histogram) {
+                for (final Object iteration : asList(fork)) {
+                    double sum = 0.0;
+                    double count = 0.0;
+                    for (final Object bin : asList(iteration)) {
+                        final List<?> pair = asList(bin);
+                        if (pair.size() != 2) {
+                            throw new IllegalArgumentException();
+                        }
+                        final double c = toDouble(pair.get(1));
+                        sum += toDouble(pair.get(0)) * c;
+                        count += c;
+                    }
+                    if (count > 0.0) {
+                        values.add(sum / count);
+                    }
+                }
+            }
+        }
+
+        final double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Casts a JSON value into a list.
+     *
+     * @param value JSON value.
+     * @return list.
+     * @throws IllegalArgumentException if value is not a list.
+     */
+    private static List<?> asList(final Object value) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException();
+        }
+        return (List<?>) value;
+    }
+
+    /**
+     * Converts a JSON value into a double.
+     *
+     * @param value JSON value.
+     * @return converted value.
+     * @throws IllegalArgumentException if value is not a number.
+     */
+    private static double toDouble(final Object value) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (final NumberFormatException ignore) {
+                // fall through
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+}
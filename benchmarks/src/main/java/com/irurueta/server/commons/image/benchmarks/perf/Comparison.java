@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+/**
+ * Comparison of a benchmark result against its baseline.
+ */
+public class Comparison {
+
+    /**
+     * Result of baseline run or null if benchmark is new.
+     */
+    private final BenchmarkResult mBaseline;
+
+    /**
+     * Result of current run or null if benchmark is missing.
+     */
+    private final BenchmarkResult mCurrent;
+
+    /**
+     * Relative change of score or NaN if not available.
+     */
+    private final double mScoreChange;
+
+    /**
+     * Relative change of allocation rate or NaN if not available.
+     */
+    private final double mAllocationChange;
+
+    /**
+     * P-value of the hypothesis that both score samples have the same mean,
+     * or NaN if not available.
+     */
+    private final double mPValue;
+
+    /**
+     * Outcome of comparison.
+     */
+    private final Verdict mVerdict;
+
+    /**
+     * Constructor.
+     *
+     * @param baseline         result of baseline run or null.
+     * @param current          result of current run or null.
+     * @param scoreChange      relative change of score.
+     * @param allocationChange relative change of allocation rate.
+     * @param pValue           p-value of score change.
+     * @param verdict          outcome of comparison.
+     */
+    Comparison(final BenchmarkResult baseline, final BenchmarkResult current,
+               final double scoreChange, final double allocationChange,
+               final double pValue, final Verdict verdict) {
+        mBaseline = baseline;
+        mCurrent = current;
+        mScoreChange = scoreChange;
+        mAllocationChange = allocationChange;
+        mPValue = pValue;
+        mVerdict = verdict;
+    }
+
+    /**
+     * Returns key of compared benchmark.
+     *
+     * @return key of compared benchmark.
+     */
+    public String getKey() {
+        return mCurrent != null ? mCurrent.getKey() : mBaseline.getKey();
+    }
+
+    /**
+     * Returns result of baseline run.
+     *
+     * @return result of baseline run or null if benchmark is new.
+     */
+    public BenchmarkResult getBaseline() {
+        return mBaseline;
+    }
+
+    /**
+     * Returns result of current run.
+     *
+     * @return result of current run or null if benchmark is missing.
+     */
+    public BenchmarkResult getCurrent() {
+        return mCurrent;
+    }
+
+    /**
+     * Returns relative change of score, i.e. 0.1 if score increased 10%.
+     *
+     * @return relative change of score or NaN if not available.
+     */
+    public double getScoreChange() {
+        return mScoreChange;
+    }
+
+    /**
+     * Returns relative change of normalized allocation rate.
+     *
+     * @return relative change of allocation rate or NaN if not available.
+     */
+    public double getAllocationChange() {
+        return mAllocationChange;
+    }
+
+    /**
+     * Returns p-value of the hypothesis that score did not change.
+     *
+     * @return p-value or NaN if not available.
+     */
+    public double getPValue() {
+        return mPValue;
+    }
+
+    /**
+     * Returns outcome of comparison.
+     *
+     * @return outcome of comparison.
+     */
+    public Verdict getVerdict() {
+        return mVerdict;
+    }
+}
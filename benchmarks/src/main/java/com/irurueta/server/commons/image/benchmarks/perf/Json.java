@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser for JMH result files.
+ * Objects are parsed into maps keeping order of keys, arrays into lists,
+ * numbers into doubles, and strings, booleans and nulls into their Java
+ * counterparts. JMH writes "NaN" and "Infinity" as strings, which are also
+ * accepted as numbers by getNumber.
+ */
+final class Json {
+
+    /**
+     * Text being parsed.
+     */
+    private final String mText;
+
+    /**
+     * Current position within text.
+     */
+    private int mPos;
+
+    /**
+     * Constructor.
+     *
+     * @param text text to be parsed.
+     */
+    private Json(final String text) {
+        mText = text;
+    }
+
+    /**
+     * Parses a JSON document.
+     *
+     * @param text JSON document.
+     * @return parsed value.
+     * @throws IllegalArgumentException if text is not valid JSON.
+     */
+    static Object parse(final String text) {
+        final Json json = new Json(text);
+        final Object result = json.parseValue();
+        json.skipWhitespace();
+        if (json.mPos != text.length()) {
+            throw json.error();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a member of a JSON object as a number.
+     *
+     * @param object JSON object.
+     * @param name   name of member.
+     * @return value of member or NaN if member is missing or not a number.
+     */
+    static double getNumber(final Map<?, ?> object, final String name) {
+        final Object value = object.get(name);
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (final NumberFormatException ignore) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Parses a value.
+     *
+     * @return parsed value.
+     */
+    private Object parseValue() {
+        skipWhitespace();
+        if (mPos >= mText.length()) {
+            throw error();
+        }
+        final char c = mText.charAt(mPos);
+        switch (c) {
+            case '{':
+                return parseObject();
+            case '[':
+                return parseArray();
+            case '"':
+                return parseString();
+            case 't':
+                expect("true");
+                return Boolean.TRUE;
+            case 'f':
+                expect("false");
+                return Boolean.FALSE;
+            case 'n':
+                expect("null");
+                return null;
+            default:
+                return parseNumber();
+        }
+    }
+
+    /**
+     * Parses an object.
+     *
+     * @return parsed object.
+     */
+    private Map<String, Object> parseObject() {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        mPos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            mPos++;
+            return result;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error();
+            }
+            final String name = parseString();
+            skipWhitespace();
+            if (peek() != ':') {
+                throw error();
+            }
+            mPos++;
+            result.put(name, parseValue());
+            skipWhitespace();
+            final char c = next();
+            if (c == '}') {
+                return result;
+            }
+            if (c != ',') {
+                throw error();
+            }
+        }
+    }
+
+    /**
+     * Parses an array.
+     *
+     * @return parsed array.
+     */
+    private List<Object> parseArray() {
+        final List<Object> result = new ArrayList<>();
+        mPos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            mPos++;
+            return result;
+        }
+        while (true) {
+            result.add(parseValue());
+            skipWhitespace();
+            final char c = next();
+            if (c == ']') {
+                return result;
+            }
+            if (c != ',') {
+                throw error();
+            }
+        }
+    }
+
+    /**
+     * Parses a string.
+     *
+     * @return parsed string.
+     */
+    private String parseString() {
+        final StringBuilder builder = new StringBuilder();
+        mPos++;
+        while (true) {
+            final char c = next();
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            final char escaped = next();
+            switch (escaped) {
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (mPos + 4 > mText.length()) {
+                        throw error();
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(
+                                mText.substring(mPos, mPos + 4), 16));
+                    } catch (final NumberFormatException e) {
+                        throw error();
+                    }
+                    mPos += 4;
+                    break;
+                default:
+                    builder.append(escaped);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Parses a number.
+     *
+     * @return parsed number.
+     */
+    private Double parseNumber() {
+        final int start = mPos;
+        while (mPos < mText.length() &&
+                "+-0123456789.eE".indexOf(mText.charAt(mPos)) >= 0) {
+            mPos++;
+        }
+        try {
+            return Double.valueOf(mText.substring(start, mPos));
+        } catch (final NumberFormatException e) {
+            mPos = start;
+            throw error();
+        }
+    }
+
+    /**
+     * Consumes an expected literal.
+     *
+     * @param literal expected literal.
+     */
+    private void expect(final String literal) {
+        if (!mText.startsWith(literal, mPos)) {
+            throw error();
+        }
+        mPos += literal.length();
+    }
+
+    /**
+     * Skips any whitespace.
+     */
+    private void skipWhitespace() {
+        while (mPos < mText.length() &&
+                Character.isWhitespace(mText.charAt(mPos))) {
+            mPos++;
+        }
+    }
+
+    /**
+     * Returns current character without consuming it.
+     *
+     * @return current character.
+     */
+    private char peek() {
+        if (mPos >= mText.length()) {
+            throw error();
+        }
+        return mText.charAt(mPos);
+    }
+
+    /**
+     * Consumes current character.
+     *
+     * @return consumed character.
+     */
+    private char next() {
+        final char c = peek();
+        mPos++;
+        return c;
+    }
+
+    /**
+     * Creates exception indicating that text is not valid at current
+     * position.
+     *
+     * @return created exception.
+     */
+    private IllegalArgumentException error() {
+        return new IllegalArgumentException("Invalid JSON at position " +
+                mPos);
+    }
+}
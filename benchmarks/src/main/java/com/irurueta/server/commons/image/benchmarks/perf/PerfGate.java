@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Performance regression gate.
+ * Runs benchmarks with the GC profiler enabled, stores their results in a
+ * result store, compares them against a baseline (a pinned run or the
+ * previous run), prints and stores a summary report, and exits with a non
+ * zero status if any benchmark regressed, so that builds can be failed.
+ * The first run of a store has no baseline and only records results.
+ * Any argument is passed to JMH, hence benchmarks, parameters or iterations
+ * can be changed as usual. If no benchmark is included, ImageReader,
+ * thumbnail and thumbnail allocation benchmarks are run.
+ * The gate is configured with the following system properties:
+ * <ul>
+ * <li>perf.store: folder of result store. By default benchmarks/perf-results,
+ * relative to the root folder of the library, where benchmarks must run
+ * from.</li>
+ * <li>perf.tolerances: properties file containing tolerances of benchmarks.
+ * By default benchmarks/perf-tolerances.properties, if it exists.</li>
+ * <li>perf.alpha: significance level. By default 0.05.</li>
+ * <li>perf.pin: if true, current run is pinned as baseline of later
+ * runs.</li>
+ * <li>perf.skipRun: if true, benchmarks are not run and latest stored run is
+ * compared against its baseline instead.</li>
+ * </ul>
+ */
+public class PerfGate {
+
+    /**
+     * Benchmarks run by default.
+     */
+    public static final String DEFAULT_INCLUDE =
+            "ImageReaderBenchmark|ThumbnailBenchmark|" +
+                    "ThumbnailAllocationBenchmark";
+
+    /**
+     * Default folder of result store.
+     */
+    public static final String DEFAULT_STORE = "benchmarks/perf-results";
+
+    /**
+     * Default file of tolerances.
+     */
+    public static final String DEFAULT_TOLERANCES =
+            "benchmarks/perf-tolerances.properties";
+
+    /**
+     * Extension of report files.
+     */
+    private static final String REPORT_EXTENSION = ".md";
+
+    /**
+     * Constructor.
+     * Prevents instantiation.
+     */
+    private PerfGate() {
+    }
+
+    /**
+     * Runs the gate.
+     *
+     * @param args arguments passed to JMH.
+     * @throws RunnerException             if benchmarks fail.
+     * @throws CommandLineOptionException  if arguments are not valid.
+     * @throws IOException                 if results cannot be stored or
+     *                                     read.
+     */
+    public static void main(final String[] args) throws RunnerException,
+            CommandLineOptionException, IOException {
+        final ResultStore store = new ResultStore(new File(
+                System.getProperty("perf.store", DEFAULT_STORE)));
+
+        final File run;
+        if (Boolean.getBoolean("perf.skipRun")) {
+            run = store.getPrevious(null);
+            if (run == null) {
+                System.err.println("No runs stored in " + store.getFolder());
+                System.exit(1);
+                return;
+            }
+        } else {
+            run = store.newRun();
+            runBenchmarks(args, run);
+        }
+
+        if (Boolean.getBoolean("perf.pin")) {
+            store.pin(run);
+        }
+
+        final File baseline = store.getBaseline(run);
+        if (baseline == null || baseline.getName().equals(run.getName())) {
+            System.out.println("No baseline found, results recorded in " +
+                    run);
+            return;
+        }
+
+        final PerfReport report = compare(baseline, run);
+        final String name = run.getName();
+        final File reportFile = new File(run.getParentFile(), name.substring(
+                0, name.length() - ResultStore.RUN_EXTENSION.length()) +
+                REPORT_EXTENSION);
+        report.write(reportFile);
+        System.out.println(report.toMarkdown());
+        System.out.println("Report written to " + reportFile);
+
+        if (report.hasRegressions()) {
+            System.err.println(report.count(Verdict.REGRESSED) +
+                    " benchmark(s) regressed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares a run against a baseline using configured tolerances and
+     * significance level.
+     *
+     * @param baseline JMH JSON result file of baseline.
+     * @param run      JMH JSON result file of run.
+     * @return report of comparison.
+     * @throws IOException if any file cannot be read.
+     */
+    public static PerfReport compare(final File baseline, final File run)
+            throws IOException {
+        final String tolerancesPath = System.getProperty("perf.tolerances");
+        final File tolerancesFile = new File(tolerancesPath != null ?
+                tolerancesPath : DEFAULT_TOLERANCES);
+        final Tolerances tolerances = tolerancesPath != null ||
+                tolerancesFile.isFile() ? Tolerances.load(tolerancesFile) :
+                new Tolerances();
+        final double alpha = Double.parseDouble(System.getProperty(
+                "perf.alpha", String.valueOf(ResultComparator.DEFAULT_ALPHA)));
+
+        final List<Comparison> comparisons = new ResultComparator(
+                tolerances, alpha).compare(ResultStore.load(baseline),
+                ResultStore.load(run));
+        return new PerfReport(comparisons, baseline.getName(), run.getName());
+    }
+
+    /**
+     * Runs benchmarks and writes their results as JSON into provided file.
+     *
+     * @param args arguments passed to JMH.
+     * @param run  file where results are written.
+     * @throws RunnerException            if benchmarks fail.
+     * @throws CommandLineOptionException if arguments are not valid.
+     */
+    private static void runBenchmarks(final String[] args, final File run)
+            throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        final ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(commandLine)
+                .resultFormat(ResultFormatType.JSON)
+                .result(run.getPath());
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(DEFAULT_INCLUDE);
+        }
+        if (commandLine.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+}
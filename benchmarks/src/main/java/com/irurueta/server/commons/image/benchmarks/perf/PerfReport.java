@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Summary report of the comparison of a run against its baseline, showing the
+ * change of score and allocation rate of each benchmark, formatted as a
+ * markdown table so that it can be read on a console or published by a
+ * continuous integration server.
+ */
+public class PerfReport {
+
+    /**
+     * Comparison of each benchmark.
+     */
+    private final List<Comparison> mComparisons;
+
+    /**
+     * Name of baseline run.
+     */
+    private final String mBaselineName;
+
+    /**
+     * Name of current run.
+     */
+    private final String mCurrentName;
+
+    /**
+     * Constructor.
+     *
+     * @param comparisons  comparison of each benchmark.
+     * @param baselineName name of baseline run.
+     * @param currentName  name of current run.
+     * @throws IllegalArgumentException if comparisons are not provided.
+     */
+    public PerfReport(final List<Comparison> comparisons,
+                      final String baselineName, final String currentName) {
+        if (comparisons == null) {
+            throw new IllegalArgumentException();
+        }
+        mComparisons = new ArrayList<>(comparisons);
+        mBaselineName = baselineName;
+        mCurrentName = currentName;
+    }
+
+    /**
+     * Returns comparison of each benchmark.
+     *
+     * @return comparison of each benchmark.
+     */
+    public List<Comparison> getComparisons() {
+        return new ArrayList<>(mComparisons);
+    }
+
+    /**
+     * Returns number of benchmarks having provided verdict.
+     *
+     * @param verdict a verdict.
+     * @return number of benchmarks having provided verdict.
+     */
+    public int count(final Verdict verdict) {
+        int count = 0;
+        for (final Comparison comparison : mComparisons) {
+            if (comparison.getVerdict() == verdict) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Indicates whether any benchmark regressed.
+     *
+     * @return true if any benchmark regressed, false otherwise.
+     */
+    public boolean hasRegressions() {
+        return count(Verdict.REGRESSED) > 0;
+    }
+
+    /**
+     * Returns report formatted as markdown.
+     *
+     * @return report as markdown.
+     */
+    public String toMarkdown() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("# Performance report\n\n");
+        builder.append("Baseline: ").append(mBaselineName).append("  \n");
+        builder.append("Current: ").append(mCurrentName).append("\n\n");
+
+        final Map<Verdict, Integer> counts = new EnumMap<>(Verdict.class);
+        for (final Verdict verdict : Verdict.values()) {
+            counts.put(verdict, count(verdict));
+        }
+        builder.append("| Verdict | Benchmarks |\n|---|---:|\n");
+        for (final Map.Entry<Verdict, Integer> entry : counts.entrySet()) {
+            builder.append("| ").append(entry.getKey()).append(" | ")
+                    .append(entry.getValue()).append(" |\n");
+        }
+
+        builder.append("\n| Benchmark | Baseline | Current | Change | " +
+                "Alloc B/op | Alloc change | p-value | Verdict |\n");
+        builder.append("|---|---:|---:|---:|---:|---:|---:|---|\n");
+        for (final Comparison comparison : mComparisons) {
+            final BenchmarkResult baseline = comparison.getBaseline();
+            final BenchmarkResult current = comparison.getCurrent();
+            final BenchmarkResult any = current != null ? current : baseline;
+            builder.append("| ").append(comparison.getKey())
+                    .append(" | ").append(score(baseline))
+                    .append(" | ").append(score(current))
+                    .append(" | ").append(percent(comparison.getScoreChange()))
+                    .append(" | ").append(number(any.getAllocation()))
+                    .append(" | ").append(percent(
+                            comparison.getAllocationChange()))
+                    .append(" | ").append(number(comparison.getPValue()))
+                    .append(" | ").append(comparison.getVerdict())
+                    .append(" |\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes report formatted as markdown into provided file.
+     *
+     * @param file file where report is written.
+     * @throws IOException if file cannot be written.
+     */
+    public void write(final File file) throws IOException {
+        Files.write(file.toPath(), toMarkdown().getBytes(
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Formats score of a result along with its error and unit.
+     *
+     * @param result a result or null.
+     * @return formatted score.
+     */
+    private static String score(final BenchmarkResult result) {
+        if (result == null) {
+            return "-";
+        }
+        return number(result.getScore()) + " ± " +
+                number(result.getScoreError()) + " " + result.getScoreUnit();
+    }
+
+    /**
+     * Formats a relative change as a percentage.
+     *
+     * @param change a relative change.
+     * @return formatted percentage.
+     */
+    private static String percent(final double change) {
+        if (Double.isNaN(change)) {
+            return "-";
+        }
+        return String.format(Locale.ENGLISH, "%+.1f%%", change * 100.0);
+    }
+
+    /**
+     * Formats a number using 3 significant digits.
+     *
+     * @param value a value.
+     * @return formatted value.
+     */
+    private static String number(final double value) {
+        if (Double.isNaN(value)) {
+            return "-";
+        }
+        return String.format(Locale.ENGLISH, "%.3g", value);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+import org.apache.commons.math3.stat.inference.TTest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares results of a run against a baseline run.
+ * A benchmark regresses when its score gets worse beyond its tolerance and
+ * the change is statistically significant according to a Welch t-test on the
+ * scores of the measurement iterations of both runs, or when its normalized
+ * allocation rate grows beyond its tolerance. Requiring significance prevents
+ * noisy benchmarks from failing the gate, while tolerances prevent tiny but
+ * significant changes from doing so.
+ * Allocation rates are nearly deterministic, hence no significance test is
+ * applied to them, but a minimum absolute change is required so that
+ * benchmarks allocating very little are not flagged.
+ */
+public class ResultComparator {
+
+    /**
+     * Default significance level.
+     */
+    public static final double DEFAULT_ALPHA = 0.05;
+
+    /**
+     * Minimum absolute change of allocation rate (in bytes per operation) to
+     * be taken into account.
+     */
+    public static final double MIN_ALLOCATION_CHANGE = 64.0;
+
+    /**
+     * Tolerances of benchmarks.
+     */
+    private final Tolerances mTolerances;
+
+    /**
+     * Significance level.
+     */
+    private final double mAlpha;
+
+    /**
+     * Constructor using default tolerances and significance level.
+     */
+    public ResultComparator() {
+        this(new Tolerances(), DEFAULT_ALPHA);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tolerances tolerances of benchmarks.
+     * @param alpha      significance level.
+     * @throws IllegalArgumentException if tolerances are not provided or alpha
+     *                                  is not between 0.0 and 0.5.
+     */
+    public ResultComparator(final Tolerances tolerances, final double alpha) {
+        if (tolerances == null || !(alpha > 0.0 && alpha <= 0.5)) {
+            throw new IllegalArgumentException();
+        }
+        mTolerances = tolerances;
+        mAlpha = alpha;
+    }
+
+    /**
+     * Returns tolerances of benchmarks.
+     *
+     * @return tolerances of benchmarks.
+     */
+    public Tolerances getTolerances() {
+        return mTolerances;
+    }
+
+    /**
+     * Returns significance level.
+     *
+     * @return significance level.
+     */
+    public double getAlpha() {
+        return mAlpha;
+    }
+
+    /**
+     * Compares results of a run against a baseline run. Comparisons follow
+     * the order of current results, followed by missing ones.
+     *
+     * @param baseline results of baseline run.
+     * @param current  results of current run.
+     * @return comparison of each benchmark.
+     * @throws IllegalArgumentException if any list is not provided.
+     */
+    public List<Comparison> compare(final List<BenchmarkResult> baseline,
+                                    final List<BenchmarkResult> current) {
+        if (baseline == null || current == null) {
+            throw new IllegalArgumentException();
+        }
+
+        final Map<String, BenchmarkResult> remaining = new LinkedHashMap<>();
+        for (final BenchmarkResult result : baseline) {
+            remaining.put(result.getKey(), result);
+        }
+
+        final List<Comparison> comparisons = new ArrayList<>();
+        for (final BenchmarkResult result : current) {
+            final BenchmarkResult base = remaining.remove(result.getKey());
+            comparisons.add(base != null ? compare(base, result) :
+                    new Comparison(null, result, Double.NaN, Double.NaN,
+                            Double.NaN, Verdict.NEW));
+        }
+        for (final BenchmarkResult base : remaining.values()) {
+            comparisons.add(new Comparison(base, null, Double.NaN, Double.NaN,
+                    Double.NaN, Verdict.MISSING));
+        }
+        return comparisons;
+    }
+
+    /**
+     * Compares a benchmark result against its baseline.
+     *
+     * @param baseline result of baseline run.
+     * @param current  result of current run.
+     * @return comparison.
+     */
+    public Comparison compare(final BenchmarkResult baseline,
+                              final BenchmarkResult current) {
+        final double scoreChange = relativeChange(baseline.getScore(),
+                current.getScore());
+        final double pValue = pValue(baseline.getSamples(),
+                current.getSamples());
+        // p-value cannot be computed with less than two samples per run, in
+        // which case only tolerance is taken into account
+        final boolean significant = Double.isNaN(pValue) || pValue < mAlpha;
+
+        // positive when current result is worse than baseline
+        final double worsening = current.isHigherBetter() ? -scoreChange :
+                scoreChange;
+        final double scoreTolerance = mTolerances.getScoreTolerance(current);
+        final boolean scoreRegressed = significant &&
+                worsening > scoreTolerance;
+        final boolean scoreImproved = significant &&
+                -worsening > scoreTolerance;
+
+        final double baseAlloc = baseline.getAllocation();
+        final double currentAlloc = current.getAllocation();
+        final double allocationChange = relativeChange(baseAlloc,
+                currentAlloc);
+        final double allocationDelta = currentAlloc - baseAlloc;
+        final double allocationTolerance = Math.max(MIN_ALLOCATION_CHANGE,
+                mTolerances.getAllocationTolerance(current) * baseAlloc);
+        final boolean allocationRegressed =
+                allocationDelta > allocationTolerance;
+        final boolean allocationImproved =
+                -allocationDelta > allocationTolerance;
+
+        final Verdict verdict;
+        if (scoreRegressed || allocationRegressed) {
+            verdict = Verdict.REGRESSED;
+        } else if (scoreImproved || allocationImproved) {
+            verdict = Verdict.IMPROVED;
+        } else {
+            verdict = Verdict.UNCHANGED;
+        }
+        return new Comparison(baseline, current, scoreChange,
+                allocationChange, pValue, verdict);
+    }
+
+    /**
+     * Computes relative change between two values.
+     *
+     * @param baseline baseline value.
+     * @param current  current value.
+     * @return relative change or NaN if not available.
+     */
+    private static double relativeChange(final double baseline,
+                                         final double current) {
+        if (Double.isNaN(baseline) || Double.isNaN(current)) {
+            return Double.NaN;
+        }
+        if (baseline == 0.0) {
+            return current == 0.0 ? 0.0 : Double.NaN;
+        }
+        return (current - baseline) / baseline;
+    }
+
+    /**
+     * Computes p-value of a two-sided Welch t-test of the hypothesis that
+     * both samples have the same mean.
+     *
+     * @param baseline samples of baseline run.
+     * @param current  samples of current run.
+     * @return p-value, or NaN if there are not enough samples.
+     */
+    private static double pValue(final double[] baseline,
+                                 final double[] current) {
+        if (baseline.length < 2 || current.length < 2) {
+            return Double.NaN;
+        }
+        if (isConstant(baseline) && isConstant(current)) {
+            // t-test is not defined without variance
+            return baseline[0] == current[0] ? 1.0 : 0.0;
+        }
+        return new TTest().tTest(baseline, current);
+    }
+
+    /**
+     * Indicates whether all values of provided samples are equal.
+     *
+     * @param samples samples to be checked.
+     * @return true if all values are equal, false otherwise.
+     */
+    private static boolean isConstant(final double[] samples) {
+        for (final double sample : samples) {
+            if (sample != samples[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
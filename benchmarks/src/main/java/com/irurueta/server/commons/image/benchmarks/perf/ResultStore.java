@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Folder keeping the JMH JSON result file of every run of the performance
+ * gate, so that each run can be compared with a previous one.
+ * Runs are named after the time they were started, hence sorting them by name
+ * sorts them chronologically. Optionally, a run can be pinned as baseline, in
+ * which case every later run is compared against it instead of against the
+ * previous run.
+ * The store should be kept outside any build output folder so that results
+ * survive clean builds.
+ */
+public class ResultStore {
+
+    /**
+     * Prefix of run files.
+     */
+    public static final String RUN_PREFIX = "run-";
+
+    /**
+     * Extension of run files.
+     */
+    public static final String RUN_EXTENSION = ".json";
+
+    /**
+     * Name of pinned baseline file.
+     */
+    public static final String BASELINE = "baseline.json";
+
+    /**
+     * Format of run timestamps.
+     */
+    private static final String TIMESTAMP_FORMAT = "yyyyMMdd-HHmmss";
+
+    /**
+     * Folder where results are stored.
+     */
+    private final File mFolder;
+
+    /**
+     * Constructor.
+     *
+     * @param folder folder where results are stored. It is created if needed.
+     * @throws IllegalArgumentException if folder is not provided.
+     */
+    public ResultStore(final File folder) {
+        if (folder == null) {
+            throw new IllegalArgumentException();
+        }
+        mFolder = folder;
+    }
+
+    /**
+     * Returns folder where results are stored.
+     *
+     * @return folder where results are stored.
+     */
+    public File getFolder() {
+        return mFolder;
+    }
+
+    /**
+     * Returns file where results of a new run must be written.
+     *
+     * @return file for a new run.
+     * @throws IOException if folder cannot be created.
+     */
+    public File newRun() throws IOException {
+        if (!mFolder.isDirectory() && !mFolder.mkdirs()) {
+            throw new IOException("Cannot create " + mFolder);
+        }
+
+        final String timestamp = new SimpleDateFormat(TIMESTAMP_FORMAT,
+                Locale.ENGLISH).format(new Date());
+        File file = new File(mFolder, RUN_PREFIX + timestamp + RUN_EXTENSION);
+        // several runs started within the same second get a counter
+        for (int i = 1; file.exists(); i++) {
+            file = new File(mFolder, RUN_PREFIX + timestamp + "-" + i +
+                    RUN_EXTENSION);
+        }
+        return file;
+    }
+
+    /**
+     * Returns stored runs sorted chronologically.
+     *
+     * @return stored runs, or an empty list if there are none.
+     */
+    public List<File> getRuns() {
+        final File[] files = mFolder.listFiles();
+        final List<File> runs = new ArrayList<>();
+        if (files == null) {
+            return runs;
+        }
+        Arrays.sort(files);
+        for (final File file : files) {
+            final String name = file.getName();
+            if (file.isFile() && name.startsWith(RUN_PREFIX) &&
+                    name.endsWith(RUN_EXTENSION)) {
+                runs.add(file);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Returns run preceding provided one.
+     *
+     * @param run a stored run or null to obtain latest run.
+     * @return previous run or null if there is none.
+     */
+    public File getPrevious(final File run) {
+        File previous = null;
+        for (final File file : getRuns()) {
+            if (run != null && file.getName().compareTo(run.getName()) >= 0) {
+                break;
+            }
+            previous = file;
+        }
+        return previous;
+    }
+
+    /**
+     * Returns pinned baseline, if any.
+     *
+     * @return pinned baseline or null if no run has been pinned.
+     */
+    public File getPinnedBaseline() {
+        final File baseline = new File(mFolder, BASELINE);
+        return baseline.isFile() ? baseline : null;
+    }
+
+    /**
+     * Returns baseline to compare provided run against, which is the pinned
+     * baseline if any, or the previous run otherwise.
+     *
+     * @param run a stored run.
+     * @return baseline or null if there is none.
+     */
+    public File getBaseline(final File run) {
+        final File pinned = getPinnedBaseline();
+        return pinned != null ? pinned : getPrevious(run);
+    }
+
+    /**
+     * Pins provided run as baseline for later runs.
+     *
+     * @param run run to be pinned.
+     * @throws IOException if run cannot be copied.
+     */
+    public void pin(final File run) throws IOException {
+        Files.copy(run.toPath(), new File(mFolder, BASELINE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads results of a run.
+     *
+     * @param run a JMH JSON result file.
+     * @return loaded results.
+     * @throws IOException              if file cannot be read.
+     * @throws IllegalArgumentException if file is not a valid JMH result
+     *                                  file.
+     */
+    public static List<BenchmarkResult> load(final File run)
+            throws IOException {
+        if (!run.isFile()) {
+            throw new FileNotFoundException(run.getPath());
+        }
+        return BenchmarkResult.parse(new String(
+                Files.readAllBytes(run.toPath()), StandardCharsets.UTF_8));
+    }
+}
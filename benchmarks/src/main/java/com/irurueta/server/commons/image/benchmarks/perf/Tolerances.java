@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Relative changes that are tolerated for each benchmark before a change is
+ * considered an improvement or a regression.
+ * Tolerances can be defined per benchmark class or method in a properties
+ * file, where the most specific entry is used, i.e.:
+ * <pre>
+ * default.score=0.05
+ * default.allocation=0.10
+ * ThumbnailBenchmark.score=0.10
+ * ImageReaderBenchmark.readMetadata.allocation=0.02
+ * </pre>
+ * Score tolerances apply to throughput or time per operation depending on
+ * benchmark mode, and allocation tolerances apply to normalized allocation
+ * rate (bytes per operation).
+ */
+public class Tolerances {
+
+    /**
+     * Default relative tolerance of scores.
+     */
+    public static final double DEFAULT_SCORE_TOLERANCE = 0.05;
+
+    /**
+     * Default relative tolerance of allocation rates.
+     */
+    public static final double DEFAULT_ALLOCATION_TOLERANCE = 0.10;
+
+    /**
+     * Prefix of default entries.
+     */
+    private static final String DEFAULT = "default";
+
+    /**
+     * Suffix of score entries.
+     */
+    private static final String SCORE = ".score";
+
+    /**
+     * Suffix of allocation entries.
+     */
+    private static final String ALLOCATION = ".allocation";
+
+    /**
+     * Tolerance entries.
+     */
+    private final Properties mProperties;
+
+    /**
+     * Constructor using default tolerances for all benchmarks.
+     */
+    public Tolerances() {
+        this(new Properties());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param properties tolerance entries.
+     * @throws IllegalArgumentException if properties are not provided or
+     *                                  contain negative or non numerical
+     *                                  tolerances.
+     */
+    public Tolerances(final Properties properties) {
+        if (properties == null) {
+            throw new IllegalArgumentException();
+        }
+        for (final String name : properties.stringPropertyNames()) {
+            try {
+                if (Double.parseDouble(properties.getProperty(name)) < 0.0) {
+                    throw new IllegalArgumentException();
+                }
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        mProperties = properties;
+    }
+
+    /**
+     * Returns relative tolerance of score of provided benchmark.
+     *
+     * @param result a benchmark result.
+     * @return relative tolerance of score.
+     */
+    public double getScoreTolerance(final BenchmarkResult result) {
+        return lookup(result, SCORE, DEFAULT_SCORE_TOLERANCE);
+    }
+
+    /**
+     * Returns relative tolerance of allocation rate of provided benchmark.
+     *
+     * @param result a benchmark result.
+     * @return relative tolerance of allocation rate.
+     */
+    public double getAllocationTolerance(final BenchmarkResult result) {
+        return lookup(result, ALLOCATION, DEFAULT_ALLOCATION_TOLERANCE);
+    }
+
+    /**
+     * Loads tolerances from a properties file.
+     *
+     * @param file properties file.
+     * @return loaded tolerances.
+     * @throws IOException              if file cannot be read.
+     * @throws IllegalArgumentException if file contains invalid tolerances.
+     */
+    public static Tolerances load(final File file) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream stream = Files.newInputStream(file.toPath())) {
+            properties.load(stream);
+        }
+        return new Tolerances(properties);
+    }
+
+    /**
+     * Finds most specific tolerance entry of a benchmark, by trying
+     * Class.method, Class and default entries in that order.
+     *
+     * @param result       a benchmark result.
+     * @param suffix       suffix of entries.
+     * @param defaultValue value to use if no entry is found.
+     * @return tolerance.
+     */
+    private double lookup(final BenchmarkResult result, final String suffix,
+                          final double defaultValue) {
+        String name = result.getShortName();
+        while (true) {
+            final String value = mProperties.getProperty(name + suffix);
+            if (value != null) {
+                return Double.parseDouble(value);
+            }
+            final int pos = name.lastIndexOf('.');
+            if (pos < 0) {
+                break;
+            }
+            name = name.substring(0, pos);
+        }
+        final String value = mProperties.getProperty(DEFAULT + suffix);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
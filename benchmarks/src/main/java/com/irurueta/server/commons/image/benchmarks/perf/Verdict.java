@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.benchmarks.perf;
+
+/**
+ * Outcome of comparing a benchmark result against its baseline.
+ */
+public enum Verdict {
+    /**
+     * Benchmark became significantly faster or allocates less, beyond its
+     * tolerance.
+     */
+    IMPROVED,
+
+    /**
+     * Benchmark did not change beyond its tolerance, or change is not
+     * statistically significant.
+     */
+    UNCHANGED,
+
+    /**
+     * Benchmark became significantly slower or allocates more, beyond its
+     * tolerance.
+     */
+    REGRESSED,
+
+    /**
+     * Benchmark has no baseline.
+     */
+    NEW,
+
+    /**
+     * Benchmark was present in baseline but was not run.
+     */
+    MISSING
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures bytes allocated on the heap by the current thread, when supported
+ * by the JVM.
+ */
+final class AllocationMeter {
+
+    /**
+     * Value returned when allocated bytes cannot be measured.
+     */
+    static final long UNKNOWN = -1;
+
+    /**
+     * Thread management bean able to report allocated bytes, or null if not
+     * supported.
+     */
+    private static final ThreadMXBean THREAD_BEAN = getThreadBean();
+
+    /**
+     * Constructor.
+     */
+    private AllocationMeter() {
+    }
+
+    /**
+     * Returns total number of bytes allocated by current thread since it
+     * started.
+     *
+     * @return allocated bytes or UNKNOWN if not supported.
+     */
+    static long getAllocatedBytes() {
+        if (THREAD_BEAN == null) {
+            return UNKNOWN;
+        }
+        return ((com.sun.management.ThreadMXBean) THREAD_BEAN)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns number of bytes allocated by current thread since provided
+     * value was obtained.
+     *
+     * @param start value previously returned by getAllocatedBytes().
+     * @return allocated bytes or UNKNOWN if not supported.
+     */
+    static long getAllocatedBytesSince(final long start) {
+        if (start == UNKNOWN) {
+            return UNKNOWN;
+        }
+        final long end = getAllocatedBytes();
+        return end == UNKNOWN ? UNKNOWN : end - start;
+    }
+
+    /**
+     * Obtains thread management bean if it is able to report allocated bytes.
+     *
+     * @return thread management bean or null if not supported.
+     */
+    private static ThreadMXBean getThreadBean() {
+        try {
+            final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean &&
+                    ((com.sun.management.ThreadMXBean) bean)
+                            .isThreadAllocatedMemorySupported()) {
+                ((com.sun.management.ThreadMXBean) bean)
+                        .setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (final LinkageError | RuntimeException ignore) {
+            // JVM does not provide allocation counters
+        }
+        return null;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Image input stream reading encoded image data already kept in memory.
+ * Unlike streams created by ImageIO, no cache is created, since data can
+ * already be read at any position.
+ */
+class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+    /**
+     * Encoded image data.
+     */
+    private final byte[] mData;
+
+    /**
+     * Number of valid bytes in data.
+     */
+    private final int mLength;
+
+    /**
+     * Constructor.
+     *
+     * @param data   encoded image data.
+     * @param length number of valid bytes in data.
+     * @throws IllegalArgumentException if length is negative or greater than
+     *                                  data length.
+     */
+    ByteArrayImageInputStream(final byte[] data, final int length) {
+        if (length < 0 || length > data.length) {
+            throw new IllegalArgumentException();
+        }
+        mData = data;
+        mLength = length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() {
+        bitOffset = 0;
+        if (streamPos >= mLength) {
+            return -1;
+        }
+        return mData[(int) streamPos++] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+        if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= mLength) {
+            return -1;
+        }
+        final int n = (int) Math.min(len, mLength - streamPos);
+        System.arraycopy(mData, (int) streamPos, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long length() {
+        return mLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCached() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCachedMemory() {
+        return true;
+    }
+}
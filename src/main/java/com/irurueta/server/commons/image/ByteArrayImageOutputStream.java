@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * Image output stream keeping encoded image data in memory.
+ * Unlike streams created by ImageIO, no cache is created, and the array where
+ * data is written can be provided so that it is reused across images.
+ */
+class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+
+    /**
+     * Minimum capacity of array where data is written.
+     */
+    private static final int MIN_CAPACITY = 1024;
+
+    /**
+     * Array where data is written.
+     */
+    private byte[] mData;
+
+    /**
+     * Number of bytes written.
+     */
+    private int mLength;
+
+    /**
+     * Constructor.
+     */
+    ByteArrayImageOutputStream() {
+        this(new byte[MIN_CAPACITY]);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param data initial array where data is written, which is replaced by a
+     *             larger one if needed.
+     */
+    ByteArrayImageOutputStream(final byte[] data) {
+        mData = data;
+    }
+
+    /**
+     * Returns array containing written data, which might be larger than the
+     * amount of written bytes.
+     *
+     * @return array containing written data.
+     */
+    byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * Returns a buffer wrapping written data.
+     *
+     * @return buffer containing written data from position zero up to its
+     * limit.
+     */
+    ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(mData, 0, mLength);
+    }
+
+    /**
+     * Returns a copy of written data.
+     *
+     * @return written data.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(mData, mLength);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        flushBits();
+        ensureCapacity(streamPos + 1);
+        mData[(int) streamPos++] = (byte) b;
+        mLength = Math.max(mLength, (int) streamPos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        flushBits();
+        ensureCapacity(streamPos + len);
+        System.arraycopy(b, off, mData, (int) streamPos, len);
+        streamPos += len;
+        mLength = Math.max(mLength, (int) streamPos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() {
+        bitOffset = 0;
+        if (streamPos >= mLength) {
+            return -1;
+        }
+        return mData[(int) streamPos++] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+        if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= mLength) {
+            return -1;
+        }
+        final int n = (int) Math.min(len, mLength - streamPos);
+        System.arraycopy(mData, (int) streamPos, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long length() {
+        return mLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCached() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+    /**
+     * Grows array where data is written so that it has at least provided
+     * capacity.
+     *
+     * @param capacity required capacity.
+     */
+    private void ensureCapacity(final long capacity) {
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError();
+        }
+        if (capacity > mData.length) {
+            final long grown = Math.max(capacity,
+                    Math.max(MIN_CAPACITY, 2L * mData.length));
+            mData = Arrays.copyOf(mData,
+                    (int) Math.min(grown, Integer.MAX_VALUE - 8));
+        }
+    }
+}
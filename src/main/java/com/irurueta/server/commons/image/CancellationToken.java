@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Allows cooperative cancellation of image operations, optionally with a
+ * deadline.
+ * Operations receiving a token check it at safe points (while waiting to be
+ * allowed to run, between processing steps, and at strip or row boundaries
+ * while decoding or resampling an image) and stop as soon as the token has been
+ * cancelled or its deadline has elapsed.
+ * A token is meant to be used by a single operation, but it is safe to cancel
+ * it from any thread.
+ */
+public class CancellationToken {
+
+    /**
+     * Value indicating that a token has no deadline.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * System time in nanoseconds when this token expires or NO_DEADLINE.
+     */
+    private final long mDeadline;
+
+    /**
+     * Listeners to be notified when this token is cancelled. Listeners are
+     * removed before being notified, so that each one is notified only once.
+     */
+    private final List<Runnable> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Indicates whether this token has been cancelled.
+     */
+    private final AtomicBoolean mCancelled = new AtomicBoolean();
+
+    /**
+     * Constructor for a token without deadline.
+     */
+    public CancellationToken() {
+        mDeadline = NO_DEADLINE;
+    }
+
+    /**
+     * Constructor for a token that expires after provided amount of time.
+     *
+     * @param timeout amount of time until this token expires.
+     * @param unit    time unit of timeout.
+     * @throws IllegalArgumentException if timeout is negative or unit is not
+     *                                  provided.
+     */
+    public CancellationToken(final long timeout, final TimeUnit unit) {
+        if (timeout < 0 || unit == null) {
+            throw new IllegalArgumentException();
+        }
+        mDeadline = getDeadline(System.nanoTime(), unit.toNanos(timeout));
+    }
+
+    /**
+     * Cancels this token. Any operation using it will stop as soon as it
+     * reaches a safe point, and any operation waiting to be allowed to run
+     * is abandoned immediately.
+     */
+    public void cancel() {
+        if (!mCancelled.compareAndSet(false, true)) {
+            return;
+        }
+        for (final Runnable listener : mListeners) {
+            notifyListener(listener);
+        }
+    }
+
+    /**
+     * Indicates whether this token has been cancelled.
+     *
+     * @return true if token has been cancelled, false otherwise.
+     */
+    public boolean isCancelled() {
+        return mCancelled.get();
+    }
+
+    /**
+     * Indicates whether this token has a deadline.
+     *
+     * @return true if token has a deadline, false otherwise.
+     */
+    public boolean hasDeadline() {
+        return mDeadline != NO_DEADLINE;
+    }
+
+    /**
+     * Returns system time in nanoseconds (as returned by System.nanoTime())
+     * when this token expires, or NO_DEADLINE if it never expires.
+     *
+     * @return deadline of this token.
+     */
+    public long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Returns remaining time in nanoseconds until this token expires.
+     *
+     * @return remaining time in nanoseconds, zero or negative if already
+     * expired, or Long.MAX_VALUE if token has no deadline.
+     */
+    public long getRemainingNanos() {
+        if (mDeadline == NO_DEADLINE) {
+            return Long.MAX_VALUE;
+        }
+        return mDeadline - System.nanoTime();
+    }
+
+    /**
+     * Indicates whether deadline of this token has elapsed.
+     *
+     * @return true if token has expired, false otherwise.
+     */
+    public boolean isExpired() {
+        return mDeadline != NO_DEADLINE && mDeadline - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Indicates whether an operation using this token must stop, either
+     * because it has been cancelled or because its deadline has elapsed.
+     *
+     * @return true if operation must stop, false otherwise.
+     */
+    public boolean isStopRequested() {
+        return mCancelled.get() || isExpired();
+    }
+
+    /**
+     * Checks whether an operation using this token can continue.
+     *
+     * @throws CancellationException if token has been cancelled.
+     * @throws TimeoutException      if deadline of token has elapsed.
+     */
+    public void check() throws TimeoutException {
+        if (mCancelled.get()) {
+            throw new CancellationException();
+        }
+        if (isExpired()) {
+            throw new TimeoutException();
+        }
+    }
+
+    /**
+     * Adds a listener to be notified when this token is cancelled. If the
+     * token is already cancelled, the listener is notified immediately.
+     *
+     * @param listener listener to be added.
+     */
+    void addListener(final Runnable listener) {
+        mListeners.add(listener);
+        if (mCancelled.get()) {
+            notifyListener(listener);
+        }
+    }
+
+    /**
+     * Removes a previously added listener.
+     *
+     * @param listener listener to be removed.
+     */
+    void removeListener(final Runnable listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Returns deadline of a token created at provided time, saturating it to
+     * NO_DEADLINE when it cannot be represented.
+     * System time in nanoseconds might be negative, hence overflow is detected
+     * against provided time instead of checking the sign of the deadline.
+     *
+     * @param now   system time in nanoseconds when token is created.
+     * @param nanos timeout in nanoseconds (zero or positive).
+     * @return deadline of token.
+     */
+    static long getDeadline(final long now, final long nanos) {
+        if (now >= 0 && nanos >= NO_DEADLINE - now) {
+            return NO_DEADLINE;
+        }
+        return now + nanos;
+    }
+
+    /**
+     * Notifies a listener unless it has already been notified by another
+     * thread, which might happen when cancelling while listeners are added.
+     *
+     * @param listener listener to be notified.
+     */
+    private void notifyListener(final Runnable listener) {
+        if (mListeners.remove(listener)) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.nio.ByteBuffer;
+
+/**
+ * Data buffer storing bytes of an image in direct (off-heap) memory, so that
+ * large decoded images do not use the Java heap.
+ * Memory is freed as soon as release is called (if supported by the JVM),
+ * after which the buffer can no longer be accessed.
+ * Several threads can access the buffer at the same time, since accesses do
+ * not change any shared state of the buffer. However, release must
+ * happen-after the last access of any thread (i.e. be called by the last
+ * thread using the buffer, or once other threads have been joined), since
+ * an access racing with release might read or write freed native memory,
+ * which can crash the JVM instead of throwing an exception.
+ */
+final class DirectDataBuffer extends DataBuffer {
+
+    /**
+     * Direct buffer containing data or null once released.
+     * Its position and limit are never changed, so that it can be shared
+     * among threads.
+     */
+    private volatile ByteBuffer mBuffer;
+
+    /**
+     * Constructor.
+     *
+     * @param size number of bytes of the buffer.
+     * @throws IllegalArgumentException if size is negative.
+     * @throws OutOfMemoryError         if the limit of direct memory is
+     *                                  exceeded.
+     */
+    DirectDataBuffer(final int size) {
+        super(TYPE_BYTE, size);
+        mBuffer = DirectMemory.allocate(size);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if buffer has already been released.
+     */
+    @Override
+    public int getElem(final int bank, final int i) {
+        return getBuffer().get(i + offsets[bank]) & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if buffer has already been released.
+     */
+    @Override
+    public void setElem(final int bank, final int i, final int val) {
+        getBuffer().put(i + offsets[bank], (byte) val);
+    }
+
+    /**
+     * Copies consecutive bytes of this buffer into provided array.
+     *
+     * @param index  position of first byte to be copied.
+     * @param dst    array where bytes are copied.
+     * @param offset position of array where first byte is copied.
+     * @param length number of bytes to be copied.
+     * @throws IllegalStateException     if buffer has already been released.
+     * @throws IndexOutOfBoundsException if any position is not valid.
+     */
+    void get(final int index, final byte[] dst, final int offset,
+             final int length) {
+        // a duplicate has its own position, so that concurrent copies do not
+        // interfere
+        final ByteBuffer buffer = getBuffer().duplicate();
+        buffer.position(index + offsets[0]);
+        buffer.get(dst, offset, length);
+    }
+
+    /**
+     * Copies consecutive bytes of provided array into this buffer.
+     *
+     * @param index  position of buffer where first byte is copied.
+     * @param src    array containing bytes to be copied.
+     * @param offset position of first byte to be copied.
+     * @param length number of bytes to be copied.
+     * @throws IllegalStateException     if buffer has already been released.
+     * @throws IndexOutOfBoundsException if any position is not valid.
+     */
+    void put(final int index, final byte[] src, final int offset,
+             final int length) {
+        final ByteBuffer buffer = getBuffer().duplicate();
+        buffer.position(index + offsets[0]);
+        buffer.put(src, offset, length);
+    }
+
+    /**
+     * Indicates whether this buffer has been released.
+     *
+     * @return true if buffer has been released, false otherwise.
+     */
+    boolean isReleased() {
+        return mBuffer == null;
+    }
+
+    /**
+     * Frees memory of this buffer. Calling this method more than once has no
+     * effect.
+     * This method must happen-after the last access to this buffer made by
+     * any thread.
+     */
+    synchronized void release() {
+        final ByteBuffer buffer = mBuffer;
+        if (buffer != null) {
+            mBuffer = null;
+            DirectMemory.free(buffer);
+        }
+    }
+
+    /**
+     * Creates an image whose pixels are stored off-heap.
+     * Only images storing each sample in a byte are supported.
+     * Memory of created image must be freed using release once the image is
+     * no longer needed.
+     *
+     * @param colorModel  color model of image.
+     * @param sampleModel sample model of image.
+     * @return created image or null if layout of image is not supported.
+     * @throws OutOfMemoryError if the limit of direct memory
+     *                          (-XX:MaxDirectMemorySize) is exceeded.
+     */
+    static BufferedImage createImage(final ColorModel colorModel,
+                                     final SampleModel sampleModel) {
+        if (!(sampleModel instanceof ComponentSampleModel) ||
+                sampleModel.getDataType() != TYPE_BYTE) {
+            return null;
+        }
+        final int size = ThumbnailBufferPool.getDataSize(sampleModel);
+        if (size <= 0) {
+            return null;
+        }
+
+        final DirectDataBuffer buffer = new DirectDataBuffer(size);
+        try {
+            final WritableRaster raster = new DirectRaster(sampleModel,
+                    buffer);
+            return new BufferedImage(colorModel, raster,
+                    colorModel.isAlphaPremultiplied(), null);
+        } catch (final RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Frees off-heap memory of provided image, if any.
+     *
+     * @param image an image (optional).
+     * @return true if image was stored off-heap, false otherwise.
+     */
+    static boolean release(final BufferedImage image) {
+        if (image != null &&
+                image.getRaster().getDataBuffer() instanceof DirectDataBuffer) {
+            ((DirectDataBuffer) image.getRaster().getDataBuffer()).release();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns direct buffer containing data.
+     *
+     * @return direct buffer.
+     * @throws IllegalStateException if buffer has already been released.
+     */
+    private ByteBuffer getBuffer() {
+        final ByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            throw new IllegalStateException();
+        }
+        return buffer;
+    }
+
+    /**
+     * Raster of images stored off-heap.
+     * Readers decoding a row at a time copy each row into their destination
+     * raster. By default, rasters not backed by heap arrays copy them sample
+     * by sample, allocating a new array for each row. Instead, rows of bytes
+     * having the same layout as this raster are copied at once.
+     */
+    private static class DirectRaster extends WritableRaster {
+
+        /**
+         * Constructor.
+         *
+         * @param sampleModel sample model of raster.
+         * @param buffer      off-heap data buffer of raster.
+         */
+        DirectRaster(final SampleModel sampleModel,
+                     final DirectDataBuffer buffer) {
+            super(sampleModel, buffer, new Point());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void setRect(final int dx, final int dy,
+                            final Raster srcRaster) {
+            if (!copyRows(dx, dy, srcRaster)) {
+                super.setRect(dx, dy, srcRaster);
+            }
+        }
+
+        /**
+         * Copies rows of bytes of provided raster into this raster, when both
+         * rasters store samples of each pixel consecutively with the same
+         * layout, and provided raster fits entirely within this raster.
+         *
+         * @param dx        horizontal offset where provided raster is copied.
+         * @param dy        vertical offset where provided raster is copied.
+         * @param srcRaster raster to be copied.
+         * @return true if rows have been copied, false otherwise.
+         */
+        private boolean copyRows(final int dx, final int dy,
+                                 final Raster srcRaster) {
+            if (!(sampleModel instanceof PixelInterleavedSampleModel) ||
+                    !(srcRaster.getSampleModel() instanceof
+                            PixelInterleavedSampleModel) ||
+                    !(srcRaster.getDataBuffer() instanceof DataBufferByte) ||
+                    srcRaster.getDataBuffer().getNumBanks() != 1) {
+                return false;
+            }
+            final PixelInterleavedSampleModel dstModel =
+                    (PixelInterleavedSampleModel) sampleModel;
+            final PixelInterleavedSampleModel srcModel =
+                    (PixelInterleavedSampleModel) srcRaster.getSampleModel();
+            final int pixelStride = dstModel.getPixelStride();
+            final int[] bandOffsets = dstModel.getBandOffsets();
+            if (pixelStride != dstModel.getNumBands() ||
+                    pixelStride != srcModel.getPixelStride() ||
+                    !Arrays.equals(bandOffsets, srcModel.getBandOffsets())) {
+                return false;
+            }
+            for (final int bandOffset : bandOffsets) {
+                // all samples must be within the bytes of each pixel
+                if (bandOffset < 0 || bandOffset >= pixelStride) {
+                    return false;
+                }
+            }
+
+            final int width = srcRaster.getWidth();
+            final int height = srcRaster.getHeight();
+            final int dstX = dx + srcRaster.getMinX();
+            final int dstY = dy + srcRaster.getMinY();
+            if (dstX < minX || dstY < minY ||
+                    dstX + width > minX + this.width ||
+                    dstY + height > minY + this.height) {
+                return false;
+            }
+
+            final DirectDataBuffer dst = (DirectDataBuffer) dataBuffer;
+            final DataBufferByte src = (DataBufferByte) srcRaster
+                    .getDataBuffer();
+            final byte[] data = src.getData();
+            final int srcX = srcRaster.getMinX() -
+                    srcRaster.getSampleModelTranslateX();
+            final int srcY = srcRaster.getMinY() -
+                    srcRaster.getSampleModelTranslateY();
+            final int dstStride = dstModel.getScanlineStride();
+            final int srcStride = srcModel.getScanlineStride();
+            int dstIndex = (dstY - sampleModelTranslateY) * dstStride +
+                    (dstX - sampleModelTranslateX) * pixelStride;
+            int srcIndex = src.getOffset() + srcY * srcStride +
+                    srcX * pixelStride;
+            final int length = width * pixelStride;
+            for (int y = 0; y < height; y++) {
+                dst.put(dstIndex, data, srcIndex, length);
+                dstIndex += dstStride;
+                srcIndex += srcStride;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Allocates and frees direct (off-heap) buffers.
+ * Memory of direct buffers is normally only freed once the garbage collector
+ * finds that they are no longer reachable, which might take long for large
+ * buffers while the heap is barely used. When supported by the JVM, this
+ * class frees such memory as soon as a buffer is no longer needed, using the
+ * same internal mechanism used by the JVM when buffers are collected.
+ * Freed buffers must never be accessed again.
+ */
+final class DirectMemory {
+
+    /**
+     * Method freeing a direct buffer on JVMs since Java 9
+     * (sun.misc.Unsafe.invokeCleaner) or null if not available.
+     */
+    private static final Method INVOKE_CLEANER;
+
+    /**
+     * Instance of sun.misc.Unsafe or null if not available.
+     */
+    private static final Object UNSAFE;
+
+    /**
+     * Method returning cleaner of a direct buffer on Java 7 and 8
+     * (sun.nio.ch.DirectBuffer.cleaner) or null if not available.
+     */
+    private static final Method CLEANER;
+
+    /**
+     * Method freeing memory of a cleaner on Java 7 and 8
+     * (sun.misc.Cleaner.clean) or null if not available.
+     */
+    private static final Method CLEAN;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                    ByteBuffer.class);
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (final Exception | LinkageError e) {
+            invokeCleaner = null;
+            unsafe = null;
+        }
+
+        if (invokeCleaner == null) {
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer")
+                        .getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (final Exception | LinkageError e) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    /**
+     * Constructor.
+     * Prevents instantiation of utility class.
+     */
+    private DirectMemory() {
+    }
+
+    /**
+     * Indicates whether memory of direct buffers can be freed as soon as they
+     * are no longer needed. Otherwise, memory is freed once buffers are
+     * garbage collected.
+     *
+     * @return true if memory can be freed, false otherwise.
+     */
+    static boolean isFreeSupported() {
+        return INVOKE_CLEANER != null || CLEAN != null;
+    }
+
+    /**
+     * Allocates a direct buffer.
+     *
+     * @param capacity capacity in bytes.
+     * @return allocated buffer.
+     * @throws IllegalArgumentException if capacity is negative.
+     * @throws OutOfMemoryError         if the limit of direct memory
+     *                                  (-XX:MaxDirectMemorySize) is exceeded.
+     */
+    static ByteBuffer allocate(final int capacity) {
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Frees memory of provided direct buffer, if supported.
+     * Provided buffer must not be accessed anymore, since its memory might
+     * be reused.
+     *
+     * @param buffer buffer to be freed.
+     * @return true if memory has been freed, false if it will be freed once
+     * buffer is garbage collected.
+     * @throws IllegalArgumentException if buffer is not direct.
+     */
+    static boolean free(final ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return true;
+            } else if (CLEAN != null) {
+                final Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null) {
+                    CLEAN.invoke(cleaner);
+                    return true;
+                }
+            }
+        } catch (final Exception e) {
+            // memory will be freed once buffer is garbage collected
+        }
+        return false;
+    }
+}
@@ -15,6 +15,9 @@
  */
 package com.irurueta.server.commons.image;
 
+import com.irurueta.server.commons.image.geo.GeoCell;
+import com.irurueta.server.commons.image.geo.GeoHash;
+
 /**
  * This class contains GPS coordinates of an image (latitude, longitude and
  * altitude) expressed in degrees and meters respectively.
@@ -169,4 +172,34 @@ public class GPSCoordinates {
     public boolean isAltitudeAvailable() {
         return mAltitude != null;
     }
+
+    /**
+     * Returns geohash string of these coordinates.
+     *
+     * @param precision number of characters of geohash, between 1 and 12.
+     * @return geohash or null if latitude or longitude is not available.
+     * @throws IllegalArgumentException if coordinates are out of range or
+     *                                  precision is not valid.
+     */
+    public String getGeoHash(final int precision) {
+        if (!isLatitudeAvailable() || !isLongitudeAvailable()) {
+            return null;
+        }
+        return GeoHash.encodeToString(mLatitude, mLongitude, precision);
+    }
+
+    /**
+     * Returns id of the cell of provided level containing these coordinates.
+     *
+     * @param level level of cell, between 0 and 30.
+     * @return cell id or null if latitude or longitude is not available.
+     * @throws IllegalArgumentException if coordinates are out of range or
+     *                                  level is not valid.
+     */
+    public Long getCellId(final int level) {
+        if (!isLatitudeAvailable() || !isLongitudeAvailable()) {
+            return null;
+        }
+        return GeoCell.encode(mLatitude, mLongitude, level);
+    }
 }
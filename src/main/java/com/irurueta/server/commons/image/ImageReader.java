@@ -15,7 +15,11 @@
  */
 package com.irurueta.server.commons.image;
 
-import org.apache.commons.codec.binary.Base64;
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.Hasher;
+import com.irurueta.server.commons.image.hash.PerceptualHasher;
+import com.irurueta.server.commons.image.hash.TreeHasher;
 import org.apache.commons.imaging.ImageFormats;
 import org.apache.commons.imaging.ImageInfo;
 import org.apache.commons.imaging.ImageReadException;
@@ -30,16 +34,20 @@ import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldTypeRational;
 import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldTypeShort;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.SoftReference;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.zip.CRC32;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Class to read image metadata.
+ * A shared default instance can be obtained using getInstance(), while
+ * independently configured instances (i.e. per tenant or per workload) can be
+ * created using a Builder.
+ * Instances are safe to use from multiple threads.
+ * Reading options can be provided on each call, so that concurrent readers
+ * having different needs do not share any mutable state. Otherwise, default
+ * options of the instance are used.
  */
 public class ImageReader {
     /**
@@ -53,43 +61,52 @@ public class ImageReader {
     public static final boolean DEFAULT_COMPUTE_MD5 = true;
 
     /**
-     * Buffer size to compute CRC and MD5.
+     * Buffer size formerly used to compute CRC and MD5.
+     *
+     * @deprecated hashes are now computed using a larger buffer, which can be
+     * configured using ReadOptions.
      */
+    @Deprecated
     public static final int BUFFER_SIZE = 1024;
 
     /**
-     * Reference to singleton instance of this class.
+     * Options used when no options are provided while reading an image.
+     * Options are immutable, hence reading them does not require any locking
+     * and changing them atomically replaces the whole set of options.
      */
-    private static SoftReference<ImageReader> mReference;
+    private final AtomicReference<ReadOptions> mDefaultOptions;
 
     /**
-     * Indicates if CRC will be computed when reading image metadata.
+     * Listener notified with the time spent in each stage of every read.
      */
-    private volatile boolean mComputeCrc = DEFAULT_COMPUTE_CRC;
+    private volatile MetricsListener mMetricsListener;
 
     /**
-     * Indicates if MD5 will be computed when reading image metadata.
+     * Built-in metrics of read images.
      */
-    private volatile boolean mComputeMd5 = DEFAULT_COMPUTE_MD5;
+    private final OperationMetrics<ImageFormat> mMetrics =
+            new OperationMetrics<>("ImageReader", ImageFormat.class);
 
     /**
      * Constructor.
+     *
+     * @param builder builder containing configuration of this instance.
      */
-    private ImageReader() {
+    private ImageReader(final Builder builder) {
+        mDefaultOptions = new AtomicReference<>(builder.mDefaultOptions);
+        mMetricsListener = builder.mMetricsListener;
     }
 
     /**
-     * Factory method. Creates or returns singleton instance.
+     * Factory method. Returns default shared instance, which is lazily
+     * created on first use and is never released.
+     * Changes made to the configuration of the default instance affect all
+     * its users. Use a Builder to create independently configured instances.
      *
      * @return singleton instance.
      */
-    public static synchronized ImageReader getInstance() {
-        ImageReader reader;
-        if (mReference == null || (reader = mReference.get()) == null) {
-            reader = new ImageReader();
-            mReference = new SoftReference<>(reader);
-        }
-        return reader;
+    public static ImageReader getInstance() {
+        return InstanceHolder.INSTANCE;
     }
 
     /**
@@ -97,8 +114,8 @@ public class ImageReader {
      *
      * @return true if CRC computation is enabled, false otherwise.
      */
-    public synchronized boolean isComputeCrcEnabled() {
-        return mComputeCrc;
+    public boolean isComputeCrcEnabled() {
+        return mDefaultOptions.get().isComputeCrcEnabled();
     }
 
     /**
@@ -107,8 +124,12 @@ public class ImageReader {
      * @param computeCrc true if CRC computation must be enabled, false
      *                   otherwise.
      */
-    public synchronized void setComputeCrcEnabled(final boolean computeCrc) {
-        this.mComputeCrc = computeCrc;
+    public void setComputeCrcEnabled(final boolean computeCrc) {
+        ReadOptions options;
+        do {
+            options = mDefaultOptions.get();
+        } while (!mDefaultOptions.compareAndSet(options,
+                options.withComputeCrcEnabled(computeCrc)));
     }
 
     /**
@@ -116,8 +137,8 @@ public class ImageReader {
      *
      * @return true if MD5 computation is enabled, false otherwise.
      */
-    public synchronized boolean isComputeMd5Enabled() {
-        return mComputeMd5;
+    public boolean isComputeMd5Enabled() {
+        return mDefaultOptions.get().isComputeMd5Enabled();
     }
 
     /**
@@ -126,8 +147,71 @@ public class ImageReader {
      * @param computeMd5 true if MD5 computation must be enabled, false
      *                   otherwise.
      */
-    public synchronized void setComputeMd5Enabled(final boolean computeMd5) {
-        this.mComputeMd5 = computeMd5;
+    public void setComputeMd5Enabled(final boolean computeMd5) {
+        ReadOptions options;
+        do {
+            options = mDefaultOptions.get();
+        } while (!mDefaultOptions.compareAndSet(options,
+                options.withComputeMd5Enabled(computeMd5)));
+    }
+
+    /**
+     * Returns options used when no options are provided while reading an
+     * image.
+     *
+     * @return default read options.
+     */
+    public ReadOptions getDefaultOptions() {
+        return mDefaultOptions.get();
+    }
+
+    /**
+     * Sets options used when no options are provided while reading an image.
+     *
+     * @param options default read options.
+     * @throws IllegalArgumentException if provided options are null.
+     */
+    public void setDefaultOptions(final ReadOptions options) {
+        if (options == null) {
+            throw new IllegalArgumentException();
+        }
+        mDefaultOptions.set(options);
+    }
+
+    /**
+     * Returns listener notified with the time spent in each stage of every
+     * read.
+     *
+     * @return metrics listener.
+     */
+    public MetricsListener getMetricsListener() {
+        return mMetricsListener;
+    }
+
+    /**
+     * Sets listener notified with the time spent in each stage of every read.
+     * Stages are only timed when a listener other than NoOpMetricsListener is
+     * set or when Flight Recorder ImageRead events are being recorded.
+     *
+     * @param listener metrics listener.
+     * @throws IllegalArgumentException if provided listener is null.
+     */
+    public void setMetricsListener(final MetricsListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException();
+        }
+        mMetricsListener = listener;
+    }
+
+    /**
+     * Returns built-in metrics of images read by this instance, including
+     * number of reads, failures, bytes read and latency by image format.
+     * Bytes read are accounted as the length of each successfully read file.
+     *
+     * @return metrics of read images.
+     */
+    public OperationMetrics<ImageFormat> getMetrics() {
+        return mMetrics;
     }
 
     /**
@@ -142,6 +226,111 @@ public class ImageReader {
      */
     public ImageReaderResult readImage(final File f) throws InvalidImageException,
             IOException {
+        return readImage(f, mDefaultOptions.get());
+    }
+
+    /**
+     * Reads image metadata from provided image file using provided options.
+     *
+     * @param f       file containing an image in one of the supported formats
+     *                (jpg, png, gif or bmp).
+     * @param options options to read the image.
+     * @return result containing image metadata and image file information.
+     * @throws IllegalArgumentException if options are not provided.
+     * @throws InvalidImageException    throws if file is corrupted, contains
+     *                                  invalid data, is not an image or format is not supported.
+     * @throws IOException              if an I/O error occurs.
+     */
+    public ImageReaderResult readImage(final File f, final ReadOptions options)
+            throws InvalidImageException, IOException {
+        if (options == null) {
+            throw new IllegalArgumentException();
+        }
+
+        final long startTime = System.nanoTime();
+        final MetricsListener listener = mMetricsListener;
+        final Object event = JfrEvent.IMAGE_READ.begin();
+        // stages are only timed when someone is interested in them
+        final StageTimings<ReadStage> timings =
+                listener != NoOpMetricsListener.INSTANCE || event != null ?
+                        new StageTimings<>(ReadStage.class) : null;
+        final long allocated = timings != null ?
+                AllocationMeter.getAllocatedBytes() : AllocationMeter.UNKNOWN;
+        ImageReaderResult result = null;
+        Throwable error = null;
+        try {
+            result = internalReadImage(f, options, timings);
+            return result;
+        } catch (final InvalidImageException | IOException |
+                RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            if (error == null) {
+                mMetrics.recordSuccess(result.getImageFormat(),
+                        System.nanoTime() - startTime);
+                mMetrics.addBytesRead(result.getFileLength());
+            } else {
+                mMetrics.recordFailure(error);
+            }
+            if (timings != null) {
+                timings.setAllocatedBytes(
+                        AllocationMeter.getAllocatedBytesSince(allocated));
+                if (event != null) {
+                    commitEvent(event, f, result, timings);
+                }
+                listener.onImageRead(f, result, timings, error);
+            }
+        }
+    }
+
+    /**
+     * Commits a Flight Recorder event of a read image.
+     *
+     * @param event   started event.
+     * @param f       image file.
+     * @param result  result of reading image or null if reading failed.
+     * @param timings time spent in each stage.
+     */
+    private static void commitEvent(final Object event, final File f,
+                                    final ImageReaderResult result,
+                                    final StageTimings<ReadStage> timings) {
+        final ImageMetadata metadata = result != null ?
+                result.getMetadata() : null;
+        JfrEvent.IMAGE_READ.commit(event, f.getPath(),
+                result != null ? JfrEvent.name(result.getImageFormat()) : null,
+                metadata != null ? metadata.getWidth() : 0,
+                metadata != null ? metadata.getHeight() : 0,
+                result != null ? result.getFileLength() : f.length(),
+                metadata != null ? JfrEvent.name(metadata.getOrientation()) :
+                        null,
+                result != null,
+                timings.getNanos(ReadStage.INFO),
+                timings.getNanos(ReadStage.EXIF),
+                timings.getNanos(ReadStage.HASH),
+                timings.getNanos(ReadStage.PERCEPTUAL_HASH));
+    }
+
+    /**
+     * Reads image metadata from provided image file using provided options,
+     * timing each stage if needed.
+     *
+     * @param f       file containing an image in one of the supported formats
+     *                (jpg, png, gif or bmp).
+     * @param options options to read the image.
+     * @param timings instance where time spent in each stage is added, or
+     *                null if stages must not be timed.
+     * @return result containing image metadata and image file information.
+     * @throws InvalidImageException throws if file is corrupted, contains
+     *                               invalid data, is not an image or format is
+     *                               not supported.
+     * @throws IOException           if an I/O error occurs.
+     */
+    private ImageReaderResult internalReadImage(
+            final File f, final ReadOptions options,
+            final StageTimings<ReadStage> timings)
+            throws InvalidImageException, IOException {
+        long time = timings != null ? System.nanoTime() : 0;
         try {
             final ImageReaderResult result = new ImageReaderResult();
             final ImageInfo imageInfo = Imaging.getImageInfo(f);
@@ -155,6 +344,7 @@ public class ImageReader {
 
             final ImageMetadata metadata = new ImageMetadata();
             result.setMetadata(metadata);
+            time = StageTimings.lap(timings, ReadStage.INFO, time);
 
             // if file is JPEG read its exif data
             if (imageInfo.getFormat() ==
@@ -165,8 +355,12 @@ public class ImageReader {
                 metadata.setWidth(imageInfo.getWidth());
                 metadata.setHeight(imageInfo.getHeight());
             }
+            time = StageTimings.lap(timings, ReadStage.EXIF, time);
 
-            computeCRCAndMd5(f, result);
+            computeCRCAndMd5(f, result, options);
+            time = StageTimings.lap(timings, ReadStage.HASH, time);
+            computePerceptualHashes(f, result, options);
+            StageTimings.lap(timings, ReadStage.PERCEPTUAL_HASH, time);
             return result;
         } catch (final ImageReadException e) {
             throw new InvalidImageException(e);
@@ -194,54 +388,77 @@ public class ImageReader {
     }
 
     /**
-     * Computes CRC and MD5 hashes for provided file and the results get stored
-     * in provided result instance.
+     * Computes CRC, MD5 and any additional hashes indicated by provided
+     * options for provided file in a single pass (or in parallel chunks if
+     * tree hashing is enabled), and the results get stored in provided result
+     * instance.
+     * When a file is hashed in parallel chunks, plain MD5 of the file is
+     * computed in an additional sequential pass.
      *
-     * @param f      file to compute CRC and MD5 hashes.
-     * @param result instance where CRC and MD5 will be stored.
+     * @param f       file to compute hashes.
+     * @param result  instance where hashes will be stored.
+     * @param options options indicating which hashes must be computed.
      * @throws IOException if an I/O error occurs.
      */
-    private void computeCRCAndMd5(final File f, final ImageReaderResult result)
+    private void computeCRCAndMd5(final File f, final ImageReaderResult result,
+                                  final ReadOptions options)
             throws IOException {
         if (f == null || result == null) {
             return;
         }
 
-        try (final InputStream stream = new FileInputStream(f)) {
-            CRC32 crc = null;
-            if (mComputeCrc) {
-                crc = new CRC32();
-            }
-
-            MessageDigest digest = null;
-            if (mComputeMd5) {
-                try {
-                    digest = MessageDigest.getInstance("MD5");
-                    digest.reset();
-                } catch (final NoSuchAlgorithmException e) {
-                    throw new IOException(e);
-                }
-            }
-
+        final Set<HashAlgorithm> algorithms = options.getAllHashAlgorithms();
+        if (algorithms.isEmpty()) {
+            return;
+        }
 
-            final byte[] buffer = new byte[BUFFER_SIZE];
-            int n;
-            while ((n = stream.read(buffer)) > 0) {
-                if (crc != null) {
-                    crc.update(buffer, 0, n);
-                }
-                if (digest != null) {
-                    digest.update(buffer, 0, n);
-                }
+        final HashResult hashes;
+        if (options.isTreeHashEnabled()) {
+            hashes = new TreeHasher(algorithms, options.getHashBufferSize(),
+                    options.getTreeHashChunkSize(), null).hash(f);
+        } else {
+            hashes = new Hasher(algorithms, options.getHashBufferSize())
+                    .hash(f);
+        }
+        result.setHashes(hashes);
+        if (options.isComputeCrcEnabled()) {
+            // CRC is identical in tree mode
+            result.setCrc(hashes.getValue(HashAlgorithm.CRC32));
+        }
+        if (options.isComputeMd5Enabled()) {
+            if (hashes.isTree()) {
+                // a tree MD5 differs from plain MD5 of the file, which must
+                // be computed sequentially
+                result.setMd5(new Hasher(EnumSet.of(HashAlgorithm.MD5),
+                        options.getHashBufferSize()).hash(f)
+                        .getBase64(HashAlgorithm.MD5));
+            } else {
+                result.setMd5(hashes.getBase64(HashAlgorithm.MD5));
             }
+        }
+    }
 
-            if (crc != null) {
-                result.setCrc(crc.getValue());
-            }
-            if (digest != null) {
-                result.setMd5(Base64.encodeBase64String(digest.digest()));
-            }
+    /**
+     * Computes perceptual hashes indicated by provided options from a
+     * subsampled decode of provided file, and the results get stored in
+     * provided result instance.
+     *
+     * @param f       file to compute perceptual hashes.
+     * @param result  instance where perceptual hashes will be stored.
+     * @param options options indicating which perceptual hashes must be
+     *                computed.
+     * @throws IOException if an I/O error occurs or image cannot be decoded.
+     */
+    private void computePerceptualHashes(final File f,
+                                         final ImageReaderResult result,
+                                         final ReadOptions options)
+            throws IOException {
+        if (options.getPerceptualHashAlgorithms().isEmpty()) {
+            return;
         }
+
+        result.setPerceptualHashes(new PerceptualHasher(
+                options.getPerceptualHashAlgorithms()).hash(f));
     }
 
     /**
@@ -741,4 +958,97 @@ public class ImageReader {
         }
         return result;
     }
+
+    /**
+     * Lazily creates default instance the first time it is requested, relying
+     * on class initialization to make it thread-safe without locking.
+     */
+    private static class InstanceHolder {
+        /**
+         * Default instance.
+         */
+        private static final ImageReader INSTANCE = new Builder().build();
+    }
+
+    /**
+     * Builder to create independently configured image readers.
+     */
+    public static class Builder {
+
+        /**
+         * Options used when no options are provided while reading an image.
+         */
+        private ReadOptions mDefaultOptions = ReadOptions.DEFAULT;
+
+        /**
+         * Listener notified with the time spent in each stage of every read.
+         */
+        private MetricsListener mMetricsListener =
+                NoOpMetricsListener.INSTANCE;
+
+        /**
+         * Specifies whether CRC computation is enabled.
+         *
+         * @param computeCrc true if CRC computation must be enabled, false
+         *                   otherwise.
+         * @return this builder.
+         */
+        public Builder setComputeCrcEnabled(final boolean computeCrc) {
+            mDefaultOptions = mDefaultOptions.withComputeCrcEnabled(computeCrc);
+            return this;
+        }
+
+        /**
+         * Specifies whether MD5 hash computation is enabled.
+         *
+         * @param computeMd5 true if MD5 computation must be enabled, false
+         *                   otherwise.
+         * @return this builder.
+         */
+        public Builder setComputeMd5Enabled(final boolean computeMd5) {
+            mDefaultOptions = mDefaultOptions.withComputeMd5Enabled(computeMd5);
+            return this;
+        }
+
+        /**
+         * Sets options used when no options are provided while reading an
+         * image.
+         *
+         * @param options default read options.
+         * @return this builder.
+         * @throws IllegalArgumentException if provided options are null.
+         */
+        public Builder setDefaultOptions(final ReadOptions options) {
+            if (options == null) {
+                throw new IllegalArgumentException();
+            }
+            mDefaultOptions = options;
+            return this;
+        }
+
+        /**
+         * Sets listener notified with the time spent in each stage of every
+         * read.
+         *
+         * @param listener metrics listener.
+         * @return this builder.
+         * @throws IllegalArgumentException if provided listener is null.
+         */
+        public Builder setMetricsListener(final MetricsListener listener) {
+            if (listener == null) {
+                throw new IllegalArgumentException();
+            }
+            mMetricsListener = listener;
+            return this;
+        }
+
+        /**
+         * Creates a new image reader using the configuration of this builder.
+         *
+         * @return a new image reader.
+         */
+        public ImageReader build() {
+            return new ImageReader(this);
+        }
+    }
 }
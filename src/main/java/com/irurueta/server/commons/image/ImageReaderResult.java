@@ -15,6 +15,9 @@
  */
 package com.irurueta.server.commons.image;
 
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.PerceptualHashes;
+
 /**
  * Structure containing information about an image file that has been read using
  * and ImageReader.
@@ -38,6 +41,17 @@ public class ImageReaderResult {
      */
     private String mMd5;
 
+    /**
+     * Hashes of image file computed in a single pass, including CRC and MD5
+     * if they were requested.
+     */
+    private HashResult mHashes;
+
+    /**
+     * Perceptual hashes of image, used to detect near-duplicates.
+     */
+    private PerceptualHashes mPerceptualHashes;
+
     /**
      * Image file length in bytes.
      */
@@ -130,6 +144,44 @@ public class ImageReaderResult {
         this.mMd5 = md5;
     }
 
+    /**
+     * Returns hashes of image file, including CRC and MD5 if they were
+     * requested, along with any additional algorithm indicated by read
+     * options.
+     *
+     * @return hashes of image file or null if none was computed.
+     */
+    public HashResult getHashes() {
+        return mHashes;
+    }
+
+    /**
+     * Sets hashes of image file.
+     *
+     * @param hashes hashes of image file.
+     */
+    public void setHashes(final HashResult hashes) {
+        mHashes = hashes;
+    }
+
+    /**
+     * Returns perceptual hashes of image, if requested by read options.
+     *
+     * @return perceptual hashes of image or null if none was computed.
+     */
+    public PerceptualHashes getPerceptualHashes() {
+        return mPerceptualHashes;
+    }
+
+    /**
+     * Sets perceptual hashes of image.
+     *
+     * @param perceptualHashes perceptual hashes of image.
+     */
+    public void setPerceptualHashes(final PerceptualHashes perceptualHashes) {
+        mPerceptualHashes = perceptualHashes;
+    }
+
     /**
      * Returns image file length in bytes.
      *
@@ -0,0 +1,1258 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.PerceptualHashAlgorithm;
+import com.irurueta.server.commons.image.hash.PerceptualHashes;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of ImageReaderResult, ImageMetadata and
+ * GPSCoordinates instances, meant to store or ship results between services
+ * at a fraction of the size and cost of text formats.
+ * Encoded data is organized in frames containing one or more results. Each
+ * frame starts with the ASCII characters "IR", the format version and the
+ * number of results. Each result starts with a bitmask indicating which of
+ * its optional fields are present, followed by present fields only.
+ * Integers are written as variable length integers (7 bits per byte, signed
+ * values in zig-zag encoding), floating point values as 8 bytes, digests as
+ * raw bytes, and enumerations using stable numeric codes independent of
+ * their declaration order.
+ * Strings are dictionary coded: a string is written in UTF-8 the first time it
+ * appears within a frame, and as a reference afterwards. A fixed dictionary of
+ * common values (i.e. content types and camera makers) is referenced without
+ * ever being written. Unpaired surrogates are written as 3-byte sequences so
+ * that any string is restored exactly.
+ * The format of each version never changes. New fields are added in new
+ * versions using new bits of presence bitmasks, and appended after existing
+ * ones, so that data of any previous version can always be decoded.
+ * Values are written into and read from ByteBuffers directly, without
+ * intermediate arrays or strings.
+ * This class is not thread safe, instances keep scratch state and should not
+ * be shared among threads. Encoded data does not depend on the byte order of
+ * buffers.
+ */
+public class ImageReaderResultCodec {
+
+    /**
+     * Current format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * First byte of every frame.
+     */
+    static final byte MAGIC1 = 'I';
+
+    /**
+     * Second byte of every frame.
+     */
+    static final byte MAGIC2 = 'R';
+
+    /**
+     * Indicates that result is valid.
+     */
+    private static final int VALID = 1;
+
+    /**
+     * Indicates that result contains a CRC.
+     */
+    private static final int CRC = 1 << 1;
+
+    /**
+     * Indicates that result contains an MD5 as a Base64 string, as computed by
+     * ImageReader, which is written as 16 raw bytes.
+     */
+    private static final int MD5_BINARY = 1 << 2;
+
+    /**
+     * Indicates that result contains an MD5 in any other form, which is
+     * written as a string.
+     */
+    private static final int MD5_TEXT = 1 << 3;
+
+    /**
+     * Indicates that result contains hashes.
+     */
+    private static final int HASHES = 1 << 4;
+
+    /**
+     * Indicates that result contains perceptual hashes.
+     */
+    private static final int PERCEPTUAL_HASHES = 1 << 5;
+
+    /**
+     * Indicates that result contains a content type.
+     */
+    private static final int CONTENT_TYPE = 1 << 6;
+
+    /**
+     * Indicates that result contains an image format.
+     */
+    private static final int IMAGE_FORMAT = 1 << 7;
+
+    /**
+     * Indicates that result contains metadata.
+     */
+    private static final int METADATA = 1 << 8;
+
+    /**
+     * Indicates that an MD5 written as 16 raw bytes was followed by a line
+     * break, as added by some versions of Base64 encoders.
+     */
+    private static final int MD5_LINE_BREAK = 1 << 9;
+
+    /**
+     * All bits of result bitmasks known by this version.
+     */
+    private static final int RESULT_FIELDS = (1 << 10) - 1;
+
+    /**
+     * Bits of metadata bitmasks, in the order fields are written.
+     */
+    private static final long MAKER = 1L;
+    private static final long MODEL = 1L << 1;
+    private static final long FOCAL_LENGTH = 1L << 2;
+    private static final long FOCAL_PLANE_X_RESOLUTION = 1L << 3;
+    private static final long FOCAL_PLANE_Y_RESOLUTION = 1L << 4;
+    private static final long FOCAL_PLANE_RESOLUTION_UNIT = 1L << 5;
+    private static final long ORIENTATION = 1L << 6;
+    private static final long LOCATION = 1L << 7;
+    private static final long ARTIST = 1L << 8;
+    private static final long COPYRIGHT = 1L << 9;
+    private static final long DOCUMENT_NAME = 1L << 10;
+    private static final long HOST_COMPUTER = 1L << 11;
+    private static final long IMAGE_DESCRIPTION = 1L << 12;
+    private static final long SOFTWARE = 1L << 13;
+    private static final long TARGET_PRINTER = 1L << 14;
+    private static final long CAMERA_SERIAL_NUMBER = 1L << 15;
+    private static final long DIGITAL_ZOOM_RATIO = 1L << 16;
+    private static final long EXPOSURE_TIME = 1L << 17;
+    private static final long FLASH = 1L << 18;
+    private static final long FLASH_ENERGY = 1L << 19;
+    private static final long F_NUMBER = 1L << 20;
+    private static final long FOCAL_LENGTH_IN_35MM_FILM = 1L << 21;
+    private static final long UNIQUE_CAMERA_MODEL = 1L << 22;
+    private static final long SUBJECT_DISTANCE = 1L << 23;
+    private static final long SHUTTER_SPEED_VALUE = 1L << 24;
+    private static final long ISO = 1L << 25;
+
+    /**
+     * All bits of metadata bitmasks known by this version.
+     */
+    private static final long METADATA_FIELDS = (1L << 26) - 1;
+
+    /**
+     * Bits of location bitmasks.
+     */
+    private static final int LATITUDE = 1;
+    private static final int LONGITUDE = 1 << 1;
+    private static final int ALTITUDE = 1 << 2;
+
+    /**
+     * All bits of location bitmasks known by this version.
+     */
+    private static final int LOCATION_FIELDS = (1 << 3) - 1;
+
+    /**
+     * Image formats by code. Codes never change, new formats are appended.
+     */
+    private static final ImageFormat[] IMAGE_FORMATS = {
+            ImageFormat.UNKNOWN, ImageFormat.JPEG, ImageFormat.PNG,
+            ImageFormat.GIF, ImageFormat.BMP
+    };
+
+    /**
+     * Hash algorithms by bit of hash bitmasks. Bits never change, new
+     * algorithms are appended.
+     */
+    private static final HashAlgorithm[] HASH_ALGORITHMS = {
+            HashAlgorithm.CRC32, HashAlgorithm.CRC32C, HashAlgorithm.MD5,
+            HashAlgorithm.SHA256, HashAlgorithm.XXH64,
+            HashAlgorithm.MURMUR3_128
+    };
+
+    /**
+     * Perceptual hash algorithms by bit of perceptual hash bitmasks. Bits
+     * never change, new algorithms are appended.
+     */
+    private static final PerceptualHashAlgorithm[] PERCEPTUAL_ALGORITHMS = {
+            PerceptualHashAlgorithm.AVERAGE,
+            PerceptualHashAlgorithm.DIFFERENCE,
+            PerceptualHashAlgorithm.DCT
+    };
+
+    /**
+     * Strings referenced without being written. Entries of a version never
+     * change, new entries can only be appended in new versions.
+     */
+    private static final String[] STATIC_DICTIONARY = {
+            "image/jpeg", "image/png", "image/gif", "image/bmp",
+            "Canon", "NIKON CORPORATION", "NIKON", "Apple", "SONY", "samsung",
+            "FUJIFILM", "OLYMPUS IMAGING CORP.", "OLYMPUS CORPORATION",
+            "Panasonic", "Google", "HUAWEI", "Xiaomi", "LG Electronics",
+            "PENTAX", "RICOH IMAGING COMPANY, LTD.", "LEICA CAMERA AG",
+            "GoPro", "DJI", "motorola", "OnePlus", "Adobe Photoshop",
+            "Picasa"
+    };
+
+    /**
+     * Position of each string of the static dictionary.
+     */
+    private static final Map<String, Integer> STATIC_CODES;
+
+    static {
+        final Map<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < STATIC_DICTIONARY.length; i++) {
+            codes.put(STATIC_DICTIONARY[i], i);
+        }
+        STATIC_CODES = Collections.unmodifiableMap(codes);
+    }
+
+    /**
+     * Digits of Base64 MD5 strings.
+     */
+    private static final char[] BASE64 =
+            ("ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz" +
+                    "0123456789+/").toCharArray();
+
+    /**
+     * Length of Base64 MD5 strings.
+     */
+    private static final int BASE64_MD5_LENGTH = 24;
+
+    /**
+     * Line break following Base64 MD5 strings computed by some versions of
+     * Base64 encoders.
+     */
+    private static final String LINE_BREAK = "\r\n";
+
+    /**
+     * Number of Base64 digits of MD5 strings, excluding padding.
+     */
+    private static final int BASE64_MD5_DIGITS = 22;
+
+    /**
+     * Length of MD5 digests.
+     */
+    private static final int MD5_LENGTH = 16;
+
+    /**
+     * Reference to each string written within current frame.
+     */
+    private final Map<String, Integer> mWrittenStrings = new HashMap<>();
+
+    /**
+     * Strings read within current frame, by reference.
+     */
+    private String[] mReadStrings = new String[16];
+
+    /**
+     * Number of strings read within current frame.
+     */
+    private int mReadStringCount;
+
+    /**
+     * Scratch array where characters of decoded strings are stored.
+     */
+    private char[] mChars = new char[64];
+
+    /**
+     * Encodes a result into a frame. If buffer is too small, its position is
+     * restored before throwing, so that encoding can be retried into a larger
+     * buffer.
+     *
+     * @param result result to be encoded.
+     * @param buffer buffer where frame is written starting at its position.
+     * @return number of written bytes.
+     * @throws BufferOverflowException if buffer is too small.
+     */
+    public int encode(final ImageReaderResult result, final ByteBuffer buffer) {
+        return encode(Collections.singletonList(result), buffer);
+    }
+
+    /**
+     * Encodes results into a single frame, sharing strings among them. If
+     * buffer is too small, its position is restored before throwing, so that
+     * encoding can be retried into a larger buffer.
+     *
+     * @param results results to be encoded.
+     * @param buffer  buffer where frame is written starting at its position.
+     * @return number of written bytes.
+     * @throws BufferOverflowException if buffer is too small.
+     */
+    public int encode(final List<ImageReaderResult> results,
+                      final ByteBuffer buffer) {
+        final int start = buffer.position();
+        mWrittenStrings.clear();
+        try {
+            buffer.put(MAGIC1);
+            buffer.put(MAGIC2);
+            putVarint(buffer, VERSION);
+            putVarint(buffer, results.size());
+            for (final ImageReaderResult result : results) {
+                putResult(buffer, result);
+            }
+        } catch (final BufferOverflowException e) {
+            buffer.position(start);
+            throw e;
+        } finally {
+            mWrittenStrings.clear();
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Encodes a result into a new array containing a frame.
+     *
+     * @param result result to be encoded.
+     * @return encoded frame.
+     */
+    public byte[] encode(final ImageReaderResult result) {
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        while (true) {
+            try {
+                encode(result, buffer);
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (final BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(2 * buffer.capacity());
+            }
+        }
+    }
+
+    /**
+     * Decodes a frame containing a single result.
+     *
+     * @param buffer buffer containing a frame starting at its position. Its
+     *               position is moved to the end of the frame.
+     * @return decoded result.
+     * @throws IllegalArgumentException if data is not a valid frame, was
+     *                                  written by a newer version, or does not
+     *                                  contain a single result.
+     * @throws java.nio.BufferUnderflowException if frame is truncated.
+     */
+    public ImageReaderResult decode(final ByteBuffer buffer) {
+        final List<ImageReaderResult> results = decodeAll(buffer);
+        if (results.size() != 1) {
+            throw new IllegalArgumentException();
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Decodes a frame containing a single result.
+     *
+     * @param data encoded frame.
+     * @return decoded result.
+     * @throws IllegalArgumentException if data is not a valid frame, was
+     *                                  written by a newer version, or does not
+     *                                  contain a single result.
+     * @throws java.nio.BufferUnderflowException if frame is truncated.
+     */
+    public ImageReaderResult decode(final byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decodes all results of a frame.
+     *
+     * @param buffer buffer containing a frame starting at its position. Its
+     *               position is moved to the end of the frame.
+     * @return decoded results.
+     * @throws IllegalArgumentException if data is not a valid frame or was
+     *                                  written by a newer version.
+     * @throws java.nio.BufferUnderflowException if frame is truncated.
+     */
+    public List<ImageReaderResult> decodeAll(final ByteBuffer buffer) {
+        if (buffer.get() != MAGIC1 || buffer.get() != MAGIC2) {
+            throw new IllegalArgumentException();
+        }
+        final long version = getVarint(buffer);
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException();
+        }
+        final long count = getVarint(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            // each result takes at least a byte
+            throw new IllegalArgumentException();
+        }
+
+        mReadStringCount = 0;
+        try {
+            final List<ImageReaderResult> results =
+                    new ArrayList<>((int) count);
+            for (long i = 0; i < count; i++) {
+                results.add(getResult(buffer));
+            }
+            return results;
+        } finally {
+            Arrays.fill(mReadStrings, 0, mReadStringCount, null);
+            mReadStringCount = 0;
+        }
+    }
+
+    /**
+     * Writes a result.
+     *
+     * @param buffer buffer where result is written.
+     * @param result result to be written.
+     */
+    private void putResult(final ByteBuffer buffer,
+                           final ImageReaderResult result) {
+        final String md5 = result.getMd5();
+        final boolean binaryMd5 = isBase64Md5(md5);
+        final ImageFormat format = result.getImageFormat();
+
+        int fields = 0;
+        fields |= result.isValid() ? VALID : 0;
+        fields |= result.getCrc() != null ? CRC : 0;
+        fields |= md5 != null ? (binaryMd5 ? MD5_BINARY : MD5_TEXT) : 0;
+        fields |= binaryMd5 && md5.length() > BASE64_MD5_LENGTH ?
+                MD5_LINE_BREAK : 0;
+        fields |= result.getHashes() != null ? HASHES : 0;
+        fields |= result.getPerceptualHashes() != null ? PERCEPTUAL_HASHES : 0;
+        fields |= result.getContentType() != null ? CONTENT_TYPE : 0;
+        fields |= format != null ? IMAGE_FORMAT : 0;
+        fields |= result.getMetadata() != null ? METADATA : 0;
+        putVarint(buffer, fields);
+
+        putSignedVarint(buffer, result.getFileLength());
+        putSignedVarint(buffer, result.getLastModified());
+        if ((fields & CRC) != 0) {
+            putSignedVarint(buffer, result.getCrc());
+        }
+        if ((fields & MD5_BINARY) != 0) {
+            int bits = 0;
+            int pending = 0;
+            for (int i = 0; i < BASE64_MD5_DIGITS; i++) {
+                bits = bits << 6 | base64Value(md5.charAt(i));
+                pending += 6;
+                if (pending >= 8) {
+                    pending -= 8;
+                    buffer.put((byte) (bits >>> pending));
+                }
+            }
+        }
+        if ((fields & MD5_TEXT) != 0) {
+            putString(buffer, md5);
+        }
+        if ((fields & HASHES) != 0) {
+            putHashes(buffer, result.getHashes());
+        }
+        if ((fields & PERCEPTUAL_HASHES) != 0) {
+            putPerceptualHashes(buffer, result.getPerceptualHashes());
+        }
+        if ((fields & CONTENT_TYPE) != 0) {
+            putString(buffer, result.getContentType());
+        }
+        if ((fields & IMAGE_FORMAT) != 0) {
+            putVarint(buffer, indexOf(IMAGE_FORMATS, format));
+        }
+        if ((fields & METADATA) != 0) {
+            putMetadata(buffer, result.getMetadata());
+        }
+    }
+
+    /**
+     * Reads a result.
+     *
+     * @param buffer buffer where result is read from.
+     * @return read result.
+     * @throws IllegalArgumentException if data is not valid.
+     */
+    private ImageReaderResult getResult(final ByteBuffer buffer) {
+        final long fields = getVarint(buffer);
+        if ((fields & ~RESULT_FIELDS) != 0) {
+            throw new IllegalArgumentException();
+        }
+
+        final ImageReaderResult result = new ImageReaderResult();
+        result.setValid((fields & VALID) != 0);
+        result.setFileLength(getSignedVarint(buffer));
+        result.setLastModified(getSignedVarint(buffer));
+        if ((fields & CRC) != 0) {
+            result.setCrc(getSignedVarint(buffer));
+        }
+        if ((fields & MD5_BINARY) != 0) {
+            final char[] chars = scratch(BASE64_MD5_LENGTH +
+                    LINE_BREAK.length());
+            int bits = 0;
+            int pending = 0;
+            int count = 0;
+            for (int i = 0; i < MD5_LENGTH; i++) {
+                bits = bits << 8 | (buffer.get() & 0xFF);
+                pending += 8;
+                while (pending >= 6) {
+                    pending -= 6;
+                    chars[count++] = BASE64[bits >>> pending & 0x3F];
+                }
+            }
+            // remaining bits and padding
+            chars[count++] = BASE64[bits << (6 - pending) & 0x3F];
+            chars[count++] = '=';
+            chars[count++] = '=';
+            if ((fields & MD5_LINE_BREAK) != 0) {
+                LINE_BREAK.getChars(0, LINE_BREAK.length(), chars, count);
+                count += LINE_BREAK.length();
+            }
+            result.setMd5(new String(chars, 0, count));
+        }
+        if ((fields & MD5_TEXT) != 0) {
+            result.setMd5(getString(buffer));
+        }
+        if ((fields & HASHES) != 0) {
+            result.setHashes(getHashes(buffer));
+        }
+        if ((fields & PERCEPTUAL_HASHES) != 0) {
+            result.setPerceptualHashes(getPerceptualHashes(buffer));
+        }
+        if ((fields & CONTENT_TYPE) != 0) {
+            result.setContentType(getString(buffer));
+        }
+        result.setImageFormat((fields & IMAGE_FORMAT) != 0 ?
+                get(IMAGE_FORMATS, getVarint(buffer)) : null);
+        if ((fields & METADATA) != 0) {
+            result.setMetadata(getMetadata(buffer));
+        }
+        return result;
+    }
+
+    /**
+     * Writes hashes.
+     *
+     * @param buffer buffer where hashes are written.
+     * @param hashes hashes to be written.
+     */
+    private static void putHashes(final ByteBuffer buffer,
+                                  final HashResult hashes) {
+        putVarint(buffer, hashes.getLength());
+        putVarint(buffer, hashes.getChunkSize());
+        int algorithms = 0;
+        for (int i = 0; i < HASH_ALGORITHMS.length; i++) {
+            if (hashes.contains(HASH_ALGORITHMS[i])) {
+                algorithms |= 1 << i;
+            }
+        }
+        putVarint(buffer, algorithms);
+        for (int i = 0; i < HASH_ALGORITHMS.length; i++) {
+            if ((algorithms & (1 << i)) != 0) {
+                buffer.put(hashes.getDigest(HASH_ALGORITHMS[i]));
+            }
+        }
+    }
+
+    /**
+     * Reads hashes.
+     *
+     * @param buffer buffer where hashes are read from.
+     * @return read hashes.
+     * @throws IllegalArgumentException if data is not valid.
+     */
+    private static HashResult getHashes(final ByteBuffer buffer) {
+        final long length = getVarint(buffer);
+        final long chunkSize = getVarint(buffer);
+        final long algorithms = getVarint(buffer);
+        if (chunkSize > Integer.MAX_VALUE ||
+                (algorithms >>> HASH_ALGORITHMS.length) != 0) {
+            throw new IllegalArgumentException();
+        }
+        final EnumMap<HashAlgorithm, byte[]> digests =
+                new EnumMap<>(HashAlgorithm.class);
+        for (int i = 0; i < HASH_ALGORITHMS.length; i++) {
+            if ((algorithms & (1 << i)) != 0) {
+                final byte[] digest =
+                        new byte[HASH_ALGORITHMS[i].getDigestLength()];
+                buffer.get(digest);
+                digests.put(HASH_ALGORITHMS[i], digest);
+            }
+        }
+        return HashResult.create(digests, length, (int) chunkSize);
+    }
+
+    /**
+     * Writes perceptual hashes.
+     *
+     * @param buffer buffer where hashes are written.
+     * @param hashes hashes to be written.
+     */
+    private static void putPerceptualHashes(final ByteBuffer buffer,
+                                            final PerceptualHashes hashes) {
+        int algorithms = 0;
+        for (int i = 0; i < PERCEPTUAL_ALGORITHMS.length; i++) {
+            if (hashes.contains(PERCEPTUAL_ALGORITHMS[i])) {
+                algorithms |= 1 << i;
+            }
+        }
+        putVarint(buffer, algorithms);
+        for (int i = 0; i < PERCEPTUAL_ALGORITHMS.length; i++) {
+            if ((algorithms & (1 << i)) != 0) {
+                putFixed64(buffer, hashes.getHash(PERCEPTUAL_ALGORITHMS[i]));
+            }
+        }
+    }
+
+    /**
+     * Reads perceptual hashes.
+     *
+     * @param buffer buffer where hashes are read from.
+     * @return read hashes.
+     * @throws IllegalArgumentException if data is not valid.
+     */
+    private static PerceptualHashes getPerceptualHashes(
+            final ByteBuffer buffer) {
+        final long algorithms = getVarint(buffer);
+        if ((algorithms >>> PERCEPTUAL_ALGORITHMS.length) != 0) {
+            throw new IllegalArgumentException();
+        }
+        final EnumMap<PerceptualHashAlgorithm, Long> hashes =
+                new EnumMap<>(PerceptualHashAlgorithm.class);
+        for (int i = 0; i < PERCEPTUAL_ALGORITHMS.length; i++) {
+            if ((algorithms & (1 << i)) != 0) {
+                hashes.put(PERCEPTUAL_ALGORITHMS[i], getFixed64(buffer));
+            }
+        }
+        return PerceptualHashes.create(hashes);
+    }
+
+    /**
+     * Writes metadata.
+     *
+     * @param buffer   buffer where metadata is written.
+     * @param metadata metadata to be written.
+     */
+    private void putMetadata(final ByteBuffer buffer,
+                             final ImageMetadata metadata) {
+        final Unit unit = metadata.getFocalPlaneResolutionUnit();
+        final ImageOrientation orientation = metadata.getOrientation();
+        final GPSCoordinates location = metadata.getLocation();
+        final Flash flash = metadata.getFlash();
+
+        long fields = 0;
+        fields |= metadata.getMaker() != null ? MAKER : 0;
+        fields |= metadata.getModel() != null ? MODEL : 0;
+        fields |= metadata.getFocalLength() != null ? FOCAL_LENGTH : 0;
+        fields |= metadata.getFocalPlaneXResolution() != null ?
+                FOCAL_PLANE_X_RESOLUTION : 0;
+        fields |= metadata.getFocalPlaneYResolution() != null ?
+                FOCAL_PLANE_Y_RESOLUTION : 0;
+        fields |= unit != null ? FOCAL_PLANE_RESOLUTION_UNIT : 0;
+        fields |= orientation != null ? ORIENTATION : 0;
+        fields |= location != null ? LOCATION : 0;
+        fields |= metadata.getArtist() != null ? ARTIST : 0;
+        fields |= metadata.getCopyright() != null ? COPYRIGHT : 0;
+        fields |= metadata.getDocumentName() != null ? DOCUMENT_NAME : 0;
+        fields |= metadata.getHostComputer() != null ? HOST_COMPUTER : 0;
+        fields |= metadata.getImageDescription() != null ?
+                IMAGE_DESCRIPTION : 0;
+        fields |= metadata.getSoftware() != null ? SOFTWARE : 0;
+        fields |= metadata.getTargetPrinter() != null ? TARGET_PRINTER : 0;
+        fields |= metadata.getCameraSerialNumber() != null ?
+                CAMERA_SERIAL_NUMBER : 0;
+        fields |= metadata.getDigitalZoomRatio() != null ?
+                DIGITAL_ZOOM_RATIO : 0;
+        fields |= metadata.getExposureTime() != null ? EXPOSURE_TIME : 0;
+        fields |= flash != null ? FLASH : 0;
+        fields |= metadata.getFlashEnergy() != null ? FLASH_ENERGY : 0;
+        fields |= metadata.getFNumber() != null ? F_NUMBER : 0;
+        fields |= metadata.getFocalLengthIn35mmFilm() != null ?
+                FOCAL_LENGTH_IN_35MM_FILM : 0;
+        fields |= metadata.getUniqueCameraModel() != null ?
+                UNIQUE_CAMERA_MODEL : 0;
+        fields |= metadata.getSubjectDistance() != null ? SUBJECT_DISTANCE : 0;
+        fields |= metadata.getShutterSpeedValue() != null ?
+                SHUTTER_SPEED_VALUE : 0;
+        fields |= metadata.getISO() != null ? ISO : 0;
+        putVarint(buffer, fields);
+
+        putSignedVarint(buffer, metadata.getWidth());
+        putSignedVarint(buffer, metadata.getHeight());
+        putString(buffer, fields, MAKER, metadata.getMaker());
+        putString(buffer, fields, MODEL, metadata.getModel());
+        putDouble(buffer, fields, FOCAL_LENGTH, metadata.getFocalLength());
+        putDouble(buffer, fields, FOCAL_PLANE_X_RESOLUTION,
+                metadata.getFocalPlaneXResolution());
+        putDouble(buffer, fields, FOCAL_PLANE_Y_RESOLUTION,
+                metadata.getFocalPlaneYResolution());
+        if (unit != null) {
+            putVarint(buffer, unit.getValue());
+        }
+        if (orientation != null) {
+            putVarint(buffer, orientation.getValue());
+        }
+        if (location != null) {
+            putLocation(buffer, location);
+        }
+        putString(buffer, fields, ARTIST, metadata.getArtist());
+        putString(buffer, fields, COPYRIGHT, metadata.getCopyright());
+        putString(buffer, fields, DOCUMENT_NAME, metadata.getDocumentName());
+        putString(buffer, fields, HOST_COMPUTER, metadata.getHostComputer());
+        putString(buffer, fields, IMAGE_DESCRIPTION,
+                metadata.getImageDescription());
+        putString(buffer, fields, SOFTWARE, metadata.getSoftware());
+        putString(buffer, fields, TARGET_PRINTER, metadata.getTargetPrinter());
+        putString(buffer, fields, CAMERA_SERIAL_NUMBER,
+                metadata.getCameraSerialNumber());
+        putDouble(buffer, fields, DIGITAL_ZOOM_RATIO,
+                metadata.getDigitalZoomRatio());
+        putDouble(buffer, fields, EXPOSURE_TIME, metadata.getExposureTime());
+        if (flash != null) {
+            putVarint(buffer, flash.getValue());
+        }
+        putDouble(buffer, fields, FLASH_ENERGY, metadata.getFlashEnergy());
+        putDouble(buffer, fields, F_NUMBER, metadata.getFNumber());
+        putDouble(buffer, fields, FOCAL_LENGTH_IN_35MM_FILM,
+                metadata.getFocalLengthIn35mmFilm());
+        putString(buffer, fields, UNIQUE_CAMERA_MODEL,
+                metadata.getUniqueCameraModel());
+        putDouble(buffer, fields, SUBJECT_DISTANCE,
+                metadata.getSubjectDistance());
+        putDouble(buffer, fields, SHUTTER_SPEED_VALUE,
+                metadata.getShutterSpeedValue());
+        if (metadata.getISO() != null) {
+            putSignedVarint(buffer, metadata.getISO());
+        }
+    }
+
+    /**
+     * Reads metadata.
+     *
+     * @param buffer buffer where metadata is read from.
+     * @return read metadata.
+     * @throws IllegalArgumentException if data is not valid.
+     */
+    private ImageMetadata getMetadata(final ByteBuffer buffer) {
+        final long fields = getVarint(buffer);
+        if ((fields & ~METADATA_FIELDS) != 0) {
+            throw new IllegalArgumentException();
+        }
+
+        final ImageMetadata metadata = new ImageMetadata();
+        metadata.setWidth(toInt(getSignedVarint(buffer)));
+        metadata.setHeight(toInt(getSignedVarint(buffer)));
+        metadata.setMaker(getString(buffer, fields, MAKER));
+        metadata.setModel(getString(buffer, fields, MODEL));
+        metadata.setFocalLength(getDouble(buffer, fields, FOCAL_LENGTH));
+        metadata.setFocalPlaneXResolution(getDouble(buffer, fields,
+                FOCAL_PLANE_X_RESOLUTION));
+        metadata.setFocalPlaneYResolution(getDouble(buffer, fields,
+                FOCAL_PLANE_Y_RESOLUTION));
+        if ((fields & FOCAL_PLANE_RESOLUTION_UNIT) != 0) {
+            metadata.setFocalPlaneResolutionUnit(Unit.fromValue(
+                    toInt(getVarint(buffer))));
+        }
+        if ((fields & ORIENTATION) != 0) {
+            metadata.setOrientation(ImageOrientation.fromValue(
+                    toInt(getVarint(buffer))));
+        }
+        if ((fields & LOCATION) != 0) {
+            metadata.setLocation(getLocation(buffer));
+        }
+        metadata.setArtist(getString(buffer, fields, ARTIST));
+        metadata.setCopyright(getString(buffer, fields, COPYRIGHT));
+        metadata.setDocumentName(getString(buffer, fields, DOCUMENT_NAME));
+        metadata.setHostComputer(getString(buffer, fields, HOST_COMPUTER));
+        metadata.setImageDescription(getString(buffer, fields,
+                IMAGE_DESCRIPTION));
+        metadata.setSoftware(getString(buffer, fields, SOFTWARE));
+        metadata.setTargetPrinter(getString(buffer, fields, TARGET_PRINTER));
+        metadata.setCameraSerialNumber(getString(buffer, fields,
+                CAMERA_SERIAL_NUMBER));
+        metadata.setDigitalZoomRatio(getDouble(buffer, fields,
+                DIGITAL_ZOOM_RATIO));
+        metadata.setExposureTime(getDouble(buffer, fields, EXPOSURE_TIME));
+        if ((fields & FLASH) != 0) {
+            metadata.setFlash(Flash.fromValue(toInt(getVarint(buffer))));
+        }
+        metadata.setFlashEnergy(getDouble(buffer, fields, FLASH_ENERGY));
+        metadata.setFNumber(getDouble(buffer, fields, F_NUMBER));
+        metadata.setFocalLengthIn35mmFilm(getDouble(buffer, fields,
+                FOCAL_LENGTH_IN_35MM_FILM));
+        metadata.setUniqueCameraModel(getString(buffer, fields,
+                UNIQUE_CAMERA_MODEL));
+        metadata.setSubjectDistance(getDouble(buffer, fields,
+                SUBJECT_DISTANCE));
+        metadata.setShutterSpeedValue(getDouble(buffer, fields,
+                SHUTTER_SPEED_VALUE));
+        if ((fields & ISO) != 0) {
+            metadata.setISO(toInt(getSignedVarint(buffer)));
+        }
+        return metadata;
+    }
+
+    /**
+     * Writes a location.
+     *
+     * @param buffer   buffer where location is written.
+     * @param location location to be written.
+     */
+    private static void putLocation(final ByteBuffer buffer,
+                                    final GPSCoordinates location) {
+        int fields = 0;
+        fields |= location.isLatitudeAvailable() ? LATITUDE : 0;
+        fields |= location.isLongitudeAvailable() ? LONGITUDE : 0;
+        fields |= location.isAltitudeAvailable() ? ALTITUDE : 0;
+        putVarint(buffer, fields);
+        if (location.isLatitudeAvailable()) {
+            putFixed64(buffer, Double.doubleToRawLongBits(
+                    location.getLatitude()));
+        }
+        if (location.isLongitudeAvailable()) {
+            putFixed64(buffer, Double.doubleToRawLongBits(
+                    location.getLongitude()));
+        }
+        if (location.isAltitudeAvailable()) {
+            putFixed64(buffer, Double.doubleToRawLongBits(
+                    location.getAltitude()));
+        }
+    }
+
+    /**
+     * Reads a location.
+     *
+     * @param buffer buffer where location is read from.
+     * @return read location.
+     * @throws IllegalArgumentException if data is not valid.
+     */
+    private static GPSCoordinates getLocation(final ByteBuffer buffer) {
+        final long fields = getVarint(buffer);
+        if ((fields & ~LOCATION_FIELDS) != 0) {
+            throw new IllegalArgumentException();
+        }
+        final GPSCoordinates location = new GPSCoordinates();
+        if ((fields & LATITUDE) != 0) {
+            location.setLatitude(Double.longBitsToDouble(getFixed64(buffer)));
+        }
+        if ((fields & LONGITUDE) != 0) {
+            location.setLongitude(Double.longBitsToDouble(getFixed64(buffer)));
+        }
+        if ((fields & ALTITUDE) != 0) {
+            location.setAltitude(Double.longBitsToDouble(getFixed64(buffer)));
+        }
+        return location;
+    }
+
+    /**
+     * Writes an optional string if present.
+     *
+     * @param buffer buffer where string is written.
+     * @param fields bitmask of present fields.
+     * @param field  bit of field.
+     * @param value  value of field.
+     */
+    private void putString(final ByteBuffer buffer, final long fields,
+                           final long field, final String value) {
+        if ((fields & field) != 0) {
+            putString(buffer, value);
+        }
+    }
+
+    /**
+     * Reads an optional string if present.
+     *
+     * @param buffer buffer where string is read from.
+     * @param fields bitmask of present fields.
+     * @param field  bit of field.
+     * @return read value or null if not present.
+     * @throws IllegalArgumentException if data is not valid.
+     */
+    private String getString(final ByteBuffer buffer, final long fields,
+                             final long field) {
+        return (fields & field) != 0 ? getString(buffer) : null;
+    }
+
+    /**
+     * Writes an optional floating point value if present.
+     *
+     * @param buffer buffer where value is written.
+     * @param fields bitmask of present fields.
+     * @param field  bit of field.
+     * @param value  value of field.
+     */
+    private static void putDouble(final ByteBuffer buffer, final long fields,
+                                  final long field, final Double value) {
+        if ((fields & field) != 0) {
+            putFixed64(buffer, Double.doubleToRawLongBits(value));
+        }
+    }
+
+    /**
+     * Reads an optional floating point value if present.
+     *
+     * @param buffer buffer where value is read from.
+     * @param fields bitmask of present fields.
+     * @param field  bit of field.
+     * @return read value or null if not present.
+     */
+    private static Double getDouble(final ByteBuffer buffer, final long fields,
+                                    final long field) {
+        return (fields & field) != 0 ?
+                Double.longBitsToDouble(getFixed64(buffer)) : null;
+    }
+
+    /**
+     * Writes a string, either as a reference to a previously written or well
+     * known string, or as a zero followed by its UTF-8 length and bytes.
+     *
+     * @param buffer buffer where string is written.
+     * @param value  string to be written.
+     */
+    private void putString(final ByteBuffer buffer, final String value) {
+        final Integer staticCode = STATIC_CODES.get(value);
+        if (staticCode != null) {
+            putVarint(buffer, staticCode + 1);
+            return;
+        }
+        final Integer code = mWrittenStrings.get(value);
+        if (code != null) {
+            putVarint(buffer, code + 1);
+            return;
+        }
+        mWrittenStrings.put(value, STATIC_DICTIONARY.length +
+                mWrittenStrings.size());
+
+        final int length = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (isSurrogatePair(value, i)) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        putVarint(buffer, 0);
+        putVarint(buffer, utf8Length);
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >>> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (isSurrogatePair(value, i)) {
+                final int codePoint = Character.toCodePoint(c,
+                        value.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >>> 18));
+                buffer.put((byte) (0x80 | codePoint >>> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >>> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                buffer.put((byte) (0xE0 | c >>> 12));
+                buffer.put((byte) (0x80 | c >>> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Reads a string.
+     *
+     * @param buffer buffer where string is read from.
+     * @return read string.
+     * @throws IllegalArgumentException if data is not valid.
+     */
+    private String getString(final ByteBuffer buffer) {
+        final long code = getVarint(buffer);
+        if (code != 0) {
+            final long index = code - 1;
+            if (index < STATIC_DICTIONARY.length) {
+                return STATIC_DICTIONARY[(int) index];
+            }
+            final long dynamicIndex = index - STATIC_DICTIONARY.length;
+            if (dynamicIndex >= mReadStringCount) {
+                throw new IllegalArgumentException();
+            }
+            return mReadStrings[(int) dynamicIndex];
+        }
+
+        final long utf8Length = getVarint(buffer);
+        if (utf8Length > buffer.remaining()) {
+            throw new IllegalArgumentException();
+        }
+        final char[] chars = scratch((int) utf8Length);
+        final int end = buffer.position() + (int) utf8Length;
+        int count = 0;
+        while (buffer.position() < end) {
+            final int b = buffer.get() & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if (b < 0xE0) {
+                chars[count++] = (char) ((b & 0x1F) << 6 |
+                        continuation(buffer));
+            } else if (b < 0xF0) {
+                chars[count++] = (char) ((b & 0x0F) << 12 |
+                        continuation(buffer) << 6 | continuation(buffer));
+            } else {
+                final int codePoint = (b & 0x07) << 18 |
+                        continuation(buffer) << 12 |
+                        continuation(buffer) << 6 | continuation(buffer);
+                if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT ||
+                        codePoint > Character.MAX_CODE_POINT) {
+                    throw new IllegalArgumentException();
+                }
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            }
+        }
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException();
+        }
+
+        final String value = new String(chars, 0, count);
+        if (mReadStringCount == mReadStrings.length) {
+            mReadStrings = Arrays.copyOf(mReadStrings, 2 * mReadStringCount);
+        }
+        mReadStrings[mReadStringCount++] = value;
+        return value;
+    }
+
+    /**
+     * Returns scratch array of characters having at least provided length.
+     *
+     * @param length required length.
+     * @return scratch array.
+     */
+    private char[] scratch(final int length) {
+        if (mChars.length < length) {
+            mChars = new char[Math.max(length, 2 * mChars.length)];
+        }
+        return mChars;
+    }
+
+    /**
+     * Writes an unsigned variable length integer, 7 bits per byte starting
+     * with the least significant ones.
+     *
+     * @param buffer buffer where value is written.
+     * @param value  value to be written.
+     */
+    static void putVarint(final ByteBuffer buffer, final long value) {
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            buffer.put((byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    /**
+     * Reads an unsigned variable length integer.
+     *
+     * @param buffer buffer where value is read from.
+     * @return read value.
+     * @throws IllegalArgumentException if value takes more than 10 bytes.
+     */
+    static long getVarint(final ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Writes a signed variable length integer using zig-zag encoding, so that
+     * values close to zero take few bytes.
+     *
+     * @param buffer buffer where value is written.
+     * @param value  value to be written.
+     */
+    static void putSignedVarint(final ByteBuffer buffer, final long value) {
+        putVarint(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a signed variable length integer.
+     *
+     * @param buffer buffer where value is read from.
+     * @return read value.
+     * @throws IllegalArgumentException if value takes more than 10 bytes.
+     */
+    static long getSignedVarint(final ByteBuffer buffer) {
+        final long v = getVarint(buffer);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Writes 8 bytes in little endian order regardless of buffer order.
+     *
+     * @param buffer buffer where value is written.
+     * @param value  value to be written.
+     */
+    private static void putFixed64(final ByteBuffer buffer, final long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            buffer.put((byte) (value >>> shift));
+        }
+    }
+
+    /**
+     * Reads 8 bytes in little endian order regardless of buffer order.
+     *
+     * @param buffer buffer where value is read from.
+     * @return read value.
+     */
+    private static long getFixed64(final ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 8) {
+            result |= (buffer.get() & 0xFFL) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Reads a continuation byte of a UTF-8 sequence.
+     *
+     * @param buffer buffer where byte is read from.
+     * @return 6 bits of continuation byte.
+     * @throws IllegalArgumentException if byte is not a continuation byte.
+     */
+    private static int continuation(final ByteBuffer buffer) {
+        final int b = buffer.get() & 0xFF;
+        if ((b & 0xC0) != 0x80) {
+            throw new IllegalArgumentException();
+        }
+        return b & 0x3F;
+    }
+
+    /**
+     * Indicates whether provided position of a string contains a valid
+     * surrogate pair.
+     *
+     * @param value string.
+     * @param i     position.
+     * @return true if a surrogate pair starts at provided position.
+     */
+    private static boolean isSurrogatePair(final String value, final int i) {
+        return Character.isHighSurrogate(value.charAt(i)) &&
+                i + 1 < value.length() &&
+                Character.isLowSurrogate(value.charAt(i + 1));
+    }
+
+    /**
+     * Indicates whether provided MD5 is a Base64 string of 16 bytes,
+     * optionally followed by a line break, as computed by ImageReader, and
+     * therefore can be written as 16 bytes and restored exactly.
+     *
+     * @param md5 MD5 string or null.
+     * @return true if MD5 can be written as 16 bytes.
+     */
+    private static boolean isBase64Md5(final String md5) {
+        if (md5 == null || (md5.length() != BASE64_MD5_LENGTH &&
+                !(md5.length() == BASE64_MD5_LENGTH + LINE_BREAK.length() &&
+                        md5.endsWith(LINE_BREAK))) ||
+                md5.charAt(BASE64_MD5_DIGITS) != '=' ||
+                md5.charAt(BASE64_MD5_DIGITS + 1) != '=') {
+            return false;
+        }
+        for (int i = 0; i < BASE64_MD5_DIGITS; i++) {
+            if (base64Value(md5.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        // last digit only contains 2 bits of data
+        return (base64Value(md5.charAt(BASE64_MD5_DIGITS - 1)) & 0xF) == 0;
+    }
+
+    /**
+     * Returns value of a Base64 digit.
+     *
+     * @param c character.
+     * @return value of digit or -1 if character is not a Base64 digit.
+     */
+    private static int base64Value(final char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        if (c == '+') {
+            return 62;
+        }
+        return c == '/' ? 63 : -1;
+    }
+
+    /**
+     * Converts a decoded value into an int.
+     *
+     * @param value decoded value.
+     * @return value as an int.
+     * @throws IllegalArgumentException if value does not fit into an int.
+     */
+    private static int toInt(final long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+        }
+        return (int) value;
+    }
+
+    /**
+     * Returns position of a value within an array.
+     *
+     * @param values array of values.
+     * @param value  value to look for.
+     * @param <T>    type of values.
+     * @return position of value.
+     */
+    private static <T> int indexOf(final T[] values, final T value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        // tables contain all enumeration values
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Returns value at provided position of an array.
+     *
+     * @param values array of values.
+     * @param code   decoded position.
+     * @param <T>    type of values.
+     * @return value.
+     * @throws IllegalArgumentException if position is out of range.
+     */
+    private static <T> T get(final T[] values, final long code) {
+        if (code < 0 || code >= values.length) {
+            throw new IllegalArgumentException();
+        }
+        return values[(int) code];
+    }
+}
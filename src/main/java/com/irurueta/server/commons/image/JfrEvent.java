@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Custom JDK Flight Recorder event type emitted by ImageReader and
+ * ThumbnailCreator.
+ * This library is built for Java 7, hence event types are defined at runtime
+ * through the JFR EventFactory API using reflection. When JFR is not
+ * available (i.e. on Java 7 or 8) events are silently disabled.
+ * Events are only created when their type is enabled in a running recording,
+ * so that they cost nothing otherwise.
+ */
+final class JfrEvent {
+
+    /**
+     * Prefix of event names.
+     */
+    private static final String NAME_PREFIX = "com.irurueta.image.";
+
+    /**
+     * Category of events.
+     */
+    private static final String[] CATEGORY = {"Irurueta", "Image"};
+
+    /**
+     * Content type of fields expressing bytes.
+     */
+    static final String BYTES = "jdk.jfr.DataAmount:BYTES";
+
+    /**
+     * Content type of fields expressing nanoseconds.
+     */
+    static final String NANOSECONDS = "jdk.jfr.Timespan:NANOSECONDS";
+
+    /**
+     * Event emitted for every read image.
+     */
+    static final JfrEvent IMAGE_READ = new JfrEvent("ImageRead",
+            "Image Read", "Image metadata has been read",
+            field(String.class, "path", "Path", null),
+            field(String.class, "format", "Format", null),
+            field(int.class, "width", "Width", null),
+            field(int.class, "height", "Height", null),
+            field(long.class, "fileSize", "File Size", BYTES),
+            field(String.class, "orientation", "Orientation", null),
+            field(boolean.class, "success", "Success", null),
+            field(long.class, "info", "Info Time", NANOSECONDS),
+            field(long.class, "exif", "EXIF Time", NANOSECONDS),
+            field(long.class, "hash", "Hash Time", NANOSECONDS),
+            field(long.class, "perceptualHash", "Perceptual Hash Time",
+                    NANOSECONDS));
+
+    /**
+     * Event emitted for every generated thumbnail.
+     */
+    static final JfrEvent THUMBNAIL_GENERATE = new JfrEvent(
+            "ThumbnailGenerate", "Thumbnail Generate",
+            "A thumbnail has been generated",
+            field(String.class, "path", "Path", null),
+            field(String.class, "format", "Format", null),
+            field(int.class, "width", "Width", null),
+            field(int.class, "height", "Height", null),
+            field(long.class, "fileSize", "File Size", BYTES),
+            field(String.class, "orientation", "Orientation", null),
+            field(int.class, "targetWidth", "Target Width", null),
+            field(int.class, "targetHeight", "Target Height", null),
+            field(String.class, "priority", "Priority", null),
+            field(boolean.class, "success", "Success", null),
+            field(long.class, "queueWait", "Queue Wait Time", NANOSECONDS),
+            field(long.class, "io", "I/O Time", NANOSECONDS),
+            field(long.class, "decode", "Decode Time", NANOSECONDS),
+            field(long.class, "scale", "Scale Time", NANOSECONDS),
+            field(long.class, "rotate", "Rotate Time", NANOSECONDS),
+            field(long.class, "encode", "Encode Time", NANOSECONDS),
+            field(long.class, "write", "Write Time", NANOSECONDS));
+
+    /**
+     * Event emitted when a thumbnail request has waited to be allowed to run.
+     */
+    static final JfrEvent THUMBNAIL_QUEUE_WAIT = new JfrEvent(
+            "ThumbnailQueueWait", "Thumbnail Queue Wait",
+            "A thumbnail request waited to be allowed to run",
+            field(String.class, "path", "Path", null),
+            field(String.class, "priority", "Priority", null),
+            field(String.class, "tenant", "Tenant", null),
+            field(int.class, "waiting", "Waiting Requests", null));
+
+    /**
+     * Event factory or null if JFR is not available.
+     */
+    private final Object mFactory;
+
+    /**
+     * Method to check whether event type is enabled.
+     */
+    private final Method mIsEnabled;
+
+    /**
+     * Event type of factory.
+     */
+    private final Object mEventType;
+
+    /**
+     * Method to create a new event.
+     */
+    private final Method mNewEvent;
+
+    /**
+     * Method to start timing an event.
+     */
+    private final Method mBegin;
+
+    /**
+     * Method to stop timing an event.
+     */
+    private final Method mEnd;
+
+    /**
+     * Method to commit an event.
+     */
+    private final Method mCommit;
+
+    /**
+     * Method to set a field value of an event.
+     */
+    private final Method mSet;
+
+    /**
+     * Constructor.
+     *
+     * @param name        name of event without prefix.
+     * @param label       label of event.
+     * @param description description of event.
+     * @param fields      fields of event, each one containing its type,
+     *                    name, label and content type.
+     */
+    private JfrEvent(final String name, final String label,
+                     final String description, final Object[]... fields) {
+        Object factory = null;
+        Object eventType = null;
+        Method isEnabled = null;
+        Method newEvent = null;
+        Method begin = null;
+        Method end = null;
+        Method commit = null;
+        Method set = null;
+        try {
+            final Class<?> elementClass = Class.forName(
+                    "jdk.jfr.AnnotationElement");
+            final Constructor<?> elementConstructor =
+                    elementClass.getConstructor(Class.class, Object.class);
+            final Class<?> descriptorClass = Class.forName(
+                    "jdk.jfr.ValueDescriptor");
+            final Constructor<?> descriptorConstructor =
+                    descriptorClass.getConstructor(Class.class, String.class,
+                            List.class);
+            final Class<?> factoryClass = Class.forName(
+                    "jdk.jfr.EventFactory");
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+
+            final List<Object> annotations = Arrays.asList(
+                    elementConstructor.newInstance(
+                            Class.forName("jdk.jfr.Name"),
+                            NAME_PREFIX + name),
+                    elementConstructor.newInstance(
+                            Class.forName("jdk.jfr.Label"), label),
+                    elementConstructor.newInstance(
+                            Class.forName("jdk.jfr.Description"),
+                            description),
+                    elementConstructor.newInstance(
+                            Class.forName("jdk.jfr.Category"),
+                            CATEGORY.clone()));
+
+            final List<Object> descriptors = new ArrayList<>();
+            for (final Object[] field : fields) {
+                final List<Object> fieldAnnotations = new ArrayList<>();
+                fieldAnnotations.add(elementConstructor.newInstance(
+                        Class.forName("jdk.jfr.Label"), field[2]));
+                if (field[3] != null) {
+                    final String[] contentType = ((String) field[3])
+                            .split(":");
+                    fieldAnnotations.add(elementConstructor.newInstance(
+                            Class.forName(contentType[0]), contentType[1]));
+                }
+                descriptors.add(descriptorConstructor.newInstance(field[0],
+                        field[1], fieldAnnotations));
+            }
+
+            factory = factoryClass.getMethod("create", List.class,
+                    List.class).invoke(null, annotations, descriptors);
+            eventType = factoryClass.getMethod("getEventType").invoke(
+                    factory);
+            isEnabled = eventType.getClass().getMethod("isEnabled");
+            newEvent = factoryClass.getMethod("newEvent");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            commit = eventClass.getMethod("commit");
+            set = eventClass.getMethod("set", int.class, Object.class);
+        } catch (final Exception | LinkageError ignore) {
+            // JFR is not available
+            factory = null;
+        }
+        mFactory = factory;
+        mEventType = eventType;
+        mIsEnabled = isEnabled;
+        mNewEvent = newEvent;
+        mBegin = begin;
+        mEnd = end;
+        mCommit = commit;
+        mSet = set;
+    }
+
+    /**
+     * Indicates whether JFR is available in this JVM.
+     *
+     * @return true if JFR is available, false otherwise.
+     */
+    boolean isAvailable() {
+        return mFactory != null;
+    }
+
+    /**
+     * Indicates whether this event type is enabled in any running recording.
+     *
+     * @return true if event type is enabled, false otherwise.
+     */
+    boolean isEnabled() {
+        if (mFactory == null) {
+            return false;
+        }
+        try {
+            return (Boolean) mIsEnabled.invoke(mEventType);
+        } catch (final Exception ignore) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new event and starts timing it, if this event type is
+     * enabled.
+     *
+     * @return started event or null if event type is not enabled.
+     */
+    Object begin() {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            final Object event = mNewEvent.invoke(mFactory);
+            mBegin.invoke(event);
+            return event;
+        } catch (final Exception ignore) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops timing an event, sets its field values and commits it.
+     *
+     * @param event  event returned by begin() or null.
+     * @param values values of fields of event in order.
+     */
+    void commit(final Object event, final Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            mEnd.invoke(event);
+            for (int i = 0; i < values.length; i++) {
+                mSet.invoke(event, i, values[i]);
+            }
+            mCommit.invoke(event);
+        } catch (final Exception ignore) {
+            // events are best effort
+        }
+    }
+
+    /**
+     * Returns name of an enum value or null.
+     *
+     * @param value an enum value or null.
+     * @return name of value or null.
+     */
+    static String name(final Enum<?> value) {
+        return value != null ? value.name() : null;
+    }
+
+    /**
+     * Defines a field of an event.
+     *
+     * @param type        type of field.
+     * @param name        name of field.
+     * @param label       label of field.
+     * @param contentType content type of field, as annotation class name and
+     *                    value separated by a colon, or null.
+     * @return field definition.
+     */
+    private static Object[] field(final Class<?> type, final String name,
+                                  final String label,
+                                  final String contentType) {
+        return new Object[]{type, name, label, contentType};
+    }
+}
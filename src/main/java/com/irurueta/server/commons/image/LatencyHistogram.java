@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies expressed in nanoseconds.
+ * Values are recorded into log-linear buckets: each power of two is split into
+ * 8 sub-buckets, hence percentiles are obtained with a relative error below
+ * 12.5% while using a small fixed amount of memory.
+ * This class is safe to use from multiple threads.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits used to split each power of two into sub-buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of sub-buckets in each power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets required to cover all positive long values.
+     */
+    private static final int BUCKETS =
+            (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Number of recorded values in each bucket.
+     */
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of recorded values.
+     */
+    private final AtomicLong mCount = new AtomicLong();
+
+    /**
+     * Sum of recorded values.
+     */
+    private final AtomicLong mTotal = new AtomicLong();
+
+    /**
+     * Maximum recorded value.
+     */
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency expressed in nanoseconds. Negative values are
+     *              recorded as zero.
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        mBuckets.incrementAndGet(getBucket(value));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(value);
+
+        long max;
+        while (value > (max = mMax.get())) {
+            if (mMax.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns number of recorded values.
+     *
+     * @return number of recorded values.
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Returns sum of recorded values expressed in nanoseconds.
+     *
+     * @return sum of recorded values.
+     */
+    public long getTotal() {
+        return mTotal.get();
+    }
+
+    /**
+     * Returns maximum recorded value expressed in nanoseconds.
+     *
+     * @return maximum recorded value or zero if nothing has been recorded.
+     */
+    public long getMax() {
+        return mMax.get();
+    }
+
+    /**
+     * Returns mean of recorded values expressed in nanoseconds.
+     *
+     * @return mean of recorded values or zero if nothing has been recorded.
+     */
+    public double getMean() {
+        final long count = mCount.get();
+        return count > 0 ? (double) mTotal.get() / (double) count : 0.0;
+    }
+
+    /**
+     * Returns an estimation of provided percentile of recorded values,
+     * expressed in nanoseconds.
+     * The estimation is the upper bound of the bucket containing the
+     * percentile, limited to the maximum recorded value.
+     *
+     * @param percentile percentile to be obtained between 0.0 and 100.0.
+     * @return estimated percentile or zero if nothing has been recorded.
+     * @throws IllegalArgumentException if percentile is not between 0.0 and
+     *                                  100.0.
+     */
+    public long getPercentile(final double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException();
+        }
+
+        final long[] buckets = new long[BUCKETS];
+        final long count = copyBuckets(buckets);
+        return getPercentile(buckets, count, mMax.get(), percentile);
+    }
+
+    /**
+     * Returns a consistent view of recorded values, where all percentiles are
+     * estimated from the same copy of buckets.
+     *
+     * @return snapshot of recorded values.
+     */
+    public LatencySnapshot getSnapshot() {
+        final long[] buckets = new long[BUCKETS];
+        final long count = copyBuckets(buckets);
+        final long max = mMax.get();
+        final long total = mTotal.get();
+        return new LatencySnapshot(count,
+                count > 0 ? (double) total / (double) count : 0.0,
+                getPercentile(buckets, count, max, 50.0),
+                getPercentile(buckets, count, max, 90.0),
+                getPercentile(buckets, count, max, 99.0),
+                getPercentile(buckets, count, max, 99.9), max);
+    }
+
+    /**
+     * Removes all recorded values.
+     * Values recorded concurrently while resetting might be partially lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Copies number of recorded values in each bucket.
+     *
+     * @param buckets array where values will be copied.
+     * @return number of recorded values contained in copied buckets.
+     */
+    private long copyBuckets(final long[] buckets) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        return count;
+    }
+
+    /**
+     * Estimates provided percentile from a copy of buckets.
+     *
+     * @param buckets    copied buckets.
+     * @param count      number of values contained in copied buckets.
+     * @param max        maximum recorded value.
+     * @param percentile percentile to be obtained between 0.0 and 100.0.
+     * @return estimated percentile or zero if buckets are empty.
+     */
+    private static long getPercentile(final long[] buckets, final long count,
+                                      final long max, final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 *
+                count));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            accumulated += buckets[i];
+            if (accumulated >= rank) {
+                return Math.min(getUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns bucket where provided value is recorded.
+     *
+     * @param value a non-negative value.
+     * @return bucket position.
+     */
+    static int getBucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * Returns largest value recorded into provided bucket.
+     *
+     * @param bucket bucket position.
+     * @return upper bound of bucket.
+     */
+    static long getUpperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        final long subBucket = bucket & (SUB_BUCKETS - 1);
+        final long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+/**
+ * Immutable view of the values recorded into a LatencyHistogram at a given
+ * moment. All values are expressed in nanoseconds.
+ */
+public class LatencySnapshot {
+
+    /**
+     * Number of recorded values.
+     */
+    private final long mCount;
+
+    /**
+     * Mean of recorded values.
+     */
+    private final double mMean;
+
+    /**
+     * Estimated median.
+     */
+    private final long mP50;
+
+    /**
+     * Estimated 90th percentile.
+     */
+    private final long mP90;
+
+    /**
+     * Estimated 99th percentile.
+     */
+    private final long mP99;
+
+    /**
+     * Estimated 99.9th percentile.
+     */
+    private final long mP999;
+
+    /**
+     * Maximum recorded value.
+     */
+    private final long mMax;
+
+    /**
+     * Constructor.
+     *
+     * @param count number of recorded values.
+     * @param mean  mean of recorded values.
+     * @param p50   estimated median.
+     * @param p90   estimated 90th percentile.
+     * @param p99   estimated 99th percentile.
+     * @param p999  estimated 99.9th percentile.
+     * @param max   maximum recorded value.
+     */
+    LatencySnapshot(final long count, final double mean, final long p50,
+                    final long p90, final long p99, final long p999,
+                    final long max) {
+        mCount = count;
+        mMean = mean;
+        mP50 = p50;
+        mP90 = p90;
+        mP99 = p99;
+        mP999 = p999;
+        mMax = max;
+    }
+
+    /**
+     * Returns number of recorded values.
+     *
+     * @return number of recorded values.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns mean of recorded values.
+     *
+     * @return mean of recorded values or zero if nothing was recorded.
+     */
+    public double getMean() {
+        return mMean;
+    }
+
+    /**
+     * Returns estimated median.
+     *
+     * @return estimated median or zero if nothing was recorded.
+     */
+    public long getP50() {
+        return mP50;
+    }
+
+    /**
+     * Returns estimated 90th percentile.
+     *
+     * @return estimated 90th percentile or zero if nothing was recorded.
+     */
+    public long getP90() {
+        return mP90;
+    }
+
+    /**
+     * Returns estimated 99th percentile.
+     *
+     * @return estimated 99th percentile or zero if nothing was recorded.
+     */
+    public long getP99() {
+        return mP99;
+    }
+
+    /**
+     * Returns estimated 99.9th percentile.
+     *
+     * @return estimated 99.9th percentile or zero if nothing was recorded.
+     */
+    public long getP999() {
+        return mP999;
+    }
+
+    /**
+     * Returns maximum recorded value.
+     *
+     * @return maximum recorded value or zero if nothing was recorded.
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Returns a textual representation of this snapshot.
+     *
+     * @return textual representation.
+     */
+    @Override
+    public String toString() {
+        return "count=" + mCount + ", mean=" + (long) mMean + "ns, p50=" +
+                mP50 + "ns, p90=" + mP90 + "ns, p99=" + mP99 + "ns, p99.9=" +
+                mP999 + "ns, max=" + mMax + "ns";
+    }
+}
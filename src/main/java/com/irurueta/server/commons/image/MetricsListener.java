@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.io.File;
+
+/**
+ * Listener notified by ImageReader and ThumbnailCreator with the time spent
+ * in each stage of every operation, so that slow operations can be
+ * attributed to a stage.
+ * Listeners are notified from the thread performing the operation once it
+ * has finished, either successfully or not, hence implementations must be
+ * thread-safe and fast.
+ * When no listener is set, NoOpMetricsListener is used and stages are not
+ * timed at all, unless Flight Recorder events are being recorded.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called when an image has been read or reading it failed.
+     *
+     * @param file    image file.
+     * @param result  result of reading image or null if reading failed.
+     * @param timings time spent in each stage.
+     * @param error   error that caused reading to fail or null if it
+     *                succeeded.
+     */
+    void onImageRead(File file, ImageReaderResult result,
+                     StageTimings<ReadStage> timings, Throwable error);
+
+    /**
+     * Called when a thumbnail has been generated or its generation failed.
+     *
+     * @param details details of thumbnail generation, including time spent
+     *                in each stage.
+     * @param error   error that caused generation to fail or null if it
+     *                succeeded.
+     */
+    void onThumbnailGenerated(ThumbnailDetails details, Throwable error);
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.io.File;
+
+/**
+ * Metrics listener that ignores all notifications.
+ * ImageReader and ThumbnailCreator skip timing of stages entirely while using
+ * this listener, hence it has no overhead.
+ */
+public final class NoOpMetricsListener implements MetricsListener {
+
+    /**
+     * Shared instance.
+     */
+    public static final NoOpMetricsListener INSTANCE =
+            new NoOpMetricsListener();
+
+    /**
+     * Constructor.
+     * Use shared instance instead.
+     */
+    private NoOpMetricsListener() {
+    }
+
+    /**
+     * Ignores read images.
+     *
+     * @param file    image file.
+     * @param result  result of reading image or null.
+     * @param timings time spent in each stage.
+     * @param error   error that caused reading to fail or null.
+     */
+    @Override
+    public void onImageRead(final File file, final ImageReaderResult result,
+                            final StageTimings<ReadStage> timings,
+                            final Throwable error) {
+        // no action needed
+    }
+
+    /**
+     * Ignores generated thumbnails.
+     *
+     * @param details details of thumbnail generation.
+     * @param error   error that caused generation to fail or null.
+     */
+    @Override
+    public void onThumbnailGenerated(final ThumbnailDetails details,
+                                     final Throwable error) {
+        // no action needed
+    }
+}
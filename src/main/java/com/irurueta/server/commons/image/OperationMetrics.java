@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Built-in metrics of an image operation, such as reading images or
+ * generating thumbnails.
+ * Counters are striped so that concurrent operations rarely contend when
+ * updating them, and latencies of successful operations are recorded into
+ * lock-free histograms, both globally and by format.
+ * Metrics can be read at any time, either through getSnapshot() or through
+ * JMX once registerMBean() has been called.
+ * This class is safe to use from multiple threads.
+ *
+ * @param <F> type of formats.
+ */
+public class OperationMetrics<F extends Enum<F>>
+        implements OperationMetricsMXBean {
+
+    /**
+     * JMX domain where metrics are registered.
+     */
+    public static final String JMX_DOMAIN = "com.irurueta.server.commons.image";
+
+    /**
+     * Type of operation.
+     */
+    private final String mType;
+
+    /**
+     * Existing formats indexed by ordinal.
+     */
+    private final F[] mFormats;
+
+    /**
+     * Number of finished operations.
+     */
+    private final StripedCounter mOperations = new StripedCounter();
+
+    /**
+     * Number of operations failed because of an invalid image.
+     */
+    private final StripedCounter mInvalidImageFailures = new StripedCounter();
+
+    /**
+     * Number of operations failed because of an I/O error.
+     */
+    private final StripedCounter mIOFailures = new StripedCounter();
+
+    /**
+     * Number of operations failed for any other reason.
+     */
+    private final StripedCounter mOtherFailures = new StripedCounter();
+
+    /**
+     * Number of bytes read.
+     */
+    private final StripedCounter mBytesRead = new StripedCounter();
+
+    /**
+     * Number of bytes written.
+     */
+    private final StripedCounter mBytesWritten = new StripedCounter();
+
+    /**
+     * Latency of successful operations.
+     */
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+
+    /**
+     * Latency of successful operations indexed by format ordinal.
+     */
+    private final LatencyHistogram[] mFormatLatencies;
+
+    /**
+     * Gauges by name. Gauges are only added while the owner of these metrics
+     * is being constructed, hence they can be read afterwards without locking.
+     */
+    private final Map<String, Gauge> mGauges = new LinkedHashMap<>();
+
+    /**
+     * System time in nanoseconds when metrics were created or last reset.
+     */
+    private volatile long mStartTime = System.nanoTime();
+
+    /**
+     * Name under which these metrics are registered in JMX, or null if not
+     * registered.
+     */
+    private ObjectName mObjectName;
+
+    /**
+     * Constructor.
+     *
+     * @param type        type of operation.
+     * @param formatClass class of formats.
+     */
+    OperationMetrics(final String type, final Class<F> formatClass) {
+        mType = type;
+        mFormats = formatClass.getEnumConstants();
+        mFormatLatencies = new LatencyHistogram[mFormats.length];
+        for (int i = 0; i < mFormats.length; i++) {
+            mFormatLatencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Returns type of operation.
+     *
+     * @return type of operation.
+     */
+    public String getType() {
+        return mType;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOperationCount() {
+        return mOperations.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFailureCount() {
+        return mInvalidImageFailures.sum() + mIOFailures.sum() +
+                mOtherFailures.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getInvalidImageFailureCount() {
+        return mInvalidImageFailures.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getIOFailureCount() {
+        return mIOFailures.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getOtherFailureCount() {
+        return mOtherFailures.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesRead() {
+        return mBytesRead.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getBytesWritten() {
+        return mBytesWritten.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getThroughput() {
+        final double seconds = (System.nanoTime() - mStartTime) / 1e9;
+        return seconds > 0.0 ? mOperations.sum() / seconds : 0.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getLatencyMean() {
+        return mLatency.getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLatencyP50() {
+        return mLatency.getPercentile(50.0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLatencyP90() {
+        return mLatency.getPercentile(90.0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLatencyP99() {
+        return mLatency.getPercentile(99.0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLatencyP999() {
+        return mLatency.getPercentile(99.9);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLatencyMax() {
+        return mLatency.getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getLatencyP99ByFormat() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (final F format : mFormats) {
+            final LatencyHistogram histogram =
+                    mFormatLatencies[format.ordinal()];
+            if (histogram.getCount() > 0) {
+                result.put(format.name(), histogram.getPercentile(99.0));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getGauges() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (final Map.Entry<String, Gauge> entry : mGauges.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns histogram containing latency of successful operations.
+     *
+     * @return latency histogram.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return mLatency;
+    }
+
+    /**
+     * Returns histogram containing latency of successful operations having
+     * provided format.
+     *
+     * @param format a format.
+     * @return latency histogram of format.
+     */
+    public LatencyHistogram getLatencyHistogram(final F format) {
+        return mFormatLatencies[format.ordinal()];
+    }
+
+    /**
+     * Returns an immutable view of current metrics.
+     *
+     * @return snapshot of current metrics.
+     */
+    public OperationSnapshot getSnapshot() {
+        final Map<String, LatencySnapshot> latencyByFormat =
+                new LinkedHashMap<>();
+        for (final F format : mFormats) {
+            final LatencyHistogram histogram =
+                    mFormatLatencies[format.ordinal()];
+            if (histogram.getCount() > 0) {
+                latencyByFormat.put(format.name(), histogram.getSnapshot());
+            }
+        }
+        return new OperationSnapshot(mType, mOperations.sum(),
+                mInvalidImageFailures.sum(), mIOFailures.sum(),
+                mOtherFailures.sum(), mBytesRead.sum(), mBytesWritten.sum(),
+                mLatency.getSnapshot(), latencyByFormat, getGauges());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        mOperations.reset();
+        mInvalidImageFailures.reset();
+        mIOFailures.reset();
+        mOtherFailures.reset();
+        mBytesRead.reset();
+        mBytesWritten.reset();
+        mLatency.reset();
+        for (final LatencyHistogram histogram : mFormatLatencies) {
+            histogram.reset();
+        }
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server, under
+     * JMX_DOMAIN with the type of operation and provided name.
+     *
+     * @param name name distinguishing these metrics from those of other
+     *             instances performing the same operation.
+     * @return name under which metrics have been registered.
+     * @throws IllegalArgumentException if name is not provided.
+     * @throws IllegalStateException    if metrics are already registered.
+     * @throws JMException              if registration fails.
+     */
+    public synchronized ObjectName registerMBean(final String name)
+            throws JMException {
+        if (name == null) {
+            throw new IllegalArgumentException();
+        }
+        if (mObjectName != null) {
+            throw new IllegalStateException();
+        }
+
+        final ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" +
+                mType + ",name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                objectName);
+        mObjectName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if registered.
+     *
+     * @throws JMException if metrics cannot be unregistered.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (mObjectName == null) {
+            return;
+        }
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                mObjectName);
+        mObjectName = null;
+    }
+
+    /**
+     * Returns name under which these metrics are registered in JMX.
+     *
+     * @return registered name or null if not registered.
+     */
+    public synchronized ObjectName getObjectName() {
+        return mObjectName;
+    }
+
+    /**
+     * Records a successful operation.
+     *
+     * @param format format of operation or null if unknown.
+     * @param nanos  latency of operation expressed in nanoseconds.
+     */
+    void recordSuccess(final F format, final long nanos) {
+        mOperations.increment();
+        mLatency.record(nanos);
+        if (format != null) {
+            mFormatLatencies[format.ordinal()].record(nanos);
+        }
+    }
+
+    /**
+     * Records a failed operation.
+     *
+     * @param error error that caused operation to fail.
+     */
+    void recordFailure(final Throwable error) {
+        mOperations.increment();
+        if (error instanceof InvalidImageException) {
+            mInvalidImageFailures.increment();
+        } else if (error instanceof IOException) {
+            mIOFailures.increment();
+        } else {
+            mOtherFailures.increment();
+        }
+    }
+
+    /**
+     * Adds number of bytes read.
+     *
+     * @param bytes number of bytes read.
+     */
+    void addBytesRead(final long bytes) {
+        mBytesRead.add(bytes);
+    }
+
+    /**
+     * Adds number of bytes written.
+     *
+     * @param bytes number of bytes written.
+     */
+    void addBytesWritten(final long bytes) {
+        mBytesWritten.add(bytes);
+    }
+
+    /**
+     * Adds a gauge. This must only be called while the owner of these
+     * metrics is being constructed.
+     *
+     * @param name  name of gauge.
+     * @param gauge gauge to be added.
+     */
+    void addGauge(final String name, final Gauge gauge) {
+        mGauges.put(name, gauge);
+    }
+
+    /**
+     * Provides the current value of a quantity that can go up and down, such
+     * as the number of running operations.
+     */
+    interface Gauge {
+
+        /**
+         * Returns current value.
+         *
+         * @return current value.
+         */
+        long getValue();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing metrics of an image operation through JMX.
+ * Latencies are expressed in nanoseconds and are only recorded for operations
+ * that succeed.
+ */
+public interface OperationMetricsMXBean {
+
+    /**
+     * Returns number of operations that have finished, either successfully
+     * or with a failure.
+     *
+     * @return number of finished operations.
+     */
+    long getOperationCount();
+
+    /**
+     * Returns number of operations that have failed.
+     *
+     * @return number of failed operations.
+     */
+    long getFailureCount();
+
+    /**
+     * Returns number of operations that have failed because of an invalid or
+     * unsupported image.
+     *
+     * @return number of operations failed with an InvalidImageException.
+     */
+    long getInvalidImageFailureCount();
+
+    /**
+     * Returns number of operations that have failed because of an I/O error.
+     *
+     * @return number of operations failed with an IOException.
+     */
+    long getIOFailureCount();
+
+    /**
+     * Returns number of operations that have failed for any other reason.
+     *
+     * @return number of operations failed with any other error.
+     */
+    long getOtherFailureCount();
+
+    /**
+     * Returns number of bytes read.
+     *
+     * @return number of bytes read.
+     */
+    long getBytesRead();
+
+    /**
+     * Returns number of bytes written.
+     *
+     * @return number of bytes written.
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns mean number of operations per second since metrics were created
+     * or last reset.
+     *
+     * @return mean throughput expressed in operations per second.
+     */
+    double getThroughput();
+
+    /**
+     * Returns mean latency of successful operations.
+     *
+     * @return mean latency.
+     */
+    double getLatencyMean();
+
+    /**
+     * Returns estimated median latency of successful operations.
+     *
+     * @return estimated median latency.
+     */
+    long getLatencyP50();
+
+    /**
+     * Returns estimated 90th percentile of latency of successful operations.
+     *
+     * @return estimated 90th percentile of latency.
+     */
+    long getLatencyP90();
+
+    /**
+     * Returns estimated 99th percentile of latency of successful operations.
+     *
+     * @return estimated 99th percentile of latency.
+     */
+    long getLatencyP99();
+
+    /**
+     * Returns estimated 99.9th percentile of latency of successful
+     * operations.
+     *
+     * @return estimated 99.9th percentile of latency.
+     */
+    long getLatencyP999();
+
+    /**
+     * Returns maximum latency of successful operations.
+     *
+     * @return maximum latency.
+     */
+    long getLatencyMax();
+
+    /**
+     * Returns estimated 99th percentile of latency of successful operations
+     * for each format having recorded operations.
+     *
+     * @return estimated 99th percentile of latency by format name.
+     */
+    Map<String, Long> getLatencyP99ByFormat();
+
+    /**
+     * Returns current value of gauges, such as number of running or waiting
+     * operations.
+     *
+     * @return gauge values by gauge name.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * Resets all counters and latencies.
+     */
+    void reset();
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable view of the metrics of an image operation at a given moment.
+ * Throughput over an interval can be obtained by comparing two snapshots
+ * of the same metrics.
+ */
+public class OperationSnapshot {
+
+    /**
+     * Type of operation.
+     */
+    private final String mType;
+
+    /**
+     * Wall clock time when snapshot was taken, expressed in milliseconds
+     * since epoch.
+     */
+    private final long mTimestamp;
+
+    /**
+     * System time when snapshot was taken, expressed in nanoseconds.
+     */
+    private final long mNanoTime;
+
+    /**
+     * Number of finished operations.
+     */
+    private final long mOperationCount;
+
+    /**
+     * Number of operations failed because of an invalid image.
+     */
+    private final long mInvalidImageFailureCount;
+
+    /**
+     * Number of operations failed because of an I/O error.
+     */
+    private final long mIOFailureCount;
+
+    /**
+     * Number of operations failed for any other reason.
+     */
+    private final long mOtherFailureCount;
+
+    /**
+     * Number of bytes read.
+     */
+    private final long mBytesRead;
+
+    /**
+     * Number of bytes written.
+     */
+    private final long mBytesWritten;
+
+    /**
+     * Latency of successful operations.
+     */
+    private final LatencySnapshot mLatency;
+
+    /**
+     * Latency of successful operations by format name.
+     */
+    private final Map<String, LatencySnapshot> mLatencyByFormat;
+
+    /**
+     * Gauge values by gauge name.
+     */
+    private final Map<String, Long> mGauges;
+
+    /**
+     * Constructor.
+     *
+     * @param type                     type of operation.
+     * @param operationCount           number of finished operations.
+     * @param invalidImageFailureCount number of operations failed because of
+     *                                 an invalid image.
+     * @param ioFailureCount           number of operations failed because of
+     *                                 an I/O error.
+     * @param otherFailureCount        number of operations failed for any
+     *                                 other reason.
+     * @param bytesRead                number of bytes read.
+     * @param bytesWritten             number of bytes written.
+     * @param latency                  latency of successful operations.
+     * @param latencyByFormat          latency of successful operations by
+     *                                 format name.
+     * @param gauges                   gauge values by gauge name.
+     */
+    OperationSnapshot(final String type, final long operationCount,
+                      final long invalidImageFailureCount,
+                      final long ioFailureCount, final long otherFailureCount,
+                      final long bytesRead, final long bytesWritten,
+                      final LatencySnapshot latency,
+                      final Map<String, LatencySnapshot> latencyByFormat,
+                      final Map<String, Long> gauges) {
+        mType = type;
+        mTimestamp = System.currentTimeMillis();
+        mNanoTime = System.nanoTime();
+        mOperationCount = operationCount;
+        mInvalidImageFailureCount = invalidImageFailureCount;
+        mIOFailureCount = ioFailureCount;
+        mOtherFailureCount = otherFailureCount;
+        mBytesRead = bytesRead;
+        mBytesWritten = bytesWritten;
+        mLatency = latency;
+        mLatencyByFormat = Collections.unmodifiableMap(latencyByFormat);
+        mGauges = Collections.unmodifiableMap(gauges);
+    }
+
+    /**
+     * Returns type of operation.
+     *
+     * @return type of operation.
+     */
+    public String getType() {
+        return mType;
+    }
+
+    /**
+     * Returns wall clock time when snapshot was taken.
+     *
+     * @return milliseconds since epoch when snapshot was taken.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Returns system time (as returned by System.nanoTime()) when snapshot
+     * was taken.
+     *
+     * @return system time expressed in nanoseconds.
+     */
+    public long getNanoTime() {
+        return mNanoTime;
+    }
+
+    /**
+     * Returns number of operations that have finished, either successfully
+     * or with a failure.
+     *
+     * @return number of finished operations.
+     */
+    public long getOperationCount() {
+        return mOperationCount;
+    }
+
+    /**
+     * Returns number of operations that have failed.
+     *
+     * @return number of failed operations.
+     */
+    public long getFailureCount() {
+        return mInvalidImageFailureCount + mIOFailureCount +
+                mOtherFailureCount;
+    }
+
+    /**
+     * Returns number of operations that have failed because of an invalid or
+     * unsupported image.
+     *
+     * @return number of operations failed with an InvalidImageException.
+     */
+    public long getInvalidImageFailureCount() {
+        return mInvalidImageFailureCount;
+    }
+
+    /**
+     * Returns number of operations that have failed because of an I/O error.
+     *
+     * @return number of operations failed with an IOException.
+     */
+    public long getIOFailureCount() {
+        return mIOFailureCount;
+    }
+
+    /**
+     * Returns number of operations that have failed for any other reason.
+     *
+     * @return number of operations failed with any other error.
+     */
+    public long getOtherFailureCount() {
+        return mOtherFailureCount;
+    }
+
+    /**
+     * Returns number of bytes read.
+     *
+     * @return number of bytes read.
+     */
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /**
+     * Returns number of bytes written.
+     *
+     * @return number of bytes written.
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * Returns latency of successful operations.
+     *
+     * @return latency of successful operations.
+     */
+    public LatencySnapshot getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * Returns latency of successful operations for each format having
+     * recorded operations.
+     *
+     * @return latency of successful operations by format name.
+     */
+    public Map<String, LatencySnapshot> getLatencyByFormat() {
+        return mLatencyByFormat;
+    }
+
+    /**
+     * Returns value of gauges when snapshot was taken.
+     *
+     * @return gauge values by gauge name.
+     */
+    public Map<String, Long> getGauges() {
+        return mGauges;
+    }
+
+    /**
+     * Returns number of operations per second finished between provided
+     * previous snapshot and this one.
+     *
+     * @param previous a snapshot of the same metrics taken earlier.
+     * @return throughput expressed in operations per second.
+     * @throws IllegalArgumentException if previous snapshot is not provided
+     *                                  or was not taken earlier.
+     */
+    public double getThroughput(final OperationSnapshot previous) {
+        if (previous == null || previous.mNanoTime - mNanoTime >= 0) {
+            throw new IllegalArgumentException();
+        }
+        final double seconds = (mNanoTime - previous.mNanoTime) / 1e9;
+        return (mOperationCount - previous.mOperationCount) / seconds;
+    }
+
+    /**
+     * Returns a textual representation of this snapshot.
+     *
+     * @return textual representation.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(mType).append(": operations=").append(mOperationCount)
+                .append(", failures=").append(getFailureCount())
+                .append(" (invalid=").append(mInvalidImageFailureCount)
+                .append(", io=").append(mIOFailureCount)
+                .append(", other=").append(mOtherFailureCount)
+                .append("), bytesRead=").append(mBytesRead)
+                .append(", bytesWritten=").append(mBytesWritten)
+                .append(", gauges=").append(mGauges)
+                .append("\n  all: ").append(mLatency);
+        for (final Map.Entry<String, LatencySnapshot> entry :
+                mLatencyByFormat.entrySet()) {
+            builder.append("\n  ").append(entry.getKey()).append(": ")
+                    .append(entry.getValue());
+        }
+        return builder.toString();
+    }
+}
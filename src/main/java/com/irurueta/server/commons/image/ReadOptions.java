@@ -0,0 +1,425 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.Hasher;
+import com.irurueta.server.commons.image.hash.PerceptualHashAlgorithm;
+import com.irurueta.server.commons.image.hash.TreeHasher;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Immutable options used when reading an image.
+ * Because instances cannot be modified, they can be freely shared among
+ * threads reading images concurrently with different needs, without any
+ * locking.
+ */
+public final class ReadOptions {
+
+    /**
+     * Options using default values.
+     */
+    public static final ReadOptions DEFAULT = new Builder().build();
+
+    /**
+     * Indicates if CRC will be computed when reading image metadata.
+     */
+    private final boolean mComputeCrc;
+
+    /**
+     * Indicates if MD5 will be computed when reading image metadata.
+     */
+    private final boolean mComputeMd5;
+
+    /**
+     * Additional hash algorithms to be computed when reading image metadata.
+     */
+    private final Set<HashAlgorithm> mHashAlgorithms;
+
+    /**
+     * Size of read buffer in bytes used to compute hashes.
+     */
+    private final int mHashBufferSize;
+
+    /**
+     * Indicates whether large files are hashed in parallel chunks.
+     */
+    private final boolean mTreeHash;
+
+    /**
+     * Size of chunks in bytes when hashing in parallel chunks.
+     */
+    private final int mTreeHashChunkSize;
+
+    /**
+     * Perceptual hash algorithms to be computed.
+     */
+    private final Set<PerceptualHashAlgorithm> mPerceptualHashAlgorithms;
+
+    /**
+     * Constructor.
+     *
+     * @param builder builder containing values of these options.
+     */
+    private ReadOptions(final Builder builder) {
+        mComputeCrc = builder.mComputeCrc;
+        mComputeMd5 = builder.mComputeMd5;
+        mHashAlgorithms = Collections.unmodifiableSet(
+                EnumSet.copyOf(builder.mHashAlgorithms));
+        mHashBufferSize = builder.mHashBufferSize;
+        mTreeHash = builder.mTreeHash;
+        mTreeHashChunkSize = builder.mTreeHashChunkSize;
+        mPerceptualHashAlgorithms = Collections.unmodifiableSet(
+                EnumSet.copyOf(builder.mPerceptualHashAlgorithms));
+    }
+
+    /**
+     * Indicates if CRC computation is enabled.
+     *
+     * @return true if CRC computation is enabled, false otherwise.
+     */
+    public boolean isComputeCrcEnabled() {
+        return mComputeCrc;
+    }
+
+    /**
+     * Indicates if MD5 hash computation is enabled.
+     *
+     * @return true if MD5 computation is enabled, false otherwise.
+     */
+    public boolean isComputeMd5Enabled() {
+        return mComputeMd5;
+    }
+
+    /**
+     * Returns additional hash algorithms to be computed when reading image
+     * metadata. Computed hashes are available through
+     * ImageReaderResult#getHashes().
+     *
+     * @return additional hash algorithms.
+     */
+    public Set<HashAlgorithm> getHashAlgorithms() {
+        return mHashAlgorithms;
+    }
+
+    /**
+     * Returns size of read buffer in bytes used to compute hashes.
+     *
+     * @return size of read buffer.
+     */
+    public int getHashBufferSize() {
+        return mHashBufferSize;
+    }
+
+    /**
+     * Indicates whether files larger than tree hash chunk size are split into
+     * chunks hashed in parallel.
+     * In tree mode CRC values are identical to sequentially computed ones,
+     * while other hashes (including MD5) returned by
+     * ImageReaderResult#getHashes() are tree digests that differ from
+     * sequentially computed ones. ImageReaderResult#getMd5() is always the
+     * plain MD5 of the file, which requires an additional sequential pass
+     * when the file is hashed in tree mode.
+     *
+     * @return true if tree hashing is enabled, false otherwise.
+     */
+    public boolean isTreeHashEnabled() {
+        return mTreeHash;
+    }
+
+    /**
+     * Returns size of chunks in bytes when hashing in parallel chunks.
+     *
+     * @return size of chunks.
+     */
+    public int getTreeHashChunkSize() {
+        return mTreeHashChunkSize;
+    }
+
+    /**
+     * Returns perceptual hash algorithms to be computed from a subsampled
+     * decode of the image. No perceptual hash is computed by default.
+     *
+     * @return perceptual hash algorithms to be computed.
+     */
+    public Set<PerceptualHashAlgorithm> getPerceptualHashAlgorithms() {
+        return mPerceptualHashAlgorithms;
+    }
+
+    /**
+     * Returns all hash algorithms to be computed, including CRC32 and MD5 if
+     * enabled.
+     *
+     * @return all hash algorithms to be computed.
+     */
+    public Set<HashAlgorithm> getAllHashAlgorithms() {
+        final Set<HashAlgorithm> result = EnumSet.noneOf(HashAlgorithm.class);
+        result.addAll(mHashAlgorithms);
+        if (mComputeCrc) {
+            result.add(HashAlgorithm.CRC32);
+        }
+        if (mComputeMd5) {
+            result.add(HashAlgorithm.MD5);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of these options having provided CRC computation value.
+     *
+     * @param computeCrc true if CRC computation must be enabled, false
+     *                   otherwise.
+     * @return options having provided value.
+     */
+    public ReadOptions withComputeCrcEnabled(final boolean computeCrc) {
+        return computeCrc == mComputeCrc ? this :
+                new Builder(this).setComputeCrcEnabled(computeCrc).build();
+    }
+
+    /**
+     * Returns a copy of these options having provided MD5 computation value.
+     *
+     * @param computeMd5 true if MD5 computation must be enabled, false
+     *                   otherwise.
+     * @return options having provided value.
+     */
+    public ReadOptions withComputeMd5Enabled(final boolean computeMd5) {
+        return computeMd5 == mComputeMd5 ? this :
+                new Builder(this).setComputeMd5Enabled(computeMd5).build();
+    }
+
+    /**
+     * Indicates whether provided object is equal to these options.
+     *
+     * @param obj object to be compared.
+     * @return true if both options have the same values, false otherwise.
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ReadOptions)) {
+            return false;
+        }
+        final ReadOptions other = (ReadOptions) obj;
+        return mComputeCrc == other.mComputeCrc &&
+                mComputeMd5 == other.mComputeMd5 &&
+                mHashAlgorithms.equals(other.mHashAlgorithms) &&
+                mHashBufferSize == other.mHashBufferSize &&
+                mTreeHash == other.mTreeHash &&
+                mTreeHashChunkSize == other.mTreeHashChunkSize &&
+                mPerceptualHashAlgorithms.equals(
+                        other.mPerceptualHashAlgorithms);
+    }
+
+    /**
+     * Returns hash code of these options.
+     *
+     * @return hash code.
+     */
+    @Override
+    public int hashCode() {
+        int result = (mComputeCrc ? 1 : 0) | (mComputeMd5 ? 2 : 0);
+        result = 31 * result + mHashAlgorithms.hashCode();
+        result = 31 * result + mHashBufferSize;
+        result = 31 * result + (mTreeHash ? 1 : 0);
+        result = 31 * result + mTreeHashChunkSize;
+        result = 31 * result + mPerceptualHashAlgorithms.hashCode();
+        return result;
+    }
+
+    /**
+     * Builder of read options.
+     */
+    public static class Builder {
+
+        /**
+         * Indicates if CRC will be computed when reading image metadata.
+         */
+        private boolean mComputeCrc = ImageReader.DEFAULT_COMPUTE_CRC;
+
+        /**
+         * Indicates if MD5 will be computed when reading image metadata.
+         */
+        private boolean mComputeMd5 = ImageReader.DEFAULT_COMPUTE_MD5;
+
+        /**
+         * Additional hash algorithms to be computed.
+         */
+        private Set<HashAlgorithm> mHashAlgorithms =
+                EnumSet.noneOf(HashAlgorithm.class);
+
+        /**
+         * Size of read buffer in bytes used to compute hashes.
+         */
+        private int mHashBufferSize = Hasher.DEFAULT_BUFFER_SIZE;
+
+        /**
+         * Indicates whether large files are hashed in parallel chunks.
+         */
+        private boolean mTreeHash;
+
+        /**
+         * Size of chunks in bytes when hashing in parallel chunks.
+         */
+        private int mTreeHashChunkSize = TreeHasher.DEFAULT_CHUNK_SIZE;
+
+        /**
+         * Perceptual hash algorithms to be computed.
+         */
+        private Set<PerceptualHashAlgorithm> mPerceptualHashAlgorithms =
+                EnumSet.noneOf(PerceptualHashAlgorithm.class);
+
+        /**
+         * Constructor using default values.
+         */
+        public Builder() {
+        }
+
+        /**
+         * Constructor using values of provided options.
+         *
+         * @param options options to copy values from.
+         */
+        public Builder(final ReadOptions options) {
+            mComputeCrc = options.mComputeCrc;
+            mComputeMd5 = options.mComputeMd5;
+            mHashAlgorithms = EnumSet.noneOf(HashAlgorithm.class);
+            mHashAlgorithms.addAll(options.mHashAlgorithms);
+            mHashBufferSize = options.mHashBufferSize;
+            mTreeHash = options.mTreeHash;
+            mTreeHashChunkSize = options.mTreeHashChunkSize;
+            mPerceptualHashAlgorithms = EnumSet.noneOf(
+                    PerceptualHashAlgorithm.class);
+            mPerceptualHashAlgorithms.addAll(options.mPerceptualHashAlgorithms);
+        }
+
+        /**
+         * Specifies whether CRC computation is enabled.
+         *
+         * @param computeCrc true if CRC computation must be enabled, false
+         *                   otherwise.
+         * @return this builder.
+         */
+        public Builder setComputeCrcEnabled(final boolean computeCrc) {
+            mComputeCrc = computeCrc;
+            return this;
+        }
+
+        /**
+         * Specifies whether MD5 hash computation is enabled.
+         *
+         * @param computeMd5 true if MD5 computation must be enabled, false
+         *                   otherwise.
+         * @return this builder.
+         */
+        public Builder setComputeMd5Enabled(final boolean computeMd5) {
+            mComputeMd5 = computeMd5;
+            return this;
+        }
+
+        /**
+         * Sets additional hash algorithms to be computed when reading image
+         * metadata.
+         *
+         * @param algorithms additional hash algorithms.
+         * @return this builder.
+         * @throws IllegalArgumentException if algorithms are not provided.
+         */
+        public Builder setHashAlgorithms(final HashAlgorithm... algorithms) {
+            if (algorithms == null) {
+                throw new IllegalArgumentException();
+            }
+            mHashAlgorithms = EnumSet.noneOf(HashAlgorithm.class);
+            Collections.addAll(mHashAlgorithms, algorithms);
+            return this;
+        }
+
+        /**
+         * Sets size of read buffer in bytes used to compute hashes.
+         *
+         * @param hashBufferSize size of read buffer.
+         * @return this builder.
+         * @throws IllegalArgumentException if size is less than 1.
+         */
+        public Builder setHashBufferSize(final int hashBufferSize) {
+            if (hashBufferSize < Hasher.MIN_BUFFER_SIZE) {
+                throw new IllegalArgumentException();
+            }
+            mHashBufferSize = hashBufferSize;
+            return this;
+        }
+
+        /**
+         * Specifies whether files larger than tree hash chunk size are split
+         * into chunks hashed in parallel.
+         *
+         * @param treeHash true to enable tree hashing, false otherwise.
+         * @return this builder.
+         */
+        public Builder setTreeHashEnabled(final boolean treeHash) {
+            mTreeHash = treeHash;
+            return this;
+        }
+
+        /**
+         * Sets size of chunks in bytes when hashing in parallel chunks.
+         *
+         * @param treeHashChunkSize size of chunks.
+         * @return this builder.
+         * @throws IllegalArgumentException if size is less than 1.
+         */
+        public Builder setTreeHashChunkSize(final int treeHashChunkSize) {
+            if (treeHashChunkSize < TreeHasher.MIN_CHUNK_SIZE) {
+                throw new IllegalArgumentException();
+            }
+            mTreeHashChunkSize = treeHashChunkSize;
+            return this;
+        }
+
+        /**
+         * Sets perceptual hash algorithms to be computed from a subsampled
+         * decode of the image.
+         *
+         * @param algorithms perceptual hash algorithms to be computed.
+         * @return this builder.
+         * @throws IllegalArgumentException if algorithms are not provided.
+         */
+        public Builder setPerceptualHashAlgorithms(
+                final PerceptualHashAlgorithm... algorithms) {
+            if (algorithms == null) {
+                throw new IllegalArgumentException();
+            }
+            mPerceptualHashAlgorithms = EnumSet.noneOf(
+                    PerceptualHashAlgorithm.class);
+            Collections.addAll(mPerceptualHashAlgorithms, algorithms);
+            return this;
+        }
+
+        /**
+         * Creates read options using values of this builder.
+         *
+         * @return read options.
+         */
+        public ReadOptions build() {
+            return new ReadOptions(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+/**
+ * Stages of image reading timed by ImageReader.
+ */
+public enum ReadStage {
+    /**
+     * Time spent reading image information (format, size, etc.).
+     */
+    INFO,
+
+    /**
+     * Time spent reading EXIF metadata.
+     */
+    EXIF,
+
+    /**
+     * Time spent computing CRC, MD5 and any additional file hashes.
+     */
+    HASH,
+
+    /**
+     * Time spent computing perceptual hashes, including decoding.
+     */
+    PERCEPTUAL_HASH
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable record of an image operation that exceeded the latency threshold
+ * of a SlowOperationRecorder, containing enough information to identify and
+ * reproduce the offending input.
+ */
+public class SlowOperation {
+
+    /**
+     * Position of this record in the sequence of recorded operations.
+     */
+    private final long mSequence;
+
+    /**
+     * Type of operation.
+     */
+    private final String mType;
+
+    /**
+     * Wall clock time when operation finished, expressed in milliseconds
+     * since epoch.
+     */
+    private final long mTimestamp;
+
+    /**
+     * Input image file.
+     */
+    private final File mFile;
+
+    /**
+     * Length in bytes of input image file.
+     */
+    private final long mFileLength;
+
+    /**
+     * Last modification time of input image file.
+     */
+    private final long mLastModified;
+
+    /**
+     * Format of input image.
+     */
+    private final ImageFormat mFormat;
+
+    /**
+     * Width (in pixels) of input image.
+     */
+    private final int mWidth;
+
+    /**
+     * Height (in pixels) of input image.
+     */
+    private final int mHeight;
+
+    /**
+     * Orientation of input image.
+     */
+    private final ImageOrientation mOrientation;
+
+    /**
+     * Additional details of operation.
+     */
+    private final String mDetails;
+
+    /**
+     * Time spent in each stage by stage name, expressed in nanoseconds.
+     */
+    private final Map<String, Long> mStageNanos;
+
+    /**
+     * Time spent in all stages, expressed in nanoseconds.
+     */
+    private final long mTotalNanos;
+
+    /**
+     * Bytes allocated by the thread performing the operation.
+     */
+    private final long mAllocatedBytes;
+
+    /**
+     * Description of error that caused operation to fail.
+     */
+    private final String mError;
+
+    /**
+     * Constructor.
+     *
+     * @param sequence       position of this record in the sequence of
+     *                       recorded operations.
+     * @param type           type of operation.
+     * @param file           input image file.
+     * @param fileLength     length in bytes of input image file.
+     * @param lastModified   last modification time of input image file.
+     * @param format         format of input image.
+     * @param width          width of input image.
+     * @param height         height of input image.
+     * @param orientation    orientation of input image.
+     * @param details        additional details of operation.
+     * @param stageNanos     time spent in each stage by stage name.
+     * @param totalNanos     time spent in all stages.
+     * @param allocatedBytes bytes allocated by the thread performing the
+     *                       operation or -1 if unknown.
+     * @param error          error that caused operation to fail or null.
+     */
+    SlowOperation(final long sequence, final String type, final File file,
+                  final long fileLength, final long lastModified,
+                  final ImageFormat format, final int width, final int height,
+                  final ImageOrientation orientation, final String details,
+                  final Map<String, Long> stageNanos, final long totalNanos,
+                  final long allocatedBytes, final Throwable error) {
+        mSequence = sequence;
+        mType = type;
+        mTimestamp = System.currentTimeMillis();
+        mFile = file;
+        mFileLength = fileLength;
+        mLastModified = lastModified;
+        mFormat = format;
+        mWidth = width;
+        mHeight = height;
+        mOrientation = orientation;
+        mDetails = details;
+        mStageNanos = Collections.unmodifiableMap(stageNanos);
+        mTotalNanos = totalNanos;
+        mAllocatedBytes = allocatedBytes;
+        mError = error != null ? error.toString() : null;
+    }
+
+    /**
+     * Returns position of this record in the sequence of operations recorded
+     * by its recorder.
+     *
+     * @return sequence number.
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Returns type of operation (i.e. ImageReader or ThumbnailCreator).
+     *
+     * @return type of operation.
+     */
+    public String getType() {
+        return mType;
+    }
+
+    /**
+     * Returns wall clock time when operation finished.
+     *
+     * @return milliseconds since epoch when operation finished.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Returns input image file.
+     *
+     * @return input image file.
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Returns length in bytes of input image file.
+     *
+     * @return length of input image file.
+     */
+    public long getFileLength() {
+        return mFileLength;
+    }
+
+    /**
+     * Returns last modification time of input image file, which along with
+     * its path and length identifies the exact input that was processed.
+     *
+     * @return milliseconds since epoch or zero if unknown.
+     */
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * Returns format of input image.
+     *
+     * @return format of input image or null if unknown.
+     */
+    public ImageFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Returns width (in pixels) of input image.
+     *
+     * @return width of input image or zero if unknown.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns height (in pixels) of input image.
+     *
+     * @return height of input image or zero if unknown.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns orientation of input image.
+     *
+     * @return orientation of input image or null if unknown.
+     */
+    public ImageOrientation getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * Returns additional details of operation, such as the requested
+     * thumbnail.
+     *
+     * @return additional details or null.
+     */
+    public String getDetails() {
+        return mDetails;
+    }
+
+    /**
+     * Returns time spent in each stage, in the order stages are performed.
+     *
+     * @return time spent in each stage expressed in nanoseconds by stage name.
+     */
+    public Map<String, Long> getStageNanos() {
+        return mStageNanos;
+    }
+
+    /**
+     * Returns time spent in all stages.
+     *
+     * @return total time expressed in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return mTotalNanos;
+    }
+
+    /**
+     * Returns an estimation of bytes allocated on the heap by the thread
+     * performing the operation.
+     *
+     * @return allocated bytes or -1 if unknown.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * Returns description of error that caused operation to fail.
+     *
+     * @return error description or null if operation succeeded.
+     */
+    public String getError() {
+        return mError;
+    }
+
+    /**
+     * Returns a single line textual representation of this record.
+     *
+     * @return textual representation.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append('#').append(mSequence).append(' ').append(mTimestamp)
+                .append(' ').append(mType).append(' ').append(mFile)
+                .append(" (").append(mFileLength).append(" bytes, modified ")
+                .append(mLastModified).append(") ").append(mFormat)
+                .append(' ').append(mWidth).append('x').append(mHeight)
+                .append(' ').append(mOrientation);
+        if (mDetails != null) {
+            builder.append(' ').append(mDetails);
+        }
+        builder.append(" total=").append(mTotalNanos / 1000).append("us");
+        for (final Map.Entry<String, Long> entry : mStageNanos.entrySet()) {
+            builder.append(' ').append(entry.getKey()).append('=')
+                    .append(entry.getValue() / 1000).append("us");
+        }
+        builder.append(" allocated=").append(mAllocatedBytes).append('B');
+        if (mError != null) {
+            builder.append(" error=").append(mError);
+        }
+        return builder.toString();
+    }
+}
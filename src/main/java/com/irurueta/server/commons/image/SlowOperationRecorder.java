@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Metrics listener keeping a record of the image operations whose processing
+ * time exceeds a configurable threshold, so that inputs causing tail latency
+ * can be found after the fact.
+ * Records are kept in a bounded ring buffer where the oldest records are
+ * overwritten once it is full, and can be obtained or dumped at any time.
+ * The same recorder can be set as the metrics listener of any number of
+ * ImageReader and ThumbnailCreator instances.
+ * For thumbnails, time spent waiting to be allowed to run is recorded but it
+ * is not taken into account when comparing against the threshold, since it
+ * depends on load rather than on the input.
+ * This class is safe to use from multiple threads and never blocks the
+ * threads performing operations.
+ */
+public class SlowOperationRecorder implements MetricsListener {
+
+    /**
+     * Default threshold expressed in milliseconds.
+     */
+    public static final long DEFAULT_THRESHOLD_MILLIS = 1000;
+
+    /**
+     * Default maximum number of kept records.
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * Minimum allowed capacity.
+     */
+    public static final int MIN_CAPACITY = 1;
+
+    /**
+     * Ring buffer containing records.
+     */
+    private final AtomicReferenceArray<SlowOperation> mBuffer;
+
+    /**
+     * Number of operations recorded so far, which is also the sequence number
+     * of next record.
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Threshold expressed in nanoseconds.
+     */
+    private volatile long mThresholdNanos;
+
+    /**
+     * Constructor using default threshold and capacity.
+     */
+    public SlowOperationRecorder() {
+        this(DEFAULT_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS,
+                DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threshold processing time above which operations are recorded.
+     * @param unit      time unit of threshold.
+     * @param capacity  maximum number of kept records.
+     * @throws IllegalArgumentException if threshold is negative, unit is not
+     *                                  provided or capacity is less than 1.
+     */
+    public SlowOperationRecorder(final long threshold, final TimeUnit unit,
+                                 final int capacity) {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException();
+        }
+        setThreshold(threshold, unit);
+        mBuffer = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Returns processing time above which operations are recorded.
+     *
+     * @param unit time unit of returned value.
+     * @return threshold expressed in provided unit.
+     */
+    public long getThreshold(final TimeUnit unit) {
+        return unit.convert(mThresholdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets processing time above which operations are recorded.
+     *
+     * @param threshold processing time above which operations are recorded.
+     * @param unit      time unit of threshold.
+     * @throws IllegalArgumentException if threshold is negative or unit is
+     *                                  not provided.
+     */
+    public void setThreshold(final long threshold, final TimeUnit unit) {
+        if (threshold < 0 || unit == null) {
+            throw new IllegalArgumentException();
+        }
+        mThresholdNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Returns maximum number of kept records.
+     *
+     * @return maximum number of kept records.
+     */
+    public int getCapacity() {
+        return mBuffer.length();
+    }
+
+    /**
+     * Returns number of operations recorded so far, including those whose
+     * record has already been overwritten.
+     *
+     * @return number of recorded operations.
+     */
+    public long getRecordedCount() {
+        return mSequence.get();
+    }
+
+    /**
+     * Returns kept records, from oldest to newest.
+     * Records being added concurrently might not be included.
+     *
+     * @return kept records.
+     */
+    public List<SlowOperation> getOperations() {
+        final int capacity = mBuffer.length();
+        final long end = mSequence.get();
+        final long start = Math.max(0, end - capacity);
+        final List<SlowOperation> result = new ArrayList<>();
+        for (long i = start; i < end; i++) {
+            final SlowOperation operation =
+                    mBuffer.get((int) (i % capacity));
+            // slot might not be written yet or might have been overwritten
+            if (operation != null && operation.getSequence() == i) {
+                result.add(operation);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes kept records, one per line and from oldest to newest.
+     *
+     * @param out destination where records are written.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void dump(final Appendable out) throws IOException {
+        for (final SlowOperation operation : getOperations()) {
+            out.append(operation.toString()).append('\n');
+        }
+    }
+
+    /**
+     * Removes all kept records.
+     */
+    public void clear() {
+        for (int i = 0; i < mBuffer.length(); i++) {
+            mBuffer.set(i, null);
+        }
+    }
+
+    /**
+     * Records a read image if it took longer than threshold.
+     *
+     * @param file    image file.
+     * @param result  result of reading image or null if reading failed.
+     * @param timings time spent in each stage.
+     * @param error   error that caused reading to fail or null if it
+     *                succeeded.
+     */
+    @Override
+    public void onImageRead(final File file, final ImageReaderResult result,
+                            final StageTimings<ReadStage> timings,
+                            final Throwable error) {
+        final long total = timings.getTotalNanos();
+        if (total < mThresholdNanos) {
+            return;
+        }
+
+        final Map<String, Long> stageNanos = new LinkedHashMap<>();
+        for (final ReadStage stage : ReadStage.values()) {
+            stageNanos.put(stage.name(), timings.getNanos(stage));
+        }
+        final ImageMetadata metadata = result != null ?
+                result.getMetadata() : null;
+        add(new SlowOperation(mSequence.getAndIncrement(), "ImageReader",
+                file, result != null ? result.getFileLength() : file.length(),
+                result != null ? result.getLastModified() :
+                        file.lastModified(),
+                result != null ? result.getImageFormat() : null,
+                metadata != null ? metadata.getWidth() : 0,
+                metadata != null ? metadata.getHeight() : 0,
+                metadata != null ? metadata.getOrientation() : null,
+                result != null && result.getMd5() != null ?
+                        "md5=" + result.getMd5() : null,
+                stageNanos, total, timings.getAllocatedBytes(), error));
+    }
+
+    /**
+     * Records a thumbnail generation if its processing took longer than
+     * threshold.
+     *
+     * @param details details of thumbnail generation, including time spent
+     *                in each stage.
+     * @param error   error that caused generation to fail or null if it
+     *                succeeded.
+     */
+    @Override
+    public void onThumbnailGenerated(final ThumbnailDetails details,
+                                     final Throwable error) {
+        final StageTimings<ThumbnailStage> timings = details.getTimings();
+        final long total = timings.getTotalNanos();
+        if (total - timings.getNanos(ThumbnailStage.QUEUE_WAIT) <
+                mThresholdNanos) {
+            return;
+        }
+
+        final Map<String, Long> stageNanos = new LinkedHashMap<>();
+        for (final ThumbnailStage stage : ThumbnailStage.values()) {
+            stageNanos.put(stage.name(), timings.getNanos(stage));
+        }
+        final File file = details.getInputImageFile();
+        add(new SlowOperation(mSequence.getAndIncrement(), "ThumbnailCreator",
+                file, details.getInputLength(), file.lastModified(),
+                details.getInputFormat(), details.getInputWidth(),
+                details.getInputHeight(), details.getInputOrientation(),
+                "-> " + details.getWidth() + "x" + details.getHeight() + " " +
+                        details.getFormat() + " " + details.getPriority() +
+                        (details.getTenant() != null ?
+                                " tenant=" + details.getTenant() : ""),
+                stageNanos, total, timings.getAllocatedBytes(), error));
+    }
+
+    /**
+     * Adds a record into the ring buffer, overwriting the oldest one if full.
+     *
+     * @param operation record to be added.
+     */
+    private void add(final SlowOperation operation) {
+        mBuffer.set((int) (operation.getSequence() % mBuffer.length()),
+                operation);
+    }
+}
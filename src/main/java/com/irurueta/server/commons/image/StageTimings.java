@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+/**
+ * Time spent in each stage of a single image operation, expressed in
+ * nanoseconds. Stages that were not reached (i.e. because the operation
+ * failed) have zero duration.
+ *
+ * @param <S> type of stages.
+ */
+public class StageTimings<S extends Enum<S>> {
+
+    /**
+     * Stages of operation.
+     */
+    private final S[] mStages;
+
+    /**
+     * Time spent in each stage indexed by stage ordinal.
+     */
+    private final long[] mNanos;
+
+    /**
+     * Bytes allocated by the thread performing the operation or -1 if
+     * unknown.
+     */
+    private long mAllocatedBytes = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param stageClass class of stages.
+     * @throws IllegalArgumentException if stage class is not provided.
+     */
+    public StageTimings(final Class<S> stageClass) {
+        if (stageClass == null) {
+            throw new IllegalArgumentException();
+        }
+        mStages = stageClass.getEnumConstants();
+        mNanos = new long[mStages.length];
+    }
+
+    /**
+     * Returns time spent in provided stage.
+     *
+     * @param stage a stage.
+     * @return time spent in stage expressed in nanoseconds.
+     */
+    public long getNanos(final S stage) {
+        return mNanos[stage.ordinal()];
+    }
+
+    /**
+     * Returns time spent in all stages.
+     *
+     * @return total time expressed in nanoseconds.
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (final long nanos : mNanos) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * Adds time spent in provided stage.
+     *
+     * @param stage a stage.
+     * @param nanos time to be added expressed in nanoseconds.
+     */
+    public void add(final S stage, final long nanos) {
+        mNanos[stage.ordinal()] += nanos;
+    }
+
+    /**
+     * Returns an estimation of the number of bytes allocated on the heap by
+     * the thread performing the operation, as reported by the JVM.
+     * Allocations made by other threads on behalf of the operation (i.e.
+     * when hashing in parallel) are not included.
+     *
+     * @return allocated bytes or -1 if unknown.
+     */
+    public long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    /**
+     * Sets number of bytes allocated by the thread performing the operation.
+     *
+     * @param allocatedBytes allocated bytes or -1 if unknown.
+     */
+    void setAllocatedBytes(final long allocatedBytes) {
+        mAllocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Returns a string representation of these timings, containing the time
+     * spent in each stage in microseconds.
+     *
+     * @return string representation.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < mStages.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(mStages[i]).append('=')
+                    .append(mNanos[i] / 1000).append("us");
+        }
+        if (mAllocatedBytes >= 0) {
+            builder.append(", allocated=").append(mAllocatedBytes)
+                    .append('B');
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Adds time elapsed since provided start time to a stage, if timings are
+     * being collected.
+     *
+     * @param timings timings of operation or null if they are not being
+     *                collected.
+     * @param stage   stage that has finished.
+     * @param start   system time in nanoseconds when stage started.
+     * @param <S>     type of stages.
+     * @return system time in nanoseconds when stage finished, or zero if
+     * timings are not being collected.
+     */
+    static <S extends Enum<S>> long lap(final StageTimings<S> timings,
+                                        final S stage, final long start) {
+        if (timings == null) {
+            return 0;
+        }
+        final long now = System.nanoTime();
+        timings.add(stage, now - start);
+        return now;
+    }
+}
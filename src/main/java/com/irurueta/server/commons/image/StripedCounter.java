@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spreading concurrent updates over a fixed number of cells, each
+ * lying on its own cache line.
+ * Each thread starts updating a cell chosen from its id, and moves to another
+ * cell whenever an update of its current cell fails because of contention,
+ * so that threads sharing a cell tend to spread over time.
+ * Unlike java.util.concurrent.atomic.LongAdder (not available in Java 7),
+ * cells are allocated upfront even when there is no contention, and the
+ * number of cells does not grow beyond the number of available processors.
+ * Cells are only added together when the value is read, hence updates are
+ * cheap while reads are comparatively expensive.
+ * This class is safe to use from multiple threads.
+ */
+final class StripedCounter {
+
+    /**
+     * Maximum number of cells.
+     */
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * Number of long values between consecutive cells, so that each cell
+     * lies on its own cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * Number of cells, which is a power of two no smaller than the number of
+     * available processors.
+     */
+    private static final int STRIPES = getStripes();
+
+    /**
+     * Multiplier used to spread thread ids over cells.
+     */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /**
+     * Probe of current thread used to select the cell to be updated. It is
+     * shared by all counters and changed whenever an update fails because of
+     * contention.
+     */
+    private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            final int probe = (int) Thread.currentThread().getId() * SPREAD;
+            return new int[]{probe != 0 ? probe : 1};
+        }
+    };
+
+    /**
+     * Cells containing partial values, PADDING positions apart.
+     */
+    private final AtomicLongArray mCells =
+            new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Adds provided amount.
+     *
+     * @param amount amount to be added.
+     */
+    void add(final long amount) {
+        final int[] probe = PROBE.get();
+        int cell = getCell(probe[0]);
+        long value = mCells.get(cell);
+        while (!mCells.compareAndSet(cell, value, value + amount)) {
+            // another thread updated the same cell, move to another one
+            probe[0] = advanceProbe(probe[0]);
+            cell = getCell(probe[0]);
+            value = mCells.get(cell);
+        }
+    }
+
+    /**
+     * Adds one.
+     */
+    void increment() {
+        add(1);
+    }
+
+    /**
+     * Returns current value. Updates made concurrently while reading might or
+     * might not be included.
+     *
+     * @return current value.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Resets value to zero. Updates made concurrently while resetting might
+     * be lost.
+     */
+    void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            mCells.set(i * PADDING, 0);
+        }
+    }
+
+    /**
+     * Returns position of cell selected by provided probe.
+     *
+     * @param probe probe of a thread.
+     * @return position of cell.
+     */
+    private static int getCell(final int probe) {
+        return ((probe >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+
+    /**
+     * Returns next probe after provided one (using a xorshift generator), so
+     * that a contended thread moves to a pseudo-random cell.
+     *
+     * @param probe current probe. Must not be zero.
+     * @return next probe, which is never zero.
+     */
+    static int advanceProbe(final int probe) {
+        int result = probe;
+        result ^= result << 13;
+        result ^= result >>> 17;
+        result ^= result << 5;
+        return result;
+    }
+
+    /**
+     * Returns number of cells to be used.
+     *
+     * @return number of cells.
+     */
+    private static int getStripes() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
@@ -0,0 +1,659 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+
+/**
+ * Buffers, images and codecs reused across thumbnails generated by the same
+ * thread, so that generating thumbnails of similar images in steady state
+ * barely allocates memory.
+ * Pixel and byte arrays are kept by size class, where each power of two is
+ * split into 4 classes so that at most 25% of a pooled array is wasted.
+ * Images are kept while idle and reused when an image having the same size
+ * and layout is requested again, otherwise their arrays are returned to the
+ * pool.
+ * Each thread has its own pool, hence no locking is needed. The amount of
+ * memory retained by each pool is limited by MAX_RETAINED_BYTES, beyond which
+ * released arrays are left to the garbage collector.
+ * This class is not thread-safe, instances must only be used by the thread
+ * that obtained them through get().
+ */
+final class ThumbnailBufferPool {
+
+    /**
+     * Maximum number of bytes retained by the pool of each thread.
+     */
+    static final long MAX_RETAINED_BYTES = 64L * 1024L * 1024L;
+
+    /**
+     * Length of smallest size class. Smaller requests are rounded up to it.
+     */
+    private static final int MIN_LENGTH = 1024;
+
+    /**
+     * Number of bits used to split each power of two into size classes.
+     */
+    private static final int SUB_CLASS_BITS = 2;
+
+    /**
+     * Number of size classes.
+     */
+    private static final int CLASSES = Integer.SIZE << SUB_CLASS_BITS;
+
+    /**
+     * Maximum number of idle arrays kept for each size class.
+     */
+    private static final int ARRAYS_PER_CLASS = 2;
+
+    /**
+     * Maximum number of idle images.
+     */
+    private static final int MAX_IDLE_IMAGES = 4;
+
+    /**
+     * Color model of images without transparency.
+     */
+    private static final DirectColorModel RGB_MODEL = new DirectColorModel(24,
+            0x00FF0000, 0x0000FF00, 0x000000FF, 0);
+
+    /**
+     * Color model of images with transparency.
+     */
+    private static final ColorModel ARGB_MODEL = ColorModel.getRGBdefault();
+
+    /**
+     * Pool of each thread.
+     */
+    private static final ThreadLocal<ThumbnailBufferPool> POOLS =
+            new ThreadLocal<ThumbnailBufferPool>() {
+                @Override
+                protected ThumbnailBufferPool initialValue() {
+                    return new ThumbnailBufferPool();
+                }
+            };
+
+    /**
+     * Idle int arrays indexed by size class.
+     */
+    private final int[][][] mInts = new int[CLASSES][ARRAYS_PER_CLASS][];
+
+    /**
+     * Idle byte arrays indexed by size class.
+     */
+    private final byte[][][] mBytes = new byte[CLASSES][ARRAYS_PER_CLASS][];
+
+    /**
+     * Idle images, from oldest to newest.
+     */
+    private final BufferedImage[] mIdleImages =
+            new BufferedImage[MAX_IDLE_IMAGES];
+
+    /**
+     * Number of idle images.
+     */
+    private int mIdleImageCount;
+
+    /**
+     * Number of bytes currently retained by idle arrays and images.
+     */
+    private long mRetainedBytes;
+
+    /**
+     * Image readers by image format.
+     */
+    private final Map<ImageFormat, javax.imageio.ImageReader> mReaders =
+            new EnumMap<>(ImageFormat.class);
+
+    /**
+     * Image writers by thumbnail format.
+     */
+    private final Map<ThumbnailFormat, ImageWriter> mWriters =
+            new EnumMap<>(ThumbnailFormat.class);
+
+    /**
+     * Stream where the last thumbnail was encoded.
+     */
+    private ByteArrayImageOutputStream mEncodeStream;
+
+    /**
+     * Scratch row of pixels.
+     */
+    private int[] mIntRow = new int[0];
+
+    /**
+     * Scratch row of samples.
+     */
+    private byte[] mByteRow = new byte[0];
+
+    /**
+     * First scratch row of accumulated components.
+     */
+    private float[] mFloatRow1 = new float[0];
+
+    /**
+     * Second scratch row of accumulated components.
+     */
+    private float[] mFloatRow2 = new float[0];
+
+    /**
+     * Constructor.
+     */
+    private ThumbnailBufferPool() {
+    }
+
+    /**
+     * Returns pool of current thread.
+     *
+     * @return pool of current thread.
+     */
+    static ThumbnailBufferPool get() {
+        return POOLS.get();
+    }
+
+    /**
+     * Returns an int array having at least provided length.
+     *
+     * @param minLength minimum length.
+     * @return an int array, which might contain data of previous uses.
+     */
+    int[] acquireInts(final int minLength) {
+        final int length = getClassLength(minLength);
+        if (length < 0) {
+            return new int[minLength];
+        }
+        final int[][] arrays = mInts[getSizeClass(length)];
+        for (int i = 0; i < ARRAYS_PER_CLASS; i++) {
+            final int[] array = arrays[i];
+            if (array != null) {
+                arrays[i] = null;
+                mRetainedBytes -= 4L * length;
+                return array;
+            }
+        }
+        return new int[length];
+    }
+
+    /**
+     * Returns an int array to the pool, if it was obtained from it and there
+     * is room left.
+     *
+     * @param array array to be released.
+     */
+    void releaseInts(final int[] array) {
+        final int length = array.length;
+        if (getClassLength(length) != length ||
+                mRetainedBytes + 4L * length > MAX_RETAINED_BYTES) {
+            return;
+        }
+        final int[][] arrays = mInts[getSizeClass(length)];
+        for (int i = 0; i < ARRAYS_PER_CLASS; i++) {
+            if (arrays[i] == null) {
+                arrays[i] = array;
+                mRetainedBytes += 4L * length;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a byte array having at least provided length.
+     *
+     * @param minLength minimum length.
+     * @return a byte array, which might contain data of previous uses.
+     */
+    byte[] acquireBytes(final int minLength) {
+        final int length = getClassLength(minLength);
+        if (length < 0) {
+            return new byte[minLength];
+        }
+        final byte[][] arrays = mBytes[getSizeClass(length)];
+        for (int i = 0; i < ARRAYS_PER_CLASS; i++) {
+            final byte[] array = arrays[i];
+            if (array != null) {
+                arrays[i] = null;
+                mRetainedBytes -= length;
+                return array;
+            }
+        }
+        return new byte[length];
+    }
+
+    /**
+     * Returns a byte array to the pool, if it was obtained from it and there
+     * is room left.
+     *
+     * @param array array to be released.
+     */
+    void releaseBytes(final byte[] array) {
+        final int length = array.length;
+        if (getClassLength(length) != length ||
+                mRetainedBytes + length > MAX_RETAINED_BYTES) {
+            return;
+        }
+        final byte[][] arrays = mBytes[getSizeClass(length)];
+        for (int i = 0; i < ARRAYS_PER_CLASS; i++) {
+            if (arrays[i] == null) {
+                arrays[i] = array;
+                mRetainedBytes += length;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns an image of provided size and type backed by a pooled array.
+     *
+     * @param width  width of image.
+     * @param height height of image.
+     * @param type   either BufferedImage.TYPE_INT_RGB or
+     *               BufferedImage.TYPE_INT_ARGB.
+     * @return an image, which might contain pixels of previous uses.
+     */
+    BufferedImage acquireImage(final int width, final int height,
+                               final int type) {
+        final ColorModel colorModel =
+                type == BufferedImage.TYPE_INT_ARGB ? ARGB_MODEL : RGB_MODEL;
+        for (int i = mIdleImageCount - 1; i >= 0; i--) {
+            final BufferedImage image = mIdleImages[i];
+            if (image.getType() == type && image.getWidth() == width &&
+                    image.getHeight() == height) {
+                removeIdleImage(i);
+                return image;
+            }
+        }
+        return createImage(colorModel,
+                colorModel.createCompatibleSampleModel(width, height));
+    }
+
+    /**
+     * Returns an image having provided color model and sample model, backed
+     * by a pooled array if possible.
+     *
+     * @param colorModel  color model of image.
+     * @param sampleModel sample model of image, which also determines its
+     *                    size.
+     * @return an image, which might contain pixels of previous uses, or null
+     * if image layout is not supported.
+     */
+    BufferedImage acquireImage(final ColorModel colorModel,
+                               final SampleModel sampleModel) {
+        if (colorModel instanceof IndexColorModel) {
+            // palettes are not reliably compared by all JVMs
+            return null;
+        }
+        for (int i = mIdleImageCount - 1; i >= 0; i--) {
+            final BufferedImage image = mIdleImages[i];
+            if (image.getSampleModel().equals(sampleModel) &&
+                    image.getColorModel().equals(colorModel)) {
+                removeIdleImage(i);
+                return image;
+            }
+        }
+        return createImage(colorModel, sampleModel);
+    }
+
+    /**
+     * Makes an image available to be reused, discarding the oldest idle image
+     * if needed.
+     *
+     * @param image image to be released.
+     */
+    void releaseImage(final BufferedImage image) {
+        final long bytes = getRetainedBytes(image);
+        if (bytes < 0) {
+            return;
+        }
+        if (mIdleImageCount == MAX_IDLE_IMAGES) {
+            // keep array of oldest image to be reused by other images
+            final BufferedImage oldest = mIdleImages[0];
+            removeIdleImage(0);
+            releaseArray(oldest);
+        }
+        while (mIdleImageCount > 0 &&
+                mRetainedBytes + bytes > MAX_RETAINED_BYTES) {
+            removeIdleImage(0);
+        }
+        if (mRetainedBytes + bytes > MAX_RETAINED_BYTES) {
+            return;
+        }
+        mIdleImages[mIdleImageCount++] = image;
+        mRetainedBytes += bytes;
+    }
+
+    /**
+     * Returns the image reader kept for provided format, creating it if
+     * needed.
+     * Readers must be reset after use so that they do not keep any reference
+     * to the data they read.
+     *
+     * @param format format of images to be read.
+     * @return image reader or null if format is not supported.
+     */
+    javax.imageio.ImageReader getReader(final ImageFormat format) {
+        if (format == ImageFormat.UNKNOWN) {
+            return null;
+        }
+        javax.imageio.ImageReader reader = mReaders.get(format);
+        if (reader == null) {
+            final Iterator<javax.imageio.ImageReader> readers =
+                    ImageIO.getImageReadersByFormatName(format.name());
+            if (!readers.hasNext()) {
+                return null;
+            }
+            reader = readers.next();
+            mReaders.put(format, reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Returns the image writer kept for provided format, creating it if
+     * needed.
+     * Writers must be reset after use so that they do not keep any reference
+     * to the data they wrote.
+     *
+     * @param format format of images to be written.
+     * @return image writer or null if format is not supported.
+     */
+    ImageWriter getWriter(final ThumbnailFormat format) {
+        ImageWriter writer = mWriters.get(format);
+        if (writer == null) {
+            final Iterator<ImageWriter> writers =
+                    ImageIO.getImageWritersByFormatName(format.getValue());
+            if (!writers.hasNext()) {
+                return null;
+            }
+            writer = writers.next();
+            mWriters.put(format, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Returns a new stream where a thumbnail can be encoded, reusing the array
+     * where the previous thumbnail was encoded.
+     * Data written into previously returned streams is no longer valid once
+     * this method is called again.
+     *
+     * @return empty encode stream.
+     */
+    ByteArrayImageOutputStream createEncodeStream() {
+        mEncodeStream = mEncodeStream != null ?
+                new ByteArrayImageOutputStream(mEncodeStream.getData()) :
+                new ByteArrayImageOutputStream();
+        return mEncodeStream;
+    }
+
+    /**
+     * Returns a scratch row of pixels having at least provided length.
+     *
+     * @param minLength minimum length.
+     * @return scratch row.
+     */
+    int[] getIntRow(final int minLength) {
+        if (mIntRow.length < minLength) {
+            mIntRow = new int[minLength];
+        }
+        return mIntRow;
+    }
+
+    /**
+     * Returns a scratch row of samples having at least provided length.
+     *
+     * @param minLength minimum length.
+     * @return scratch row.
+     */
+    byte[] getByteRow(final int minLength) {
+        if (mByteRow.length < minLength) {
+            mByteRow = new byte[minLength];
+        }
+        return mByteRow;
+    }
+
+    /**
+     * Returns first scratch row of accumulated components having at least
+     * provided length.
+     *
+     * @param minLength minimum length.
+     * @return scratch row.
+     */
+    float[] getFloatRow1(final int minLength) {
+        if (mFloatRow1.length < minLength) {
+            mFloatRow1 = new float[minLength];
+        }
+        return mFloatRow1;
+    }
+
+    /**
+     * Returns second scratch row of accumulated components having at least
+     * provided length.
+     *
+     * @param minLength minimum length.
+     * @return scratch row.
+     */
+    float[] getFloatRow2(final int minLength) {
+        if (mFloatRow2.length < minLength) {
+            mFloatRow2 = new float[minLength];
+        }
+        return mFloatRow2;
+    }
+
+    /**
+     * Reads provided file into a pooled array.
+     * Returned buffer wraps an array that must be released once its data is
+     * no longer needed.
+     *
+     * @param path path of file to be read.
+     * @return buffer containing data of file from position zero up to its
+     * limit.
+     * @throws IOException if an I/O error occurs or file is too large.
+     */
+    ByteBuffer readFile(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File too large");
+            }
+            final byte[] data = acquireBytes((int) size);
+            final ByteBuffer buffer = ByteBuffer.wrap(data, 0, (int) size);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+            } catch (final IOException e) {
+                releaseBytes(data);
+                throw e;
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Returns number of bytes currently retained by this pool.
+     *
+     * @return retained bytes.
+     */
+    long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    /**
+     * Returns length of size class containing provided length.
+     *
+     * @param minLength minimum length.
+     * @return length of size class or -1 if provided length is too large to
+     * be pooled.
+     */
+    static int getClassLength(final int minLength) {
+        if (minLength <= MIN_LENGTH) {
+            return MIN_LENGTH;
+        }
+        final int shift = Integer.SIZE - 1 -
+                Integer.numberOfLeadingZeros(minLength - 1) - SUB_CLASS_BITS;
+        final long length = ((long) ((minLength - 1) >>> shift) + 1) << shift;
+        return length <= Integer.MAX_VALUE - 8 ? (int) length : -1;
+    }
+
+    /**
+     * Returns size class of provided class length.
+     *
+     * @param length length of a size class.
+     * @return size class.
+     */
+    static int getSizeClass(final int length) {
+        final int exponent = Integer.SIZE - 1 -
+                Integer.numberOfLeadingZeros(length);
+        final int subClass = (length >>> (exponent - SUB_CLASS_BITS)) &
+                ((1 << SUB_CLASS_BITS) - 1);
+        return (exponent << SUB_CLASS_BITS) + subClass;
+    }
+
+    /**
+     * Creates an image backed by a pooled array.
+     *
+     * @param colorModel  color model of image.
+     * @param sampleModel sample model of image.
+     * @return created image or null if image layout is not supported.
+     */
+    private BufferedImage createImage(final ColorModel colorModel,
+                                      final SampleModel sampleModel) {
+        final int size = getDataSize(sampleModel);
+        if (size <= 0) {
+            return null;
+        }
+
+        final DataBuffer buffer;
+        switch (sampleModel.getDataType()) {
+            case DataBuffer.TYPE_BYTE:
+                buffer = new DataBufferByte(acquireBytes(size), size);
+                break;
+            case DataBuffer.TYPE_INT:
+                buffer = new DataBufferInt(acquireInts(size), size);
+                break;
+            default:
+                return null;
+        }
+        final WritableRaster raster = Raster.createWritableRaster(sampleModel,
+                buffer, null);
+        return new BufferedImage(colorModel, raster,
+                colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Returns number of data elements required by provided sample model when
+     * all of them are stored in a single bank.
+     *
+     * @param sampleModel a sample model.
+     * @return number of data elements or -1 if not supported.
+     */
+    static int getDataSize(final SampleModel sampleModel) {
+        final long stride;
+        if (sampleModel instanceof ComponentSampleModel) {
+            final ComponentSampleModel model =
+                    (ComponentSampleModel) sampleModel;
+            for (final int bank : model.getBankIndices()) {
+                if (bank != 0) {
+                    return -1;
+                }
+            }
+            stride = model.getScanlineStride();
+        } else if (sampleModel instanceof SinglePixelPackedSampleModel) {
+            stride = ((SinglePixelPackedSampleModel) sampleModel)
+                    .getScanlineStride();
+        } else if (sampleModel instanceof MultiPixelPackedSampleModel) {
+            stride = ((MultiPixelPackedSampleModel) sampleModel)
+                    .getScanlineStride();
+        } else {
+            return -1;
+        }
+        final long size = stride * sampleModel.getHeight();
+        return size <= Integer.MAX_VALUE - 8 ? (int) size : -1;
+    }
+
+    /**
+     * Returns number of bytes retained while provided image is idle.
+     *
+     * @param image an image.
+     * @return number of bytes or -1 if image is not backed by a pooled array.
+     */
+    private static long getRetainedBytes(final BufferedImage image) {
+        final DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferInt && buffer.getNumBanks() == 1) {
+            final int length = ((DataBufferInt) buffer).getData().length;
+            return getClassLength(length) == length ? 4L * length : -1;
+        } else if (buffer instanceof DataBufferByte &&
+                buffer.getNumBanks() == 1) {
+            final int length = ((DataBufferByte) buffer).getData().length;
+            return getClassLength(length) == length ? length : -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns array backing an idle image to the pool.
+     *
+     * @param image idle image being discarded.
+     */
+    private void releaseArray(final BufferedImage image) {
+        final DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferInt) {
+            releaseInts(((DataBufferInt) buffer).getData());
+        } else {
+            releaseBytes(((DataBufferByte) buffer).getData());
+        }
+    }
+
+    /**
+     * Removes an idle image, keeping the remaining ones sorted from oldest to
+     * newest.
+     *
+     * @param index position of image to be removed.
+     */
+    private void removeIdleImage(final int index) {
+        final BufferedImage image = mIdleImages[index];
+        System.arraycopy(mIdleImages, index + 1, mIdleImages, index,
+                mIdleImageCount - index - 1);
+        mIdleImages[--mIdleImageCount] = null;
+        mRetainedBytes -= getRetainedBytes(image);
+    }
+}
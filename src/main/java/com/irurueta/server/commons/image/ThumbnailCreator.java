@@ -15,21 +15,27 @@
  */
 package com.irurueta.server.commons.image;
 
-import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.SoftReference;
-import javax.imageio.ImageIO;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class generates thumbnails of images.
  * Notice that this class can also be used to transcode images to other formats
  * when generating thumbnails (even if they have the same size as the original
  * image)
+ * A shared default instance can be obtained using getInstance(), while
+ * independently configured instances (i.e. per tenant or per workload), each
+ * one limiting its own number of concurrent threads, can be created using a
+ * Builder.
+ * Instances are safe to use from multiple threads.
  */
 public class ThumbnailCreator {
     /**
@@ -50,49 +56,133 @@ public class ThumbnailCreator {
     public static final int MIN_CONCURRENT_THREADS = 1;
 
     /**
-     * Reference to singleton instance of thumbnail creator.
+     * Gate limiting the number of threads that can generate a thumbnail at the
+     * same time.
+     * To avoid excessive memory usage, the number of concurrent thumbnails
+     * being generated is limited.
+     * By default only one thread can generate thumbnails concurrently while
+     * other threads will wait until they are allowed, according to the
+     * priority class and tenant of their requests.
      */
-    private static SoftReference<ThumbnailCreator> mReference;
+    private final ThumbnailGate mGate;
 
     /**
-     * Maximum number of threads that can generate a thumbnail at the same time.
-     * To avoid excessive memory usage, the number of concurrent thumbnails
-     * being generated is limited to this value.
-     * By default only one thread can generate thumbnails concurrently while
-     * other threads will wait until they are allowed.
-     * If the server has enough memory and its load is not too high, this value
-     * can be increased (especially if the hardware architecture has multiple
-     * processors). Increasing this value will result in a larger throughput of
-     * generated thumbnails, at the expense of a greater memory usage.
+     * Histograms of time spent waiting to be allowed to run for each priority
+     * class.
+     */
+    private final LatencyHistogram[] mWaitHistograms;
+
+    /**
+     * Histograms of total time to generate a thumbnail (including waiting
+     * time) for each priority class.
+     */
+    private final LatencyHistogram[] mLatencyHistograms;
+
+    /**
+     * Histograms of time spent generating a thumbnail once allowed to run
+     * (excluding waiting time) for each priority class.
+     */
+    private final LatencyHistogram[] mServiceHistograms;
+
+    /**
+     * Number of thumbnail generations that have been cancelled.
+     */
+    private final AtomicLong mCancelledCount = new AtomicLong();
+
+    /**
+     * Number of thumbnail generations whose deadline elapsed.
+     */
+    private final AtomicLong mTimedOutCount = new AtomicLong();
+
+    /**
+     * Listener notified with the time spent in each stage of every thumbnail
+     * generation.
+     */
+    private volatile MetricsListener mMetricsListener;
+
+    /**
+     * Built-in metrics of generated thumbnails.
+     */
+    private final OperationMetrics<ThumbnailFormat> mMetrics;
+
+    /**
+     * Indicates whether images, buffers and codecs are reused across
+     * thumbnails generated by the same thread.
      */
-    private int mMaxConcurrentThreads;
+    private volatile boolean mBufferPoolingEnabled;
 
     /**
-     * Current number of threads generating a thumbnail.
+     * Indicates whether large decoded images are stored off-heap while
+     * thumbnails are generated.
      */
-    private volatile int mNumThreads;
+    private volatile boolean mOffHeapDecodingEnabled;
 
     /**
      * Constructor.
+     *
+     * @param builder builder containing configuration of this instance.
      */
-    private ThumbnailCreator() {
-        //TODO: make maximum number of concurrent threads configurable
-        mMaxConcurrentThreads = DEFAULT_MAX_CONCURRENT_THREADS;
-        mNumThreads = 0;
+    private ThumbnailCreator(final Builder builder) {
+        mGate = new ThumbnailGate(builder.mMaxConcurrentThreads);
+        mMetricsListener = builder.mMetricsListener;
+        mBufferPoolingEnabled = builder.mBufferPoolingEnabled;
+        mOffHeapDecodingEnabled = builder.mOffHeapDecodingEnabled;
+
+        final int numPriorities = ThumbnailPriority.values().length;
+        mWaitHistograms = new LatencyHistogram[numPriorities];
+        mLatencyHistograms = new LatencyHistogram[numPriorities];
+        mServiceHistograms = new LatencyHistogram[numPriorities];
+        for (int i = 0; i < numPriorities; i++) {
+            mWaitHistograms[i] = new LatencyHistogram();
+            mLatencyHistograms[i] = new LatencyHistogram();
+            mServiceHistograms[i] = new LatencyHistogram();
+        }
+
+        mMetrics = new OperationMetrics<>("ThumbnailCreator",
+                ThumbnailFormat.class);
+        mMetrics.addGauge("runningCount", new OperationMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return getRunningCount();
+            }
+        });
+        mMetrics.addGauge("waitingCount", new OperationMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return getWaitingCount();
+            }
+        });
+        mMetrics.addGauge("maxConcurrentThreads",
+                new OperationMetrics.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return getMaxConcurrentThreads();
+                    }
+                });
+        mMetrics.addGauge("cancelledCount", new OperationMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return getCancelledCount();
+            }
+        });
+        mMetrics.addGauge("timedOutCount", new OperationMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return getTimedOutCount();
+            }
+        });
     }
 
     /**
-     * Factory method. Creates or returns the singleton instance of this class
+     * Factory method. Returns default shared instance of this class, which is
+     * lazily created on first use and is never released.
+     * Changes made to the configuration of the default instance affect all
+     * its users. Use a Builder to create independently configured instances.
      *
      * @return singleton.
      */
-    public static synchronized ThumbnailCreator getInstance() {
-        ThumbnailCreator creator;
-        if (mReference == null || (creator = mReference.get()) == null) {
-            creator = new ThumbnailCreator();
-            mReference = new SoftReference<>(creator);
-        }
-        return creator;
+    public static ThumbnailCreator getInstance() {
+        return InstanceHolder.INSTANCE;
     }
 
     /**
@@ -111,12 +201,12 @@ public class ThumbnailCreator {
      *                             generate thumbnails at the same time.
      * @throws IllegalArgumentException if provided value is less than 1.
      */
-    public synchronized void setMaxConcurrentThreads(final int maxConcurrentThreads) {
+    public void setMaxConcurrentThreads(final int maxConcurrentThreads) {
         if (maxConcurrentThreads < MIN_CONCURRENT_THREADS) {
             throw new IllegalArgumentException();
         }
 
-        this.mMaxConcurrentThreads = maxConcurrentThreads;
+        mGate.setMaxPermits(maxConcurrentThreads);
     }
 
     /**
@@ -134,8 +224,190 @@ public class ThumbnailCreator {
      * @return maximum number of threads that can generate a thumbnail at the
      * same time.
      */
-    public synchronized int getMaxConcurrentThreads() {
-        return mMaxConcurrentThreads;
+    public int getMaxConcurrentThreads() {
+        return mGate.getMaxPermits();
+    }
+
+    /**
+     * Returns number of threads currently generating a thumbnail.
+     *
+     * @return number of threads currently generating a thumbnail.
+     */
+    public int getRunningCount() {
+        return mGate.getUsedPermits();
+    }
+
+    /**
+     * Returns number of threads currently waiting to be allowed to generate a
+     * thumbnail.
+     *
+     * @return number of waiting threads.
+     */
+    public int getWaitingCount() {
+        return mGate.getWaiting();
+    }
+
+    /**
+     * Returns histogram of time spent by requests of provided priority class
+     * waiting to be allowed to generate a thumbnail.
+     *
+     * @param priority priority class.
+     * @return histogram of waiting times in nanoseconds.
+     */
+    public LatencyHistogram getWaitHistogram(final ThumbnailPriority priority) {
+        return mWaitHistograms[priority.ordinal()];
+    }
+
+    /**
+     * Returns histogram of total time (including waiting time) spent by
+     * requests of provided priority class to generate a thumbnail.
+     * Only successfully generated thumbnails are recorded.
+     *
+     * @param priority priority class.
+     * @return histogram of latencies in nanoseconds.
+     */
+    public LatencyHistogram getLatencyHistogram(
+            final ThumbnailPriority priority) {
+        return mLatencyHistograms[priority.ordinal()];
+    }
+
+    /**
+     * Returns histogram of time spent by requests of provided priority class
+     * to generate a thumbnail once allowed to run (excluding waiting time).
+     * Only successfully generated thumbnails are recorded.
+     *
+     * @param priority priority class.
+     * @return histogram of service times in nanoseconds.
+     */
+    public LatencyHistogram getServiceHistogram(
+            final ThumbnailPriority priority) {
+        return mServiceHistograms[priority.ordinal()];
+    }
+
+    /**
+     * Returns number of thumbnail generations that have been cancelled, either
+     * while waiting to be allowed to run or while being processed.
+     *
+     * @return number of cancelled thumbnail generations.
+     */
+    public long getCancelledCount() {
+        return mCancelledCount.get();
+    }
+
+    /**
+     * Returns number of thumbnail generations that were abandoned because
+     * their deadline elapsed.
+     *
+     * @return number of timed out thumbnail generations.
+     */
+    public long getTimedOutCount() {
+        return mTimedOutCount.get();
+    }
+
+    /**
+     * Returns built-in metrics of thumbnails generated by this instance,
+     * including number of generated thumbnails, failures, bytes read and
+     * written, latency by thumbnail format and gauges of running and waiting
+     * threads.
+     * Cancelled or timed out generations are not counted as failures, but
+     * are available as cancelledCount and timedOutCount gauges.
+     *
+     * @return metrics of generated thumbnails.
+     */
+    public OperationMetrics<ThumbnailFormat> getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Returns listener notified with the time spent in each stage of every
+     * thumbnail generation.
+     *
+     * @return metrics listener.
+     */
+    public MetricsListener getMetricsListener() {
+        return mMetricsListener;
+    }
+
+    /**
+     * Sets listener notified with the time spent in each stage of every
+     * thumbnail generation.
+     * Stages are only timed when a listener other than NoOpMetricsListener is
+     * set or when Flight Recorder ThumbnailGenerate events are being
+     * recorded.
+     *
+     * @param listener metrics listener.
+     * @throws IllegalArgumentException if provided listener is null.
+     */
+    public void setMetricsListener(final MetricsListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException();
+        }
+        mMetricsListener = listener;
+    }
+
+    /**
+     * Indicates whether images, buffers and codecs are reused across
+     * thumbnails generated by the same thread.
+     *
+     * @return true if buffer pooling is enabled, false otherwise.
+     */
+    public boolean isBufferPoolingEnabled() {
+        return mBufferPoolingEnabled;
+    }
+
+    /**
+     * Sets whether images, buffers and codecs are reused across thumbnails
+     * generated by the same thread.
+     * When enabled, generating thumbnails of similarly sized images barely
+     * allocates memory once each thread has generated its first thumbnails,
+     * which reduces garbage collection pressure on busy servers. In exchange,
+     * each thread generating thumbnails keeps up to 64 MB of idle buffers
+     * until it terminates, hence pooling is disabled by default and is best
+     * suited for a bounded set of long-lived worker threads.
+     *
+     * @param bufferPoolingEnabled true to enable buffer pooling, false
+     *                             otherwise.
+     */
+    public void setBufferPoolingEnabled(final boolean bufferPoolingEnabled) {
+        mBufferPoolingEnabled = bufferPoolingEnabled;
+    }
+
+    /**
+     * Indicates whether large decoded images are stored off-heap while
+     * thumbnails are generated.
+     *
+     * @return true if off-heap decoding is enabled, false otherwise.
+     */
+    public boolean isOffHeapDecodingEnabled() {
+        return mOffHeapDecodingEnabled;
+    }
+
+    /**
+     * Sets whether large decoded images are stored off-heap while thumbnails
+     * are generated.
+     * When enabled, JPEG and PNG images storing a byte per sample are decoded
+     * into direct memory, which is freed as soon as their thumbnail has been
+     * generated (or generation fails), so that the heap only keeps scaled
+     * images and encoded data.
+     * Only the JPEG and PNG readers of the JDK are known to write decoded
+     * pixels through the raster of their destination. Any other image (such
+     * as GIF or BMP images, images decoded by other ImageIO plugins, or images
+     * having other sample layouts) silently falls back to being decoded on
+     * the heap.
+     * This prevents decoded originals of tens or hundreds of megabytes from
+     * filling the heap and triggering long garbage collections, but direct
+     * memory is limited by -XX:MaxDirectMemorySize (by default as large as
+     * the maximum heap size), and an OutOfMemoryError is thrown when such
+     * limit is exceeded. Hence, off-heap decoding is disabled by default, and
+     * the limit must be large enough for as many decoded images as
+     * concurrent threads allowed to generate thumbnails.
+     *
+     * @param offHeapDecodingEnabled true to enable off-heap decoding, false
+     *                               otherwise.
+     */
+    public void setOffHeapDecodingEnabled(
+            final boolean offHeapDecodingEnabled) {
+        mOffHeapDecodingEnabled = offHeapDecodingEnabled;
     }
 
     /**
@@ -164,7 +436,6 @@ public class ThumbnailCreator {
      * @throws IOException              if an I/O error occurs.
      * @throws InterruptedException     if thread is interrupted.
      */
-    @SuppressWarnings({"SuspiciousNameCombination", "DuplicatedCode"})
     public void generateAndSaveThumbnail(
             final File inputImageFile,
             final ImageOrientation inputOrientation,
@@ -172,151 +443,529 @@ public class ThumbnailCreator {
             final int width, final int height,
             final ThumbnailFormat format) throws IllegalArgumentException,
             IOException, InterruptedException {
+        try {
+            generateAndSaveThumbnail(inputImageFile, inputOrientation,
+                    generatedThumbnailFile, width, height, format,
+                    (CancellationToken) null);
+        } catch (final TimeoutException e) {
+            // never happens because there is no deadline
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Generates thumbnail of provided input file image and saves it into
+     * generated thumbnail file, giving up if it cannot be generated within
+     * provided amount of time.
+     * Time spent waiting to be allowed to run is also taken into account.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be generated.
+     * @param height                 height (in pixels) of thumbnail to be generated.
+     * @param format                 format of image to be generated.
+     * @param timeout                maximum amount of time to generate the
+     *                               thumbnail.
+     * @param unit                   time unit of timeout.
+     * @throws IllegalArgumentException if width or height is less than minimum
+     *                                  allowed image size (1 pixel), or if width or height is greater than
+     *                                  actual image size, or if timeout is negative.
+     * @throws IOException              if an I/O error occurs.
+     * @throws InterruptedException     if thread is interrupted.
+     * @throws TimeoutException         if thumbnail could not be generated
+     *                                  within provided amount of time.
+     */
+    public void generateAndSaveThumbnail(
+            final File inputImageFile,
+            final ImageOrientation inputOrientation,
+            final File generatedThumbnailFile,
+            final int width, final int height,
+            final ThumbnailFormat format, final long timeout,
+            final TimeUnit unit) throws IllegalArgumentException,
+            IOException, InterruptedException, TimeoutException {
+        generateAndSaveThumbnail(inputImageFile, inputOrientation,
+                generatedThumbnailFile, width, height, format,
+                new CancellationToken(timeout, unit));
+    }
+
+    /**
+     * Generates thumbnail of provided input file image and saves it into
+     * generated thumbnail file, unless provided cancellation token is
+     * cancelled or expires.
+     * If token is cancelled or expires while waiting to be allowed to run, the
+     * request is abandoned immediately. If it happens while the thumbnail is
+     * being generated, generation stops at the next strip or row boundary of
+     * the image being decoded or resampled.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be generated.
+     * @param height                 height (in pixels) of thumbnail to be generated.
+     * @param format                 format of image to be generated.
+     * @param token                  cancellation token (optional).
+     * @throws IllegalArgumentException if width or height is less than minimum
+     *                                  allowed image size (1 pixel), or if width or height is greater than
+     *                                  actual image size.
+     * @throws IOException              if an I/O error occurs.
+     * @throws InterruptedException     if thread is interrupted.
+     * @throws TimeoutException         if deadline of token elapsed.
+     * @throws CancellationException    if token was cancelled.
+     */
+    public void generateAndSaveThumbnail(
+            final File inputImageFile,
+            final ImageOrientation inputOrientation,
+            final File generatedThumbnailFile,
+            final int width, final int height,
+            final ThumbnailFormat format, final CancellationToken token)
+            throws IllegalArgumentException, IOException, InterruptedException,
+            TimeoutException {
+        generateAndSaveThumbnail(inputImageFile, inputOrientation,
+                generatedThumbnailFile, width, height, format,
+                ThumbnailPriority.NORMAL, null, token);
+    }
 
-        if (width <= MIN_SIZE || height <= MIN_SIZE) {
+    /**
+     * Generates thumbnail of provided input file image and saves it into
+     * generated thumbnail file, using provided priority class and tenant to
+     * decide when the request is allowed to run if other threads are already
+     * generating thumbnails.
+     * Waiting requests are granted in proportion to the weight of their
+     * priority class, and requests of different tenants within a class are
+     * served in round-robin order.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be generated.
+     * @param height                 height (in pixels) of thumbnail to be generated.
+     * @param format                 format of image to be generated.
+     * @param priority               priority class of the request.
+     * @param tenant                 tenant of the request (optional). Requests
+     *                               without tenant share a single queue within
+     *                               their priority class.
+     * @param token                  cancellation token (optional).
+     * @throws IllegalArgumentException if width or height is less than minimum
+     *                                  allowed image size (1 pixel), or if width or height is greater than
+     *                                  actual image size, or if priority is not provided.
+     * @throws IOException              if an I/O error occurs.
+     * @throws InterruptedException     if thread is interrupted.
+     * @throws TimeoutException         if deadline of token elapsed.
+     * @throws CancellationException    if token was cancelled.
+     */
+    public void generateAndSaveThumbnail(
+            final File inputImageFile,
+            final ImageOrientation inputOrientation,
+            final File generatedThumbnailFile,
+            final int width, final int height,
+            final ThumbnailFormat format, final ThumbnailPriority priority,
+            final String tenant, final CancellationToken token)
+            throws IllegalArgumentException, IOException, InterruptedException,
+            TimeoutException {
+
+        if (width <= MIN_SIZE || height <= MIN_SIZE || priority == null) {
             throw new IllegalArgumentException();
         }
 
-        synchronized (this) {
-            while (mNumThreads >= mMaxConcurrentThreads) {
-                wait();
-            }
-            mNumThreads++;
+        final MetricsListener listener = mMetricsListener;
+        final Object event = JfrEvent.THUMBNAIL_GENERATE.begin();
+        if (listener == NoOpMetricsListener.INSTANCE && event == null) {
+            internalGenerateAndSaveThumbnail(inputImageFile, inputOrientation,
+                    generatedThumbnailFile, width, height, format, priority,
+                    tenant, token, null);
+            return;
         }
 
+        final ThumbnailDetails details = new ThumbnailDetails(inputImageFile,
+                inputOrientation, generatedThumbnailFile, width, height,
+                format, priority, tenant);
+        final long allocated = AllocationMeter.getAllocatedBytes();
+        Throwable error = null;
         try {
-            // default (orientation == 1)
-            boolean exchangeSize = false;
-            int quadrants = 0;
-            if (inputOrientation != null) {
-                // take into account only orientations below, other orientations
-                // will be ignored
-                switch (inputOrientation) {
-                    case LEFT_BOTTOM:
-                        // orientation == 8 (counterclockwise 90º)
-                        exchangeSize = true;
-                        quadrants = -1;
-                        break;
-                    case BOTTOM_RIGHT:
-                        // orientation == 3 (clockwise 180º)
-                        quadrants = -2;
-                        break;
-                    case RIGHT_TOP:
-                        // orientation == 6 (clockwise 90º)
-                        exchangeSize = true;
-                        quadrants = -3;
-                        break;
-                    default:
-                        break;
-                }
+            internalGenerateAndSaveThumbnail(inputImageFile, inputOrientation,
+                    generatedThumbnailFile, width, height, format, priority,
+                    tenant, token, details);
+        } catch (final IOException | InterruptedException | TimeoutException |
+                RuntimeException | Error e) {
+            error = e;
+            throw e;
+        } finally {
+            details.getTimings().setAllocatedBytes(
+                    AllocationMeter.getAllocatedBytesSince(allocated));
+            if (event != null) {
+                commitEvent(event, details, error == null);
             }
+            listener.onThumbnailGenerated(details, error);
+        }
+    }
 
-            int bufferedImageType = BufferedImage.TYPE_INT_RGB;
-            if (format == ThumbnailFormat.PNG) {
-                bufferedImageType = BufferedImage.TYPE_INT_ARGB;
+    /**
+     * Commits a Flight Recorder event of a thumbnail generation.
+     *
+     * @param event   started event.
+     * @param details details of thumbnail generation.
+     * @param success true if thumbnail was generated, false otherwise.
+     */
+    private static void commitEvent(final Object event,
+                                    final ThumbnailDetails details,
+                                    final boolean success) {
+        final StageTimings<ThumbnailStage> timings = details.getTimings();
+        JfrEvent.THUMBNAIL_GENERATE.commit(event,
+                details.getInputImageFile().getPath(),
+                JfrEvent.name(details.getFormat()),
+                details.getInputWidth(), details.getInputHeight(),
+                details.getInputLength(),
+                JfrEvent.name(details.getInputOrientation()),
+                details.getWidth(), details.getHeight(),
+                JfrEvent.name(details.getPriority()), success,
+                timings.getNanos(ThumbnailStage.QUEUE_WAIT),
+                timings.getNanos(ThumbnailStage.IO),
+                timings.getNanos(ThumbnailStage.DECODE),
+                timings.getNanos(ThumbnailStage.SCALE),
+                timings.getNanos(ThumbnailStage.ROTATE),
+                timings.getNanos(ThumbnailStage.ENCODE),
+                timings.getNanos(ThumbnailStage.WRITE));
+    }
+
+    /**
+     * Generates thumbnail of provided input file image and saves it into
+     * generated thumbnail file, timing each stage if needed.
+     * Input image file is fully read into a pooled buffer before being decoded
+     * when buffer pooling is enabled, or streamed to its reader otherwise,
+     * keeping track of the time spent reading the file. Thumbnail is fully
+     * encoded before being written. This way time spent on I/O can be told
+     * apart from time spent decoding or encoding.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be
+     *                               generated.
+     * @param height                 height (in pixels) of thumbnail to be
+     *                               generated.
+     * @param format                 format of image to be generated.
+     * @param priority               priority class of request.
+     * @param tenant                 tenant of request (optional).
+     * @param token                  cancellation token (optional).
+     * @param details                instance where details and time spent
+     *                               in each stage are stored, or null if
+     *                               stages must not be timed.
+     * @throws IOException           if an I/O error occurs.
+     * @throws InterruptedException  if thread is interrupted.
+     * @throws TimeoutException      if deadline of token elapsed.
+     * @throws CancellationException if token was cancelled.
+     */
+    private void internalGenerateAndSaveThumbnail(
+            final File inputImageFile,
+            final ImageOrientation inputOrientation,
+            final File generatedThumbnailFile,
+            final int width, final int height,
+            final ThumbnailFormat format, final ThumbnailPriority priority,
+            final String tenant, final CancellationToken token,
+            final ThumbnailDetails details)
+            throws IOException, InterruptedException, TimeoutException {
+        final StageTimings<ThumbnailStage> timings = details != null ?
+                details.getTimings() : null;
+        final long startTime = System.nanoTime();
+        try {
+            final Object waitEvent = JfrEvent.THUMBNAIL_QUEUE_WAIT.begin();
+            final int waiting = waitEvent != null ? mGate.getWaiting() : 0;
+            mGate.acquire(priority, tenant, token);
+            final long serviceStartTime = System.nanoTime();
+            if (waitEvent != null) {
+                JfrEvent.THUMBNAIL_QUEUE_WAIT.commit(waitEvent,
+                        inputImageFile.getPath(), priority.name(), tenant,
+                        waiting);
+            }
+            mWaitHistograms[priority.ordinal()].record(
+                    serviceStartTime - startTime);
+            if (timings != null) {
+                timings.add(ThumbnailStage.QUEUE_WAIT,
+                        serviceStartTime - startTime);
             }
+            try {
+                final boolean exchangeSize =
+                        ThumbnailRenderer.isSizeExchanged(inputOrientation);
+                final int quadrants =
+                        ThumbnailRenderer.getQuadrants(inputOrientation);
+                final int bufferedImageType =
+                        ThumbnailRenderer.getBufferedImageType(format);
+
+                final ThumbnailBufferPool pool = mBufferPoolingEnabled ?
+                        ThumbnailBufferPool.get() : null;
+                ByteBuffer inputData = null;
+                BufferedImage inputImage = null;
+                BufferedImage resizedImage = null;
+                BufferedImage thumbnailImage = null;
+                try {
+                    long time = serviceStartTime;
+                    if (pool != null) {
+                        inputData = pool.readFile(inputImageFile.toPath());
+                        time = StageTimings.lap(timings, ThumbnailStage.IO,
+                                time);
+                        mMetrics.addBytesRead(inputData.limit());
+                        if (details != null) {
+                            details.setInputLength(inputData.limit());
+                            details.setInputFormat(
+                                    ThumbnailRenderer.getImageFormat(
+                                            inputData.array(),
+                                            inputData.limit()));
+                        }
+                        inputImage = ThumbnailRenderer.decode(inputData, token,
+                                pool, mOffHeapDecodingEnabled);
+                        time = StageTimings.lap(timings,
+                                ThumbnailStage.DECODE, time);
+                    } else {
+                        // input file is streamed to its reader, and time spent
+                        // reading the file is told apart from decoding time
+                        try (TimedFileImageInputStream stream =
+                                     new TimedFileImageInputStream(
+                                             inputImageFile)) {
+                            final long inputLength = stream.length();
+                            mMetrics.addBytesRead(inputLength);
+                            if (details != null) {
+                                details.setInputLength(inputLength);
+                                details.setInputFormat(
+                                        ThumbnailRenderer.getImageFormat(
+                                                stream));
+                            }
+                            inputImage = ThumbnailRenderer.decode(stream,
+                                    token, null, mOffHeapDecodingEnabled);
+                            if (timings != null) {
+                                final long readTime = stream.getReadTime();
+                                timings.add(ThumbnailStage.IO, readTime);
+                                time = StageTimings.lap(timings,
+                                        ThumbnailStage.DECODE,
+                                        time + readTime);
+                            }
+                        }
+                    }
+                    if (details != null) {
+                        details.setInputSize(inputImage.getWidth(),
+                                inputImage.getHeight());
+                    }
+
+                    resizedImage = ThumbnailRenderer.scale(inputImage, width,
+                            height, exchangeSize, bufferedImageType, token,
+                            pool);
+                    time = StageTimings.lap(timings, ThumbnailStage.SCALE,
+                            time);
+                    thumbnailImage = ThumbnailRenderer.rotate(resizedImage,
+                            quadrants, width, height, exchangeSize,
+                            bufferedImageType, pool);
+                    time = StageTimings.lap(timings, ThumbnailStage.ROTATE,
+                            time);
+
+                    if (token != null) {
+                        token.check();
+                    }
+                    final ByteBuffer thumbnailData = ThumbnailRenderer.encode(
+                            thumbnailImage, format, pool);
+                    time = StageTimings.lap(timings, ThumbnailStage.ENCODE,
+                            time);
+                    final int thumbnailLength = thumbnailData.limit();
+                    if (details != null) {
+                        details.setThumbnailLength(thumbnailLength);
+                    }
+                    write(generatedThumbnailFile, thumbnailData);
+                    mMetrics.addBytesWritten(thumbnailLength);
+                    StageTimings.lap(timings, ThumbnailStage.WRITE, time);
+                } finally {
+                    release(pool, inputData, inputImage, resizedImage,
+                            thumbnailImage);
+                }
 
-            final BufferedImage inputImage = ImageIO.read(inputImageFile);
-            if (inputImage == null) {
-                throw new IOException();
+                final long endTime = System.nanoTime();
+                mServiceHistograms[priority.ordinal()].record(
+                        endTime - serviceStartTime);
+                mLatencyHistograms[priority.ordinal()].record(
+                        endTime - startTime);
+                mMetrics.recordSuccess(format, endTime - startTime);
+            } finally {
+                // decrease counter of threads no matter if thumbnail
+                // generation fails
+                mGate.release();
             }
+        } catch (final CancellationException e) {
+            mCancelledCount.incrementAndGet();
+            throw e;
+        } catch (final TimeoutException e) {
+            mTimedOutCount.incrementAndGet();
+            throw e;
+        } catch (final IOException | InterruptedException | RuntimeException |
+                Error e) {
+            mMetrics.recordFailure(e);
+            throw e;
+        }
+    }
 
+    /**
+     * Writes encoded thumbnail into provided file, replacing any existing
+     * content.
+     *
+     * @param file file where thumbnail is written.
+     * @param data buffer containing encoded thumbnail.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void write(final File file, final ByteBuffer data)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
 
-            final Image tempImage;
-            final BufferedImage resizedImage;
-            Graphics2D graphics2D;
-            if (exchangeSize) {
-                if (width > inputImage.getHeight() ||
-                        height > inputImage.getWidth()) {
-                    throw new IllegalArgumentException();
-                }
+    /**
+     * Releases data and images used to generate a thumbnail.
+     * Memory of images stored off-heap is freed, and any other data and images
+     * are returned to the pool of current thread (if any), so that they can be
+     * reused by the next thumbnail.
+     *
+     * @param pool           pool of current thread (optional).
+     * @param inputData      encoded input image data (optional).
+     * @param inputImage     decoded input image (optional).
+     * @param resizedImage   scaled image (optional).
+     * @param thumbnailImage rotated image (optional).
+     */
+    private static void release(final ThumbnailBufferPool pool,
+                                final ByteBuffer inputData,
+                                final BufferedImage inputImage,
+                                final BufferedImage resizedImage,
+                                final BufferedImage thumbnailImage) {
+        if (inputData != null && pool != null) {
+            pool.releaseBytes(inputData.array());
+        }
+        ThumbnailRenderer.release(inputImage, pool);
+        ThumbnailRenderer.release(resizedImage, pool);
+        if (thumbnailImage != resizedImage) {
+            ThumbnailRenderer.release(thumbnailImage, pool);
+        }
+    }
 
-                // scale image
-                tempImage = inputImage.getScaledInstance(height, width,
-                        Image.SCALE_AREA_AVERAGING);
-                resizedImage = new BufferedImage(height, width,
-                        bufferedImageType);
-                graphics2D = resizedImage.createGraphics();
-                graphics2D.drawImage(tempImage, 0, 0, height, width, null);
-
-            } else {
-                if (width > inputImage.getWidth() ||
-                        height > inputImage.getHeight()) {
-                    throw new IllegalArgumentException();
-                }
+    /**
+     * Lazily creates default instance the first time it is requested, relying
+     * on class initialization to make it thread-safe without locking.
+     */
+    private static class InstanceHolder {
+        /**
+         * Default instance.
+         */
+        private static final ThumbnailCreator INSTANCE = new Builder().build();
+    }
 
-                // scale image
-                tempImage = inputImage.getScaledInstance(width, height,
-                        Image.SCALE_AREA_AVERAGING);
-                resizedImage = new BufferedImage(width, height,
-                        bufferedImageType);
-                graphics2D = resizedImage.createGraphics();
-                graphics2D.drawImage(tempImage, 0, 0, width, height, null);
-            }
-            graphics2D.dispose();
-
-
-            final double centerX;
-            final double centerY;
-            final int resizedHeight;
-            if (exchangeSize) {
-                centerX = height / 2.0;
-                centerY = width / 2.0;
-                resizedHeight = width;
-            } else {
-                centerX = width / 2.0;
-                centerY = height / 2.0;
-                resizedHeight = height;
+    /**
+     * Builder to create independently configured thumbnail creators.
+     */
+    public static class Builder {
+
+        /**
+         * Maximum number of threads that can generate a thumbnail at the same
+         * time.
+         */
+        private int mMaxConcurrentThreads = DEFAULT_MAX_CONCURRENT_THREADS;
+
+        /**
+         * Listener notified with the time spent in each stage of every
+         * thumbnail generation.
+         */
+        private MetricsListener mMetricsListener =
+                NoOpMetricsListener.INSTANCE;
+
+        /**
+         * Indicates whether images, buffers and codecs are reused across
+         * thumbnails generated by the same thread.
+         */
+        private boolean mBufferPoolingEnabled;
+
+        /**
+         * Indicates whether large decoded images are stored off-heap while
+         * thumbnails are generated.
+         */
+        private boolean mOffHeapDecodingEnabled;
+
+        /**
+         * Sets maximum number of threads that can generate a thumbnail at the
+         * same time.
+         *
+         * @param maxConcurrentThreads maximum number of concurrent threads
+         *                             that can generate thumbnails at the same
+         *                             time.
+         * @return this builder.
+         * @throws IllegalArgumentException if provided value is less than 1.
+         */
+        public Builder setMaxConcurrentThreads(final int maxConcurrentThreads) {
+            if (maxConcurrentThreads < MIN_CONCURRENT_THREADS) {
+                throw new IllegalArgumentException();
             }
 
-            BufferedImage thumbnailImage = resizedImage;
-            if (quadrants != 0) {
-                // set rotation transformation by the desired number of quadrants
-                final AffineTransform rotateT = new AffineTransform();
-                rotateT.rotate(0.5 * Math.PI * quadrants,
-                        centerX, centerY);
-
-                // find proper translations to ensure that rotation doesn't cut
-                // off any image data
-                if (quadrants != -2) {
-                    final AffineTransform rotateT2 = new AffineTransform();
-                    rotateT2.rotate(-1.5 * Math.PI, centerX, centerY);
-                    Point2D p2din = new Point2D.Double(0.0, 0.0);
-                    Point2D p2dout = rotateT2.transform(p2din, null);
-                    final double ytrans = p2dout.getY();
-
-                    p2din = new Point2D.Double(0.0, resizedHeight);
-                    p2dout = rotateT2.transform(p2din, null);
-                    final double xtrans = p2dout.getX();
-
-                    final AffineTransform translateT = new AffineTransform();
-                    translateT.translate(-xtrans, -ytrans);
-
-                    rotateT.preConcatenate(translateT);
-                }
+            mMaxConcurrentThreads = maxConcurrentThreads;
+            return this;
+        }
 
-                // instantiate image that will contain the thumbnail
-                thumbnailImage = new BufferedImage(width, height,
-                        bufferedImageType);
-                graphics2D = thumbnailImage.createGraphics();
-                // transform filtered image with scaling and rotation
-                graphics2D.drawImage(resizedImage, rotateT, null);
-                graphics2D.dispose();
+        /**
+         * Sets listener notified with the time spent in each stage of every
+         * thumbnail generation.
+         *
+         * @param listener metrics listener.
+         * @return this builder.
+         * @throws IllegalArgumentException if provided listener is null.
+         */
+        public Builder setMetricsListener(final MetricsListener listener) {
+            if (listener == null) {
+                throw new IllegalArgumentException();
             }
+            mMetricsListener = listener;
+            return this;
+        }
 
+        /**
+         * Sets whether images, buffers and codecs are reused across
+         * thumbnails generated by the same thread.
+         * Pooling is disabled by default.
+         *
+         * @param bufferPoolingEnabled true to enable buffer pooling, false
+         *                             otherwise.
+         * @return this builder.
+         * @see ThumbnailCreator#setBufferPoolingEnabled(boolean)
+         */
+        public Builder setBufferPoolingEnabled(
+                final boolean bufferPoolingEnabled) {
+            mBufferPoolingEnabled = bufferPoolingEnabled;
+            return this;
+        }
 
-            if (!ImageIO.write(thumbnailImage, format.getValue(),
-                    generatedThumbnailFile)) {
-                // if format is not supported
-                throw new IOException();
-            }
-        } finally {
-            // decrease counter of threads no matter if thumbnail generation
-            // fails
-            synchronized (this) {
-                mNumThreads--;
-                this.notifyAll();
-            }
+        /**
+         * Sets whether large decoded images are stored off-heap while
+         * thumbnails are generated.
+         * Off-heap decoding is disabled by default.
+         *
+         * @param offHeapDecodingEnabled true to enable off-heap decoding,
+         *                               false otherwise.
+         * @return this builder.
+         * @see ThumbnailCreator#setOffHeapDecodingEnabled(boolean)
+         */
+        public Builder setOffHeapDecodingEnabled(
+                final boolean offHeapDecodingEnabled) {
+            mOffHeapDecodingEnabled = offHeapDecodingEnabled;
+            return this;
+        }
+
+        /**
+         * Creates a new thumbnail creator using the configuration of this
+         * builder.
+         *
+         * @return a new thumbnail creator.
+         */
+        public ThumbnailCreator build() {
+            return new ThumbnailCreator(this);
         }
     }
 }
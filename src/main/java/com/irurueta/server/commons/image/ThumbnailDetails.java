@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.io.File;
+
+/**
+ * Details of a single thumbnail generation, including the request, the
+ * input image and the time spent in each stage.
+ * Details of input image are only known once it has been read and decoded,
+ * hence they are zero if generation failed earlier.
+ */
+public class ThumbnailDetails {
+
+    /**
+     * Input image file.
+     */
+    private final File mInputImageFile;
+
+    /**
+     * Input image orientation (optional).
+     */
+    private final ImageOrientation mInputOrientation;
+
+    /**
+     * File where generated thumbnail is stored.
+     */
+    private final File mGeneratedThumbnailFile;
+
+    /**
+     * Width (in pixels) of thumbnail to be generated.
+     */
+    private final int mWidth;
+
+    /**
+     * Height (in pixels) of thumbnail to be generated.
+     */
+    private final int mHeight;
+
+    /**
+     * Format of thumbnail to be generated.
+     */
+    private final ThumbnailFormat mFormat;
+
+    /**
+     * Priority class of request.
+     */
+    private final ThumbnailPriority mPriority;
+
+    /**
+     * Tenant of request (optional).
+     */
+    private final String mTenant;
+
+    /**
+     * Time spent in each stage.
+     */
+    private final StageTimings<ThumbnailStage> mTimings =
+            new StageTimings<>(ThumbnailStage.class);
+
+    /**
+     * Length in bytes of input image file.
+     */
+    private long mInputLength;
+
+    /**
+     * Format of input image detected from its header.
+     */
+    private ImageFormat mInputFormat;
+
+    /**
+     * Width (in pixels) of decoded input image.
+     */
+    private int mInputWidth;
+
+    /**
+     * Height (in pixels) of decoded input image.
+     */
+    private int mInputHeight;
+
+    /**
+     * Length in bytes of generated thumbnail file.
+     */
+    private long mThumbnailLength;
+
+    /**
+     * Constructor.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail is stored.
+     * @param width                  width of thumbnail to be generated.
+     * @param height                 height of thumbnail to be generated.
+     * @param format                 format of thumbnail to be generated.
+     * @param priority               priority class of request.
+     * @param tenant                 tenant of request (optional).
+     */
+    ThumbnailDetails(final File inputImageFile,
+                     final ImageOrientation inputOrientation,
+                     final File generatedThumbnailFile, final int width,
+                     final int height, final ThumbnailFormat format,
+                     final ThumbnailPriority priority, final String tenant) {
+        mInputImageFile = inputImageFile;
+        mInputOrientation = inputOrientation;
+        mGeneratedThumbnailFile = generatedThumbnailFile;
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        mPriority = priority;
+        mTenant = tenant;
+    }
+
+    /**
+     * Returns input image file.
+     *
+     * @return input image file.
+     */
+    public File getInputImageFile() {
+        return mInputImageFile;
+    }
+
+    /**
+     * Returns input image orientation, if provided.
+     *
+     * @return input image orientation or null.
+     */
+    public ImageOrientation getInputOrientation() {
+        return mInputOrientation;
+    }
+
+    /**
+     * Returns file where generated thumbnail is stored.
+     *
+     * @return file where generated thumbnail is stored.
+     */
+    public File getGeneratedThumbnailFile() {
+        return mGeneratedThumbnailFile;
+    }
+
+    /**
+     * Returns width (in pixels) of thumbnail to be generated.
+     *
+     * @return width of thumbnail.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns height (in pixels) of thumbnail to be generated.
+     *
+     * @return height of thumbnail.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns format of thumbnail to be generated.
+     *
+     * @return format of thumbnail.
+     */
+    public ThumbnailFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Returns priority class of request.
+     *
+     * @return priority class of request.
+     */
+    public ThumbnailPriority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Returns tenant of request, if provided.
+     *
+     * @return tenant of request or null.
+     */
+    public String getTenant() {
+        return mTenant;
+    }
+
+    /**
+     * Returns time spent in each stage.
+     *
+     * @return time spent in each stage.
+     */
+    public StageTimings<ThumbnailStage> getTimings() {
+        return mTimings;
+    }
+
+    /**
+     * Returns length in bytes of input image file.
+     *
+     * @return length of input image file or zero if it was not read.
+     */
+    public long getInputLength() {
+        return mInputLength;
+    }
+
+    /**
+     * Sets length in bytes of input image file.
+     *
+     * @param inputLength length of input image file.
+     */
+    void setInputLength(final long inputLength) {
+        mInputLength = inputLength;
+    }
+
+    /**
+     * Returns format of input image, as detected from its header.
+     *
+     * @return format of input image or null if it was not read.
+     */
+    public ImageFormat getInputFormat() {
+        return mInputFormat;
+    }
+
+    /**
+     * Sets format of input image.
+     *
+     * @param inputFormat format of input image.
+     */
+    void setInputFormat(final ImageFormat inputFormat) {
+        mInputFormat = inputFormat;
+    }
+
+    /**
+     * Returns width (in pixels) of decoded input image.
+     *
+     * @return width of input image or zero if it was not decoded.
+     */
+    public int getInputWidth() {
+        return mInputWidth;
+    }
+
+    /**
+     * Returns height (in pixels) of decoded input image.
+     *
+     * @return height of input image or zero if it was not decoded.
+     */
+    public int getInputHeight() {
+        return mInputHeight;
+    }
+
+    /**
+     * Sets size (in pixels) of decoded input image.
+     *
+     * @param inputWidth  width of input image.
+     * @param inputHeight height of input image.
+     */
+    void setInputSize(final int inputWidth, final int inputHeight) {
+        mInputWidth = inputWidth;
+        mInputHeight = inputHeight;
+    }
+
+    /**
+     * Returns length in bytes of generated thumbnail file.
+     *
+     * @return length of generated thumbnail or zero if it was not encoded.
+     */
+    public long getThumbnailLength() {
+        return mThumbnailLength;
+    }
+
+    /**
+     * Sets length in bytes of generated thumbnail file.
+     *
+     * @param thumbnailLength length of generated thumbnail.
+     */
+    void setThumbnailLength(final long thumbnailLength) {
+        mThumbnailLength = thumbnailLength;
+    }
+
+    /**
+     * Returns a string representation of these details.
+     *
+     * @return string representation.
+     */
+    @Override
+    public String toString() {
+        return mInputImageFile + " (" + mInputFormat + " " + mInputWidth +
+                "x" + mInputHeight + ", " + mInputLength + " bytes, " + mInputOrientation +
+                ") -> " + mWidth + "x" + mHeight + " " + mFormat + " " +
+                mTimings;
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of threads generating thumbnails at the same time and
+ * decides which waiting thread is allowed to run next.
+ * Waiting threads are grouped by priority class and, within each class, by
+ * tenant. When a slot is released it is handed over directly to a single
+ * waiting thread:
+ * - Classes are selected using stride scheduling, so that each class having
+ * waiting threads is granted a share of slots proportional to its weight.
+ * Interactive requests therefore go ahead of queued batch requests, while
+ * batch requests still make progress.
+ * - Tenants of a class are served in round-robin order, so that a tenant
+ * submitting many requests cannot monopolize its class.
+ * - Requests of the same tenant are served in FIFO order.
+ */
+class ThumbnailGate {
+
+    /**
+     * Tenant assigned to requests not indicating any tenant.
+     */
+    static final String DEFAULT_TENANT = "";
+
+    /**
+     * Numerator used to compute the stride of each class from its weight.
+     */
+    private static final long STRIDE_SCALE = 1L << 20;
+
+    /**
+     * Lock protecting the state of this gate.
+     */
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    /**
+     * Queues of waiting threads for each priority class.
+     */
+    private final ClassQueue[] mQueues;
+
+    /**
+     * Maximum number of threads allowed to run at the same time.
+     */
+    private int mMaxPermits;
+
+    /**
+     * Number of threads currently running.
+     */
+    private int mUsedPermits;
+
+    /**
+     * Number of threads currently waiting.
+     */
+    private int mWaiting;
+
+    /**
+     * Pass of the last selected class. Classes that become active are not
+     * allowed to fall behind this value, so that idle classes do not
+     * accumulate credit.
+     */
+    private long mGlobalPass;
+
+    /**
+     * Constructor.
+     *
+     * @param maxPermits maximum number of threads allowed to run at the same
+     *                   time.
+     */
+    ThumbnailGate(final int maxPermits) {
+        mMaxPermits = maxPermits;
+
+        final ThumbnailPriority[] priorities = ThumbnailPriority.values();
+        mQueues = new ClassQueue[priorities.length];
+        for (final ThumbnailPriority priority : priorities) {
+            mQueues[priority.ordinal()] = new ClassQueue(
+                    STRIDE_SCALE / priority.getWeight());
+        }
+    }
+
+    /**
+     * Returns maximum number of threads allowed to run at the same time.
+     *
+     * @return maximum number of threads allowed to run at the same time.
+     */
+    int getMaxPermits() {
+        mLock.lock();
+        try {
+            return mMaxPermits;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets maximum number of threads allowed to run at the same time.
+     * If the maximum is increased, waiting threads are granted immediately.
+     *
+     * @param maxPermits maximum number of threads allowed to run at the same
+     *                   time.
+     */
+    void setMaxPermits(final int maxPermits) {
+        mLock.lock();
+        try {
+            mMaxPermits = maxPermits;
+            dispatch();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of threads currently running.
+     *
+     * @return number of threads currently running.
+     */
+    int getUsedPermits() {
+        mLock.lock();
+        try {
+            return mUsedPermits;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of threads currently waiting.
+     *
+     * @return number of threads currently waiting.
+     */
+    int getWaiting() {
+        mLock.lock();
+        try {
+            return mWaiting;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until current thread is allowed to run.
+     *
+     * @param priority priority class of the request.
+     * @param tenant   tenant of the request or null.
+     * @param token    cancellation token (optional).
+     * @throws InterruptedException if thread is interrupted while waiting.
+     * @throws TimeoutException     if deadline of token elapsed while waiting.
+     */
+    void acquire(final ThumbnailPriority priority, final String tenant,
+                 final CancellationToken token)
+            throws InterruptedException, TimeoutException {
+        Waiter waiter;
+        mLock.lock();
+        try {
+            if (token != null) {
+                token.check();
+            }
+            if (mWaiting == 0 && mUsedPermits < mMaxPermits) {
+                // fast path: nobody is waiting
+                mUsedPermits++;
+                return;
+            }
+
+            waiter = new Waiter(mLock.newCondition(),
+                    tenant != null ? tenant : DEFAULT_TENANT);
+            enqueue(mQueues[priority.ordinal()], waiter);
+        } finally {
+            mLock.unlock();
+        }
+
+        Runnable wakeUp = null;
+        if (token != null) {
+            // wake up waiting thread as soon as token is cancelled
+            final Waiter w = waiter;
+            wakeUp = new Runnable() {
+                @Override
+                public void run() {
+                    mLock.lock();
+                    try {
+                        w.mCondition.signal();
+                    } finally {
+                        mLock.unlock();
+                    }
+                }
+            };
+            token.addListener(wakeUp);
+        }
+
+        boolean acquired = false;
+        mLock.lock();
+        try {
+            while (!waiter.mGranted) {
+                if (token == null) {
+                    waiter.mCondition.await();
+                } else {
+                    token.check();
+                    final long remaining = token.getRemainingNanos();
+                    if (remaining == Long.MAX_VALUE) {
+                        waiter.mCondition.await();
+                    } else {
+                        waiter.mCondition.awaitNanos(remaining);
+                    }
+                }
+            }
+            acquired = true;
+        } finally {
+            if (!acquired) {
+                if (waiter.mGranted) {
+                    // slot was granted while giving up, hand it over
+                    mUsedPermits--;
+                    dispatch();
+                } else {
+                    remove(mQueues[priority.ordinal()], waiter);
+                }
+            }
+            mLock.unlock();
+            if (wakeUp != null) {
+                token.removeListener(wakeUp);
+            }
+        }
+    }
+
+    /**
+     * Releases a slot previously acquired and hands it over to next waiting
+     * thread, if any.
+     */
+    void release() {
+        mLock.lock();
+        try {
+            mUsedPermits--;
+            dispatch();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Grants free slots to waiting threads.
+     * Must be called while holding the lock.
+     */
+    private void dispatch() {
+        while (mWaiting > 0 && mUsedPermits < mMaxPermits) {
+            // select active class having the minimum pass
+            ClassQueue selected = null;
+            for (final ClassQueue queue : mQueues) {
+                if (!queue.mTenants.isEmpty() &&
+                        (selected == null || queue.mPass < selected.mPass)) {
+                    selected = queue;
+                }
+            }
+            if (selected == null) {
+                return;
+            }
+            mGlobalPass = selected.mPass;
+            selected.mPass += selected.mStride;
+
+            final Waiter waiter = dequeue(selected);
+            waiter.mGranted = true;
+            mUsedPermits++;
+            waiter.mCondition.signal();
+        }
+    }
+
+    /**
+     * Adds a waiting thread at the end of the queue of its tenant.
+     * Must be called while holding the lock.
+     *
+     * @param queue  queue of the priority class of the waiting thread.
+     * @param waiter waiting thread.
+     */
+    private void enqueue(final ClassQueue queue, final Waiter waiter) {
+        if (queue.mTenants.isEmpty()) {
+            // an idle class does not accumulate credit
+            queue.mPass = Math.max(queue.mPass, mGlobalPass);
+        }
+
+        ArrayDeque<Waiter> waiters = queue.mTenants.get(waiter.mTenant);
+        if (waiters == null) {
+            waiters = new ArrayDeque<>();
+            queue.mTenants.put(waiter.mTenant, waiters);
+        }
+        waiters.addLast(waiter);
+        mWaiting++;
+    }
+
+    /**
+     * Removes next waiting thread of a class, serving its tenants in
+     * round-robin order.
+     * Must be called while holding the lock.
+     *
+     * @param queue a non-empty queue of a priority class.
+     * @return removed waiting thread.
+     */
+    private Waiter dequeue(final ClassQueue queue) {
+        final Iterator<Map.Entry<String, ArrayDeque<Waiter>>> it =
+                queue.mTenants.entrySet().iterator();
+        final Map.Entry<String, ArrayDeque<Waiter>> entry = it.next();
+        final ArrayDeque<Waiter> waiters = entry.getValue();
+        final Waiter waiter = waiters.removeFirst();
+
+        // move tenant to the end of the rotation
+        it.remove();
+        if (!waiters.isEmpty()) {
+            queue.mTenants.put(entry.getKey(), waiters);
+        }
+        mWaiting--;
+        return waiter;
+    }
+
+    /**
+     * Removes a waiting thread that gave up waiting.
+     * Must be called while holding the lock.
+     *
+     * @param queue  queue of the priority class of the waiting thread.
+     * @param waiter waiting thread.
+     */
+    private void remove(final ClassQueue queue, final Waiter waiter) {
+        final ArrayDeque<Waiter> waiters = queue.mTenants.get(waiter.mTenant);
+        if (waiters != null && waiters.remove(waiter)) {
+            if (waiters.isEmpty()) {
+                queue.mTenants.remove(waiter.mTenant);
+            }
+            mWaiting--;
+        }
+    }
+
+    /**
+     * Waiting threads of a priority class.
+     */
+    private static class ClassQueue {
+
+        /**
+         * Queues of waiting threads of each tenant in round-robin order.
+         */
+        private final LinkedHashMap<String, ArrayDeque<Waiter>> mTenants =
+                new LinkedHashMap<>();
+
+        /**
+         * Amount pass is increased each time this class is selected.
+         */
+        private final long mStride;
+
+        /**
+         * Virtual time of this class. Class having the minimum pass is
+         * selected next.
+         */
+        private long mPass;
+
+        /**
+         * Constructor.
+         *
+         * @param stride amount pass is increased each time this class is
+         *               selected.
+         */
+        ClassQueue(final long stride) {
+            mStride = stride;
+        }
+    }
+
+    /**
+     * A waiting thread.
+     */
+    private static class Waiter {
+
+        /**
+         * Condition signalled when a slot is granted to this thread.
+         */
+        private final Condition mCondition;
+
+        /**
+         * Tenant of the request.
+         */
+        private final String mTenant;
+
+        /**
+         * Indicates whether a slot has been granted to this thread.
+         */
+        private boolean mGranted;
+
+        /**
+         * Constructor.
+         *
+         * @param condition condition signalled when a slot is granted.
+         * @param tenant    tenant of the request.
+         */
+        Waiter(final Condition condition, final String tenant) {
+            mCondition = condition;
+            mTenant = tenant;
+        }
+    }
+}
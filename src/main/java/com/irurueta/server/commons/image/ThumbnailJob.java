@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Thumbnail generation request submitted to a ThumbnailPipeline.
+ * A job travels through all the stages of the pipeline and keeps the
+ * intermediate data produced by each stage until it is consumed by the next
+ * one.
+ * Intermediate data is only accessed by the thread owning the job, which is
+ * either the stage worker processing it or the thread removing it from a
+ * queue, and it is handed over to next stage through its queue.
+ * This class can be used to wait until the thumbnail has been generated or to
+ * cancel its generation.
+ */
+public class ThumbnailJob implements Future<File> {
+
+    /**
+     * Input image file.
+     */
+    private final File mInputImageFile;
+
+    /**
+     * Input image orientation (optional).
+     */
+    private final ImageOrientation mInputOrientation;
+
+    /**
+     * File where generated thumbnail will be stored.
+     */
+    private final File mGeneratedThumbnailFile;
+
+    /**
+     * Width (in pixels) of thumbnail to be generated.
+     */
+    private final int mWidth;
+
+    /**
+     * Height (in pixels) of thumbnail to be generated.
+     */
+    private final int mHeight;
+
+    /**
+     * Format of image to be generated.
+     */
+    private final ThumbnailFormat mFormat;
+
+    /**
+     * Latch released once the job has finished.
+     */
+    private final CountDownLatch mDoneLatch = new CountDownLatch(1);
+
+    /**
+     * Indicates whether this job has already finished.
+     */
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+
+    /**
+     * Cancellation token of this job.
+     */
+    private final CancellationToken mToken;
+
+    /**
+     * Pipeline processing this job.
+     */
+    private final ThumbnailPipeline mPipeline;
+
+    /**
+     * Listener of the token cancelling this job, if any.
+     */
+    private final Runnable mTokenListener;
+
+    /**
+     * Task expiring this job once the deadline of its token elapses, if any.
+     */
+    private volatile ScheduledFuture<?> mExpiration;
+
+    /**
+     * Encoded input image data read from input file.
+     */
+    private byte[] mInputData;
+
+    /**
+     * Decoded input image.
+     */
+    private BufferedImage mInputImage;
+
+    /**
+     * Scaled and rotated thumbnail image.
+     */
+    private BufferedImage mThumbnailImage;
+
+    /**
+     * Encoded thumbnail data to be written into output file.
+     */
+    private byte[] mThumbnailData;
+
+    /**
+     * Error that caused this job to fail, if any.
+     */
+    private volatile Throwable mError;
+
+    /**
+     * Constructor.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be
+     *                               generated.
+     * @param height                 height (in pixels) of thumbnail to be
+     *                               generated.
+     * @param format                 format of image to be generated.
+     * @param token                  cancellation token of this job.
+     * @param pipeline               pipeline processing this job.
+     */
+    ThumbnailJob(final File inputImageFile,
+                 final ImageOrientation inputOrientation,
+                 final File generatedThumbnailFile,
+                 final int width, final int height,
+                 final ThumbnailFormat format, final CancellationToken token,
+                 final ThumbnailPipeline pipeline) {
+        mInputImageFile = inputImageFile;
+        mInputOrientation = inputOrientation;
+        mGeneratedThumbnailFile = generatedThumbnailFile;
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        mToken = token;
+        mPipeline = pipeline;
+
+        if (token != null) {
+            // cancelling the token also cancels this job
+            mTokenListener = new Runnable() {
+                @Override
+                public void run() {
+                    cancel(true);
+                }
+            };
+            token.addListener(mTokenListener);
+        } else {
+            mTokenListener = null;
+        }
+    }
+
+    /**
+     * Returns input image file.
+     *
+     * @return input image file.
+     */
+    public File getInputImageFile() {
+        return mInputImageFile;
+    }
+
+    /**
+     * Returns input image orientation, if provided.
+     *
+     * @return input image orientation or null.
+     */
+    public ImageOrientation getInputOrientation() {
+        return mInputOrientation;
+    }
+
+    /**
+     * Returns file where generated thumbnail will be stored.
+     *
+     * @return file where generated thumbnail will be stored.
+     */
+    public File getGeneratedThumbnailFile() {
+        return mGeneratedThumbnailFile;
+    }
+
+    /**
+     * Returns width (in pixels) of thumbnail to be generated.
+     *
+     * @return width of thumbnail to be generated.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns height (in pixels) of thumbnail to be generated.
+     *
+     * @return height of thumbnail to be generated.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Returns format of image to be generated.
+     *
+     * @return format of image to be generated.
+     */
+    public ThumbnailFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Returns error that caused this job to fail, if any.
+     *
+     * @return error that caused this job to fail or null.
+     */
+    public Throwable getError() {
+        return mError;
+    }
+
+    /**
+     * Returns cancellation token of this job.
+     *
+     * @return cancellation token of this job.
+     */
+    public CancellationToken getToken() {
+        return mToken;
+    }
+
+    /**
+     * Cancels this job.
+     * If the job is still queued, it is abandoned immediately and removed from
+     * the pipeline. If it is being processed, processing stops at the next
+     * strip or row boundary of the image being decoded or resampled.
+     * In any case, threads waiting for this job are released immediately.
+     *
+     * @param mayInterruptIfRunning ignored, jobs being processed are always
+     *                              cooperatively stopped.
+     * @return true if job was cancelled, false if it had already finished.
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        if (!finish(new CancellationException())) {
+            return false;
+        }
+
+        // stop any stage processing this job
+        mToken.cancel();
+        return true;
+    }
+
+    /**
+     * Indicates whether this job has been cancelled.
+     *
+     * @return true if job has been cancelled, false otherwise.
+     */
+    @Override
+    public boolean isCancelled() {
+        return mError instanceof CancellationException;
+    }
+
+    /**
+     * Indicates whether this job has finished, either successfully or due to
+     * an error.
+     *
+     * @return true if job has finished, false otherwise.
+     */
+    @Override
+    public boolean isDone() {
+        return mDoneLatch.getCount() == 0;
+    }
+
+    /**
+     * Waits until thumbnail has been generated.
+     *
+     * @return file where generated thumbnail has been stored.
+     * @throws InterruptedException  if thread is interrupted while waiting.
+     * @throws ExecutionException    if thumbnail generation failed.
+     * @throws CancellationException if job was cancelled.
+     */
+    @Override
+    public File get() throws InterruptedException, ExecutionException {
+        mDoneLatch.await();
+        return getResult();
+    }
+
+    /**
+     * Waits at most provided amount of time until thumbnail has been
+     * generated.
+     *
+     * @param timeout maximum time to wait.
+     * @param unit    time unit of timeout.
+     * @return file where generated thumbnail has been stored.
+     * @throws InterruptedException  if thread is interrupted while waiting.
+     * @throws ExecutionException    if thumbnail generation failed.
+     * @throws TimeoutException      if wait timed out.
+     * @throws CancellationException if job was cancelled.
+     */
+    @Override
+    public File get(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!mDoneLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    /**
+     * Returns encoded input image data.
+     *
+     * @return encoded input image data.
+     */
+    byte[] getInputData() {
+        return mInputData;
+    }
+
+    /**
+     * Sets encoded input image data.
+     *
+     * @param inputData encoded input image data.
+     */
+    void setInputData(final byte[] inputData) {
+        mInputData = inputData;
+    }
+
+    /**
+     * Returns decoded input image.
+     *
+     * @return decoded input image.
+     */
+    BufferedImage getInputImage() {
+        return mInputImage;
+    }
+
+    /**
+     * Sets decoded input image.
+     *
+     * @param inputImage decoded input image.
+     */
+    void setInputImage(final BufferedImage inputImage) {
+        mInputImage = inputImage;
+    }
+
+    /**
+     * Returns scaled and rotated thumbnail image.
+     *
+     * @return thumbnail image.
+     */
+    BufferedImage getThumbnailImage() {
+        return mThumbnailImage;
+    }
+
+    /**
+     * Sets scaled and rotated thumbnail image.
+     *
+     * @param thumbnailImage thumbnail image.
+     */
+    void setThumbnailImage(final BufferedImage thumbnailImage) {
+        mThumbnailImage = thumbnailImage;
+    }
+
+    /**
+     * Returns encoded thumbnail data.
+     *
+     * @return encoded thumbnail data.
+     */
+    byte[] getThumbnailData() {
+        return mThumbnailData;
+    }
+
+    /**
+     * Sets encoded thumbnail data.
+     *
+     * @param thumbnailData encoded thumbnail data.
+     */
+    void setThumbnailData(final byte[] thumbnailData) {
+        mThumbnailData = thumbnailData;
+    }
+
+    /**
+     * Sets task expiring this job once the deadline of its token elapses, so
+     * that it can be cancelled if the job finishes earlier.
+     *
+     * @param expiration task expiring this job.
+     */
+    void setExpiration(final ScheduledFuture<?> expiration) {
+        mExpiration = expiration;
+        if (isDone()) {
+            // job finished before its expiration was set
+            expiration.cancel(false);
+        }
+    }
+
+    /**
+     * Marks this job as failed because the deadline of its token elapsed,
+     * unless it had already finished.
+     */
+    void expire() {
+        finish(new TimeoutException());
+    }
+
+    /**
+     * Detaches this job from its token and expiration when the pipeline does
+     * not accept it, so that it is never finished nor accounted for.
+     */
+    void reject() {
+        if (mToken != null) {
+            mToken.removeListener(mTokenListener);
+        }
+        final ScheduledFuture<?> expiration = mExpiration;
+        if (expiration != null) {
+            expiration.cancel(false);
+        }
+    }
+
+    /**
+     * Marks this job as successfully finished.
+     */
+    void complete() {
+        finish(null);
+    }
+
+    /**
+     * Marks this job as failed.
+     *
+     * @param error error that caused this job to fail.
+     */
+    void fail(final Throwable error) {
+        finish(error);
+    }
+
+    /**
+     * Finishes this job unless it had already finished.
+     *
+     * @param error error that caused this job to fail or null if it
+     *              succeeded.
+     * @return true if job has been finished, false if it had already finished.
+     */
+    private boolean finish(final Throwable error) {
+        if (!mFinished.compareAndSet(false, true)) {
+            return false;
+        }
+
+        mError = error;
+        final ScheduledFuture<?> expiration = mExpiration;
+        if (expiration != null) {
+            expiration.cancel(false);
+        }
+        // update pipeline counters before waiting threads are released
+        if (mPipeline != null) {
+            mPipeline.onJobFinished(this, error);
+        }
+        mDoneLatch.countDown();
+        return true;
+    }
+
+    /**
+     * Releases any intermediate data so that it can be garbage collected as
+     * soon as possible.
+     * This method must only be called by the thread owning this job once it
+     * has finished, since stage workers might still be using its data
+     * otherwise.
+     */
+    void releaseData() {
+        mInputData = null;
+        mInputImage = null;
+        mThumbnailImage = null;
+        mThumbnailData = null;
+    }
+
+    /**
+     * Returns result of a finished job.
+     *
+     * @return file where generated thumbnail has been stored.
+     * @throws ExecutionException if thumbnail generation failed.
+     */
+    private File getResult() throws ExecutionException {
+        final Throwable error = mError;
+        if (error instanceof CancellationException) {
+            throw (CancellationException) error;
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return mGeneratedThumbnailFile;
+    }
+}
@@ -0,0 +1,831 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates thumbnails using a pipeline of independent stages that read,
+ * decode, scale, encode and write images.
+ * Each stage has its own pool of threads and stages are connected by bounded
+ * queues, so that I/O bound stages (read and write) and CPU bound stages
+ * (decode, scale and encode) can run at the same time on different images.
+ * When a stage is slower than the previous one, its input queue becomes full
+ * and the previous stage blocks until there is room again (backpressure), so
+ * that the number of images held in memory is always bounded and throughput
+ * approaches the one of the slowest stage.
+ * Jobs can be cancelled or given a deadline. Cancelled jobs are removed from
+ * the pipeline immediately, and jobs being decoded or scaled stop at the next
+ * strip or row boundary.
+ * Notice that, like ThumbnailCreator, this class can only generate thumbnails
+ * having a size smaller or equal than input image.
+ */
+public class ThumbnailPipeline implements Closeable {
+
+    /**
+     * Default number of threads used by I/O bound stages (read and write).
+     */
+    public static final int DEFAULT_IO_THREADS = 2;
+
+    /**
+     * Default number of threads used by CPU bound stages (decode, scale and
+     * encode).
+     */
+    public static final int DEFAULT_CPU_THREADS =
+            Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Default capacity of the queues connecting stages.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    /**
+     * Minimum number of threads of a stage.
+     */
+    public static final int MIN_THREADS = 1;
+
+    /**
+     * Minimum capacity of the queues connecting stages.
+     */
+    public static final int MIN_QUEUE_CAPACITY = 1;
+
+    /**
+     * Maximum time in nanoseconds a submitter waits for room in the pipeline
+     * before checking again whether its job has been cancelled or the pipeline
+     * has been closed.
+     */
+    private static final long SUBMIT_POLL_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Job used to notify stage workers that they must finish.
+     */
+    private static final ThumbnailJob POISON = new ThumbnailJob(null, null,
+            null, 0, 0, null, null, null);
+
+    /**
+     * Stage in charge of reading input image files.
+     */
+    private final Stage mReadStage;
+
+    /**
+     * Stage in charge of decoding input images.
+     */
+    private final Stage mDecodeStage;
+
+    /**
+     * Stage in charge of scaling and rotating decoded images.
+     */
+    private final Stage mScaleStage;
+
+    /**
+     * Stage in charge of encoding thumbnails.
+     */
+    private final Stage mEncodeStage;
+
+    /**
+     * Stage in charge of writing thumbnail files.
+     */
+    private final Stage mWriteStage;
+
+    /**
+     * Timer expiring jobs once their deadline elapses, so that they are
+     * removed from any queue even if no stage worker takes them.
+     */
+    private final ScheduledThreadPoolExecutor mTimer;
+
+    /**
+     * Number of jobs that finished successfully.
+     */
+    private final AtomicLong mCompletedCount = new AtomicLong();
+
+    /**
+     * Number of jobs that failed.
+     */
+    private final AtomicLong mFailedCount = new AtomicLong();
+
+    /**
+     * Number of jobs that have been cancelled.
+     */
+    private final AtomicLong mCancelledCount = new AtomicLong();
+
+    /**
+     * Number of jobs whose deadline elapsed.
+     */
+    private final AtomicLong mTimedOutCount = new AtomicLong();
+
+    /**
+     * Indicates whether this pipeline has been closed.
+     */
+    private volatile boolean mClosed;
+
+    /**
+     * Constructor using default number of threads and queue capacity.
+     */
+    public ThumbnailPipeline() {
+        this(DEFAULT_IO_THREADS, DEFAULT_CPU_THREADS, DEFAULT_CPU_THREADS,
+                DEFAULT_CPU_THREADS, DEFAULT_IO_THREADS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param readThreads   number of threads reading input files.
+     * @param decodeThreads number of threads decoding input images.
+     * @param scaleThreads  number of threads scaling and rotating images.
+     * @param encodeThreads number of threads encoding thumbnails.
+     * @param writeThreads  number of threads writing thumbnail files.
+     * @param queueCapacity capacity of the queues connecting stages. This
+     *                      value limits the number of images being held in
+     *                      memory between two consecutive stages.
+     * @throws IllegalArgumentException if any number of threads or queue
+     *                                  capacity is less than 1.
+     */
+    public ThumbnailPipeline(final int readThreads, final int decodeThreads,
+                             final int scaleThreads, final int encodeThreads,
+                             final int writeThreads, final int queueCapacity) {
+        if (readThreads < MIN_THREADS || decodeThreads < MIN_THREADS ||
+                scaleThreads < MIN_THREADS || encodeThreads < MIN_THREADS ||
+                writeThreads < MIN_THREADS ||
+                queueCapacity < MIN_QUEUE_CAPACITY) {
+            throw new IllegalArgumentException();
+        }
+
+        mTimer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r,
+                        "thumbnail-pipeline-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mTimer.setRemoveOnCancelPolicy(true);
+
+        mWriteStage = new Stage("write", writeThreads, queueCapacity, null) {
+            @Override
+            protected void process(final ThumbnailJob job) throws IOException {
+                try (final OutputStream stream = new FileOutputStream(
+                        job.getGeneratedThumbnailFile())) {
+                    stream.write(job.getThumbnailData());
+                }
+                job.setThumbnailData(null);
+            }
+        };
+        mEncodeStage = new Stage("encode", encodeThreads, queueCapacity,
+                mWriteStage) {
+            @Override
+            protected void process(final ThumbnailJob job) throws IOException {
+                job.setThumbnailData(ThumbnailRenderer.encode(
+                        job.getThumbnailImage(), job.getFormat()));
+                job.setThumbnailImage(null);
+            }
+        };
+        mScaleStage = new Stage("scale", scaleThreads, queueCapacity,
+                mEncodeStage) {
+            @Override
+            protected void process(final ThumbnailJob job)
+                    throws TimeoutException {
+                final ImageOrientation orientation = job.getInputOrientation();
+                final boolean exchangeSize =
+                        ThumbnailRenderer.isSizeExchanged(orientation);
+                final int type = ThumbnailRenderer.getBufferedImageType(
+                        job.getFormat());
+
+                final BufferedImage resizedImage = ThumbnailRenderer.scale(
+                        job.getInputImage(), job.getWidth(), job.getHeight(),
+                        exchangeSize, type, job.getToken());
+                job.setInputImage(null);
+                job.setThumbnailImage(ThumbnailRenderer.rotate(resizedImage,
+                        ThumbnailRenderer.getQuadrants(orientation),
+                        job.getWidth(), job.getHeight(), exchangeSize, type));
+            }
+        };
+        mDecodeStage = new Stage("decode", decodeThreads, queueCapacity,
+                mScaleStage) {
+            @Override
+            protected void process(final ThumbnailJob job) throws IOException,
+                    TimeoutException {
+                job.setInputImage(ThumbnailRenderer.decode(job.getInputData(),
+                        job.getToken()));
+                job.setInputData(null);
+            }
+        };
+        mReadStage = new Stage("read", readThreads, queueCapacity,
+                mDecodeStage) {
+            @Override
+            protected void process(final ThumbnailJob job) throws IOException {
+                job.setInputData(Files.readAllBytes(
+                        job.getInputImageFile().toPath()));
+            }
+        };
+
+        mWriteStage.start();
+        mEncodeStage.start();
+        mScaleStage.start();
+        mDecodeStage.start();
+        mReadStage.start();
+    }
+
+    /**
+     * Submits a request to generate a thumbnail of provided input file image
+     * and save it into generated thumbnail file.
+     * If the pipeline is saturated, this method blocks until the first stage
+     * has room for a new job.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be
+     *                               generated.
+     * @param height                 height (in pixels) of thumbnail to be
+     *                               generated.
+     * @param format                 format of image to be generated.
+     * @return submitted job, which can be used to wait for the thumbnail to be
+     * generated.
+     * @throws IllegalArgumentException if width or height is less than minimum
+     *                                  allowed image size (1 pixel) or if any
+     *                                  file or format is not provided.
+     * @throws IllegalStateException    if pipeline has already been closed.
+     * @throws InterruptedException     if thread is interrupted while waiting
+     *                                  for room in the pipeline.
+     */
+    public ThumbnailJob submit(final File inputImageFile,
+                               final ImageOrientation inputOrientation,
+                               final File generatedThumbnailFile,
+                               final int width, final int height,
+                               final ThumbnailFormat format)
+            throws InterruptedException {
+        return submit(inputImageFile, inputOrientation, generatedThumbnailFile,
+                width, height, format, new CancellationToken());
+    }
+
+    /**
+     * Submits a request to generate a thumbnail of provided input file image
+     * and save it into generated thumbnail file within provided amount of
+     * time.
+     * Time spent waiting in the queues of the pipeline is also taken into
+     * account. If the deadline elapses the job fails with a TimeoutException.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be
+     *                               generated.
+     * @param height                 height (in pixels) of thumbnail to be
+     *                               generated.
+     * @param format                 format of image to be generated.
+     * @param timeout                maximum amount of time to generate the
+     *                               thumbnail.
+     * @param unit                   time unit of timeout.
+     * @return submitted job, which can be used to wait for the thumbnail to be
+     * generated.
+     * @throws IllegalArgumentException if width or height is less than minimum
+     *                                  allowed image size (1 pixel), if any
+     *                                  file or format is not provided or if
+     *                                  timeout is negative.
+     * @throws IllegalStateException    if pipeline has already been closed.
+     * @throws InterruptedException     if thread is interrupted while waiting
+     *                                  for room in the pipeline.
+     */
+    public ThumbnailJob submit(final File inputImageFile,
+                               final ImageOrientation inputOrientation,
+                               final File generatedThumbnailFile,
+                               final int width, final int height,
+                               final ThumbnailFormat format, final long timeout,
+                               final TimeUnit unit)
+            throws InterruptedException {
+        return submit(inputImageFile, inputOrientation, generatedThumbnailFile,
+                width, height, format, new CancellationToken(timeout, unit));
+    }
+
+    /**
+     * Submits a request to generate a thumbnail of provided input file image
+     * and save it into generated thumbnail file, using provided cancellation
+     * token.
+     * Cancelling the token has the same effect as cancelling returned job.
+     * While the pipeline is full, this method waits for room without
+     * preventing other threads from submitting jobs or closing the pipeline.
+     * If the job is cancelled or its deadline elapses while waiting, the job
+     * is returned already finished.
+     *
+     * @param inputImageFile         input image file.
+     * @param inputOrientation       input image orientation (optional).
+     * @param generatedThumbnailFile file where generated thumbnail will be
+     *                               stored.
+     * @param width                  width (in pixels) of thumbnail to be
+     *                               generated.
+     * @param height                 height (in pixels) of thumbnail to be
+     *                               generated.
+     * @param format                 format of image to be generated.
+     * @param token                  cancellation token of the job.
+     * @return submitted job, which can be used to wait for the thumbnail to be
+     * generated.
+     * @throws IllegalArgumentException if width or height is less than minimum
+     *                                  allowed image size (1 pixel) or if any
+     *                                  file, format or token is not provided.
+     * @throws IllegalStateException    if pipeline has been closed before job
+     *                                  could be queued.
+     * @throws InterruptedException     if thread is interrupted while waiting
+     *                                  for room in the pipeline.
+     */
+    public ThumbnailJob submit(final File inputImageFile,
+                               final ImageOrientation inputOrientation,
+                               final File generatedThumbnailFile,
+                               final int width, final int height,
+                               final ThumbnailFormat format,
+                               final CancellationToken token)
+            throws InterruptedException {
+        if (width <= ThumbnailCreator.MIN_SIZE ||
+                height <= ThumbnailCreator.MIN_SIZE || inputImageFile == null ||
+                generatedThumbnailFile == null || format == null ||
+                token == null) {
+            throw new IllegalArgumentException();
+        }
+
+        if (mClosed) {
+            throw new IllegalStateException();
+        }
+
+        final ThumbnailJob job = new ThumbnailJob(inputImageFile,
+                inputOrientation, generatedThumbnailFile, width, height,
+                format, token, this);
+        boolean queued = false;
+        try {
+            while (!queued) {
+                if (job.isDone()) {
+                    // job was cancelled while waiting for room
+                    return job;
+                }
+                if (mClosed) {
+                    throw new IllegalStateException();
+                }
+                long wait = SUBMIT_POLL_NANOS;
+                if (token.hasDeadline()) {
+                    final long remaining = token.getRemainingNanos();
+                    if (remaining <= 0) {
+                        // deadline elapsed while waiting for room
+                        job.expire();
+                        return job;
+                    }
+                    wait = Math.min(wait, remaining);
+                }
+                queued = mReadStage.offer(job, wait);
+            }
+        } finally {
+            if (!queued && !job.isDone()) {
+                job.reject();
+            }
+        }
+
+        synchronized (this) {
+            if (mClosed && mReadStage.remove(job)) {
+                // pipeline was closed while job was being queued, hence job
+                // might be behind the marker stopping read workers
+                job.reject();
+                throw new IllegalStateException();
+            }
+            if (!mClosed && token.hasDeadline()) {
+                job.setExpiration(mTimer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        job.expire();
+                    }
+                }, token.getRemainingNanos(), TimeUnit.NANOSECONDS));
+            }
+        }
+        if (job.isDone()) {
+            // job finished while it was being queued
+            removeFromQueues(job);
+        }
+        return job;
+    }
+
+    /**
+     * Returns number of jobs that finished successfully.
+     *
+     * @return number of completed jobs.
+     */
+    public long getCompletedCount() {
+        return mCompletedCount.get();
+    }
+
+    /**
+     * Returns number of jobs that failed due to an error other than
+     * cancellation or timeout.
+     *
+     * @return number of failed jobs.
+     */
+    public long getFailedCount() {
+        return mFailedCount.get();
+    }
+
+    /**
+     * Returns number of jobs that have been cancelled.
+     *
+     * @return number of cancelled jobs.
+     */
+    public long getCancelledCount() {
+        return mCancelledCount.get();
+    }
+
+    /**
+     * Returns number of jobs whose deadline elapsed before they finished.
+     *
+     * @return number of timed out jobs.
+     */
+    public long getTimedOutCount() {
+        return mTimedOutCount.get();
+    }
+
+    /**
+     * Indicates whether this pipeline has been closed.
+     *
+     * @return true if pipeline has been closed, false otherwise.
+     */
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Returns number of jobs waiting to be read.
+     *
+     * @return number of jobs waiting to be read.
+     */
+    public int getReadQueueSize() {
+        return mReadStage.getQueueSize();
+    }
+
+    /**
+     * Returns number of read jobs waiting to be decoded.
+     *
+     * @return number of jobs waiting to be decoded.
+     */
+    public int getDecodeQueueSize() {
+        return mDecodeStage.getQueueSize();
+    }
+
+    /**
+     * Returns number of decoded jobs waiting to be scaled.
+     *
+     * @return number of jobs waiting to be scaled.
+     */
+    public int getScaleQueueSize() {
+        return mScaleStage.getQueueSize();
+    }
+
+    /**
+     * Returns number of scaled jobs waiting to be encoded.
+     *
+     * @return number of jobs waiting to be encoded.
+     */
+    public int getEncodeQueueSize() {
+        return mEncodeStage.getQueueSize();
+    }
+
+    /**
+     * Returns number of encoded jobs waiting to be written.
+     *
+     * @return number of jobs waiting to be written.
+     */
+    public int getWriteQueueSize() {
+        return mWriteStage.getQueueSize();
+    }
+
+    /**
+     * Closes this pipeline.
+     * No more jobs can be submitted once the pipeline is closed, but jobs that
+     * were already submitted will still be processed.
+     *
+     * @throws IOException if thread is interrupted while closing.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            // jobs already submitted still expire once their deadline elapses
+            mTimer.shutdown();
+        }
+
+        try {
+            mReadStage.stop();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Waits until all submitted jobs have been processed after closing this
+     * pipeline.
+     *
+     * @param timeout maximum time to wait.
+     * @param unit    time unit of timeout.
+     * @return true if all stages finished, false if timeout elapsed.
+     * @throws InterruptedException if thread is interrupted while waiting.
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (final Stage stage : new Stage[]{mReadStage, mDecodeStage,
+                mScaleStage, mEncodeStage, mWriteStage}) {
+            if (!stage.awaitTermination(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called when a job finishes to update counters and, if the job has been
+     * cancelled or its deadline elapsed, to remove it from any queue so that
+     * it is abandoned immediately.
+     *
+     * @param job   job that finished.
+     * @param error error that caused the job to fail or null if it succeeded.
+     */
+    void onJobFinished(final ThumbnailJob job, final Throwable error) {
+        if (error == null) {
+            mCompletedCount.incrementAndGet();
+        } else if (error instanceof CancellationException) {
+            mCancelledCount.incrementAndGet();
+            removeFromQueues(job);
+        } else if (error instanceof TimeoutException) {
+            mTimedOutCount.incrementAndGet();
+            removeFromQueues(job);
+        } else {
+            mFailedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes a finished job from the queue where it is waiting, if any, and
+     * releases its data, since no stage worker will take it anymore.
+     *
+     * @param job a finished job.
+     */
+    private void removeFromQueues(final ThumbnailJob job) {
+        for (final Stage stage : new Stage[]{mReadStage, mDecodeStage,
+                mScaleStage, mEncodeStage, mWriteStage}) {
+            if (stage.remove(job)) {
+                job.releaseData();
+                break;
+            }
+        }
+    }
+
+    /**
+     * A stage of the pipeline.
+     * Each stage takes jobs from its input queue, processes them and puts them
+     * into the input queue of next stage.
+     */
+    private abstract static class Stage {
+
+        /**
+         * Name of the stage.
+         */
+        private final String mName;
+
+        /**
+         * Input queue of this stage.
+         */
+        private final BlockingQueue<ThumbnailJob> mQueue;
+
+        /**
+         * Next stage or null if this is the last one.
+         */
+        private final Stage mNext;
+
+        /**
+         * Worker threads of this stage.
+         */
+        private final List<Thread> mThreads;
+
+        /**
+         * Number of worker threads still running.
+         */
+        private final AtomicInteger mRunning;
+
+        /**
+         * Constructor.
+         *
+         * @param name          name of the stage.
+         * @param threads       number of worker threads.
+         * @param queueCapacity capacity of input queue.
+         * @param next          next stage or null if this is the last one.
+         */
+        Stage(final String name, final int threads, final int queueCapacity,
+              final Stage next) {
+            mName = name;
+            mQueue = new ArrayBlockingQueue<>(queueCapacity);
+            mNext = next;
+            mThreads = new ArrayList<>(threads);
+            mRunning = new AtomicInteger(threads);
+            for (int i = 0; i < threads; i++) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                }, "thumbnail-pipeline-" + name + "-" + (i + 1));
+                thread.setDaemon(true);
+                mThreads.add(thread);
+            }
+        }
+
+        /**
+         * Processes provided job.
+         *
+         * @param job job to be processed.
+         * @throws Exception if processing fails.
+         */
+        protected abstract void process(final ThumbnailJob job)
+                throws Exception;
+
+        /**
+         * Starts worker threads.
+         */
+        void start() {
+            for (final Thread thread : mThreads) {
+                thread.start();
+            }
+        }
+
+        /**
+         * Puts provided job into input queue of this stage, blocking until
+         * there is room for it.
+         *
+         * @param job job to be queued.
+         * @throws InterruptedException if thread is interrupted while waiting.
+         */
+        void put(final ThumbnailJob job) throws InterruptedException {
+            mQueue.put(job);
+        }
+
+        /**
+         * Puts provided job into input queue of this stage, waiting up to
+         * provided time for room for it.
+         *
+         * @param job   job to be queued.
+         * @param nanos maximum time to wait expressed in nanoseconds.
+         * @return true if job was queued, false if time elapsed.
+         * @throws InterruptedException if thread is interrupted while waiting.
+         */
+        boolean offer(final ThumbnailJob job, final long nanos)
+                throws InterruptedException {
+            return mQueue.offer(job, nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Removes provided job from input queue of this stage.
+         *
+         * @param job job to be removed.
+         * @return true if job was queued in this stage, false otherwise.
+         */
+        boolean remove(final ThumbnailJob job) {
+            return mQueue.remove(job);
+        }
+
+        /**
+         * Returns number of jobs waiting in input queue.
+         *
+         * @return number of queued jobs.
+         */
+        int getQueueSize() {
+            return mQueue.size();
+        }
+
+        /**
+         * Requests worker threads to finish once queued jobs are processed.
+         *
+         * @throws InterruptedException if thread is interrupted while waiting.
+         */
+        void stop() throws InterruptedException {
+            for (int i = 0; i < mThreads.size(); i++) {
+                mQueue.put(POISON);
+            }
+        }
+
+        /**
+         * Waits until all worker threads have finished.
+         *
+         * @param deadline system time in nanoseconds when waiting must stop.
+         * @return true if all threads finished, false otherwise.
+         * @throws InterruptedException if thread is interrupted while waiting.
+         */
+        boolean awaitTermination(final long deadline)
+                throws InterruptedException {
+            for (final Thread thread : mThreads) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return !thread.isAlive();
+                }
+                TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+                if (thread.isAlive()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Main loop of worker threads.
+         */
+        private void work() {
+            try {
+                while (true) {
+                    final ThumbnailJob job = mQueue.take();
+                    if (job == POISON) {
+                        break;
+                    }
+                    if (job.isDone()) {
+                        // job was cancelled or expired while queued
+                        job.releaseData();
+                        continue;
+                    }
+
+                    try {
+                        job.getToken().check();
+                        process(job);
+                    } catch (final Throwable t) {
+                        job.fail(t);
+                        job.releaseData();
+                        continue;
+                    }
+                    if (job.isDone()) {
+                        // job was cancelled or expired while being processed
+                        job.releaseData();
+                        continue;
+                    }
+
+                    if (mNext != null) {
+                        try {
+                            mNext.put(job);
+                        } catch (final InterruptedException e) {
+                            job.fail(e);
+                            throw e;
+                        }
+                    } else {
+                        job.complete();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // last worker of this stage notifies next stage to finish
+                if (mRunning.decrementAndGet() == 0 && mNext != null) {
+                    try {
+                        mNext.stop();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns name of the stage.
+         *
+         * @return name of the stage.
+         */
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+/**
+ * Enumerator indicating priority classes of thumbnail generation requests.
+ * When there are more requests than allowed concurrent threads, waiting
+ * requests are granted in proportion to the weight of their class, so that
+ * interactive requests go ahead of queued batch requests without starving them.
+ */
+public enum ThumbnailPriority {
+    /**
+     * Requests of a user waiting for the result.
+     */
+    INTERACTIVE(16),
+
+    /**
+     * Regular requests.
+     */
+    NORMAL(4),
+
+    /**
+     * Bulk or backfill requests.
+     */
+    BATCH(1);
+
+    /**
+     * Relative share of slots granted to this class when all classes have
+     * waiting requests.
+     */
+    private final int mWeight;
+
+    /**
+     * Constructor.
+     *
+     * @param weight relative share of slots granted to this class.
+     */
+    ThumbnailPriority(final int weight) {
+        mWeight = weight;
+    }
+
+    /**
+     * Returns relative share of slots granted to this class when all classes
+     * have waiting requests.
+     *
+     * @return weight of this class.
+     */
+    public int getWeight() {
+        return mWeight;
+    }
+}
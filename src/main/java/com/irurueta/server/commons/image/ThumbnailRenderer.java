@@ -0,0 +1,1306 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Contains the individual steps required to generate a thumbnail (decoding,
+ * scaling, rotation and encoding), so that they can be run either one after
+ * the other by a ThumbnailCreator or as independent stages by a
+ * ThumbnailPipeline.
+ * When a ThumbnailBufferPool is provided, images, buffers and codecs of the
+ * pool of current thread are reused, so that generating thumbnails barely
+ * allocates memory once the pool has warmed up.
+ * Large decoded images can also be stored off-heap, so that only small
+ * thumbnails are kept on the heap.
+ */
+final class ThumbnailRenderer {
+
+    /**
+     * Image rows are read as packed ARGB pixels.
+     */
+    private static final int ROW_INT = 0;
+
+    /**
+     * Image rows are read as red, green and blue bytes.
+     */
+    private static final int ROW_RGB_BYTES = 1;
+
+    /**
+     * Image rows are read as red, green, blue and alpha bytes.
+     */
+    private static final int ROW_RGBA_BYTES = 2;
+
+    /**
+     * Image rows are read as bytes converted using a lookup table.
+     */
+    private static final int ROW_LOOKUP_BYTES = 3;
+
+    /**
+     * Image rows are converted by the color model of the image.
+     */
+    private static final int ROW_GENERIC = 4;
+
+    /**
+     * Number of bytes read from the start of encoded images to detect their
+     * format.
+     */
+    private static final int SIGNATURE_LENGTH = 4;
+
+    /**
+     * Type of images storing red, green and blue bytes of each pixel in
+     * order.
+     */
+    private static final ImageTypeSpecifier RGB_INTERLEAVED =
+            ImageTypeSpecifier.createInterleaved(
+                    ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                    new int[]{0, 1, 2}, DataBuffer.TYPE_BYTE, false, false);
+
+    /**
+     * Class names of readers known to write decoded pixels through the raster
+     * of their destination, so that they can decode images stored off-heap.
+     * Other readers (such as BMP or GIF readers) access the arrays of heap
+     * data buffers directly.
+     */
+    private static final Set<String> OFF_HEAP_READERS =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+                    "com.sun.imageio.plugins.jpeg.JPEGImageReader",
+                    "com.sun.imageio.plugins.png.PNGImageReader")));
+
+    /**
+     * Constructor.
+     * Prevents instantiation of utility class.
+     */
+    private ThumbnailRenderer() {
+    }
+
+    /**
+     * Indicates whether width and height must be exchanged for provided input
+     * orientation.
+     *
+     * @param inputOrientation input image orientation (optional).
+     * @return true if width and height must be exchanged, false otherwise.
+     */
+    static boolean isSizeExchanged(final ImageOrientation inputOrientation) {
+        return inputOrientation == ImageOrientation.LEFT_BOTTOM ||
+                inputOrientation == ImageOrientation.RIGHT_TOP;
+    }
+
+    /**
+     * Returns number of quadrants that a scaled image must be rotated to take
+     * into account provided input orientation.
+     * Only orientations 3, 6 and 8 are taken into account, other orientations
+     * are ignored.
+     *
+     * @param inputOrientation input image orientation (optional).
+     * @return number of quadrants to rotate.
+     */
+    static int getQuadrants(final ImageOrientation inputOrientation) {
+        if (inputOrientation == null) {
+            // default (orientation == 1)
+            return 0;
+        }
+
+        switch (inputOrientation) {
+            case LEFT_BOTTOM:
+                // orientation == 8 (counterclockwise 90º)
+                return -1;
+            case BOTTOM_RIGHT:
+                // orientation == 3 (clockwise 180º)
+                return -2;
+            case RIGHT_TOP:
+                // orientation == 6 (clockwise 90º)
+                return -3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns type of buffered image to be used for provided output format.
+     *
+     * @param format format of image to be generated.
+     * @return type of buffered image.
+     */
+    static int getBufferedImageType(final ThumbnailFormat format) {
+        return format == ThumbnailFormat.PNG ? BufferedImage.TYPE_INT_ARGB :
+                BufferedImage.TYPE_INT_RGB;
+    }
+
+    /**
+     * Detects format of an encoded image from the signature at the start of
+     * its data.
+     *
+     * @param data encoded image data.
+     * @return detected format or UNKNOWN if not supported.
+     */
+    static ImageFormat getImageFormat(final byte[] data) {
+        return getImageFormat(data, data.length);
+    }
+
+    /**
+     * Detects format of an encoded image from the signature at the start of
+     * its data.
+     *
+     * @param data   encoded image data.
+     * @param length number of valid bytes in data.
+     * @return detected format or UNKNOWN if not supported.
+     */
+    static ImageFormat getImageFormat(final byte[] data, final int length) {
+        if (startsWith(data, length, 0xFF, 0xD8, 0xFF)) {
+            return ImageFormat.JPEG;
+        } else if (startsWith(data, length, 0x89, 'P', 'N', 'G')) {
+            return ImageFormat.PNG;
+        } else if (startsWith(data, length, 'G', 'I', 'F', '8')) {
+            return ImageFormat.GIF;
+        } else if (startsWith(data, length, 'B', 'M')) {
+            return ImageFormat.BMP;
+        } else {
+            return ImageFormat.UNKNOWN;
+        }
+    }
+
+    /**
+     * Detects format of an encoded image from the signature at the start of
+     * provided stream, which is left at its current position.
+     *
+     * @param stream stream containing encoded image data.
+     * @return detected format or UNKNOWN if not supported.
+     * @throws IOException if an I/O error occurs.
+     */
+    static ImageFormat getImageFormat(final ImageInputStream stream)
+            throws IOException {
+        final byte[] signature = new byte[SIGNATURE_LENGTH];
+        int length = 0;
+        stream.mark();
+        try {
+            while (length < signature.length) {
+                final int n = stream.read(signature, length,
+                        signature.length - length);
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+            }
+        } finally {
+            stream.reset();
+        }
+        return getImageFormat(signature, length);
+    }
+
+    /**
+     * Indicates whether provided data starts with provided signature.
+     *
+     * @param data      encoded image data.
+     * @param length    number of valid bytes in data.
+     * @param signature expected unsigned values of first bytes.
+     * @return true if data starts with signature, false otherwise.
+     */
+    private static boolean startsWith(final byte[] data, final int length,
+                                      final int... signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((data[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes an image contained in provided array of bytes.
+     * If a cancellation token is provided, decoding is aborted at the next
+     * strip or row boundary once the token is cancelled or expires.
+     *
+     * @param data  encoded image data.
+     * @param token cancellation token (optional).
+     * @return decoded image.
+     * @throws IOException      if data cannot be decoded.
+     * @throws TimeoutException if deadline of token elapsed while decoding.
+     */
+    static BufferedImage decode(final byte[] data,
+                                final CancellationToken token)
+            throws IOException, TimeoutException {
+        return decode(ByteBuffer.wrap(data), token, null);
+    }
+
+    /**
+     * Decodes an image contained in provided buffer.
+     * If a cancellation token is provided, decoding is aborted at the next
+     * strip or row boundary once the token is cancelled or expires.
+     * If a pool is provided, the cached reader of the image format is used,
+     * and the image is decoded into an idle image of the pool whenever
+     * possible. Such image must be released into the pool once no longer
+     * needed.
+     *
+     * @param data  buffer backed by an array containing encoded image data
+     *              from position zero up to its limit.
+     * @param token cancellation token (optional).
+     * @param pool  pool of current thread (optional).
+     * @return decoded image.
+     * @throws IOException      if data cannot be decoded.
+     * @throws TimeoutException if deadline of token elapsed while decoding.
+     */
+    static BufferedImage decode(final ByteBuffer data,
+                                final CancellationToken token,
+                                final ThumbnailBufferPool pool)
+            throws IOException, TimeoutException {
+        return decode(data, token, pool, false);
+    }
+
+    /**
+     * Decodes an image contained in provided buffer.
+     * If a cancellation token is provided, decoding is aborted at the next
+     * strip or row boundary once the token is cancelled or expires.
+     * If a pool is provided, the cached reader of the image format is used,
+     * and the image is decoded into an idle image of the pool whenever
+     * possible. Such image must be released into the pool once no longer
+     * needed.
+     * If off-heap decoding is requested, images supported by readers that
+     * write decoded pixels through the raster of their destination (JPEG and
+     * PNG readers of the JDK storing a byte per sample) are decoded into an
+     * image stored off-heap, whose memory must be freed using release once no
+     * longer needed. Otherwise, the image is decoded on the heap.
+     *
+     * @param data    buffer backed by an array containing encoded image data
+     *                from position zero up to its limit.
+     * @param token   cancellation token (optional).
+     * @param pool    pool of current thread (optional).
+     * @param offHeap true to decode image off-heap whenever possible.
+     * @return decoded image.
+     * @throws IOException      if data cannot be decoded.
+     * @throws TimeoutException if deadline of token elapsed while decoding.
+     * @throws OutOfMemoryError if the limit of direct memory
+     *                          (-XX:MaxDirectMemorySize) is exceeded.
+     */
+    static BufferedImage decode(final ByteBuffer data,
+                                final CancellationToken token,
+                                final ThumbnailBufferPool pool,
+                                final boolean offHeap)
+            throws IOException, TimeoutException {
+        try (ImageInputStream stream = new ByteArrayImageInputStream(
+                data.array(), data.limit())) {
+            return decode(stream, token, pool, offHeap);
+        }
+    }
+
+    /**
+     * Decodes an image read from provided stream, which is not closed.
+     * If a cancellation token is provided, decoding is aborted at the next
+     * strip or row boundary once the token is cancelled or expires.
+     * If a pool is provided, the cached reader of the image format is used,
+     * and the image is decoded into an idle image of the pool whenever
+     * possible. Such image must be released into the pool once no longer
+     * needed.
+     * If off-heap decoding is requested, images supported by readers that
+     * write decoded pixels through the raster of their destination (JPEG and
+     * PNG readers of the JDK storing a byte per sample) are decoded into an
+     * image stored off-heap, whose memory must be freed using release once no
+     * longer needed. Otherwise, the image is decoded on the heap.
+     *
+     * @param stream  stream containing encoded image data.
+     * @param token   cancellation token (optional).
+     * @param pool    pool of current thread (optional).
+     * @param offHeap true to decode image off-heap whenever possible.
+     * @return decoded image.
+     * @throws IOException      if data cannot be decoded.
+     * @throws TimeoutException if deadline of token elapsed while decoding.
+     * @throws OutOfMemoryError if the limit of direct memory
+     *                          (-XX:MaxDirectMemorySize) is exceeded.
+     */
+    static BufferedImage decode(final ImageInputStream stream,
+                                final CancellationToken token,
+                                final ThumbnailBufferPool pool,
+                                final boolean offHeap)
+            throws IOException, TimeoutException {
+        final ImageFormat format = getImageFormat(stream);
+        javax.imageio.ImageReader reader = pool != null ?
+                pool.getReader(format) : null;
+        final boolean pooledReader = reader != null;
+        BufferedImage image = null;
+        if (reader == null) {
+            final Iterator<javax.imageio.ImageReader> readers =
+                    ImageIO.getImageReaders(stream);
+            if (readers.hasNext()) {
+                reader = readers.next();
+            }
+        }
+        if (reader != null) {
+            BufferedImage destination = null;
+            try {
+                reader.setInput(stream, true, true);
+                if (token != null) {
+                    reader.addIIOReadProgressListener(
+                            new AbortReadListener(token));
+                }
+                final ImageReadParam param = reader.getDefaultReadParam();
+                if (pool != null || offHeap) {
+                    destination = createDestination(reader, format, pool,
+                            offHeap);
+                    param.setDestination(destination);
+                }
+                image = reader.read(0, param);
+            } catch (final IOException | RuntimeException e) {
+                release(destination, pool);
+                throw e;
+            } finally {
+                if (pooledReader) {
+                    // keep reader without any reference to decoded data
+                    reader.reset();
+                } else {
+                    reader.dispose();
+                }
+            }
+        }
+
+        if (token != null && token.isStopRequested()) {
+            release(image, pool);
+            token.check();
+        }
+        if (image == null) {
+            throw new IOException();
+        }
+        return image;
+    }
+
+    /**
+     * Releases an image obtained from any of the methods of this class.
+     * Memory of images stored off-heap is freed, and images of the pool are
+     * returned to it so that they can be reused. Released images must no
+     * longer be used.
+     *
+     * @param image image to be released (optional).
+     * @param pool  pool of current thread (optional).
+     */
+    static void release(final BufferedImage image,
+                        final ThumbnailBufferPool pool) {
+        if (image != null && !DirectDataBuffer.release(image) &&
+                pool != null) {
+            pool.releaseImage(image);
+        }
+    }
+
+    /**
+     * Scales provided input image so that once rotated (if needed) it has
+     * provided width and height.
+     * Pixels are averaged over the area of the input image covered by each
+     * pixel of the scaled image, like Image.SCALE_AREA_AVERAGING does.
+     *
+     * @param inputImage   decoded input image.
+     * @param width        width (in pixels) of thumbnail to be generated.
+     * @param height       height (in pixels) of thumbnail to be generated.
+     * @param exchangeSize true if width and height must be exchanged.
+     * @param type         type of buffered image to be generated.
+     * @param token        cancellation token (optional). If provided,
+     *                     scaling stops at the next row boundary once the
+     *                     token is cancelled or expires.
+     * @return scaled image.
+     * @throws IllegalArgumentException if width or height is greater than
+     *                                  actual image size.
+     * @throws TimeoutException         if deadline of token elapsed while
+     *                                  scaling.
+     */
+    static BufferedImage scale(final BufferedImage inputImage, final int width,
+                               final int height, final boolean exchangeSize,
+                               final int type, final CancellationToken token)
+            throws TimeoutException {
+        return scale(inputImage, width, height, exchangeSize, type, token,
+                null);
+    }
+
+    /**
+     * Scales provided input image so that once rotated (if needed) it has
+     * provided width and height.
+     * Pixels are averaged over the area of the input image covered by each
+     * pixel of the scaled image, like Image.SCALE_AREA_AVERAGING does.
+     * If a pool is provided, the scaled image and any intermediate buffers
+     * are obtained from it, and the scaled image must be released into the
+     * pool once no longer needed.
+     *
+     * @param inputImage   decoded input image.
+     * @param width        width (in pixels) of thumbnail to be generated.
+     * @param height       height (in pixels) of thumbnail to be generated.
+     * @param exchangeSize true if width and height must be exchanged.
+     * @param type         type of buffered image to be generated, either
+     *                     BufferedImage.TYPE_INT_RGB or
+     *                     BufferedImage.TYPE_INT_ARGB.
+     * @param token        cancellation token (optional). If provided,
+     *                     scaling stops at the next row boundary once the
+     *                     token is cancelled or expires.
+     * @param pool         pool of current thread (optional).
+     * @return scaled image.
+     * @throws IllegalArgumentException if width or height is greater than
+     *                                  actual image size.
+     * @throws TimeoutException         if deadline of token elapsed while
+     *                                  scaling.
+     */
+    @SuppressWarnings("SuspiciousNameCombination")
+    static BufferedImage scale(final BufferedImage inputImage, final int width,
+                               final int height, final boolean exchangeSize,
+                               final int type, final CancellationToken token,
+                               final ThumbnailBufferPool pool)
+            throws TimeoutException {
+        final int scaledWidth = exchangeSize ? height : width;
+        final int scaledHeight = exchangeSize ? width : height;
+        if (scaledWidth > inputImage.getWidth() ||
+                scaledHeight > inputImage.getHeight()) {
+            throw new IllegalArgumentException();
+        }
+
+        final BufferedImage resizedImage = pool != null ?
+                pool.acquireImage(scaledWidth, scaledHeight, type) :
+                new BufferedImage(scaledWidth, scaledHeight, type);
+        try {
+            resample(inputImage, resizedImage, token, pool);
+        } catch (final TimeoutException | RuntimeException e) {
+            if (pool != null) {
+                pool.releaseImage(resizedImage);
+            }
+            throw e;
+        }
+        return resizedImage;
+    }
+
+    /**
+     * Rotates provided scaled image by provided number of quadrants.
+     *
+     * @param resizedImage scaled image.
+     * @param quadrants    number of quadrants to rotate.
+     * @param width        width (in pixels) of thumbnail to be generated.
+     * @param height       height (in pixels) of thumbnail to be generated.
+     * @param exchangeSize true if width and height must be exchanged.
+     * @param type         type of buffered image to be generated.
+     * @return rotated image, or provided image if no rotation is needed.
+     */
+    static BufferedImage rotate(final BufferedImage resizedImage,
+                                final int quadrants, final int width,
+                                final int height, final boolean exchangeSize,
+                                final int type) {
+        return rotate(resizedImage, quadrants, width, height, exchangeSize,
+                type, null);
+    }
+
+    /**
+     * Rotates provided scaled image by provided number of quadrants.
+     * Pixels are copied into their rotated position, hence no interpolation
+     * takes place.
+     * If a pool is provided, the rotated image is obtained from it and must be
+     * released into the pool once no longer needed.
+     *
+     * @param resizedImage scaled image.
+     * @param quadrants    number of quadrants to rotate.
+     * @param width        width (in pixels) of thumbnail to be generated.
+     * @param height       height (in pixels) of thumbnail to be generated.
+     * @param exchangeSize true if width and height must be exchanged.
+     * @param type         type of buffered image to be generated, either
+     *                     BufferedImage.TYPE_INT_RGB or
+     *                     BufferedImage.TYPE_INT_ARGB.
+     * @param pool         pool of current thread (optional).
+     * @return rotated image, or provided image if no rotation is needed.
+     * @throws IllegalArgumentException if size of scaled image does not match
+     *                                  provided width and height.
+     */
+    @SuppressWarnings("SuspiciousNameCombination")
+    static BufferedImage rotate(final BufferedImage resizedImage,
+                                final int quadrants, final int width,
+                                final int height, final boolean exchangeSize,
+                                final int type,
+                                final ThumbnailBufferPool pool) {
+        if (quadrants == 0) {
+            return resizedImage;
+        }
+
+        final int resizedWidth = resizedImage.getWidth();
+        final int resizedHeight = resizedImage.getHeight();
+        if (resizedWidth != (exchangeSize ? height : width) ||
+                resizedHeight != (exchangeSize ? width : height)) {
+            throw new IllegalArgumentException();
+        }
+
+        // instantiate image that will contain the thumbnail
+        final BufferedImage thumbnailImage = pool != null ?
+                pool.acquireImage(width, height, type) :
+                new BufferedImage(width, height, type);
+        // both images are backed by a single array of pixels without padding
+        final int[] pixels = ((DataBufferInt) thumbnailImage.getRaster()
+                .getDataBuffer()).getData();
+        final int[] row = pool != null ? pool.getIntRow(resizedWidth) :
+                new int[resizedWidth];
+        final boolean sameType = resizedImage.getType() == type;
+        final WritableRaster raster = resizedImage.getRaster();
+        for (int y = 0; y < resizedHeight; y++) {
+            if (sameType) {
+                raster.getDataElements(0, y, resizedWidth, 1, row);
+            } else {
+                resizedImage.getRGB(0, y, resizedWidth, 1, row, 0,
+                        resizedWidth);
+            }
+
+            switch (quadrants) {
+                case -1:
+                    // counterclockwise 90º
+                    for (int x = 0; x < resizedWidth; x++) {
+                        pixels[(resizedWidth - 1 - x) * width + y] = row[x];
+                    }
+                    break;
+                case -3:
+                    // clockwise 90º
+                    for (int x = 0, pos = resizedHeight - 1 - y;
+                         x < resizedWidth; x++, pos += width) {
+                        pixels[pos] = row[x];
+                    }
+                    break;
+                default:
+                    // 180º
+                    for (int x = 0, pos = (resizedHeight - 1 - y) * width +
+                            resizedWidth - 1; x < resizedWidth; x++, pos--) {
+                        pixels[pos] = row[x];
+                    }
+                    break;
+            }
+        }
+        return thumbnailImage;
+    }
+
+    /**
+     * Encodes provided thumbnail image using provided format.
+     *
+     * @param thumbnailImage thumbnail image to be encoded.
+     * @param format         format of image to be generated.
+     * @return encoded image data.
+     * @throws IOException if format is not supported.
+     */
+    static byte[] encode(final BufferedImage thumbnailImage,
+                         final ThumbnailFormat format) throws IOException {
+        final ByteArrayImageOutputStream stream =
+                new ByteArrayImageOutputStream();
+        encode(thumbnailImage, format, stream, null);
+        return stream.toByteArray();
+    }
+
+    /**
+     * Encodes provided thumbnail image using provided format.
+     * If a pool is provided, its cached writer and encoding array are reused,
+     * hence returned data is only valid until the next thumbnail is encoded
+     * by current thread.
+     *
+     * @param thumbnailImage thumbnail image to be encoded.
+     * @param format         format of image to be generated.
+     * @param pool           pool of current thread (optional).
+     * @return buffer containing encoded image data from position zero up to
+     * its limit.
+     * @throws IOException if format is not supported.
+     */
+    static ByteBuffer encode(final BufferedImage thumbnailImage,
+                             final ThumbnailFormat format,
+                             final ThumbnailBufferPool pool)
+            throws IOException {
+        final ByteArrayImageOutputStream stream = pool != null ?
+                pool.createEncodeStream() : new ByteArrayImageOutputStream();
+        encode(thumbnailImage, format, stream, pool);
+        return stream.toByteBuffer();
+    }
+
+    /**
+     * Encodes provided thumbnail image into provided stream.
+     *
+     * @param thumbnailImage thumbnail image to be encoded.
+     * @param format         format of image to be generated.
+     * @param stream         stream where image is encoded.
+     * @param pool           pool of current thread (optional).
+     * @throws IOException if format is not supported.
+     */
+    private static void encode(final BufferedImage thumbnailImage,
+                               final ThumbnailFormat format,
+                               final ByteArrayImageOutputStream stream,
+                               final ThumbnailBufferPool pool)
+            throws IOException {
+        final ImageWriter writer;
+        if (pool != null) {
+            writer = pool.getWriter(format);
+        } else {
+            final Iterator<ImageWriter> writers =
+                    ImageIO.getImageWritersByFormatName(format.getValue());
+            writer = writers.hasNext() ? writers.next() : null;
+        }
+        if (writer == null ||
+                !writer.getOriginatingProvider().canEncodeImage(
+                        thumbnailImage)) {
+            if (writer != null && pool == null) {
+                writer.dispose();
+            }
+            // if format is not supported
+            throw new IOException();
+        }
+
+        // JPEG writers copy rows into bytes, which is only done without
+        // allocating rows when images already store bytes
+        final BufferedImage image = pool != null &&
+                format == ThumbnailFormat.JPEG &&
+                thumbnailImage.getType() == BufferedImage.TYPE_INT_RGB ?
+                toInterleaved(thumbnailImage, pool) : thumbnailImage;
+        try {
+            writer.setOutput(stream);
+            writer.write(image);
+            stream.flush();
+        } finally {
+            if (pool != null) {
+                // keep writer without any reference to encoded data
+                writer.reset();
+                if (image != thumbnailImage) {
+                    pool.releaseImage(image);
+                }
+            } else {
+                writer.dispose();
+            }
+        }
+    }
+
+    /**
+     * Copies an image of type BufferedImage.TYPE_INT_RGB into an image of the
+     * pool storing red, green and blue bytes of each pixel in order.
+     *
+     * @param image image to be copied.
+     * @param pool  pool of current thread.
+     * @return copied image, or provided image if pool cannot provide an
+     * image having such layout.
+     */
+    private static BufferedImage toInterleaved(final BufferedImage image,
+                                               final ThumbnailBufferPool pool) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final BufferedImage result = pool.acquireImage(
+                RGB_INTERLEAVED.getColorModel(),
+                RGB_INTERLEAVED.getSampleModel(width, height));
+        if (result == null) {
+            return image;
+        }
+
+        final int[] row = pool.getIntRow(width);
+        final byte[] bytes = pool.getByteRow(3 * width);
+        final WritableRaster raster = image.getRaster();
+        final WritableRaster resultRaster = result.getRaster();
+        for (int y = 0; y < height; y++) {
+            raster.getDataElements(0, y, width, 1, row);
+            for (int x = 0, i = 0; x < width; x++, i += 3) {
+                final int pixel = row[x];
+                bytes[i] = (byte) (pixel >> 16);
+                bytes[i + 1] = (byte) (pixel >> 8);
+                bytes[i + 2] = (byte) pixel;
+            }
+            resultRaster.setDataElements(0, y, width, 1, bytes);
+        }
+        return result;
+    }
+
+    /**
+     * Returns an image where provided reader can decode its first image,
+     * either stored off-heap or obtained from the pool.
+     * JPEG readers decode rows with red, green and blue bands in order, but by
+     * default copy them into images storing blue first, which requires
+     * converting and allocating every row. Instead, such images are decoded
+     * into images keeping bands in order, which only requires copying rows.
+     *
+     * @param reader  reader whose input has already been set.
+     * @param format  format of image being decoded.
+     * @param pool    pool of current thread (optional).
+     * @param offHeap true to store image off-heap whenever possible.
+     * @return an image or null if layout of decoded image is not supported.
+     * @throws IOException if image header cannot be read.
+     */
+    private static BufferedImage createDestination(
+            final javax.imageio.ImageReader reader, final ImageFormat format,
+            final ThumbnailBufferPool pool, final boolean offHeap)
+            throws IOException {
+        final Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        if (types == null || !types.hasNext()) {
+            return null;
+        }
+
+        // first type is used by readers when no destination is set
+        ImageTypeSpecifier type = types.next();
+        if (format == ImageFormat.JPEG &&
+                type.getBufferedImageType() == BufferedImage.TYPE_3BYTE_BGR) {
+            type = RGB_INTERLEAVED;
+        }
+        final ColorModel colorModel = type.getColorModel();
+        final SampleModel sampleModel = type.getSampleModel(
+                reader.getWidth(0), reader.getHeight(0));
+
+        BufferedImage destination = null;
+        if (offHeap && OFF_HEAP_READERS.contains(reader.getClass().getName())) {
+            destination = DirectDataBuffer.createImage(colorModel,
+                    sampleModel);
+        }
+        if (destination == null && pool != null) {
+            destination = pool.acquireImage(colorModel, sampleModel);
+        }
+        return destination;
+    }
+
+    /**
+     * Averages pixels of input image into output image, which is smaller or
+     * equal in size.
+     * Horizontally, each output pixel spans as many units as the width of
+     * the input image, while each input pixel spans as many units as the
+     * width of the output image, so that the overlap between both is an exact
+     * integer. The same is done vertically, hence each output pixel is the
+     * weighted average of the input pixels it overlaps.
+     * Results are the same as the ones obtained by drawing an image scaled by
+     * area averaging (Image.SCALE_AREA_AVERAGING) into the output image:
+     * colors are averaged weighted by alpha with the same floating point
+     * arithmetic, and translucent averages are then drawn with the same 8 bit
+     * precision, either on black when the output image has no alpha or on a
+     * transparent background otherwise.
+     *
+     * @param input  input image.
+     * @param output output image of type BufferedImage.TYPE_INT_RGB or
+     *               BufferedImage.TYPE_INT_ARGB.
+     * @param token  cancellation token (optional).
+     * @param pool   pool of current thread (optional).
+     * @throws TimeoutException if deadline of token elapsed while scaling.
+     */
+    private static void resample(final BufferedImage input,
+                                 final BufferedImage output,
+                                 final CancellationToken token,
+                                 final ThumbnailBufferPool pool)
+            throws TimeoutException {
+        final int inputWidth = input.getWidth();
+        final int inputHeight = input.getHeight();
+        final int outputWidth = output.getWidth();
+        final int outputHeight = output.getHeight();
+        final int components = 4 * outputWidth;
+
+        final int rowType = getRowType(input);
+        final boolean inputAlpha = input.getColorModel().hasAlpha();
+        final boolean outputAlpha = output.getColorModel().hasAlpha();
+        final int[] lookup = rowType == ROW_LOOKUP_BYTES ?
+                getLookupTable(input.getColorModel()) : null;
+
+        // rows of input pixels are also reused to store output pixels
+        final int[] row;
+        final byte[] bytes;
+        final float[] values;
+        final float[] areaSums;
+        if (pool != null) {
+            row = pool.getIntRow(inputWidth);
+            bytes = rowType != ROW_INT && rowType != ROW_GENERIC ?
+                    pool.getByteRow(4 * inputWidth) : null;
+            values = pool.getFloatRow1(4 * inputWidth);
+            areaSums = pool.getFloatRow2(components);
+        } else {
+            row = new int[inputWidth];
+            bytes = rowType != ROW_INT && rowType != ROW_GENERIC ?
+                    new byte[4 * inputWidth] : null;
+            values = new float[4 * inputWidth];
+            areaSums = new float[components];
+        }
+        Arrays.fill(areaSums, 0, components, 0.0f);
+
+        final float area = ((float) inputWidth) * inputHeight;
+        final WritableRaster inputRaster = input.getRaster();
+        final WritableRaster outputRaster = output.getRaster();
+        final DirectDataBuffer direct = getDirectBuffer(inputRaster, rowType);
+        final int stride = direct != null ? ((PixelInterleavedSampleModel)
+                inputRaster.getSampleModel()).getScanlineStride() : 0;
+        int outputY = 0;
+        long outputEnd = inputHeight;
+        for (int y = 0; y < inputHeight; y++) {
+            if (token != null) {
+                token.check();
+            }
+
+            readRow(input, inputRaster, rowType, y, inputWidth, row, bytes,
+                    lookup, direct, stride);
+            premultiplyRow(row, inputWidth, inputAlpha, values);
+
+            // distribute input row among the output rows it overlaps
+            long pos = (long) y * outputHeight;
+            final long end = pos + outputHeight;
+            while (pos < end) {
+                final long next = Math.min(end, outputEnd);
+                sumRow(values, inputWidth, outputWidth, (int) (next - pos),
+                        areaSums);
+                pos = next;
+
+                if (pos == outputEnd) {
+                    writeRow(areaSums, area, outputWidth, outputAlpha, row);
+                    outputRaster.setDataElements(0, outputY, outputWidth, 1,
+                            row);
+                    Arrays.fill(areaSums, 0, components, 0.0f);
+                    outputY++;
+                    outputEnd += inputHeight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how rows of provided image are read.
+     *
+     * @param image an image.
+     * @return type of row.
+     */
+    private static int getRowType(final BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                return ROW_INT;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                return ROW_RGB_BYTES;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                return ROW_RGBA_BYTES;
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return ROW_LOOKUP_BYTES;
+            case BufferedImage.TYPE_BYTE_INDEXED:
+                return image.getColorModel().getPixelSize() == 8 ?
+                        ROW_LOOKUP_BYTES : ROW_GENERIC;
+            default:
+                break;
+        }
+
+        // other images storing a byte per band, such as images decoded by
+        // JPEG readers into a pool
+        final ColorModel colorModel = image.getColorModel();
+        if (colorModel instanceof ComponentColorModel &&
+                colorModel.getColorSpace().isCS_sRGB() &&
+                colorModel.getTransferType() == DataBuffer.TYPE_BYTE &&
+                !colorModel.isAlphaPremultiplied() &&
+                colorModel.getPixelSize() == 8 * colorModel.getNumComponents()) {
+            if (colorModel.getNumComponents() == 3 &&
+                    !colorModel.hasAlpha()) {
+                return ROW_RGB_BYTES;
+            } else if (colorModel.getNumComponents() == 4 &&
+                    colorModel.hasAlpha()) {
+                return ROW_RGBA_BYTES;
+            }
+        }
+
+        // other images storing a byte per pixel, such as gray or indexed
+        // images decoded off-heap
+        final SampleModel sampleModel = image.getSampleModel();
+        if ((colorModel instanceof IndexColorModel ||
+                colorModel instanceof ComponentColorModel &&
+                        colorModel.getNumComponents() == 1) &&
+                colorModel.getTransferType() == DataBuffer.TYPE_BYTE &&
+                colorModel.getPixelSize() == 8 &&
+                sampleModel instanceof ComponentSampleModel &&
+                sampleModel.getNumBands() == 1) {
+            return ROW_LOOKUP_BYTES;
+        }
+        return ROW_GENERIC;
+    }
+
+    /**
+     * Returns data buffer of provided raster when it is stored off-heap and
+     * its rows of bytes can be copied at once, because samples of each pixel
+     * are stored consecutively in the same order as bands.
+     *
+     * @param raster  raster of an image.
+     * @param rowType how rows of image are read.
+     * @return off-heap data buffer or null if rows must be read through the
+     * raster.
+     */
+    private static DirectDataBuffer getDirectBuffer(
+            final WritableRaster raster, final int rowType) {
+        if (rowType == ROW_INT || rowType == ROW_GENERIC ||
+                !(raster.getDataBuffer() instanceof DirectDataBuffer) ||
+                !(raster.getSampleModel() instanceof
+                        PixelInterleavedSampleModel) ||
+                raster.getSampleModelTranslateX() != 0 ||
+                raster.getSampleModelTranslateY() != 0) {
+            return null;
+        }
+
+        final PixelInterleavedSampleModel sampleModel =
+                (PixelInterleavedSampleModel) raster.getSampleModel();
+        final int[] offsets = sampleModel.getBandOffsets();
+        if (sampleModel.getPixelStride() != offsets.length) {
+            return null;
+        }
+        for (int i = 0; i < offsets.length; i++) {
+            if (offsets[i] != i) {
+                return null;
+            }
+        }
+        return (DirectDataBuffer) raster.getDataBuffer();
+    }
+
+    /**
+     * Returns ARGB value of each possible byte of a single band image.
+     *
+     * @param colorModel color model of a single band image.
+     * @return lookup table.
+     */
+    private static int[] getLookupTable(final ColorModel colorModel) {
+        final int[] lookup = new int[256];
+        final int size = colorModel instanceof IndexColorModel ?
+                Math.min(lookup.length,
+                        ((IndexColorModel) colorModel).getMapSize()) :
+                lookup.length;
+        for (int i = 0; i < size; i++) {
+            lookup[i] = colorModel.getRGB(i);
+        }
+        return lookup;
+    }
+
+    /**
+     * Reads a row of an image as ARGB pixels.
+     *
+     * @param image   image to be read.
+     * @param raster  raster of image.
+     * @param rowType how rows are read.
+     * @param y       row to be read.
+     * @param width   width of image.
+     * @param row     array where ARGB pixels are stored.
+     * @param bytes   array where samples are read for byte rows.
+     * @param lookup  lookup table for rows of bytes converted using a table.
+     * @param direct  off-heap data buffer whose rows of bytes are copied at
+     *                once or null.
+     * @param stride  number of bytes between consecutive rows of off-heap
+     *                data buffer.
+     */
+    private static void readRow(final BufferedImage image,
+                                final WritableRaster raster, final int rowType,
+                                final int y, final int width, final int[] row,
+                                final byte[] bytes, final int[] lookup,
+                                final DirectDataBuffer direct,
+                                final int stride) {
+        switch (rowType) {
+            case ROW_INT:
+                raster.getDataElements(0, y, width, 1, row);
+                break;
+            case ROW_RGB_BYTES:
+                readBytes(raster, y, width, bytes, direct, stride);
+                for (int x = 0, i = 0; x < width; x++, i += 3) {
+                    row[x] = 0xFF000000 | (bytes[i] & 0xFF) << 16 |
+                            (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+                }
+                break;
+            case ROW_RGBA_BYTES:
+                readBytes(raster, y, width, bytes, direct, stride);
+                for (int x = 0, i = 0; x < width; x++, i += 4) {
+                    row[x] = (bytes[i + 3] & 0xFF) << 24 |
+                            (bytes[i] & 0xFF) << 16 |
+                            (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+                }
+                break;
+            case ROW_LOOKUP_BYTES:
+                readBytes(raster, y, width, bytes, direct, stride);
+                for (int x = 0; x < width; x++) {
+                    row[x] = lookup[bytes[x] & 0xFF];
+                }
+                break;
+            default:
+                image.getRGB(0, y, width, 1, row, 0, width);
+                break;
+        }
+    }
+
+    /**
+     * Reads samples of a row of an image storing a byte per sample.
+     *
+     * @param raster raster of image.
+     * @param y      row to be read.
+     * @param width  width of image.
+     * @param bytes  array where samples are stored.
+     * @param direct off-heap data buffer whose rows of bytes are copied at
+     *               once or null.
+     * @param stride number of bytes between consecutive rows of off-heap
+     *               data buffer.
+     */
+    private static void readBytes(final WritableRaster raster, final int y,
+                                  final int width, final byte[] bytes,
+                                  final DirectDataBuffer direct,
+                                  final int stride) {
+        if (direct != null) {
+            direct.get(y * stride, bytes, 0, width * raster.getNumBands());
+        } else {
+            raster.getDataElements(0, y, width, 1, bytes);
+        }
+    }
+
+    /**
+     * Converts a row of input pixels into alpha and color components, where
+     * colors are premultiplied by alpha.
+     *
+     * @param row    ARGB input pixels.
+     * @param width  width of input image.
+     * @param alpha  true if alpha of input pixels must be taken into account,
+     *               false if input pixels are opaque.
+     * @param values array where alpha, red, green and blue components of each
+     *               input pixel are stored.
+     */
+    private static void premultiplyRow(final int[] row, final int width,
+                                       final boolean alpha,
+                                       final float[] values) {
+        for (int x = 0, i = 0; x < width; x++, i += 4) {
+            final int pixel = row[x];
+            final float a = alpha ? pixel >>> 24 : 0xFF;
+            float r = (pixel >> 16) & 0xFF;
+            float g = (pixel >> 8) & 0xFF;
+            float b = pixel & 0xFF;
+            if (a != 255.0f) {
+                final float scale = a / 255.0f;
+                r *= scale;
+                g *= scale;
+                b *= scale;
+            }
+            values[i] = a;
+            values[i + 1] = r;
+            values[i + 2] = g;
+            values[i + 3] = b;
+        }
+    }
+
+    /**
+     * Sums components of a row of input pixels into the output pixels they
+     * overlap, weighted by the area of overlap.
+     *
+     * @param values      alpha and premultiplied color components of input
+     *                    pixels.
+     * @param inputWidth  width of input image.
+     * @param outputWidth width of output image.
+     * @param height      vertical overlap between input row and output row.
+     * @param sums        array where alpha and premultiplied color sums of
+     *                    each output pixel are accumulated.
+     */
+    private static void sumRow(final float[] values, final int inputWidth,
+                               final int outputWidth, final int height,
+                               final float[] sums) {
+        int i = 0;
+        long outputEnd = inputWidth;
+        for (int x = 0, j = 0; x < inputWidth; x++, j += 4) {
+            long pos = (long) x * outputWidth;
+            final long end = pos + outputWidth;
+            while (pos < end) {
+                final long next = Math.min(end, outputEnd);
+                final float weight = ((float) (next - pos)) * height;
+                sums[i] += weight * values[j];
+                sums[i + 1] += weight * values[j + 1];
+                sums[i + 2] += weight * values[j + 2];
+                sums[i + 3] += weight * values[j + 3];
+                pos = next;
+
+                if (pos == outputEnd) {
+                    i += 4;
+                    outputEnd += inputWidth;
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts sums of an output row into pixels.
+     *
+     * @param sums        alpha and premultiplied color sums of each output
+     *                    pixel.
+     * @param area        sum of weights of each output pixel.
+     * @param outputWidth width of output image.
+     * @param alpha       true if output image has alpha, false otherwise.
+     * @param row         array where output pixels are stored.
+     */
+    private static void writeRow(final float[] sums, final float area,
+                                 final int outputWidth, final boolean alpha,
+                                 final int[] row) {
+        for (int x = 0, i = 0; x < outputWidth; x++, i += 4) {
+            final float alphaSum = sums[i];
+            int a = Math.round(alphaSum / area);
+            float norm = area;
+            if (a <= 0) {
+                // fully transparent pixels are left untouched when drawing,
+                // either black or transparent
+                row[x] = 0;
+                continue;
+            } else if (a >= 0xFF) {
+                a = 0xFF;
+            } else {
+                // colors are divided by alpha
+                norm = alphaSum / 255.0f;
+            }
+
+            int r = toComponent(sums[i + 1] / norm);
+            int g = toComponent(sums[i + 2] / norm);
+            int b = toComponent(sums[i + 3] / norm);
+            if (a < 0xFF) {
+                // drawing translucent pixels premultiplies colors by alpha
+                // with 8 bits, either to composite them on black or to store
+                // them on a transparent background
+                r = mul8(r, a);
+                g = mul8(g, a);
+                b = mul8(b, a);
+                if (alpha) {
+                    r = div8(r, a);
+                    g = div8(g, a);
+                    b = div8(b, a);
+                }
+            }
+            row[x] = (alpha ? a << 24 : 0) | r << 16 | g << 8 | b;
+        }
+    }
+
+    /**
+     * Multiplies a component by alpha with the same 8 bit precision used when
+     * drawing translucent pixels.
+     *
+     * @param component component between 0 and 255.
+     * @param alpha     alpha between 0 and 255.
+     * @return component premultiplied by alpha.
+     */
+    private static int mul8(final int component, final int alpha) {
+        final long increment = alpha * 0x10101L;
+        return (int) ((increment * component + (1L << 23)) >>> 24);
+    }
+
+    /**
+     * Divides a premultiplied component by alpha with the same 8 bit
+     * precision used when drawing translucent pixels.
+     *
+     * @param component premultiplied component between 0 and 255.
+     * @param alpha     alpha between 1 and 255.
+     * @return component divided by alpha.
+     */
+    private static int div8(final int component, final int alpha) {
+        if (component >= alpha) {
+            return 0xFF;
+        }
+        final long increment = ((0xFFL << 24) + alpha / 2) / alpha;
+        return (int) ((increment * component + (1L << 23)) >>> 24);
+    }
+
+    /**
+     * Rounds an averaged component to its closest valid value.
+     *
+     * @param value averaged component.
+     * @return component between 0 and 255.
+     */
+    private static int toComponent(final float value) {
+        final int component = Math.round(value);
+        return component < 0 ? 0 : (component > 0xFF ? 0xFF : component);
+    }
+
+    /**
+     * Read progress listener that aborts decoding once a cancellation token is
+     * cancelled or expires.
+     * Image readers notify progress after decoding each strip or row, which
+     * is when abort requests are honoured.
+     */
+    private static class AbortReadListener implements IIOReadProgressListener {
+
+        /**
+         * Cancellation token to be checked.
+         */
+        private final CancellationToken mToken;
+
+        /**
+         * Constructor.
+         *
+         * @param token cancellation token to be checked.
+         */
+        AbortReadListener(final CancellationToken token) {
+            mToken = token;
+        }
+
+        @Override
+        public void sequenceStarted(final javax.imageio.ImageReader source,
+                                    final int minIndex) {
+            // not needed
+        }
+
+        @Override
+        public void sequenceComplete(final javax.imageio.ImageReader source) {
+            // not needed
+        }
+
+        @Override
+        public void imageStarted(final javax.imageio.ImageReader source,
+                                 final int imageIndex) {
+            checkAbort(source);
+        }
+
+        @Override
+        public void imageProgress(final javax.imageio.ImageReader source,
+                                  final float percentageDone) {
+            checkAbort(source);
+        }
+
+        @Override
+        public void imageComplete(final javax.imageio.ImageReader source) {
+            // not needed
+        }
+
+        @Override
+        public void thumbnailStarted(final javax.imageio.ImageReader source,
+                                     final int imageIndex,
+                                     final int thumbnailIndex) {
+            // not needed
+        }
+
+        @Override
+        public void thumbnailProgress(final javax.imageio.ImageReader source,
+                                      final float percentageDone) {
+            // not needed
+        }
+
+        @Override
+        public void thumbnailComplete(final javax.imageio.ImageReader source) {
+            // not needed
+        }
+
+        @Override
+        public void readAborted(final javax.imageio.ImageReader source) {
+            // not needed
+        }
+
+        /**
+         * Requests provided reader to abort if token requests so.
+         *
+         * @param source reader decoding an image.
+         */
+        private void checkAbort(final javax.imageio.ImageReader source) {
+            if (mToken.isStopRequested()) {
+                source.abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+/**
+ * Stages of thumbnail generation timed by ThumbnailCreator.
+ */
+public enum ThumbnailStage {
+    /**
+     * Time spent waiting to be allowed to run.
+     */
+    QUEUE_WAIT,
+
+    /**
+     * Time spent reading input image file.
+     */
+    IO,
+
+    /**
+     * Time spent decoding input image.
+     */
+    DECODE,
+
+    /**
+     * Time spent scaling decoded image.
+     */
+    SCALE,
+
+    /**
+     * Time spent rotating scaled image according to input orientation.
+     */
+    ROTATE,
+
+    /**
+     * Time spent encoding thumbnail.
+     */
+    ENCODE,
+
+    /**
+     * Time spent writing thumbnail file.
+     */
+    WRITE
+}
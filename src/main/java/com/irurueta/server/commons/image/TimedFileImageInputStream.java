@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.stream.FileImageInputStream;
+
+/**
+ * Image input stream reading an image file like streams created by ImageIO,
+ * which keeps track of the time spent reading from the file, so that it can be
+ * told apart from the time spent decoding while the image is streamed to its
+ * reader.
+ */
+class TimedFileImageInputStream extends FileImageInputStream {
+
+    /**
+     * Time spent reading from the file expressed in nanoseconds.
+     */
+    private long mReadTime;
+
+    /**
+     * Constructor.
+     *
+     * @param f file to be read.
+     * @throws IOException if file cannot be opened.
+     */
+    TimedFileImageInputStream(final File f) throws IOException {
+        super(f);
+    }
+
+    /**
+     * Returns time spent reading from the file so far.
+     *
+     * @return time spent reading expressed in nanoseconds.
+     */
+    long getReadTime() {
+        return mReadTime;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return super.read();
+        } finally {
+            mReadTime += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return super.read(b, off, len);
+        } finally {
+            mReadTime += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import java.util.Arrays;
+
+/**
+ * Encodes locations into hierarchical 64-bit cell ids, in the style of S2
+ * cell ids.
+ * At level L the world is split into a grid of 2^L x 2^L cells of equal
+ * latitude and longitude extent. A cell id contains the interleaved bits of
+ * the longitude and latitude grid coordinates of the cell (Morton order),
+ * followed by a sentinel bit set to one, followed by zeros. Hence:
+ * <ul>
+ * <li>the level of a cell is given by the position of its lowest set
+ * bit,</li>
+ * <li>all descendants of a cell have ids within the range returned by
+ * getRangeMin and getRangeMax, so that locations stored sorted by the id of
+ * their level 30 cell can be range-scanned by any cell,</li>
+ * <li>ids are always positive, so they can be compared and sorted as signed
+ * longs.</li>
+ * </ul>
+ * All methods, except covers, only use integer operations and do not allocate
+ * memory.
+ */
+public final class GeoCell {
+
+    /**
+     * Maximum level of cells. Cells at this level are about 2 cm tall.
+     */
+    public static final int MAX_LEVEL = 30;
+
+    /**
+     * Value returned when a neighbor does not exist. This is not a valid cell
+     * id.
+     */
+    public static final long NONE = 0;
+
+    /**
+     * Number of neighbors of a cell not touching any pole.
+     */
+    public static final int NEIGHBORS = 8;
+
+    /**
+     * Number of children of a cell.
+     */
+    public static final int CHILDREN = 4;
+
+    /**
+     * Constructor. Prevents instantiation of utility class.
+     */
+    private GeoCell() {
+    }
+
+    /**
+     * Encodes a location into the id of the cell of provided level containing
+     * it.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @param level     level of cell.
+     * @return cell id.
+     * @throws IllegalArgumentException if location is out of range or level is
+     *                                  not between 0 and 30.
+     */
+    public static long encode(final double latitude, final double longitude,
+                              final int level) {
+        Morton.checkLocation(latitude, longitude);
+        checkLevel(level);
+        return toId(Morton.quantizeLongitude(longitude, level),
+                Morton.quantizeLatitude(latitude, level), level);
+    }
+
+    /**
+     * Indicates whether provided value is a valid cell id.
+     *
+     * @param id value to be checked.
+     * @return true if value is a valid cell id, false otherwise.
+     */
+    public static boolean isValid(final long id) {
+        if (id <= 0 || id >= (1L << (2 * MAX_LEVEL + 1))) {
+            return false;
+        }
+        return (Long.numberOfTrailingZeros(id) & 1) == 0;
+    }
+
+    /**
+     * Returns level of a cell.
+     *
+     * @param id cell id.
+     * @return level of cell.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static int getLevel(final long id) {
+        checkId(id);
+        return MAX_LEVEL - Long.numberOfTrailingZeros(id) / 2;
+    }
+
+    /**
+     * Returns parent of a cell at provided level.
+     *
+     * @param id    cell id.
+     * @param level level of parent. Must not be greater than level of cell.
+     * @return id of parent cell.
+     * @throws IllegalArgumentException if id is not valid or level is not
+     *                                  between 0 and level of cell.
+     */
+    public static long getParent(final long id, final int level) {
+        if (level < 0 || level > getLevel(id)) {
+            throw new IllegalArgumentException();
+        }
+        final long lsb = lowestBit(level);
+        return (id & -lsb) | lsb;
+    }
+
+    /**
+     * Returns parent of a cell at previous level.
+     *
+     * @param id cell id.
+     * @return id of parent cell.
+     * @throws IllegalArgumentException if id is not valid or is a level 0
+     *                                  cell.
+     */
+    public static long getParent(final long id) {
+        return getParent(id, getLevel(id) - 1);
+    }
+
+    /**
+     * Returns a child of a cell. Children are numbered in Morton order.
+     *
+     * @param id       cell id.
+     * @param position position of child, between 0 and 3.
+     * @return id of child cell.
+     * @throws IllegalArgumentException if id is not valid, is a level 30 cell
+     *                                  or position is not valid.
+     */
+    public static long getChild(final long id, final int position) {
+        if (getLevel(id) == MAX_LEVEL || position < 0 ||
+                position >= CHILDREN) {
+            throw new IllegalArgumentException();
+        }
+        final long lsb = id & -id;
+        return id - lsb + (2L * position + 1) * (lsb >>> 2);
+    }
+
+    /**
+     * Returns minimum id of all descendants of a cell at any level.
+     *
+     * @param id cell id.
+     * @return minimum descendant id.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static long getRangeMin(final long id) {
+        checkId(id);
+        return id - ((id & -id) - 1);
+    }
+
+    /**
+     * Returns maximum id of all descendants of a cell at any level.
+     *
+     * @param id cell id.
+     * @return maximum descendant id.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static long getRangeMax(final long id) {
+        checkId(id);
+        return id + ((id & -id) - 1);
+    }
+
+    /**
+     * Indicates whether a cell contains another one, or is the same cell.
+     *
+     * @param id    cell id.
+     * @param other id of other cell.
+     * @return true if cell contains other cell, false otherwise.
+     * @throws IllegalArgumentException if any id is not valid.
+     */
+    public static boolean contains(final long id, final long other) {
+        checkId(other);
+        return other >= getRangeMin(id) && other <= getRangeMax(id);
+    }
+
+    /**
+     * Returns minimum latitude of a cell.
+     *
+     * @param id cell id.
+     * @return minimum latitude expressed in degrees.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static double getMinLatitude(final long id) {
+        return Morton.latitude(latitudeIndex(id), getLevel(id));
+    }
+
+    /**
+     * Returns maximum latitude of a cell.
+     *
+     * @param id cell id.
+     * @return maximum latitude expressed in degrees.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static double getMaxLatitude(final long id) {
+        return Morton.latitude(latitudeIndex(id) + 1L, getLevel(id));
+    }
+
+    /**
+     * Returns minimum longitude of a cell.
+     *
+     * @param id cell id.
+     * @return minimum longitude expressed in degrees.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static double getMinLongitude(final long id) {
+        return Morton.longitude(longitudeIndex(id), getLevel(id));
+    }
+
+    /**
+     * Returns maximum longitude of a cell.
+     *
+     * @param id cell id.
+     * @return maximum longitude expressed in degrees.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static double getMaxLongitude(final long id) {
+        return Morton.longitude(longitudeIndex(id) + 1L, getLevel(id));
+    }
+
+    /**
+     * Returns latitude of center of a cell.
+     *
+     * @param id cell id.
+     * @return latitude expressed in degrees.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static double getCenterLatitude(final long id) {
+        return (getMinLatitude(id) + getMaxLatitude(id)) / 2.0;
+    }
+
+    /**
+     * Returns longitude of center of a cell.
+     *
+     * @param id cell id.
+     * @return longitude expressed in degrees.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static double getCenterLongitude(final long id) {
+        return (getMinLongitude(id) + getMaxLongitude(id)) / 2.0;
+    }
+
+    /**
+     * Returns id of a cell at provided offset of provided cell, having the
+     * same level. Longitude wraps around the antimeridian.
+     *
+     * @param id              cell id.
+     * @param latitudeOffset  number of cells towards north (or south if
+     *                        negative).
+     * @param longitudeOffset number of cells towards east (or west if
+     *                        negative).
+     * @return id of neighbor cell, or NONE if it would be beyond a pole.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    public static long neighbor(final long id, final int latitudeOffset,
+                                final int longitudeOffset) {
+        final int level = getLevel(id);
+        final long y = latitudeIndex(id) + (long) latitudeOffset;
+        if (y < 0 || y >= (1L << level)) {
+            return NONE;
+        }
+        final long x = (longitudeIndex(id) + longitudeOffset) &
+                ((1L << level) - 1);
+        return toId((int) x, (int) y, level);
+    }
+
+    /**
+     * Computes ids of the cells surrounding provided cell, in order north,
+     * north-east, east, south-east, south, south-west, west and north-west.
+     * Cells beyond a pole are skipped.
+     *
+     * @param id   cell id.
+     * @param dest array where neighbors are written. Must have at least 8
+     *             elements.
+     * @return number of written neighbors.
+     * @throws IllegalArgumentException if id is not valid or array is too
+     *                                  small.
+     */
+    public static int neighbors(final long id, final long[] dest) {
+        if (dest == null || dest.length < NEIGHBORS) {
+            throw new IllegalArgumentException();
+        }
+        int count = 0;
+        for (int i = 0; i < NEIGHBORS; i++) {
+            final long neighbor = neighbor(id,
+                    GeoHash.NEIGHBOR_LATITUDE_OFFSETS[i],
+                    GeoHash.NEIGHBOR_LONGITUDE_OFFSETS[i]);
+            if (neighbor != NONE && neighbor != id &&
+                    !contains(dest, count, neighbor)) {
+                dest[count++] = neighbor;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes a set of cells covering a bounding box, using at most provided
+     * number of cells. Cells are taken at the finest level whose cover does
+     * not exceed provided number of cells, and then groups of 4 siblings are
+     * replaced by their parent, so that returned cells may have different
+     * levels. If minimum longitude is greater than maximum longitude, box is
+     * considered to cross the antimeridian.
+     *
+     * @param minLatitude  minimum latitude expressed in degrees.
+     * @param minLongitude minimum (western) longitude expressed in degrees.
+     * @param maxLatitude  maximum latitude expressed in degrees.
+     * @param maxLongitude maximum (eastern) longitude expressed in degrees.
+     * @param maxCells     maximum number of cells.
+     * @return sorted ids of covering cells, having disjoint ranges.
+     * @throws IllegalArgumentException if box is not valid or maximum number
+     *                                  of cells is less than 1.
+     */
+    public static long[] cover(final double minLatitude,
+                               final double minLongitude,
+                               final double maxLatitude,
+                               final double maxLongitude, final int maxCells) {
+        Morton.checkBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        if (maxCells < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        int level = 0;
+        while (level < MAX_LEVEL && coverSize(minLatitude, minLongitude,
+                maxLatitude, maxLongitude, level + 1) <= maxCells) {
+            level++;
+        }
+
+        final int y0 = Morton.quantizeLatitude(minLatitude, level);
+        final int y1 = Morton.quantizeLatitude(maxLatitude, level);
+        final int x0 = Morton.quantizeLongitude(minLongitude, level);
+        final long mask = (1L << level) - 1;
+        final int columns = (int) Morton.columns(minLongitude, maxLongitude,
+                level);
+
+        long[] cells = new long[columns * (y1 - y0 + 1)];
+        int count = 0;
+        for (int y = y0; y <= y1; y++) {
+            for (int i = 0; i < columns; i++) {
+                cells[count++] = toId((int) ((x0 + i) & mask), y, level);
+            }
+        }
+        Arrays.sort(cells);
+
+        // replace complete groups of siblings by their parent
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            int next = 0;
+            for (int i = 0; i < count; ) {
+                final long cell = cells[i];
+                if (i + CHILDREN <= count && isFirstChild(cell) &&
+                        cells[i + CHILDREN - 1] == cell +
+                                (CHILDREN - 1) * 2 * (cell & -cell)) {
+                    // sorted siblings are consecutive, so the first and last
+                    // children bound the whole group
+                    cells[next++] = getParent(cell);
+                    i += CHILDREN;
+                    merged = true;
+                } else {
+                    cells[next++] = cell;
+                    i++;
+                }
+            }
+            count = next;
+        }
+        return count == cells.length ? cells : Arrays.copyOf(cells, count);
+    }
+
+    /**
+     * Returns number of cells of provided level intersecting a bounding box.
+     *
+     * @param minLatitude  minimum latitude.
+     * @param minLongitude minimum longitude.
+     * @param maxLatitude  maximum latitude.
+     * @param maxLongitude maximum longitude.
+     * @param level        level of cells.
+     * @return number of cells.
+     */
+    private static long coverSize(final double minLatitude,
+                                  final double minLongitude,
+                                  final double maxLatitude,
+                                  final double maxLongitude,
+                                  final int level) {
+        final long rows = Morton.quantizeLatitude(maxLatitude, level) -
+                Morton.quantizeLatitude(minLatitude, level) + 1L;
+        return rows * Morton.columns(minLongitude, maxLongitude, level);
+    }
+
+    /**
+     * Indicates whether provided cell is the first child of its parent.
+     *
+     * @param id cell id.
+     * @return true if cell is a first child, false otherwise.
+     */
+    private static boolean isFirstChild(final long id) {
+        final long lsb = id & -id;
+        // the two bits above the sentinel contain the position of the child
+        return lsb < (1L << (2 * MAX_LEVEL)) && (id & (lsb << 1)) == 0 &&
+                (id & (lsb << 2)) == 0;
+    }
+
+    /**
+     * Converts grid coordinates into a cell id.
+     *
+     * @param x     longitude grid coordinate.
+     * @param y     latitude grid coordinate.
+     * @param level level of cell.
+     * @return cell id.
+     */
+    private static long toId(final int x, final int y, final int level) {
+        final long morton = (Morton.spread(x) << 1) | Morton.spread(y);
+        return ((morton << 1) | 1L) << (2 * (MAX_LEVEL - level));
+    }
+
+    /**
+     * Returns position of sentinel bit of cells of provided level.
+     *
+     * @param level level of cells.
+     * @return value having only the sentinel bit set.
+     */
+    private static long lowestBit(final int level) {
+        return 1L << (2 * (MAX_LEVEL - level));
+    }
+
+    /**
+     * Returns longitude grid coordinate of a cell.
+     *
+     * @param id cell id.
+     * @return longitude grid coordinate.
+     */
+    private static long longitudeIndex(final long id) {
+        final long morton = id >>> (Long.numberOfTrailingZeros(id) + 1);
+        return Morton.compact(morton >>> 1) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns latitude grid coordinate of a cell.
+     *
+     * @param id cell id.
+     * @return latitude grid coordinate.
+     */
+    private static long latitudeIndex(final long id) {
+        final long morton = id >>> (Long.numberOfTrailingZeros(id) + 1);
+        return Morton.compact(morton) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Indicates whether provided array contains a value within its first
+     * elements.
+     *
+     * @param values array of values.
+     * @param count  number of elements to check.
+     * @param value  value to search.
+     * @return true if value is contained, false otherwise.
+     */
+    private static boolean contains(final long[] values, final int count,
+                                    final long value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that provided level is valid.
+     *
+     * @param level level to be checked.
+     * @throws IllegalArgumentException if level is not between 0 and 30.
+     */
+    private static void checkLevel(final int level) {
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Checks that provided id is valid.
+     *
+     * @param id id to be checked.
+     * @throws IllegalArgumentException if id is not valid.
+     */
+    private static void checkId(final long id) {
+        if (!isValid(id)) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import java.util.Arrays;
+
+/**
+ * Result of clustering locations, assigning each location either to a
+ * cluster or to noise.
+ * Clusters are numbered from 0 in the order they were found.
+ */
+public class GeoClusters {
+
+    /**
+     * Label of locations not belonging to any cluster.
+     */
+    public static final int NOISE = -1;
+
+    /**
+     * Clustered locations.
+     */
+    private final GeoPoints mPoints;
+
+    /**
+     * Cluster of each location or NOISE.
+     */
+    private final int[] mLabels;
+
+    /**
+     * Number of clusters.
+     */
+    private final int mClusterCount;
+
+    /**
+     * Position of first member of each cluster within mMembers, followed by
+     * total number of members.
+     */
+    private final int[] mOffsets;
+
+    /**
+     * Positions of members of all clusters, grouped by cluster.
+     */
+    private final int[] mMembers;
+
+    /**
+     * Constructor.
+     *
+     * @param points       clustered locations.
+     * @param labels       cluster of each location or NOISE.
+     * @param clusterCount number of clusters.
+     */
+    GeoClusters(final GeoPoints points, final int[] labels,
+                final int clusterCount) {
+        mPoints = points;
+        mLabels = labels;
+        mClusterCount = clusterCount;
+
+        mOffsets = new int[clusterCount + 1];
+        for (final int label : labels) {
+            if (label != NOISE) {
+                mOffsets[label + 1]++;
+            }
+        }
+        for (int c = 0; c < clusterCount; c++) {
+            mOffsets[c + 1] += mOffsets[c];
+        }
+        mMembers = new int[mOffsets[clusterCount]];
+        final int[] next = Arrays.copyOf(mOffsets, clusterCount);
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] != NOISE) {
+                mMembers[next[labels[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns clustered locations.
+     *
+     * @return clustered locations.
+     */
+    public GeoPoints getPoints() {
+        return mPoints;
+    }
+
+    /**
+     * Returns number of clusters.
+     *
+     * @return number of clusters.
+     */
+    public int getClusterCount() {
+        return mClusterCount;
+    }
+
+    /**
+     * Returns number of locations not belonging to any cluster.
+     *
+     * @return number of noise locations.
+     */
+    public int getNoiseCount() {
+        return mLabels.length - mMembers.length;
+    }
+
+    /**
+     * Returns cluster of location at provided position.
+     *
+     * @param i position of location.
+     * @return cluster of location or NOISE.
+     */
+    public int getLabel(final int i) {
+        return mLabels[i];
+    }
+
+    /**
+     * Returns a copy of the cluster of each location.
+     *
+     * @return cluster of each location or NOISE.
+     */
+    public int[] getLabels() {
+        return Arrays.copyOf(mLabels, mLabels.length);
+    }
+
+    /**
+     * Returns number of locations of provided cluster.
+     *
+     * @param cluster cluster.
+     * @return number of locations.
+     * @throws IllegalArgumentException if cluster does not exist.
+     */
+    public int getClusterSize(final int cluster) {
+        checkCluster(cluster);
+        return mOffsets[cluster + 1] - mOffsets[cluster];
+    }
+
+    /**
+     * Returns positions of locations of provided cluster, sorted in
+     * ascending order.
+     *
+     * @param cluster cluster.
+     * @return positions of locations.
+     * @throws IllegalArgumentException if cluster does not exist.
+     */
+    public int[] getMembers(final int cluster) {
+        checkCluster(cluster);
+        return Arrays.copyOfRange(mMembers, mOffsets[cluster],
+                mOffsets[cluster + 1]);
+    }
+
+    /**
+     * Returns ids of locations of provided cluster.
+     *
+     * @param cluster cluster.
+     * @return ids of locations.
+     * @throws IllegalArgumentException if cluster does not exist.
+     */
+    public int[] getMemberIds(final int cluster) {
+        final int[] result = getMembers(cluster);
+        for (int k = 0; k < result.length; k++) {
+            result[k] = mPoints.getId(result[k]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns center of provided cluster, which is the normalized mean of its
+     * locations on the unit sphere, so that clusters crossing the
+     * antimeridian have a meaningful center.
+     *
+     * @param cluster cluster.
+     * @return array containing latitude and longitude of center expressed in
+     * degrees.
+     * @throws IllegalArgumentException if cluster does not exist.
+     */
+    public double[] getCenter(final int cluster) {
+        checkCluster(cluster);
+        double x = 0.0;
+        double y = 0.0;
+        double z = 0.0;
+        for (int k = mOffsets[cluster]; k < mOffsets[cluster + 1]; k++) {
+            final int i = mMembers[k];
+            final double phi = Math.toRadians(mPoints.getLatitude(i));
+            final double lambda = Math.toRadians(mPoints.getLongitude(i));
+            x += Math.cos(phi) * Math.cos(lambda);
+            y += Math.cos(phi) * Math.sin(lambda);
+            z += Math.sin(phi);
+        }
+        return new double[]{
+                Math.toDegrees(Math.atan2(z, Math.hypot(x, y))),
+                Math.toDegrees(Math.atan2(y, x))
+        };
+    }
+
+    /**
+     * Checks that provided cluster exists.
+     *
+     * @param cluster cluster.
+     * @throws IllegalArgumentException if cluster does not exist.
+     */
+    private void checkCluster(final int cluster) {
+        if (cluster < 0 || cluster >= mClusterCount) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import java.util.Arrays;
+
+/**
+ * Encodes locations into geohashes.
+ * A geohash of precision p identifies a cell of a grid obtained by
+ * interleaving 5 * p bits of longitude and latitude (starting with
+ * longitude), and it is usually represented as a string of p base 32
+ * characters. Geohashes sharing a prefix are close to each other, hence
+ * geohash strings can be used to bucket locations and to range-scan them.
+ * Geohashes are handled as long values containing their 5 * p bits, so that
+ * encoding, decoding and neighbor computations only use integer operations
+ * and do not allocate memory. Strings are only created on demand, and can also
+ * be written into provided char arrays.
+ */
+public final class GeoHash {
+
+    /**
+     * Minimum precision of geohashes.
+     */
+    public static final int MIN_PRECISION = 1;
+
+    /**
+     * Maximum precision of geohashes, so that their bits fit in a long.
+     */
+    public static final int MAX_PRECISION = 12;
+
+    /**
+     * Value returned when a neighbor does not exist.
+     */
+    public static final long NONE = -1;
+
+    /**
+     * Number of neighbors of a cell not touching any pole.
+     */
+    public static final int NEIGHBORS = 8;
+
+    /**
+     * Maximum number of cells returned by a cover.
+     */
+    public static final int MAX_COVER_CELLS = 1 << 20;
+
+    /**
+     * Number of bits of each geohash character.
+     */
+    private static final int BITS_PER_CHAR = 5;
+
+    /**
+     * Base 32 alphabet of geohashes.
+     */
+    private static final char[] BASE32 =
+            "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * Value of each character of geohash alphabet, or -1 for other
+     * characters.
+     */
+    private static final int[] DECODE = new int[128];
+
+    /**
+     * Latitude offsets of neighbors: north, north-east, east, south-east,
+     * south, south-west, west and north-west.
+     */
+    static final int[] NEIGHBOR_LATITUDE_OFFSETS = {1, 1, 0, -1, -1, -1, 0,
+            1};
+
+    /**
+     * Longitude offsets of neighbors: north, north-east, east, south-east,
+     * south, south-west, west and north-west.
+     */
+    static final int[] NEIGHBOR_LONGITUDE_OFFSETS = {0, 1, 1, 1, 0, -1, -1,
+            -1};
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+            DECODE[Character.toUpperCase(BASE32[i])] = i;
+        }
+    }
+
+    /**
+     * Constructor. Prevents instantiation of utility class.
+     */
+    private GeoHash() {
+    }
+
+    /**
+     * Encodes a location into a geohash.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @param precision number of characters of geohash.
+     * @return bits of geohash.
+     * @throws IllegalArgumentException if location is out of range or
+     *                                  precision is not between 1 and 12.
+     */
+    public static long encode(final double latitude, final double longitude,
+                              final int precision) {
+        Morton.checkLocation(latitude, longitude);
+        checkPrecision(precision);
+        return interleave(
+                Morton.quantizeLongitude(longitude, longitudeBits(precision)),
+                Morton.quantizeLatitude(latitude, latitudeBits(precision)),
+                precision);
+    }
+
+    /**
+     * Encodes a location into a geohash written into provided array.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @param precision number of characters of geohash.
+     * @param dest      array where characters are written.
+     * @param offset    position of first character within array.
+     * @return number of written characters.
+     * @throws IllegalArgumentException  if location is out of range or
+     *                                   precision is not between 1 and 12.
+     * @throws IndexOutOfBoundsException if array is too small.
+     */
+    public static int encode(final double latitude, final double longitude,
+                             final int precision, final char[] dest,
+                             final int offset) {
+        return toChars(encode(latitude, longitude, precision), precision, dest,
+                offset);
+    }
+
+    /**
+     * Encodes a location into a geohash string.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @param precision number of characters of geohash.
+     * @return geohash string.
+     * @throws IllegalArgumentException if location is out of range or
+     *                                  precision is not between 1 and 12.
+     */
+    public static String encodeToString(final double latitude,
+                                        final double longitude,
+                                        final int precision) {
+        return toString(encode(latitude, longitude, precision), precision);
+    }
+
+    /**
+     * Writes characters of a geohash into provided array.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @param dest      array where characters are written.
+     * @param offset    position of first character within array.
+     * @return number of written characters.
+     * @throws IllegalArgumentException  if geohash is not valid for provided
+     *                                   precision.
+     * @throws IndexOutOfBoundsException if array is too small.
+     */
+    public static int toChars(final long hash, final int precision,
+                              final char[] dest, final int offset) {
+        checkHash(hash, precision);
+        for (int i = 0; i < precision; i++) {
+            final int shift = BITS_PER_CHAR * (precision - 1 - i);
+            dest[offset + i] = BASE32[(int) ((hash >>> shift) & 0x1F)];
+        }
+        return precision;
+    }
+
+    /**
+     * Converts a geohash into its string representation.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return geohash string.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static String toString(final long hash, final int precision) {
+        final char[] chars = new char[precision];
+        toChars(hash, precision, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * Parses a geohash string. Precision of geohash is the length of the
+     * string.
+     *
+     * @param geohash geohash string.
+     * @return bits of geohash.
+     * @throws IllegalArgumentException if string is not a valid geohash.
+     */
+    public static long parse(final CharSequence geohash) {
+        if (geohash == null) {
+            throw new IllegalArgumentException();
+        }
+        final int precision = geohash.length();
+        checkPrecision(precision);
+        long hash = 0;
+        for (int i = 0; i < precision; i++) {
+            final char c = geohash.charAt(i);
+            final int value = c < DECODE.length ? DECODE[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException();
+            }
+            hash = (hash << BITS_PER_CHAR) | value;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns minimum latitude of cell of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return minimum latitude expressed in degrees.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static double getMinLatitude(final long hash, final int precision) {
+        checkHash(hash, precision);
+        return Morton.latitude(latitudeIndex(hash, precision),
+                latitudeBits(precision));
+    }
+
+    /**
+     * Returns maximum latitude of cell of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return maximum latitude expressed in degrees.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static double getMaxLatitude(final long hash, final int precision) {
+        checkHash(hash, precision);
+        return Morton.latitude(latitudeIndex(hash, precision) + 1L,
+                latitudeBits(precision));
+    }
+
+    /**
+     * Returns minimum longitude of cell of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return minimum longitude expressed in degrees.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static double getMinLongitude(final long hash,
+                                         final int precision) {
+        checkHash(hash, precision);
+        return Morton.longitude(longitudeIndex(hash, precision),
+                longitudeBits(precision));
+    }
+
+    /**
+     * Returns maximum longitude of cell of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return maximum longitude expressed in degrees.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static double getMaxLongitude(final long hash,
+                                         final int precision) {
+        checkHash(hash, precision);
+        return Morton.longitude(longitudeIndex(hash, precision) + 1L,
+                longitudeBits(precision));
+    }
+
+    /**
+     * Returns latitude of center of cell of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return latitude expressed in degrees.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static double getCenterLatitude(final long hash,
+                                           final int precision) {
+        return (getMinLatitude(hash, precision) +
+                getMaxLatitude(hash, precision)) / 2.0;
+    }
+
+    /**
+     * Returns longitude of center of cell of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return longitude expressed in degrees.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static double getCenterLongitude(final long hash,
+                                            final int precision) {
+        return (getMinLongitude(hash, precision) +
+                getMaxLongitude(hash, precision)) / 2.0;
+    }
+
+    /**
+     * Returns geohash of a cell at provided offset of the cell of provided
+     * geohash, having the same precision. Longitude wraps around the
+     * antimeridian.
+     *
+     * @param hash            bits of geohash.
+     * @param precision       number of characters of geohash.
+     * @param latitudeOffset  number of cells towards north (or south if
+     *                        negative).
+     * @param longitudeOffset number of cells towards east (or west if
+     *                        negative).
+     * @return bits of neighbor geohash, or NONE if it would be beyond a pole.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision.
+     */
+    public static long neighbor(final long hash, final int precision,
+                                final int latitudeOffset,
+                                final int longitudeOffset) {
+        checkHash(hash, precision);
+        final int latitudeBits = latitudeBits(precision);
+        final int longitudeBits = longitudeBits(precision);
+        final long y = latitudeIndex(hash, precision) + (long) latitudeOffset;
+        if (y < 0 || y >= (1L << latitudeBits)) {
+            return NONE;
+        }
+        final long x = (longitudeIndex(hash, precision) + longitudeOffset) &
+                ((1L << longitudeBits) - 1);
+        return interleave((int) x, (int) y, precision);
+    }
+
+    /**
+     * Computes geohashes of the cells surrounding the cell of provided
+     * geohash, in order north, north-east, east, south-east, south,
+     * south-west, west and north-west. Cells beyond a pole are skipped.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @param dest      array where neighbors are written. Must have at least
+     *                  8 elements.
+     * @return number of written neighbors.
+     * @throws IllegalArgumentException if geohash is not valid for provided
+     *                                  precision or array is too small.
+     */
+    public static int neighbors(final long hash, final int precision,
+                                final long[] dest) {
+        if (dest == null || dest.length < NEIGHBORS) {
+            throw new IllegalArgumentException();
+        }
+        int count = 0;
+        for (int i = 0; i < NEIGHBORS; i++) {
+            final long neighbor = neighbor(hash, precision,
+                    NEIGHBOR_LATITUDE_OFFSETS[i],
+                    NEIGHBOR_LONGITUDE_OFFSETS[i]);
+            if (neighbor != NONE && neighbor != hash &&
+                    !contains(dest, count, neighbor)) {
+                dest[count++] = neighbor;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Computes geohashes of all cells of provided precision intersecting a
+     * bounding box. If minimum longitude is greater than maximum longitude,
+     * box is considered to cross the antimeridian.
+     *
+     * @param minLatitude  minimum latitude expressed in degrees.
+     * @param minLongitude minimum (western) longitude expressed in degrees.
+     * @param maxLatitude  maximum latitude expressed in degrees.
+     * @param maxLongitude maximum (eastern) longitude expressed in degrees.
+     * @param precision    number of characters of geohashes.
+     * @return sorted bits of geohashes.
+     * @throws IllegalArgumentException if box is not valid, precision is not
+     *                                  between 1 and 12, or more than
+     *                                  MAX_COVER_CELLS cells would be
+     *                                  returned.
+     */
+    public static long[] cover(final double minLatitude,
+                               final double minLongitude,
+                               final double maxLatitude,
+                               final double maxLongitude,
+                               final int precision) {
+        Morton.checkBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        checkPrecision(precision);
+        if (coverSize(minLatitude, minLongitude, maxLatitude, maxLongitude,
+                precision) > MAX_COVER_CELLS) {
+            throw new IllegalArgumentException();
+        }
+
+        final int latitudeBits = latitudeBits(precision);
+        final int longitudeBits = longitudeBits(precision);
+        final int y0 = Morton.quantizeLatitude(minLatitude, latitudeBits);
+        final int y1 = Morton.quantizeLatitude(maxLatitude, latitudeBits);
+        final int x0 = Morton.quantizeLongitude(minLongitude, longitudeBits);
+        final int columns = (int) Morton.columns(minLongitude, maxLongitude,
+                longitudeBits);
+
+        final long[] result = new long[columns * (y1 - y0 + 1)];
+        int count = 0;
+        for (int y = y0; y <= y1; y++) {
+            for (int i = 0; i < columns; i++) {
+                final int x = (x0 + i) & ((1 << longitudeBits) - 1);
+                result[count++] = interleave(x, y, precision);
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns number of cells of provided precision intersecting a bounding
+     * box, so that callers can choose the finest precision whose cover is
+     * small enough.
+     *
+     * @param minLatitude  minimum latitude expressed in degrees.
+     * @param minLongitude minimum (western) longitude expressed in degrees.
+     * @param maxLatitude  maximum latitude expressed in degrees.
+     * @param maxLongitude maximum (eastern) longitude expressed in degrees.
+     * @param precision    number of characters of geohashes.
+     * @return number of cells.
+     * @throws IllegalArgumentException if box is not valid or precision is not
+     *                                  between 1 and 12.
+     */
+    public static long coverSize(final double minLatitude,
+                                 final double minLongitude,
+                                 final double maxLatitude,
+                                 final double maxLongitude,
+                                 final int precision) {
+        Morton.checkBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        checkPrecision(precision);
+        final int latitudeBits = latitudeBits(precision);
+        final int longitudeBits = longitudeBits(precision);
+        final long rows = Morton.quantizeLatitude(maxLatitude, latitudeBits) -
+                Morton.quantizeLatitude(minLatitude, latitudeBits) + 1L;
+        return rows * Morton.columns(minLongitude, maxLongitude,
+                longitudeBits);
+    }
+
+    /**
+     * Returns number of longitude bits of a geohash.
+     *
+     * @param precision number of characters of geohash.
+     * @return number of longitude bits.
+     */
+    static int longitudeBits(final int precision) {
+        return (BITS_PER_CHAR * precision + 1) / 2;
+    }
+
+    /**
+     * Returns number of latitude bits of a geohash.
+     *
+     * @param precision number of characters of geohash.
+     * @return number of latitude bits.
+     */
+    static int latitudeBits(final int precision) {
+        return BITS_PER_CHAR * precision / 2;
+    }
+
+    /**
+     * Interleaves grid coordinates into a geohash, starting with the most
+     * significant longitude bit.
+     *
+     * @param x         longitude grid coordinate.
+     * @param y         latitude grid coordinate.
+     * @param precision number of characters of geohash.
+     * @return bits of geohash.
+     */
+    private static long interleave(final int x, final int y,
+                                   final int precision) {
+        if ((precision & 1) == 0) {
+            // even number of bits: longitude bits are at odd positions
+            return (Morton.spread(x) << 1) | Morton.spread(y);
+        }
+        return Morton.spread(x) | (Morton.spread(y) << 1);
+    }
+
+    /**
+     * Returns longitude grid coordinate of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return longitude grid coordinate.
+     */
+    private static long longitudeIndex(final long hash, final int precision) {
+        return ((precision & 1) == 0 ? Morton.compact(hash >>> 1) :
+                Morton.compact(hash)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Returns latitude grid coordinate of a geohash.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @return latitude grid coordinate.
+     */
+    private static long latitudeIndex(final long hash, final int precision) {
+        return ((precision & 1) == 0 ? Morton.compact(hash) :
+                Morton.compact(hash >>> 1)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Indicates whether provided array contains a value within its first
+     * elements.
+     *
+     * @param values array of values.
+     * @param count  number of elements to check.
+     * @param value  value to search.
+     * @return true if value is contained, false otherwise.
+     */
+    private static boolean contains(final long[] values, final int count,
+                                    final long value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that provided precision is valid.
+     *
+     * @param precision precision to be checked.
+     * @throws IllegalArgumentException if precision is not between 1 and 12.
+     */
+    private static void checkPrecision(final int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Checks that provided geohash is valid for provided precision.
+     *
+     * @param hash      bits of geohash.
+     * @param precision number of characters of geohash.
+     * @throws IllegalArgumentException if precision is not between 1 and 12
+     *                                  or geohash has more bits than
+     *                                  allowed by precision.
+     */
+    private static void checkHash(final long hash, final int precision) {
+        checkPrecision(precision);
+        if (hash < 0 || hash >= (1L << (BITS_PER_CHAR * precision))) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
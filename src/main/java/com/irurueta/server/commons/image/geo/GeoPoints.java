@@ -0,0 +1,537 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageReaderResult;
+
+import java.util.Arrays;
+
+/**
+ * Immutable batch of locations stored as a structure of arrays, so that
+ * distances between many locations can be computed without boxing and
+ * without repeatedly evaluating trigonometric functions.
+ * Besides latitudes and longitudes, each location is stored as a point on
+ * the unit sphere (x, y, z). Distance kernels only compute squared chord
+ * lengths between such points, using multiplications and additions over
+ * contiguous arrays that the JIT compiler can vectorize, and convert chords
+ * into great-circle distances only when distances are returned.
+ * Distances are great-circle distances on a spherical Earth with the same
+ * radius used by SpatialIndex.
+ */
+public class GeoPoints {
+
+    /**
+     * Mean Earth radius expressed in meters.
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    /**
+     * Id of each location.
+     */
+    private final int[] mIds;
+
+    /**
+     * Latitude of each location expressed in degrees.
+     */
+    private final double[] mLatitudes;
+
+    /**
+     * Longitude of each location expressed in degrees.
+     */
+    private final double[] mLongitudes;
+
+    /**
+     * X coordinate of each location on the unit sphere.
+     */
+    private final double[] mX;
+
+    /**
+     * Y coordinate of each location on the unit sphere.
+     */
+    private final double[] mY;
+
+    /**
+     * Z coordinate of each location on the unit sphere.
+     */
+    private final double[] mZ;
+
+    /**
+     * Constructor. Each location is identified by its position.
+     *
+     * @param latitudes  latitude of each location expressed in degrees.
+     * @param longitudes longitude of each location expressed in degrees.
+     * @throws IllegalArgumentException if arrays have different lengths or any
+     *                                  location is out of range.
+     */
+    public GeoPoints(final double[] latitudes, final double[] longitudes) {
+        this(null, latitudes, longitudes);
+    }
+
+    /**
+     * Constructor. Provided arrays are copied.
+     *
+     * @param ids        id of each location or null to identify each location
+     *                   by its position.
+     * @param latitudes  latitude of each location expressed in degrees.
+     * @param longitudes longitude of each location expressed in degrees.
+     * @throws IllegalArgumentException if arrays have different lengths or any
+     *                                  location is out of range.
+     */
+    public GeoPoints(final int[] ids, final double[] latitudes,
+                     final double[] longitudes) {
+        this(ids, latitudes, longitudes, checkLength(ids, latitudes,
+                longitudes));
+    }
+
+    /**
+     * Constructor. Provided arrays are copied.
+     *
+     * @param ids        id of each location or null to identify each location
+     *                   by its position.
+     * @param latitudes  latitude of each location expressed in degrees.
+     * @param longitudes longitude of each location expressed in degrees.
+     * @param size       number of locations to take from provided arrays.
+     * @throws IllegalArgumentException if any location is out of range.
+     */
+    private GeoPoints(final int[] ids, final double[] latitudes,
+                      final double[] longitudes, final int size) {
+        mLatitudes = Arrays.copyOf(latitudes, size);
+        mLongitudes = Arrays.copyOf(longitudes, size);
+        if (ids != null) {
+            mIds = Arrays.copyOf(ids, size);
+        } else {
+            mIds = new int[size];
+            for (int i = 0; i < size; i++) {
+                mIds[i] = i;
+            }
+        }
+
+        mX = new double[size];
+        mY = new double[size];
+        mZ = new double[size];
+        for (int i = 0; i < size; i++) {
+            Morton.checkLocation(mLatitudes[i], mLongitudes[i]);
+            final double phi = Math.toRadians(mLatitudes[i]);
+            final double lambda = Math.toRadians(mLongitudes[i]);
+            final double cosPhi = Math.cos(phi);
+            mX[i] = cosPhi * Math.cos(lambda);
+            mY[i] = cosPhi * Math.sin(lambda);
+            mZ[i] = Math.sin(phi);
+        }
+    }
+
+    /**
+     * Extracts locations of provided image metadata. Each location is
+     * identified by the position of its metadata in iteration order, and
+     * metadata without location is skipped.
+     *
+     * @param metadata image metadata.
+     * @return extracted locations.
+     * @throws IllegalArgumentException if any location is out of range.
+     */
+    public static GeoPoints fromMetadata(
+            final Iterable<ImageMetadata> metadata) {
+        final Extractor extractor = new Extractor();
+        for (final ImageMetadata m : metadata) {
+            extractor.add(m != null ? m.getLocation() : null);
+        }
+        return extractor.build();
+    }
+
+    /**
+     * Extracts locations of provided images. Each location is identified by
+     * the position of its image in iteration order, and images without
+     * location are skipped.
+     *
+     * @param results results of reading image files.
+     * @return extracted locations.
+     * @throws IllegalArgumentException if any location is out of range.
+     */
+    public static GeoPoints fromResults(
+            final Iterable<ImageReaderResult> results) {
+        final Extractor extractor = new Extractor();
+        for (final ImageReaderResult result : results) {
+            final ImageMetadata metadata = result != null ?
+                    result.getMetadata() : null;
+            extractor.add(metadata != null ? metadata.getLocation() : null);
+        }
+        return extractor.build();
+    }
+
+    /**
+     * Returns number of locations.
+     *
+     * @return number of locations.
+     */
+    public int getSize() {
+        return mIds.length;
+    }
+
+    /**
+     * Returns id of location at provided position.
+     *
+     * @param i position of location.
+     * @return id of location.
+     */
+    public int getId(final int i) {
+        return mIds[i];
+    }
+
+    /**
+     * Returns latitude of location at provided position.
+     *
+     * @param i position of location.
+     * @return latitude expressed in degrees.
+     */
+    public double getLatitude(final int i) {
+        return mLatitudes[i];
+    }
+
+    /**
+     * Returns longitude of location at provided position.
+     *
+     * @param i position of location.
+     * @return longitude expressed in degrees.
+     */
+    public double getLongitude(final int i) {
+        return mLongitudes[i];
+    }
+
+    /**
+     * Returns a copy of the ids of all locations.
+     *
+     * @return ids of locations.
+     */
+    public int[] getIds() {
+        return Arrays.copyOf(mIds, mIds.length);
+    }
+
+    /**
+     * Returns a copy of the latitudes of all locations.
+     *
+     * @return latitudes expressed in degrees.
+     */
+    public double[] getLatitudes() {
+        return Arrays.copyOf(mLatitudes, mLatitudes.length);
+    }
+
+    /**
+     * Returns a copy of the longitudes of all locations.
+     *
+     * @return longitudes expressed in degrees.
+     */
+    public double[] getLongitudes() {
+        return Arrays.copyOf(mLongitudes, mLongitudes.length);
+    }
+
+    /**
+     * Computes distance between locations at provided positions.
+     *
+     * @param i position of first location.
+     * @param j position of second location.
+     * @return distance expressed in meters.
+     */
+    public double distance(final int i, final int j) {
+        final double dx = mX[i] - mX[j];
+        final double dy = mY[i] - mY[j];
+        final double dz = mZ[i] - mZ[j];
+        return toDistance(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Computes distances from provided location to all locations.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @param result    array where distance to each location, expressed in
+     *                  meters, will be stored.
+     * @throws IllegalArgumentException if location is out of range or result
+     *                                  is shorter than number of locations.
+     */
+    public void distances(final double latitude, final double longitude,
+                          final double[] result) {
+        Morton.checkLocation(latitude, longitude);
+        checkResult(result);
+        final double phi = Math.toRadians(latitude);
+        final double lambda = Math.toRadians(longitude);
+        final double cosPhi = Math.cos(phi);
+        squaredChords(cosPhi * Math.cos(lambda), cosPhi * Math.sin(lambda),
+                Math.sin(phi), result);
+        toDistances(result);
+    }
+
+    /**
+     * Computes distances from location at provided position to all
+     * locations.
+     *
+     * @param i      position of location.
+     * @param result array where distance to each location, expressed in
+     *               meters, will be stored.
+     * @throws IllegalArgumentException if result is shorter than number of
+     *                                  locations.
+     */
+    public void distances(final int i, final double[] result) {
+        checkResult(result);
+        squaredChords(mX[i], mY[i], mZ[i], result);
+        toDistances(result);
+    }
+
+    /**
+     * Computes distances between all pairs of locations.
+     *
+     * @return row-major matrix of size n x n, where n is the number of
+     * locations, containing the distance between each pair of locations
+     * expressed in meters.
+     * @throws IllegalArgumentException if there are too many locations to
+     *                                  store all distances into an array.
+     */
+    public double[] pairwiseDistances() {
+        final int size = getSize();
+        if ((long) size * size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+        }
+
+        final double[] result = new double[size * size];
+        final double[] row = new double[size];
+        for (int i = 0; i < size; i++) {
+            // only the upper triangle is computed, the lower one is mirrored
+            final int count = size - i - 1;
+            squaredChords(mX[i], mY[i], mZ[i], i + 1, count, row);
+            final int offset = i * size;
+            for (int k = 0; k < count; k++) {
+                final int j = i + 1 + k;
+                final double d = toDistance(row[k]);
+                result[offset + j] = d;
+                result[j * size + i] = d;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds nearest other location of each location.
+     *
+     * @param nearest   array where position of nearest location of each
+     *                  location will be stored, or -1 if there are no other
+     *                  locations.
+     * @param distances array where distance to nearest location, expressed in
+     *                  meters, will be stored, or infinity if there are no
+     *                  other locations.
+     * @throws IllegalArgumentException if any array is shorter than number of
+     *                                  locations.
+     */
+    public void nearest(final int[] nearest, final double[] distances) {
+        final int size = getSize();
+        if (nearest.length < size) {
+            throw new IllegalArgumentException();
+        }
+        checkResult(distances);
+
+        final double[] row = new double[size];
+        for (int i = 0; i < size; i++) {
+            squaredChords(mX[i], mY[i], mZ[i], 0, size, row);
+            row[i] = Double.POSITIVE_INFINITY;
+
+            int best = -1;
+            double bestChord = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < size; j++) {
+                if (row[j] < bestChord) {
+                    bestChord = row[j];
+                    best = j;
+                }
+            }
+            nearest[i] = best;
+            distances[i] = best >= 0 ? toDistance(bestChord) :
+                    Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Converts a distance into the squared length of the chord between two
+     * points of the unit sphere at such distance, which increases
+     * monotonically with distance and can be compared against squared chords
+     * computed by this class.
+     *
+     * @param distance distance expressed in meters.
+     * @return squared chord length.
+     */
+    public static double toSquaredChord(final double distance) {
+        final double angle = Math.min(distance / EARTH_RADIUS, Math.PI);
+        final double halfChord = Math.sin(angle / 2.0);
+        return 4.0 * halfChord * halfChord;
+    }
+
+    /**
+     * Converts a squared chord length between two points of the unit sphere
+     * into the great-circle distance between them.
+     *
+     * @param squaredChord squared chord length.
+     * @return distance expressed in meters.
+     */
+    public static double toDistance(final double squaredChord) {
+        final double halfChord = Math.min(Math.sqrt(squaredChord) / 2.0, 1.0);
+        return 2.0 * EARTH_RADIUS * Math.asin(halfChord);
+    }
+
+    /**
+     * Computes squared chord lengths from a point of the unit sphere to all
+     * locations.
+     *
+     * @param x      x coordinate of point.
+     * @param y      y coordinate of point.
+     * @param z      z coordinate of point.
+     * @param result array where squared chords will be stored.
+     */
+    void squaredChords(final double x, final double y, final double z,
+                       final double[] result) {
+        squaredChords(x, y, z, 0, getSize(), result);
+    }
+
+    /**
+     * Computes squared chord lengths from a point of the unit sphere to a
+     * range of locations.
+     * The loop only reads and writes contiguous arrays and contains no
+     * branches or calls, so that it can be vectorized.
+     *
+     * @param x      x coordinate of point.
+     * @param y      y coordinate of point.
+     * @param z      z coordinate of point.
+     * @param from   position of first location.
+     * @param count  number of locations.
+     * @param result array where squared chord to location from + k will be
+     *               stored at position k.
+     */
+    void squaredChords(final double x, final double y, final double z,
+                       final int from, final int count,
+                       final double[] result) {
+        final double[] xs = mX;
+        final double[] ys = mY;
+        final double[] zs = mZ;
+        for (int k = 0; k < count; k++) {
+            final double dx = xs[from + k] - x;
+            final double dy = ys[from + k] - y;
+            final double dz = zs[from + k] - z;
+            result[k] = dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    /**
+     * Converts squared chords stored in provided array into distances.
+     *
+     * @param result array containing squared chords of all locations.
+     */
+    private void toDistances(final double[] result) {
+        final int size = getSize();
+        for (int i = 0; i < size; i++) {
+            result[i] = toDistance(result[i]);
+        }
+    }
+
+    /**
+     * Checks that provided arrays have the same length.
+     *
+     * @param ids        id of each location or null.
+     * @param latitudes  latitude of each location.
+     * @param longitudes longitude of each location.
+     * @return number of locations.
+     * @throws IllegalArgumentException if arrays have different lengths.
+     */
+    private static int checkLength(final int[] ids, final double[] latitudes,
+                                   final double[] longitudes) {
+        if (latitudes.length != longitudes.length ||
+                (ids != null && ids.length != latitudes.length)) {
+            throw new IllegalArgumentException();
+        }
+        return latitudes.length;
+    }
+
+    /**
+     * Checks that provided result array can hold a value per location.
+     *
+     * @param result array to check.
+     * @throws IllegalArgumentException if array is shorter than number of
+     *                                  locations.
+     */
+    private void checkResult(final double[] result) {
+        if (result.length < getSize()) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Collects locations of images, skipping images without location.
+     */
+    private static class Extractor {
+
+        /**
+         * Id of each collected location.
+         */
+        private int[] mIds = new int[16];
+
+        /**
+         * Latitude of each collected location.
+         */
+        private double[] mLatitudes = new double[16];
+
+        /**
+         * Longitude of each collected location.
+         */
+        private double[] mLongitudes = new double[16];
+
+        /**
+         * Number of collected locations.
+         */
+        private int mCount;
+
+        /**
+         * Position of next image.
+         */
+        private int mPosition;
+
+        /**
+         * Adds location of next image.
+         *
+         * @param location location of image or null.
+         */
+        void add(final GPSCoordinates location) {
+            final int id = mPosition++;
+            if (location == null || !location.isLatitudeAvailable() ||
+                    !location.isLongitudeAvailable()) {
+                return;
+            }
+            if (mCount == mIds.length) {
+                mIds = Arrays.copyOf(mIds, 2 * mCount);
+                mLatitudes = Arrays.copyOf(mLatitudes, 2 * mCount);
+                mLongitudes = Arrays.copyOf(mLongitudes, 2 * mCount);
+            }
+            mIds[mCount] = id;
+            mLatitudes[mCount] = location.getLatitude();
+            mLongitudes[mCount] = location.getLongitude();
+            mCount++;
+        }
+
+        /**
+         * Builds collected locations.
+         *
+         * @return collected locations.
+         */
+        GeoPoints build() {
+            return new GeoPoints(mIds, mLatitudes, mLongitudes, mCount);
+        }
+    }
+}
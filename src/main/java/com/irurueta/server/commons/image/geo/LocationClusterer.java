@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import com.irurueta.server.commons.image.index.SpatialIndex;
+
+import java.util.Arrays;
+
+/**
+ * Groups locations into clusters using DBSCAN (density-based spatial
+ * clustering of applications with noise), for instance to group the photos
+ * of a library into trips.
+ * A location having at least a minimum number of locations (including
+ * itself) within a given distance is a core location. Clusters are formed by
+ * core locations reachable from each other through such distance, together
+ * with any location within such distance of them. Remaining locations are
+ * considered noise.
+ * Neighborhoods are found using a SpatialIndex, so that clustering takes
+ * O(n log n) time for well-spread locations instead of comparing all pairs.
+ * Instances are immutable and can be shared among threads.
+ */
+public class LocationClusterer {
+
+    /**
+     * Default maximum distance between neighbor locations expressed in
+     * meters.
+     */
+    public static final double DEFAULT_EPSILON = 1000.0;
+
+    /**
+     * Default minimum number of neighbor locations of a core location,
+     * including itself.
+     */
+    public static final int DEFAULT_MIN_POINTS = 3;
+
+    /**
+     * Label of locations not yet visited.
+     */
+    private static final int UNVISITED = -2;
+
+    /**
+     * Maximum distance between neighbor locations expressed in meters.
+     */
+    private final double mEpsilon;
+
+    /**
+     * Minimum number of neighbor locations of a core location, including
+     * itself.
+     */
+    private final int mMinPoints;
+
+    /**
+     * Constructor using default parameters.
+     */
+    public LocationClusterer() {
+        this(DEFAULT_EPSILON, DEFAULT_MIN_POINTS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param epsilon   maximum distance between neighbor locations expressed
+     *                  in meters.
+     * @param minPoints minimum number of neighbor locations of a core
+     *                  location, including itself.
+     * @throws IllegalArgumentException if epsilon is negative or minPoints is
+     *                                  less than 1.
+     */
+    public LocationClusterer(final double epsilon, final int minPoints) {
+        if (epsilon < 0.0 || Double.isNaN(epsilon) || minPoints < 1) {
+            throw new IllegalArgumentException();
+        }
+        mEpsilon = epsilon;
+        mMinPoints = minPoints;
+    }
+
+    /**
+     * Returns maximum distance between neighbor locations expressed in
+     * meters.
+     *
+     * @return maximum distance between neighbor locations.
+     */
+    public double getEpsilon() {
+        return mEpsilon;
+    }
+
+    /**
+     * Returns minimum number of neighbor locations of a core location,
+     * including itself.
+     *
+     * @return minimum number of neighbor locations.
+     */
+    public int getMinPoints() {
+        return mMinPoints;
+    }
+
+    /**
+     * Groups provided locations into clusters.
+     *
+     * @param points locations to be clustered.
+     * @return found clusters.
+     */
+    public GeoClusters cluster(final GeoPoints points) {
+        final int size = points.getSize();
+
+        // locations are indexed by their position within points
+        final SpatialIndex.Builder builder = new SpatialIndex.Builder();
+        for (int i = 0; i < size; i++) {
+            builder.add(i, points.getLatitude(i), points.getLongitude(i));
+        }
+        final SpatialIndex index = builder.build();
+
+        final int[] labels = new int[size];
+        Arrays.fill(labels, UNVISITED);
+        int[] queue = new int[16];
+        int clusters = 0;
+        for (int i = 0; i < size; i++) {
+            if (labels[i] != UNVISITED) {
+                continue;
+            }
+            final int[] neighbors = neighbors(index, points, i);
+            if (neighbors.length < mMinPoints) {
+                // might later become a border location of a cluster
+                labels[i] = GeoClusters.NOISE;
+                continue;
+            }
+
+            // expand a new cluster from core location i
+            final int cluster = clusters++;
+            labels[i] = cluster;
+            int head = 0;
+            int tail = 0;
+            for (final int neighbor : neighbors) {
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, 2 * tail);
+                }
+                queue[tail++] = neighbor;
+            }
+            while (head < tail) {
+                final int j = queue[head++];
+                if (labels[j] == GeoClusters.NOISE) {
+                    // border location
+                    labels[j] = cluster;
+                }
+                if (labels[j] != UNVISITED) {
+                    continue;
+                }
+                labels[j] = cluster;
+
+                final int[] reachable = neighbors(index, points, j);
+                if (reachable.length < mMinPoints) {
+                    continue;
+                }
+                for (final int neighbor : reachable) {
+                    final int label = labels[neighbor];
+                    if (label == UNVISITED || label == GeoClusters.NOISE) {
+                        if (tail == queue.length) {
+                            // compact consumed entries before growing
+                            System.arraycopy(queue, head, queue, 0,
+                                    tail - head);
+                            tail -= head;
+                            head = 0;
+                            if (tail == queue.length) {
+                                queue = Arrays.copyOf(queue, 2 * tail);
+                            }
+                        }
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+        }
+        return new GeoClusters(points, labels, clusters);
+    }
+
+    /**
+     * Finds positions of locations within epsilon of a location, including
+     * itself.
+     *
+     * @param index  spatial index of locations.
+     * @param points locations.
+     * @param i      position of location.
+     * @return positions of neighbor locations.
+     */
+    private int[] neighbors(final SpatialIndex index, final GeoPoints points,
+                            final int i) {
+        return index.searchRadius(points.getLatitude(i),
+                points.getLongitude(i), mEpsilon).getIds();
+    }
+}
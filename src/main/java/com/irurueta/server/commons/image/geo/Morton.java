@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+/**
+ * Utility methods to interleave bits of grid coordinates (Morton or Z-order
+ * encoding) and to quantize coordinates into grids.
+ */
+final class Morton {
+
+    /**
+     * Minimum latitude expressed in degrees.
+     */
+    static final double MIN_LATITUDE = -90.0;
+
+    /**
+     * Maximum latitude expressed in degrees.
+     */
+    static final double MAX_LATITUDE = 90.0;
+
+    /**
+     * Minimum longitude expressed in degrees.
+     */
+    static final double MIN_LONGITUDE = -180.0;
+
+    /**
+     * Maximum longitude expressed in degrees.
+     */
+    static final double MAX_LONGITUDE = 180.0;
+
+    /**
+     * Constructor. Prevents instantiation of utility class.
+     */
+    private Morton() {
+    }
+
+    /**
+     * Spreads bits of provided value so that they occupy even positions.
+     *
+     * @param value value to be spread. Its 32 bits are used.
+     * @return spread value.
+     */
+    static long spread(final int value) {
+        long x = value & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    /**
+     * Compacts bits at even positions of provided value. This is the inverse
+     * of spread.
+     *
+     * @param value value to be compacted.
+     * @return compacted value.
+     */
+    static int compact(final long value) {
+        long x = value & 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) x;
+    }
+
+    /**
+     * Quantizes latitude into a grid.
+     *
+     * @param latitude latitude expressed in degrees.
+     * @param bits     number of bits of grid coordinate.
+     * @return grid coordinate.
+     */
+    static int quantizeLatitude(final double latitude, final int bits) {
+        return quantize(latitude, MIN_LATITUDE, MAX_LATITUDE, bits);
+    }
+
+    /**
+     * Quantizes longitude into a grid.
+     *
+     * @param longitude longitude expressed in degrees.
+     * @param bits      number of bits of grid coordinate.
+     * @return grid coordinate.
+     */
+    static int quantizeLongitude(final double longitude, final int bits) {
+        return quantize(longitude, MIN_LONGITUDE, MAX_LONGITUDE, bits);
+    }
+
+    /**
+     * Returns latitude of lower edge of a grid row.
+     *
+     * @param y    grid coordinate.
+     * @param bits number of bits of grid coordinate.
+     * @return latitude expressed in degrees.
+     */
+    static double latitude(final long y, final int bits) {
+        return MIN_LATITUDE + (MAX_LATITUDE - MIN_LATITUDE) * y /
+                (1L << bits);
+    }
+
+    /**
+     * Returns longitude of western edge of a grid column.
+     *
+     * @param x    grid coordinate.
+     * @param bits number of bits of grid coordinate.
+     * @return longitude expressed in degrees.
+     */
+    static double longitude(final long x, final int bits) {
+        return MIN_LONGITUDE + (MAX_LONGITUDE - MIN_LONGITUDE) * x /
+                (1L << bits);
+    }
+
+    /**
+     * Returns number of grid columns spanned by a longitude range, taking
+     * into account ranges crossing the antimeridian.
+     *
+     * @param minLongitude minimum (western) longitude expressed in degrees.
+     * @param maxLongitude maximum (eastern) longitude expressed in degrees.
+     * @param bits         number of bits of grid coordinates.
+     * @return number of columns.
+     */
+    static long columns(final double minLongitude, final double maxLongitude,
+                        final int bits) {
+        final long x0 = quantizeLongitude(minLongitude, bits);
+        final long x1 = quantizeLongitude(maxLongitude, bits);
+        if (minLongitude <= maxLongitude) {
+            return x1 - x0 + 1;
+        }
+        // range crossing the antimeridian might cover the whole ring even if
+        // both ends lie within the same column
+        return Math.min((1L << bits) - x0 + x1 + 1, 1L << bits);
+    }
+
+    /**
+     * Checks that provided location is valid.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @throws IllegalArgumentException if latitude is not between -90 and 90
+     *                                  or longitude is not between -180 and
+     *                                  180.
+     */
+    static void checkLocation(final double latitude, final double longitude) {
+        if (!(latitude >= MIN_LATITUDE && latitude <= MAX_LATITUDE &&
+                longitude >= MIN_LONGITUDE && longitude <= MAX_LONGITUDE)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Checks that provided bounding box is valid. Minimum longitude can be
+     * greater than maximum longitude for boxes crossing the antimeridian.
+     *
+     * @param minLatitude  minimum latitude.
+     * @param minLongitude minimum longitude.
+     * @param maxLatitude  maximum latitude.
+     * @param maxLongitude maximum longitude.
+     * @throws IllegalArgumentException if any coordinate is out of range or
+     *                                  minimum latitude is greater than
+     *                                  maximum latitude.
+     */
+    static void checkBox(final double minLatitude, final double minLongitude,
+                         final double maxLatitude,
+                         final double maxLongitude) {
+        checkLocation(minLatitude, minLongitude);
+        checkLocation(maxLatitude, maxLongitude);
+        if (minLatitude > maxLatitude) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Quantizes a value into a grid, clamping maximum value into last cell.
+     *
+     * @param value value to be quantized.
+     * @param min   minimum value.
+     * @param max   maximum value.
+     * @param bits  number of bits of grid coordinate.
+     * @return grid coordinate.
+     */
+    private static int quantize(final double value, final double min,
+                                final double max, final int bits) {
+        final long cells = 1L << bits;
+        final long q = (long) ((value - min) / (max - min) * cells);
+        return (int) Math.max(0, Math.min(cells - 1, q));
+    }
+}
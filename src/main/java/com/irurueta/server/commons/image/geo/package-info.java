@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * This package contains encodings of GPS coordinates into geohashes and
+ * hierarchical 64-bit cell ids, so that image metadata can be bucketed,
+ * sharded and range-scanned by location using only integer operations.
+ * It also contains batch distance computations over locations stored as
+ * structures of arrays, and density-based clustering of locations.
+ */
+package com.irurueta.server.commons.image.geo;
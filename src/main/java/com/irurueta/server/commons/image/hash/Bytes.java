@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+/**
+ * Utility methods to convert between numbers and bytes.
+ */
+final class Bytes {
+
+    /**
+     * Constructor. Prevents instantiation of utility class.
+     */
+    private Bytes() {
+    }
+
+    /**
+     * Reads a little endian long.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte.
+     * @return read value.
+     */
+    static long getLongLE(final byte[] data, final int offset) {
+        return (data[offset] & 0xFFL) |
+                ((data[offset + 1] & 0xFFL) << 8) |
+                ((data[offset + 2] & 0xFFL) << 16) |
+                ((data[offset + 3] & 0xFFL) << 24) |
+                ((data[offset + 4] & 0xFFL) << 32) |
+                ((data[offset + 5] & 0xFFL) << 40) |
+                ((data[offset + 6] & 0xFFL) << 48) |
+                ((long) data[offset + 7] << 56);
+    }
+
+    /**
+     * Reads a little endian unsigned int.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte.
+     * @return read value.
+     */
+    static long getIntLE(final byte[] data, final int offset) {
+        return (data[offset] & 0xFFL) |
+                ((data[offset + 1] & 0xFFL) << 8) |
+                ((data[offset + 2] & 0xFFL) << 16) |
+                ((data[offset + 3] & 0xFFL) << 24);
+    }
+
+    /**
+     * Writes a little endian long.
+     *
+     * @param value  value to be written.
+     * @param data   array where value is written.
+     * @param offset position of first byte.
+     */
+    static void putLongLE(final long value, final byte[] data,
+                          final int offset) {
+        for (int i = 0; i < 8; i++) {
+            data[offset + i] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    /**
+     * Converts an int into big endian bytes.
+     *
+     * @param value value to be converted.
+     * @return big endian bytes.
+     */
+    static byte[] toBigEndian(final int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16),
+                (byte) (value >>> 8), (byte) value};
+    }
+
+    /**
+     * Converts a long into big endian bytes.
+     *
+     * @param value value to be converted.
+     * @return big endian bytes.
+     */
+    static byte[] toBigEndian(final long value) {
+        final byte[] result = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            result[i] = (byte) (value >>> (56 - 8 * i));
+        }
+        return result;
+    }
+}
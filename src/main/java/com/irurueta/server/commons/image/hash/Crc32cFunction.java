@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+/**
+ * Computes CRC-32C (Castagnoli) checksums.
+ * Because Java 7 does not provide any implementation of this checksum, it is
+ * computed using the slicing-by-8 algorithm, which processes 8 bytes per
+ * iteration using 8 lookup tables.
+ */
+final class Crc32cFunction implements HashFunction {
+
+    /**
+     * Reversed Castagnoli polynomial.
+     */
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * Lookup tables. Table k contains the checksum of a byte followed by k
+     * zero bytes.
+     */
+    private static final int[][] TABLES = createTables();
+
+    /**
+     * Current inverted checksum.
+     */
+    private int mCrc = 0xFFFFFFFF;
+
+    /**
+     * Updates hash with provided data.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte to be hashed.
+     * @param length number of bytes to be hashed.
+     */
+    @Override
+    public void update(final byte[] data, final int offset, final int length) {
+        final int[] t0 = TABLES[0];
+        final int[] t1 = TABLES[1];
+        final int[] t2 = TABLES[2];
+        final int[] t3 = TABLES[3];
+        final int[] t4 = TABLES[4];
+        final int[] t5 = TABLES[5];
+        final int[] t6 = TABLES[6];
+        final int[] t7 = TABLES[7];
+
+        int crc = mCrc;
+        int i = offset;
+        final int end = offset + length;
+        final int end8 = end - 7;
+        while (i < end8) {
+            final int low = crc ^ ((data[i] & 0xFF) |
+                    ((data[i + 1] & 0xFF) << 8) |
+                    ((data[i + 2] & 0xFF) << 16) |
+                    ((data[i + 3] & 0xFF) << 24));
+            crc = t7[low & 0xFF] ^
+                    t6[(low >>> 8) & 0xFF] ^
+                    t5[(low >>> 16) & 0xFF] ^
+                    t4[low >>> 24] ^
+                    t3[data[i + 4] & 0xFF] ^
+                    t2[data[i + 5] & 0xFF] ^
+                    t1[data[i + 6] & 0xFF] ^
+                    t0[data[i + 7] & 0xFF];
+            i += 8;
+        }
+        while (i < end) {
+            crc = (crc >>> 8) ^ t0[(crc ^ data[i]) & 0xFF];
+            i++;
+        }
+        mCrc = crc;
+    }
+
+    /**
+     * Completes hash computation and returns the digest.
+     *
+     * @return checksum in big endian order.
+     */
+    @Override
+    public byte[] digest() {
+        return Bytes.toBigEndian(~mCrc);
+    }
+
+    /**
+     * Creates lookup tables.
+     *
+     * @return lookup tables.
+     */
+    private static int[][] createTables() {
+        final int[][] tables = new int[8][256];
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            tables[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            int crc = tables[0][n];
+            for (int k = 1; k < 8; k++) {
+                crc = tables[0][crc & 0xFF] ^ (crc >>> 8);
+                tables[k][n] = crc;
+            }
+        }
+        return tables;
+    }
+}
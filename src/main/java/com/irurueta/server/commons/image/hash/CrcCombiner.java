@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+/**
+ * Combines CRC checksums of consecutive blocks of data into the checksum of
+ * the concatenated data, as done by zlib crc32_combine.
+ * This allows computing checksums of several chunks in parallel while
+ * obtaining exactly the same value as a sequential computation.
+ */
+final class CrcCombiner {
+
+    /**
+     * Number of bits of a CRC-32 checksum.
+     */
+    private static final int BITS = 32;
+
+    /**
+     * Reversed polynomial of CRC-32.
+     */
+    private static final int CRC32_POLYNOMIAL = 0xEDB88320;
+
+    /**
+     * Reversed polynomial of CRC-32C.
+     */
+    private static final int CRC32C_POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * Constructor. Prevents instantiation of utility class.
+     */
+    private CrcCombiner() {
+    }
+
+    /**
+     * Indicates whether checksums of provided algorithm can be combined.
+     *
+     * @param algorithm an algorithm.
+     * @return true if checksums can be combined, false otherwise.
+     */
+    static boolean isCombinable(final HashAlgorithm algorithm) {
+        return algorithm == HashAlgorithm.CRC32 ||
+                algorithm == HashAlgorithm.CRC32C;
+    }
+
+    /**
+     * Combines checksums of two consecutive blocks.
+     *
+     * @param algorithm CRC32 or CRC32C.
+     * @param crc1      checksum of first block.
+     * @param crc2      checksum of second block.
+     * @param length2   length of second block in bytes.
+     * @return checksum of both blocks.
+     */
+    static int combine(final HashAlgorithm algorithm, final int crc1,
+                       final int crc2, final long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        final int[] even = new int[BITS];
+        final int[] odd = new int[BITS];
+
+        // operator for one zero bit
+        odd[0] = algorithm == HashAlgorithm.CRC32C ? CRC32C_POLYNOMIAL :
+                CRC32_POLYNOMIAL;
+        int row = 1;
+        for (int n = 1; n < BITS; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        // operators for two and four zero bits
+        square(even, odd);
+        square(odd, even);
+
+        // apply length2 zero bytes to crc1 (first square puts the operator
+        // for one zero byte, eight zero bits, in even)
+        int crc = crc1;
+        long length = length2;
+        do {
+            square(even, odd);
+            if ((length & 1) != 0) {
+                crc = times(even, crc);
+            }
+            length >>>= 1;
+            if (length == 0) {
+                break;
+            }
+
+            square(odd, even);
+            if ((length & 1) != 0) {
+                crc = times(odd, crc);
+            }
+            length >>>= 1;
+        } while (length != 0);
+
+        return crc ^ crc2;
+    }
+
+    /**
+     * Multiplies a matrix by a vector over GF(2).
+     *
+     * @param matrix matrix.
+     * @param vector vector.
+     * @return product.
+     */
+    private static int times(final int[] matrix, final int vector) {
+        int sum = 0;
+        int v = vector;
+        int i = 0;
+        while (v != 0) {
+            if ((v & 1) != 0) {
+                sum ^= matrix[i];
+            }
+            v >>>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    /**
+     * Squares a matrix over GF(2).
+     *
+     * @param square matrix where result is stored.
+     * @param matrix matrix to be squared.
+     */
+    private static void square(final int[] square, final int[] matrix) {
+        for (int n = 0; n < BITS; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Enumerator indicating supported hash algorithms.
+ */
+public enum HashAlgorithm {
+    /**
+     * CRC-32 checksum (as used by ZIP or PNG). Digest contains the checksum in
+     * big endian order.
+     */
+    CRC32("crc32", 4),
+
+    /**
+     * CRC-32C (Castagnoli) checksum (as used by iSCSI, ext4 or many storage
+     * systems). Digest contains the checksum in big endian order.
+     */
+    CRC32C("crc32c", 4),
+
+    /**
+     * MD5 cryptographic digest.
+     */
+    MD5("md5", 16),
+
+    /**
+     * SHA-256 cryptographic digest.
+     */
+    SHA256("sha256", 32),
+
+    /**
+     * XXH64 fast non-cryptographic 64-bit hash using seed zero. Digest
+     * contains the hash in big endian order.
+     */
+    XXH64("xxh64", 8),
+
+    /**
+     * MurmurHash3 x64 fast non-cryptographic 128-bit hash using seed zero.
+     * Digest contains both 64-bit halves in little endian order.
+     */
+    MURMUR3_128("murmur3_128", 16);
+
+    /**
+     * String representation of algorithm.
+     */
+    private final String mValue;
+
+    /**
+     * Length of digests in bytes.
+     */
+    private final int mDigestLength;
+
+    /**
+     * Constructor.
+     *
+     * @param value        string representation of algorithm.
+     * @param digestLength length of digests in bytes.
+     */
+    HashAlgorithm(final String value, final int digestLength) {
+        mValue = value;
+        mDigestLength = digestLength;
+    }
+
+    /**
+     * Returns string representation of algorithm.
+     *
+     * @return string representation of algorithm.
+     */
+    public String getValue() {
+        return mValue;
+    }
+
+    /**
+     * Returns length of digests in bytes.
+     *
+     * @return length of digests in bytes.
+     */
+    public int getDigestLength() {
+        return mDigestLength;
+    }
+
+    /**
+     * Indicates whether algorithm is a cryptographic digest.
+     *
+     * @return true if algorithm is cryptographic, false otherwise.
+     */
+    public boolean isCryptographic() {
+        return this == MD5 || this == SHA256;
+    }
+
+    /**
+     * Obtains hash algorithm from provided string representation.
+     *
+     * @param value string representation.
+     * @return hash algorithm or null if not supported.
+     */
+    public static HashAlgorithm fromValue(final String value) {
+        if (value == null) {
+            return null;
+        }
+        for (final HashAlgorithm algorithm : values()) {
+            if (algorithm.mValue.equalsIgnoreCase(value)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a function to compute a hash using this algorithm.
+     *
+     * @return a new hash function.
+     * @throws NoSuchAlgorithmException if algorithm is not available on this
+     *                                  platform.
+     */
+    HashFunction createFunction() throws NoSuchAlgorithmException {
+        switch (this) {
+            case CRC32:
+                return new Crc32Function();
+            case CRC32C:
+                return new Crc32cFunction();
+            case MD5:
+                return new MessageDigestFunction("MD5");
+            case SHA256:
+                return new MessageDigestFunction("SHA-256");
+            case XXH64:
+                return new XxHash64Function();
+            case MURMUR3_128:
+            default:
+                return new Murmur3Function();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+/**
+ * Incremental computation of a hash.
+ * Implementations are not thread-safe and are meant to be used to hash a
+ * single input.
+ */
+interface HashFunction {
+
+    /**
+     * Updates hash with provided data.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte to be hashed.
+     * @param length number of bytes to be hashed.
+     */
+    void update(final byte[] data, final int offset, final int length);
+
+    /**
+     * Completes hash computation and returns the digest.
+     * No further updates are allowed after calling this method.
+     *
+     * @return digest.
+     */
+    byte[] digest();
+}
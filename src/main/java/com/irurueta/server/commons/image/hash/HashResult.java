@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contains digests computed by a Hasher.
+ * Instances are immutable.
+ */
+public class HashResult {
+
+    /**
+     * Digests for each computed algorithm.
+     */
+    private final Map<HashAlgorithm, byte[]> mDigests;
+
+    /**
+     * Number of hashed bytes.
+     */
+    private final long mLength;
+
+    /**
+     * Size of chunks in bytes if digests were computed in tree mode, zero
+     * otherwise.
+     */
+    private final int mChunkSize;
+
+    /**
+     * Constructor.
+     *
+     * @param digests digests for each computed algorithm.
+     * @param length  number of hashed bytes.
+     */
+    HashResult(final EnumMap<HashAlgorithm, byte[]> digests,
+               final long length) {
+        this(digests, length, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param digests   digests for each computed algorithm.
+     * @param length    number of hashed bytes.
+     * @param chunkSize size of chunks in bytes if digests were computed in
+     *                  tree mode, zero otherwise.
+     */
+    HashResult(final EnumMap<HashAlgorithm, byte[]> digests,
+               final long length, final int chunkSize) {
+        mDigests = Collections.unmodifiableMap(digests);
+        mLength = length;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Creates a result from previously computed digests, for instance when
+     * restoring a stored result.
+     *
+     * @param digests   digests for each computed algorithm.
+     * @param length    number of hashed bytes.
+     * @param chunkSize size of chunks in bytes if digests were computed in
+     *                  tree mode, zero otherwise.
+     * @return created result.
+     * @throws IllegalArgumentException if any digest is missing or does not
+     *                                  have the digest length of its algorithm,
+     *                                  or length or chunk size are negative.
+     */
+    public static HashResult create(final Map<HashAlgorithm, byte[]> digests,
+                                    final long length, final int chunkSize) {
+        if (length < 0 || chunkSize < 0) {
+            throw new IllegalArgumentException();
+        }
+        final EnumMap<HashAlgorithm, byte[]> copy =
+                new EnumMap<>(HashAlgorithm.class);
+        for (final Map.Entry<HashAlgorithm, byte[]> entry :
+                digests.entrySet()) {
+            final byte[] digest = entry.getValue();
+            if (digest == null ||
+                    digest.length != entry.getKey().getDigestLength()) {
+                throw new IllegalArgumentException();
+            }
+            copy.put(entry.getKey(), digest.clone());
+        }
+        return new HashResult(copy, length, chunkSize);
+    }
+
+    /**
+     * Returns number of hashed bytes.
+     *
+     * @return number of hashed bytes.
+     */
+    public long getLength() {
+        return mLength;
+    }
+
+    /**
+     * Indicates whether digests were computed in tree mode.
+     * In tree mode, CRC32 and CRC32C values are identical to sequentially
+     * computed ones, while the digest of any other algorithm is the root of a
+     * tree (the digest of the concatenated digests of all chunks), hence it
+     * differs from the sequentially computed one.
+     *
+     * @return true if digests were computed in tree mode, false otherwise.
+     */
+    public boolean isTree() {
+        return mChunkSize > 0;
+    }
+
+    /**
+     * Returns size of chunks in bytes if digests were computed in tree mode.
+     * Tree digests can only be compared when computed using the same chunk
+     * size.
+     *
+     * @return size of chunks or zero if digests were not computed in tree
+     * mode.
+     */
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /**
+     * Returns computed algorithms.
+     *
+     * @return computed algorithms.
+     */
+    public Set<HashAlgorithm> getAlgorithms() {
+        return mDigests.isEmpty() ? EnumSet.noneOf(HashAlgorithm.class) :
+                EnumSet.copyOf(mDigests.keySet());
+    }
+
+    /**
+     * Indicates whether provided algorithm has been computed.
+     *
+     * @param algorithm an algorithm.
+     * @return true if algorithm has been computed, false otherwise.
+     */
+    public boolean contains(final HashAlgorithm algorithm) {
+        return mDigests.containsKey(algorithm);
+    }
+
+    /**
+     * Returns digest computed using provided algorithm.
+     *
+     * @param algorithm an algorithm.
+     * @return a copy of the digest or null if algorithm was not computed.
+     */
+    public byte[] getDigest(final HashAlgorithm algorithm) {
+        final byte[] digest = mDigests.get(algorithm);
+        return digest != null ? digest.clone() : null;
+    }
+
+    /**
+     * Returns digest computed using provided algorithm as a lowercase
+     * hexadecimal string.
+     *
+     * @param algorithm an algorithm.
+     * @return hexadecimal digest or null if algorithm was not computed.
+     */
+    public String getHex(final HashAlgorithm algorithm) {
+        final byte[] digest = mDigests.get(algorithm);
+        return digest != null ? Hex.encodeHexString(digest) : null;
+    }
+
+    /**
+     * Returns digest computed using provided algorithm as a Base64 string.
+     *
+     * @param algorithm an algorithm.
+     * @return Base64 digest or null if algorithm was not computed.
+     */
+    public String getBase64(final HashAlgorithm algorithm) {
+        final byte[] digest = mDigests.get(algorithm);
+        return digest != null ? Base64.encodeBase64String(digest) : null;
+    }
+
+    /**
+     * Returns digest of an algorithm having at most 8 bytes as a number
+     * (i.e. CRC32, CRC32C or XXH64). CRC values are returned as unsigned
+     * values, in the same way as java.util.zip.CRC32 does.
+     *
+     * @param algorithm an algorithm having digests of at most 8 bytes.
+     * @return digest as a number or null if algorithm was not computed.
+     * @throws IllegalArgumentException if digests of algorithm are longer than
+     *                                  8 bytes.
+     */
+    public Long getValue(final HashAlgorithm algorithm) {
+        if (algorithm.getDigestLength() > 8) {
+            throw new IllegalArgumentException();
+        }
+        final byte[] digest = mDigests.get(algorithm);
+        if (digest == null) {
+            return null;
+        }
+        long value = 0;
+        for (final byte b : digest) {
+            value = (value << 8) | (b & 0xFF);
+        }
+        return value;
+    }
+}
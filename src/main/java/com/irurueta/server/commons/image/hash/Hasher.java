@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Computes any combination of hashes of some data in a single pass.
+ * Data is read once using a large buffer, and each read chunk is fed to all
+ * requested algorithms while it is still in the processor cache, instead of
+ * reading the data once per algorithm.
+ * Instances are immutable and can be shared among threads.
+ */
+public class Hasher {
+
+    /**
+     * Default size of read buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Minimum size of read buffer in bytes.
+     */
+    public static final int MIN_BUFFER_SIZE = 1;
+
+    /**
+     * Algorithms to be computed.
+     */
+    private final Set<HashAlgorithm> mAlgorithms;
+
+    /**
+     * Size of read buffer in bytes.
+     */
+    private final int mBufferSize;
+
+    /**
+     * Constructor using default buffer size.
+     *
+     * @param algorithms algorithms to be computed.
+     * @throws IllegalArgumentException if algorithms are not provided.
+     */
+    public Hasher(final HashAlgorithm... algorithms) {
+        this(toSet(algorithms), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param algorithms algorithms to be computed.
+     * @param bufferSize size of read buffer in bytes.
+     * @throws IllegalArgumentException if algorithms are not provided or if
+     *                                  buffer size is less than 1.
+     */
+    public Hasher(final Set<HashAlgorithm> algorithms, final int bufferSize) {
+        if (algorithms == null || bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        mAlgorithms = Collections.unmodifiableSet(algorithms.isEmpty() ?
+                EnumSet.noneOf(HashAlgorithm.class) :
+                EnumSet.copyOf(algorithms));
+        mBufferSize = bufferSize;
+    }
+
+    /**
+     * Returns algorithms to be computed.
+     *
+     * @return algorithms to be computed.
+     */
+    public Set<HashAlgorithm> getAlgorithms() {
+        return mAlgorithms;
+    }
+
+    /**
+     * Returns size of read buffer in bytes.
+     *
+     * @return size of read buffer.
+     */
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * Computes hashes of provided file.
+     *
+     * @param f file to be hashed.
+     * @return computed hashes.
+     * @throws IOException if an I/O error occurs or an algorithm is not
+     *                     available on this platform.
+     */
+    public HashResult hash(final File f) throws IOException {
+        // do not allocate a buffer larger than the file
+        final long length = f.length();
+        final int bufferSize = (int) Math.max(MIN_BUFFER_SIZE,
+                Math.min(mBufferSize, length));
+        try (final InputStream stream = new FileInputStream(f)) {
+            return hash(stream, new byte[bufferSize]);
+        }
+    }
+
+    /**
+     * Computes hashes of all remaining data of provided stream.
+     * Stream is not closed.
+     *
+     * @param stream stream to be hashed.
+     * @return computed hashes.
+     * @throws IOException if an I/O error occurs or an algorithm is not
+     *                     available on this platform.
+     */
+    public HashResult hash(final InputStream stream) throws IOException {
+        return hash(stream, new byte[mBufferSize]);
+    }
+
+    /**
+     * Computes hashes of provided data.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte to be hashed.
+     * @param length number of bytes to be hashed.
+     * @return computed hashes.
+     * @throws IOException if an algorithm is not available on this platform.
+     */
+    public HashResult hash(final byte[] data, final int offset,
+                           final int length) throws IOException {
+        final HashFunction[] functions = createFunctions();
+        for (final HashFunction function : functions) {
+            function.update(data, offset, length);
+        }
+        return createResult(functions, length);
+    }
+
+    /**
+     * Computes hashes of all remaining data of provided stream using provided
+     * buffer.
+     *
+     * @param stream stream to be hashed.
+     * @param buffer read buffer.
+     * @return computed hashes.
+     * @throws IOException if an I/O error occurs or an algorithm is not
+     *                     available on this platform.
+     */
+    private HashResult hash(final InputStream stream, final byte[] buffer)
+            throws IOException {
+        final HashFunction[] functions = createFunctions();
+        long length = 0;
+        int n;
+        while ((n = stream.read(buffer)) >= 0) {
+            for (final HashFunction function : functions) {
+                function.update(buffer, 0, n);
+            }
+            length += n;
+        }
+        return createResult(functions, length);
+    }
+
+    /**
+     * Creates a function for each algorithm.
+     *
+     * @return created functions in the same order as algorithms.
+     * @throws IOException if an algorithm is not available on this platform.
+     */
+    HashFunction[] createFunctions() throws IOException {
+        final HashFunction[] functions = new HashFunction[mAlgorithms.size()];
+        int i = 0;
+        try {
+            for (final HashAlgorithm algorithm : mAlgorithms) {
+                functions[i++] = algorithm.createFunction();
+            }
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        return functions;
+    }
+
+    /**
+     * Creates result containing digests of all functions.
+     *
+     * @param functions functions in the same order as algorithms.
+     * @param length    number of hashed bytes.
+     * @return result.
+     */
+    HashResult createResult(final HashFunction[] functions,
+                            final long length) {
+        final EnumMap<HashAlgorithm, byte[]> digests =
+                new EnumMap<>(HashAlgorithm.class);
+        int i = 0;
+        for (final HashAlgorithm algorithm : mAlgorithms) {
+            digests.put(algorithm, functions[i++].digest());
+        }
+        return new HashResult(digests, length);
+    }
+
+    /**
+     * Converts an array of algorithms into a set.
+     *
+     * @param algorithms array of algorithms.
+     * @return set of algorithms.
+     * @throws IllegalArgumentException if algorithms are not provided.
+     */
+    private static Set<HashAlgorithm> toSet(final HashAlgorithm[] algorithms) {
+        if (algorithms == null) {
+            throw new IllegalArgumentException();
+        }
+        final Set<HashAlgorithm> result = EnumSet.noneOf(HashAlgorithm.class);
+        Collections.addAll(result, algorithms);
+        return result;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes cryptographic digests using the security providers of the JDK.
+ */
+final class MessageDigestFunction implements HashFunction {
+
+    /**
+     * Internal message digest.
+     */
+    private final MessageDigest mDigest;
+
+    /**
+     * Constructor.
+     *
+     * @param algorithm name of algorithm of the JDK (i.e. MD5 or SHA-256).
+     * @throws NoSuchAlgorithmException if algorithm is not available.
+     */
+    MessageDigestFunction(final String algorithm)
+            throws NoSuchAlgorithmException {
+        mDigest = MessageDigest.getInstance(algorithm);
+    }
+
+    /**
+     * Updates hash with provided data.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte to be hashed.
+     * @param length number of bytes to be hashed.
+     */
+    @Override
+    public void update(final byte[] data, final int offset, final int length) {
+        mDigest.update(data, offset, length);
+    }
+
+    /**
+     * Completes hash computation and returns the digest.
+     *
+     * @return digest.
+     */
+    @Override
+    public byte[] digest() {
+        return mDigest.digest();
+    }
+}
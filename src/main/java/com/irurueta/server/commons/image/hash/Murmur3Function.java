@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+/**
+ * Computes MurmurHash3 x64 128-bit hashes using seed zero.
+ * This is a fast non-cryptographic hash processing 16 bytes per iteration,
+ * providing a wider digest than 64-bit hashes, which makes collisions
+ * negligible even for very large collections of images.
+ */
+final class Murmur3Function implements HashFunction {
+
+    /**
+     * First mixing constant.
+     */
+    private static final long C1 = 0x87C37B91114253D5L;
+
+    /**
+     * Second mixing constant.
+     */
+    private static final long C2 = 0x4CF5AD432745937FL;
+
+    /**
+     * Number of bytes processed on each iteration.
+     */
+    private static final int BLOCK_LENGTH = 16;
+
+    /**
+     * Bytes pending to be processed until a full block is available.
+     */
+    private final byte[] mBuffer = new byte[BLOCK_LENGTH];
+
+    /**
+     * Number of bytes in buffer.
+     */
+    private int mBuffered;
+
+    /**
+     * Total number of hashed bytes.
+     */
+    private long mLength;
+
+    /**
+     * First half of hash.
+     */
+    private long mH1;
+
+    /**
+     * Second half of hash.
+     */
+    private long mH2;
+
+    /**
+     * Updates hash with provided data.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte to be hashed.
+     * @param length number of bytes to be hashed.
+     */
+    @Override
+    public void update(final byte[] data, final int offset, final int length) {
+        mLength += length;
+        int i = offset;
+        final int end = offset + length;
+
+        if (mBuffered > 0) {
+            final int n = Math.min(BLOCK_LENGTH - mBuffered, length);
+            System.arraycopy(data, i, mBuffer, mBuffered, n);
+            mBuffered += n;
+            i += n;
+            if (mBuffered < BLOCK_LENGTH) {
+                return;
+            }
+            processBlocks(mBuffer, 0, BLOCK_LENGTH);
+            mBuffered = 0;
+        }
+
+        final int blocks = (end - i) / BLOCK_LENGTH * BLOCK_LENGTH;
+        processBlocks(data, i, blocks);
+        i += blocks;
+
+        mBuffered = end - i;
+        System.arraycopy(data, i, mBuffer, 0, mBuffered);
+    }
+
+    /**
+     * Completes hash computation and returns the digest.
+     *
+     * @return both halves of hash in little endian order.
+     */
+    @Override
+    public byte[] digest() {
+        long h1 = mH1;
+        long h2 = mH2;
+
+        // process tail
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = mBuffered - 1; i >= 8; i--) {
+            k2 ^= (mBuffer[i] & 0xFFL) << (8 * (i - 8));
+        }
+        for (int i = Math.min(mBuffered, 8) - 1; i >= 0; i--) {
+            k1 ^= (mBuffer[i] & 0xFFL) << (8 * i);
+        }
+        if (mBuffered > 8) {
+            h2 ^= mixK2(k2);
+        }
+        if (mBuffered > 0) {
+            h1 ^= mixK1(k1);
+        }
+
+        h1 ^= mLength;
+        h2 ^= mLength;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        final byte[] result = new byte[BLOCK_LENGTH];
+        Bytes.putLongLE(h1, result, 0);
+        Bytes.putLongLE(h2, result, 8);
+        return result;
+    }
+
+    /**
+     * Processes full blocks.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte.
+     * @param length number of bytes, multiple of block length.
+     */
+    private void processBlocks(final byte[] data, final int offset,
+                               final int length) {
+        long h1 = mH1;
+        long h2 = mH2;
+        final int end = offset + length;
+        for (int i = offset; i < end; i += BLOCK_LENGTH) {
+            h1 ^= mixK1(Bytes.getLongLE(data, i));
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52DCE729;
+
+            h2 ^= mixK2(Bytes.getLongLE(data, i + 8));
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+        mH1 = h1;
+        mH2 = h2;
+    }
+
+    /**
+     * Mixes first lane of a block.
+     *
+     * @param k1 first lane.
+     * @return mixed lane.
+     */
+    private static long mixK1(final long k1) {
+        return Long.rotateLeft(k1 * C1, 31) * C2;
+    }
+
+    /**
+     * Mixes second lane of a block.
+     *
+     * @param k2 second lane.
+     * @return mixed lane.
+     */
+    private static long mixK2(final long k2) {
+        return Long.rotateLeft(k2 * C2, 33) * C1;
+    }
+
+    /**
+     * Final avalanche mix.
+     *
+     * @param k value to be mixed.
+     * @return mixed value.
+     */
+    private static long fmix(final long k) {
+        long h = k;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
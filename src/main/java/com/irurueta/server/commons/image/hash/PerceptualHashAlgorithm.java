@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+/**
+ * Enumerator indicating supported perceptual hash algorithms.
+ * Perceptual hashes are 64-bit values that remain similar when an image is
+ * re-encoded, resized or slightly modified, hence the Hamming distance between
+ * hashes of two images can be used to detect near-duplicates.
+ */
+public enum PerceptualHashAlgorithm {
+    /**
+     * Average hash: each bit indicates whether a cell of an 8x8 grayscale
+     * reduction of the image is brighter than the mean. Fastest but least
+     * robust.
+     */
+    AVERAGE("ahash"),
+
+    /**
+     * Difference hash: each bit indicates whether a cell of a 9x8 grayscale
+     * reduction of the image is brighter than its left neighbour. Robust to
+     * brightness and contrast changes.
+     */
+    DIFFERENCE("dhash"),
+
+    /**
+     * DCT hash: each bit indicates whether one of the 8x8 lowest frequency
+     * coefficients of the DCT of a 32x32 grayscale reduction of the image is
+     * larger than their median. Most robust to re-encoding and small edits.
+     */
+    DCT("phash");
+
+    /**
+     * String representation of algorithm.
+     */
+    private final String mValue;
+
+    /**
+     * Constructor.
+     *
+     * @param value string representation of algorithm.
+     */
+    PerceptualHashAlgorithm(final String value) {
+        mValue = value;
+    }
+
+    /**
+     * Returns string representation of algorithm.
+     *
+     * @return string representation of algorithm.
+     */
+    public String getValue() {
+        return mValue;
+    }
+
+    /**
+     * Obtains perceptual hash algorithm from provided string representation.
+     *
+     * @param value string representation.
+     * @return perceptual hash algorithm or null if not supported.
+     */
+    public static PerceptualHashAlgorithm fromValue(final String value) {
+        if (value == null) {
+            return null;
+        }
+        for (final PerceptualHashAlgorithm algorithm : values()) {
+            if (algorithm.mValue.equalsIgnoreCase(value)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Computes perceptual hashes of images.
+ * All hashes are computed from a grayscale reduction of the image. When hashing
+ * a file, the image is decoded using source subsampling, so that only a small
+ * fraction of its pixels is kept in memory and processed.
+ * Hashes are computed on stored pixels, without taking EXIF orientation into
+ * account.
+ * Instances are immutable and can be shared among threads.
+ */
+public class PerceptualHasher {
+
+    /**
+     * Minimum size in pixels of the smallest side of images decoded to
+     * compute hashes. Images are subsampled while decoding as much as
+     * possible while keeping at least this size, which is large enough to
+     * average the 32x32 reduction used by DCT hashes.
+     */
+    public static final int MIN_DECODE_SIZE = 128;
+
+    /**
+     * Size of reductions used by average hashes.
+     */
+    private static final int HASH_SIZE = 8;
+
+    /**
+     * Size of reductions used by DCT hashes.
+     */
+    private static final int DCT_SIZE = 32;
+
+    /**
+     * Cosine table of DCT-II, including orthonormal scale factors, for the
+     * lowest frequencies.
+     */
+    private static final double[][] DCT_TABLE = createDctTable();
+
+    /**
+     * Algorithms to be computed.
+     */
+    private final Set<PerceptualHashAlgorithm> mAlgorithms;
+
+    /**
+     * Constructor.
+     *
+     * @param algorithms algorithms to be computed.
+     * @throws IllegalArgumentException if algorithms are not provided.
+     */
+    public PerceptualHasher(final PerceptualHashAlgorithm... algorithms) {
+        if (algorithms == null) {
+            throw new IllegalArgumentException();
+        }
+        final Set<PerceptualHashAlgorithm> set =
+                EnumSet.noneOf(PerceptualHashAlgorithm.class);
+        Collections.addAll(set, algorithms);
+        mAlgorithms = Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param algorithms algorithms to be computed.
+     * @throws IllegalArgumentException if algorithms are not provided.
+     */
+    public PerceptualHasher(final Set<PerceptualHashAlgorithm> algorithms) {
+        if (algorithms == null) {
+            throw new IllegalArgumentException();
+        }
+        final Set<PerceptualHashAlgorithm> set =
+                EnumSet.noneOf(PerceptualHashAlgorithm.class);
+        set.addAll(algorithms);
+        mAlgorithms = Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * Returns algorithms to be computed.
+     *
+     * @return algorithms to be computed.
+     */
+    public Set<PerceptualHashAlgorithm> getAlgorithms() {
+        return mAlgorithms;
+    }
+
+    /**
+     * Computes perceptual hashes of provided image file, decoding a
+     * subsampled version of it.
+     *
+     * @param f image file.
+     * @return computed hashes.
+     * @throws IOException if an I/O error occurs or image format is not
+     *                     supported.
+     */
+    public PerceptualHashes hash(final File f) throws IOException {
+        if (!f.canRead()) {
+            throw new IIOException("Can't read input file!");
+        }
+        try (final ImageInputStream stream =
+                     ImageIO.createImageInputStream(f)) {
+            if (stream == null) {
+                throw new IIOException("Can't create an ImageInputStream!");
+            }
+            final Iterator<ImageReader> readers =
+                    ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IIOException("Unsupported image format");
+            }
+
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                final int minSide = Math.min(reader.getWidth(0),
+                        reader.getHeight(0));
+                final int subsampling = Math.max(1,
+                        minSide / MIN_DECODE_SIZE);
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return hash(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Computes perceptual hashes of provided image.
+     *
+     * @param image image to be hashed.
+     * @return computed hashes.
+     * @throws IllegalArgumentException if image is not provided.
+     */
+    public PerceptualHashes hash(final BufferedImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException();
+        }
+
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final double[] luminance = toLuminance(image, width, height);
+
+        final EnumMap<PerceptualHashAlgorithm, Long> hashes =
+                new EnumMap<>(PerceptualHashAlgorithm.class);
+        for (final PerceptualHashAlgorithm algorithm : mAlgorithms) {
+            switch (algorithm) {
+                case AVERAGE:
+                    hashes.put(algorithm, averageHash(reduce(luminance, width,
+                            height, HASH_SIZE, HASH_SIZE)));
+                    break;
+                case DIFFERENCE:
+                    hashes.put(algorithm, differenceHash(reduce(luminance,
+                            width, height, HASH_SIZE + 1, HASH_SIZE)));
+                    break;
+                case DCT:
+                default:
+                    hashes.put(algorithm, dctHash(reduce(luminance, width,
+                            height, DCT_SIZE, DCT_SIZE)));
+                    break;
+            }
+        }
+        return new PerceptualHashes(hashes);
+    }
+
+    /**
+     * Computes average hash.
+     *
+     * @param cells 8x8 grayscale reduction.
+     * @return hash.
+     */
+    private static long averageHash(final double[] cells) {
+        double mean = 0.0;
+        for (final double cell : cells) {
+            mean += cell;
+        }
+        mean /= cells.length;
+        return toBits(cells, mean);
+    }
+
+    /**
+     * Computes difference hash.
+     *
+     * @param cells 9x8 grayscale reduction.
+     * @return hash.
+     */
+    private static long differenceHash(final double[] cells) {
+        long hash = 0;
+        for (int y = 0; y < HASH_SIZE; y++) {
+            final int row = y * (HASH_SIZE + 1);
+            for (int x = 0; x < HASH_SIZE; x++) {
+                hash <<= 1;
+                if (cells[row + x + 1] > cells[row + x]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Computes DCT hash.
+     *
+     * @param cells 32x32 grayscale reduction.
+     * @return hash.
+     */
+    private static long dctHash(final double[] cells) {
+        // separable DCT-II keeping only the lowest frequencies: first along
+        // rows, then along columns
+        final double[] rows = new double[DCT_SIZE * HASH_SIZE];
+        for (int y = 0; y < DCT_SIZE; y++) {
+            for (int u = 0; u < HASH_SIZE; u++) {
+                final double[] cos = DCT_TABLE[u];
+                double sum = 0.0;
+                for (int x = 0; x < DCT_SIZE; x++) {
+                    sum += cells[y * DCT_SIZE + x] * cos[x];
+                }
+                rows[y * HASH_SIZE + u] = sum;
+            }
+        }
+
+        final double[] coefficients = new double[HASH_SIZE * HASH_SIZE];
+        for (int v = 0; v < HASH_SIZE; v++) {
+            final double[] cos = DCT_TABLE[v];
+            for (int u = 0; u < HASH_SIZE; u++) {
+                double sum = 0.0;
+                for (int y = 0; y < DCT_SIZE; y++) {
+                    sum += rows[y * HASH_SIZE + u] * cos[y];
+                }
+                coefficients[v * HASH_SIZE + u] = sum;
+            }
+        }
+
+        final double[] sorted = coefficients.clone();
+        Arrays.sort(sorted);
+        final double median = (sorted[sorted.length / 2 - 1] +
+                sorted[sorted.length / 2]) / 2.0;
+        return toBits(coefficients, median);
+    }
+
+    /**
+     * Converts values into bits indicating whether each value is larger than
+     * a threshold. First value is stored in the most significant bit.
+     *
+     * @param values    64 values.
+     * @param threshold threshold.
+     * @return bits.
+     */
+    private static long toBits(final double[] values, final double threshold) {
+        long hash = 0;
+        for (final double value : values) {
+            hash <<= 1;
+            if (value > threshold) {
+                hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Converts an image into luminance values.
+     *
+     * @param image  image.
+     * @param width  image width.
+     * @param height image height.
+     * @return luminance of each pixel in row-major order.
+     */
+    private static double[] toLuminance(final BufferedImage image,
+                                        final int width, final int height) {
+        final int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        final double[] luminance = new double[rgb.length];
+        for (int i = 0; i < rgb.length; i++) {
+            final int pixel = rgb[i];
+            luminance[i] = 0.299 * ((pixel >> 16) & 0xFF) +
+                    0.587 * ((pixel >> 8) & 0xFF) +
+                    0.114 * (pixel & 0xFF);
+        }
+        return luminance;
+    }
+
+    /**
+     * Reduces luminance values by averaging the block of pixels covered by
+     * each target cell.
+     *
+     * @param luminance    luminance of each pixel in row-major order.
+     * @param width        image width.
+     * @param height       image height.
+     * @param targetWidth  width of reduction.
+     * @param targetHeight height of reduction.
+     * @return reduction in row-major order.
+     */
+    private static double[] reduce(final double[] luminance, final int width,
+                                   final int height, final int targetWidth,
+                                   final int targetHeight) {
+        final double[] result = new double[targetWidth * targetHeight];
+        for (int ty = 0; ty < targetHeight; ty++) {
+            final int y0 = (int) ((long) ty * height / targetHeight);
+            final int y1 = Math.max(y0 + 1,
+                    (int) ((long) (ty + 1) * height / targetHeight));
+            for (int tx = 0; tx < targetWidth; tx++) {
+                final int x0 = (int) ((long) tx * width / targetWidth);
+                final int x1 = Math.max(x0 + 1,
+                        (int) ((long) (tx + 1) * width / targetWidth));
+                double sum = 0.0;
+                for (int y = y0; y < y1; y++) {
+                    final int row = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        sum += luminance[row + x];
+                    }
+                }
+                result[ty * targetWidth + tx] = sum / ((y1 - y0) * (x1 - x0));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates cosine table of DCT-II for the lowest frequencies.
+     *
+     * @return cosine table.
+     */
+    private static double[][] createDctTable() {
+        final double[][] table = new double[HASH_SIZE][DCT_SIZE];
+        for (int u = 0; u < HASH_SIZE; u++) {
+            final double scale = Math.sqrt((u == 0 ? 1.0 : 2.0) / DCT_SIZE);
+            for (int x = 0; x < DCT_SIZE; x++) {
+                table[u][x] = scale * Math.cos((2 * x + 1) * u * Math.PI /
+                        (2 * DCT_SIZE));
+            }
+        }
+        return table;
+    }
+}
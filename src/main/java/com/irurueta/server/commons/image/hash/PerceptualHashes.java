@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contains perceptual hashes computed by a PerceptualHasher.
+ * Instances are immutable.
+ */
+public class PerceptualHashes {
+
+    /**
+     * Number of bits of a perceptual hash.
+     */
+    public static final int BITS = 64;
+
+    /**
+     * Hashes for each computed algorithm.
+     */
+    private final Map<PerceptualHashAlgorithm, Long> mHashes;
+
+    /**
+     * Constructor.
+     *
+     * @param hashes hashes for each computed algorithm.
+     */
+    PerceptualHashes(final EnumMap<PerceptualHashAlgorithm, Long> hashes) {
+        mHashes = Collections.unmodifiableMap(hashes);
+    }
+
+    /**
+     * Creates hashes from previously computed values, for instance when
+     * restoring stored hashes.
+     *
+     * @param hashes hashes for each computed algorithm.
+     * @return created hashes.
+     * @throws IllegalArgumentException if any hash is missing.
+     */
+    public static PerceptualHashes create(
+            final Map<PerceptualHashAlgorithm, Long> hashes) {
+        final EnumMap<PerceptualHashAlgorithm, Long> copy =
+                new EnumMap<>(PerceptualHashAlgorithm.class);
+        for (final Map.Entry<PerceptualHashAlgorithm, Long> entry :
+                hashes.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException();
+            }
+            copy.put(entry.getKey(), entry.getValue());
+        }
+        return new PerceptualHashes(copy);
+    }
+
+    /**
+     * Returns computed algorithms.
+     *
+     * @return computed algorithms.
+     */
+    public Set<PerceptualHashAlgorithm> getAlgorithms() {
+        return mHashes.isEmpty() ?
+                EnumSet.noneOf(PerceptualHashAlgorithm.class) :
+                EnumSet.copyOf(mHashes.keySet());
+    }
+
+    /**
+     * Indicates whether provided algorithm has been computed.
+     *
+     * @param algorithm an algorithm.
+     * @return true if algorithm has been computed, false otherwise.
+     */
+    public boolean contains(final PerceptualHashAlgorithm algorithm) {
+        return mHashes.containsKey(algorithm);
+    }
+
+    /**
+     * Returns hash computed using provided algorithm.
+     *
+     * @param algorithm an algorithm.
+     * @return hash or null if algorithm was not computed.
+     */
+    public Long getHash(final PerceptualHashAlgorithm algorithm) {
+        return mHashes.get(algorithm);
+    }
+
+    /**
+     * Returns average hash, if computed.
+     *
+     * @return average hash or null.
+     */
+    public Long getAverageHash() {
+        return mHashes.get(PerceptualHashAlgorithm.AVERAGE);
+    }
+
+    /**
+     * Returns difference hash, if computed.
+     *
+     * @return difference hash or null.
+     */
+    public Long getDifferenceHash() {
+        return mHashes.get(PerceptualHashAlgorithm.DIFFERENCE);
+    }
+
+    /**
+     * Returns DCT hash, if computed.
+     *
+     * @return DCT hash or null.
+     */
+    public Long getDctHash() {
+        return mHashes.get(PerceptualHashAlgorithm.DCT);
+    }
+
+    /**
+     * Returns Hamming distance between hashes of provided algorithm of these
+     * and other hashes.
+     *
+     * @param other     other hashes.
+     * @param algorithm an algorithm.
+     * @return number of different bits or -1 if algorithm was not computed on
+     * any of both hashes.
+     */
+    public int distance(final PerceptualHashes other,
+                        final PerceptualHashAlgorithm algorithm) {
+        final Long hash1 = mHashes.get(algorithm);
+        final Long hash2 = other.mHashes.get(algorithm);
+        if (hash1 == null || hash2 == null) {
+            return -1;
+        }
+        return distance(hash1, hash2);
+    }
+
+    /**
+     * Returns Hamming distance between two perceptual hashes.
+     * Images whose hashes differ in at most about 10 bits are usually
+     * near-duplicates.
+     *
+     * @param hash1 first hash.
+     * @param hash2 second hash.
+     * @return number of different bits.
+     */
+    public static int distance(final long hash1, final long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+}
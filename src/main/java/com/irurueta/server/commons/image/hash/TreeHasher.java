@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes hashes of large files by splitting them into fixed-size chunks that
+ * are hashed in parallel using a ForkJoinPool, so that hashing time scales
+ * with the number of available cores.
+ * Chunk digests are combined into a root digest:
+ * - CRC32 and CRC32C chunk checksums are combined using the standard CRC
+ * combination, so that their values are identical to sequentially computed
+ * ones.
+ * - Any other algorithm produces a tree digest: the digest (using the same
+ * algorithm) of the concatenated digests of all chunks in file order. Tree
+ * digests differ from sequential ones and depend on the chunk size.
+ * Files not larger than a chunk are hashed sequentially, so their digests
+ * are identical to those obtained using a Hasher.
+ * Instances are immutable and can be shared among threads.
+ */
+public class TreeHasher {
+
+    /**
+     * Default size of chunks in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Minimum size of chunks in bytes.
+     */
+    public static final int MIN_CHUNK_SIZE = 1;
+
+    /**
+     * Hasher used to hash small files and to create hash functions.
+     */
+    private final Hasher mHasher;
+
+    /**
+     * Size of chunks in bytes.
+     */
+    private final int mChunkSize;
+
+    /**
+     * Pool where chunks are hashed.
+     */
+    private final ForkJoinPool mPool;
+
+    /**
+     * Constructor using default buffer size, chunk size and pool.
+     *
+     * @param algorithms algorithms to be computed.
+     * @throws IllegalArgumentException if algorithms are not provided.
+     */
+    public TreeHasher(final HashAlgorithm... algorithms) {
+        mHasher = new Hasher(algorithms);
+        mChunkSize = DEFAULT_CHUNK_SIZE;
+        mPool = DefaultPoolHolder.POOL;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param algorithms algorithms to be computed.
+     * @param bufferSize size of read buffer in bytes used for each chunk.
+     * @param chunkSize  size of chunks in bytes.
+     * @param pool       pool where chunks are hashed or null to use a shared
+     *                   pool having as many threads as available processors.
+     * @throws IllegalArgumentException if algorithms are not provided, or if
+     *                                  buffer size or chunk size are less than 1.
+     */
+    public TreeHasher(final Set<HashAlgorithm> algorithms,
+                      final int bufferSize, final int chunkSize,
+                      final ForkJoinPool pool) {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        mHasher = new Hasher(algorithms, bufferSize);
+        mChunkSize = chunkSize;
+        mPool = pool != null ? pool : DefaultPoolHolder.POOL;
+    }
+
+    /**
+     * Returns algorithms to be computed.
+     *
+     * @return algorithms to be computed.
+     */
+    public Set<HashAlgorithm> getAlgorithms() {
+        return mHasher.getAlgorithms();
+    }
+
+    /**
+     * Returns size of read buffer in bytes used for each chunk.
+     *
+     * @return size of read buffer.
+     */
+    public int getBufferSize() {
+        return mHasher.getBufferSize();
+    }
+
+    /**
+     * Returns size of chunks in bytes.
+     *
+     * @return size of chunks.
+     */
+    public int getChunkSize() {
+        return mChunkSize;
+    }
+
+    /**
+     * Returns pool where chunks are hashed.
+     *
+     * @return pool where chunks are hashed.
+     */
+    public ForkJoinPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * Computes hashes of provided file.
+     *
+     * @param f file to be hashed.
+     * @return computed hashes.
+     * @throws IOException if an I/O error occurs or an algorithm is not
+     *                     available on this platform.
+     */
+    public HashResult hash(final File f) throws IOException {
+        final long length = f.length();
+        if (length <= mChunkSize) {
+            return mHasher.hash(f);
+        }
+
+        final long numChunks = (length + mChunkSize - 1) / mChunkSize;
+        if (numChunks > Integer.MAX_VALUE) {
+            throw new IOException("Too many chunks, increase chunk size");
+        }
+
+        final HashFunction[][] chunkFunctions =
+                new HashFunction[(int) numChunks][];
+        try (final RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            final FileChannel channel = file.getChannel();
+            mPool.invoke(new ChunkTask(channel, length, chunkFunctions, 0,
+                    chunkFunctions.length));
+        } catch (final ChunkException e) {
+            throw e.getCause();
+        }
+
+        return combine(chunkFunctions, length);
+    }
+
+    /**
+     * Combines digests of all chunks into root digests.
+     *
+     * @param chunkFunctions hash functions of each chunk.
+     * @param length         file length in bytes.
+     * @return root digests.
+     * @throws IOException if an algorithm is not available on this platform.
+     */
+    private HashResult combine(final HashFunction[][] chunkFunctions,
+                               final long length) throws IOException {
+        final int numChunks = chunkFunctions.length;
+        final byte[][][] digests = new byte[numChunks][][];
+        for (int c = 0; c < numChunks; c++) {
+            final HashFunction[] functions = chunkFunctions[c];
+            digests[c] = new byte[functions.length][];
+            for (int a = 0; a < functions.length; a++) {
+                digests[c][a] = functions[a].digest();
+            }
+        }
+
+        final EnumMap<HashAlgorithm, byte[]> result =
+                new EnumMap<>(HashAlgorithm.class);
+        int a = 0;
+        for (final HashAlgorithm algorithm : mHasher.getAlgorithms()) {
+            if (CrcCombiner.isCombinable(algorithm)) {
+                int crc = toInt(digests[0][a]);
+                for (int c = 1; c < numChunks; c++) {
+                    final long chunkLength = Math.min(mChunkSize,
+                            length - (long) c * mChunkSize);
+                    crc = CrcCombiner.combine(algorithm, crc,
+                            toInt(digests[c][a]), chunkLength);
+                }
+                result.put(algorithm, Bytes.toBigEndian(crc));
+            } else {
+                final HashFunction root;
+                try {
+                    root = algorithm.createFunction();
+                } catch (final NoSuchAlgorithmException e) {
+                    throw new IOException(e);
+                }
+                for (int c = 0; c < numChunks; c++) {
+                    root.update(digests[c][a], 0, digests[c][a].length);
+                }
+                result.put(algorithm, root.digest());
+            }
+            a++;
+        }
+        return new HashResult(result, length, mChunkSize);
+    }
+
+    /**
+     * Converts big endian bytes into an int.
+     *
+     * @param data big endian bytes.
+     * @return int value.
+     */
+    private static int toInt(final byte[] data) {
+        return ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) |
+                ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+    }
+
+    /**
+     * Task hashing a range of chunks, which is recursively split until each
+     * task hashes a single chunk.
+     */
+    private class ChunkTask extends RecursiveAction {
+
+        /**
+         * Serialization version of this class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Channel to read file.
+         */
+        private final FileChannel mChannel;
+
+        /**
+         * File length in bytes.
+         */
+        private final long mLength;
+
+        /**
+         * Hash functions of each chunk, filled by this task.
+         */
+        private final HashFunction[][] mChunkFunctions;
+
+        /**
+         * First chunk of range.
+         */
+        private final int mFrom;
+
+        /**
+         * Chunk after last chunk of range.
+         */
+        private final int mTo;
+
+        /**
+         * Constructor.
+         *
+         * @param channel        channel to read file.
+         * @param length         file length in bytes.
+         * @param chunkFunctions hash functions of each chunk.
+         * @param from           first chunk of range.
+         * @param to             chunk after last chunk of range.
+         */
+        ChunkTask(final FileChannel channel, final long length,
+                  final HashFunction[][] chunkFunctions, final int from,
+                  final int to) {
+            mChannel = channel;
+            mLength = length;
+            mChunkFunctions = chunkFunctions;
+            mFrom = from;
+            mTo = to;
+        }
+
+        /**
+         * Hashes range of chunks.
+         */
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > 1) {
+                final int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new ChunkTask(mChannel, mLength, mChunkFunctions,
+                                mFrom, middle),
+                        new ChunkTask(mChannel, mLength, mChunkFunctions,
+                                middle, mTo));
+                return;
+            }
+
+            try {
+                mChunkFunctions[mFrom] = hashChunk(mFrom);
+            } catch (final IOException e) {
+                throw new ChunkException(e);
+            }
+        }
+
+        /**
+         * Hashes a single chunk using positional reads, which can be safely
+         * done concurrently on the same channel.
+         *
+         * @param chunk chunk to be hashed.
+         * @return hash functions updated with chunk data.
+         * @throws IOException if an I/O error occurs.
+         */
+        private HashFunction[] hashChunk(final int chunk) throws IOException {
+            final long start = (long) chunk * mChunkSize;
+            final long end = Math.min(start + mChunkSize, mLength);
+
+            final HashFunction[] functions = mHasher.createFunctions();
+            final byte[] buffer = new byte[(int) Math.min(
+                    mHasher.getBufferSize(), end - start)];
+            final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+            long position = start;
+            while (position < end) {
+                byteBuffer.clear();
+                byteBuffer.limit((int) Math.min(buffer.length, end - position));
+                final int n = mChannel.read(byteBuffer, position);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                for (final HashFunction function : functions) {
+                    function.update(buffer, 0, n);
+                }
+                position += n;
+            }
+            return functions;
+        }
+    }
+
+    /**
+     * Wraps I/O errors occurred while hashing a chunk, so that they can be
+     * propagated through the pool.
+     */
+    private static class ChunkException extends RuntimeException {
+
+        /**
+         * Serialization version of this class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         *
+         * @param cause I/O error.
+         */
+        ChunkException(final IOException cause) {
+            super(cause);
+        }
+
+        /**
+         * Returns I/O error.
+         *
+         * @return I/O error.
+         */
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Lazily creates the shared default pool.
+     */
+    private static class DefaultPoolHolder {
+        /**
+         * Shared pool having as many threads as available processors. Its
+         * worker threads are daemon threads, hence it does not prevent the
+         * JVM from exiting.
+         */
+        private static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+}
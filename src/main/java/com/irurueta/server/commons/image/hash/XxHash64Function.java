@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+/**
+ * Computes XXH64 hashes using seed zero.
+ * XXH64 is a fast non-cryptographic hash that processes 32 bytes per
+ * iteration using four independent accumulators, which allows the processor
+ * to execute them in parallel.
+ */
+final class XxHash64Function implements HashFunction {
+
+    /**
+     * First prime.
+     */
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+
+    /**
+     * Second prime.
+     */
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * Third prime.
+     */
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    /**
+     * Fourth prime.
+     */
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    /**
+     * Fifth prime.
+     */
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    /**
+     * Number of bytes processed on each iteration.
+     */
+    private static final int STRIPE_LENGTH = 32;
+
+    /**
+     * Bytes pending to be processed until a full stripe is available.
+     */
+    private final byte[] mBuffer = new byte[STRIPE_LENGTH];
+
+    /**
+     * Number of bytes in buffer.
+     */
+    private int mBuffered;
+
+    /**
+     * Total number of hashed bytes.
+     */
+    private long mLength;
+
+    /**
+     * First accumulator.
+     */
+    private long mV1 = PRIME1 + PRIME2;
+
+    /**
+     * Second accumulator.
+     */
+    private long mV2 = PRIME2;
+
+    /**
+     * Third accumulator.
+     */
+    private long mV3 = 0;
+
+    /**
+     * Fourth accumulator.
+     */
+    private long mV4 = -PRIME1;
+
+    /**
+     * Updates hash with provided data.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte to be hashed.
+     * @param length number of bytes to be hashed.
+     */
+    @Override
+    public void update(final byte[] data, final int offset, final int length) {
+        mLength += length;
+        int i = offset;
+        final int end = offset + length;
+
+        if (mBuffered > 0) {
+            final int n = Math.min(STRIPE_LENGTH - mBuffered, length);
+            System.arraycopy(data, i, mBuffer, mBuffered, n);
+            mBuffered += n;
+            i += n;
+            if (mBuffered < STRIPE_LENGTH) {
+                return;
+            }
+            processStripes(mBuffer, 0, STRIPE_LENGTH);
+            mBuffered = 0;
+        }
+
+        final int stripes = (end - i) / STRIPE_LENGTH * STRIPE_LENGTH;
+        processStripes(data, i, stripes);
+        i += stripes;
+
+        mBuffered = end - i;
+        System.arraycopy(data, i, mBuffer, 0, mBuffered);
+    }
+
+    /**
+     * Completes hash computation and returns the digest.
+     *
+     * @return hash in big endian order.
+     */
+    @Override
+    public byte[] digest() {
+        long h;
+        if (mLength >= STRIPE_LENGTH) {
+            h = Long.rotateLeft(mV1, 1) + Long.rotateLeft(mV2, 7) +
+                    Long.rotateLeft(mV3, 12) + Long.rotateLeft(mV4, 18);
+            h = mergeRound(h, mV1);
+            h = mergeRound(h, mV2);
+            h = mergeRound(h, mV3);
+            h = mergeRound(h, mV4);
+        } else {
+            h = PRIME5;
+        }
+        h += mLength;
+
+        int i = 0;
+        while (i + 8 <= mBuffered) {
+            h ^= round(0, Bytes.getLongLE(mBuffer, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+            i += 8;
+        }
+        if (i + 4 <= mBuffered) {
+            h ^= Bytes.getIntLE(mBuffer, i) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        while (i < mBuffered) {
+            h ^= (mBuffer[i] & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+            i++;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return Bytes.toBigEndian(h);
+    }
+
+    /**
+     * Processes full stripes.
+     *
+     * @param data   array containing data.
+     * @param offset position of first byte.
+     * @param length number of bytes, multiple of stripe length.
+     */
+    private void processStripes(final byte[] data, final int offset,
+                                final int length) {
+        long v1 = mV1;
+        long v2 = mV2;
+        long v3 = mV3;
+        long v4 = mV4;
+        final int end = offset + length;
+        for (int i = offset; i < end; i += STRIPE_LENGTH) {
+            v1 = round(v1, Bytes.getLongLE(data, i));
+            v2 = round(v2, Bytes.getLongLE(data, i + 8));
+            v3 = round(v3, Bytes.getLongLE(data, i + 16));
+            v4 = round(v4, Bytes.getLongLE(data, i + 24));
+        }
+        mV1 = v1;
+        mV2 = v2;
+        mV3 = v3;
+        mV4 = v4;
+    }
+
+    /**
+     * Mixes an input lane into an accumulator.
+     *
+     * @param acc   accumulator.
+     * @param input input lane.
+     * @return updated accumulator.
+     */
+    private static long round(final long acc, final long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    /**
+     * Merges an accumulator into the final hash.
+     *
+     * @param acc   final hash.
+     * @param value accumulator.
+     * @return updated final hash.
+     */
+    private static long mergeRound(final long acc, final long value) {
+        return (acc ^ round(0, value)) * PRIME1 + PRIME4;
+    }
+}
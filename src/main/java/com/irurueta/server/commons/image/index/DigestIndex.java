@@ -0,0 +1,724 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Index of exact duplicates mapping 128-bit content digests (such as MD5 of
+ * image files) to ids.
+ * Entries are stored off-heap in an open-addressing hash table using linear
+ * probing, so that hundreds of millions of entries neither increase heap size
+ * nor garbage collection pauses. The table is fronted by a split block Bloom
+ * filter that keeps 8 bits of each digest within a single 64-byte block,
+ * hence most lookups of digests that are not present are answered by
+ * reading one block without probing the table. Blocks are aligned to 64 bytes
+ * whenever the address of direct memory can be obtained, so that each block
+ * fills a single cache line.
+ * Image files are keyed on their MD5 only. Their CRC32 is not part of the
+ * key, since it is computed over the same bytes and 32 more bits would not
+ * make collisions of 128-bit digests any less likely in practice, while
+ * they would make slots larger than half a cache line.
+ * Entries cannot be removed, and when the table gets full it is doubled and
+ * the Bloom filter is rebuilt.
+ * Indices can be saved into a snapshot file and loaded back.
+ * This class is not thread-safe: lookups can be made concurrently as long as
+ * no entry is being added at the same time.
+ */
+public class DigestIndex {
+
+    /**
+     * Value returned when a digest is not found.
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * Length of digests in bytes.
+     */
+    public static final int DIGEST_LENGTH = 16;
+
+    /**
+     * Default expected number of entries.
+     */
+    public static final int DEFAULT_EXPECTED_SIZE = 1 << 16;
+
+    /**
+     * Maximum number of entries of an index.
+     */
+    public static final int MAX_SIZE = 1 << 30;
+
+    /**
+     * Size of each slot in bytes: 16 bytes of digest, 4 bytes of id and 4
+     * bytes of flags, so that two slots fit in a cache line.
+     */
+    static final int SLOT_SIZE = 32;
+
+    /**
+     * Number of bits of number of slots of each page.
+     */
+    private static final int PAGE_BITS = 20;
+
+    /**
+     * Mask to obtain position of a slot within its page.
+     */
+    private static final long PAGE_MASK = (1L << PAGE_BITS) - 1;
+
+    /**
+     * Maximum ratio of used slots before table is doubled.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    /**
+     * Number of bits of Bloom filter per entry.
+     */
+    private static final int BLOOM_BITS_PER_ENTRY = 16;
+
+    /**
+     * Size of each block of Bloom filter in bytes.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * Number of 64-bit words of each block of Bloom filter.
+     */
+    private static final int BLOCK_WORDS = BLOCK_SIZE / 8;
+
+    /**
+     * Odd constants used to derive one bit of each word of a block from a
+     * digest.
+     */
+    private static final int[] SALT = {0x47b6137b, 0x44974d91, 0x8824ad5b,
+            0xa2b7289d, 0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31};
+
+    /**
+     * Offset of id within a slot.
+     */
+    private static final int ID_OFFSET = 16;
+
+    /**
+     * Offset of flags within a slot.
+     */
+    private static final int FLAGS_OFFSET = 20;
+
+    /**
+     * Flag indicating that a slot is used.
+     */
+    private static final int USED = 1;
+
+    /**
+     * Value identifying snapshot files.
+     */
+    private static final int MAGIC = 0x44474958;
+
+    /**
+     * Version of snapshot files.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Length of header of snapshot files in bytes.
+     */
+    private static final int HEADER_LENGTH = 20;
+
+    /**
+     * Instance of sun.misc.Unsafe or null if address of direct buffers cannot
+     * be obtained.
+     */
+    private static final Object UNSAFE;
+
+    /**
+     * Method reading a long value of an object (sun.misc.Unsafe.getLong) or
+     * null if not available.
+     */
+    private static final Method GET_LONG;
+
+    /**
+     * Offset of the field containing the address of direct buffers
+     * (java.nio.Buffer.address).
+     */
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        Object unsafe;
+        Method getLong;
+        long addressOffset;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            addressOffset = (Long) unsafeClass.getMethod("objectFieldOffset",
+                    Field.class).invoke(unsafe,
+                    Buffer.class.getDeclaredField("address"));
+            getLong = unsafeClass.getMethod("getLong", Object.class,
+                    long.class);
+        } catch (final Exception | LinkageError e) {
+            unsafe = null;
+            getLong = null;
+            addressOffset = -1;
+        }
+
+        UNSAFE = unsafe;
+        GET_LONG = getLong;
+        ADDRESS_OFFSET = addressOffset;
+    }
+
+    /**
+     * Pages of slots of hash table.
+     */
+    private ByteBuffer[] mPages;
+
+    /**
+     * Number of slots of hash table. Always a power of 2.
+     */
+    private long mCapacity;
+
+    /**
+     * Number of entries.
+     */
+    private int mSize;
+
+    /**
+     * Number of entries that causes table to be doubled.
+     */
+    private int mThreshold;
+
+    /**
+     * Bloom filter.
+     */
+    private ByteBuffer mBloom;
+
+    /**
+     * Number of blocks of Bloom filter minus one. Number of blocks is
+     * always a power of 2.
+     */
+    private int mBloomMask;
+
+    /**
+     * Constructor.
+     */
+    public DigestIndex() {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize expected number of entries. Off-heap memory for
+     *                     this number of entries is allocated upfront.
+     * @throws IllegalArgumentException if expected size is negative or
+     *                                  larger than MAX_SIZE.
+     */
+    public DigestIndex(final int expectedSize) {
+        if (expectedSize < 0 || expectedSize > MAX_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Returns number of entries.
+     *
+     * @return number of entries.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns number of slots of hash table.
+     *
+     * @return number of slots.
+     */
+    public long getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Indicates whether provided digest might be contained in this index by
+     * only checking the Bloom filter. False positives are possible, but
+     * false negatives are not.
+     *
+     * @param high most significant 64 bits of digest.
+     * @param low  least significant 64 bits of digest.
+     * @return false if digest is not contained, true if it might be.
+     */
+    public boolean mightContain(final long high, final long low) {
+        final int block = blockOffset(high);
+        final int key = (int) high;
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            final long word = mBloom.getLong(block + 8 * i);
+            if ((word & bloomBit(key, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns id of provided digest.
+     *
+     * @param high most significant 64 bits of digest.
+     * @param low  least significant 64 bits of digest.
+     * @return id or NOT_FOUND.
+     */
+    public int get(final long high, final long low) {
+        if (!mightContain(high, low)) {
+            return NOT_FOUND;
+        }
+
+        long slot = low & (mCapacity - 1);
+        while (true) {
+            final ByteBuffer page = page(slot);
+            final int offset = offset(slot);
+            if (page.getInt(offset + FLAGS_OFFSET) == 0) {
+                return NOT_FOUND;
+            }
+            if (page.getLong(offset) == high &&
+                    page.getLong(offset + 8) == low) {
+                return page.getInt(offset + ID_OFFSET);
+            }
+            slot = (slot + 1) & (mCapacity - 1);
+        }
+    }
+
+    /**
+     * Returns id of provided digest.
+     *
+     * @param digest 16 bytes digest.
+     * @return id or NOT_FOUND.
+     * @throws IllegalArgumentException if digest does not have 16 bytes.
+     */
+    public int get(final byte[] digest) {
+        checkDigest(digest);
+        return get(getLong(digest, 0), getLong(digest, 8));
+    }
+
+    /**
+     * Returns id of the image file whose MD5 is contained in provided result.
+     * CRC32 of result is not checked.
+     *
+     * @param result result of reading an image file.
+     * @return id or NOT_FOUND.
+     * @throws IllegalArgumentException if result has no MD5.
+     */
+    public int get(final ImageReaderResult result) {
+        return get(getDigest(result));
+    }
+
+    /**
+     * Adds provided digest with provided id unless digest is already
+     * contained.
+     *
+     * @param high most significant 64 bits of digest.
+     * @param low  least significant 64 bits of digest.
+     * @param id   id of digest. Must be zero or positive.
+     * @return id of already contained digest or NOT_FOUND if digest has been
+     * added.
+     * @throws IllegalArgumentException if id is negative.
+     * @throws IllegalStateException    if index already has MAX_SIZE entries.
+     */
+    public int putIfAbsent(final long high, final long low, final int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        final int existing = get(high, low);
+        if (existing != NOT_FOUND) {
+            return existing;
+        }
+
+        if (mSize >= mThreshold) {
+            if (mSize >= MAX_SIZE) {
+                throw new IllegalStateException();
+            }
+            grow();
+        }
+        insert(high, low, id);
+        return NOT_FOUND;
+    }
+
+    /**
+     * Adds provided digest with provided id unless digest is already
+     * contained.
+     *
+     * @param digest 16 bytes digest.
+     * @param id     id of digest. Must be zero or positive.
+     * @return id of already contained digest or NOT_FOUND if digest has been
+     * added.
+     * @throws IllegalArgumentException if digest does not have 16 bytes or id
+     *                                  is negative.
+     * @throws IllegalStateException    if index already has MAX_SIZE entries.
+     */
+    public int putIfAbsent(final byte[] digest, final int id) {
+        checkDigest(digest);
+        return putIfAbsent(getLong(digest, 0), getLong(digest, 8), id);
+    }
+
+    /**
+     * Adds the image file whose MD5 is contained in provided result with
+     * provided id unless an identical file is already contained.
+     * Only MD5 of result is stored.
+     *
+     * @param result result of reading an image file.
+     * @param id     id of image file. Must be zero or positive.
+     * @return id of already contained image file or NOT_FOUND if image file
+     * has been added.
+     * @throws IllegalArgumentException if result has no MD5 or id is negative.
+     * @throws IllegalStateException    if index already has MAX_SIZE entries.
+     */
+    public int putIfAbsent(final ImageReaderResult result, final int id) {
+        return putIfAbsent(getDigest(result), id);
+    }
+
+    /**
+     * Saves a snapshot of this index into provided file.
+     *
+     * @param f file where snapshot will be saved.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void save(final File f) throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+            file.setLength(0);
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).putInt(mSize)
+                    .putLong(mCapacity);
+            header.flip();
+            write(channel, header);
+            for (final ByteBuffer page : mPages) {
+                write(channel, page.duplicate());
+            }
+            write(channel, mBloom.duplicate());
+        }
+    }
+
+    /**
+     * Loads an index from a snapshot file. Loaded index is copied into
+     * off-heap memory and can be further modified.
+     *
+     * @param f snapshot file.
+     * @return loaded index.
+     * @throws IOException if an I/O error occurs or file does not contain a
+     *                     valid snapshot.
+     */
+    public static DigestIndex load(final File f) throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            read(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Invalid snapshot file");
+            }
+            final int size = header.getInt();
+            final long capacity = header.getLong();
+            if (size < 0 || size > MAX_SIZE || capacity < 2 ||
+                    capacity > 2L * capacityFor(MAX_SIZE) ||
+                    Long.bitCount(capacity) != 1 ||
+                    capacity != capacityFor(size, capacity)) {
+                throw new IOException("Invalid snapshot file");
+            }
+
+            final DigestIndex index = new DigestIndex(0);
+            index.allocate(capacity);
+            if (channel.size() != HEADER_LENGTH + capacity * SLOT_SIZE +
+                    index.mBloom.capacity()) {
+                throw new IOException("Invalid snapshot file");
+            }
+            for (final ByteBuffer page : index.mPages) {
+                read(channel, page.duplicate());
+            }
+            read(channel, index.mBloom.duplicate());
+            index.mSize = size;
+            return index;
+        }
+    }
+
+    /**
+     * Allocates empty hash table and Bloom filter.
+     *
+     * @param capacity number of slots of hash table.
+     */
+    private void allocate(final long capacity) {
+        mCapacity = capacity;
+        mThreshold = (int) Math.min(MAX_SIZE, (long) (capacity *
+                MAX_LOAD_FACTOR));
+
+        final int pageSlots = (int) Math.min(capacity, 1L << PAGE_BITS);
+        final int pages = (int) (capacity / pageSlots);
+        mPages = new ByteBuffer[pages];
+        for (int i = 0; i < pages; i++) {
+            mPages[i] = ByteBuffer.allocateDirect(pageSlots * SLOT_SIZE);
+        }
+
+        final long bits = (long) mThreshold * BLOOM_BITS_PER_ENTRY;
+        final int blocks = (int) Math.max(1, Long.highestOneBit(
+                Math.max(1, bits / (8 * BLOCK_SIZE))));
+        mBloom = allocateAligned(blocks * BLOCK_SIZE);
+        mBloomMask = blocks - 1;
+    }
+
+    /**
+     * Returns Bloom filter.
+     *
+     * @return Bloom filter.
+     */
+    ByteBuffer getBloom() {
+        return mBloom;
+    }
+
+    /**
+     * Allocates a direct buffer starting at an address multiple of the size
+     * of Bloom filter blocks, if address of direct buffers can be obtained.
+     * Buffer is over-allocated by one block and sliced at the first aligned
+     * position.
+     *
+     * @param capacity capacity in bytes.
+     * @return allocated buffer.
+     */
+    private static ByteBuffer allocateAligned(final int capacity) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(
+                capacity + BLOCK_SIZE);
+        final long address = address(buffer);
+        final int start = address < 0 ? 0 :
+                (int) (-address & (BLOCK_SIZE - 1));
+        buffer.position(start);
+        buffer.limit(start + capacity);
+        return buffer.slice();
+    }
+
+    /**
+     * Returns address of provided direct buffer.
+     *
+     * @param buffer a direct buffer.
+     * @return address of first byte of buffer or -1 if not available.
+     */
+    static long address(final ByteBuffer buffer) {
+        if (GET_LONG == null || !buffer.isDirect()) {
+            return -1;
+        }
+        try {
+            return (Long) GET_LONG.invoke(UNSAFE, buffer, ADDRESS_OFFSET);
+        } catch (final Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Doubles hash table and rebuilds Bloom filter.
+     */
+    private void grow() {
+        final ByteBuffer[] oldPages = mPages;
+        final long oldCapacity = mCapacity;
+        allocate(2 * oldCapacity);
+        mSize = 0;
+
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            final ByteBuffer page = oldPages[(int) (slot >>> PAGE_BITS)];
+            final int offset = offset(slot);
+            if (page.getInt(offset + FLAGS_OFFSET) != 0) {
+                insert(page.getLong(offset), page.getLong(offset + 8),
+                        page.getInt(offset + ID_OFFSET));
+            }
+        }
+    }
+
+    /**
+     * Inserts a digest known not to be contained.
+     *
+     * @param high most significant 64 bits of digest.
+     * @param low  least significant 64 bits of digest.
+     * @param id   id of digest.
+     */
+    private void insert(final long high, final long low, final int id) {
+        long slot = low & (mCapacity - 1);
+        while (page(slot).getInt(offset(slot) + FLAGS_OFFSET) != 0) {
+            slot = (slot + 1) & (mCapacity - 1);
+        }
+        final ByteBuffer page = page(slot);
+        final int offset = offset(slot);
+        page.putLong(offset, high);
+        page.putLong(offset + 8, low);
+        page.putInt(offset + ID_OFFSET, id);
+        page.putInt(offset + FLAGS_OFFSET, USED);
+        mSize++;
+
+        final int block = blockOffset(high);
+        final int key = (int) high;
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            final int position = block + 8 * i;
+            mBloom.putLong(position, mBloom.getLong(position) |
+                    bloomBit(key, i));
+        }
+    }
+
+    /**
+     * Returns page containing provided slot.
+     *
+     * @param slot a slot.
+     * @return page containing slot.
+     */
+    private ByteBuffer page(final long slot) {
+        return mPages[(int) (slot >>> PAGE_BITS)];
+    }
+
+    /**
+     * Returns offset in bytes of provided slot within its page.
+     *
+     * @param slot a slot.
+     * @return offset of slot.
+     */
+    private static int offset(final long slot) {
+        return (int) (slot & PAGE_MASK) * SLOT_SIZE;
+    }
+
+    /**
+     * Returns offset in bytes of Bloom filter block of provided digest.
+     *
+     * @param high most significant 64 bits of digest.
+     * @return offset of block.
+     */
+    private int blockOffset(final long high) {
+        return ((int) (high >>> 32) & mBloomMask) * BLOCK_SIZE;
+    }
+
+    /**
+     * Returns bit of provided word of a Bloom filter block for provided key.
+     *
+     * @param key  32 bits of digest not used to select the block.
+     * @param word position of word within block.
+     * @return word having a single bit set.
+     */
+    private static long bloomBit(final int key, final int word) {
+        return 1L << ((key * SALT[word]) >>> 26);
+    }
+
+    /**
+     * Returns number of slots required by provided number of entries.
+     *
+     * @param size number of entries.
+     * @return number of slots.
+     */
+    private static long capacityFor(final int size) {
+        final long required = Math.max(2L, (long) Math.ceil(
+                (size + 1) / MAX_LOAD_FACTOR));
+        return Long.highestOneBit(required - 1) << 1;
+    }
+
+    /**
+     * Returns provided capacity if it is large enough for provided number of
+     * entries, or the required capacity otherwise.
+     *
+     * @param size     number of entries.
+     * @param capacity capacity to be checked.
+     * @return capacity to be used.
+     */
+    private static long capacityFor(final int size, final long capacity) {
+        return size <= (long) (capacity * MAX_LOAD_FACTOR) ? capacity :
+                capacityFor(size);
+    }
+
+    /**
+     * Obtains MD5 digest of provided result.
+     *
+     * @param result result of reading an image file.
+     * @return MD5 digest.
+     * @throws IllegalArgumentException if result has no MD5.
+     */
+    static byte[] getDigest(final ImageReaderResult result) {
+        final HashResult hashes = result.getHashes();
+        if (hashes != null && !hashes.isTree() &&
+                hashes.contains(HashAlgorithm.MD5)) {
+            return hashes.getDigest(HashAlgorithm.MD5);
+        }
+        if (result.getMd5() != null) {
+            return Base64.decodeBase64(result.getMd5());
+        }
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Checks that provided digest has 16 bytes.
+     *
+     * @param digest digest to be checked.
+     * @throws IllegalArgumentException if digest does not have 16 bytes.
+     */
+    private static void checkDigest(final byte[] digest) {
+        if (digest == null || digest.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Reads a big endian long value.
+     *
+     * @param data   data to read from.
+     * @param offset position of first byte.
+     * @return read value.
+     */
+    private static long getLong(final byte[] data, final int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (data[offset + i] & 0xFF);
+        }
+        return result;
+    }
+
+    /**
+     * Writes all remaining data of provided buffer.
+     *
+     * @param channel file channel.
+     * @param buffer  buffer to be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void write(final FileChannel channel,
+                              final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Fills provided buffer with data read from a file.
+     *
+     * @param channel file channel.
+     * @param buffer  buffer to be filled.
+     * @throws IOException if an I/O error occurs or file ends before buffer is
+     *                     filled.
+     */
+    private static void read(final FileChannel channel,
+                             final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+}
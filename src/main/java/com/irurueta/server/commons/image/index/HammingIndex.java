@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Immutable index of 64-bit hashes (such as perceptual hashes) supporting
+ * radius and k-nearest searches by Hamming distance in sub-linear time.
+ * This index uses multi-index hashing: hashes are split into 4 segments of 16
+ * bits, and for each segment, entries are grouped into buckets by their
+ * segment value. Because two hashes within distance r have at least one
+ * segment within distance r / 4, searches only need to probe buckets near
+ * each segment of the queried hash and verify the entries found there.
+ * Indices are built in bulk using a Builder, can be saved into a file and
+ * loaded back by memory-mapping such file, so that large indices neither need
+ * to be rebuilt nor copied into the heap.
+ * Instances are immutable and can be shared among threads.
+ */
+public class HammingIndex {
+
+    /**
+     * Maximum number of entries of an index.
+     */
+    public static final int MAX_SIZE = Integer.MAX_VALUE / 8;
+
+    /**
+     * Number of segments hashes are split into.
+     */
+    static final int SEGMENTS = 4;
+
+    /**
+     * Number of bits of each segment.
+     */
+    static final int SEGMENT_BITS = 16;
+
+    /**
+     * Number of buckets of each segment.
+     */
+    static final int BUCKETS = 1 << SEGMENT_BITS;
+
+    /**
+     * Mask to obtain a segment value.
+     */
+    private static final long SEGMENT_MASK = BUCKETS - 1;
+
+    /**
+     * Maximum Hamming distance between two segment values.
+     */
+    private static final int MAX_SEGMENT_DISTANCE = SEGMENT_BITS;
+
+    /**
+     * Maximum Hamming distance between two hashes.
+     */
+    private static final int MAX_DISTANCE = SEGMENTS * SEGMENT_BITS;
+
+    /**
+     * Value identifying index files.
+     */
+    private static final int MAGIC = 0x484d4958;
+
+    /**
+     * Version of index files.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Length of header of index files in bytes.
+     */
+    private static final int HEADER_LENGTH = 12;
+
+    /**
+     * Size of buffer used to write index files.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Number of entries.
+     */
+    private final int mSize;
+
+    /**
+     * Hash of each entry. Entries are sorted by id.
+     */
+    private final LongBuffer mHashes;
+
+    /**
+     * Id of each entry.
+     */
+    private final IntBuffer mIds;
+
+    /**
+     * Start of each bucket of each segment within postings of such segment.
+     * Contains BUCKETS + 1 values per segment.
+     */
+    private final IntBuffer mOffsets;
+
+    /**
+     * Positions of entries grouped by bucket for each segment.
+     */
+    private final IntBuffer[] mPostings;
+
+    /**
+     * Constructor.
+     *
+     * @param size     number of entries.
+     * @param hashes   hash of each entry.
+     * @param ids      id of each entry.
+     * @param offsets  start of each bucket of each segment.
+     * @param postings positions of entries grouped by bucket for each
+     *                 segment.
+     */
+    private HammingIndex(final int size, final LongBuffer hashes,
+                         final IntBuffer ids, final IntBuffer offsets,
+                         final IntBuffer[] postings) {
+        mSize = size;
+        mHashes = hashes;
+        mIds = ids;
+        mOffsets = offsets;
+        mPostings = postings;
+    }
+
+    /**
+     * Returns number of entries.
+     *
+     * @return number of entries.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns id of entry at provided position. Entries are sorted by id.
+     *
+     * @param position position of entry.
+     * @return id of entry.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public int getId(final int position) {
+        return mIds.get(position);
+    }
+
+    /**
+     * Returns hash of entry at provided position. Entries are sorted by id.
+     *
+     * @param position position of entry.
+     * @return hash of entry.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public long getHash(final int position) {
+        return mHashes.get(position);
+    }
+
+    /**
+     * Finds all entries within provided Hamming distance of provided hash.
+     *
+     * @param hash   hash to search for.
+     * @param radius maximum Hamming distance.
+     * @return found entries sorted by distance.
+     * @throws IllegalArgumentException if radius is negative.
+     */
+    public HammingSearchResult search(final long hash, final int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        final Candidates candidates = new Candidates();
+        final int maxLevel = Math.min(radius / SEGMENTS, MAX_SEGMENT_DISTANCE);
+        for (int level = 0; level <= maxLevel; level++) {
+            searchLevel(hash, level, radius, candidates);
+        }
+        return candidates.toResult(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds provided number of entries nearest to provided hash. Entries at
+     * the same distance are returned by increasing id.
+     *
+     * @param hash hash to search for.
+     * @param k    number of entries to find.
+     * @return found entries sorted by distance, containing less than k
+     * entries only if index is smaller than k.
+     * @throws IllegalArgumentException if k is less than 1.
+     */
+    public HammingSearchResult searchNearest(final long hash, final int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        final Candidates candidates = new Candidates();
+        int found = 0;
+        for (int level = 0; level <= MAX_SEGMENT_DISTANCE; level++) {
+            searchLevel(hash, level, MAX_DISTANCE, candidates);
+
+            // once a level has been searched, every entry within this
+            // distance has already been found
+            final int covered = SEGMENTS * level + SEGMENTS - 1;
+            found += candidates.count(covered, found);
+            if (found >= k) {
+                break;
+            }
+        }
+        return candidates.toResult(k);
+    }
+
+    /**
+     * Saves this index into provided file, so that it can be later loaded.
+     *
+     * @param f file where index will be saved.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void save(final File f) throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+            file.setLength(0);
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(mSize);
+            for (int i = 0; i < mSize; i++) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(mHashes.get(i));
+            }
+            write(channel, buffer, mIds, mSize);
+            write(channel, buffer, mOffsets, SEGMENTS * (BUCKETS + 1));
+            for (final IntBuffer postings : mPostings) {
+                write(channel, buffer, postings, mSize);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Loads an index from provided file by memory-mapping it. Loaded index
+     * reads its entries directly from the file, which stays mapped until the
+     * index is garbage collected.
+     *
+     * @param f file containing a saved index.
+     * @return loaded index.
+     * @throws IOException if an I/O error occurs or file does not contain a
+     *                     valid index.
+     */
+    public static HammingIndex load(final File f) throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer header = map(channel, 0, HEADER_LENGTH);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Invalid index file");
+            }
+            final int size = header.getInt();
+            final long offsetsLength = 4L * SEGMENTS * (BUCKETS + 1);
+            if (size < 0 || size > MAX_SIZE || channel.size() !=
+                    HEADER_LENGTH + 12L * size + offsetsLength +
+                            4L * SEGMENTS * size) {
+                throw new IOException("Invalid index file");
+            }
+
+            long position = HEADER_LENGTH;
+            final LongBuffer hashes = map(channel, position, 8L * size)
+                    .asLongBuffer();
+            position += 8L * size;
+            final IntBuffer ids = map(channel, position, 4L * size)
+                    .asIntBuffer();
+            position += 4L * size;
+            final IntBuffer offsets = map(channel, position, offsetsLength)
+                    .asIntBuffer();
+            position += offsetsLength;
+            final IntBuffer[] postings = new IntBuffer[SEGMENTS];
+            for (int s = 0; s < SEGMENTS; s++) {
+                postings[s] = map(channel, position, 4L * size).asIntBuffer();
+                position += 4L * size;
+            }
+            return new HammingIndex(size, hashes, ids, offsets, postings);
+        }
+    }
+
+    /**
+     * Finds entries whose minimum segment distance to provided hash is
+     * provided level. Each entry is found at a single level and segment: the
+     * first segment having the minimum segment distance.
+     *
+     * @param hash       hash to search for.
+     * @param level      segment distance to search for.
+     * @param radius     maximum Hamming distance of entries to be added.
+     * @param candidates instance where found entries are added.
+     */
+    private void searchLevel(final long hash, final int level,
+                             final int radius, final Candidates candidates) {
+        for (int s = 0; s < SEGMENTS; s++) {
+            final int segment = segment(hash, s);
+            final int segmentOffset = s * (BUCKETS + 1);
+            final IntBuffer postings = mPostings[s];
+
+            // iterate over all 16-bit masks having level bits set
+            int mask = (1 << level) - 1;
+            while (mask < BUCKETS) {
+                final int bucket = segment ^ mask;
+                final int end = mOffsets.get(segmentOffset + bucket + 1);
+                for (int i = mOffsets.get(segmentOffset + bucket); i < end;
+                     i++) {
+                    final int position = postings.get(i);
+                    final long diff = mHashes.get(position) ^ hash;
+                    final int distance = Long.bitCount(diff);
+                    if (distance <= radius &&
+                            isFirstAtLevel(diff, s, level)) {
+                        candidates.add(position, distance);
+                    }
+                }
+
+                if (mask == 0) {
+                    break;
+                }
+                // next mask having the same number of bits set
+                final int lowest = mask & -mask;
+                final int ripple = mask + lowest;
+                mask = (((ripple ^ mask) >>> 2) / lowest) | ripple;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether provided segment is the first one having the minimum
+     * segment distance, and whether such distance is provided level.
+     *
+     * @param diff    xor between an entry hash and queried hash.
+     * @param segment segment where entry was found.
+     * @param level   segment distance of segment where entry was found.
+     * @return true if entry must be added at this segment and level.
+     */
+    private static boolean isFirstAtLevel(final long diff, final int segment,
+                                          final int level) {
+        for (int s = 0; s < SEGMENTS; s++) {
+            final int distance = Long.bitCount(segment(diff, s));
+            if (distance < level || (s < segment && distance == level)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns segment value of provided hash.
+     *
+     * @param hash    a hash.
+     * @param segment segment position, starting at the most significant bits.
+     * @return segment value.
+     */
+    static int segment(final long hash, final int segment) {
+        return (int) ((hash >>> (MAX_DISTANCE - SEGMENT_BITS * (segment + 1))) &
+                SEGMENT_MASK);
+    }
+
+    /**
+     * Maps a region of a file.
+     *
+     * @param channel  file channel.
+     * @param position start of region.
+     * @param length   length of region.
+     * @return mapped region.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static ByteBuffer map(final FileChannel channel,
+                                  final long position, final long length)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * Writes int values into a file.
+     *
+     * @param channel file channel.
+     * @param buffer  buffer used to write.
+     * @param values  values to be written.
+     * @param length  number of values to be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void write(final FileChannel channel,
+                              final ByteBuffer buffer, final IntBuffer values,
+                              final int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (buffer.remaining() < 4) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(values.get(i));
+        }
+    }
+
+    /**
+     * Writes buffered data into a file.
+     *
+     * @param channel file channel.
+     * @param buffer  buffer containing data to be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void flush(final FileChannel channel,
+                              final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Entries found while searching.
+     */
+    private class Candidates {
+
+        /**
+         * Found entries, each one encoded as its distance in the most
+         * significant bits and its position in the least significant bits,
+         * so that sorting them sorts entries by distance and id.
+         */
+        private long[] mEntries = new long[16];
+
+        /**
+         * Number of found entries.
+         */
+        private int mCount;
+
+        /**
+         * Adds a found entry.
+         *
+         * @param position position of entry.
+         * @param distance Hamming distance of entry.
+         */
+        void add(final int position, final int distance) {
+            if (mCount == mEntries.length) {
+                mEntries = Arrays.copyOf(mEntries, 2 * mCount);
+            }
+            mEntries[mCount++] = ((long) distance << 32) | position;
+        }
+
+        /**
+         * Counts entries within provided distance found after provided
+         * number of previously counted entries, and moves them in front of
+         * remaining entries.
+         *
+         * @param distance maximum distance.
+         * @param from     number of previously counted entries.
+         * @return number of new entries within distance.
+         */
+        int count(final int distance, final int from) {
+            final long limit = (long) (distance + 1) << 32;
+            int next = from;
+            for (int i = from; i < mCount; i++) {
+                final long entry = mEntries[i];
+                if (entry < limit) {
+                    mEntries[i] = mEntries[next];
+                    mEntries[next++] = entry;
+                }
+            }
+            return next - from;
+        }
+
+        /**
+         * Converts found entries into a search result.
+         *
+         * @param k maximum number of entries to be returned.
+         * @return search result.
+         */
+        HammingSearchResult toResult(final int k) {
+            Arrays.sort(mEntries, 0, mCount);
+            final int size = Math.min(k, mCount);
+            final int[] ids = new int[size];
+            final long[] hashes = new long[size];
+            final int[] distances = new int[size];
+            for (int i = 0; i < size; i++) {
+                final long entry = mEntries[i];
+                final int position = (int) entry;
+                ids[i] = mIds.get(position);
+                hashes[i] = mHashes.get(position);
+                distances[i] = (int) (entry >>> 32);
+            }
+            return new HammingSearchResult(ids, hashes, distances);
+        }
+    }
+
+    /**
+     * Builder of Hamming indices, loading entries in bulk.
+     */
+    public static class Builder {
+
+        /**
+         * Id of each added entry.
+         */
+        private int[] mIds;
+
+        /**
+         * Hash of each added entry.
+         */
+        private long[] mHashes;
+
+        /**
+         * Number of added entries.
+         */
+        private int mSize;
+
+        /**
+         * Constructor.
+         */
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param capacity expected number of entries.
+         * @throws IllegalArgumentException if capacity is negative or larger
+         *                                  than MAX_SIZE.
+         */
+        public Builder(final int capacity) {
+            if (capacity < 0 || capacity > MAX_SIZE) {
+                throw new IllegalArgumentException();
+            }
+            mIds = new int[capacity];
+            mHashes = new long[capacity];
+        }
+
+        /**
+         * Returns number of added entries.
+         *
+         * @return number of added entries.
+         */
+        public int getSize() {
+            return mSize;
+        }
+
+        /**
+         * Adds an entry.
+         *
+         * @param id   id of entry.
+         * @param hash hash of entry.
+         * @return this builder.
+         * @throws IllegalStateException if MAX_SIZE entries have already been
+         *                               added.
+         */
+        public Builder add(final int id, final long hash) {
+            ensureCapacity(mSize + 1);
+            mIds[mSize] = id;
+            mHashes[mSize] = hash;
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Adds entries in bulk.
+         *
+         * @param ids    ids of entries.
+         * @param hashes hashes of entries.
+         * @return this builder.
+         * @throws IllegalArgumentException if arrays are not provided or
+         *                                  their lengths are different.
+         * @throws IllegalStateException    if more than MAX_SIZE entries
+         *                                  would be added.
+         */
+        public Builder addAll(final int[] ids, final long[] hashes) {
+            if (ids == null || hashes == null || ids.length != hashes.length) {
+                throw new IllegalArgumentException();
+            }
+            ensureCapacity((long) mSize + ids.length);
+            System.arraycopy(ids, 0, mIds, mSize, ids.length);
+            System.arraycopy(hashes, 0, mHashes, mSize, hashes.length);
+            mSize += ids.length;
+            return this;
+        }
+
+        /**
+         * Builds an index containing added entries.
+         *
+         * @return built index.
+         */
+        public HammingIndex build() {
+            final int size = mSize;
+
+            // sort entries by id, so that positions preserve id order
+            final long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((mIds[i] - (long) Integer.MIN_VALUE) << 32) | i;
+            }
+            Arrays.sort(order);
+            final int[] ids = new int[size];
+            final long[] hashes = new long[size];
+            for (int i = 0; i < size; i++) {
+                final int source = (int) order[i];
+                ids[i] = mIds[source];
+                hashes[i] = mHashes[source];
+            }
+
+            // group positions by bucket of each segment using counting sort
+            final int[] offsets = new int[SEGMENTS * (BUCKETS + 1)];
+            final IntBuffer[] postings = new IntBuffer[SEGMENTS];
+            for (int s = 0; s < SEGMENTS; s++) {
+                final int segmentOffset = s * (BUCKETS + 1);
+                for (int i = 0; i < size; i++) {
+                    offsets[segmentOffset + segment(hashes[i], s) + 1]++;
+                }
+                for (int b = 0; b < BUCKETS; b++) {
+                    offsets[segmentOffset + b + 1] +=
+                            offsets[segmentOffset + b];
+                }
+
+                final int[] next = Arrays.copyOfRange(offsets, segmentOffset,
+                        segmentOffset + BUCKETS);
+                final int[] positions = new int[size];
+                for (int i = 0; i < size; i++) {
+                    positions[next[segment(hashes[i], s)]++] = i;
+                }
+                postings[s] = IntBuffer.wrap(positions);
+            }
+
+            return new HammingIndex(size, LongBuffer.wrap(hashes),
+                    IntBuffer.wrap(ids), IntBuffer.wrap(offsets), postings);
+        }
+
+        /**
+         * Ensures that provided number of entries can be stored.
+         *
+         * @param capacity required number of entries.
+         * @throws IllegalStateException if capacity is larger than MAX_SIZE.
+         */
+        private void ensureCapacity(final long capacity) {
+            if (capacity > MAX_SIZE) {
+                throw new IllegalStateException();
+            }
+            if (capacity > mIds.length) {
+                final int newCapacity = (int) Math.min(MAX_SIZE,
+                        Math.max(capacity, 2L * mIds.length));
+                mIds = Arrays.copyOf(mIds, newCapacity);
+                mHashes = Arrays.copyOf(mHashes, newCapacity);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+/**
+ * Contains entries found by a search on a HammingIndex, sorted by increasing
+ * Hamming distance and, for equal distances, by increasing id.
+ */
+public class HammingSearchResult {
+
+    /**
+     * Ids of found entries.
+     */
+    private final int[] mIds;
+
+    /**
+     * Hashes of found entries.
+     */
+    private final long[] mHashes;
+
+    /**
+     * Hamming distances of found entries to queried hash.
+     */
+    private final int[] mDistances;
+
+    /**
+     * Constructor.
+     *
+     * @param ids       ids of found entries.
+     * @param hashes    hashes of found entries.
+     * @param distances Hamming distances of found entries.
+     */
+    HammingSearchResult(final int[] ids, final long[] hashes,
+                        final int[] distances) {
+        mIds = ids;
+        mHashes = hashes;
+        mDistances = distances;
+    }
+
+    /**
+     * Returns number of found entries.
+     *
+     * @return number of found entries.
+     */
+    public int getSize() {
+        return mIds.length;
+    }
+
+    /**
+     * Returns id of found entry at provided position.
+     *
+     * @param i position of entry.
+     * @return id of entry.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public int getId(final int i) {
+        return mIds[i];
+    }
+
+    /**
+     * Returns hash of found entry at provided position.
+     *
+     * @param i position of entry.
+     * @return hash of entry.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public long getHash(final int i) {
+        return mHashes[i];
+    }
+
+    /**
+     * Returns Hamming distance of found entry at provided position to queried
+     * hash.
+     *
+     * @param i position of entry.
+     * @return Hamming distance of entry.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public int getDistance(final int i) {
+        return mDistances[i];
+    }
+
+    /**
+     * Returns a copy of ids of all found entries.
+     *
+     * @return ids of found entries.
+     */
+    public int[] getIds() {
+        return mIds.clone();
+    }
+}
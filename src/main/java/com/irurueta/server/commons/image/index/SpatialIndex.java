@@ -0,0 +1,1116 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageReaderResult;
+
+import java.util.Arrays;
+
+/**
+ * Immutable spatial index of image locations supporting bounding box, radius
+ * and k-nearest queries.
+ * This index is a packed Hilbert R-tree: locations are sorted along a Hilbert
+ * curve, so that nearby locations are stored together, and grouped into
+ * nodes of 16 entries whose bounding boxes are grouped again into nodes of 16
+ * boxes until a single root node remains. All entries and boxes are kept in
+ * flat primitive arrays.
+ * Distances are great-circle distances computed using the haversine formula
+ * on a spherical Earth, and radius and nearest queries prune nodes using a
+ * lower bound of the distance to their bounding boxes, so they work across
+ * the antimeridian and near the poles.
+ * Instances are immutable and can be shared among threads.
+ */
+public class SpatialIndex {
+
+    /**
+     * Mean Earth radius expressed in meters.
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    /**
+     * Number of children of each node.
+     */
+    static final int NODE_SIZE = 16;
+
+    /**
+     * Maximum coordinate along each axis of Hilbert curve.
+     */
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    /**
+     * Number of entries.
+     */
+    private final int mSize;
+
+    /**
+     * Id of each entry. Entries are sorted along a Hilbert curve.
+     */
+    private final int[] mIds;
+
+    /**
+     * Latitude of each entry expressed in degrees.
+     */
+    private final double[] mLatitudes;
+
+    /**
+     * Longitude of each entry expressed in degrees.
+     */
+    private final double[] mLongitudes;
+
+    /**
+     * Minimum latitude of bounding box of each node of each level. Nodes of
+     * level 0 contain entries, and nodes of any other level contain nodes of
+     * the previous level.
+     */
+    private final double[][] mMinLatitudes;
+
+    /**
+     * Minimum longitude of bounding box of each node of each level.
+     */
+    private final double[][] mMinLongitudes;
+
+    /**
+     * Maximum latitude of bounding box of each node of each level.
+     */
+    private final double[][] mMaxLatitudes;
+
+    /**
+     * Maximum longitude of bounding box of each node of each level.
+     */
+    private final double[][] mMaxLongitudes;
+
+    /**
+     * Constructor.
+     *
+     * @param size       number of entries.
+     * @param ids        id of each entry sorted along a Hilbert curve.
+     * @param latitudes  latitude of each entry.
+     * @param longitudes longitude of each entry.
+     */
+    private SpatialIndex(final int size, final int[] ids,
+                         final double[] latitudes, final double[] longitudes) {
+        mSize = size;
+        mIds = ids;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+
+        int levels = 0;
+        for (int count = size; count > 1 || (levels == 0 && count > 0);
+             count = nodeCount(count)) {
+            levels++;
+        }
+        mMinLatitudes = new double[levels][];
+        mMinLongitudes = new double[levels][];
+        mMaxLatitudes = new double[levels][];
+        mMaxLongitudes = new double[levels][];
+
+        int count = size;
+        for (int level = 0; level < levels; level++) {
+            final int nodes = nodeCount(count);
+            mMinLatitudes[level] = new double[nodes];
+            mMinLongitudes[level] = new double[nodes];
+            mMaxLatitudes[level] = new double[nodes];
+            mMaxLongitudes[level] = new double[nodes];
+            for (int node = 0; node < nodes; node++) {
+                computeBox(level, node, count);
+            }
+            count = nodes;
+        }
+    }
+
+    /**
+     * Returns number of entries.
+     *
+     * @return number of entries.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns id of entry at provided position. Entries are sorted along a
+     * Hilbert curve.
+     *
+     * @param position position of entry.
+     * @return id of entry.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public int getId(final int position) {
+        return mIds[position];
+    }
+
+    /**
+     * Returns latitude of entry at provided position.
+     *
+     * @param position position of entry.
+     * @return latitude of entry expressed in degrees.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public double getLatitude(final int position) {
+        return mLatitudes[position];
+    }
+
+    /**
+     * Returns longitude of entry at provided position.
+     *
+     * @param position position of entry.
+     * @return longitude of entry expressed in degrees.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public double getLongitude(final int position) {
+        return mLongitudes[position];
+    }
+
+    /**
+     * Finds ids of all entries within provided bounding box. If minimum
+     * longitude is greater than maximum longitude, box is considered to cross
+     * the antimeridian.
+     *
+     * @param minLatitude  minimum latitude expressed in degrees.
+     * @param minLongitude minimum (western) longitude expressed in degrees.
+     * @param maxLatitude  maximum latitude expressed in degrees.
+     * @param maxLongitude maximum (eastern) longitude expressed in degrees.
+     * @return ids of found entries sorted in increasing order.
+     * @throws IllegalArgumentException if any coordinate is out of range or
+     *                                  minimum latitude is greater than
+     *                                  maximum latitude.
+     */
+    public int[] search(final double minLatitude, final double minLongitude,
+                        final double maxLatitude, final double maxLongitude) {
+        checkLocation(minLatitude, minLongitude);
+        checkLocation(maxLatitude, maxLongitude);
+        if (minLatitude > maxLatitude) {
+            throw new IllegalArgumentException();
+        }
+
+        final Positions found = new Positions();
+        if (mSize > 0) {
+            final int root = mMinLatitudes.length - 1;
+            if (minLongitude <= maxLongitude) {
+                searchBox(root, 0, minLatitude, minLongitude, maxLatitude,
+                        maxLongitude, found);
+            } else {
+                searchBox(root, 0, minLatitude, minLongitude, maxLatitude,
+                        180.0, found);
+                searchBox(root, 0, minLatitude, -180.0, maxLatitude,
+                        maxLongitude, found);
+            }
+        }
+
+        final int[] ids = new int[found.mCount];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mIds[found.mPositions[i]];
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Finds all entries within provided distance of provided location.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @param radius    maximum distance expressed in meters.
+     * @return found entries sorted by distance.
+     * @throws IllegalArgumentException if location is out of range or radius
+     *                                  is negative.
+     */
+    public SpatialSearchResult searchRadius(final double latitude,
+                                            final double longitude,
+                                            final double radius) {
+        checkLocation(latitude, longitude);
+        if (radius < 0.0 || Double.isNaN(radius)) {
+            throw new IllegalArgumentException();
+        }
+
+        final Positions found = new Positions();
+        if (mSize > 0) {
+            final double angle = Math.min(radius / EARTH_RADIUS, Math.PI);
+            final double maxHaversine = haversine(angle);
+            searchRadius(mMinLatitudes.length - 1, 0, latitude, longitude,
+                    Math.cos(Math.toRadians(latitude)), maxHaversine, found);
+        }
+        return toResult(found, found.mCount);
+    }
+
+    /**
+     * Finds all entries within provided distance of provided location.
+     *
+     * @param location location to search around.
+     * @param radius   maximum distance expressed in meters.
+     * @return found entries sorted by distance.
+     * @throws IllegalArgumentException if location has no latitude or
+     *                                  longitude, is out of range or radius is
+     *                                  negative.
+     */
+    public SpatialSearchResult searchRadius(final GPSCoordinates location,
+                                            final double radius) {
+        checkLocation(location);
+        return searchRadius(location.getLatitude(), location.getLongitude(),
+                radius);
+    }
+
+    /**
+     * Finds provided number of entries nearest to provided location.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @param k         number of entries to find.
+     * @return found entries sorted by distance, containing less than k
+     * entries only if index is smaller than k.
+     * @throws IllegalArgumentException if location is out of range or k is
+     *                                  less than 1.
+     */
+    public SpatialSearchResult searchNearest(final double latitude,
+                                             final double longitude,
+                                             final int k) {
+        checkLocation(latitude, longitude);
+        if (k < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        final Positions found = new Positions();
+        if (mSize == 0) {
+            return toResult(found, 0);
+        }
+
+        // best-first traversal: nodes and entries are visited by increasing
+        // lower bound of their distance
+        final double cosLatitude = Math.cos(Math.toRadians(latitude));
+        final Queue queue = new Queue();
+        final int root = mMinLatitudes.length - 1;
+        queue.add(boxHaversine(root, 0, latitude, longitude, cosLatitude),
+                root + 1, 0);
+        double kth = Double.POSITIVE_INFINITY;
+        while (queue.mCount > 0 && queue.peekKey() <= kth) {
+            final double key = queue.peekKey();
+            final long value = queue.poll();
+            final int level = (int) (value >>> 32) - 1;
+            final int index = (int) value;
+            if (level < 0) {
+                // entries with the same distance as the k-th one are kept,
+                // so that ties are resolved by id
+                found.add(index, key);
+                if (found.mCount == k) {
+                    kth = key;
+                }
+                continue;
+            }
+
+            final int start = index * NODE_SIZE;
+            if (level == 0) {
+                final int end = Math.min(start + NODE_SIZE, mSize);
+                for (int i = start; i < end; i++) {
+                    queue.add(entryHaversine(i, latitude, longitude,
+                            cosLatitude), 0, i);
+                }
+            } else {
+                final int end = Math.min(start + NODE_SIZE,
+                        mMinLatitudes[level - 1].length);
+                for (int child = start; child < end; child++) {
+                    queue.add(boxHaversine(level - 1, child, latitude,
+                            longitude, cosLatitude), level, child);
+                }
+            }
+        }
+        return toResult(found, Math.min(k, found.mCount));
+    }
+
+    /**
+     * Finds provided number of entries nearest to provided location.
+     *
+     * @param location location to search around.
+     * @param k        number of entries to find.
+     * @return found entries sorted by distance, containing less than k
+     * entries only if index is smaller than k.
+     * @throws IllegalArgumentException if location has no latitude or
+     *                                  longitude, is out of range or k is less
+     *                                  than 1.
+     */
+    public SpatialSearchResult searchNearest(final GPSCoordinates location,
+                                             final int k) {
+        checkLocation(location);
+        return searchNearest(location.getLatitude(), location.getLongitude(),
+                k);
+    }
+
+    /**
+     * Computes great-circle distance between two locations using the
+     * haversine formula.
+     *
+     * @param latitude1  latitude of first location expressed in degrees.
+     * @param longitude1 longitude of first location expressed in degrees.
+     * @param latitude2  latitude of second location expressed in degrees.
+     * @param longitude2 longitude of second location expressed in degrees.
+     * @return distance expressed in meters.
+     */
+    public static double distance(final double latitude1,
+                                  final double longitude1,
+                                  final double latitude2,
+                                  final double longitude2) {
+        final double h = haversine(Math.toRadians(latitude1 - latitude2)) +
+                Math.cos(Math.toRadians(latitude1)) *
+                        Math.cos(Math.toRadians(latitude2)) *
+                        haversine(Math.toRadians(longitude1 - longitude2));
+        return toDistance(h);
+    }
+
+    /**
+     * Computes great-circle distance between two locations using the
+     * haversine formula.
+     *
+     * @param location1 first location.
+     * @param location2 second location.
+     * @return distance expressed in meters.
+     * @throws IllegalArgumentException if any location has no latitude or
+     *                                  longitude.
+     */
+    public static double distance(final GPSCoordinates location1,
+                                  final GPSCoordinates location2) {
+        checkLocation(location1);
+        checkLocation(location2);
+        return distance(location1.getLatitude(), location1.getLongitude(),
+                location2.getLatitude(), location2.getLongitude());
+    }
+
+    /**
+     * Computes Hilbert curve position of a location.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @return position along a Hilbert curve over a 65536x65536 grid.
+     */
+    static long hilbert(final double latitude, final double longitude) {
+        int x = (int) ((longitude + 180.0) / 360.0 * HILBERT_MAX);
+        int y = (int) ((latitude + 90.0) / 180.0 * HILBERT_MAX);
+        long d = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            final int rx = (x & s) != 0 ? 1 : 0;
+            final int ry = (y & s) != 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_MAX - x;
+                    y = HILBERT_MAX - y;
+                }
+                final int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Finds entries within a bounding box under provided node.
+     *
+     * @param level        level of node.
+     * @param node         position of node within its level.
+     * @param minLatitude  minimum latitude.
+     * @param minLongitude minimum longitude.
+     * @param maxLatitude  maximum latitude.
+     * @param maxLongitude maximum longitude.
+     * @param found        instance where positions of found entries are
+     *                     added.
+     */
+    private void searchBox(final int level, final int node,
+                           final double minLatitude, final double minLongitude,
+                           final double maxLatitude, final double maxLongitude,
+                           final Positions found) {
+        if (mMinLatitudes[level][node] > maxLatitude ||
+                mMaxLatitudes[level][node] < minLatitude ||
+                mMinLongitudes[level][node] > maxLongitude ||
+                mMaxLongitudes[level][node] < minLongitude) {
+            return;
+        }
+
+        final int start = node * NODE_SIZE;
+        if (level == 0) {
+            final int end = Math.min(start + NODE_SIZE, mSize);
+            for (int i = start; i < end; i++) {
+                final double latitude = mLatitudes[i];
+                final double longitude = mLongitudes[i];
+                if (latitude >= minLatitude && latitude <= maxLatitude &&
+                        longitude >= minLongitude &&
+                        longitude <= maxLongitude) {
+                    found.add(i, 0.0);
+                }
+            }
+        } else {
+            final int end = Math.min(start + NODE_SIZE,
+                    mMinLatitudes[level - 1].length);
+            for (int child = start; child < end; child++) {
+                searchBox(level - 1, child, minLatitude, minLongitude,
+                        maxLatitude, maxLongitude, found);
+            }
+        }
+    }
+
+    /**
+     * Finds entries within a distance under provided node.
+     *
+     * @param level        level of node.
+     * @param node         position of node within its level.
+     * @param latitude     latitude of queried location.
+     * @param longitude    longitude of queried location.
+     * @param cosLatitude  cosine of latitude of queried location.
+     * @param maxHaversine haversine of maximum angular distance.
+     * @param found        instance where positions of found entries are
+     *                     added.
+     */
+    private void searchRadius(final int level, final int node,
+                              final double latitude, final double longitude,
+                              final double cosLatitude,
+                              final double maxHaversine,
+                              final Positions found) {
+        if (boxHaversine(level, node, latitude, longitude, cosLatitude) >
+                maxHaversine) {
+            return;
+        }
+
+        final int start = node * NODE_SIZE;
+        if (level == 0) {
+            final int end = Math.min(start + NODE_SIZE, mSize);
+            for (int i = start; i < end; i++) {
+                final double h = entryHaversine(i, latitude, longitude,
+                        cosLatitude);
+                if (h <= maxHaversine) {
+                    found.add(i, h);
+                }
+            }
+        } else {
+            final int end = Math.min(start + NODE_SIZE,
+                    mMinLatitudes[level - 1].length);
+            for (int child = start; child < end; child++) {
+                searchRadius(level - 1, child, latitude, longitude,
+                        cosLatitude, maxHaversine, found);
+            }
+        }
+    }
+
+    /**
+     * Computes haversine of angular distance between queried location and
+     * provided entry.
+     *
+     * @param i           position of entry.
+     * @param latitude    latitude of queried location.
+     * @param longitude   longitude of queried location.
+     * @param cosLatitude cosine of latitude of queried location.
+     * @return haversine of angular distance.
+     */
+    private double entryHaversine(final int i, final double latitude,
+                                  final double longitude,
+                                  final double cosLatitude) {
+        return haversine(Math.toRadians(latitude - mLatitudes[i])) +
+                cosLatitude * Math.cos(Math.toRadians(mLatitudes[i])) *
+                        haversine(Math.toRadians(longitude - mLongitudes[i]));
+    }
+
+    /**
+     * Computes a lower bound of the haversine of angular distance between
+     * queried location and any location within bounding box of provided node.
+     *
+     * @param level       level of node.
+     * @param node        position of node within its level.
+     * @param latitude    latitude of queried location.
+     * @param longitude   longitude of queried location.
+     * @param cosLatitude cosine of latitude of queried location.
+     * @return lower bound of haversine of angular distance.
+     */
+    private double boxHaversine(final int level, final int node,
+                                final double latitude, final double longitude,
+                                final double cosLatitude) {
+        final double minLatitude = mMinLatitudes[level][node];
+        final double maxLatitude = mMaxLatitudes[level][node];
+        final double minLongitude = mMinLongitudes[level][node];
+        final double maxLongitude = mMaxLongitudes[level][node];
+
+        if (longitude >= minLongitude && longitude <= maxLongitude) {
+            // nearest location is on the same meridian
+            if (latitude < minLatitude) {
+                return haversine(Math.toRadians(minLatitude - latitude));
+            }
+            if (latitude > maxLatitude) {
+                return haversine(Math.toRadians(latitude - maxLatitude));
+            }
+            return 0.0;
+        }
+
+        // nearest location is on the nearest bounding meridian, either at the
+        // latitude where distance to such meridian is minimum or at a corner
+        final double haversineLongitude = Math.min(
+                haversine(Math.toRadians(longitude - minLongitude)),
+                haversine(Math.toRadians(longitude - maxLongitude)));
+        final double extremumLatitude = extremumLatitude(latitude,
+                haversineLongitude);
+        if (extremumLatitude > minLatitude && extremumLatitude < maxLatitude) {
+            return meridianHaversine(haversineLongitude, cosLatitude, latitude,
+                    extremumLatitude);
+        }
+        return Math.min(
+                meridianHaversine(haversineLongitude, cosLatitude, latitude,
+                        minLatitude),
+                meridianHaversine(haversineLongitude, cosLatitude, latitude,
+                        maxLatitude));
+    }
+
+    /**
+     * Computes latitude of the location of a meridian nearest to queried
+     * location.
+     *
+     * @param latitude           latitude of queried location.
+     * @param haversineLongitude haversine of longitude difference to
+     *                           meridian.
+     * @return latitude of nearest location expressed in degrees.
+     */
+    private static double extremumLatitude(final double latitude,
+                                           final double haversineLongitude) {
+        final double cosLongitude = 1.0 - 2.0 * haversineLongitude;
+        if (cosLongitude <= 0.0) {
+            return latitude > 0.0 ? 90.0 : -90.0;
+        }
+        return Math.toDegrees(Math.atan(Math.tan(Math.toRadians(latitude)) /
+                cosLongitude));
+    }
+
+    /**
+     * Computes haversine of angular distance between queried location and a
+     * location of a meridian.
+     *
+     * @param haversineLongitude haversine of longitude difference to
+     *                           meridian.
+     * @param cosLatitude        cosine of latitude of queried location.
+     * @param latitude1          latitude of queried location.
+     * @param latitude2          latitude of location of meridian.
+     * @return haversine of angular distance.
+     */
+    private static double meridianHaversine(final double haversineLongitude,
+                                            final double cosLatitude,
+                                            final double latitude1,
+                                            final double latitude2) {
+        return cosLatitude * Math.cos(Math.toRadians(latitude2)) *
+                haversineLongitude +
+                haversine(Math.toRadians(latitude1 - latitude2));
+    }
+
+    /**
+     * Computes haversine of an angle.
+     *
+     * @param angle angle expressed in radians.
+     * @return haversine.
+     */
+    private static double haversine(final double angle) {
+        final double s = Math.sin(angle / 2.0);
+        return s * s;
+    }
+
+    /**
+     * Converts haversine of an angular distance into a distance.
+     *
+     * @param h haversine of angular distance.
+     * @return distance expressed in meters.
+     */
+    private static double toDistance(final double h) {
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(Math.min(1.0, h)));
+    }
+
+    /**
+     * Computes bounding box of provided node.
+     *
+     * @param level    level of node.
+     * @param node     position of node within its level.
+     * @param children number of nodes (or entries) of previous level.
+     */
+    private void computeBox(final int level, final int node,
+                            final int children) {
+        final int start = node * NODE_SIZE;
+        final int end = Math.min(start + NODE_SIZE, children);
+        final double[] minLatitudes = level == 0 ? mLatitudes :
+                mMinLatitudes[level - 1];
+        final double[] minLongitudes = level == 0 ? mLongitudes :
+                mMinLongitudes[level - 1];
+        final double[] maxLatitudes = level == 0 ? mLatitudes :
+                mMaxLatitudes[level - 1];
+        final double[] maxLongitudes = level == 0 ? mLongitudes :
+                mMaxLongitudes[level - 1];
+
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int i = start; i < end; i++) {
+            minLatitude = Math.min(minLatitude, minLatitudes[i]);
+            minLongitude = Math.min(minLongitude, minLongitudes[i]);
+            maxLatitude = Math.max(maxLatitude, maxLatitudes[i]);
+            maxLongitude = Math.max(maxLongitude, maxLongitudes[i]);
+        }
+        mMinLatitudes[level][node] = minLatitude;
+        mMinLongitudes[level][node] = minLongitude;
+        mMaxLatitudes[level][node] = maxLatitude;
+        mMaxLongitudes[level][node] = maxLongitude;
+    }
+
+    /**
+     * Converts found entries into a search result sorted by distance and id.
+     *
+     * @param found found entries.
+     * @param size  maximum number of entries to be returned.
+     * @return search result.
+     */
+    private SpatialSearchResult toResult(final Positions found,
+                                         final int size) {
+        found.sort(mIds);
+
+        final int[] ids = new int[size];
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        final double[] distances = new double[size];
+        for (int i = 0; i < size; i++) {
+            final int position = found.mPositions[i];
+            ids[i] = mIds[position];
+            latitudes[i] = mLatitudes[position];
+            longitudes[i] = mLongitudes[position];
+            distances[i] = toDistance(found.mKeys[i]);
+        }
+        return new SpatialSearchResult(ids, latitudes, longitudes, distances);
+    }
+
+    /**
+     * Returns number of nodes required to group provided number of children.
+     *
+     * @param children number of children.
+     * @return number of nodes.
+     */
+    private static int nodeCount(final int children) {
+        return (children + NODE_SIZE - 1) / NODE_SIZE;
+    }
+
+    /**
+     * Checks that provided location is valid.
+     *
+     * @param latitude  latitude expressed in degrees.
+     * @param longitude longitude expressed in degrees.
+     * @throws IllegalArgumentException if latitude is not between -90 and 90
+     *                                  or longitude is not between -180 and
+     *                                  180.
+     */
+    private static void checkLocation(final double latitude,
+                                      final double longitude) {
+        if (!(latitude >= -90.0 && latitude <= 90.0 &&
+                longitude >= -180.0 && longitude <= 180.0)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Checks that provided location has latitude and longitude.
+     *
+     * @param location location to be checked.
+     * @throws IllegalArgumentException if location is null or has no
+     *                                  latitude or longitude.
+     */
+    private static void checkLocation(final GPSCoordinates location) {
+        if (location == null || !location.isLatitudeAvailable() ||
+                !location.isLongitudeAvailable()) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Positions of found entries along with their sorting keys.
+     */
+    private static class Positions {
+
+        /**
+         * Ranges containing at most this number of entries are sorted using
+         * insertion sort.
+         */
+        private static final int INSERTION_SORT_THRESHOLD = 16;
+
+        /**
+         * Positions of found entries.
+         */
+        private int[] mPositions = new int[16];
+
+        /**
+         * Sorting key of each found entry.
+         */
+        private double[] mKeys = new double[16];
+
+        /**
+         * Number of found entries.
+         */
+        private int mCount;
+
+        /**
+         * Adds a found entry.
+         *
+         * @param position position of entry.
+         * @param key      sorting key of entry.
+         */
+        void add(final int position, final double key) {
+            if (mCount == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, 2 * mCount);
+                mKeys = Arrays.copyOf(mKeys, 2 * mCount);
+            }
+            mPositions[mCount] = position;
+            mKeys[mCount++] = key;
+        }
+
+        /**
+         * Sorts found entries by increasing key and then by id, without
+         * boxing them.
+         *
+         * @param ids ids of entries of index.
+         */
+        void sort(final int[] ids) {
+            sort(ids, 0, mCount - 1);
+        }
+
+        /**
+         * Sorts found entries within provided range using quicksort, and
+         * insertion sort for small ranges.
+         *
+         * @param ids  ids of entries of index.
+         * @param low  position of first entry of range.
+         * @param high position of last entry of range.
+         */
+        private void sort(final int[] ids, int low, int high) {
+            while (high - low >= INSERTION_SORT_THRESHOLD) {
+                // median of three is moved to the middle
+                final int middle = (low + high) >>> 1;
+                if (less(ids, middle, low)) {
+                    swap(middle, low);
+                }
+                if (less(ids, high, low)) {
+                    swap(high, low);
+                }
+                if (less(ids, high, middle)) {
+                    swap(high, middle);
+                }
+                final double pivotKey = mKeys[middle];
+                final int pivotId = ids[mPositions[middle]];
+
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (compare(mKeys[i], ids[mPositions[i]], pivotKey,
+                            pivotId) < 0) {
+                        i++;
+                    }
+                    while (compare(pivotKey, pivotId, mKeys[j],
+                            ids[mPositions[j]]) < 0) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+
+                // smaller range is sorted recursively so that stack depth is
+                // logarithmic
+                if (j - low < high - i) {
+                    sort(ids, low, j);
+                    low = i;
+                } else {
+                    sort(ids, i, high);
+                    high = j;
+                }
+            }
+
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && less(ids, j, j - 1); j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        /**
+         * Indicates whether entry at first provided position goes before
+         * entry at second provided position.
+         *
+         * @param ids ids of entries of index.
+         * @param i   first position.
+         * @param j   second position.
+         * @return true if first entry goes before second one.
+         */
+        private boolean less(final int[] ids, final int i, final int j) {
+            return compare(mKeys[i], ids[mPositions[i]], mKeys[j],
+                    ids[mPositions[j]]) < 0;
+        }
+
+        /**
+         * Compares two entries by key and then by id.
+         *
+         * @param key1 key of first entry.
+         * @param id1  id of first entry.
+         * @param key2 key of second entry.
+         * @param id2  id of second entry.
+         * @return a negative value, zero or a positive value if first entry
+         * goes before, together with or after second one.
+         */
+        private static int compare(final double key1, final int id1,
+                                   final double key2, final int id2) {
+            if (key1 != key2) {
+                return key1 < key2 ? -1 : 1;
+            }
+            return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+        }
+
+        /**
+         * Swaps two found entries.
+         *
+         * @param i position of first entry.
+         * @param j position of second entry.
+         */
+        private void swap(final int i, final int j) {
+            final int position = mPositions[i];
+            mPositions[i] = mPositions[j];
+            mPositions[j] = position;
+            final double key = mKeys[i];
+            mKeys[i] = mKeys[j];
+            mKeys[j] = key;
+        }
+    }
+
+    /**
+     * Binary min-heap of nodes and entries keyed by a lower bound of their
+     * distance.
+     */
+    private static class Queue {
+
+        /**
+         * Key of each element.
+         */
+        private double[] mKeys = new double[64];
+
+        /**
+         * Each element encoded as its level plus one (zero for entries) in
+         * the most significant bits and its position in the least
+         * significant bits.
+         */
+        private long[] mValues = new long[64];
+
+        /**
+         * Number of elements.
+         */
+        private int mCount;
+
+        /**
+         * Adds an element.
+         *
+         * @param key      key of element.
+         * @param level    level of node plus one, or zero for entries.
+         * @param position position of node or entry.
+         */
+        void add(final double key, final int level, final int position) {
+            if (mCount == mKeys.length) {
+                mKeys = Arrays.copyOf(mKeys, 2 * mCount);
+                mValues = Arrays.copyOf(mValues, 2 * mCount);
+            }
+            int i = mCount++;
+            final long value = ((long) level << 32) | position;
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (mKeys[parent] <= key) {
+                    break;
+                }
+                mKeys[i] = mKeys[parent];
+                mValues[i] = mValues[parent];
+                i = parent;
+            }
+            mKeys[i] = key;
+            mValues[i] = value;
+        }
+
+        /**
+         * Returns minimum key.
+         *
+         * @return minimum key.
+         */
+        double peekKey() {
+            return mKeys[0];
+        }
+
+        /**
+         * Removes element having minimum key.
+         *
+         * @return removed element.
+         */
+        long poll() {
+            final long result = mValues[0];
+            final int count = --mCount;
+            final double key = mKeys[count];
+            final long value = mValues[count];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= count) {
+                    break;
+                }
+                if (child + 1 < count && mKeys[child + 1] < mKeys[child]) {
+                    child++;
+                }
+                if (key <= mKeys[child]) {
+                    break;
+                }
+                mKeys[i] = mKeys[child];
+                mValues[i] = mValues[child];
+                i = child;
+            }
+            mKeys[i] = key;
+            mValues[i] = value;
+            return result;
+        }
+    }
+
+    /**
+     * Builder of spatial indices, loading entries in bulk.
+     */
+    public static class Builder {
+
+        /**
+         * Id of each added entry.
+         */
+        private int[] mIds = new int[16];
+
+        /**
+         * Latitude of each added entry.
+         */
+        private double[] mLatitudes = new double[16];
+
+        /**
+         * Longitude of each added entry.
+         */
+        private double[] mLongitudes = new double[16];
+
+        /**
+         * Number of added entries.
+         */
+        private int mSize;
+
+        /**
+         * Returns number of added entries.
+         *
+         * @return number of added entries.
+         */
+        public int getSize() {
+            return mSize;
+        }
+
+        /**
+         * Adds an entry.
+         *
+         * @param id        id of entry.
+         * @param latitude  latitude expressed in degrees.
+         * @param longitude longitude expressed in degrees.
+         * @return this builder.
+         * @throws IllegalArgumentException if location is out of range.
+         */
+        public Builder add(final int id, final double latitude,
+                           final double longitude) {
+            checkLocation(latitude, longitude);
+            if (mSize == mIds.length) {
+                mIds = Arrays.copyOf(mIds, 2 * mSize);
+                mLatitudes = Arrays.copyOf(mLatitudes, 2 * mSize);
+                mLongitudes = Arrays.copyOf(mLongitudes, 2 * mSize);
+            }
+            mIds[mSize] = id;
+            mLatitudes[mSize] = latitude;
+            mLongitudes[mSize] = longitude;
+            mSize++;
+            return this;
+        }
+
+        /**
+         * Adds an entry.
+         *
+         * @param id       id of entry.
+         * @param location location of entry.
+         * @return this builder.
+         * @throws IllegalArgumentException if location has no latitude or
+         *                                  longitude, or is out of range.
+         */
+        public Builder add(final int id, final GPSCoordinates location) {
+            checkLocation(location);
+            return add(id, location.getLatitude(), location.getLongitude());
+        }
+
+        /**
+         * Adds location of provided image, if available. Images without
+         * location are ignored.
+         *
+         * @param id     id of image.
+         * @param result result of reading an image file.
+         * @return this builder.
+         * @throws IllegalArgumentException if location is out of range.
+         */
+        public Builder add(final int id, final ImageReaderResult result) {
+            final ImageMetadata metadata = result.getMetadata();
+            final GPSCoordinates location = metadata != null ?
+                    metadata.getLocation() : null;
+            if (location != null && location.isLatitudeAvailable() &&
+                    location.isLongitudeAvailable()) {
+                add(id, location.getLatitude(), location.getLongitude());
+            }
+            return this;
+        }
+
+        /**
+         * Adds locations of provided images, if available. Each image is
+         * identified by its position in iteration order, and images without
+         * location are ignored.
+         *
+         * @param results results of reading image files.
+         * @return this builder.
+         * @throws IllegalArgumentException if any location is out of range.
+         */
+        public Builder addAll(final Iterable<ImageReaderResult> results) {
+            int id = 0;
+            for (final ImageReaderResult result : results) {
+                add(id++, result);
+            }
+            return this;
+        }
+
+        /**
+         * Builds an index containing added entries.
+         *
+         * @return built index.
+         */
+        public SpatialIndex build() {
+            final int size = mSize;
+            final long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (hilbert(mLatitudes[i], mLongitudes[i]) << 31) | i;
+            }
+            Arrays.sort(order);
+
+            final int[] ids = new int[size];
+            final double[] latitudes = new double[size];
+            final double[] longitudes = new double[size];
+            for (int i = 0; i < size; i++) {
+                final int source = (int) (order[i] & Integer.MAX_VALUE);
+                ids[i] = mIds[source];
+                latitudes[i] = mLatitudes[source];
+                longitudes[i] = mLongitudes[source];
+            }
+            return new SpatialIndex(size, ids, latitudes, longitudes);
+        }
+    }
+}
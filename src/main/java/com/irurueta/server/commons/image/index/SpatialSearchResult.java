@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+/**
+ * Contains entries found by a radius or nearest search on a SpatialIndex,
+ * sorted by increasing distance and, for equal distances, by increasing id.
+ */
+public class SpatialSearchResult {
+
+    /**
+     * Ids of found entries.
+     */
+    private final int[] mIds;
+
+    /**
+     * Latitudes of found entries expressed in degrees.
+     */
+    private final double[] mLatitudes;
+
+    /**
+     * Longitudes of found entries expressed in degrees.
+     */
+    private final double[] mLongitudes;
+
+    /**
+     * Distances of found entries to queried location expressed in meters.
+     */
+    private final double[] mDistances;
+
+    /**
+     * Constructor.
+     *
+     * @param ids        ids of found entries.
+     * @param latitudes  latitudes of found entries.
+     * @param longitudes longitudes of found entries.
+     * @param distances  distances of found entries.
+     */
+    SpatialSearchResult(final int[] ids, final double[] latitudes,
+                        final double[] longitudes, final double[] distances) {
+        mIds = ids;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+        mDistances = distances;
+    }
+
+    /**
+     * Returns number of found entries.
+     *
+     * @return number of found entries.
+     */
+    public int getSize() {
+        return mIds.length;
+    }
+
+    /**
+     * Returns id of found entry at provided position.
+     *
+     * @param i position of entry.
+     * @return id of entry.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public int getId(final int i) {
+        return mIds[i];
+    }
+
+    /**
+     * Returns latitude of found entry at provided position.
+     *
+     * @param i position of entry.
+     * @return latitude of entry expressed in degrees.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public double getLatitude(final int i) {
+        return mLatitudes[i];
+    }
+
+    /**
+     * Returns longitude of found entry at provided position.
+     *
+     * @param i position of entry.
+     * @return longitude of entry expressed in degrees.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public double getLongitude(final int i) {
+        return mLongitudes[i];
+    }
+
+    /**
+     * Returns great-circle distance of found entry at provided position to
+     * queried location.
+     *
+     * @param i position of entry.
+     * @return distance of entry expressed in meters.
+     * @throws IndexOutOfBoundsException if position is not valid.
+     */
+    public double getDistance(final int i) {
+        return mDistances[i];
+    }
+
+    /**
+     * Returns a copy of ids of all found entries.
+     *
+     * @return ids of found entries.
+     */
+    public int[] getIds() {
+        return mIds.clone();
+    }
+}
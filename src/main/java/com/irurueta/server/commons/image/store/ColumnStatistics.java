@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.store;
+
+/**
+ * Summary statistics of the non-null values of a numeric field over a set of
+ * rows.
+ */
+public class ColumnStatistics {
+
+    /**
+     * Number of non-null values.
+     */
+    private final int mCount;
+
+    /**
+     * Sum of values.
+     */
+    private final double mSum;
+
+    /**
+     * Minimum value.
+     */
+    private final double mMin;
+
+    /**
+     * Maximum value.
+     */
+    private final double mMax;
+
+    /**
+     * Constructor.
+     *
+     * @param count number of non-null values.
+     * @param sum   sum of values.
+     * @param min   minimum value.
+     * @param max   maximum value.
+     */
+    ColumnStatistics(final int count, final double sum, final double min,
+                     final double max) {
+        mCount = count;
+        mSum = sum;
+        mMin = min;
+        mMax = max;
+    }
+
+    /**
+     * Returns number of non-null values.
+     *
+     * @return number of values.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns sum of values.
+     *
+     * @return sum of values, or zero if there are no values.
+     */
+    public double getSum() {
+        return mSum;
+    }
+
+    /**
+     * Returns minimum value.
+     *
+     * @return minimum value, or NaN if there are no values.
+     */
+    public double getMin() {
+        return mCount > 0 ? mMin : Double.NaN;
+    }
+
+    /**
+     * Returns maximum value.
+     *
+     * @return maximum value, or NaN if there are no values.
+     */
+    public double getMax() {
+        return mCount > 0 ? mMax : Double.NaN;
+    }
+
+    /**
+     * Returns mean value.
+     *
+     * @return mean value, or NaN if there are no values.
+     */
+    public double getMean() {
+        return mCount > 0 ? mSum / mCount : Double.NaN;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.store;
+
+/**
+ * String fields of image metadata kept by a MetadataStore using dictionary
+ * encoding, so that each row only stores an integer code.
+ */
+public enum DictionaryField {
+    /**
+     * Camera maker.
+     */
+    MAKER,
+
+    /**
+     * Camera model.
+     */
+    MODEL,
+
+    /**
+     * Software used to create or edit the image.
+     */
+    SOFTWARE,
+
+    /**
+     * Content type of the file.
+     */
+    CONTENT_TYPE,
+
+    /**
+     * Name of the image format.
+     */
+    IMAGE_FORMAT
+}
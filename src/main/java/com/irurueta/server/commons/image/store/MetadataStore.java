@@ -0,0 +1,818 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.store;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.ImageFormat;
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageOrientation;
+import com.irurueta.server.commons.image.ImageReaderResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory columnar store of image metadata, meant for reporting
+ * over large collections of images (i.e. counts by camera maker or model, ISO
+ * histograms or focal length distributions).
+ * Each numeric field is kept in a double array together with a validity
+ * bitmap indicating which rows have a value. Each string field is dictionary
+ * encoded: distinct values are kept sorted in a dictionary and each row only
+ * keeps the int code of its value, or NULL_CODE if it has no value.
+ * Filters scan a single column and produce a RowSet bitmap, 64 rows at a
+ * time and without branches, and aggregates only visit rows selected by a
+ * RowSet, summing fully selected blocks of 64 rows with plain loops over
+ * contiguous arrays that the JIT compiler can unroll and vectorize.
+ * Instances are immutable and can be shared among threads.
+ */
+public class MetadataStore {
+
+    /**
+     * Code of rows without value in a dictionary encoded field.
+     */
+    public static final int NULL_CODE = -1;
+
+    /**
+     * Number of rows.
+     */
+    private final int mSize;
+
+    /**
+     * Values of each numeric field, indexed by field ordinal.
+     */
+    private final double[][] mValues;
+
+    /**
+     * Validity bitmap of each numeric field, indexed by field ordinal. A bit is
+     * set if its row has a value.
+     */
+    private final long[][] mValid;
+
+    /**
+     * Codes of each dictionary encoded field, indexed by field ordinal.
+     */
+    private final int[][] mCodes;
+
+    /**
+     * Sorted dictionary of each dictionary encoded field, indexed by field
+     * ordinal.
+     */
+    private final String[][] mDictionaries;
+
+    /**
+     * Constructor.
+     *
+     * @param size         number of rows.
+     * @param values       values of each numeric field.
+     * @param valid        validity bitmap of each numeric field.
+     * @param codes        codes of each dictionary encoded field.
+     * @param dictionaries sorted dictionary of each dictionary encoded field.
+     */
+    private MetadataStore(final int size, final double[][] values,
+                          final long[][] valid, final int[][] codes,
+                          final String[][] dictionaries) {
+        mSize = size;
+        mValues = values;
+        mValid = valid;
+        mCodes = codes;
+        mDictionaries = dictionaries;
+    }
+
+    /**
+     * Returns number of rows.
+     *
+     * @return number of rows.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns a set containing all rows.
+     *
+     * @return set containing all rows.
+     */
+    public RowSet all() {
+        return RowSet.all(mSize);
+    }
+
+    /**
+     * Indicates whether provided row has a value for provided field.
+     *
+     * @param field numeric field.
+     * @param row   row.
+     * @return true if row has a value, false otherwise.
+     */
+    public boolean isNull(final NumericField field, final int row) {
+        checkRow(row);
+        return (mValid[field.ordinal()][row >>> 6] & (1L << row)) == 0L;
+    }
+
+    /**
+     * Returns value of provided field at provided row.
+     *
+     * @param field numeric field.
+     * @param row   row.
+     * @return value or null if row has no value.
+     */
+    public Double getValue(final NumericField field, final int row) {
+        return isNull(field, row) ? null : mValues[field.ordinal()][row];
+    }
+
+    /**
+     * Returns code of value of provided field at provided row.
+     *
+     * @param field dictionary encoded field.
+     * @param row   row.
+     * @return position of value within dictionary of field or NULL_CODE if
+     * row has no value.
+     */
+    public int getCode(final DictionaryField field, final int row) {
+        checkRow(row);
+        return mCodes[field.ordinal()][row];
+    }
+
+    /**
+     * Returns value of provided field at provided row.
+     *
+     * @param field dictionary encoded field.
+     * @param row   row.
+     * @return value or null if row has no value.
+     */
+    public String getString(final DictionaryField field, final int row) {
+        final int code = getCode(field, row);
+        return code != NULL_CODE ? mDictionaries[field.ordinal()][code] : null;
+    }
+
+    /**
+     * Returns a copy of the sorted distinct values of provided field.
+     *
+     * @param field dictionary encoded field.
+     * @return distinct values, where the position of each value is its code.
+     */
+    public String[] getDictionary(final DictionaryField field) {
+        final String[] dictionary = mDictionaries[field.ordinal()];
+        return Arrays.copyOf(dictionary, dictionary.length);
+    }
+
+    /**
+     * Returns code of provided value of provided field.
+     *
+     * @param field dictionary encoded field.
+     * @param value value to look for or null.
+     * @return code of value, NULL_CODE if value is null, or a negative value
+     * other than NULL_CODE if value is not present in the store.
+     */
+    public int getCode(final DictionaryField field, final String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        final int code = Arrays.binarySearch(mDictionaries[field.ordinal()],
+                value);
+        return code >= 0 ? code : Math.min(code, NULL_CODE - 1);
+    }
+
+    /**
+     * Finds rows having a value of provided field between provided limits.
+     *
+     * @param field numeric field.
+     * @param min   minimum value (inclusive).
+     * @param max   maximum value (inclusive).
+     * @return found rows. Rows without value are never found.
+     */
+    public RowSet filterRange(final NumericField field, final double min,
+                              final double max) {
+        final double[] values = mValues[field.ordinal()];
+        final long[] valid = mValid[field.ordinal()];
+        final long[] words = new long[valid.length];
+        for (int w = 0; w < words.length; w++) {
+            final int base = w << 6;
+            final int end = Math.min(base + 64, mSize);
+            long word = 0L;
+            for (int i = base; i < end; i++) {
+                final double v = values[i];
+                word |= (v >= min & v <= max ? 1L : 0L) << i;
+            }
+            words[w] = word & valid[w];
+        }
+        return new RowSet(mSize, words);
+    }
+
+    /**
+     * Finds rows having a value for provided field.
+     *
+     * @param field numeric field.
+     * @return found rows.
+     */
+    public RowSet filterNotNull(final NumericField field) {
+        final long[] valid = mValid[field.ordinal()];
+        return new RowSet(mSize, Arrays.copyOf(valid, valid.length));
+    }
+
+    /**
+     * Finds rows having provided value of provided field.
+     *
+     * @param field dictionary encoded field.
+     * @param value value to look for, or null to find rows without value.
+     * @return found rows.
+     */
+    public RowSet filterEquals(final DictionaryField field,
+                               final String value) {
+        final int code = getCode(field, value);
+        if (code < NULL_CODE) {
+            return RowSet.none(mSize);
+        }
+        return filterCodes(field, code, code);
+    }
+
+    /**
+     * Finds rows having any of provided values of provided field.
+     *
+     * @param field  dictionary encoded field.
+     * @param values values to look for. Null finds rows without value.
+     * @return found rows.
+     */
+    public RowSet filterIn(final DictionaryField field,
+                           final String... values) {
+        // codes are looked up once, then matched using a lookup table
+        final boolean[] selected =
+                new boolean[mDictionaries[field.ordinal()].length + 1];
+        for (final String value : values) {
+            final int code = getCode(field, value);
+            if (code >= NULL_CODE) {
+                selected[code + 1] = true;
+            }
+        }
+
+        final int[] codes = mCodes[field.ordinal()];
+        final long[] words = new long[RowSet.wordCount(mSize)];
+        for (int w = 0; w < words.length; w++) {
+            final int base = w << 6;
+            final int end = Math.min(base + 64, mSize);
+            long word = 0L;
+            for (int i = base; i < end; i++) {
+                word |= (selected[codes[i] + 1] ? 1L : 0L) << i;
+            }
+            words[w] = word;
+        }
+        return new RowSet(mSize, words);
+    }
+
+    /**
+     * Finds rows having a value for provided field.
+     *
+     * @param field dictionary encoded field.
+     * @return found rows.
+     */
+    public RowSet filterNotNull(final DictionaryField field) {
+        return filterCodes(field, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Computes statistics of non-null values of provided field over all rows.
+     *
+     * @param field numeric field.
+     * @return statistics.
+     */
+    public ColumnStatistics statistics(final NumericField field) {
+        return statistics(field, null);
+    }
+
+    /**
+     * Computes statistics of non-null values of provided field over provided
+     * rows.
+     *
+     * @param field numeric field.
+     * @param rows  rows to aggregate or null to aggregate all rows.
+     * @return statistics.
+     * @throws IllegalArgumentException if rows belong to a store of different
+     *                                  size.
+     */
+    public ColumnStatistics statistics(final NumericField field,
+                                       final RowSet rows) {
+        final long[] selection = checkRows(rows);
+        final double[] values = mValues[field.ordinal()];
+        final long[] valid = mValid[field.ordinal()];
+        int count = 0;
+        double sum = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int w = 0; w < valid.length; w++) {
+            long word = selection != null ? valid[w] & selection[w] : valid[w];
+            final int base = w << 6;
+            if (word == -1L) {
+                // dense block. Values are compared directly because Math.min
+                // and Math.max are much slower due to their handling of NaN
+                for (int i = base; i < base + 64; i++) {
+                    final double v = values[i];
+                    sum += v;
+                    min = v < min ? v : min;
+                    max = v > max ? v : max;
+                }
+                count += 64;
+                continue;
+            }
+            while (word != 0L) {
+                final double v = values[base +
+                        Long.numberOfTrailingZeros(word)];
+                sum += v;
+                min = v < min ? v : min;
+                max = v > max ? v : max;
+                count++;
+                word &= word - 1;
+            }
+        }
+        return new ColumnStatistics(count, sum, min, max);
+    }
+
+    /**
+     * Computes a histogram of non-null values of provided field over provided
+     * rows, using bins of equal width. Values outside provided limits are
+     * ignored.
+     *
+     * @param field numeric field.
+     * @param min   minimum value of first bin (inclusive).
+     * @param max   maximum value of last bin (inclusive).
+     * @param bins  number of bins.
+     * @param rows  rows to aggregate or null to aggregate all rows.
+     * @return number of values within each bin.
+     * @throws IllegalArgumentException if limits are not valid, number of bins
+     *                                  is less than 1 or rows belong to a store
+     *                                  of different size.
+     */
+    public int[] histogram(final NumericField field, final double min,
+                           final double max, final int bins,
+                           final RowSet rows) {
+        if (!(min < max) || Double.isInfinite(min) || Double.isInfinite(max) ||
+                bins < 1) {
+            throw new IllegalArgumentException();
+        }
+        final long[] selection = checkRows(rows);
+        final double[] values = mValues[field.ordinal()];
+        final long[] valid = mValid[field.ordinal()];
+        final double scale = bins / (max - min);
+        final int[] result = new int[bins];
+        for (int w = 0; w < valid.length; w++) {
+            long word = selection != null ? valid[w] & selection[w] : valid[w];
+            final int base = w << 6;
+            while (word != 0L) {
+                final double v = values[base +
+                        Long.numberOfTrailingZeros(word)];
+                if (v >= min && v <= max) {
+                    result[Math.min((int) ((v - min) * scale), bins - 1)]++;
+                }
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts rows having each value of provided field over provided rows.
+     *
+     * @param field dictionary encoded field.
+     * @param rows  rows to aggregate or null to aggregate all rows.
+     * @return number of rows having each value, indexed by code, followed by
+     * number of rows without value.
+     * @throws IllegalArgumentException if rows belong to a store of different
+     *                                  size.
+     */
+    public int[] countBy(final DictionaryField field, final RowSet rows) {
+        final long[] selection = checkRows(rows);
+        final int[] codes = mCodes[field.ordinal()];
+        final int nulls = mDictionaries[field.ordinal()].length;
+        final int[] result = new int[nulls + 1];
+        if (selection == null) {
+            for (int i = 0; i < mSize; i++) {
+                final int code = codes[i];
+                result[code != NULL_CODE ? code : nulls]++;
+            }
+            return result;
+        }
+        for (int w = 0; w < selection.length; w++) {
+            long word = selection[w];
+            final int base = w << 6;
+            while (word != 0L) {
+                final int code = codes[base +
+                        Long.numberOfTrailingZeros(word)];
+                result[code != NULL_CODE ? code : nulls]++;
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts rows having each value of provided field over provided rows.
+     *
+     * @param field dictionary encoded field.
+     * @param rows  rows to aggregate or null to aggregate all rows.
+     * @return map containing the number of rows having each value found
+     * within rows. Rows without value are counted under the null key.
+     * @throws IllegalArgumentException if rows belong to a store of different
+     *                                  size.
+     */
+    public Map<String, Integer> countByValue(final DictionaryField field,
+                                             final RowSet rows) {
+        final int[] counts = countBy(field, rows);
+        final String[] dictionary = mDictionaries[field.ordinal()];
+        final Map<String, Integer> result = new HashMap<>();
+        for (int code = 0; code < counts.length; code++) {
+            if (counts[code] > 0) {
+                result.put(code < dictionary.length ? dictionary[code] : null,
+                        counts[code]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes statistics of non-null values of a numeric field grouped by
+     * value of a dictionary encoded field over provided rows.
+     *
+     * @param key   dictionary encoded field to group by.
+     * @param field numeric field to aggregate.
+     * @param rows  rows to aggregate or null to aggregate all rows.
+     * @return statistics of each group, indexed by code, followed by
+     * statistics of rows without value of key.
+     * @throws IllegalArgumentException if rows belong to a store of different
+     *                                  size.
+     */
+    public ColumnStatistics[] statisticsBy(final DictionaryField key,
+                                           final NumericField field,
+                                           final RowSet rows) {
+        final long[] selection = checkRows(rows);
+        final int[] codes = mCodes[key.ordinal()];
+        final double[] values = mValues[field.ordinal()];
+        final long[] valid = mValid[field.ordinal()];
+        final int groups = mDictionaries[key.ordinal()].length + 1;
+        final int[] counts = new int[groups];
+        final double[] sums = new double[groups];
+        final double[] mins = new double[groups];
+        final double[] maxs = new double[groups];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        for (int w = 0; w < valid.length; w++) {
+            long word = selection != null ? valid[w] & selection[w] : valid[w];
+            final int base = w << 6;
+            while (word != 0L) {
+                final int i = base + Long.numberOfTrailingZeros(word);
+                final int code = codes[i];
+                final int group = code != NULL_CODE ? code : groups - 1;
+                final double v = values[i];
+                counts[group]++;
+                sums[group] += v;
+                mins[group] = v < mins[group] ? v : mins[group];
+                maxs[group] = v > maxs[group] ? v : maxs[group];
+                word &= word - 1;
+            }
+        }
+
+        final ColumnStatistics[] result = new ColumnStatistics[groups];
+        for (int g = 0; g < groups; g++) {
+            result[g] = new ColumnStatistics(counts[g], sums[g], mins[g],
+                    maxs[g]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds rows having a code of provided field between provided limits.
+     *
+     * @param field   dictionary encoded field.
+     * @param minCode minimum code (inclusive).
+     * @param maxCode maximum code (inclusive).
+     * @return found rows.
+     */
+    private RowSet filterCodes(final DictionaryField field, final int minCode,
+                               final int maxCode) {
+        final int[] codes = mCodes[field.ordinal()];
+        final long[] words = new long[RowSet.wordCount(mSize)];
+        for (int w = 0; w < words.length; w++) {
+            final int base = w << 6;
+            final int end = Math.min(base + 64, mSize);
+            long word = 0L;
+            for (int i = base; i < end; i++) {
+                final int code = codes[i];
+                word |= (code >= minCode & code <= maxCode ? 1L : 0L) << i;
+            }
+            words[w] = word;
+        }
+        return new RowSet(mSize, words);
+    }
+
+    /**
+     * Checks that provided row exists.
+     *
+     * @param row row to check.
+     * @throws IllegalArgumentException if row is out of range.
+     */
+    private void checkRow(final int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Checks that provided rows belong to this store.
+     *
+     * @param rows rows or null.
+     * @return bitmap of rows or null.
+     * @throws IllegalArgumentException if rows belong to a store of different
+     *                                  size.
+     */
+    private long[] checkRows(final RowSet rows) {
+        if (rows == null) {
+            return null;
+        }
+        if (rows.getSize() != mSize) {
+            throw new IllegalArgumentException();
+        }
+        return rows.getWords();
+    }
+
+    /**
+     * Builder of metadata stores, ingesting image metadata row by row.
+     */
+    public static class Builder {
+
+        /**
+         * Initial capacity in rows.
+         */
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * Values of each numeric field.
+         */
+        private final double[][] mValues =
+                new double[NumericField.values().length][INITIAL_CAPACITY];
+
+        /**
+         * Validity bitmap of each numeric field.
+         */
+        private final long[][] mValid = new long[NumericField.values().length]
+                [RowSet.wordCount(INITIAL_CAPACITY)];
+
+        /**
+         * Codes of each dictionary encoded field, in order of first
+         * appearance.
+         */
+        private final int[][] mCodes =
+                new int[DictionaryField.values().length][INITIAL_CAPACITY];
+
+        /**
+         * Code of each distinct value of each dictionary encoded field.
+         */
+        private final List<Map<String, Integer>> mCodeMaps = new ArrayList<>();
+
+        /**
+         * Distinct values of each dictionary encoded field in order of first
+         * appearance.
+         */
+        private final List<List<String>> mDictionaries = new ArrayList<>();
+
+        /**
+         * Number of added rows.
+         */
+        private int mSize;
+
+        /**
+         * Constructor.
+         */
+        public Builder() {
+            for (int f = 0; f < DictionaryField.values().length; f++) {
+                mCodeMaps.add(new HashMap<String, Integer>());
+                mDictionaries.add(new ArrayList<String>());
+            }
+        }
+
+        /**
+         * Returns number of added rows.
+         *
+         * @return number of added rows.
+         */
+        public int getSize() {
+            return mSize;
+        }
+
+        /**
+         * Adds a row containing metadata and file properties of provided
+         * image.
+         *
+         * @param result result of reading an image file.
+         * @return this builder.
+         */
+        public Builder add(final ImageReaderResult result) {
+            final int row = newRow();
+            final ImageMetadata metadata = result.getMetadata();
+            if (metadata != null) {
+                setMetadata(row, metadata);
+            }
+            setValue(NumericField.FILE_LENGTH, row,
+                    (double) result.getFileLength());
+            setValue(NumericField.LAST_MODIFIED, row,
+                    (double) result.getLastModified());
+            setString(DictionaryField.CONTENT_TYPE, row,
+                    result.getContentType());
+            final ImageFormat format = result.getImageFormat();
+            setString(DictionaryField.IMAGE_FORMAT, row,
+                    format != null ? format.name() : null);
+            return this;
+        }
+
+        /**
+         * Adds a row containing provided metadata. File related fields have
+         * no value.
+         *
+         * @param metadata image metadata.
+         * @return this builder.
+         */
+        public Builder add(final ImageMetadata metadata) {
+            setMetadata(newRow(), metadata);
+            return this;
+        }
+
+        /**
+         * Adds a row per provided image.
+         *
+         * @param results results of reading image files.
+         * @return this builder.
+         */
+        public Builder addAll(final Iterable<ImageReaderResult> results) {
+            for (final ImageReaderResult result : results) {
+                add(result);
+            }
+            return this;
+        }
+
+        /**
+         * Builds a store containing added rows.
+         *
+         * @return built store.
+         */
+        public MetadataStore build() {
+            final int size = mSize;
+            final int words = RowSet.wordCount(size);
+            final double[][] values = new double[mValues.length][];
+            final long[][] valid = new long[mValid.length][];
+            for (int f = 0; f < values.length; f++) {
+                values[f] = Arrays.copyOf(mValues[f], size);
+                valid[f] = Arrays.copyOf(mValid[f], words);
+            }
+
+            // sort dictionaries so that codes follow value order, and remap
+            // codes accordingly
+            final int[][] codes = new int[mCodes.length][];
+            final String[][] dictionaries = new String[mCodes.length][];
+            for (int f = 0; f < codes.length; f++) {
+                final List<String> dictionary = mDictionaries.get(f);
+                final String[] sorted = dictionary.toArray(
+                        new String[dictionary.size()]);
+                Arrays.sort(sorted);
+                final int[] remap = new int[sorted.length];
+                for (int code = 0; code < sorted.length; code++) {
+                    remap[mCodeMaps.get(f).get(sorted[code])] = code;
+                }
+
+                final int[] source = mCodes[f];
+                final int[] target = new int[size];
+                for (int i = 0; i < size; i++) {
+                    target[i] = source[i] != NULL_CODE ? remap[source[i]] :
+                            NULL_CODE;
+                }
+                codes[f] = target;
+                dictionaries[f] = sorted;
+            }
+            return new MetadataStore(size, values, valid, codes, dictionaries);
+        }
+
+        /**
+         * Sets fields of provided row from provided metadata.
+         *
+         * @param row      row.
+         * @param metadata image metadata.
+         */
+        private void setMetadata(final int row, final ImageMetadata metadata) {
+            setValue(NumericField.WIDTH, row, (double) metadata.getWidth());
+            setValue(NumericField.HEIGHT, row, (double) metadata.getHeight());
+            final Integer iso = metadata.getISO();
+            setValue(NumericField.ISO, row,
+                    iso != null ? iso.doubleValue() : null);
+            setValue(NumericField.F_NUMBER, row, metadata.getFNumber());
+            setValue(NumericField.EXPOSURE_TIME, row,
+                    metadata.getExposureTime());
+            setValue(NumericField.FOCAL_LENGTH, row,
+                    metadata.getFocalLength());
+            setValue(NumericField.FOCAL_LENGTH_IN_35MM_FILM, row,
+                    metadata.getFocalLengthIn35mmFilm());
+            setValue(NumericField.DIGITAL_ZOOM_RATIO, row,
+                    metadata.getDigitalZoomRatio());
+            setValue(NumericField.SUBJECT_DISTANCE, row,
+                    metadata.getSubjectDistance());
+            setValue(NumericField.SHUTTER_SPEED_VALUE, row,
+                    metadata.getShutterSpeedValue());
+            setValue(NumericField.FLASH_ENERGY, row,
+                    metadata.getFlashEnergy());
+
+            final ImageOrientation orientation = metadata.getOrientation();
+            if (orientation != null &&
+                    orientation != ImageOrientation.UNKNOWN) {
+                setValue(NumericField.ORIENTATION, row,
+                        (double) orientation.getValue());
+            }
+
+            final GPSCoordinates location = metadata.getLocation();
+            if (location != null) {
+                setValue(NumericField.LATITUDE, row, location.getLatitude());
+                setValue(NumericField.LONGITUDE, row,
+                        location.getLongitude());
+                setValue(NumericField.ALTITUDE, row, location.getAltitude());
+            }
+
+            setString(DictionaryField.MAKER, row, metadata.getMaker());
+            setString(DictionaryField.MODEL, row, metadata.getModel());
+            setString(DictionaryField.SOFTWARE, row, metadata.getSoftware());
+        }
+
+        /**
+         * Adds a new row without values.
+         *
+         * @return added row.
+         */
+        private int newRow() {
+            final int row = mSize;
+            if (row == mValues[0].length) {
+                final int capacity = 2 * row;
+                for (int f = 0; f < mValues.length; f++) {
+                    mValues[f] = Arrays.copyOf(mValues[f], capacity);
+                    mValid[f] = Arrays.copyOf(mValid[f],
+                            RowSet.wordCount(capacity));
+                }
+                for (int f = 0; f < mCodes.length; f++) {
+                    mCodes[f] = Arrays.copyOf(mCodes[f], capacity);
+                }
+            }
+            for (final int[] codes : mCodes) {
+                codes[row] = NULL_CODE;
+            }
+            mSize++;
+            return row;
+        }
+
+        /**
+         * Sets value of a numeric field.
+         *
+         * @param field numeric field.
+         * @param row   row.
+         * @param value value or null.
+         */
+        private void setValue(final NumericField field, final int row,
+                              final Double value) {
+            if (value == null) {
+                return;
+            }
+            mValues[field.ordinal()][row] = value;
+            mValid[field.ordinal()][row >>> 6] |= 1L << row;
+        }
+
+        /**
+         * Sets value of a dictionary encoded field.
+         *
+         * @param field dictionary encoded field.
+         * @param row   row.
+         * @param value value or null.
+         */
+        private void setString(final DictionaryField field, final int row,
+                               final String value) {
+            if (value == null) {
+                return;
+            }
+            final Map<String, Integer> codeMap = mCodeMaps.get(field.ordinal());
+            Integer code = codeMap.get(value);
+            if (code == null) {
+                final List<String> dictionary =
+                        mDictionaries.get(field.ordinal());
+                code = dictionary.size();
+                dictionary.add(value);
+                codeMap.put(value, code);
+            }
+            mCodes[field.ordinal()][row] = code;
+        }
+    }
+}
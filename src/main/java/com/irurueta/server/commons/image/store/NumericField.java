@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.store;
+
+/**
+ * Numeric fields of image metadata kept by a MetadataStore.
+ * All values are stored as doubles, which represent integer fields exactly.
+ */
+public enum NumericField {
+    /**
+     * Image width in pixels.
+     */
+    WIDTH,
+
+    /**
+     * Image height in pixels.
+     */
+    HEIGHT,
+
+    /**
+     * ISO speed.
+     */
+    ISO,
+
+    /**
+     * F-number of the lens.
+     */
+    F_NUMBER,
+
+    /**
+     * Exposure time in seconds.
+     */
+    EXPOSURE_TIME,
+
+    /**
+     * Focal length in millimeters.
+     */
+    FOCAL_LENGTH,
+
+    /**
+     * Equivalent focal length in millimeters assuming a 35mm film camera.
+     */
+    FOCAL_LENGTH_IN_35MM_FILM,
+
+    /**
+     * Digital zoom ratio.
+     */
+    DIGITAL_ZOOM_RATIO,
+
+    /**
+     * Distance to subject in meters.
+     */
+    SUBJECT_DISTANCE,
+
+    /**
+     * Shutter speed value in APEX units.
+     */
+    SHUTTER_SPEED_VALUE,
+
+    /**
+     * Flash energy in BCPS.
+     */
+    FLASH_ENERGY,
+
+    /**
+     * EXIF orientation value between 1 and 8.
+     */
+    ORIENTATION,
+
+    /**
+     * Latitude in degrees.
+     */
+    LATITUDE,
+
+    /**
+     * Longitude in degrees.
+     */
+    LONGITUDE,
+
+    /**
+     * Altitude in meters.
+     */
+    ALTITUDE,
+
+    /**
+     * File length in bytes.
+     */
+    FILE_LENGTH,
+
+    /**
+     * File last modification time in milliseconds since epoch.
+     */
+    LAST_MODIFIED
+}
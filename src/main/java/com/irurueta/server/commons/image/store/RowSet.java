@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.store;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of rows of a MetadataStore, typically obtained by filtering
+ * it. Rows are kept in a bitmap containing a bit per row, so that filters can
+ * be combined one 64-bit word at a time.
+ */
+public class RowSet {
+
+    /**
+     * Value returned when there are no more rows.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Number of rows of the store this set belongs to.
+     */
+    private final int mSize;
+
+    /**
+     * Bitmap containing a bit per row.
+     */
+    private final long[] mWords;
+
+    /**
+     * Constructor.
+     *
+     * @param size  number of rows of the store this set belongs to.
+     * @param words bitmap containing a bit per row. Bits beyond size must be
+     *              cleared.
+     */
+    RowSet(final int size, final long[] words) {
+        mSize = size;
+        mWords = words;
+    }
+
+    /**
+     * Creates a set containing all rows of a store.
+     *
+     * @param size number of rows of the store.
+     * @return set containing all rows.
+     * @throws IllegalArgumentException if size is negative.
+     */
+    public static RowSet all(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException();
+        }
+        final long[] words = new long[wordCount(size)];
+        Arrays.fill(words, -1L);
+        clearTail(size, words);
+        return new RowSet(size, words);
+    }
+
+    /**
+     * Creates an empty set of rows of a store.
+     *
+     * @param size number of rows of the store.
+     * @return empty set.
+     * @throws IllegalArgumentException if size is negative.
+     */
+    public static RowSet none(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException();
+        }
+        return new RowSet(size, new long[wordCount(size)]);
+    }
+
+    /**
+     * Returns number of rows of the store this set belongs to.
+     *
+     * @return number of rows of the store.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns number of rows contained in this set.
+     *
+     * @return number of contained rows.
+     */
+    public int cardinality() {
+        int result = 0;
+        for (final long word : mWords) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    /**
+     * Indicates whether this set contains no rows.
+     *
+     * @return true if set is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        for (final long word : mWords) {
+            if (word != 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether provided row is contained in this set.
+     *
+     * @param row row to check.
+     * @return true if row is contained, false otherwise.
+     * @throws IllegalArgumentException if row is out of range.
+     */
+    public boolean contains(final int row) {
+        if (row < 0 || row >= mSize) {
+            throw new IllegalArgumentException();
+        }
+        return (mWords[row >>> 6] & (1L << row)) != 0L;
+    }
+
+    /**
+     * Returns first row contained in this set at or after provided one.
+     *
+     * @param from row to start from.
+     * @return found row or NONE if there are no more rows.
+     */
+    public int nextRow(final int from) {
+        if (from >= mSize) {
+            return NONE;
+        }
+        int w = Math.max(from, 0) >>> 6;
+        long word = mWords[w] & (-1L << Math.max(from, 0));
+        while (word == 0L) {
+            if (++w == mWords.length) {
+                return NONE;
+            }
+            word = mWords[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns contained rows in ascending order.
+     *
+     * @return contained rows.
+     */
+    public int[] toArray() {
+        final int[] result = new int[cardinality()];
+        int count = 0;
+        for (int w = 0; w < mWords.length; w++) {
+            long word = mWords[w];
+            while (word != 0L) {
+                result[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a set containing rows contained both in this set and in
+     * provided one.
+     *
+     * @param other other set.
+     * @return intersection of both sets.
+     * @throws IllegalArgumentException if sets belong to stores of different
+     *                                  size.
+     */
+    public RowSet and(final RowSet other) {
+        checkCompatible(other);
+        final long[] words = new long[mWords.length];
+        for (int w = 0; w < words.length; w++) {
+            words[w] = mWords[w] & other.mWords[w];
+        }
+        return new RowSet(mSize, words);
+    }
+
+    /**
+     * Returns a set containing rows contained in this set or in provided one.
+     *
+     * @param other other set.
+     * @return union of both sets.
+     * @throws IllegalArgumentException if sets belong to stores of different
+     *                                  size.
+     */
+    public RowSet or(final RowSet other) {
+        checkCompatible(other);
+        final long[] words = new long[mWords.length];
+        for (int w = 0; w < words.length; w++) {
+            words[w] = mWords[w] | other.mWords[w];
+        }
+        return new RowSet(mSize, words);
+    }
+
+    /**
+     * Returns a set containing rows contained in this set but not in provided
+     * one.
+     *
+     * @param other other set.
+     * @return difference of both sets.
+     * @throws IllegalArgumentException if sets belong to stores of different
+     *                                  size.
+     */
+    public RowSet andNot(final RowSet other) {
+        checkCompatible(other);
+        final long[] words = new long[mWords.length];
+        for (int w = 0; w < words.length; w++) {
+            words[w] = mWords[w] & ~other.mWords[w];
+        }
+        return new RowSet(mSize, words);
+    }
+
+    /**
+     * Returns a set containing rows of the store not contained in this set.
+     *
+     * @return complement of this set.
+     */
+    public RowSet not() {
+        final long[] words = new long[mWords.length];
+        for (int w = 0; w < words.length; w++) {
+            words[w] = ~mWords[w];
+        }
+        clearTail(mSize, words);
+        return new RowSet(mSize, words);
+    }
+
+    /**
+     * Indicates whether provided object is equal to this set.
+     *
+     * @param obj object to compare.
+     * @return true if both objects contain the same rows of stores of the same
+     * size, false otherwise.
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RowSet)) {
+            return false;
+        }
+        final RowSet other = (RowSet) obj;
+        return mSize == other.mSize && Arrays.equals(mWords, other.mWords);
+    }
+
+    /**
+     * Returns hash code of this set.
+     *
+     * @return hash code.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * mSize + Arrays.hashCode(mWords);
+    }
+
+    /**
+     * Returns bitmap of this set.
+     *
+     * @return bitmap containing a bit per row.
+     */
+    long[] getWords() {
+        return mWords;
+    }
+
+    /**
+     * Returns number of 64-bit words required by a bitmap.
+     *
+     * @param size number of rows.
+     * @return number of words.
+     */
+    static int wordCount(final int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * Clears bits beyond last row of a bitmap.
+     *
+     * @param size  number of rows.
+     * @param words bitmap.
+     */
+    static void clearTail(final int size, final long[] words) {
+        if ((size & 63) != 0) {
+            words[words.length - 1] &= (1L << size) - 1;
+        }
+    }
+
+    /**
+     * Checks that provided set belongs to a store of the same size.
+     *
+     * @param other other set.
+     * @throws IllegalArgumentException if sizes are different.
+     */
+    private void checkCompatible(final RowSet other) {
+        if (other.mSize != mSize) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void testConstructor() {
+        // test constructor without deadline
+        CancellationToken token = new CancellationToken();
+        assertFalse(token.isCancelled());
+        assertFalse(token.hasDeadline());
+        assertEquals(CancellationToken.NO_DEADLINE, token.getDeadline());
+        assertEquals(Long.MAX_VALUE, token.getRemainingNanos());
+        assertFalse(token.isExpired());
+        assertFalse(token.isStopRequested());
+
+        // test constructor with deadline
+        token = new CancellationToken(1, TimeUnit.HOURS);
+        assertFalse(token.isCancelled());
+        assertTrue(token.hasDeadline());
+        assertTrue(token.getRemainingNanos() > 0);
+        assertTrue(token.getRemainingNanos() <= TimeUnit.HOURS.toNanos(1));
+        assertFalse(token.isExpired());
+        assertFalse(token.isStopRequested());
+
+        // a huge timeout has no deadline
+        token = new CancellationToken(Long.MAX_VALUE, TimeUnit.DAYS);
+        assertFalse(token.hasDeadline());
+
+        // Force IllegalArgumentException
+        try {
+            new CancellationToken(-1, TimeUnit.SECONDS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new CancellationToken(1, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testCancel() throws TimeoutException {
+        final CancellationToken token = new CancellationToken();
+        final AtomicInteger notifications = new AtomicInteger();
+        final Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                notifications.incrementAndGet();
+            }
+        };
+        token.addListener(listener);
+
+        // check does not fail before cancelling
+        token.check();
+
+        token.cancel();
+        assertTrue(token.isCancelled());
+        assertTrue(token.isStopRequested());
+        assertEquals(1, notifications.get());
+
+        // cancelling again has no effect
+        token.cancel();
+        assertEquals(1, notifications.get());
+
+        // listeners added after cancellation are notified immediately
+        token.addListener(listener);
+        assertEquals(2, notifications.get());
+        token.removeListener(listener);
+
+        try {
+            token.check();
+            fail("CancellationException expected but not thrown");
+        } catch (final CancellationException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetDeadline() {
+        // system time might be negative
+        assertEquals(-1000L + 500L, CancellationToken.getDeadline(-1000L,
+                500L));
+        assertEquals(Long.MIN_VALUE + 10L, CancellationToken.getDeadline(
+                Long.MIN_VALUE, 10L));
+        assertEquals(-1L, CancellationToken.getDeadline(Long.MIN_VALUE,
+                Long.MAX_VALUE));
+        assertEquals(1500L, CancellationToken.getDeadline(1000L, 500L));
+        assertEquals(0L, CancellationToken.getDeadline(0L, 0L));
+
+        // deadlines that cannot be represented are saturated
+        assertEquals(CancellationToken.NO_DEADLINE,
+                CancellationToken.getDeadline(1000L, Long.MAX_VALUE - 1000L));
+        assertEquals(CancellationToken.NO_DEADLINE,
+                CancellationToken.getDeadline(1000L, Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE - 1L, CancellationToken.getDeadline(1000L,
+                Long.MAX_VALUE - 1001L));
+    }
+
+    @Test
+    public void testConcurrentCancel() throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            final CancellationToken token = new CancellationToken();
+            final AtomicInteger notifications = new AtomicInteger();
+            final Runnable listener = new Runnable() {
+                @Override
+                public void run() {
+                    notifications.incrementAndGet();
+                }
+            };
+
+            // cancel twice while the listener is being added
+            final CountDownLatch start = new CountDownLatch(1);
+            final Runnable cancel = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                    token.cancel();
+                }
+            };
+            final Thread thread1 = new Thread(cancel);
+            final Thread thread2 = new Thread(cancel);
+            thread1.start();
+            thread2.start();
+            start.countDown();
+            token.addListener(listener);
+            thread1.join();
+            thread2.join();
+
+            // listener is notified exactly once
+            assertTrue(token.isCancelled());
+            assertEquals(1, notifications.get());
+        }
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        final CancellationToken token = new CancellationToken(0,
+                TimeUnit.MILLISECONDS);
+        Thread.sleep(1);
+        assertFalse(token.isCancelled());
+        assertTrue(token.isExpired());
+        assertTrue(token.isStopRequested());
+        assertTrue(token.getRemainingNanos() <= 0);
+
+        try {
+            token.check();
+            fail("TimeoutException expected but not thrown");
+        } catch (final TimeoutException ignore) {
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class DirectDataBufferTest {
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    @Test
+    public void testElements() {
+        final DirectDataBuffer buffer = new DirectDataBuffer(16);
+        assertEquals(DataBuffer.TYPE_BYTE, buffer.getDataType());
+        assertEquals(16, buffer.getSize());
+        assertFalse(buffer.isReleased());
+
+        for (int i = 0; i < 16; i++) {
+            buffer.setElem(i, 250 + i);
+        }
+        for (int i = 0; i < 16; i++) {
+            assertEquals((250 + i) & 0xFF, buffer.getElem(i));
+        }
+
+        final byte[] bytes = new byte[8];
+        buffer.get(4, bytes, 2, 6);
+        assertEquals(0, bytes[0]);
+        assertEquals(0, bytes[1]);
+        for (int i = 2; i < 8; i++) {
+            assertEquals((byte) (252 + i), bytes[i]);
+        }
+
+        buffer.release();
+        assertTrue(buffer.isReleased());
+        // releasing again has no effect
+        buffer.release();
+        assertTrue(buffer.isReleased());
+
+        // Force IllegalStateException
+        try {
+            buffer.getElem(0);
+            fail("IllegalStateException expected but not thrown");
+        } catch (final IllegalStateException ignore) {
+        }
+        try {
+            buffer.setElem(0, 0);
+            fail("IllegalStateException expected but not thrown");
+        } catch (final IllegalStateException ignore) {
+        }
+        try {
+            buffer.get(0, bytes, 0, 1);
+            fail("IllegalStateException expected but not thrown");
+        } catch (final IllegalStateException ignore) {
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final int threads = 4;
+        final int length = 64;
+        final DirectDataBuffer buffer = new DirectDataBuffer(threads * length);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t * length;
+            final byte value = (byte) (t + 1);
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final byte[] src = new byte[length];
+                    Arrays.fill(src, value);
+                    final byte[] dst = new byte[length];
+                    for (int i = 0; i < 1000; i++) {
+                        buffer.put(index, src, 0, length);
+                        buffer.get(index, dst, 0, length);
+                        if (!Arrays.equals(src, dst)) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        assertFalse(failed.get());
+
+        // release happens-after every access
+        buffer.release();
+        assertTrue(buffer.isReleased());
+    }
+
+    @Test
+    public void testCreateImage() {
+        final BufferedImage reference = new BufferedImage(7, 5,
+                BufferedImage.TYPE_3BYTE_BGR);
+        final BufferedImage image = DirectDataBuffer.createImage(
+                reference.getColorModel(), reference.getSampleModel());
+        assertNotNull(image);
+        assertEquals(7, image.getWidth());
+        assertEquals(5, image.getHeight());
+        assertTrue(image.getRaster().getDataBuffer() instanceof
+                DirectDataBuffer);
+
+        // pixels are stored as in heap images
+        image.setRGB(3, 2, 0xFF123456);
+        assertEquals(0xFF123456, image.getRGB(3, 2));
+        assertEquals(0xFF000000, image.getRGB(0, 0));
+
+        // rows of rasters having the same layout are copied at once
+        final BufferedImage row = new BufferedImage(4, 1,
+                BufferedImage.TYPE_3BYTE_BGR);
+        row.setRGB(0, 0, 0xFF654321);
+        row.setRGB(3, 0, 0xFFABCDEF);
+        image.getRaster().setRect(3, 4, row.getRaster());
+        assertEquals(0xFF654321, image.getRGB(3, 4));
+        assertEquals(0xFFABCDEF, image.getRGB(6, 4));
+        assertEquals(0xFF123456, image.getRGB(3, 2));
+
+        // rasters having a different layout or not fitting are also copied
+        final BufferedImage rgbRow = new BufferedImage(4, 1,
+                BufferedImage.TYPE_INT_RGB);
+        rgbRow.setRGB(1, 0, 0xFF010203);
+        image.getRaster().setRect(0, 0, rgbRow.getRaster());
+        assertEquals(0xFF010203, image.getRGB(1, 0));
+        image.getRaster().setRect(5, 1, row.getRaster());
+        assertEquals(0xFF654321, image.getRGB(5, 1));
+
+        assertTrue(DirectDataBuffer.release(image));
+        assertTrue(((DirectDataBuffer) image.getRaster().getDataBuffer())
+                .isReleased());
+        assertFalse(DirectDataBuffer.release(reference));
+        assertFalse(DirectDataBuffer.release(null));
+
+        // images not storing a byte per sample are not supported
+        final BufferedImage intImage = new BufferedImage(7, 5,
+                BufferedImage.TYPE_INT_RGB);
+        assertNull(DirectDataBuffer.createImage(intImage.getColorModel(),
+                intImage.getSampleModel()));
+        final BufferedImage binaryImage = new BufferedImage(7, 5,
+                BufferedImage.TYPE_BYTE_BINARY);
+        assertNull(DirectDataBuffer.createImage(binaryImage.getColorModel(),
+                binaryImage.getSampleModel()));
+    }
+
+    @Test
+    public void testDecode() throws IOException, TimeoutException {
+        // JPEG and PNG images are decoded off-heap
+        for (final String name : new String[]{"batllo1.jpg", "polo.png"}) {
+            final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(
+                    new File(IMAGES_FOLDER, name).toPath()));
+            final BufferedImage heapImage = ThumbnailRenderer.decode(data,
+                    null, null, false);
+            final BufferedImage image = ThumbnailRenderer.decode(data, null,
+                    null, true);
+            assertFalse(heapImage.getRaster().getDataBuffer() instanceof
+                    DirectDataBuffer);
+            assertTrue(image.getRaster().getDataBuffer() instanceof
+                    DirectDataBuffer);
+
+            // decoded pixels are the same
+            assertEquals(heapImage.getWidth(), image.getWidth());
+            assertEquals(heapImage.getHeight(), image.getHeight());
+            for (int y = 0; y < image.getHeight(); y += 7) {
+                for (int x = 0; x < image.getWidth(); x += 7) {
+                    assertEquals(heapImage.getRGB(x, y), image.getRGB(x, y));
+                }
+            }
+
+            ThumbnailRenderer.release(image, null);
+            assertTrue(((DirectDataBuffer) image.getRaster().getDataBuffer())
+                    .isReleased());
+        }
+
+        // other readers require images stored on the heap
+        final BufferedImage image = ThumbnailRenderer.decode(
+                ByteBuffer.wrap(Files.readAllBytes(new File(IMAGES_FOLDER,
+                        "Svalbard.bmp").toPath())), null, null, true);
+        assertFalse(image.getRaster().getDataBuffer() instanceof
+                DirectDataBuffer);
+        ThumbnailRenderer.release(image, null);
+    }
+
+    @Test
+    public void testIndexedImage() {
+        final IndexColorModel colorModel = new IndexColorModel(8, 2,
+                new byte[]{0, (byte) 255}, new byte[]{0, 0},
+                new byte[]{0, (byte) 255});
+        final BufferedImage reference = new BufferedImage(4, 4,
+                BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        final BufferedImage image = DirectDataBuffer.createImage(colorModel,
+                reference.getSampleModel());
+        assertNotNull(image);
+
+        image.getRaster().setSample(1, 1, 0, 1);
+        assertEquals(0xFFFF00FF, image.getRGB(1, 1));
+        assertEquals(0xFF000000, image.getRGB(0, 0));
+        assertTrue(DirectDataBuffer.release(image));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DirectMemoryTest {
+
+    @Test
+    public void testAllocateAndFree() {
+        final ByteBuffer buffer = DirectMemory.allocate(1024);
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.capacity());
+
+        buffer.put(0, (byte) 1);
+        assertEquals(1, buffer.get(0));
+
+        // memory is freed when supported by the JVM
+        assertEquals(DirectMemory.isFreeSupported(), DirectMemory.free(buffer));
+
+        // Force IllegalArgumentException
+        try {
+            DirectMemory.allocate(-1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            DirectMemory.free(ByteBuffer.allocate(1));
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
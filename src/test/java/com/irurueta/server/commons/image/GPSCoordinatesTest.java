@@ -15,6 +15,7 @@
  */
 package com.irurueta.server.commons.image;
 
+import com.irurueta.server.commons.image.geo.GeoCell;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -114,4 +115,18 @@ public class GPSCoordinatesTest {
         assertEquals(coordinates.getAltitude(), altitude);
         assertTrue(coordinates.isAltitudeAvailable());
     }
+
+    @Test
+    public void testGetGeoHashAndCellId() {
+        final GPSCoordinates coordinates = new GPSCoordinates(57.64911,
+                10.40744);
+        assertEquals("u4pruydqqvj", coordinates.getGeoHash(11));
+        assertEquals(GeoCell.encode(57.64911, 10.40744, 20),
+                coordinates.getCellId(20).longValue());
+
+        // not available without latitude or longitude
+        final GPSCoordinates empty = new GPSCoordinates();
+        assertNull(empty.getGeoHash(5));
+        assertNull(empty.getCellId(10));
+    }
 }
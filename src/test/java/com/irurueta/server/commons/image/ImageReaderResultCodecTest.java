@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.PerceptualHashAlgorithm;
+import com.irurueta.server.commons.image.hash.PerceptualHashes;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImageReaderResultCodecTest {
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    private static final String[] NAMES = {"batllo1.jpg", "abishek.jpg",
+            "carlos1.jpg", "rotate1.jpg", "rotate2.jpg", "rotate3.jpg",
+            "rotate4.jpg", "polo.png", "Svalbard.bmp"};
+
+    @Test
+    public void testEncodeDecodeImages() throws InvalidImageException,
+            IOException {
+        final ImageReaderResultCodec codec = new ImageReaderResultCodec();
+        final ReadOptions options = new ReadOptions.Builder()
+                .setHashAlgorithms(HashAlgorithm.values())
+                .setPerceptualHashAlgorithms(
+                        PerceptualHashAlgorithm.values())
+                .build();
+        for (final String name : NAMES) {
+            final ImageReaderResult result = ImageReader.getInstance()
+                    .readImage(new File(IMAGES_FOLDER, name), options);
+
+            final byte[] data = codec.encode(result);
+            assertEqualResults(result, codec.decode(data));
+
+            assertEquals(data.length, codec.encode(result,
+                    ByteBuffer.allocate(data.length)));
+
+            // MD5 as computed by reader is written in binary form
+            assertNotNull(result.getMd5());
+            final String md5 = result.getMd5();
+            result.setMd5(null);
+            assertEquals(data.length - 16, codec.encode(result).length);
+            result.setMd5(md5);
+        }
+    }
+
+    @Test
+    public void testEncodeDecodeTreeHashes() throws InvalidImageException,
+            IOException {
+        final ImageReaderResultCodec codec = new ImageReaderResultCodec();
+        final ReadOptions options = new ReadOptions.Builder()
+                .setTreeHashEnabled(true).setTreeHashChunkSize(4096)
+                .build();
+        final ImageReaderResult result = ImageReader.getInstance().readImage(
+                new File(IMAGES_FOLDER, "carlos1.jpg"), options);
+        assertTrue(result.getHashes().isTree());
+
+        final ImageReaderResult decoded = codec.decode(codec.encode(result));
+        assertEqualResults(result, decoded);
+        assertEquals(4096, decoded.getHashes().getChunkSize());
+    }
+
+    @Test
+    public void testEncodeDecodeFullMetadata() {
+        final ImageReaderResultCodec codec = new ImageReaderResultCodec();
+        final ImageReaderResult result = createFullResult();
+
+        // direct buffers in any byte order produce the same data
+        final ByteBuffer heap = ByteBuffer.allocate(1024);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(1024)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        final int length = codec.encode(result, heap);
+        assertEquals(length, codec.encode(result, direct));
+        assertEquals(length, heap.position());
+        heap.flip();
+        direct.flip();
+        assertEquals(heap, direct);
+
+        assertEqualResults(result, codec.decode(direct));
+        assertFalse(direct.hasRemaining());
+
+        // an empty result
+        final ImageReaderResult empty = new ImageReaderResult();
+        final byte[] data = codec.encode(empty);
+        assertEquals(9, data.length);
+        assertEqualResults(empty, codec.decode(data));
+
+        // empty metadata and location
+        final ImageMetadata metadata = new ImageMetadata();
+        metadata.setLocation(new GPSCoordinates());
+        empty.setMetadata(metadata);
+        assertEqualResults(empty, codec.decode(codec.encode(empty)));
+    }
+
+    @Test
+    public void testEncodeDecodeStrings() {
+        final ImageReaderResultCodec codec = new ImageReaderResultCodec();
+        final String[] values = {"", "a", "Ñandú", "日本語",
+                "📷 camera", "unpaired \uD83D high",
+                "unpaired \uDCF7 low", "reversed \uDCF7\uD83D",
+                "not an MD5", "1B2M2Y8AsgTpgAmY7PhCfg==",
+                "1B2M2Y8AsgTpgAmY7PhCfg==\r\n", "1B2M2Y8AsgTpgAmY7PhCfg==\n",
+                "1B2M2Y8AsgTpgAmY7PhCfh==", "1B2M2Y8AsgTpgAmY7PhCf!=="};
+        for (final String value : values) {
+            final ImageReaderResult result = new ImageReaderResult();
+            result.setMd5(value);
+            result.setContentType(value);
+            final ImageMetadata metadata = new ImageMetadata();
+            metadata.setArtist(value);
+            result.setMetadata(metadata);
+
+            final ImageReaderResult decoded =
+                    codec.decode(codec.encode(result));
+            assertEquals(value, decoded.getMd5());
+            assertEquals(value, decoded.getContentType());
+            assertEquals(value, decoded.getMetadata().getArtist());
+        }
+    }
+
+    @Test
+    public void testEncodeDecodeAll() {
+        final ImageReaderResultCodec codec = new ImageReaderResultCodec();
+        final List<ImageReaderResult> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final ImageReaderResult result = createFullResult();
+            result.setFileLength(i);
+            results.add(result);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(65536);
+        final int length = codec.encode(results, buffer);
+        final int single = codec.encode(results.get(0)).length;
+
+        // repeated strings are only written once
+        assertTrue(length < 100 * (single - 50));
+
+        // two frames in a row
+        codec.encode(Arrays.asList(results.get(0)), buffer);
+        buffer.flip();
+        final List<ImageReaderResult> decoded = codec.decodeAll(buffer);
+        assertEquals(results.size(), decoded.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEqualResults(results.get(i), decoded.get(i));
+        }
+        assertEqualResults(results.get(0), codec.decode(buffer));
+        assertFalse(buffer.hasRemaining());
+
+        // an empty frame
+        buffer.clear();
+        codec.encode(new ArrayList<ImageReaderResult>(), buffer);
+        buffer.flip();
+        assertTrue(codec.decodeAll(buffer).isEmpty());
+
+        // Force IllegalArgumentException
+        buffer.clear();
+        codec.encode(results.subList(0, 2), buffer);
+        buffer.flip();
+        try {
+            codec.decode(buffer);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testEncodeOverflow() {
+        final ImageReaderResultCodec codec = new ImageReaderResultCodec();
+        final ImageReaderResult result = createFullResult();
+        final int length = codec.encode(result).length;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length + 10);
+        buffer.position(10);
+        buffer.limit(length + 9);
+        // Force BufferOverflowException
+        try {
+            codec.encode(result, buffer);
+            fail("BufferOverflowException expected but not thrown");
+        } catch (final BufferOverflowException ignore) {
+        }
+        assertEquals(10, buffer.position());
+
+        // retrying after overflow produces same data
+        buffer.limit(length + 10);
+        assertEquals(length, codec.encode(result, buffer));
+        buffer.position(10);
+        assertEqualResults(result, codec.decode(buffer));
+    }
+
+    @Test
+    public void testDecodeInvalid() {
+        final ImageReaderResultCodec codec = new ImageReaderResultCodec();
+        final byte[] data = codec.encode(createFullResult());
+
+        // Force BufferUnderflowException
+        try {
+            codec.decode(Arrays.copyOf(data, data.length - 1));
+            fail("BufferUnderflowException expected but not thrown");
+        } catch (final BufferUnderflowException ignore) {
+        }
+
+        // Force IllegalArgumentException
+        final byte[] wrongMagic = data.clone();
+        wrongMagic[0] = 'X';
+        try {
+            codec.decode(wrongMagic);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        final byte[] newerVersion = data.clone();
+        newerVersion[2] = ImageReaderResultCodec.VERSION + 1;
+        try {
+            codec.decode(newerVersion);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        // unknown fields
+        try {
+            codec.decode(new byte[]{'I', 'R', 1, 1, (byte) 0x80, 0x10, 0, 0});
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        // reference to a string not yet read
+        try {
+            codec.decode(new byte[]{'I', 'R', 1, 1, 0x40, 0, 0, 0x7F});
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        // unknown image format
+        try {
+            codec.decode(new byte[]{'I', 'R', 1, 1, (byte) 0x80, 0x01, 0, 0,
+                    0x7F});
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testVarint() {
+        final ByteBuffer buffer = ByteBuffer.allocate(20);
+        final long[] values = {0, 1, -1, 63, -64, 64, 127, 128, 300,
+                Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+                Long.MIN_VALUE};
+        for (final long value : values) {
+            buffer.clear();
+            ImageReaderResultCodec.putSignedVarint(buffer, value);
+            ImageReaderResultCodec.putVarint(buffer, value);
+            buffer.flip();
+            assertEquals(value, ImageReaderResultCodec.getSignedVarint(buffer));
+            assertEquals(value, ImageReaderResultCodec.getVarint(buffer));
+        }
+
+        // small values take a single byte
+        buffer.clear();
+        ImageReaderResultCodec.putSignedVarint(buffer, -64);
+        ImageReaderResultCodec.putVarint(buffer, 127);
+        assertEquals(2, buffer.position());
+
+        // Force IllegalArgumentException
+        final byte[] tooLong = new byte[11];
+        Arrays.fill(tooLong, (byte) 0x80);
+        try {
+            ImageReaderResultCodec.getVarint(ByteBuffer.wrap(tooLong));
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    private static ImageReaderResult createFullResult() {
+        final ImageMetadata metadata = new ImageMetadata();
+        metadata.setWidth(4000);
+        metadata.setHeight(3000);
+        metadata.setMaker("Canon");
+        metadata.setModel("Canon EOS 5D Mark III");
+        metadata.setFocalLength(24.0);
+        metadata.setFocalPlaneXResolution(5760.0 / 1.5);
+        metadata.setFocalPlaneYResolution(Double.NaN);
+        metadata.setFocalPlaneResolutionUnit(Unit.CENTIMETERS);
+        metadata.setOrientation(ImageOrientation.RIGHT_TOP);
+        final GPSCoordinates location = new GPSCoordinates();
+        location.setLatitude(41.3917);
+        location.setLongitude(2.1649);
+        location.setAltitude(-12.5);
+        metadata.setLocation(location);
+        metadata.setArtist("Canon EOS 5D Mark III");
+        metadata.setCopyright("(c) Somebody");
+        metadata.setDocumentName("document");
+        metadata.setHostComputer("host");
+        metadata.setImageDescription("Casa Batlló");
+        metadata.setSoftware("Adobe Photoshop");
+        metadata.setTargetPrinter("printer");
+        metadata.setCameraSerialNumber("123456");
+        metadata.setDigitalZoomRatio(1.0);
+        metadata.setExposureTime(1.0 / 250.0);
+        metadata.setFlash(Flash.FLASH_FIRED_AUTO_MODE_RETURN_LIGHT_DETECTED);
+        metadata.setFlashEnergy(0.0);
+        metadata.setFNumber(-0.0);
+        metadata.setFocalLengthIn35mmFilm(Double.POSITIVE_INFINITY);
+        metadata.setUniqueCameraModel("Canon EOS 5D Mark III");
+        metadata.setSubjectDistance(Double.MAX_VALUE);
+        metadata.setShutterSpeedValue(Double.MIN_VALUE);
+        metadata.setISO(-100);
+
+        final ImageReaderResult result = new ImageReaderResult();
+        result.setValid(true);
+        result.setCrc(0xFFFFFFFFL);
+        result.setMd5("1B2M2Y8AsgTpgAmY7PhCfg==");
+        final EnumMap<HashAlgorithm, byte[]> digests =
+                new EnumMap<>(HashAlgorithm.class);
+        for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+            final byte[] digest = new byte[algorithm.getDigestLength()];
+            Arrays.fill(digest, (byte) algorithm.ordinal());
+            digests.put(algorithm, digest);
+        }
+        result.setHashes(HashResult.create(digests, Long.MAX_VALUE, 1 << 20));
+        final EnumMap<PerceptualHashAlgorithm, Long> hashes =
+                new EnumMap<>(PerceptualHashAlgorithm.class);
+        hashes.put(PerceptualHashAlgorithm.AVERAGE, Long.MIN_VALUE);
+        hashes.put(PerceptualHashAlgorithm.DCT, -1L);
+        result.setPerceptualHashes(PerceptualHashes.create(hashes));
+        result.setFileLength(-1);
+        result.setLastModified(Long.MAX_VALUE);
+        result.setContentType("image/jpeg");
+        result.setMetadata(metadata);
+        result.setImageFormat(ImageFormat.JPEG);
+        return result;
+    }
+
+    private static void assertEqualResults(final ImageReaderResult expected,
+                                           final ImageReaderResult result) {
+        assertEquals(expected.isValid(), result.isValid());
+        assertEquals(expected.getCrc(), result.getCrc());
+        assertEquals(expected.getMd5(), result.getMd5());
+        assertEquals(expected.getFileLength(), result.getFileLength());
+        assertEquals(expected.getLastModified(), result.getLastModified());
+        assertEquals(expected.getContentType(), result.getContentType());
+        assertEquals(expected.getImageFormat(), result.getImageFormat());
+
+        final HashResult expectedHashes = expected.getHashes();
+        final HashResult hashes = result.getHashes();
+        if (expectedHashes == null) {
+            assertNull(hashes);
+        } else {
+            assertEquals(expectedHashes.getAlgorithms(), hashes.getAlgorithms());
+            assertEquals(expectedHashes.getLength(), hashes.getLength());
+            assertEquals(expectedHashes.getChunkSize(), hashes.getChunkSize());
+            for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+                assertArrayEquals(expectedHashes.getDigest(algorithm),
+                        hashes.getDigest(algorithm));
+            }
+        }
+
+        final PerceptualHashes expectedPerceptual =
+                expected.getPerceptualHashes();
+        final PerceptualHashes perceptual = result.getPerceptualHashes();
+        if (expectedPerceptual == null) {
+            assertNull(perceptual);
+        } else {
+            for (final PerceptualHashAlgorithm algorithm :
+                    PerceptualHashAlgorithm.values()) {
+                assertEquals(expectedPerceptual.getHash(algorithm),
+                        perceptual.getHash(algorithm));
+            }
+        }
+
+        final ImageMetadata expectedMetadata = expected.getMetadata();
+        final ImageMetadata metadata = result.getMetadata();
+        if (expectedMetadata == null) {
+            assertNull(metadata);
+            return;
+        }
+        assertEquals(expectedMetadata.getWidth(), metadata.getWidth());
+        assertEquals(expectedMetadata.getHeight(), metadata.getHeight());
+        assertEquals(expectedMetadata.getMaker(), metadata.getMaker());
+        assertEquals(expectedMetadata.getModel(), metadata.getModel());
+        assertEquals(expectedMetadata.getFocalLength(),
+                metadata.getFocalLength());
+        assertEquals(expectedMetadata.getFocalPlaneXResolution(),
+                metadata.getFocalPlaneXResolution());
+        assertEquals(expectedMetadata.getFocalPlaneYResolution(),
+                metadata.getFocalPlaneYResolution());
+        assertEquals(expectedMetadata.getFocalPlaneResolutionUnit(),
+                metadata.getFocalPlaneResolutionUnit());
+        assertEquals(expectedMetadata.getOrientation(),
+                metadata.getOrientation());
+        assertEquals(expectedMetadata.getArtist(), metadata.getArtist());
+        assertEquals(expectedMetadata.getCopyright(), metadata.getCopyright());
+        assertEquals(expectedMetadata.getDocumentName(),
+                metadata.getDocumentName());
+        assertEquals(expectedMetadata.getHostComputer(),
+                metadata.getHostComputer());
+        assertEquals(expectedMetadata.getImageDescription(),
+                metadata.getImageDescription());
+        assertEquals(expectedMetadata.getSoftware(), metadata.getSoftware());
+        assertEquals(expectedMetadata.getTargetPrinter(),
+                metadata.getTargetPrinter());
+        assertEquals(expectedMetadata.getCameraSerialNumber(),
+                metadata.getCameraSerialNumber());
+        assertEquals(expectedMetadata.getDigitalZoomRatio(),
+                metadata.getDigitalZoomRatio());
+        assertEquals(expectedMetadata.getExposureTime(),
+                metadata.getExposureTime());
+        assertEquals(expectedMetadata.getFlash(), metadata.getFlash());
+        assertEquals(expectedMetadata.getFlashEnergy(),
+                metadata.getFlashEnergy());
+        assertEquals(expectedMetadata.getFNumber(), metadata.getFNumber());
+        assertEquals(expectedMetadata.getFocalLengthIn35mmFilm(),
+                metadata.getFocalLengthIn35mmFilm());
+        assertEquals(expectedMetadata.getUniqueCameraModel(),
+                metadata.getUniqueCameraModel());
+        assertEquals(expectedMetadata.getSubjectDistance(),
+                metadata.getSubjectDistance());
+        assertEquals(expectedMetadata.getShutterSpeedValue(),
+                metadata.getShutterSpeedValue());
+        assertEquals(expectedMetadata.getISO(), metadata.getISO());
+
+        final GPSCoordinates expectedLocation = expectedMetadata.getLocation();
+        final GPSCoordinates location = metadata.getLocation();
+        if (expectedLocation == null) {
+            assertNull(location);
+            return;
+        }
+        assertEquals(expectedLocation.isLatitudeAvailable(),
+                location.isLatitudeAvailable());
+        assertEquals(expectedLocation.isLongitudeAvailable(),
+                location.isLongitudeAvailable());
+        assertEquals(expectedLocation.isAltitudeAvailable(),
+                location.isAltitudeAvailable());
+        assertEquals(expectedLocation.getLatitude(), location.getLatitude());
+        assertEquals(expectedLocation.getLongitude(), location.getLongitude());
+        assertEquals(expectedLocation.getAltitude(), location.getAltitude());
+    }
+}
@@ -15,6 +15,10 @@
  */
 package com.irurueta.server.commons.image;
 
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.HashResult;
+import com.irurueta.server.commons.image.hash.PerceptualHashAlgorithm;
+import com.irurueta.server.commons.image.hash.PerceptualHashes;
 import org.apache.commons.codec.binary.Base64;
 import org.junit.Test;
 
@@ -24,6 +28,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.zip.CRC32;
 
 import static org.junit.Assert.*;
@@ -38,6 +45,203 @@ public class ImageReaderTest {
         assertNotNull(reader);
     }
 
+    @Test
+    public void testBuilder() {
+        // default instance is shared
+        assertSame(ImageReader.getInstance(), ImageReader.getInstance());
+
+        final ImageReader reader1 = new ImageReader.Builder().build();
+        assertEquals(ImageReader.DEFAULT_COMPUTE_CRC,
+                reader1.isComputeCrcEnabled());
+        assertEquals(ImageReader.DEFAULT_COMPUTE_MD5,
+                reader1.isComputeMd5Enabled());
+
+        final ImageReader reader2 = new ImageReader.Builder()
+                .setComputeCrcEnabled(!ImageReader.DEFAULT_COMPUTE_CRC)
+                .setComputeMd5Enabled(!ImageReader.DEFAULT_COMPUTE_MD5)
+                .build();
+        assertNotSame(reader1, reader2);
+        assertNotSame(ImageReader.getInstance(), reader2);
+        assertEquals(!ImageReader.DEFAULT_COMPUTE_CRC,
+                reader2.isComputeCrcEnabled());
+        assertEquals(!ImageReader.DEFAULT_COMPUTE_MD5,
+                reader2.isComputeMd5Enabled());
+
+        // instances are configured independently
+        reader1.setComputeCrcEnabled(!ImageReader.DEFAULT_COMPUTE_CRC);
+        assertEquals(!ImageReader.DEFAULT_COMPUTE_CRC,
+                reader1.isComputeCrcEnabled());
+        assertEquals(!ImageReader.DEFAULT_COMPUTE_CRC,
+                reader2.isComputeCrcEnabled());
+        reader2.setComputeCrcEnabled(ImageReader.DEFAULT_COMPUTE_CRC);
+        assertEquals(!ImageReader.DEFAULT_COMPUTE_CRC,
+                reader1.isComputeCrcEnabled());
+    }
+
+    @Test
+    public void testReadWithBuilderInstances() throws InvalidImageException,
+            IOException {
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png");
+
+        final ImageReader reader1 = new ImageReader.Builder()
+                .setComputeCrcEnabled(true).setComputeMd5Enabled(true).build();
+        final ImageReader reader2 = new ImageReader.Builder()
+                .setComputeCrcEnabled(false).setComputeMd5Enabled(false)
+                .build();
+
+        final ImageReaderResult result1 = reader1.readImage(f);
+        final ImageReaderResult result2 = reader2.readImage(f);
+        assertNotNull(result1.getCrc());
+        assertNotNull(result1.getMd5());
+        assertNull(result2.getCrc());
+        assertNull(result2.getMd5());
+        assertEquals(result1.getMetadata().getWidth(),
+                result2.getMetadata().getWidth());
+    }
+
+    @Test
+    public void testGetSetDefaultOptions() {
+        final ImageReader reader = new ImageReader.Builder()
+                .setDefaultOptions(new ReadOptions.Builder()
+                        .setComputeCrcEnabled(false).build())
+                .build();
+        assertFalse(reader.isComputeCrcEnabled());
+        assertTrue(reader.isComputeMd5Enabled());
+        assertFalse(reader.getDefaultOptions().isComputeCrcEnabled());
+
+        reader.setComputeMd5Enabled(false);
+        assertEquals(new ReadOptions.Builder().setComputeCrcEnabled(false)
+                .setComputeMd5Enabled(false).build(),
+                reader.getDefaultOptions());
+
+        reader.setDefaultOptions(ReadOptions.DEFAULT);
+        assertSame(ReadOptions.DEFAULT, reader.getDefaultOptions());
+        assertEquals(ImageReader.DEFAULT_COMPUTE_CRC,
+                reader.isComputeCrcEnabled());
+
+        // Force IllegalArgumentException
+        try {
+            reader.setDefaultOptions(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ImageReader.Builder().setDefaultOptions(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testReadImageWithOptions() throws InvalidImageException,
+            IOException {
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png");
+        final ImageReader reader = new ImageReader.Builder().build();
+
+        final ImageReaderResult result1 = reader.readImage(f,
+                new ReadOptions.Builder().setComputeCrcEnabled(true)
+                        .setComputeMd5Enabled(false).build());
+        assertNotNull(result1.getCrc());
+        assertNull(result1.getMd5());
+
+        final ImageReaderResult result2 = reader.readImage(f,
+                new ReadOptions.Builder().setComputeCrcEnabled(false)
+                        .setComputeMd5Enabled(true).build());
+        assertNull(result2.getCrc());
+        assertNotNull(result2.getMd5());
+
+        // default options of the reader are not modified
+        assertSame(ReadOptions.DEFAULT, reader.getDefaultOptions());
+
+        // Force IllegalArgumentException
+        try {
+            reader.readImage(f, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testReadImageWithHashes() throws InvalidImageException,
+            IOException {
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg");
+        final ImageReader reader = new ImageReader.Builder().build();
+
+        final ImageReaderResult defaultResult = reader.readImage(f);
+        final ImageReaderResult result = reader.readImage(f,
+                new ReadOptions.Builder().setHashAlgorithms(
+                        HashAlgorithm.CRC32C, HashAlgorithm.SHA256,
+                        HashAlgorithm.XXH64, HashAlgorithm.MURMUR3_128)
+                        .setHashBufferSize(4096).build());
+
+        // CRC and MD5 are the same regardless of additional hashes
+        assertEquals(defaultResult.getCrc(), result.getCrc());
+        assertEquals(defaultResult.getMd5(), result.getMd5());
+
+        final HashResult hashes = result.getHashes();
+        assertEquals(EnumSet.allOf(HashAlgorithm.class),
+                hashes.getAlgorithms());
+        assertEquals(f.length(), hashes.getLength());
+        assertEquals(result.getCrc(), hashes.getValue(HashAlgorithm.CRC32));
+        assertEquals(result.getMd5(), hashes.getBase64(HashAlgorithm.MD5));
+
+        // no hashes are computed if none is requested
+        final ImageReaderResult emptyResult = reader.readImage(f,
+                new ReadOptions.Builder().setComputeCrcEnabled(false)
+                        .setComputeMd5Enabled(false).build());
+        assertNull(emptyResult.getHashes());
+    }
+
+    @Test
+    public void testReadImageWithTreeHash() throws InvalidImageException,
+            IOException {
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg");
+        final ImageReader reader = new ImageReader.Builder().build();
+
+        final ImageReaderResult expected = reader.readImage(f);
+        final ImageReaderResult result = reader.readImage(f,
+                new ReadOptions.Builder().setTreeHashEnabled(true)
+                        .setTreeHashChunkSize(256 * 1024).build());
+
+        // CRC and plain MD5 are identical, while hashes contain a tree
+        // digest
+        assertEquals(expected.getCrc(), result.getCrc());
+        assertEquals(expected.getMd5(), result.getMd5());
+        assertTrue(result.getHashes().isTree());
+        assertTrue(result.getHashes().contains(HashAlgorithm.MD5));
+        assertNotEquals(expected.getMd5(),
+                result.getHashes().getBase64(HashAlgorithm.MD5));
+    }
+
+    @Test
+    public void testReadImageWithPerceptualHashes()
+            throws InvalidImageException, IOException {
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg");
+        final ImageReader reader = new ImageReader.Builder().build();
+
+        // not computed by default
+        assertNull(reader.readImage(f).getPerceptualHashes());
+
+        final ImageReaderResult result = reader.readImage(f,
+                new ReadOptions.Builder().setPerceptualHashAlgorithms(
+                        PerceptualHashAlgorithm.values()).build());
+        final PerceptualHashes hashes = result.getPerceptualHashes();
+        assertEquals(EnumSet.allOf(PerceptualHashAlgorithm.class),
+                hashes.getAlgorithms());
+        assertNotNull(hashes.getAverageHash());
+        assertNotNull(hashes.getDifferenceHash());
+        assertNotNull(hashes.getDctHash());
+
+        // metadata and file hashes are still available
+        assertNotNull(result.getMetadata());
+        assertNotNull(result.getCrc());
+    }
+
     @Test
     public void testGetSetComputeCrcEnabled() {
         final ImageReader reader = ImageReader.getInstance();
@@ -611,4 +815,121 @@ public class ImageReaderTest {
         }
         return Base64.encodeBase64String(digest.digest());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMetricsListener() throws InvalidImageException,
+            IOException {
+        final List<StageTimings<ReadStage>> timings = new ArrayList<>();
+        final List<ImageReaderResult> results = new ArrayList<>();
+        final List<Throwable> errors = new ArrayList<>();
+        final MetricsListener listener = new MetricsListener() {
+            @Override
+            public void onImageRead(final File file,
+                                    final ImageReaderResult result,
+                                    final StageTimings<ReadStage> t,
+                                    final Throwable e) {
+                results.add(result);
+                timings.add(t);
+                errors.add(e);
+            }
+
+            @Override
+            public void onThumbnailGenerated(final ThumbnailDetails details,
+                                             final Throwable e) {
+                fail("No thumbnail must be generated");
+            }
+        };
+        final ImageReader reader = new ImageReader.Builder()
+                .setMetricsListener(listener).build();
+        assertSame(listener, reader.getMetricsListener());
+        assertSame(NoOpMetricsListener.INSTANCE,
+                ImageReader.getInstance().getMetricsListener());
+
+        final ImageReaderResult result = reader.readImage(new File(
+                "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg"));
+        assertEquals(1, timings.size());
+        assertSame(result, results.get(0));
+        assertNull(errors.get(0));
+        assertTrue(timings.get(0).getNanos(ReadStage.INFO) > 0);
+        assertTrue(timings.get(0).getNanos(ReadStage.EXIF) > 0);
+        assertTrue(timings.get(0).getNanos(ReadStage.HASH) > 0);
+        assertEquals(timings.get(0).getNanos(ReadStage.INFO) +
+                        timings.get(0).getNanos(ReadStage.EXIF) +
+                        timings.get(0).getNanos(ReadStage.HASH) +
+                        timings.get(0).getNanos(ReadStage.PERCEPTUAL_HASH),
+                timings.get(0).getTotalNanos());
+
+        // failures are also notified
+        try {
+            reader.readImage(new File(
+                    "./src/test/java/com/irurueta/server/commons/image/missing.jpg"));
+            fail("IOException expected but not thrown");
+        } catch (final IOException e) {
+            assertSame(e, errors.get(1));
+        }
+        assertNull(results.get(1));
+        assertEquals(0, timings.get(1).getTotalNanos());
+
+        reader.setMetricsListener(NoOpMetricsListener.INSTANCE);
+        reader.readImage(new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png"));
+        assertEquals(2, timings.size());
+
+        // Force IllegalArgumentException
+        try {
+            reader.setMetricsListener(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ImageReader.Builder().setMetricsListener(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testMetrics() throws InvalidImageException, IOException {
+        final ImageReader reader = new ImageReader.Builder().build();
+        final OperationMetrics<ImageFormat> metrics = reader.getMetrics();
+        assertSame(metrics, reader.getMetrics());
+        assertEquals("ImageReader", metrics.getType());
+        assertEquals(0, metrics.getOperationCount());
+
+        final File jpeg = new File(
+                "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg");
+        final File png = new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png");
+        reader.readImage(jpeg);
+        reader.readImage(jpeg);
+        reader.readImage(png);
+
+        // failures are classified by cause
+        try {
+            reader.readImage(new File(
+                    "./src/test/java/com/irurueta/server/commons/image/ImageReaderTest.java"));
+            fail("InvalidImageException expected but not thrown");
+        } catch (final InvalidImageException ignore) {
+        }
+        try {
+            reader.readImage(new File(
+                    "./src/test/java/com/irurueta/server/commons/image/missing.jpg"));
+            fail("IOException expected but not thrown");
+        } catch (final IOException ignore) {
+        }
+
+        final OperationSnapshot snapshot = metrics.getSnapshot();
+        assertEquals(5, snapshot.getOperationCount());
+        assertEquals(2, snapshot.getFailureCount());
+        assertEquals(1, snapshot.getInvalidImageFailureCount());
+        assertEquals(1, snapshot.getIOFailureCount());
+        assertEquals(2 * jpeg.length() + png.length(),
+                snapshot.getBytesRead());
+        assertEquals(0, snapshot.getBytesWritten());
+        assertEquals(3, snapshot.getLatency().getCount());
+        assertEquals(2, snapshot.getLatencyByFormat().get("JPEG").getCount());
+        assertEquals(1, snapshot.getLatencyByFormat().get("PNG").getCount());
+        assertTrue(snapshot.getGauges().isEmpty());
+        assertTrue(metrics.getLatencyP99() > 0);
+    }
+}
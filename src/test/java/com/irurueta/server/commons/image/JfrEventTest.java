@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class JfrEventTest {
+
+    private static final String FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/tmpJfr/";
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    @BeforeClass
+    public static void setUpClass() {
+        //noinspection ResultOfMethodCallIgnored
+        new File(FOLDER).mkdirs();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        final File folder = new File(FOLDER);
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        folder.delete();
+    }
+
+    @Test
+    public void testDisabled() {
+        // events are not created when not being recorded
+        assertFalse(JfrEvent.IMAGE_READ.isEnabled());
+        assertNull(JfrEvent.IMAGE_READ.begin());
+        JfrEvent.IMAGE_READ.commit(null);
+        assertNull(JfrEvent.name(null));
+        assertEquals("JPEG", JfrEvent.name(ImageFormat.JPEG));
+    }
+
+    @Test
+    public void testRecording() throws Exception {
+        if (!JfrEvent.IMAGE_READ.isAvailable()) {
+            // JFR is not available in this JVM
+            return;
+        }
+
+        // JFR API is used through reflection since tests are built for
+        // Java 7
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.getConstructor().newInstance();
+        final Method enable = recordingClass.getMethod("enable", String.class);
+        enable.invoke(recording, "com.irurueta.image.ImageRead");
+        enable.invoke(recording, "com.irurueta.image.ThumbnailGenerate");
+        enable.invoke(recording, "com.irurueta.image.ThumbnailQueueWait");
+        recordingClass.getMethod("start").invoke(recording);
+
+        final List<?> events;
+        final Path path = Files.createTempFile("images", ".jfr");
+        try {
+            assertTrue(JfrEvent.IMAGE_READ.isEnabled());
+            assertTrue(JfrEvent.THUMBNAIL_GENERATE.isEnabled());
+
+            final File f = new File(IMAGES_FOLDER, "rotate2.jpg");
+            final ImageReaderResult result =
+                    new ImageReader.Builder().build().readImage(f);
+            new ThumbnailCreator.Builder().build().generateAndSaveThumbnail(
+                    f, result.getMetadata().getOrientation(),
+                    new File(FOLDER, "jfr.png"), 64, 48, ThumbnailFormat.PNG);
+
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording,
+                    path);
+            events = (List<?>) Class.forName(
+                    "jdk.jfr.consumer.RecordingFile").getMethod(
+                    "readAllEvents", Path.class).invoke(null, path);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.delete(path);
+        }
+
+        final Map<String, Object> read = new HashMap<>();
+        final Map<String, Object> generate = new HashMap<>();
+        final Map<String, Object> wait = new HashMap<>();
+        for (final Object event : events) {
+            final Object type = event.getClass().getMethod("getEventType")
+                    .invoke(event);
+            final String name = (String) type.getClass().getMethod("getName")
+                    .invoke(type);
+            final Method getValue = event.getClass().getMethod("getValue",
+                    String.class);
+            if (name.equals("com.irurueta.image.ImageRead")) {
+                for (final String field : new String[]{"path", "format",
+                        "width", "height", "fileSize", "orientation",
+                        "success", "hash"}) {
+                    read.put(field, getValue.invoke(event, field));
+                }
+            } else if (name.equals("com.irurueta.image.ThumbnailGenerate")) {
+                for (final String field : new String[]{"format", "width",
+                        "targetWidth", "targetHeight", "priority", "success",
+                        "decode", "scale", "write"}) {
+                    generate.put(field, getValue.invoke(event, field));
+                }
+            } else if (name.equals(
+                    "com.irurueta.image.ThumbnailQueueWait")) {
+                wait.put("priority", getValue.invoke(event, "priority"));
+            }
+        }
+
+        assertTrue(((String) read.get("path")).endsWith("rotate2.jpg"));
+        assertEquals("JPEG", read.get("format"));
+        assertTrue((Integer) read.get("width") > 0);
+        assertTrue((Integer) read.get("height") > 0);
+        assertEquals(new File(IMAGES_FOLDER, "rotate2.jpg").length(),
+                read.get("fileSize"));
+        assertEquals("RIGHT_TOP", read.get("orientation"));
+        assertEquals(Boolean.TRUE, read.get("success"));
+        assertTrue((Long) read.get("hash") > 0);
+
+        assertEquals("PNG", generate.get("format"));
+        // size of decoded image
+        assertTrue((Integer) generate.get("width") > 0);
+        assertEquals(64, generate.get("targetWidth"));
+        assertEquals(48, generate.get("targetHeight"));
+        assertEquals("NORMAL", generate.get("priority"));
+        assertEquals(Boolean.TRUE, generate.get("success"));
+        assertTrue((Long) generate.get("decode") > 0);
+        assertTrue((Long) generate.get("scale") > 0);
+        assertTrue((Long) generate.get("write") > 0);
+
+        assertEquals("NORMAL", wait.get("priority"));
+
+        // events are no longer created once recording has finished
+        assertFalse(JfrEvent.IMAGE_READ.isEnabled());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testConstructor() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean(), 0.0);
+        assertEquals(0, histogram.getPercentile(50.0));
+    }
+
+    @Test
+    public void testBuckets() {
+        // buckets are contiguous and cover all non-negative values
+        long previousUpperBound = -1;
+        for (int i = 0; LatencyHistogram.getUpperBound(i) != Long.MAX_VALUE;
+             i++) {
+            final long upperBound = LatencyHistogram.getUpperBound(i);
+            assertTrue(upperBound > previousUpperBound);
+            assertEquals(i, LatencyHistogram.getBucket(previousUpperBound + 1));
+            assertEquals(i, LatencyHistogram.getBucket(upperBound));
+            previousUpperBound = upperBound;
+        }
+        assertEquals(0, LatencyHistogram.getBucket(0));
+        assertEquals(7, LatencyHistogram.getBucket(7));
+        assertTrue(LatencyHistogram.getBucket(Long.MAX_VALUE) > 0);
+    }
+
+    @Test
+    public void testRecord() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Random random = new Random();
+        final long[] values = new long[1000];
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1 + random.nextInt(1000000);
+            histogram.record(values[i]);
+            total += values[i];
+            max = Math.max(max, values[i]);
+        }
+        // negative values are recorded as zero
+        histogram.record(-1);
+
+        assertEquals(values.length + 1, histogram.getCount());
+        assertEquals(total, histogram.getTotal());
+        assertEquals(max, histogram.getMax());
+        assertEquals((double) total / (values.length + 1),
+                histogram.getMean(), 1e-6);
+
+        // percentiles have a relative error below 12.5%
+        Arrays.sort(values);
+        final double[] percentiles = {50.0, 90.0, 99.0};
+        for (final double percentile : percentiles) {
+            final long expected = values[(int) Math.ceil(
+                    percentile / 100.0 * (values.length + 1)) - 2];
+            final long estimated = histogram.getPercentile(percentile);
+            assertTrue(estimated >= expected);
+            assertTrue(estimated <= expected * 1.125 + 1);
+        }
+        assertEquals(0, histogram.getPercentile(0.0));
+        assertEquals(max, histogram.getPercentile(100.0));
+
+        // Force IllegalArgumentException
+        try {
+            histogram.getPercentile(-1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            histogram.getPercentile(101.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99.0));
+    }
+
+    @Test
+    public void testGetSnapshot() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        LatencySnapshot snapshot = histogram.getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0.0, snapshot.getMean(), 0.0);
+        assertEquals(0, snapshot.getP50());
+        assertEquals(0, snapshot.getP999());
+        assertEquals(0, snapshot.getMax());
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 1e-6);
+        assertEquals(histogram.getPercentile(50.0), snapshot.getP50());
+        assertEquals(histogram.getPercentile(90.0), snapshot.getP90());
+        assertEquals(histogram.getPercentile(99.0), snapshot.getP99());
+        assertEquals(histogram.getPercentile(99.9), snapshot.getP999());
+        assertEquals(1000, snapshot.getMax());
+        assertTrue(snapshot.getP50() <= snapshot.getP90());
+        assertTrue(snapshot.getP90() <= snapshot.getP99());
+        assertTrue(snapshot.getP99() <= snapshot.getP999());
+        assertNotNull(snapshot.toString());
+
+        // snapshot does not change once taken
+        histogram.reset();
+        assertEquals(1000, snapshot.getCount());
+    }
+
+    @Test
+    public void testConcurrentRecord() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        histogram.record(j);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(9999, histogram.getMax());
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OperationMetricsTest {
+
+    @Test
+    public void testConstructor() {
+        final OperationMetrics<ImageFormat> metrics =
+                new OperationMetrics<>("Test", ImageFormat.class);
+        assertEquals("Test", metrics.getType());
+        assertEquals(0, metrics.getOperationCount());
+        assertEquals(0, metrics.getFailureCount());
+        assertEquals(0, metrics.getInvalidImageFailureCount());
+        assertEquals(0, metrics.getIOFailureCount());
+        assertEquals(0, metrics.getOtherFailureCount());
+        assertEquals(0, metrics.getBytesRead());
+        assertEquals(0, metrics.getBytesWritten());
+        assertEquals(0.0, metrics.getThroughput(), 0.0);
+        assertEquals(0.0, metrics.getLatencyMean(), 0.0);
+        assertEquals(0, metrics.getLatencyP99());
+        assertEquals(0, metrics.getLatencyMax());
+        assertTrue(metrics.getLatencyP99ByFormat().isEmpty());
+        assertTrue(metrics.getGauges().isEmpty());
+        assertNull(metrics.getObjectName());
+    }
+
+    @Test
+    public void testRecord() {
+        final OperationMetrics<ImageFormat> metrics =
+                new OperationMetrics<>("Test", ImageFormat.class);
+        metrics.recordSuccess(ImageFormat.JPEG, 1000);
+        metrics.recordSuccess(ImageFormat.JPEG, 3000);
+        metrics.recordSuccess(ImageFormat.PNG, 500);
+        metrics.recordSuccess(null, 100);
+        metrics.recordFailure(new InvalidImageException());
+        metrics.recordFailure(new IOException());
+        metrics.recordFailure(new IllegalArgumentException());
+        metrics.recordFailure(new OutOfMemoryError());
+        metrics.addBytesRead(100);
+        metrics.addBytesRead(50);
+        metrics.addBytesWritten(10);
+
+        assertEquals(8, metrics.getOperationCount());
+        assertEquals(4, metrics.getFailureCount());
+        assertEquals(1, metrics.getInvalidImageFailureCount());
+        assertEquals(1, metrics.getIOFailureCount());
+        assertEquals(2, metrics.getOtherFailureCount());
+        assertEquals(150, metrics.getBytesRead());
+        assertEquals(10, metrics.getBytesWritten());
+        assertTrue(metrics.getThroughput() > 0.0);
+
+        assertEquals(4, metrics.getLatencyHistogram().getCount());
+        assertEquals(2, metrics.getLatencyHistogram(ImageFormat.JPEG)
+                .getCount());
+        assertEquals(1, metrics.getLatencyHistogram(ImageFormat.PNG)
+                .getCount());
+        assertEquals(0, metrics.getLatencyHistogram(ImageFormat.GIF)
+                .getCount());
+        assertEquals(1150.0, metrics.getLatencyMean(), 0.0);
+        assertEquals(3000, metrics.getLatencyMax());
+        assertEquals(3000, metrics.getLatencyP999());
+        assertTrue(metrics.getLatencyP50() <= metrics.getLatencyP90());
+        assertTrue(metrics.getLatencyP90() <= metrics.getLatencyP99());
+
+        // only formats having recorded operations are reported
+        final Map<String, Long> p99 = metrics.getLatencyP99ByFormat();
+        assertEquals(2, p99.size());
+        assertEquals(Long.valueOf(3000), p99.get("JPEG"));
+        assertEquals(Long.valueOf(500), p99.get("PNG"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getOperationCount());
+        assertEquals(0, metrics.getFailureCount());
+        assertEquals(0, metrics.getBytesRead());
+        assertEquals(0, metrics.getBytesWritten());
+        assertEquals(0, metrics.getLatencyHistogram().getCount());
+        assertTrue(metrics.getLatencyP99ByFormat().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentRecord() throws InterruptedException {
+        final OperationMetrics<ImageFormat> metrics =
+                new OperationMetrics<>("Test", ImageFormat.class);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        metrics.recordSuccess(ImageFormat.BMP, j);
+                        metrics.addBytesRead(2);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80000, metrics.getOperationCount());
+        assertEquals(160000, metrics.getBytesRead());
+        assertEquals(80000, metrics.getLatencyHistogram(ImageFormat.BMP)
+                .getCount());
+    }
+
+    @Test
+    public void testGetSnapshot() throws InterruptedException {
+        final OperationMetrics<ThumbnailFormat> metrics =
+                new OperationMetrics<>("Test", ThumbnailFormat.class);
+        metrics.addGauge("running", new OperationMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return 3;
+            }
+        });
+        final OperationSnapshot first = metrics.getSnapshot();
+        assertEquals("Test", first.getType());
+        assertEquals(0, first.getOperationCount());
+        assertTrue(first.getLatencyByFormat().isEmpty());
+        assertEquals(Long.valueOf(3), first.getGauges().get("running"));
+
+        metrics.recordSuccess(ThumbnailFormat.PNG, 2000);
+        metrics.recordSuccess(ThumbnailFormat.PNG, 4000);
+        metrics.recordFailure(new IOException());
+        metrics.addBytesRead(30);
+        metrics.addBytesWritten(20);
+        Thread.sleep(10);
+
+        final OperationSnapshot second = metrics.getSnapshot();
+        assertEquals(3, second.getOperationCount());
+        assertEquals(1, second.getFailureCount());
+        assertEquals(0, second.getInvalidImageFailureCount());
+        assertEquals(1, second.getIOFailureCount());
+        assertEquals(0, second.getOtherFailureCount());
+        assertEquals(30, second.getBytesRead());
+        assertEquals(20, second.getBytesWritten());
+        assertEquals(2, second.getLatency().getCount());
+        assertEquals(4000, second.getLatency().getMax());
+        assertEquals(1, second.getLatencyByFormat().size());
+        assertEquals(2, second.getLatencyByFormat().get("PNG").getCount());
+        assertTrue(second.getTimestamp() >= first.getTimestamp());
+        assertTrue(second.getNanoTime() > first.getNanoTime());
+        assertNotNull(second.toString());
+
+        // throughput between snapshots
+        final double throughput = second.getThroughput(first);
+        assertTrue(throughput > 0.0);
+        assertEquals(3.0 / ((second.getNanoTime() - first.getNanoTime()) /
+                1e9), throughput, 1e-6);
+
+        // Force IllegalArgumentException
+        try {
+            second.getThroughput(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            first.getThroughput(second);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testRegisterMBean() throws JMException {
+        final OperationMetrics<ImageFormat> metrics =
+                new OperationMetrics<>("Test", ImageFormat.class);
+        metrics.addGauge("queued", new OperationMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return 5;
+            }
+        });
+        metrics.recordSuccess(ImageFormat.GIF, 1000);
+        metrics.recordFailure(new InvalidImageException());
+
+        final ObjectName name = metrics.registerMBean("test");
+        try {
+            assertEquals(name, metrics.getObjectName());
+            assertEquals(OperationMetrics.JMX_DOMAIN, name.getDomain());
+            assertEquals("Test", name.getKeyProperty("type"));
+
+            final MBeanServer server =
+                    ManagementFactory.getPlatformMBeanServer();
+            assertTrue(server.isRegistered(name));
+            assertEquals(2L, server.getAttribute(name, "OperationCount"));
+            assertEquals(1L, server.getAttribute(name,
+                    "InvalidImageFailureCount"));
+            assertEquals(1000L, server.getAttribute(name, "LatencyMax"));
+            final TabularData byFormat = (TabularData) server.getAttribute(
+                    name, "LatencyP99ByFormat");
+            assertEquals(1, byFormat.size());
+            final TabularData gauges = (TabularData) server.getAttribute(
+                    name, "Gauges");
+            assertEquals(1, gauges.size());
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0, metrics.getOperationCount());
+
+            // Force IllegalStateException
+            try {
+                metrics.registerMBean("other");
+                fail("IllegalStateException expected but not thrown");
+            } catch (final IllegalStateException ignore) {
+            }
+
+            // Force IllegalArgumentException
+            try {
+                new OperationMetrics<>("Test", ImageFormat.class)
+                        .registerMBean(null);
+                fail("IllegalArgumentException expected but not thrown");
+            } catch (final IllegalArgumentException ignore) {
+            }
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertNull(metrics.getObjectName());
+        assertFalse(ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name));
+
+        // unregistering again has no effect
+        metrics.unregisterMBean();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import com.irurueta.server.commons.image.hash.Hasher;
+import com.irurueta.server.commons.image.hash.PerceptualHashAlgorithm;
+import com.irurueta.server.commons.image.hash.TreeHasher;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+public class ReadOptionsTest {
+
+    @Test
+    public void testDefault() {
+        assertEquals(ImageReader.DEFAULT_COMPUTE_CRC,
+                ReadOptions.DEFAULT.isComputeCrcEnabled());
+        assertEquals(ImageReader.DEFAULT_COMPUTE_MD5,
+                ReadOptions.DEFAULT.isComputeMd5Enabled());
+        assertEquals(ReadOptions.DEFAULT, new ReadOptions.Builder().build());
+    }
+
+    @Test
+    public void testBuilder() {
+        final ReadOptions options = new ReadOptions.Builder()
+                .setComputeCrcEnabled(false).setComputeMd5Enabled(true).build();
+        assertFalse(options.isComputeCrcEnabled());
+        assertTrue(options.isComputeMd5Enabled());
+
+        final ReadOptions copy = new ReadOptions.Builder(options).build();
+        assertNotSame(options, copy);
+        assertEquals(options, copy);
+        assertEquals(options.hashCode(), copy.hashCode());
+        assertNotEquals(ReadOptions.DEFAULT, options);
+        assertNotEquals(options, new Object());
+    }
+
+    @Test
+    public void testWith() {
+        final ReadOptions options = ReadOptions.DEFAULT
+                .withComputeCrcEnabled(false).withComputeMd5Enabled(false);
+        assertFalse(options.isComputeCrcEnabled());
+        assertFalse(options.isComputeMd5Enabled());
+
+        // original options are not modified
+        assertEquals(ImageReader.DEFAULT_COMPUTE_CRC,
+                ReadOptions.DEFAULT.isComputeCrcEnabled());
+        assertEquals(ImageReader.DEFAULT_COMPUTE_MD5,
+                ReadOptions.DEFAULT.isComputeMd5Enabled());
+
+        // same values return same instance
+        assertSame(options, options.withComputeCrcEnabled(false));
+        assertSame(options, options.withComputeMd5Enabled(false));
+    }
+
+    @Test
+    public void testHashAlgorithms() {
+        assertTrue(ReadOptions.DEFAULT.getHashAlgorithms().isEmpty());
+        assertEquals(Hasher.DEFAULT_BUFFER_SIZE,
+                ReadOptions.DEFAULT.getHashBufferSize());
+        assertEquals(EnumSet.of(HashAlgorithm.CRC32, HashAlgorithm.MD5),
+                ReadOptions.DEFAULT.getAllHashAlgorithms());
+
+        final ReadOptions options = new ReadOptions.Builder()
+                .setComputeMd5Enabled(false)
+                .setHashAlgorithms(HashAlgorithm.SHA256, HashAlgorithm.XXH64)
+                .setHashBufferSize(1024).build();
+        assertEquals(EnumSet.of(HashAlgorithm.SHA256, HashAlgorithm.XXH64),
+                options.getHashAlgorithms());
+        assertEquals(1024, options.getHashBufferSize());
+        assertEquals(EnumSet.of(HashAlgorithm.CRC32, HashAlgorithm.SHA256,
+                HashAlgorithm.XXH64), options.getAllHashAlgorithms());
+
+        final ReadOptions copy = new ReadOptions.Builder(options).build();
+        assertEquals(options, copy);
+        assertEquals(options.hashCode(), copy.hashCode());
+        assertNotEquals(options, new ReadOptions.Builder(options)
+                .setHashBufferSize(2048).build());
+        assertNotEquals(options, new ReadOptions.Builder(options)
+                .setHashAlgorithms().build());
+
+        // Force IllegalArgumentException
+        try {
+            new ReadOptions.Builder().setHashAlgorithms(
+                    (HashAlgorithm[]) null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ReadOptions.Builder().setHashBufferSize(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testTreeHash() {
+        assertFalse(ReadOptions.DEFAULT.isTreeHashEnabled());
+        assertEquals(TreeHasher.DEFAULT_CHUNK_SIZE,
+                ReadOptions.DEFAULT.getTreeHashChunkSize());
+
+        final ReadOptions options = new ReadOptions.Builder()
+                .setTreeHashEnabled(true).setTreeHashChunkSize(1024).build();
+        assertTrue(options.isTreeHashEnabled());
+        assertEquals(1024, options.getTreeHashChunkSize());
+        assertEquals(options, new ReadOptions.Builder(options).build());
+        assertNotEquals(options, new ReadOptions.Builder(options)
+                .setTreeHashEnabled(false).build());
+
+        // Force IllegalArgumentException
+        try {
+            new ReadOptions.Builder().setTreeHashChunkSize(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testPerceptualHashAlgorithms() {
+        assertTrue(ReadOptions.DEFAULT.getPerceptualHashAlgorithms().isEmpty());
+
+        final ReadOptions options = new ReadOptions.Builder()
+                .setPerceptualHashAlgorithms(PerceptualHashAlgorithm.DCT,
+                        PerceptualHashAlgorithm.AVERAGE).build();
+        assertEquals(EnumSet.of(PerceptualHashAlgorithm.AVERAGE,
+                PerceptualHashAlgorithm.DCT),
+                options.getPerceptualHashAlgorithms());
+        assertEquals(options, new ReadOptions.Builder(options).build());
+        assertEquals(options.hashCode(),
+                new ReadOptions.Builder(options).build().hashCode());
+        assertNotEquals(options, ReadOptions.DEFAULT);
+
+        // Force IllegalArgumentException
+        try {
+            new ReadOptions.Builder().setPerceptualHashAlgorithms(
+                    (PerceptualHashAlgorithm[]) null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class SlowOperationRecorderTest {
+
+    private static final String FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/tmpSlow/";
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    @BeforeClass
+    public static void setUpClass() {
+        //create folder for generated thumbnails
+        final File folder = new File(FOLDER);
+        //noinspection ResultOfMethodCallIgnored
+        folder.mkdirs();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        //remove any remaining files in thumbnails folder
+        final File folder = new File(FOLDER);
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //delete created folder
+        //noinspection ResultOfMethodCallIgnored
+        folder.delete();
+    }
+
+    @Test
+    public void testConstructor() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder();
+        assertEquals(SlowOperationRecorder.DEFAULT_THRESHOLD_MILLIS,
+                recorder.getThreshold(TimeUnit.MILLISECONDS));
+        assertEquals(SlowOperationRecorder.DEFAULT_CAPACITY,
+                recorder.getCapacity());
+        assertEquals(0, recorder.getRecordedCount());
+        assertTrue(recorder.getOperations().isEmpty());
+
+        recorder = new SlowOperationRecorder(5, TimeUnit.SECONDS, 10);
+        assertEquals(5000, recorder.getThreshold(TimeUnit.MILLISECONDS));
+        assertEquals(10, recorder.getCapacity());
+
+        recorder.setThreshold(20, TimeUnit.MILLISECONDS);
+        assertEquals(20000000, recorder.getThreshold(TimeUnit.NANOSECONDS));
+
+        // Force IllegalArgumentException
+        try {
+            new SlowOperationRecorder(-1, TimeUnit.SECONDS, 10);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new SlowOperationRecorder(1, null, 10);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new SlowOperationRecorder(1, TimeUnit.SECONDS, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            recorder.setThreshold(-1, TimeUnit.SECONDS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testThreshold() {
+        final SlowOperationRecorder recorder = new SlowOperationRecorder(
+                1, TimeUnit.MILLISECONDS, 10);
+        final File f = new File(IMAGES_FOLDER, "polo.png");
+
+        final StageTimings<ReadStage> fast =
+                new StageTimings<>(ReadStage.class);
+        fast.add(ReadStage.INFO, 999999);
+        recorder.onImageRead(f, null, fast, null);
+        assertEquals(0, recorder.getRecordedCount());
+
+        final StageTimings<ReadStage> slow =
+                new StageTimings<>(ReadStage.class);
+        slow.add(ReadStage.INFO, 500000);
+        slow.add(ReadStage.HASH, 500000);
+        recorder.onImageRead(f, null, slow, new IOException("broken"));
+        assertEquals(1, recorder.getRecordedCount());
+
+        final SlowOperation operation = recorder.getOperations().get(0);
+        assertEquals(0, operation.getSequence());
+        assertEquals("ImageReader", operation.getType());
+        assertEquals(f, operation.getFile());
+        assertEquals(f.length(), operation.getFileLength());
+        assertEquals(f.lastModified(), operation.getLastModified());
+        assertNull(operation.getFormat());
+        assertEquals(1000000, operation.getTotalNanos());
+        assertEquals(Long.valueOf(500000),
+                operation.getStageNanos().get("HASH"));
+        assertEquals(-1, operation.getAllocatedBytes());
+        assertTrue(operation.getError().contains("broken"));
+
+        // time waiting to run a thumbnail generation is not accounted
+        final ThumbnailDetails details = new ThumbnailDetails(f, null,
+                new File(FOLDER, "slow.png"), 16, 16, ThumbnailFormat.PNG,
+                ThumbnailPriority.NORMAL, null);
+        details.getTimings().add(ThumbnailStage.QUEUE_WAIT, 10000000);
+        details.getTimings().add(ThumbnailStage.DECODE, 10);
+        recorder.onThumbnailGenerated(details, null);
+        assertEquals(1, recorder.getRecordedCount());
+    }
+
+    @Test
+    public void testRingBuffer() throws IOException {
+        final SlowOperationRecorder recorder = new SlowOperationRecorder(
+                0, TimeUnit.NANOSECONDS, 3);
+        final File f = new File(IMAGES_FOLDER, "polo.png");
+        for (int i = 0; i < 5; i++) {
+            recorder.onImageRead(f, null,
+                    new StageTimings<>(ReadStage.class), null);
+        }
+        assertEquals(5, recorder.getRecordedCount());
+
+        // only newest records are kept, from oldest to newest
+        final List<SlowOperation> operations = recorder.getOperations();
+        assertEquals(3, operations.size());
+        assertEquals(2, operations.get(0).getSequence());
+        assertEquals(3, operations.get(1).getSequence());
+        assertEquals(4, operations.get(2).getSequence());
+
+        final StringBuilder builder = new StringBuilder();
+        recorder.dump(builder);
+        final String[] lines = builder.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("#2 "));
+        assertTrue(lines[2].contains("polo.png"));
+
+        recorder.clear();
+        assertTrue(recorder.getOperations().isEmpty());
+        assertEquals(5, recorder.getRecordedCount());
+        recorder.onImageRead(f, null, new StageTimings<>(ReadStage.class),
+                null);
+        assertEquals(1, recorder.getOperations().size());
+        assertEquals(5, recorder.getOperations().get(0).getSequence());
+    }
+
+    @Test
+    public void testImageReader() throws InvalidImageException, IOException {
+        final SlowOperationRecorder recorder = new SlowOperationRecorder(
+                0, TimeUnit.NANOSECONDS, 10);
+        final ImageReader reader = new ImageReader.Builder()
+                .setMetricsListener(recorder).build();
+        final File f = new File(IMAGES_FOLDER, "rotate2.jpg");
+        final ImageReaderResult result = reader.readImage(f);
+
+        final List<SlowOperation> operations = recorder.getOperations();
+        assertEquals(1, operations.size());
+        final SlowOperation operation = operations.get(0);
+        assertEquals("ImageReader", operation.getType());
+        assertEquals(f, operation.getFile());
+        assertEquals(f.length(), operation.getFileLength());
+        assertEquals(ImageFormat.JPEG, operation.getFormat());
+        assertEquals(result.getMetadata().getWidth(), operation.getWidth());
+        assertEquals(result.getMetadata().getHeight(), operation.getHeight());
+        assertEquals(result.getMetadata().getOrientation(),
+                operation.getOrientation());
+        assertEquals("md5=" + result.getMd5(), operation.getDetails());
+        assertEquals(ReadStage.values().length,
+                operation.getStageNanos().size());
+        assertTrue(operation.getTotalNanos() > 0);
+        assertTrue(operation.getAllocatedBytes() != 0);
+        assertNull(operation.getError());
+        assertNotNull(operation.toString());
+    }
+
+    @Test
+    public void testThumbnailCreator() throws IOException,
+            InterruptedException, TimeoutException {
+        final SlowOperationRecorder recorder = new SlowOperationRecorder(
+                0, TimeUnit.NANOSECONDS, 10);
+        final ThumbnailCreator creator = new ThumbnailCreator.Builder()
+                .setMetricsListener(recorder).build();
+        final File f = new File(IMAGES_FOLDER, "rotate2.jpg");
+        creator.generateAndSaveThumbnail(f, ImageOrientation.RIGHT_TOP,
+                new File(FOLDER, "slow.jpg"), 64, 32, ThumbnailFormat.JPEG,
+                ThumbnailPriority.INTERACTIVE, "tenant", null);
+
+        // failures are recorded as well
+        try {
+            creator.generateAndSaveThumbnail(new File(FOLDER, "missing.jpg"),
+                    null, new File(FOLDER, "slow2.jpg"), 64, 32,
+                    ThumbnailFormat.JPEG);
+            fail("IOException expected but not thrown");
+        } catch (final IOException ignore) {
+        }
+
+        final List<SlowOperation> operations = recorder.getOperations();
+        assertEquals(2, operations.size());
+        final SlowOperation operation = operations.get(0);
+        assertEquals("ThumbnailCreator", operation.getType());
+        assertEquals(f, operation.getFile());
+        assertEquals(f.length(), operation.getFileLength());
+        assertEquals(f.lastModified(), operation.getLastModified());
+        assertEquals(ImageFormat.JPEG, operation.getFormat());
+        assertTrue(operation.getWidth() > 0);
+        assertTrue(operation.getHeight() > 0);
+        assertEquals(ImageOrientation.RIGHT_TOP, operation.getOrientation());
+        assertEquals("-> 64x32 JPEG INTERACTIVE tenant=tenant",
+                operation.getDetails());
+        assertEquals(ThumbnailStage.values().length,
+                operation.getStageNanos().size());
+        assertTrue(operation.getStageNanos().get("DECODE") > 0);
+        assertTrue(operation.getAllocatedBytes() != 0);
+        assertNull(operation.getError());
+
+        final SlowOperation failed = operations.get(1);
+        assertEquals(0, failed.getFileLength());
+        assertNull(failed.getFormat());
+        assertTrue(failed.getError().startsWith(
+                "java.io.FileNotFoundException"));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StageTimingsTest {
+
+    @Test
+    public void testAdd() {
+        final StageTimings<ThumbnailStage> timings =
+                new StageTimings<>(ThumbnailStage.class);
+        assertEquals(0, timings.getTotalNanos());
+        for (final ThumbnailStage stage : ThumbnailStage.values()) {
+            assertEquals(0, timings.getNanos(stage));
+        }
+
+        timings.add(ThumbnailStage.DECODE, 1000);
+        timings.add(ThumbnailStage.DECODE, 500);
+        timings.add(ThumbnailStage.WRITE, 2000);
+        assertEquals(1500, timings.getNanos(ThumbnailStage.DECODE));
+        assertEquals(2000, timings.getNanos(ThumbnailStage.WRITE));
+        assertEquals(0, timings.getNanos(ThumbnailStage.SCALE));
+        assertEquals(3500, timings.getTotalNanos());
+        assertTrue(timings.toString().contains("DECODE=1us"));
+
+        // allocated bytes are unknown unless measured
+        assertEquals(-1, timings.getAllocatedBytes());
+        assertFalse(timings.toString().contains("allocated"));
+        timings.setAllocatedBytes(4096);
+        assertEquals(4096, timings.getAllocatedBytes());
+        assertTrue(timings.toString().contains("allocated=4096B"));
+
+        // Force IllegalArgumentException
+        try {
+            new StageTimings<ReadStage>(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testLap() throws InterruptedException {
+        assertEquals(0, StageTimings.lap(null, ReadStage.INFO,
+                System.nanoTime()));
+
+        final StageTimings<ReadStage> timings =
+                new StageTimings<>(ReadStage.class);
+        final long start = System.nanoTime();
+        Thread.sleep(1);
+        final long end = StageTimings.lap(timings, ReadStage.INFO, start);
+        assertEquals(end - start, timings.getNanos(ReadStage.INFO));
+        assertTrue(timings.getNanos(ReadStage.INFO) > 0);
+    }
+}
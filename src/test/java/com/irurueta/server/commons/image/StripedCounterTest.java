@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StripedCounterTest {
+
+    @Test
+    public void testAddAndReset() {
+        final StripedCounter counter = new StripedCounter();
+        assertEquals(0, counter.sum());
+
+        counter.increment();
+        counter.add(41);
+        assertEquals(42, counter.sum());
+
+        counter.reset();
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final int threads = 8;
+        final int updates = 100000;
+        final StripedCounter counter = new StripedCounter();
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updates; i++) {
+                        counter.increment();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+
+        // no update is lost when contended threads move to other cells
+        assertEquals((long) threads * updates, counter.sum());
+    }
+
+    @Test
+    public void testAdvanceProbe() {
+        int probe = 1;
+        for (int i = 0; i < 1000; i++) {
+            final int next = StripedCounter.advanceProbe(probe);
+            assertNotEquals(0, next);
+            assertNotEquals(probe, next);
+            probe = next;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.SampleModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailBufferPoolTest {
+
+    private static final String FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/tmpPool/";
+
+    @BeforeClass
+    public static void setUpClass() {
+        //create folder for generated files
+        final File folder = new File(FOLDER);
+        //noinspection ResultOfMethodCallIgnored
+        folder.mkdirs();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        //remove any remaining files in folder
+        final File folder = new File(FOLDER);
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //delete created folder
+        //noinspection ResultOfMethodCallIgnored
+        folder.delete();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        final ThumbnailBufferPool pool = ThumbnailBufferPool.get();
+        assertSame(pool, ThumbnailBufferPool.get());
+
+        // each thread has its own pool
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ThumbnailBufferPool other = executor.submit(
+                    new Callable<ThumbnailBufferPool>() {
+                        @Override
+                        public ThumbnailBufferPool call() {
+                            return ThumbnailBufferPool.get();
+                        }
+                    }).get();
+            assertNotSame(pool, other);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetClassLength() {
+        assertEquals(1024, ThumbnailBufferPool.getClassLength(0));
+        assertEquals(1024, ThumbnailBufferPool.getClassLength(1024));
+        assertEquals(1280, ThumbnailBufferPool.getClassLength(1025));
+        assertEquals(1536, ThumbnailBufferPool.getClassLength(1500));
+        assertEquals(1792, ThumbnailBufferPool.getClassLength(1700));
+        assertEquals(2048, ThumbnailBufferPool.getClassLength(2000));
+        assertEquals(2560, ThumbnailBufferPool.getClassLength(2049));
+        assertEquals(-1, ThumbnailBufferPool.getClassLength(
+                Integer.MAX_VALUE));
+
+        // at most 25% of each class is wasted
+        for (int length = 1025; length < 1 << 20; length += 997) {
+            final int classLength = ThumbnailBufferPool.getClassLength(length);
+            assertTrue(classLength >= length);
+            assertTrue(classLength < 1.25 * length);
+            assertEquals(classLength,
+                    ThumbnailBufferPool.getClassLength(classLength));
+        }
+
+        // size classes are consecutive
+        assertEquals(ThumbnailBufferPool.getSizeClass(1024) + 1,
+                ThumbnailBufferPool.getSizeClass(1280));
+        assertEquals(ThumbnailBufferPool.getSizeClass(1792) + 1,
+                ThumbnailBufferPool.getSizeClass(2048));
+    }
+
+    @Test
+    public void testAcquireReleaseArrays() {
+        final ThumbnailBufferPool pool = ThumbnailBufferPool.get();
+        final long retained = pool.getRetainedBytes();
+
+        final int[] ints = pool.acquireInts(1500);
+        assertEquals(1536, ints.length);
+        pool.releaseInts(ints);
+        assertEquals(retained + 4 * 1536, pool.getRetainedBytes());
+        assertSame(ints, pool.acquireInts(1400));
+        assertEquals(retained, pool.getRetainedBytes());
+
+        final byte[] bytes = pool.acquireBytes(3000);
+        assertEquals(3072, bytes.length);
+        pool.releaseBytes(bytes);
+        assertEquals(retained + 3072, pool.getRetainedBytes());
+        assertSame(bytes, pool.acquireBytes(3072));
+        assertEquals(retained, pool.getRetainedBytes());
+
+        // arrays not obtained from the pool are not retained
+        pool.releaseInts(new int[1000]);
+        pool.releaseBytes(new byte[1000]);
+        assertEquals(retained, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testAcquireReleaseImage() {
+        final ThumbnailBufferPool pool = ThumbnailBufferPool.get();
+        final long retained = pool.getRetainedBytes();
+
+        final BufferedImage rgb = pool.acquireImage(100, 50,
+                BufferedImage.TYPE_INT_RGB);
+        assertEquals(BufferedImage.TYPE_INT_RGB, rgb.getType());
+        assertEquals(100, rgb.getWidth());
+        assertEquals(50, rgb.getHeight());
+        final BufferedImage argb = pool.acquireImage(100, 50,
+                BufferedImage.TYPE_INT_ARGB);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, argb.getType());
+
+        // pixels are stored as expected
+        rgb.setRGB(10, 20, 0xFF123456);
+        assertEquals(0xFF123456, rgb.getRGB(10, 20));
+        argb.setRGB(10, 20, 0x80123456);
+        assertEquals(0x80123456, argb.getRGB(10, 20));
+
+        pool.releaseImage(rgb);
+        pool.releaseImage(argb);
+        assertTrue(pool.getRetainedBytes() > retained);
+        assertSame(argb, pool.acquireImage(100, 50,
+                BufferedImage.TYPE_INT_ARGB));
+        assertSame(rgb, pool.acquireImage(100, 50,
+                BufferedImage.TYPE_INT_RGB));
+        assertEquals(retained, pool.getRetainedBytes());
+
+        // images with other layouts are also supported
+        final BufferedImage bgr = new BufferedImage(30, 20,
+                BufferedImage.TYPE_3BYTE_BGR);
+        final ColorModel colorModel = bgr.getColorModel();
+        final SampleModel sampleModel = bgr.getSampleModel();
+        final BufferedImage pooledBgr = pool.acquireImage(colorModel,
+                sampleModel);
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, pooledBgr.getType());
+        pool.releaseImage(pooledBgr);
+        assertSame(pooledBgr, pool.acquireImage(colorModel, sampleModel));
+
+        // indexed images are not pooled
+        final BufferedImage indexed = new BufferedImage(30, 20,
+                BufferedImage.TYPE_BYTE_INDEXED);
+        assertNull(pool.acquireImage(indexed.getColorModel(),
+                indexed.getSampleModel()));
+
+        // released idle images are limited
+        final long before = pool.getRetainedBytes();
+        for (int i = 0; i < 10; i++) {
+            pool.releaseImage(pool.acquireImage(10 + i, 10,
+                    BufferedImage.TYPE_INT_RGB));
+        }
+        assertTrue(pool.getRetainedBytes() <
+                before + 10 * 4 * ThumbnailBufferPool.getClassLength(190));
+        assertTrue(pool.getRetainedBytes() <=
+                ThumbnailBufferPool.MAX_RETAINED_BYTES);
+
+        // images larger than the retention limit are not retained
+        final BufferedImage large = pool.acquireImage(8192, 4096,
+                BufferedImage.TYPE_INT_RGB);
+        final long beforeLarge = pool.getRetainedBytes();
+        pool.releaseImage(large);
+        assertTrue(pool.getRetainedBytes() <= beforeLarge);
+        assertNotSame(large, pool.acquireImage(8192, 4096,
+                BufferedImage.TYPE_INT_RGB));
+    }
+
+    @Test
+    public void testCodecs() {
+        final ThumbnailBufferPool pool = ThumbnailBufferPool.get();
+        for (final ImageFormat format : new ImageFormat[]{ImageFormat.JPEG,
+                ImageFormat.PNG, ImageFormat.GIF, ImageFormat.BMP}) {
+            assertNotNull(pool.getReader(format));
+            assertSame(pool.getReader(format), pool.getReader(format));
+        }
+        assertNull(pool.getReader(ImageFormat.UNKNOWN));
+
+        for (final ThumbnailFormat format : new ThumbnailFormat[]{
+                ThumbnailFormat.JPEG, ThumbnailFormat.PNG,
+                ThumbnailFormat.GIF, ThumbnailFormat.BMP}) {
+            assertNotNull(pool.getWriter(format));
+            assertSame(pool.getWriter(format), pool.getWriter(format));
+        }
+        assertNull(pool.getWriter(ThumbnailFormat.UNKNOWN));
+    }
+
+    @Test
+    public void testScratchRows() throws IOException {
+        final ThumbnailBufferPool pool = ThumbnailBufferPool.get();
+        final int[] intRow = pool.getIntRow(100);
+        assertTrue(intRow.length >= 100);
+        assertSame(intRow, pool.getIntRow(50));
+        assertTrue(pool.getByteRow(100).length >= 100);
+        assertTrue(pool.getFloatRow1(100).length >= 100);
+        assertTrue(pool.getFloatRow2(100).length >= 100);
+        assertNotSame(pool.getFloatRow1(100), pool.getFloatRow2(100));
+
+        // encode streams reuse their array
+        final ByteArrayImageOutputStream stream1 = pool.createEncodeStream();
+        stream1.write(new byte[]{1, 2, 3});
+        assertEquals(3, stream1.toByteBuffer().limit());
+        final ByteArrayImageOutputStream stream2 = pool.createEncodeStream();
+        assertNotSame(stream1, stream2);
+        assertSame(stream1.getData(), stream2.getData());
+        assertEquals(0, stream2.toByteBuffer().limit());
+    }
+
+    @Test
+    public void testReadFile() throws IOException {
+        final ThumbnailBufferPool pool = ThumbnailBufferPool.get();
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png");
+        final byte[] expected = Files.readAllBytes(f.toPath());
+
+        final ByteBuffer buffer = pool.readFile(f.toPath());
+        assertEquals(0, buffer.position());
+        assertEquals(expected.length, buffer.limit());
+        assertTrue(Arrays.equals(expected,
+                Arrays.copyOf(buffer.array(), buffer.limit())));
+        pool.releaseBytes(buffer.array());
+
+        // array is reused
+        final ByteBuffer buffer2 = pool.readFile(f.toPath());
+        assertSame(buffer.array(), buffer2.array());
+        pool.releaseBytes(buffer2.array());
+
+        // empty files are supported
+        final File empty = new File(FOLDER, "empty.bin");
+        Files.write(empty.toPath(), new byte[0]);
+        assertEquals(0, pool.readFile(empty.toPath()).limit());
+
+        // Force NoSuchFileException
+        try {
+            pool.readFile(new File(FOLDER, "missing.bin").toPath());
+            fail("NoSuchFileException expected but not thrown");
+        } catch (final NoSuchFileException ignore) {
+        }
+    }
+}
@@ -19,8 +19,20 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -59,6 +71,39 @@ public class ThumbnailCreatorTest {
         assertNotNull(creator);
     }
 
+    @Test
+    public void testBuilder() {
+        // default instance is shared
+        final ThumbnailCreator shared = ThumbnailCreator.getInstance();
+        assertSame(shared, ThumbnailCreator.getInstance());
+        // other tests might have configured the shared instance
+        final int sharedThreads = shared.getMaxConcurrentThreads();
+
+        final ThumbnailCreator creator1 = new ThumbnailCreator.Builder()
+                .build();
+        assertEquals(ThumbnailCreator.DEFAULT_MAX_CONCURRENT_THREADS,
+                creator1.getMaxConcurrentThreads());
+
+        final ThumbnailCreator creator2 = new ThumbnailCreator.Builder()
+                .setMaxConcurrentThreads(4).build();
+        assertNotSame(creator1, creator2);
+        assertNotSame(shared, creator2);
+        assertEquals(4, creator2.getMaxConcurrentThreads());
+
+        // instances are configured independently
+        creator1.setMaxConcurrentThreads(2);
+        assertEquals(2, creator1.getMaxConcurrentThreads());
+        assertEquals(4, creator2.getMaxConcurrentThreads());
+        assertEquals(sharedThreads, shared.getMaxConcurrentThreads());
+
+        // Force IllegalArgumentException
+        try {
+            new ThumbnailCreator.Builder().setMaxConcurrentThreads(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
     @Test
     public void testGetSetMaxConcurrentThreads() {
         final ThumbnailCreator creator = ThumbnailCreator.getInstance();
@@ -456,4 +501,542 @@ public class ThumbnailCreatorTest {
         //noinspection ResultOfMethodCallIgnored
         thumb.delete();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGenerateAndSaveThumbnailWithTimeout()
+            throws InvalidImageException, IOException, InterruptedException,
+            TimeoutException {
+        final ThumbnailCreator creator = ThumbnailCreator.getInstance();
+
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png");
+        final File thumb = new File(FOLDER, "timeout.png");
+
+        // a large enough timeout succeeds
+        creator.generateAndSaveThumbnail(f, null, thumb, 64, 64,
+                ThumbnailFormat.PNG, 1, TimeUnit.MINUTES);
+        final ImageReaderResult readerResult =
+                ImageReader.getInstance().readImage(thumb);
+        assertEquals(64, readerResult.getMetadata().getWidth());
+        assertEquals(64, readerResult.getMetadata().getHeight());
+
+        // an elapsed deadline fails
+        final long timedOut = creator.getTimedOutCount();
+        try {
+            creator.generateAndSaveThumbnail(f, null, thumb, 64, 64,
+                    ThumbnailFormat.PNG, 0, TimeUnit.NANOSECONDS);
+            fail("TimeoutException expected but not thrown");
+        } catch (final TimeoutException ignore) {
+        }
+        assertEquals(timedOut + 1, creator.getTimedOutCount());
+
+        // delete generated thumbnail file
+        //noinspection ResultOfMethodCallIgnored
+        thumb.delete();
+    }
+
+    @Test
+    public void testGenerateAndSaveThumbnailCancelled() throws Exception {
+        final ThumbnailCreator creator = ThumbnailCreator.getInstance();
+
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg");
+        final File thumb1 = new File(FOLDER, "cancelled1.jpg");
+        final File thumb2 = new File(FOLDER, "cancelled2.jpg");
+
+        // a cancelled token fails immediately
+        final long cancelled = creator.getCancelledCount();
+        final CancellationToken token1 = new CancellationToken();
+        token1.cancel();
+        try {
+            creator.generateAndSaveThumbnail(f, null, thumb1, 64, 64,
+                    ThumbnailFormat.JPEG, token1);
+            fail("CancellationException expected but not thrown");
+        } catch (final CancellationException ignore) {
+        }
+        assertEquals(cancelled + 1, creator.getCancelledCount());
+        assertFalse(thumb1.exists());
+
+        // cancel a request while it is being processed or waiting for another
+        // one to finish (by default only one thread is allowed at a time)
+        final CancellationToken token2 = new CancellationToken();
+        final CancellationToken token3 = new CancellationToken();
+        final AtomicReference<Throwable> error2 = new AtomicReference<>();
+        final AtomicReference<Throwable> error3 = new AtomicReference<>();
+        final Thread thread2 = createThread(creator, f, thumb1, token2, error2);
+        final Thread thread3 = createThread(creator, f, thumb2, token3, error3);
+        thread2.start();
+        thread3.start();
+        Thread.sleep(100);
+        token2.cancel();
+        token3.cancel();
+        thread2.join(10000);
+        thread3.join(10000);
+        assertFalse(thread2.isAlive());
+        assertFalse(thread3.isAlive());
+        assertTrue(error2.get() instanceof CancellationException);
+        assertTrue(error3.get() instanceof CancellationException);
+        assertEquals(cancelled + 3, creator.getCancelledCount());
+        assertFalse(thumb1.exists());
+        assertFalse(thumb2.exists());
+    }
+
+    @Test
+    public void testGenerateAndSaveThumbnailWithPriority()
+            throws InvalidImageException, IOException, InterruptedException,
+            TimeoutException {
+        final ThumbnailCreator creator = ThumbnailCreator.getInstance();
+
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png");
+        final File thumb = new File(FOLDER, "priority.png");
+
+        final LatencyHistogram waitHistogram = creator.getWaitHistogram(
+                ThumbnailPriority.INTERACTIVE);
+        final LatencyHistogram latencyHistogram = creator.getLatencyHistogram(
+                ThumbnailPriority.INTERACTIVE);
+        final LatencyHistogram serviceHistogram = creator.getServiceHistogram(
+                ThumbnailPriority.INTERACTIVE);
+        final long waitCount = waitHistogram.getCount();
+        final long latencyCount = latencyHistogram.getCount();
+        final long serviceCount = serviceHistogram.getCount();
+
+        creator.generateAndSaveThumbnail(f, null, thumb, 64, 64,
+                ThumbnailFormat.PNG, ThumbnailPriority.INTERACTIVE, "tenant",
+                null);
+        final ImageReaderResult readerResult =
+                ImageReader.getInstance().readImage(thumb);
+        assertEquals(64, readerResult.getMetadata().getWidth());
+        assertEquals(64, readerResult.getMetadata().getHeight());
+
+        assertEquals(waitCount + 1, waitHistogram.getCount());
+        assertEquals(latencyCount + 1, latencyHistogram.getCount());
+        assertTrue(latencyHistogram.getMax() > 0);
+        assertEquals(serviceCount + 1, serviceHistogram.getCount());
+        assertTrue(serviceHistogram.getMax() > 0);
+        assertTrue(serviceHistogram.getTotal() <= latencyHistogram.getTotal());
+        assertEquals(0, creator.getRunningCount());
+        assertEquals(0, creator.getWaitingCount());
+
+        // Force IllegalArgumentException
+        try {
+            creator.generateAndSaveThumbnail(f, null, thumb, 64, 64,
+                    ThumbnailFormat.PNG, null, null, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+
+        // delete generated thumbnail file
+        //noinspection ResultOfMethodCallIgnored
+        thumb.delete();
+    }
+
+    private static Thread createThread(final ThumbnailCreator creator,
+                                       final File f, final File thumb,
+                                       final CancellationToken token,
+                                       final AtomicReference<Throwable> error) {
+        return new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    creator.generateAndSaveThumbnail(f, null, thumb, 512, 512,
+                            ThumbnailFormat.JPEG, token);
+                } catch (final Throwable t) {
+                    error.set(t);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testMetricsListener() throws IOException, InterruptedException,
+            TimeoutException {
+        final ThumbnailCreator creator = new ThumbnailCreator.Builder()
+                .build();
+        assertSame(NoOpMetricsListener.INSTANCE, creator.getMetricsListener());
+
+        final AtomicReference<ThumbnailDetails> details =
+                new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final MetricsListener listener = new MetricsListener() {
+            @Override
+            public void onImageRead(final File file,
+                                    final ImageReaderResult result,
+                                    final StageTimings<ReadStage> t,
+                                    final Throwable e) {
+                fail("No image must be read");
+            }
+
+            @Override
+            public void onThumbnailGenerated(final ThumbnailDetails d,
+                                             final Throwable e) {
+                details.set(d);
+                error.set(e);
+            }
+        };
+        creator.setMetricsListener(listener);
+        assertSame(listener, creator.getMetricsListener());
+
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/rotate2.jpg");
+        creator.generateAndSaveThumbnail(f, ImageOrientation.RIGHT_TOP,
+                new File(FOLDER, "metrics.jpg"), 64, 32, ThumbnailFormat.JPEG);
+        assertNull(error.get());
+        final ThumbnailDetails d = details.get();
+        assertEquals(f, d.getInputImageFile());
+        assertEquals(ImageOrientation.RIGHT_TOP, d.getInputOrientation());
+        assertEquals(new File(FOLDER, "metrics.jpg"),
+                d.getGeneratedThumbnailFile());
+        assertEquals(64, d.getWidth());
+        assertEquals(32, d.getHeight());
+        assertEquals(ThumbnailFormat.JPEG, d.getFormat());
+        assertEquals(ThumbnailPriority.NORMAL, d.getPriority());
+        assertNull(d.getTenant());
+        assertEquals(f.length(), d.getInputLength());
+        assertTrue(d.getInputWidth() > 0);
+        assertTrue(d.getInputHeight() > 0);
+        assertEquals(new File(FOLDER, "metrics.jpg").length(),
+                d.getThumbnailLength());
+        assertNotNull(d.toString());
+        for (final ThumbnailStage stage : ThumbnailStage.values()) {
+            if (stage != ThumbnailStage.QUEUE_WAIT) {
+                assertTrue(d.getTimings().getNanos(stage) > 0);
+            }
+        }
+        assertEquals(ImageFormat.JPEG, d.getInputFormat());
+        assertTrue(d.getTimings().getTotalNanos() <=
+                creator.getLatencyHistogram(ThumbnailPriority.NORMAL)
+                        .getTotal());
+
+        // input file is fully read into a pooled buffer when pooling is
+        // enabled, instead of being streamed to its reader
+        creator.setBufferPoolingEnabled(true);
+        creator.generateAndSaveThumbnail(f, ImageOrientation.RIGHT_TOP,
+                new File(FOLDER, "metrics.jpg"), 64, 32, ThumbnailFormat.JPEG);
+        final ThumbnailDetails pooled = details.get();
+        assertEquals(f.length(), pooled.getInputLength());
+        assertEquals(ImageFormat.JPEG, pooled.getInputFormat());
+        assertTrue(pooled.getTimings().getNanos(ThumbnailStage.IO) > 0);
+        assertTrue(pooled.getTimings().getNanos(ThumbnailStage.DECODE) > 0);
+        creator.setBufferPoolingEnabled(false);
+
+        // failures are also notified
+        try {
+            creator.generateAndSaveThumbnail(new File(FOLDER, "missing.jpg"),
+                    null, new File(FOLDER, "metrics2.jpg"), 64, 64,
+                    ThumbnailFormat.JPEG);
+            fail("IOException expected but not thrown");
+        } catch (final IOException e) {
+            assertSame(e, error.get());
+        }
+        assertEquals(0, details.get().getTimings().getNanos(
+                ThumbnailStage.DECODE));
+        assertEquals(0, details.get().getInputLength());
+
+        // Force IllegalArgumentException
+        try {
+            creator.setMetricsListener(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ThumbnailCreator.Builder().setMetricsListener(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testMetrics() throws IOException, InterruptedException,
+            TimeoutException {
+        final ThumbnailCreator creator = new ThumbnailCreator.Builder()
+                .setMaxConcurrentThreads(2).build();
+        final OperationMetrics<ThumbnailFormat> metrics = creator.getMetrics();
+        assertSame(metrics, creator.getMetrics());
+        assertEquals("ThumbnailCreator", metrics.getType());
+
+        final File f = new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png");
+        final File jpeg = new File(FOLDER, "metrics.jpg");
+        final File png = new File(FOLDER, "metrics.png");
+        creator.generateAndSaveThumbnail(f, null, jpeg, 32, 32,
+                ThumbnailFormat.JPEG);
+        creator.generateAndSaveThumbnail(f, null, png, 32, 32,
+                ThumbnailFormat.PNG);
+
+        // failures are classified by cause
+        try {
+            creator.generateAndSaveThumbnail(new File(FOLDER, "missing.jpg"),
+                    null, new File(FOLDER, "metrics2.jpg"), 64, 64,
+                    ThumbnailFormat.JPEG);
+            fail("IOException expected but not thrown");
+        } catch (final IOException ignore) {
+        }
+
+        // cancellations are not failures
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            creator.generateAndSaveThumbnail(f, null,
+                    new File(FOLDER, "metrics3.jpg"), 32, 32,
+                    ThumbnailFormat.JPEG, ThumbnailPriority.NORMAL, null,
+                    token);
+            fail("CancellationException expected but not thrown");
+        } catch (final CancellationException ignore) {
+        }
+
+        final OperationSnapshot snapshot = metrics.getSnapshot();
+        assertEquals(3, snapshot.getOperationCount());
+        assertEquals(1, snapshot.getFailureCount());
+        assertEquals(1, snapshot.getIOFailureCount());
+        assertEquals(2 * f.length(), snapshot.getBytesRead());
+        assertEquals(jpeg.length() + png.length(), snapshot.getBytesWritten());
+        assertEquals(2, snapshot.getLatency().getCount());
+        assertEquals(1, snapshot.getLatencyByFormat().get("JPEG").getCount());
+        assertEquals(1, snapshot.getLatencyByFormat().get("PNG").getCount());
+
+        final Map<String, Long> gauges = snapshot.getGauges();
+        assertEquals(Long.valueOf(0), gauges.get("runningCount"));
+        assertEquals(Long.valueOf(0), gauges.get("waitingCount"));
+        assertEquals(Long.valueOf(2), gauges.get("maxConcurrentThreads"));
+        assertEquals(Long.valueOf(1), gauges.get("cancelledCount"));
+        assertEquals(Long.valueOf(0), gauges.get("timedOutCount"));
+    }
+
+    @Test
+    public void testBufferPooling() throws InvalidImageException, IOException,
+            InterruptedException, TimeoutException {
+        final ThumbnailCreator creator = new ThumbnailCreator.Builder()
+                .setBufferPoolingEnabled(true).build();
+        assertTrue(creator.isBufferPoolingEnabled());
+        assertFalse(new ThumbnailCreator.Builder().build()
+                .isBufferPoolingEnabled());
+
+        final ThumbnailCreator unpooledCreator =
+                new ThumbnailCreator.Builder().build();
+        unpooledCreator.setBufferPoolingEnabled(true);
+        assertTrue(unpooledCreator.isBufferPoolingEnabled());
+        unpooledCreator.setBufferPoolingEnabled(false);
+        assertFalse(unpooledCreator.isBufferPoolingEnabled());
+
+        final String[] names = {"rotate1.jpg", "rotate2.jpg", "rotate3.jpg",
+                "rotate4.jpg", "Svalbard.bmp", "polo.png"};
+        // generate each thumbnail twice so that pooled buffers are reused
+        for (int i = 0; i < 2; i++) {
+            for (final String name : names) {
+                final File f = new File(
+                        "./src/test/java/com/irurueta/server/commons/image/" +
+                                name);
+                ImageReaderResult readerResult =
+                        ImageReader.getInstance().readImage(f);
+                final ImageOrientation orientation =
+                        readerResult.getMetadata().getOrientation();
+                final int width = readerResult.getMetadata().getWidth() / 5;
+                final int height = readerResult.getMetadata().getHeight() / 5;
+                ThumbnailFormat format = ThumbnailFormat.fromImageFormat(
+                        readerResult.getImageFormat());
+                if (format == ThumbnailFormat.BMP) {
+                    format = ThumbnailFormat.JPEG;
+                }
+
+                final File pooled = new File(FOLDER,
+                        "pooled" + i + name + "." + format.getValue());
+                final File unpooled = new File(FOLDER,
+                        "unpooled" + i + name + "." + format.getValue());
+                creator.generateAndSaveThumbnail(f, orientation, pooled,
+                        width, height, format);
+                unpooledCreator.generateAndSaveThumbnail(f, orientation,
+                        unpooled, width, height, format);
+
+                // check that thumbnail has requested size
+                readerResult = ImageReader.getInstance().readImage(pooled);
+                assertEquals(width, readerResult.getMetadata().getWidth());
+                assertEquals(height, readerResult.getMetadata().getHeight());
+
+                // pooling does not change generated thumbnails
+                assertTrue(Arrays.equals(Files.readAllBytes(unpooled.toPath()),
+                        Files.readAllBytes(pooled.toPath())));
+            }
+        }
+
+        // failures do not prevent further thumbnails from being generated
+        try {
+            creator.generateAndSaveThumbnail(new File(FOLDER, "missing.jpg"),
+                    null, new File(FOLDER, "pooledMissing.jpg"), 64, 64,
+                    ThumbnailFormat.JPEG);
+            fail("IOException expected but not thrown");
+        } catch (final IOException ignore) {
+        }
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            creator.generateAndSaveThumbnail(new File(
+                    "./src/test/java/com/irurueta/server/commons/image/" +
+                            "polo.png"), null,
+                    new File(FOLDER, "pooledCancelled.png"), 32, 32,
+                    ThumbnailFormat.PNG, ThumbnailPriority.NORMAL, null,
+                    token);
+            fail("CancellationException expected but not thrown");
+        } catch (final CancellationException ignore) {
+        }
+        final File thumb = new File(FOLDER, "pooledAfterFailure.png");
+        creator.generateAndSaveThumbnail(new File(
+                        "./src/test/java/com/irurueta/server/commons/image/" +
+                                "polo.png"), null, thumb, 32, 32,
+                ThumbnailFormat.PNG);
+        final ImageReaderResult readerResult =
+                ImageReader.getInstance().readImage(thumb);
+        assertEquals(32, readerResult.getMetadata().getWidth());
+        assertEquals(32, readerResult.getMetadata().getHeight());
+    }
+
+    @Test
+    public void testOffHeapDecoding() throws InvalidImageException,
+            IOException, InterruptedException, TimeoutException {
+        final ThumbnailCreator creator = new ThumbnailCreator.Builder()
+                .setOffHeapDecodingEnabled(true).build();
+        assertTrue(creator.isOffHeapDecodingEnabled());
+        assertFalse(creator.isBufferPoolingEnabled());
+        assertFalse(new ThumbnailCreator.Builder().build()
+                .isOffHeapDecodingEnabled());
+
+        final ThumbnailCreator pooledCreator = new ThumbnailCreator.Builder()
+                .setBufferPoolingEnabled(true).build();
+        pooledCreator.setOffHeapDecodingEnabled(true);
+        assertTrue(pooledCreator.isOffHeapDecodingEnabled());
+
+        final ThumbnailCreator heapCreator =
+                new ThumbnailCreator.Builder().build();
+
+        final String[] names = {"rotate1.jpg", "rotate2.jpg", "rotate3.jpg",
+                "rotate4.jpg", "Svalbard.bmp", "polo.png"};
+        for (final String name : names) {
+            final File f = new File(
+                    "./src/test/java/com/irurueta/server/commons/image/" +
+                            name);
+            ImageReaderResult readerResult =
+                    ImageReader.getInstance().readImage(f);
+            final ImageOrientation orientation =
+                    readerResult.getMetadata().getOrientation();
+            final int width = readerResult.getMetadata().getWidth() / 5;
+            final int height = readerResult.getMetadata().getHeight() / 5;
+            ThumbnailFormat format = ThumbnailFormat.fromImageFormat(
+                    readerResult.getImageFormat());
+            if (format == ThumbnailFormat.BMP) {
+                format = ThumbnailFormat.JPEG;
+            }
+
+            final File offHeap = new File(FOLDER,
+                    "offHeap" + name + "." + format.getValue());
+            final File pooledOffHeap = new File(FOLDER,
+                    "pooledOffHeap" + name + "." + format.getValue());
+            final File heap = new File(FOLDER,
+                    "heap" + name + "." + format.getValue());
+            creator.generateAndSaveThumbnail(f, orientation, offHeap,
+                    width, height, format);
+            pooledCreator.generateAndSaveThumbnail(f, orientation,
+                    pooledOffHeap, width, height, format);
+            heapCreator.generateAndSaveThumbnail(f, orientation, heap,
+                    width, height, format);
+
+            // check that thumbnail has requested size
+            readerResult = ImageReader.getInstance().readImage(offHeap);
+            assertEquals(width, readerResult.getMetadata().getWidth());
+            assertEquals(height, readerResult.getMetadata().getHeight());
+
+            // off-heap decoding does not change generated thumbnails
+            final byte[] expected = Files.readAllBytes(heap.toPath());
+            assertTrue(Arrays.equals(expected,
+                    Files.readAllBytes(offHeap.toPath())));
+            assertTrue(Arrays.equals(expected,
+                    Files.readAllBytes(pooledOffHeap.toPath())));
+        }
+
+        // off-heap memory is also freed when generation fails
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            creator.generateAndSaveThumbnail(new File(
+                            "./src/test/java/com/irurueta/server/commons/image/" +
+                                    "batllo1.jpg"), null,
+                    new File(FOLDER, "offHeapCancelled.jpg"), 32, 32,
+                    ThumbnailFormat.JPEG, ThumbnailPriority.NORMAL, null,
+                    token);
+            fail("CancellationException expected but not thrown");
+        } catch (final CancellationException ignore) {
+        }
+        try {
+            creator.generateAndSaveThumbnail(new File(
+                            "./src/test/java/com/irurueta/server/commons/image/" +
+                                    "polo.png"), null,
+                    new File(FOLDER, "offHeapLarger.png"), 100000, 1,
+                    ThumbnailFormat.PNG);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testTranslucentThumbnails() throws IOException,
+            InterruptedException {
+        // a random image with all levels of alpha
+        final Random random = new Random(1);
+        final BufferedImage randomImage = new BufferedImage(301, 203,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < randomImage.getHeight(); y++) {
+            for (int x = 0; x < randomImage.getWidth(); x++) {
+                randomImage.setRGB(x, y, random.nextInt());
+            }
+        }
+        final File randomFile = new File(FOLDER, "translucent.png");
+        ImageIO.write(randomImage, "png", randomFile);
+
+        final File[] files = {new File(
+                "./src/test/java/com/irurueta/server/commons/image/polo.png"),
+                randomFile};
+        final ThumbnailCreator creator = ThumbnailCreator.getInstance();
+        final ThumbnailCreator pooledCreator = new ThumbnailCreator.Builder()
+                .setBufferPoolingEnabled(true).build();
+        for (final File f : files) {
+            final BufferedImage input = ImageIO.read(f);
+            for (final int divisor : new int[]{1, 2, 3, 7}) {
+                final int width = input.getWidth() / divisor;
+                final int height = input.getHeight() / divisor;
+
+                // thumbnails are the same as the ones obtained by drawing
+                // images scaled by area averaging, including colors of
+                // pixels having low alpha
+                final Image scaled = input.getScaledInstance(width, height,
+                        Image.SCALE_AREA_AVERAGING);
+                final BufferedImage expected = new BufferedImage(width,
+                        height, BufferedImage.TYPE_INT_ARGB);
+                final Graphics2D graphics = expected.createGraphics();
+                graphics.drawImage(scaled, 0, 0, width, height, null);
+                graphics.dispose();
+
+                final File thumb = new File(FOLDER,
+                        "translucent" + divisor + f.getName());
+                creator.generateAndSaveThumbnail(f, null, thumb, width, height,
+                        ThumbnailFormat.PNG);
+                assertSamePixels(expected, ImageIO.read(thumb));
+
+                final File pooledThumb = new File(FOLDER,
+                        "translucentPooled" + divisor + f.getName());
+                pooledCreator.generateAndSaveThumbnail(f, null, pooledThumb,
+                        width, height, ThumbnailFormat.PNG);
+                assertSamePixels(expected, ImageIO.read(pooledThumb));
+            }
+        }
+    }
+
+    private static void assertSamePixels(final BufferedImage expected,
+                                         final BufferedImage image) {
+        assertEquals(expected.getWidth(), image.getWidth());
+        assertEquals(expected.getHeight(), image.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailGateTest {
+
+    @Test
+    public void testAcquireAndRelease() throws InterruptedException,
+            TimeoutException {
+        final ThumbnailGate gate = new ThumbnailGate(2);
+        assertEquals(2, gate.getMaxPermits());
+        assertEquals(0, gate.getUsedPermits());
+        assertEquals(0, gate.getWaiting());
+
+        gate.acquire(ThumbnailPriority.NORMAL, null, null);
+        gate.acquire(ThumbnailPriority.BATCH, "tenant", null);
+        assertEquals(2, gate.getUsedPermits());
+
+        gate.release();
+        gate.release();
+        assertEquals(0, gate.getUsedPermits());
+    }
+
+    @Test
+    public void testPriorityOrder() throws InterruptedException,
+            TimeoutException {
+        final ThumbnailGate gate = new ThumbnailGate(1);
+        gate.acquire(ThumbnailPriority.NORMAL, null, null);
+
+        final List<String> order = Collections.synchronizedList(
+                new ArrayList<String>());
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(startWaiter(gate, ThumbnailPriority.BATCH, null,
+                    "B" + i, order));
+        }
+        for (int i = 0; i < 4; i++) {
+            threads.add(startWaiter(gate, ThumbnailPriority.INTERACTIVE, null,
+                    "I" + i, order));
+        }
+        assertEquals(8, gate.getWaiting());
+
+        gate.release();
+        for (final Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        // interactive requests go ahead of batch ones, but batch requests
+        // still get their share of slots
+        assertEquals(Arrays.asList("I0", "B0", "I1", "I2", "I3", "B1", "B2",
+                "B3"), order);
+        assertEquals(0, gate.getWaiting());
+        assertEquals(0, gate.getUsedPermits());
+    }
+
+    @Test
+    public void testTenantOrder() throws InterruptedException,
+            TimeoutException {
+        final ThumbnailGate gate = new ThumbnailGate(1);
+        gate.acquire(ThumbnailPriority.NORMAL, null, null);
+
+        final List<String> order = Collections.synchronizedList(
+                new ArrayList<String>());
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            threads.add(startWaiter(gate, ThumbnailPriority.NORMAL, "a",
+                    "a" + i, order));
+        }
+        threads.add(startWaiter(gate, ThumbnailPriority.NORMAL, "b", "b0",
+                order));
+        threads.add(startWaiter(gate, ThumbnailPriority.NORMAL, null, "c0",
+                order));
+
+        gate.release();
+        for (final Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        // tenants are served in round-robin order
+        assertEquals(Arrays.asList("a0", "b0", "c0", "a1", "a2"), order);
+    }
+
+    @Test
+    public void testCancelWhileWaiting() throws InterruptedException,
+            TimeoutException {
+        final ThumbnailGate gate = new ThumbnailGate(1);
+        gate.acquire(ThumbnailPriority.NORMAL, null, null);
+
+        final CancellationToken token = new CancellationToken();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.acquire(ThumbnailPriority.BATCH, null, token);
+                } catch (final Throwable t) {
+                    error.set(t);
+                }
+            }
+        });
+        thread.start();
+        waitForWaiting(gate, 1);
+
+        token.cancel();
+        thread.join(10000);
+        assertTrue(error.get() instanceof CancellationException);
+        assertEquals(0, gate.getWaiting());
+        assertEquals(1, gate.getUsedPermits());
+
+        // a timed out request is abandoned
+        try {
+            gate.acquire(ThumbnailPriority.INTERACTIVE, null,
+                    new CancellationToken(10, TimeUnit.MILLISECONDS));
+            fail("TimeoutException expected but not thrown");
+        } catch (final TimeoutException ignore) {
+        }
+        assertEquals(0, gate.getWaiting());
+
+        gate.release();
+        assertEquals(0, gate.getUsedPermits());
+    }
+
+    @Test
+    public void testSetMaxPermits() throws InterruptedException,
+            TimeoutException {
+        final ThumbnailGate gate = new ThumbnailGate(1);
+        gate.acquire(ThumbnailPriority.NORMAL, null, null);
+
+        final List<String> order = Collections.synchronizedList(
+                new ArrayList<String>());
+        final Thread thread = startWaiter(gate, ThumbnailPriority.NORMAL, null,
+                "n0", order);
+
+        // increasing maximum grants waiting requests
+        gate.setMaxPermits(2);
+        thread.join(10000);
+        assertEquals(Collections.singletonList("n0"), order);
+        assertEquals(2, gate.getMaxPermits());
+
+        gate.release();
+        assertEquals(0, gate.getUsedPermits());
+    }
+
+    private static Thread startWaiter(final ThumbnailGate gate,
+                                      final ThumbnailPriority priority,
+                                      final String tenant, final String name,
+                                      final List<String> order)
+            throws InterruptedException {
+        final int waiting = gate.getWaiting();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.acquire(priority, tenant, null);
+                    order.add(name);
+                    gate.release();
+                } catch (final Exception ignore) {
+                }
+            }
+        });
+        thread.start();
+        waitForWaiting(gate, waiting + 1);
+        return thread;
+    }
+
+    private static void waitForWaiting(final ThumbnailGate gate,
+                                       final int waiting)
+            throws InterruptedException {
+        while (gate.getWaiting() < waiting) {
+            Thread.sleep(1);
+        }
+    }
+}
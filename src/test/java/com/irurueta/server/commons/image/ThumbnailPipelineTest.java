@@ -0,0 +1,373 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailPipelineTest {
+
+    private static final String FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/tmpPipeline/";
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    @BeforeClass
+    public static void setUpClass() {
+        //create folder for generated thumbnails
+        final File folder = new File(FOLDER);
+        //noinspection ResultOfMethodCallIgnored
+        folder.mkdirs();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        //remove any remaining files in thumbnails folder
+        final File folder = new File(FOLDER);
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+        //delete created folder
+        //noinspection ResultOfMethodCallIgnored
+        folder.delete();
+    }
+
+    @Test
+    public void testConstructor() throws IOException {
+        final ThumbnailPipeline pipeline = new ThumbnailPipeline();
+        assertFalse(pipeline.isClosed());
+        assertEquals(0, pipeline.getReadQueueSize());
+        assertEquals(0, pipeline.getDecodeQueueSize());
+        assertEquals(0, pipeline.getScaleQueueSize());
+        assertEquals(0, pipeline.getEncodeQueueSize());
+        assertEquals(0, pipeline.getWriteQueueSize());
+        pipeline.close();
+        assertTrue(pipeline.isClosed());
+
+        // Force IllegalArgumentException
+        try {
+            new ThumbnailPipeline(0, 1, 1, 1, 1, 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ThumbnailPipeline(1, 1, 1, 1, 1, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testSubmit() throws InvalidImageException, IOException,
+            InterruptedException, ExecutionException {
+        final String[] names = {"batllo1.jpg", "abishek.jpg", "rotate1.jpg",
+                "rotate2.jpg", "rotate3.jpg", "rotate4.jpg", "Svalbard.bmp",
+                "polo.png"};
+
+        // use a single slot queues to force backpressure between stages
+        final ThumbnailPipeline pipeline = new ThumbnailPipeline(1, 2, 2, 1, 1,
+                1);
+        final ThumbnailJob[] jobs = new ThumbnailJob[names.length];
+        final int[] widths = new int[names.length];
+        final int[] heights = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            final File f = new File(IMAGES_FOLDER, names[i]);
+            final ImageReaderResult readerResult =
+                    ImageReader.getInstance().readImage(f);
+            final ImageMetadata metadata = readerResult.getMetadata();
+            widths[i] = metadata.getWidth() / 8;
+            heights[i] = metadata.getHeight() / 8;
+            ThumbnailFormat format = ThumbnailFormat.fromImageFormat(
+                    readerResult.getImageFormat());
+            if (format == ThumbnailFormat.BMP) {
+                format = ThumbnailFormat.JPEG;
+            }
+
+            jobs[i] = pipeline.submit(f, metadata.getOrientation(),
+                    new File(FOLDER, "thumbnail" + i + "." + format.getValue()),
+                    widths[i], heights[i], format);
+        }
+
+        for (int i = 0; i < names.length; i++) {
+            final File thumb = jobs[i].get();
+            assertFalse(jobs[i].isCancelled());
+            assertTrue(jobs[i].isDone());
+            assertNull(jobs[i].getError());
+
+            // check that thumbnail has requested size
+            final ImageReaderResult readerResult =
+                    ImageReader.getInstance().readImage(thumb);
+            assertEquals(widths[i], readerResult.getMetadata().getWidth());
+            assertEquals(heights[i], readerResult.getMetadata().getHeight());
+        }
+
+        assertEquals(names.length, pipeline.getCompletedCount());
+
+        pipeline.close();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Force IllegalStateException
+        try {
+            pipeline.submit(new File(IMAGES_FOLDER, names[0]), null,
+                    new File(FOLDER, "closed.jpg"), 1, 1, ThumbnailFormat.JPEG);
+            fail("IllegalStateException expected but not thrown");
+        } catch (final IllegalStateException ignore) {
+        }
+    }
+
+    @Test
+    public void testSubmitFailures() throws InterruptedException, IOException {
+        final ThumbnailPipeline pipeline = new ThumbnailPipeline();
+
+        // Force IllegalArgumentException
+        try {
+            pipeline.submit(new File(IMAGES_FOLDER, "polo.png"), null,
+                    new File(FOLDER, "failure.png"), -1, 1,
+                    ThumbnailFormat.PNG);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+
+        // a thumbnail larger than the original fails
+        final ThumbnailJob largerJob = pipeline.submit(
+                new File(IMAGES_FOLDER, "polo.png"), null,
+                new File(FOLDER, "failure.png"), 100000, 1,
+                ThumbnailFormat.PNG);
+        try {
+            largerJob.get();
+            fail("ExecutionException expected but not thrown");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+
+        // a missing file fails
+        final ThumbnailJob missingJob = pipeline.submit(
+                new File(FOLDER, "missing.jpg"), null,
+                new File(FOLDER, "failure.jpg"), 1, 1, ThumbnailFormat.JPEG);
+        try {
+            missingJob.get(10, TimeUnit.SECONDS);
+            fail("ExecutionException expected but not thrown");
+        } catch (final Exception e) {
+            assertTrue(e instanceof ExecutionException);
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertFalse(missingJob.isCancelled());
+        assertEquals(2, pipeline.getFailedCount());
+
+        pipeline.close();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException, IOException {
+        // use a single thread per stage so that jobs remain queued
+        final ThumbnailPipeline pipeline = new ThumbnailPipeline(1, 1, 1, 1, 1,
+                4);
+        final File f = new File(IMAGES_FOLDER, "batllo1.jpg");
+        final ThumbnailJob[] jobs = new ThumbnailJob[4];
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] = pipeline.submit(f, null,
+                    new File(FOLDER, "cancel" + i + ".jpg"), 512, 512,
+                    ThumbnailFormat.JPEG);
+        }
+
+        // cancel all jobs, either queued or being processed
+        for (final ThumbnailJob job : jobs) {
+            assertTrue(job.cancel(true));
+            assertTrue(job.isCancelled());
+            assertTrue(job.isDone());
+            assertTrue(job.getToken().isCancelled());
+
+            // cancelling again has no effect
+            assertFalse(job.cancel(true));
+
+            try {
+                job.get();
+                fail("CancellationException expected but not thrown");
+            } catch (final CancellationException ignore) {
+            } catch (final ExecutionException e) {
+                fail("CancellationException expected but not thrown");
+            }
+        }
+        assertEquals(jobs.length, pipeline.getCancelledCount());
+
+        // cancelling a token cancels its job
+        final CancellationToken token = new CancellationToken();
+        final ThumbnailJob job = pipeline.submit(f, null,
+                new File(FOLDER, "cancelToken.jpg"), 512, 512,
+                ThumbnailFormat.JPEG, token);
+        token.cancel();
+        assertTrue(job.isCancelled());
+        assertEquals(jobs.length + 1, pipeline.getCancelledCount());
+
+        pipeline.close();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, pipeline.getCompletedCount());
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException, IOException {
+        final ThumbnailPipeline pipeline = new ThumbnailPipeline();
+        final ThumbnailJob job = pipeline.submit(
+                new File(IMAGES_FOLDER, "batllo1.jpg"), null,
+                new File(FOLDER, "timeout.jpg"), 512, 512, ThumbnailFormat.JPEG,
+                0, TimeUnit.NANOSECONDS);
+        try {
+            job.get();
+            fail("ExecutionException expected but not thrown");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertFalse(job.isCancelled());
+        assertEquals(1, pipeline.getTimedOutCount());
+
+        pipeline.close();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutWhileQueued() throws InterruptedException,
+            IOException, ExecutionException {
+        // use a single thread and slot per stage so that jobs remain queued
+        final ThumbnailPipeline pipeline = new ThumbnailPipeline(1, 1, 1, 1, 1,
+                1);
+        final File f = new File(IMAGES_FOLDER, "batllo1.jpg");
+        final ThumbnailJob[] jobs = new ThumbnailJob[4];
+        for (int i = 0; i < jobs.length - 1; i++) {
+            jobs[i] = pipeline.submit(f, null,
+                    new File(FOLDER, "queued" + i + ".jpg"), 512, 512,
+                    ThumbnailFormat.JPEG);
+        }
+
+        // job expires while waiting in read queue behind previous jobs
+        final ThumbnailJob job = pipeline.submit(f, null,
+                new File(FOLDER, "queuedTimeout.jpg"), 512, 512,
+                ThumbnailFormat.JPEG, 10, TimeUnit.MILLISECONDS);
+        try {
+            job.get();
+            fail("ExecutionException expected but not thrown");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, pipeline.getTimedOutCount());
+
+        // expired job no longer keeps its slot in read queue
+        assertEquals(0, pipeline.getReadQueueSize());
+        jobs[jobs.length - 1] = pipeline.submit(f, null,
+                new File(FOLDER, "queued" + (jobs.length - 1) + ".jpg"), 512,
+                512, ThumbnailFormat.JPEG);
+
+        for (final ThumbnailJob j : jobs) {
+            assertTrue(j.get().exists());
+        }
+        assertEquals(jobs.length, pipeline.getCompletedCount());
+        assertEquals(1, pipeline.getTimedOutCount());
+        assertEquals(0, pipeline.getFailedCount());
+
+        pipeline.close();
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSubmitWhileFull() throws InterruptedException,
+            IOException {
+        // use a single thread and slot per stage so that pipeline gets full
+        final ThumbnailPipeline pipeline = new ThumbnailPipeline(1, 1, 1, 1, 1,
+                1);
+        final File f = new File(IMAGES_FOLDER, "batllo1.jpg");
+        for (int i = 0; i < 4; i++) {
+            pipeline.submit(f, null, new File(FOLDER, "full" + i + ".jpg"),
+                    512, 512, ThumbnailFormat.JPEG);
+        }
+
+        // cancelling a job releases its submitter while waiting for room
+        final CancellationToken token = new CancellationToken();
+        final AtomicReference<Object> cancelled = new AtomicReference<>();
+        final Thread cancelledSubmitter = startSubmitter(pipeline, f,
+                "fullCancelled.jpg", token, cancelled);
+        waitUntilBlocked(cancelledSubmitter);
+        token.cancel();
+        cancelledSubmitter.join(5000);
+        assertFalse(cancelledSubmitter.isAlive());
+        assertTrue(((ThumbnailJob) cancelled.get()).isCancelled());
+
+        // closing the pipeline is not blocked by a waiting submitter, which
+        // fails since its job is not accepted
+        final AtomicReference<Object> rejected = new AtomicReference<>();
+        final Thread rejectedSubmitter = startSubmitter(pipeline, f,
+                "fullRejected.jpg", new CancellationToken(), rejected);
+        waitUntilBlocked(rejectedSubmitter);
+        pipeline.close();
+        rejectedSubmitter.join(5000);
+        assertFalse(rejectedSubmitter.isAlive());
+        assertTrue(rejected.get() instanceof IllegalStateException);
+
+        assertTrue(pipeline.awaitTermination(10, TimeUnit.SECONDS));
+        // any job queued before the cancelled one shares its token
+        assertTrue(pipeline.getCancelledCount() >= 1);
+        assertEquals(0, pipeline.getFailedCount());
+    }
+
+    private static Thread startSubmitter(final ThumbnailPipeline pipeline,
+                                         final File f, final String name,
+                                         final CancellationToken token,
+                                         final AtomicReference<Object> result) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // keep submitting until a job is cancelled or rejected
+                    ThumbnailJob job;
+                    do {
+                        job = pipeline.submit(f, null, new File(FOLDER, name),
+                                512, 512, ThumbnailFormat.JPEG, token);
+                    } while (!job.isCancelled());
+                    result.set(job);
+                } catch (final Throwable t) {
+                    result.set(t);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void waitUntilBlocked(final Thread thread)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() +
+                TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING &&
+                System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
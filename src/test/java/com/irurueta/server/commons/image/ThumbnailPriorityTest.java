@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailPriorityTest {
+
+    @Test
+    public void testGetWeight() {
+        assertEquals(16, ThumbnailPriority.INTERACTIVE.getWeight());
+        assertEquals(4, ThumbnailPriority.NORMAL.getWeight());
+        assertEquals(1, ThumbnailPriority.BATCH.getWeight());
+    }
+}
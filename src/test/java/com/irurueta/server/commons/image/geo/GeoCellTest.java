@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoCellTest {
+
+    @Test
+    public void testEncode() {
+        // level 0 cell covers the whole world
+        final long root = GeoCell.encode(41.39, 2.16, 0);
+        assertEquals(1L << 60, root);
+        assertEquals(0, GeoCell.getLevel(root));
+        assertEquals(-90.0, GeoCell.getMinLatitude(root), 0.0);
+        assertEquals(90.0, GeoCell.getMaxLatitude(root), 0.0);
+        assertEquals(-180.0, GeoCell.getMinLongitude(root), 0.0);
+        assertEquals(180.0, GeoCell.getMaxLongitude(root), 0.0);
+
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final double latitude = -90.0 + 180.0 * random.nextDouble();
+            final double longitude = -180.0 + 360.0 * random.nextDouble();
+            final int level = random.nextInt(GeoCell.MAX_LEVEL + 1);
+            final long id = GeoCell.encode(latitude, longitude, level);
+            assertTrue(id > 0);
+            assertTrue(GeoCell.isValid(id));
+            assertEquals(level, GeoCell.getLevel(id));
+            assertTrue(latitude >= GeoCell.getMinLatitude(id));
+            assertTrue(latitude < GeoCell.getMaxLatitude(id));
+            assertTrue(longitude >= GeoCell.getMinLongitude(id));
+            assertTrue(longitude < GeoCell.getMaxLongitude(id));
+
+            // cells of finer levels are contained in cells of coarser levels
+            final long leaf = GeoCell.encode(latitude, longitude,
+                    GeoCell.MAX_LEVEL);
+            assertTrue(GeoCell.contains(id, leaf));
+            assertEquals(id, GeoCell.getParent(leaf, level));
+            assertTrue(leaf >= GeoCell.getRangeMin(id));
+            assertTrue(leaf <= GeoCell.getRangeMax(id));
+        }
+
+        // poles and antimeridian are within range
+        assertTrue(GeoCell.isValid(GeoCell.encode(90.0, 180.0,
+                GeoCell.MAX_LEVEL)));
+        assertTrue(GeoCell.isValid(GeoCell.encode(-90.0, -180.0,
+                GeoCell.MAX_LEVEL)));
+
+        // Force IllegalArgumentException
+        try {
+            GeoCell.encode(0.0, 0.0, GeoCell.MAX_LEVEL + 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoCell.encode(0.0, 181.0, 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testIsValid() {
+        assertFalse(GeoCell.isValid(0L));
+        assertFalse(GeoCell.isValid(-1L));
+        assertFalse(GeoCell.isValid(2L));
+        assertFalse(GeoCell.isValid(1L << 61));
+        assertTrue(GeoCell.isValid(1L));
+        assertTrue(GeoCell.isValid(4L));
+
+        // Force IllegalArgumentException
+        try {
+            GeoCell.getLevel(2L);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testHierarchy() {
+        final long id = GeoCell.encode(41.39, 2.16, 10);
+        for (int i = 0; i < GeoCell.CHILDREN; i++) {
+            final long child = GeoCell.getChild(id, i);
+            assertEquals(11, GeoCell.getLevel(child));
+            assertEquals(id, GeoCell.getParent(child));
+            assertTrue(GeoCell.contains(id, child));
+            assertFalse(GeoCell.contains(child, id));
+            if (i > 0) {
+                assertTrue(child > GeoCell.getChild(id, i - 1));
+            }
+        }
+        assertEquals(GeoCell.getRangeMin(id),
+                GeoCell.getRangeMin(GeoCell.getChild(id, 0)));
+        assertEquals(GeoCell.getRangeMax(id),
+                GeoCell.getRangeMax(GeoCell.getChild(id, 3)));
+
+        // Force IllegalArgumentException
+        try {
+            GeoCell.getParent(1L << 60);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoCell.getChild(1L, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoCell.getChild(id, 4);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testNeighbors() {
+        final long id = GeoCell.encode(41.39, 2.16, 12);
+        final long[] neighbors = new long[GeoCell.NEIGHBORS];
+        assertEquals(8, GeoCell.neighbors(id, neighbors));
+        final double height = GeoCell.getMaxLatitude(id) -
+                GeoCell.getMinLatitude(id);
+        final double width = GeoCell.getMaxLongitude(id) -
+                GeoCell.getMinLongitude(id);
+
+        // north neighbor is one cell above
+        assertEquals(GeoCell.getCenterLatitude(id) + height,
+                GeoCell.getCenterLatitude(neighbors[0]), 1e-9);
+        assertEquals(GeoCell.getCenterLongitude(id),
+                GeoCell.getCenterLongitude(neighbors[0]), 1e-9);
+        // east neighbor is one cell to the right
+        assertEquals(GeoCell.getCenterLongitude(id) + width,
+                GeoCell.getCenterLongitude(neighbors[2]), 1e-9);
+
+        // neighbors wrap around the antimeridian
+        final long east = GeoCell.encode(0.1, 179.999, 12);
+        final long west = GeoCell.encode(0.1, -179.999, 12);
+        assertEquals(west, GeoCell.neighbor(east, 0, 1));
+
+        // there are no neighbors beyond the poles
+        final long south = GeoCell.encode(-90.0, 0.0, 5);
+        assertEquals(GeoCell.NONE, GeoCell.neighbor(south, -1, 0));
+        assertEquals(5, GeoCell.neighbors(south, neighbors));
+
+        // at level 0 the only cell has no neighbors
+        assertEquals(0, GeoCell.neighbors(1L << 60, neighbors));
+    }
+
+    @Test
+    public void testCover() {
+        final Random random = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            final double lat1 = -90.0 + 180.0 * random.nextDouble();
+            final double lat2 = lat1 + (90.0 - lat1) *
+                    Math.pow(random.nextDouble(), 4.0);
+            final double lon1 = -180.0 + 360.0 * random.nextDouble();
+            final double lon2 = lon1 + 10.0 * Math.pow(random.nextDouble(),
+                    4.0) > 180.0 ? -175.0 : lon1 + 10.0 * random.nextDouble();
+            final int maxCells = 1 + random.nextInt(64);
+            final long[] cells = GeoCell.cover(lat1, lon1, lat2,
+                    Math.min(lon2, 180.0), maxCells);
+            assertTrue(cells.length >= 1);
+            assertTrue(cells.length <= maxCells);
+
+            // cells are sorted and their ranges are disjoint
+            for (int j = 1; j < cells.length; j++) {
+                assertTrue(GeoCell.getRangeMax(cells[j - 1]) <
+                        GeoCell.getRangeMin(cells[j]));
+            }
+
+            // any location within box is covered by exactly one cell
+            for (int j = 0; j < 100; j++) {
+                final double lat = lat1 + (lat2 - lat1) * random.nextDouble();
+                double lon = lon1 <= lon2 ?
+                        lon1 + (Math.min(lon2, 180.0) - lon1) *
+                                random.nextDouble() :
+                        lon1 + (lon2 + 360.0 - lon1) * random.nextDouble();
+                if (lon > 180.0) {
+                    lon -= 360.0;
+                }
+                final long leaf = GeoCell.encode(lat, lon, GeoCell.MAX_LEVEL);
+                int covering = 0;
+                for (final long cell : cells) {
+                    if (GeoCell.contains(cell, leaf)) {
+                        covering++;
+                    }
+                }
+                assertEquals(1, covering);
+            }
+        }
+
+        // covering the whole world with many cells merges them into the root
+        assertArrayEquals(new long[]{1L << 60}, GeoCell.cover(-90.0, -180.0,
+                90.0, 180.0, 100));
+
+        // Force IllegalArgumentException
+        try {
+            GeoCell.cover(0.0, 0.0, 1.0, 1.0, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
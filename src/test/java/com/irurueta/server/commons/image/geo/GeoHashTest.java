@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoHashTest {
+
+    private static final double ABSOLUTE_ERROR = 1e-9;
+
+    @Test
+    public void testEncode() {
+        // known values
+        assertEquals("u4pruydqqvj", GeoHash.encodeToString(57.64911, 10.40744,
+                11));
+        assertEquals("ezs42", GeoHash.encodeToString(42.605, -5.603, 5));
+        assertEquals("s", GeoHash.encodeToString(0.1, 0.1, 1));
+        assertEquals("7zzzzzzz", GeoHash.encodeToString(-0.000001,
+                -0.000001, 8));
+
+        // encoding into an array does not create strings
+        final char[] chars = new char[8];
+        assertEquals(5, GeoHash.encode(42.605, -5.603, 5, chars, 2));
+        assertEquals("ezs42", new String(chars, 2, 5));
+
+        // Force IllegalArgumentException
+        try {
+            GeoHash.encode(91.0, 0.0, 5);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoHash.encode(0.0, 0.0, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoHash.encode(0.0, 0.0, GeoHash.MAX_PRECISION + 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testParseAndToString() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final double latitude = -90.0 + 180.0 * random.nextDouble();
+            final double longitude = -180.0 + 360.0 * random.nextDouble();
+            final int precision = 1 + random.nextInt(GeoHash.MAX_PRECISION);
+            final long hash = GeoHash.encode(latitude, longitude, precision);
+            final String string = GeoHash.toString(hash, precision);
+            assertEquals(precision, string.length());
+            assertEquals(hash, GeoHash.parse(string));
+            assertEquals(hash, GeoHash.parse(string.toUpperCase()));
+
+            // a geohash is a prefix of any geohash with greater precision
+            assertTrue(GeoHash.encodeToString(latitude, longitude,
+                    GeoHash.MAX_PRECISION).startsWith(string));
+            assertEquals(hash, GeoHash.encode(latitude, longitude,
+                    GeoHash.MAX_PRECISION) >>>
+                    (5 * (GeoHash.MAX_PRECISION - precision)));
+        }
+
+        // Force IllegalArgumentException
+        try {
+            GeoHash.parse("ezs4a");
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoHash.parse("");
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoHash.parse(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoHash.toString(1L << 25, 5);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testBounds() {
+        final long hash = GeoHash.parse("ezs42");
+        assertEquals(42.5830078125, GeoHash.getMinLatitude(hash, 5),
+                ABSOLUTE_ERROR);
+        assertEquals(42.626953125, GeoHash.getMaxLatitude(hash, 5),
+                ABSOLUTE_ERROR);
+        assertEquals(-5.625, GeoHash.getMinLongitude(hash, 5),
+                ABSOLUTE_ERROR);
+        assertEquals(-5.5810546875, GeoHash.getMaxLongitude(hash, 5),
+                ABSOLUTE_ERROR);
+        assertEquals(42.60498046875, GeoHash.getCenterLatitude(hash, 5),
+                ABSOLUTE_ERROR);
+        assertEquals(-5.60302734375, GeoHash.getCenterLongitude(hash, 5),
+                ABSOLUTE_ERROR);
+
+        // encoded locations are within bounds of their cell
+        final Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            final double latitude = -90.0 + 180.0 * random.nextDouble();
+            final double longitude = -180.0 + 360.0 * random.nextDouble();
+            final int precision = 1 + random.nextInt(GeoHash.MAX_PRECISION);
+            final long h = GeoHash.encode(latitude, longitude, precision);
+            assertTrue(latitude >= GeoHash.getMinLatitude(h, precision));
+            assertTrue(latitude < GeoHash.getMaxLatitude(h, precision));
+            assertTrue(longitude >= GeoHash.getMinLongitude(h, precision));
+            assertTrue(longitude < GeoHash.getMaxLongitude(h, precision));
+        }
+    }
+
+    @Test
+    public void testNeighbors() {
+        // known neighbors
+        final long hash = GeoHash.parse("ezs42");
+        final long[] neighbors = new long[GeoHash.NEIGHBORS];
+        assertEquals(8, GeoHash.neighbors(hash, 5, neighbors));
+        final String[] expected = {"ezs48", "ezs49", "ezs43", "ezs41",
+                "ezs40", "ezefp", "ezefr", "ezefx"};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], GeoHash.toString(neighbors[i], 5));
+        }
+
+        // neighbors wrap around the antimeridian
+        final long east = GeoHash.encode(0.1, 179.99, 6);
+        final long west = GeoHash.encode(0.1, -179.99, 6);
+        assertEquals(west, GeoHash.neighbor(east, 6, 0, 1));
+        assertEquals(east, GeoHash.neighbor(west, 6, 0, -1));
+
+        // there are no neighbors beyond the poles
+        final long north = GeoHash.encode(90.0, 0.0, 4);
+        assertEquals(GeoHash.NONE, GeoHash.neighbor(north, 4, 1, 0));
+        assertEquals(5, GeoHash.neighbors(north, 4, neighbors));
+
+        // Force IllegalArgumentException
+        try {
+            GeoHash.neighbors(hash, 5, new long[7]);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testCover() {
+        final Random random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            final double lat1 = -90.0 + 180.0 * random.nextDouble();
+            final double lat2 = lat1 + (90.0 - lat1) * random.nextDouble();
+            final double lon1 = -180.0 + 360.0 * random.nextDouble();
+            final double lon2 = -180.0 + 360.0 * random.nextDouble();
+            final int precision = 1 + random.nextInt(3);
+            final long[] cells = GeoHash.cover(lat1, lon1, lat2, lon2,
+                    precision);
+            assertEquals(GeoHash.coverSize(lat1, lon1, lat2, lon2, precision),
+                    cells.length);
+
+            // cells are sorted and any location within box is covered
+            for (int j = 1; j < cells.length; j++) {
+                assertTrue(cells[j - 1] < cells[j]);
+            }
+            for (int j = 0; j < 100; j++) {
+                final double lat = lat1 + (lat2 - lat1) * random.nextDouble();
+                double lon = lon1 <= lon2 ?
+                        lon1 + (lon2 - lon1) * random.nextDouble() :
+                        lon1 + (lon2 + 360.0 - lon1) * random.nextDouble();
+                if (lon > 180.0) {
+                    lon -= 360.0;
+                }
+                assertTrue(Arrays.binarySearch(cells,
+                        GeoHash.encode(lat, lon, precision)) >= 0);
+            }
+        }
+
+        // Force IllegalArgumentException
+        try {
+            GeoHash.cover(-90.0, -180.0, 90.0, 180.0, 6);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            GeoHash.cover(10.0, 0.0, 0.0, 1.0, 3);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.InvalidImageException;
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.index.SpatialIndex;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoPointsTest {
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    private static final double RELATIVE_ERROR = 1e-9;
+
+    private static final double ABSOLUTE_ERROR = 1e-6;
+
+    @Test
+    public void testConstructor() {
+        final double[] latitudes = {41.39, -33.87, 0.0};
+        final double[] longitudes = {2.16, 151.21, 180.0};
+        GeoPoints points = new GeoPoints(latitudes, longitudes);
+        assertEquals(3, points.getSize());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, points.getId(i));
+            assertEquals(latitudes[i], points.getLatitude(i), 0.0);
+            assertEquals(longitudes[i], points.getLongitude(i), 0.0);
+        }
+        assertArrayEquals(new int[]{0, 1, 2}, points.getIds());
+        assertArrayEquals(latitudes, points.getLatitudes(), 0.0);
+        assertArrayEquals(longitudes, points.getLongitudes(), 0.0);
+
+        // provided arrays are copied
+        latitudes[0] = 10.0;
+        assertEquals(41.39, points.getLatitude(0), 0.0);
+
+        points = new GeoPoints(new int[]{7, 8, 9}, latitudes, longitudes);
+        assertEquals(8, points.getId(1));
+
+        assertEquals(0, new GeoPoints(new double[0], new double[0]).getSize());
+
+        // Force IllegalArgumentException
+        try {
+            new GeoPoints(new double[2], new double[3]);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new GeoPoints(new int[2], new double[3], new double[3]);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new GeoPoints(new double[]{91.0}, new double[]{0.0});
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testFromResults() throws InvalidImageException,
+            IOException {
+        final String[] names = {"carlos1.jpg", "batllo1.jpg", "rotate1.jpg",
+                "polo.png"};
+        final List<ImageReaderResult> results = new ArrayList<>();
+        final List<ImageMetadata> metadata = new ArrayList<>();
+        for (final String name : names) {
+            final ImageReaderResult result = ImageReader.getInstance()
+                    .readImage(new File(IMAGES_FOLDER, name));
+            results.add(result);
+            metadata.add(result.getMetadata());
+        }
+
+        // images without location are skipped
+        final GeoPoints points = GeoPoints.fromResults(results);
+        assertArrayEquals(new int[]{0, 2}, points.getIds());
+        final GPSCoordinates location = results.get(2).getMetadata()
+                .getLocation();
+        assertEquals(location.getLatitude(), points.getLatitude(1), 0.0);
+        assertEquals(location.getLongitude(), points.getLongitude(1), 0.0);
+
+        final GeoPoints points2 = GeoPoints.fromMetadata(metadata);
+        assertArrayEquals(points.getIds(), points2.getIds());
+        assertArrayEquals(points.getLatitudes(), points2.getLatitudes(), 0.0);
+        assertArrayEquals(points.getLongitudes(), points2.getLongitudes(),
+                0.0);
+    }
+
+    @Test
+    public void testDistances() {
+        final GeoPoints points = createPoints(new Random(1), 200);
+        final int size = points.getSize();
+        final double[] result = new double[size];
+
+        for (int i = 0; i < size; i += 17) {
+            points.distances(i, result);
+            for (int j = 0; j < size; j++) {
+                final double expected = SpatialIndex.distance(
+                        points.getLatitude(i), points.getLongitude(i),
+                        points.getLatitude(j), points.getLongitude(j));
+                assertEquals(expected, result[j],
+                        ABSOLUTE_ERROR + RELATIVE_ERROR * expected);
+                assertEquals(expected, points.distance(i, j),
+                        ABSOLUTE_ERROR + RELATIVE_ERROR * expected);
+            }
+            assertEquals(0.0, result[i], 0.0);
+        }
+
+        points.distances(41.39, 2.16, result);
+        for (int j = 0; j < size; j++) {
+            final double expected = SpatialIndex.distance(41.39, 2.16,
+                    points.getLatitude(j), points.getLongitude(j));
+            assertEquals(expected, result[j],
+                    ABSOLUTE_ERROR + RELATIVE_ERROR * expected);
+        }
+
+        // antipodal locations, where converting chords into distances loses
+        // precision
+        final GeoPoints antipodes = new GeoPoints(new double[]{10.0, -10.0},
+                new double[]{20.0, -160.0});
+        assertEquals(Math.PI * GeoPoints.EARTH_RADIUS,
+                antipodes.distance(0, 1), 1.0);
+
+        // Force IllegalArgumentException
+        try {
+            points.distances(0, new double[size - 1]);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            points.distances(0.0, 181.0, result);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testPairwiseDistances() {
+        final GeoPoints points = createPoints(new Random(2), 50);
+        final int size = points.getSize();
+        final double[] matrix = points.pairwiseDistances();
+        assertEquals(size * size, matrix.length);
+        for (int i = 0; i < size; i++) {
+            assertEquals(0.0, matrix[i * size + i], 0.0);
+            for (int j = 0; j < size; j++) {
+                assertEquals(matrix[i * size + j], matrix[j * size + i], 0.0);
+                assertEquals(points.distance(i, j), matrix[i * size + j], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testNearest() {
+        final GeoPoints points = createPoints(new Random(3), 300);
+        final int size = points.getSize();
+        final int[] nearest = new int[size];
+        final double[] distances = new double[size];
+        points.nearest(nearest, distances);
+
+        for (int i = 0; i < size; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < size; j++) {
+                if (j != i) {
+                    best = Math.min(best, SpatialIndex.distance(
+                            points.getLatitude(i), points.getLongitude(i),
+                            points.getLatitude(j), points.getLongitude(j)));
+                }
+            }
+            assertNotEquals(i, nearest[i]);
+            assertEquals(best, distances[i], ABSOLUTE_ERROR +
+                    RELATIVE_ERROR * best);
+            assertEquals(distances[i], points.distance(i, nearest[i]), 0.0);
+        }
+
+        // a single location has no nearest location
+        final GeoPoints single = new GeoPoints(new double[]{1.0},
+                new double[]{1.0});
+        single.nearest(nearest, distances);
+        assertEquals(-1, nearest[0]);
+        assertEquals(Double.POSITIVE_INFINITY, distances[0], 0.0);
+
+        // Force IllegalArgumentException
+        try {
+            points.nearest(new int[size - 1], distances);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testSquaredChord() {
+        final double[] distances = {0.0, 1.0, 1000.0, 1e6,
+                Math.PI * GeoPoints.EARTH_RADIUS};
+        for (final double distance : distances) {
+            assertEquals(distance, GeoPoints.toDistance(
+                    GeoPoints.toSquaredChord(distance)),
+                    ABSOLUTE_ERROR + RELATIVE_ERROR * distance);
+        }
+
+        // chords increase with distance
+        assertTrue(GeoPoints.toSquaredChord(10.0) <
+                GeoPoints.toSquaredChord(11.0));
+        assertEquals(4.0, GeoPoints.toSquaredChord(1e9), 0.0);
+    }
+
+    static GeoPoints createPoints(final Random random, final int size) {
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0) {
+                // locations spread all over the world
+                latitudes[i] = -90.0 + 180.0 * random.nextDouble();
+                longitudes[i] = -180.0 + 360.0 * random.nextDouble();
+            } else {
+                // locations close to each other
+                latitudes[i] = 41.39 + 0.01 * random.nextDouble();
+                longitudes[i] = 2.16 + 0.01 * random.nextDouble();
+            }
+        }
+        return new GeoPoints(latitudes, longitudes);
+    }
+}
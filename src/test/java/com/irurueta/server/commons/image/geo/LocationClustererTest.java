@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.geo;
+
+import com.irurueta.server.commons.image.index.SpatialIndex;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationClustererTest {
+
+    @Test
+    public void testConstructor() {
+        LocationClusterer clusterer = new LocationClusterer();
+        assertEquals(LocationClusterer.DEFAULT_EPSILON,
+                clusterer.getEpsilon(), 0.0);
+        assertEquals(LocationClusterer.DEFAULT_MIN_POINTS,
+                clusterer.getMinPoints());
+
+        clusterer = new LocationClusterer(50.0, 2);
+        assertEquals(50.0, clusterer.getEpsilon(), 0.0);
+        assertEquals(2, clusterer.getMinPoints());
+
+        // Force IllegalArgumentException
+        try {
+            new LocationClusterer(-1.0, 2);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new LocationClusterer(Double.NaN, 2);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new LocationClusterer(1.0, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testCluster() {
+        // three trips of 50 photos each, one of them crossing the
+        // antimeridian, plus isolated photos far away from each other
+        final Random random = new Random(1);
+        final double[][] centers = {{41.39, 2.16}, {-33.87, 151.21},
+                {-16.5, 179.999}};
+        final int perTrip = 50;
+        final int isolated = 10;
+        final int size = centers.length * perTrip + isolated;
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        final int[] ids = new int[size];
+        final int[] trips = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = 1000 + i;
+            if (i < centers.length * perTrip) {
+                trips[i] = i % centers.length;
+                latitudes[i] = centers[trips[i]][0] +
+                        0.002 * random.nextGaussian();
+                double longitude = centers[trips[i]][1] +
+                        0.002 * random.nextGaussian();
+                if (longitude > 180.0) {
+                    longitude -= 360.0;
+                }
+                longitudes[i] = longitude;
+            } else {
+                trips[i] = GeoClusters.NOISE;
+                latitudes[i] = -60.0 + 12.0 * (i - centers.length * perTrip);
+                longitudes[i] = -100.0 + 7.0 * (i - centers.length * perTrip);
+            }
+        }
+
+        final GeoPoints points = new GeoPoints(ids, latitudes, longitudes);
+        final GeoClusters clusters = new LocationClusterer(1000.0, 4)
+                .cluster(points);
+        assertSame(points, clusters.getPoints());
+        assertEquals(centers.length, clusters.getClusterCount());
+        assertEquals(isolated, clusters.getNoiseCount());
+
+        // each trip becomes a cluster, numbered in order of discovery
+        for (int i = 0; i < size; i++) {
+            assertEquals(trips[i], clusters.getLabel(i));
+        }
+        assertArrayEquals(trips, clusters.getLabels());
+
+        for (int c = 0; c < centers.length; c++) {
+            assertEquals(perTrip, clusters.getClusterSize(c));
+            final int[] members = clusters.getMembers(c);
+            final int[] memberIds = clusters.getMemberIds(c);
+            assertEquals(perTrip, members.length);
+            for (int k = 0; k < members.length; k++) {
+                assertEquals(c, members[k] % centers.length);
+                assertEquals(1000 + members[k], memberIds[k]);
+                if (k > 0) {
+                    assertTrue(members[k - 1] < members[k]);
+                }
+            }
+
+            // center is close to trip center, even across the antimeridian
+            final double[] center = clusters.getCenter(c);
+            assertTrue(SpatialIndex.distance(centers[c][0], centers[c][1],
+                    center[0], center[1]) < 200.0);
+        }
+
+        // Force IllegalArgumentException
+        try {
+            clusters.getMembers(centers.length);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            clusters.getClusterSize(-1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testBorderAndNoise() {
+        // a chain of locations 800m apart along a meridian
+        final int size = 6;
+        final double step = Math.toDegrees(800.0 / GeoPoints.EARTH_RADIUS);
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = 10.0 + i * step;
+        }
+        final GeoPoints points = new GeoPoints(latitudes, longitudes);
+
+        // with 2 points per neighborhood the whole chain is connected
+        GeoClusters clusters = new LocationClusterer(1000.0, 2).cluster(
+                points);
+        assertEquals(1, clusters.getClusterCount());
+        assertEquals(0, clusters.getNoiseCount());
+
+        // with 3 points, inner locations are core and chain ends are border
+        // locations of the same cluster
+        clusters = new LocationClusterer(1000.0, 3).cluster(points);
+        assertEquals(1, clusters.getClusterCount());
+        assertEquals(size, clusters.getClusterSize(0));
+
+        // with 4 points no location is core
+        clusters = new LocationClusterer(1000.0, 4).cluster(points);
+        assertEquals(0, clusters.getClusterCount());
+        assertEquals(size, clusters.getNoiseCount());
+        for (int i = 0; i < size; i++) {
+            assertEquals(GeoClusters.NOISE, clusters.getLabel(i));
+        }
+
+        // a single point per neighborhood makes every location a cluster
+        clusters = new LocationClusterer(100.0, 1).cluster(points);
+        assertEquals(size, clusters.getClusterCount());
+
+        // no locations
+        clusters = new LocationClusterer().cluster(new GeoPoints(
+                new double[0], new double[0]));
+        assertEquals(0, clusters.getClusterCount());
+        assertEquals(0, clusters.getNoiseCount());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CrcCombinerTest {
+
+    @Test
+    public void testIsCombinable() {
+        assertTrue(CrcCombiner.isCombinable(HashAlgorithm.CRC32));
+        assertTrue(CrcCombiner.isCombinable(HashAlgorithm.CRC32C));
+        assertFalse(CrcCombiner.isCombinable(HashAlgorithm.MD5));
+        assertFalse(CrcCombiner.isCombinable(HashAlgorithm.SHA256));
+        assertFalse(CrcCombiner.isCombinable(HashAlgorithm.XXH64));
+        assertFalse(CrcCombiner.isCombinable(HashAlgorithm.MURMUR3_128));
+    }
+
+    @Test
+    public void testCombine() throws IOException {
+        final Random random = new Random();
+        final Hasher hasher = new Hasher(HashAlgorithm.CRC32,
+                HashAlgorithm.CRC32C);
+        for (int t = 0; t < 50; t++) {
+            final byte[] data = new byte[random.nextInt(10000)];
+            random.nextBytes(data);
+            final int split = data.length > 0 ? random.nextInt(data.length) : 0;
+
+            final HashResult expected = hasher.hash(data, 0, data.length);
+            final HashResult first = hasher.hash(data, 0, split);
+            final HashResult second = hasher.hash(data, split,
+                    data.length - split);
+
+            for (final HashAlgorithm algorithm : hasher.getAlgorithms()) {
+                final int combined = CrcCombiner.combine(algorithm,
+                        first.getValue(algorithm).intValue(),
+                        second.getValue(algorithm).intValue(),
+                        data.length - split);
+                assertEquals(expected.getValue(algorithm).intValue(),
+                        combined);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import org.junit.Test;
+
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.*;
+
+public class HashAlgorithmTest {
+
+    @Test
+    public void testGetValue() {
+        assertEquals("crc32", HashAlgorithm.CRC32.getValue());
+        assertEquals("crc32c", HashAlgorithm.CRC32C.getValue());
+        assertEquals("md5", HashAlgorithm.MD5.getValue());
+        assertEquals("sha256", HashAlgorithm.SHA256.getValue());
+        assertEquals("xxh64", HashAlgorithm.XXH64.getValue());
+        assertEquals("murmur3_128", HashAlgorithm.MURMUR3_128.getValue());
+    }
+
+    @Test
+    public void testFromValue() {
+        for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+            assertEquals(algorithm, HashAlgorithm.fromValue(
+                    algorithm.getValue()));
+            assertEquals(algorithm, HashAlgorithm.fromValue(
+                    algorithm.getValue().toUpperCase()));
+        }
+        assertNull(HashAlgorithm.fromValue("other"));
+        assertNull(HashAlgorithm.fromValue(null));
+    }
+
+    @Test
+    public void testGetDigestLength() throws NoSuchAlgorithmException {
+        for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+            assertEquals(algorithm.getDigestLength(),
+                    algorithm.createFunction().digest().length);
+        }
+    }
+
+    @Test
+    public void testIsCryptographic() {
+        assertFalse(HashAlgorithm.CRC32.isCryptographic());
+        assertFalse(HashAlgorithm.CRC32C.isCryptographic());
+        assertTrue(HashAlgorithm.MD5.isCryptographic());
+        assertTrue(HashAlgorithm.SHA256.isCryptographic());
+        assertFalse(HashAlgorithm.XXH64.isCryptographic());
+        assertFalse(HashAlgorithm.MURMUR3_128.isCryptographic());
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class HasherTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static final byte[] CHECK = "123456789".getBytes(ASCII);
+
+    private static final byte[] FOX =
+            "The quick brown fox jumps over the lazy dog".getBytes(ASCII);
+
+    private static final String IMAGE =
+            "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg";
+
+    @Test
+    public void testConstructor() {
+        Hasher hasher = new Hasher(HashAlgorithm.CRC32, HashAlgorithm.MD5);
+        assertEquals(EnumSet.of(HashAlgorithm.CRC32, HashAlgorithm.MD5),
+                hasher.getAlgorithms());
+        assertEquals(Hasher.DEFAULT_BUFFER_SIZE, hasher.getBufferSize());
+
+        hasher = new Hasher(Collections.<HashAlgorithm>emptySet(), 1);
+        assertTrue(hasher.getAlgorithms().isEmpty());
+        assertEquals(1, hasher.getBufferSize());
+
+        // Force IllegalArgumentException
+        try {
+            new Hasher((HashAlgorithm[]) null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new Hasher(null, 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new Hasher(EnumSet.of(HashAlgorithm.CRC32), 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testKnownValues() throws IOException {
+        final Hasher hasher = new Hasher(HashAlgorithm.values());
+
+        HashResult result = hasher.hash(CHECK, 0, CHECK.length);
+        assertEquals(CHECK.length, result.getLength());
+        assertEquals(0xCBF43926L, result.getValue(HashAlgorithm.CRC32)
+                .longValue());
+        assertEquals("cbf43926", result.getHex(HashAlgorithm.CRC32));
+        assertEquals(0xE3069283L, result.getValue(HashAlgorithm.CRC32C)
+                .longValue());
+        assertEquals("25f9e794323b453885f5181f1b624d0b",
+                result.getHex(HashAlgorithm.MD5));
+        assertEquals("15e2b0d3c33891ebb0f1ef609ec41942" +
+                        "0c20e320ce94c65fbc8c3312448eb225",
+                result.getHex(HashAlgorithm.SHA256));
+
+        result = hasher.hash(new byte[0], 0, 0);
+        assertEquals(0, result.getLength());
+        assertEquals(0L, result.getValue(HashAlgorithm.CRC32).longValue());
+        assertEquals(0L, result.getValue(HashAlgorithm.CRC32C).longValue());
+        assertEquals("ef46db3751d8e999", result.getHex(HashAlgorithm.XXH64));
+        assertEquals("00000000000000000000000000000000",
+                result.getHex(HashAlgorithm.MURMUR3_128));
+
+        result = hasher.hash(FOX, 0, FOX.length);
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a",
+                result.getHex(HashAlgorithm.MURMUR3_128));
+        assertEquals("0b242d361fda71bc", result.getHex(HashAlgorithm.XXH64));
+
+        final byte[] hell = "hell".getBytes(ASCII);
+        result = hasher.hash(hell, 0, hell.length);
+        assertEquals("67f8103e694299624753ebba820bdb92",
+                result.getHex(HashAlgorithm.MURMUR3_128));
+    }
+
+    @Test
+    public void testStreamingMatchesSinglePass() throws IOException {
+        final Random random = new Random();
+        final Hasher hasher = new Hasher(HashAlgorithm.values());
+        for (int length = 0; length < 200; length++) {
+            final byte[] data = new byte[length + 3];
+            random.nextBytes(data);
+
+            final HashResult expected = hasher.hash(data, 3, length);
+            for (final int bufferSize : new int[]{1, 3, 7, 16, 31, 33, 64}) {
+                final Hasher streamHasher = new Hasher(
+                        EnumSet.allOf(HashAlgorithm.class), bufferSize);
+                final HashResult result = streamHasher.hash(
+                        new ByteArrayInputStream(data, 3, length));
+                assertEquals(length, result.getLength());
+                for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+                    assertArrayEquals(expected.getDigest(algorithm),
+                            result.getDigest(algorithm));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHashFile() throws IOException, NoSuchAlgorithmException {
+        final File f = new File(IMAGE);
+        final HashResult result = new Hasher(HashAlgorithm.CRC32,
+                HashAlgorithm.MD5, HashAlgorithm.SHA256).hash(f);
+
+        // compare with JDK implementations
+        final CRC32 crc = new CRC32();
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        final MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        try (final InputStream stream = new FileInputStream(f)) {
+            final byte[] buffer = new byte[1024];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+                md5.update(buffer, 0, n);
+                sha256.update(buffer, 0, n);
+            }
+        }
+
+        assertEquals(f.length(), result.getLength());
+        assertEquals(crc.getValue(), result.getValue(HashAlgorithm.CRC32)
+                .longValue());
+        assertEquals(Base64.encodeBase64String(md5.digest()),
+                result.getBase64(HashAlgorithm.MD5));
+        assertArrayEquals(sha256.digest(),
+                result.getDigest(HashAlgorithm.SHA256));
+        assertEquals(EnumSet.of(HashAlgorithm.CRC32, HashAlgorithm.MD5,
+                HashAlgorithm.SHA256), result.getAlgorithms());
+    }
+
+    @Test
+    public void testResult() throws IOException {
+        final HashResult result = new Hasher(HashAlgorithm.CRC32C,
+                HashAlgorithm.SHA256).hash(CHECK, 0, CHECK.length);
+        assertTrue(result.contains(HashAlgorithm.CRC32C));
+        assertFalse(result.contains(HashAlgorithm.CRC32));
+        assertNull(result.getDigest(HashAlgorithm.CRC32));
+        assertNull(result.getHex(HashAlgorithm.CRC32));
+        assertNull(result.getBase64(HashAlgorithm.CRC32));
+        assertNull(result.getValue(HashAlgorithm.CRC32));
+
+        // returned digests are copies
+        final byte[] digest = result.getDigest(HashAlgorithm.CRC32C);
+        digest[0] = 0;
+        assertEquals("e3069283", result.getHex(HashAlgorithm.CRC32C));
+
+        final Set<HashAlgorithm> algorithms = result.getAlgorithms();
+        algorithms.clear();
+        assertTrue(result.contains(HashAlgorithm.SHA256));
+
+        // Force IllegalArgumentException
+        try {
+            result.getValue(HashAlgorithm.SHA256);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testCreate() throws IOException {
+        final HashResult expected = new Hasher(HashAlgorithm.CRC32,
+                HashAlgorithm.MD5).hash(CHECK, 0, CHECK.length);
+        final Map<HashAlgorithm, byte[]> digests = new HashMap<>();
+        digests.put(HashAlgorithm.CRC32,
+                expected.getDigest(HashAlgorithm.CRC32));
+        digests.put(HashAlgorithm.MD5, expected.getDigest(HashAlgorithm.MD5));
+
+        final HashResult result = HashResult.create(digests, CHECK.length, 0);
+        assertEquals(expected.getAlgorithms(), result.getAlgorithms());
+        assertEquals(CHECK.length, result.getLength());
+        assertFalse(result.isTree());
+        assertEquals(expected.getValue(HashAlgorithm.CRC32),
+                result.getValue(HashAlgorithm.CRC32));
+        assertEquals(expected.getHex(HashAlgorithm.MD5),
+                result.getHex(HashAlgorithm.MD5));
+
+        // provided digests are copied
+        digests.get(HashAlgorithm.MD5)[0]++;
+        assertEquals(expected.getHex(HashAlgorithm.MD5),
+                result.getHex(HashAlgorithm.MD5));
+
+        // Force IllegalArgumentException
+        try {
+            HashResult.create(digests, -1, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            HashResult.create(digests, 1, -1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        digests.put(HashAlgorithm.SHA256, new byte[1]);
+        try {
+            HashResult.create(digests, 1, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PerceptualHashAlgorithmTest {
+
+    @Test
+    public void testGetValue() {
+        assertEquals("ahash", PerceptualHashAlgorithm.AVERAGE.getValue());
+        assertEquals("dhash", PerceptualHashAlgorithm.DIFFERENCE.getValue());
+        assertEquals("phash", PerceptualHashAlgorithm.DCT.getValue());
+    }
+
+    @Test
+    public void testFromValue() {
+        for (final PerceptualHashAlgorithm algorithm :
+                PerceptualHashAlgorithm.values()) {
+            assertEquals(algorithm, PerceptualHashAlgorithm.fromValue(
+                    algorithm.getValue()));
+            assertEquals(algorithm, PerceptualHashAlgorithm.fromValue(
+                    algorithm.getValue().toUpperCase()));
+        }
+        assertNull(PerceptualHashAlgorithm.fromValue("other"));
+        assertNull(PerceptualHashAlgorithm.fromValue(null));
+    }
+}
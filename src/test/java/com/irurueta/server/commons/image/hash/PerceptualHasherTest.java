@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PerceptualHasherTest {
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    private static final String[] NAMES = {"batllo1.jpg", "abishek.jpg",
+            "carlos1.jpg", "rotate1.jpg", "polo.png", "Svalbard.bmp"};
+
+    private static final int NEAR_DUPLICATE_DISTANCE = 10;
+
+    @Test
+    public void testConstructor() {
+        PerceptualHasher hasher = new PerceptualHasher(
+                PerceptualHashAlgorithm.DCT, PerceptualHashAlgorithm.AVERAGE);
+        assertEquals(EnumSet.of(PerceptualHashAlgorithm.AVERAGE,
+                PerceptualHashAlgorithm.DCT), hasher.getAlgorithms());
+
+        hasher = new PerceptualHasher(
+                EnumSet.of(PerceptualHashAlgorithm.DIFFERENCE));
+        assertEquals(EnumSet.of(PerceptualHashAlgorithm.DIFFERENCE),
+                hasher.getAlgorithms());
+
+        // Force IllegalArgumentException
+        try {
+            new PerceptualHasher((PerceptualHashAlgorithm[]) null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new PerceptualHasher((Set<PerceptualHashAlgorithm>) null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testHashUniformImage() {
+        final PerceptualHasher hasher = new PerceptualHasher(
+                PerceptualHashAlgorithm.values());
+        final BufferedImage image = new BufferedImage(64, 64,
+                BufferedImage.TYPE_INT_RGB);
+
+        // no cell is brighter than the mean or than its left neighbour
+        final PerceptualHashes hashes = hasher.hash(image);
+        assertEquals(0L, hashes.getAverageHash().longValue());
+        assertEquals(0L, hashes.getDifferenceHash().longValue());
+
+        // Force IllegalArgumentException
+        try {
+            hasher.hash((BufferedImage) null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testHashOnlyRequestedAlgorithms() throws IOException {
+        final PerceptualHasher hasher = new PerceptualHasher(
+                PerceptualHashAlgorithm.DIFFERENCE);
+        final PerceptualHashes hashes = hasher.hash(
+                new File(IMAGES_FOLDER, "polo.png"));
+
+        assertEquals(EnumSet.of(PerceptualHashAlgorithm.DIFFERENCE),
+                hashes.getAlgorithms());
+        assertTrue(hashes.contains(PerceptualHashAlgorithm.DIFFERENCE));
+        assertFalse(hashes.contains(PerceptualHashAlgorithm.AVERAGE));
+        assertNull(hashes.getAverageHash());
+        assertNull(hashes.getDctHash());
+        assertEquals(-1, hashes.distance(hashes,
+                PerceptualHashAlgorithm.AVERAGE));
+        assertEquals(0, hashes.distance(hashes,
+                PerceptualHashAlgorithm.DIFFERENCE));
+    }
+
+    @Test
+    public void testNearDuplicates() throws IOException {
+        final PerceptualHasher hasher = new PerceptualHasher(
+                PerceptualHashAlgorithm.values());
+        final File f = new File(IMAGES_FOLDER, NAMES[0]);
+        final PerceptualHashes expected = hasher.hash(f);
+
+        // hashing a file or its fully decoded image gives similar results
+        final BufferedImage image = ImageIO.read(f);
+        final PerceptualHashes decoded = hasher.hash(image);
+
+        // a resized copy is a near duplicate
+        final BufferedImage resized = new BufferedImage(image.getWidth() / 10,
+                image.getHeight() / 10, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = resized.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, resized.getWidth(), resized.getHeight(),
+                null);
+        g.dispose();
+        final PerceptualHashes small = hasher.hash(resized);
+
+        for (final PerceptualHashAlgorithm algorithm :
+                PerceptualHashAlgorithm.values()) {
+            assertTrue(expected.distance(decoded, algorithm) <=
+                    NEAR_DUPLICATE_DISTANCE);
+            assertTrue(expected.distance(small, algorithm) <=
+                    NEAR_DUPLICATE_DISTANCE);
+        }
+    }
+
+    @Test
+    public void testDifferentImages() throws IOException {
+        final PerceptualHasher hasher = new PerceptualHasher(
+                PerceptualHashAlgorithm.values());
+        final PerceptualHashes[] hashes = new PerceptualHashes[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            hashes[i] = hasher.hash(new File(IMAGES_FOLDER, NAMES[i]));
+            assertEquals(EnumSet.allOf(PerceptualHashAlgorithm.class),
+                    hashes[i].getAlgorithms());
+        }
+
+        for (int i = 0; i < NAMES.length; i++) {
+            for (int j = i + 1; j < NAMES.length; j++) {
+                assertTrue(hashes[i].distance(hashes[j],
+                        PerceptualHashAlgorithm.DCT) >
+                        NEAR_DUPLICATE_DISTANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testHashInvalidFile() {
+        final PerceptualHasher hasher = new PerceptualHasher(
+                PerceptualHashAlgorithm.values());
+
+        // Force IOException
+        try {
+            hasher.hash(new File(IMAGES_FOLDER, "missing.jpg"));
+            fail("IOException expected but not thrown");
+        } catch (final IOException ignore) {
+        }
+    }
+
+    @Test
+    public void testDistance() {
+        assertEquals(0, PerceptualHashes.distance(0L, 0L));
+        assertEquals(64, PerceptualHashes.distance(0L, -1L));
+        assertEquals(2, PerceptualHashes.distance(0x5L, 0x0L));
+    }
+
+    @Test
+    public void testCreate() {
+        final Map<PerceptualHashAlgorithm, Long> values = new HashMap<>();
+        values.put(PerceptualHashAlgorithm.DCT, 5L);
+
+        final PerceptualHashes hashes = PerceptualHashes.create(values);
+        assertEquals(EnumSet.of(PerceptualHashAlgorithm.DCT),
+                hashes.getAlgorithms());
+        assertEquals(Long.valueOf(5L), hashes.getDctHash());
+        assertNull(hashes.getAverageHash());
+
+        // provided values are copied
+        values.put(PerceptualHashAlgorithm.AVERAGE, 1L);
+        assertFalse(hashes.contains(PerceptualHashAlgorithm.AVERAGE));
+
+        // Force IllegalArgumentException
+        values.put(PerceptualHashAlgorithm.DIFFERENCE, null);
+        try {
+            PerceptualHashes.create(values);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
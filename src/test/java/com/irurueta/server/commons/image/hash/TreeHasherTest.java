@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.hash;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TreeHasherTest {
+
+    private static final String IMAGE =
+            "./src/test/java/com/irurueta/server/commons/image/batllo1.jpg";
+
+    @Test
+    public void testConstructor() {
+        TreeHasher hasher = new TreeHasher(HashAlgorithm.CRC32);
+        assertEquals(EnumSet.of(HashAlgorithm.CRC32), hasher.getAlgorithms());
+        assertEquals(Hasher.DEFAULT_BUFFER_SIZE, hasher.getBufferSize());
+        assertEquals(TreeHasher.DEFAULT_CHUNK_SIZE, hasher.getChunkSize());
+        assertNotNull(hasher.getPool());
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        hasher = new TreeHasher(EnumSet.of(HashAlgorithm.MD5), 10, 20, pool);
+        assertEquals(10, hasher.getBufferSize());
+        assertEquals(20, hasher.getChunkSize());
+        assertSame(pool, hasher.getPool());
+        pool.shutdown();
+
+        // Force IllegalArgumentException
+        try {
+            new TreeHasher(EnumSet.of(HashAlgorithm.MD5), 10, 0, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new TreeHasher(EnumSet.of(HashAlgorithm.MD5), 0, 10, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testHash() throws IOException, NoSuchAlgorithmException {
+        final File f = new File(IMAGE);
+        final HashResult expected = new Hasher(HashAlgorithm.values()).hash(f);
+
+        for (final int chunkSize : new int[]{4096, 100000, 1 << 20}) {
+            final TreeHasher hasher = new TreeHasher(
+                    EnumSet.allOf(HashAlgorithm.class), 1000, chunkSize, null);
+            final HashResult result = hasher.hash(f);
+
+            assertTrue(result.isTree());
+            assertEquals(chunkSize, result.getChunkSize());
+            assertEquals(f.length(), result.getLength());
+
+            // checksums are identical to sequential ones
+            assertEquals(expected.getValue(HashAlgorithm.CRC32),
+                    result.getValue(HashAlgorithm.CRC32));
+            assertEquals(expected.getValue(HashAlgorithm.CRC32C),
+                    result.getValue(HashAlgorithm.CRC32C));
+
+            // other digests are tree digests
+            assertFalse(Arrays.equals(expected.getDigest(HashAlgorithm.MD5),
+                    result.getDigest(HashAlgorithm.MD5)));
+            assertArrayEquals(computeTreeMd5(f, chunkSize),
+                    result.getDigest(HashAlgorithm.MD5));
+        }
+    }
+
+    @Test
+    public void testHashSmallFile() throws IOException {
+        final File f = new File(IMAGE);
+        final HashResult expected = new Hasher(HashAlgorithm.values()).hash(f);
+        final HashResult result = new TreeHasher(HashAlgorithm.values())
+                .hash(f);
+
+        // files not larger than a chunk are hashed sequentially
+        assertFalse(result.isTree());
+        assertEquals(0, result.getChunkSize());
+        for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+            assertArrayEquals(expected.getDigest(algorithm),
+                    result.getDigest(algorithm));
+        }
+    }
+
+    @Test
+    public void testHashMissingFile() {
+        final TreeHasher hasher = new TreeHasher(
+                EnumSet.of(HashAlgorithm.CRC32), 10, 10, null);
+        try {
+            hasher.hash(new File("missing.jpg"));
+            fail("IOException expected but not thrown");
+        } catch (final IOException ignore) {
+        }
+    }
+
+    private static byte[] computeTreeMd5(final File f, final int chunkSize)
+            throws IOException, NoSuchAlgorithmException {
+        final MessageDigest root = MessageDigest.getInstance("MD5");
+        try (final InputStream stream = new FileInputStream(f)) {
+            final byte[] chunk = new byte[chunkSize];
+            int n;
+            while ((n = read(stream, chunk)) > 0) {
+                final MessageDigest digest = MessageDigest.getInstance("MD5");
+                digest.update(chunk, 0, n);
+                root.update(digest.digest());
+            }
+        }
+        return root.digest();
+    }
+
+    private static int read(final InputStream stream, final byte[] buffer)
+            throws IOException {
+        int total = 0;
+        int n;
+        while (total < buffer.length &&
+                (n = stream.read(buffer, total, buffer.length - total)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+}
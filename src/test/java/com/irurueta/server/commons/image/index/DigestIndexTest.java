@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.InvalidImageException;
+import com.irurueta.server.commons.image.ReadOptions;
+import com.irurueta.server.commons.image.hash.HashAlgorithm;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DigestIndexTest {
+
+    private static final int SIZE = 100000;
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    @Test
+    public void testConstructor() {
+        DigestIndex index = new DigestIndex();
+        assertEquals(0, index.getSize());
+        assertTrue(index.getCapacity() * 0.7 >=
+                DigestIndex.DEFAULT_EXPECTED_SIZE);
+
+        index = new DigestIndex(0);
+        assertEquals(0, index.getSize());
+        assertEquals(DigestIndex.NOT_FOUND, index.get(0L, 0L));
+        assertFalse(index.mightContain(0L, 0L));
+
+        // Force IllegalArgumentException
+        try {
+            new DigestIndex(-1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new DigestIndex(DigestIndex.MAX_SIZE + 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testPutIfAbsentAndGet() {
+        final Random random = new Random(11);
+        final long[] digests = createDigests(random, SIZE);
+
+        // start small so that table is doubled several times
+        final DigestIndex index = new DigestIndex(16);
+        final long capacity = index.getCapacity();
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(DigestIndex.NOT_FOUND, index.putIfAbsent(
+                    digests[2 * i], digests[2 * i + 1], i));
+        }
+        assertEquals(SIZE, index.getSize());
+        assertTrue(index.getCapacity() > capacity);
+
+        for (int i = 0; i < SIZE; i++) {
+            assertTrue(index.mightContain(digests[2 * i], digests[2 * i + 1]));
+            assertEquals(i, index.get(digests[2 * i], digests[2 * i + 1]));
+
+            // adding again keeps existing id
+            assertEquals(i, index.putIfAbsent(digests[2 * i],
+                    digests[2 * i + 1], SIZE + i));
+        }
+        assertEquals(SIZE, index.getSize());
+
+        // digests not contained are not found, and most of them are rejected
+        // by the Bloom filter
+        final long[] missing = createDigests(random, SIZE);
+        int falsePositives = 0;
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(DigestIndex.NOT_FOUND, index.get(missing[2 * i],
+                    missing[2 * i + 1]));
+            if (index.mightContain(missing[2 * i], missing[2 * i + 1])) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < SIZE / 100);
+
+        // Force IllegalArgumentException
+        try {
+            index.putIfAbsent(1L, 1L, -1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testDigestBytes() {
+        final DigestIndex index = new DigestIndex();
+        final byte[] digest = new byte[DigestIndex.DIGEST_LENGTH];
+        for (int i = 0; i < digest.length; i++) {
+            digest[i] = (byte) (i + 1);
+        }
+
+        assertEquals(DigestIndex.NOT_FOUND, index.putIfAbsent(digest, 5));
+        assertEquals(5, index.get(digest));
+        assertEquals(5, index.get(0x0102030405060708L, 0x090a0b0c0d0e0f10L));
+
+        // Force IllegalArgumentException
+        try {
+            index.get(new byte[8]);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            index.putIfAbsent((byte[]) null, 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testImageReaderResult() throws InvalidImageException,
+            IOException {
+        final ImageReader reader = new ImageReader.Builder().build();
+        final ImageReaderResult batllo = reader.readImage(
+                new File(IMAGES_FOLDER, "batllo1.jpg"));
+        final ImageReaderResult polo = reader.readImage(
+                new File(IMAGES_FOLDER, "polo.png"));
+
+        final DigestIndex index = new DigestIndex();
+        assertEquals(DigestIndex.NOT_FOUND, index.putIfAbsent(batllo, 1));
+        assertEquals(DigestIndex.NOT_FOUND, index.get(polo));
+        assertEquals(DigestIndex.NOT_FOUND, index.putIfAbsent(polo, 2));
+
+        // a result read again is found, either by its hashes or its MD5
+        final ImageReaderResult again = reader.readImage(
+                new File(IMAGES_FOLDER, "batllo1.jpg"));
+        assertEquals(1, index.get(again));
+        again.setHashes(null);
+        assertEquals(1, index.get(again));
+        assertArrayEquals(batllo.getHashes().getDigest(HashAlgorithm.MD5),
+                DigestIndex.getDigest(again));
+
+        // a result hashed in tree mode is found by its plain MD5
+        final ImageReaderResult tree = reader.readImage(
+                new File(IMAGES_FOLDER, "batllo1.jpg"),
+                new ReadOptions.Builder().setTreeHashEnabled(true)
+                        .setTreeHashChunkSize(256 * 1024).build());
+        assertTrue(tree.getHashes().isTree());
+        assertEquals(1, index.get(tree));
+
+        // Force IllegalArgumentException
+        final ImageReaderResult noMd5 = reader.readImage(
+                new File(IMAGES_FOLDER, "polo.png"),
+                ReadOptions.DEFAULT.withComputeMd5Enabled(false));
+        try {
+            index.get(noMd5);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testBloomAlignment() {
+        final DigestIndex index = new DigestIndex(1000);
+        final ByteBuffer bloom = index.getBloom();
+        assertTrue(bloom.isDirect());
+        assertEquals(0, bloom.capacity() % 64);
+
+        final long address = DigestIndex.address(bloom);
+        if (address >= 0) {
+            // blocks start at cache line boundaries
+            assertEquals(0, address % 64);
+        }
+        assertEquals(-1, DigestIndex.address(ByteBuffer.allocate(64)));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final Random random = new Random(5);
+        final long[] digests = createDigests(random, SIZE);
+        final DigestIndex index = new DigestIndex();
+        for (int i = 0; i < SIZE; i++) {
+            index.putIfAbsent(digests[2 * i], digests[2 * i + 1], i);
+        }
+
+        final File f = File.createTempFile("digest", ".idx");
+        try {
+            index.save(f);
+            final DigestIndex loaded = DigestIndex.load(f);
+            assertEquals(index.getSize(), loaded.getSize());
+            assertEquals(index.getCapacity(), loaded.getCapacity());
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(i, loaded.get(digests[2 * i],
+                        digests[2 * i + 1]));
+            }
+
+            // loaded index can be further modified
+            assertEquals(DigestIndex.NOT_FOUND, loaded.putIfAbsent(1L, 2L,
+                    SIZE));
+            assertEquals(SIZE, loaded.get(1L, 2L));
+
+            // a truncated file is not valid
+            try (final RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+                file.setLength(file.length() - 1);
+            }
+            // Force IOException
+            try {
+                DigestIndex.load(f);
+                fail("IOException expected but not thrown");
+            } catch (final IOException ignore) {
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+
+    private static long[] createDigests(final Random random, final int size) {
+        final long[] digests = new long[2 * size];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = random.nextLong();
+        }
+        return digests;
+    }
+}
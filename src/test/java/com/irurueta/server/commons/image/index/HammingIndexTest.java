@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HammingIndexTest {
+
+    private static final int SIZE = 20000;
+
+    private static final int CLUSTERS = 500;
+
+    private static final int QUERIES = 50;
+
+    @Test
+    public void testBuilder() {
+        final HammingIndex.Builder builder = new HammingIndex.Builder(1);
+        assertEquals(0, builder.getSize());
+        builder.add(3, 30L).add(1, 10L).addAll(new int[]{2, 0},
+                new long[]{20L, 0L});
+        assertEquals(4, builder.getSize());
+
+        // entries are sorted by id
+        final HammingIndex index = builder.build();
+        assertEquals(4, index.getSize());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, index.getId(i));
+            assertEquals(10L * i, index.getHash(i));
+        }
+
+        // Force IllegalArgumentException
+        try {
+            new HammingIndex.Builder(-1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            builder.addAll(new int[1], new long[2]);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            builder.addAll(null, new long[0]);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final HammingIndex index = new HammingIndex.Builder().build();
+        assertEquals(0, index.getSize());
+        assertEquals(0, index.search(0L, 64).getSize());
+        assertEquals(0, index.searchNearest(0L, 5).getSize());
+    }
+
+    @Test
+    public void testSearch() {
+        final Random random = new Random(42);
+        final long[] hashes = createHashes(random);
+        final HammingIndex index = build(hashes);
+
+        for (int q = 0; q < QUERIES; q++) {
+            final long query = mutate(hashes[random.nextInt(SIZE)], random,
+                    random.nextInt(4));
+            for (final int radius : new int[]{0, 3, 8, 12, 20}) {
+                assertResult(bruteForce(hashes, query, radius,
+                        Integer.MAX_VALUE), index.search(query, radius));
+            }
+        }
+
+        // a radius covering all bits returns every entry
+        assertEquals(SIZE, index.search(hashes[0], 64).getSize());
+
+        // Force IllegalArgumentException
+        try {
+            index.search(0L, -1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testSearchNearest() {
+        final Random random = new Random(7);
+        final long[] hashes = createHashes(random);
+        final HammingIndex index = build(hashes);
+
+        for (int q = 0; q < QUERIES; q++) {
+            // query both near existing entries and at random points
+            final long query = q % 2 == 0 ?
+                    mutate(hashes[random.nextInt(SIZE)], random, 5) :
+                    random.nextLong();
+            for (final int k : new int[]{1, 10, 50}) {
+                assertResult(bruteForce(hashes, query, 64, k),
+                        index.searchNearest(query, k));
+            }
+        }
+
+        // asking for more entries than available returns all of them
+        assertEquals(SIZE, index.searchNearest(0L, SIZE + 1).getSize());
+
+        // Force IllegalArgumentException
+        try {
+            index.searchNearest(0L, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final Random random = new Random(3);
+        final long[] hashes = createHashes(random);
+        final HammingIndex index = build(hashes);
+
+        final File f = File.createTempFile("hamming", ".idx");
+        try {
+            index.save(f);
+            final HammingIndex loaded = HammingIndex.load(f);
+            assertEquals(index.getSize(), loaded.getSize());
+            for (int i = 0; i < SIZE; i++) {
+                assertEquals(index.getId(i), loaded.getId(i));
+                assertEquals(index.getHash(i), loaded.getHash(i));
+            }
+
+            for (int q = 0; q < QUERIES; q++) {
+                final long query = mutate(hashes[random.nextInt(SIZE)],
+                        random, 3);
+                assertResult(index.search(query, 10),
+                        loaded.search(query, 10));
+                assertResult(index.searchNearest(query, 20),
+                        loaded.searchNearest(query, 20));
+            }
+
+            // a truncated file is not valid
+            try (final RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+                file.setLength(file.length() - 4);
+            }
+            // Force IOException
+            try {
+                HammingIndex.load(f);
+                fail("IOException expected but not thrown");
+            } catch (final IOException ignore) {
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+
+    private static long[] createHashes(final Random random) {
+        // hashes are grouped in clusters of near-duplicates
+        final long[] centers = new long[CLUSTERS];
+        for (int i = 0; i < CLUSTERS; i++) {
+            centers[i] = random.nextLong();
+        }
+        final long[] hashes = new long[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            hashes[i] = mutate(centers[random.nextInt(CLUSTERS)], random,
+                    random.nextInt(10));
+        }
+        return hashes;
+    }
+
+    private static long mutate(final long hash, final Random random,
+                               final int bits) {
+        long result = hash;
+        for (int i = 0; i < bits; i++) {
+            result ^= 1L << random.nextInt(64);
+        }
+        return result;
+    }
+
+    private static HammingIndex build(final long[] hashes) {
+        // ids are not sorted nor consecutive
+        final int[] ids = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            ids[i] = hashes.length * 3 - 3 * i;
+        }
+        return new HammingIndex.Builder().addAll(ids, hashes).build();
+    }
+
+    private static List<int[]> bruteForce(final long[] hashes,
+                                          final long query, final int radius,
+                                          final int k) {
+        final List<int[]> result = new ArrayList<>();
+        for (int i = 0; i < hashes.length; i++) {
+            final int distance = Long.bitCount(hashes[i] ^ query);
+            if (distance <= radius) {
+                result.add(new int[]{hashes.length * 3 - 3 * i, distance});
+            }
+        }
+        Collections.sort(result, new Comparator<int[]>() {
+            @Override
+            public int compare(final int[] o1, final int[] o2) {
+                if (o1[1] != o2[1]) {
+                    return o1[1] < o2[1] ? -1 : 1;
+                }
+                return o1[0] < o2[0] ? -1 : (o1[0] == o2[0] ? 0 : 1);
+            }
+        });
+        return result.size() > k ? result.subList(0, k) : result;
+    }
+
+    private static void assertResult(final List<int[]> expected,
+                                     final HammingSearchResult result) {
+        assertEquals(expected.size(), result.getSize());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], result.getId(i));
+            assertEquals(expected.get(i)[1], result.getDistance(i));
+        }
+    }
+
+    private static void assertResult(final HammingSearchResult expected,
+                                     final HammingSearchResult result) {
+        assertEquals(expected.getSize(), result.getSize());
+        for (int i = 0; i < expected.getSize(); i++) {
+            assertEquals(expected.getId(i), result.getId(i));
+            assertEquals(expected.getHash(i), result.getHash(i));
+            assertEquals(expected.getDistance(i), result.getDistance(i));
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.index;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.InvalidImageException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpatialIndexTest {
+
+    private static final int SIZE = 20000;
+
+    private static final int QUERIES = 50;
+
+    private static final double ABSOLUTE_ERROR = 1e-6;
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    @Test
+    public void testDistance() {
+        // Barcelona to Madrid is about 505 km
+        assertEquals(505000.0, SpatialIndex.distance(41.3874, 2.1686, 40.4168,
+                -3.7038), 2000.0);
+        assertEquals(0.0, SpatialIndex.distance(10.0, 20.0, 10.0, 20.0),
+                0.0);
+
+        // half the circumference between antipodal points
+        assertEquals(Math.PI * SpatialIndex.EARTH_RADIUS,
+                SpatialIndex.distance(0.0, 0.0, 0.0, 180.0), ABSOLUTE_ERROR);
+
+        // distance across the antimeridian
+        assertEquals(SpatialIndex.distance(0.0, 0.0, 0.0, 2.0),
+                SpatialIndex.distance(0.0, 179.0, 0.0, -179.0),
+                ABSOLUTE_ERROR);
+
+        assertEquals(SpatialIndex.distance(41.0, 2.0, 40.0, -3.0),
+                SpatialIndex.distance(new GPSCoordinates(41.0, 2.0),
+                        new GPSCoordinates(40.0, -3.0)), 0.0);
+
+        // Force IllegalArgumentException
+        try {
+            SpatialIndex.distance(null, new GPSCoordinates(0.0, 0.0));
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testBuilder() {
+        final SpatialIndex.Builder builder = new SpatialIndex.Builder();
+        assertEquals(0, builder.getSize());
+        builder.add(1, 10.0, 20.0).add(2, new GPSCoordinates(-10.0, -20.0));
+        assertEquals(2, builder.getSize());
+
+        final SpatialIndex index = builder.build();
+        assertEquals(2, index.getSize());
+        for (int i = 0; i < index.getSize(); i++) {
+            final int id = index.getId(i);
+            assertEquals(id == 1 ? 10.0 : -10.0, index.getLatitude(i), 0.0);
+            assertEquals(id == 1 ? 20.0 : -20.0, index.getLongitude(i), 0.0);
+        }
+
+        // Force IllegalArgumentException
+        try {
+            builder.add(3, 91.0, 0.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            builder.add(3, 0.0, -180.5);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            builder.add(3, (GPSCoordinates) null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final SpatialIndex index = new SpatialIndex.Builder().build();
+        assertEquals(0, index.getSize());
+        assertEquals(0, index.search(-90.0, -180.0, 90.0, 180.0).length);
+        assertEquals(0, index.searchRadius(0.0, 0.0, 1e7).getSize());
+        assertEquals(0, index.searchNearest(0.0, 0.0, 3).getSize());
+    }
+
+    @Test
+    public void testSearch() {
+        final Random random = new Random(1);
+        final double[] locations = createLocations(random);
+        final SpatialIndex index = build(locations);
+
+        for (int q = 0; q < QUERIES; q++) {
+            final double lat1 = -90.0 + 180.0 * random.nextDouble();
+            final double lat2 = -90.0 + 180.0 * random.nextDouble();
+            final double lon1 = -180.0 + 360.0 * random.nextDouble();
+            final double lon2 = -180.0 + 360.0 * random.nextDouble();
+
+            // boxes where lon1 > lon2 cross the antimeridian
+            final double minLat = Math.min(lat1, lat2);
+            final double maxLat = Math.max(lat1, lat2);
+            final List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < SIZE; i++) {
+                final double lat = locations[2 * i];
+                final double lon = locations[2 * i + 1];
+                final boolean insideLon = lon1 <= lon2 ?
+                        lon >= lon1 && lon <= lon2 :
+                        lon >= lon1 || lon <= lon2;
+                if (lat >= minLat && lat <= maxLat && insideLon) {
+                    expected.add(i);
+                }
+            }
+
+            final int[] ids = index.search(minLat, lon1, maxLat, lon2);
+            assertEquals(expected.size(), ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(expected.get(i).intValue(), ids[i]);
+            }
+        }
+
+        assertEquals(SIZE, index.search(-90.0, -180.0, 90.0, 180.0).length);
+
+        // Force IllegalArgumentException
+        try {
+            index.search(10.0, 0.0, -10.0, 1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            index.search(-100.0, 0.0, 10.0, 1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testSearchRadius() {
+        final Random random = new Random(2);
+        final double[] locations = createLocations(random);
+        final SpatialIndex index = build(locations);
+
+        for (int q = 0; q < QUERIES; q++) {
+            final double[] query = createQuery(random, locations);
+            for (final double radius : new double[]{0.0, 500.0, 2000.0,
+                    50000.0, 2000000.0}) {
+                assertResult(bruteForce(locations, query[0], query[1], radius,
+                        SIZE), index.searchRadius(query[0], query[1], radius));
+            }
+        }
+
+        // a radius larger than half the circumference covers everything
+        assertEquals(SIZE, index.searchRadius(new GPSCoordinates(0.0, 0.0),
+                3e7).getSize());
+
+        // Force IllegalArgumentException
+        try {
+            index.searchRadius(0.0, 0.0, -1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            index.searchRadius(0.0, 200.0, 1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testSearchRadiusTies() {
+        // entries at the same distance are sorted by id
+        final Random random = new Random(4);
+        final SpatialIndex.Builder builder = new SpatialIndex.Builder();
+        final int[] ids = new int[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        for (int i = ids.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            builder.add(ids[i], 0.0, i % 2 == 0 ? 1.0 : -1.0);
+        }
+        final SpatialIndex index = builder.build();
+
+        final SpatialSearchResult result = index.searchRadius(0.0, 0.0, 2e5);
+        assertEquals(ids.length, result.getSize());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, result.getId(i));
+        }
+    }
+
+    @Test
+    public void testSearchNearest() {
+        final Random random = new Random(3);
+        final double[] locations = createLocations(random);
+        final SpatialIndex index = build(locations);
+
+        for (int q = 0; q < QUERIES; q++) {
+            final double[] query = createQuery(random, locations);
+            for (final int k : new int[]{1, 10, 100}) {
+                assertResult(bruteForce(locations, query[0], query[1],
+                        Double.MAX_VALUE, k),
+                        index.searchNearest(query[0], query[1], k));
+            }
+        }
+
+        assertEquals(SIZE, index.searchNearest(new GPSCoordinates(0.0, 0.0),
+                SIZE + 1).getSize());
+
+        // Force IllegalArgumentException
+        try {
+            index.searchNearest(0.0, 0.0, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testAddAllResults() throws InvalidImageException,
+            IOException {
+        final String[] names = {"batllo1.jpg", "carlos1.jpg", "rotate1.jpg",
+                "polo.png"};
+        final List<ImageReaderResult> results = new ArrayList<>();
+        for (final String name : names) {
+            results.add(ImageReader.getInstance().readImage(
+                    new File(IMAGES_FOLDER, name)));
+        }
+
+        // only images having a location are indexed
+        final SpatialIndex index = new SpatialIndex.Builder().addAll(results)
+                .build();
+        assertEquals(2, index.getSize());
+
+        // both images were taken within 100 meters in Barcelona
+        final SpatialSearchResult result = index.searchRadius(
+                results.get(1).getMetadata().getLocation(), 100.0);
+        assertEquals(2, result.getSize());
+        assertEquals(1, result.getId(0));
+        assertEquals(0.0, result.getDistance(0), 0.0);
+        assertEquals(2, result.getId(1));
+        assertArrayEquals(new int[]{1, 2}, index.search(41.0, 2.0, 42.0, 3.0));
+    }
+
+    private static double[] createLocations(final Random random) {
+        final double[] locations = new double[2 * SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            final double lat;
+            final double lon;
+            switch (i % 4) {
+                case 0:
+                    // dense cluster around Barcelona
+                    lat = 41.39 + 0.05 * random.nextGaussian();
+                    lon = 2.16 + 0.05 * random.nextGaussian();
+                    break;
+                case 1:
+                    // cluster around the antimeridian
+                    lat = -17.0 + 2.0 * random.nextGaussian();
+                    final double fijiLon = 179.5 + random.nextGaussian();
+                    lon = fijiLon > 180.0 ? fijiLon - 360.0 : fijiLon;
+                    break;
+                case 2:
+                    // cluster near the north pole
+                    lat = 89.0 + random.nextDouble();
+                    lon = -180.0 + 360.0 * random.nextDouble();
+                    break;
+                default:
+                    // uniform over the sphere
+                    lat = Math.toDegrees(Math.asin(
+                            2.0 * random.nextDouble() - 1.0));
+                    lon = -180.0 + 360.0 * random.nextDouble();
+                    break;
+            }
+            locations[2 * i] = lat;
+            locations[2 * i + 1] = lon;
+        }
+        return locations;
+    }
+
+    private static double[] createQuery(final Random random,
+                                        final double[] locations) {
+        if (random.nextBoolean()) {
+            final int i = random.nextInt(SIZE);
+            return new double[]{locations[2 * i], locations[2 * i + 1]};
+        }
+        return new double[]{-90.0 + 180.0 * random.nextDouble(),
+                -180.0 + 360.0 * random.nextDouble()};
+    }
+
+    private static SpatialIndex build(final double[] locations) {
+        final SpatialIndex.Builder builder = new SpatialIndex.Builder();
+        for (int i = 0; i < SIZE; i++) {
+            builder.add(i, locations[2 * i], locations[2 * i + 1]);
+        }
+        return builder.build();
+    }
+
+    private static List<double[]> bruteForce(final double[] locations,
+                                             final double lat,
+                                             final double lon,
+                                             final double radius,
+                                             final int k) {
+        final List<double[]> result = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            final double distance = SpatialIndex.distance(lat, lon,
+                    locations[2 * i], locations[2 * i + 1]);
+            if (distance <= radius) {
+                result.add(new double[]{i, distance});
+            }
+        }
+        Collections.sort(result, new Comparator<double[]>() {
+            @Override
+            public int compare(final double[] o1, final double[] o2) {
+                final int result = Double.compare(o1[1], o2[1]);
+                return result != 0 ? result : Double.compare(o1[0], o2[0]);
+            }
+        });
+        return result.size() > k ? result.subList(0, k) : result;
+    }
+
+    private static void assertResult(final List<double[]> expected,
+                                     final SpatialSearchResult result) {
+        assertEquals(expected.size(), result.getSize());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[1], result.getDistance(i),
+                    ABSOLUTE_ERROR);
+        }
+        // ids may only differ among entries at the same distance
+        final int[] ids = result.getIds();
+        final int[] expectedIds = new int[expected.size()];
+        for (int i = 0; i < expectedIds.length; i++) {
+            expectedIds[i] = (int) expected.get(i)[0];
+        }
+        Arrays.sort(ids);
+        Arrays.sort(expectedIds);
+        assertArrayEquals(expectedIds, ids);
+    }
+}
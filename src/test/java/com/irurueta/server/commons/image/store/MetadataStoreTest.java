@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.store;
+
+import com.irurueta.server.commons.image.GPSCoordinates;
+import com.irurueta.server.commons.image.ImageMetadata;
+import com.irurueta.server.commons.image.ImageOrientation;
+import com.irurueta.server.commons.image.ImageReader;
+import com.irurueta.server.commons.image.ImageReaderResult;
+import com.irurueta.server.commons.image.InvalidImageException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MetadataStoreTest {
+
+    private static final String IMAGES_FOLDER =
+            "./src/test/java/com/irurueta/server/commons/image/";
+
+    private static final String[] MAKERS = {"Canon", "NIKON", "Apple"};
+
+    private static final String[] MODELS = {"EOS 5D", "D750", "iPhone 6",
+            "iPhone 7"};
+
+    private static final double ABSOLUTE_ERROR = 1e-6;
+
+    @Test
+    public void testBuild() throws InvalidImageException, IOException {
+        final String[] names = {"carlos1.jpg", "batllo1.jpg", "polo.png",
+                "Svalbard.bmp"};
+        final List<ImageReaderResult> results = new ArrayList<>();
+        for (final String name : names) {
+            results.add(ImageReader.getInstance().readImage(
+                    new File(IMAGES_FOLDER, name)));
+        }
+
+        final MetadataStore.Builder builder = new MetadataStore.Builder();
+        assertEquals(0, builder.getSize());
+        builder.addAll(results);
+        assertEquals(names.length, builder.getSize());
+        final MetadataStore store = builder.build();
+        assertEquals(names.length, store.getSize());
+
+        for (int row = 0; row < names.length; row++) {
+            final ImageReaderResult result = results.get(row);
+            final ImageMetadata metadata = result.getMetadata();
+            assertEquals(metadata.getWidth(),
+                    store.getValue(NumericField.WIDTH, row), 0.0);
+            assertEquals(metadata.getHeight(),
+                    store.getValue(NumericField.HEIGHT, row), 0.0);
+            assertEquals(result.getFileLength(),
+                    store.getValue(NumericField.FILE_LENGTH, row), 0.0);
+            assertEquals(metadata.getMaker(),
+                    store.getString(DictionaryField.MAKER, row));
+            assertEquals(metadata.getModel(),
+                    store.getString(DictionaryField.MODEL, row));
+            assertEquals(result.getContentType(),
+                    store.getString(DictionaryField.CONTENT_TYPE, row));
+            assertEquals(result.getImageFormat().name(),
+                    store.getString(DictionaryField.IMAGE_FORMAT, row));
+
+            final Integer iso = metadata.getISO();
+            assertEquals(iso == null, store.isNull(NumericField.ISO, row));
+            if (iso != null) {
+                assertEquals(iso, store.getValue(NumericField.ISO, row), 0.0);
+            }
+
+            final GPSCoordinates location = metadata.getLocation();
+            assertEquals(location == null,
+                    store.isNull(NumericField.LATITUDE, row));
+            if (location != null) {
+                assertEquals(location.getLatitude(),
+                        store.getValue(NumericField.LATITUDE, row));
+            }
+        }
+
+        // only carlos1.jpg has a location
+        assertEquals(1, store.filterNotNull(NumericField.LATITUDE)
+                .cardinality());
+
+        // Force IllegalArgumentException
+        try {
+            store.getValue(NumericField.WIDTH, names.length);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            store.getCode(DictionaryField.MAKER, -1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testDictionary() {
+        final List<ImageMetadata> metadata = createMetadata(new Random(1),
+                500);
+        final MetadataStore store = build(metadata);
+
+        // dictionaries are sorted and contain distinct values only
+        final String[] makers = store.getDictionary(DictionaryField.MAKER);
+        final String[] expected = Arrays.copyOf(MAKERS, MAKERS.length);
+        Arrays.sort(expected);
+        assertArrayEquals(expected, makers);
+        assertEquals(0, store.getDictionary(DictionaryField.SOFTWARE).length);
+
+        for (int row = 0; row < metadata.size(); row++) {
+            final String maker = metadata.get(row).getMaker();
+            final int code = store.getCode(DictionaryField.MAKER, row);
+            assertEquals(maker, store.getString(DictionaryField.MAKER, row));
+            if (maker == null) {
+                assertEquals(MetadataStore.NULL_CODE, code);
+            } else {
+                assertEquals(maker, makers[code]);
+                assertEquals(code, store.getCode(DictionaryField.MAKER,
+                        maker));
+            }
+            assertNull(store.getString(DictionaryField.SOFTWARE, row));
+            assertNull(store.getString(DictionaryField.CONTENT_TYPE, row));
+        }
+
+        assertEquals(MetadataStore.NULL_CODE,
+                store.getCode(DictionaryField.MAKER, (String) null));
+        assertTrue(store.getCode(DictionaryField.MAKER, "AAA") <
+                MetadataStore.NULL_CODE);
+        assertTrue(store.getCode(DictionaryField.MAKER, "Sony") <
+                MetadataStore.NULL_CODE);
+    }
+
+    @Test
+    public void testFilters() {
+        final List<ImageMetadata> metadata = createMetadata(new Random(2),
+                1000);
+        final MetadataStore store = build(metadata);
+        final int size = metadata.size();
+
+        final RowSet isoRange = store.filterRange(NumericField.ISO, 200.0,
+                800.0);
+        final RowSet hasIso = store.filterNotNull(NumericField.ISO);
+        final RowSet canon = store.filterEquals(DictionaryField.MAKER,
+                "Canon");
+        final RowSet noMaker = store.filterEquals(DictionaryField.MAKER,
+                null);
+        final RowSet hasMaker = store.filterNotNull(DictionaryField.MAKER);
+        final RowSet iphones = store.filterIn(DictionaryField.MODEL,
+                "iPhone 6", "iPhone 7", "missing");
+        final RowSet missing = store.filterEquals(DictionaryField.MAKER,
+                "Sony");
+        for (int row = 0; row < size; row++) {
+            final ImageMetadata m = metadata.get(row);
+            final Integer iso = m.getISO();
+            assertEquals(iso != null && iso >= 200 && iso <= 800,
+                    isoRange.contains(row));
+            assertEquals(iso != null, hasIso.contains(row));
+            assertEquals("Canon".equals(m.getMaker()), canon.contains(row));
+            assertEquals(m.getMaker() == null, noMaker.contains(row));
+            assertEquals(m.getMaker() != null, hasMaker.contains(row));
+            assertEquals(m.getModel() != null &&
+                    m.getModel().startsWith("iPhone"), iphones.contains(row));
+        }
+        assertTrue(missing.isEmpty());
+        assertEquals(size, hasMaker.or(noMaker).cardinality());
+        assertEquals(RowSet.all(size), store.all());
+    }
+
+    @Test
+    public void testAggregates() {
+        final List<ImageMetadata> metadata = createMetadata(new Random(3),
+                1000);
+        final MetadataStore store = build(metadata);
+        final RowSet canon = store.filterEquals(DictionaryField.MAKER,
+                "Canon");
+
+        // statistics over all rows and over a subset
+        for (final RowSet rows : new RowSet[]{null, canon}) {
+            int count = 0;
+            double sum = 0.0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int row = 0; row < metadata.size(); row++) {
+                final Double focalLength = metadata.get(row).getFocalLength();
+                if (focalLength != null &&
+                        (rows == null || rows.contains(row))) {
+                    count++;
+                    sum += focalLength;
+                    min = Math.min(min, focalLength);
+                    max = Math.max(max, focalLength);
+                }
+            }
+            final ColumnStatistics statistics = store.statistics(
+                    NumericField.FOCAL_LENGTH, rows);
+            assertEquals(count, statistics.getCount());
+            assertEquals(sum, statistics.getSum(), ABSOLUTE_ERROR);
+            assertEquals(min, statistics.getMin(), 0.0);
+            assertEquals(max, statistics.getMax(), 0.0);
+            assertEquals(sum / count, statistics.getMean(), ABSOLUTE_ERROR);
+        }
+        assertEquals(store.statistics(NumericField.FOCAL_LENGTH, null)
+                .getCount(), store.statistics(NumericField.FOCAL_LENGTH)
+                .getCount());
+
+        // no values
+        final ColumnStatistics empty = store.statistics(NumericField.ALTITUDE);
+        assertEquals(0, empty.getCount());
+        assertEquals(0.0, empty.getSum(), 0.0);
+        assertTrue(Double.isNaN(empty.getMin()));
+        assertTrue(Double.isNaN(empty.getMax()));
+        assertTrue(Double.isNaN(empty.getMean()));
+
+        // ISO histogram between 0 and 3200 in bins of 400
+        final int[] histogram = store.histogram(NumericField.ISO, 0.0, 3200.0,
+                8, canon);
+        final int[] expectedHistogram = new int[8];
+        for (int row = 0; row < metadata.size(); row++) {
+            final Integer iso = metadata.get(row).getISO();
+            if (iso != null && canon.contains(row)) {
+                expectedHistogram[Math.min(iso / 400, 7)]++;
+            }
+        }
+        assertArrayEquals(expectedHistogram, histogram);
+
+        // counts by model
+        final String[] models = store.getDictionary(DictionaryField.MODEL);
+        final int[] counts = store.countBy(DictionaryField.MODEL, null);
+        final int[] canonCounts = store.countBy(DictionaryField.MODEL, canon);
+        assertEquals(models.length + 1, counts.length);
+        final int[] expectedCounts = new int[models.length + 1];
+        final int[] expectedCanonCounts = new int[models.length + 1];
+        for (int row = 0; row < metadata.size(); row++) {
+            final String model = metadata.get(row).getModel();
+            final int code = model != null ?
+                    Arrays.binarySearch(models, model) : models.length;
+            expectedCounts[code]++;
+            if (canon.contains(row)) {
+                expectedCanonCounts[code]++;
+            }
+        }
+        assertArrayEquals(expectedCounts, counts);
+        assertArrayEquals(expectedCanonCounts, canonCounts);
+
+        final Map<String, Integer> byValue = store.countByValue(
+                DictionaryField.MODEL, null);
+        for (int code = 0; code < models.length; code++) {
+            assertEquals(Integer.valueOf(counts[code]),
+                    byValue.get(models[code]));
+        }
+        assertEquals(Integer.valueOf(counts[models.length]),
+                byValue.get(null));
+
+        // mean ISO by maker
+        final String[] makers = store.getDictionary(DictionaryField.MAKER);
+        final ColumnStatistics[] byMaker = store.statisticsBy(
+                DictionaryField.MAKER, NumericField.ISO, null);
+        assertEquals(makers.length + 1, byMaker.length);
+        for (int code = 0; code <= makers.length; code++) {
+            final RowSet group = code < makers.length ?
+                    store.filterEquals(DictionaryField.MAKER, makers[code]) :
+                    store.filterEquals(DictionaryField.MAKER, null);
+            final ColumnStatistics expected = store.statistics(
+                    NumericField.ISO, group);
+            assertEquals(expected.getCount(), byMaker[code].getCount());
+            assertEquals(expected.getSum(), byMaker[code].getSum(),
+                    ABSOLUTE_ERROR);
+            assertEquals(expected.getMin(), byMaker[code].getMin(), 0.0);
+            assertEquals(expected.getMax(), byMaker[code].getMax(), 0.0);
+        }
+
+        // Force IllegalArgumentException
+        try {
+            store.histogram(NumericField.ISO, 1.0, 1.0, 8, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            store.histogram(NumericField.ISO, 0.0, 1.0, 0, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            store.statistics(NumericField.ISO, RowSet.all(1));
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            store.countBy(DictionaryField.MAKER, RowSet.all(1));
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final MetadataStore store = new MetadataStore.Builder().build();
+        assertEquals(0, store.getSize());
+        assertEquals(0, store.statistics(NumericField.ISO).getCount());
+        assertArrayEquals(new int[]{0}, store.countBy(DictionaryField.MAKER,
+                null));
+        assertTrue(store.filterRange(NumericField.ISO, 0.0, 100.0).isEmpty());
+        assertTrue(store.filterIn(DictionaryField.MAKER, "Canon").isEmpty());
+    }
+
+    private static MetadataStore build(final List<ImageMetadata> metadata) {
+        final MetadataStore.Builder builder = new MetadataStore.Builder();
+        for (final ImageMetadata m : metadata) {
+            builder.add(m);
+        }
+        return builder.build();
+    }
+
+    private static List<ImageMetadata> createMetadata(final Random random,
+                                                      final int size) {
+        final List<ImageMetadata> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final ImageMetadata metadata = new ImageMetadata();
+            metadata.setWidth(100 + random.nextInt(4000));
+            metadata.setHeight(100 + random.nextInt(3000));
+            if (random.nextInt(10) > 0) {
+                metadata.setMaker(MAKERS[random.nextInt(MAKERS.length)]);
+                metadata.setModel(MODELS[random.nextInt(MODELS.length)]);
+            }
+            if (random.nextInt(5) > 0) {
+                metadata.setISO(50 * (1 + random.nextInt(64)));
+            }
+            if (random.nextBoolean()) {
+                metadata.setFocalLength(4.0 + 200.0 * random.nextDouble());
+            }
+            metadata.setOrientation(ImageOrientation.TOP_LEFT);
+            result.add(metadata);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.image.store;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RowSetTest {
+
+    @Test
+    public void testAllAndNone() {
+        final RowSet all = RowSet.all(130);
+        assertEquals(130, all.getSize());
+        assertEquals(130, all.cardinality());
+        assertFalse(all.isEmpty());
+        assertTrue(all.contains(0));
+        assertTrue(all.contains(129));
+
+        final RowSet none = RowSet.none(130);
+        assertEquals(130, none.getSize());
+        assertEquals(0, none.cardinality());
+        assertTrue(none.isEmpty());
+        assertFalse(none.contains(64));
+        assertEquals(RowSet.NONE, none.nextRow(0));
+
+        assertEquals(0, RowSet.all(0).cardinality());
+        assertEquals(64, RowSet.all(64).cardinality());
+
+        // Force IllegalArgumentException
+        try {
+            RowSet.all(-1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            RowSet.none(-1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            all.contains(130);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testOperations() {
+        // multiples of 2 and multiples of 3
+        final int size = 200;
+        final long[] words2 = new long[RowSet.wordCount(size)];
+        final long[] words3 = new long[RowSet.wordCount(size)];
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0) {
+                words2[i >>> 6] |= 1L << i;
+            }
+            if (i % 3 == 0) {
+                words3[i >>> 6] |= 1L << i;
+            }
+        }
+        final RowSet set2 = new RowSet(size, words2);
+        final RowSet set3 = new RowSet(size, words3);
+
+        final RowSet and = set2.and(set3);
+        final RowSet or = set2.or(set3);
+        final RowSet andNot = set2.andNot(set3);
+        final RowSet not = set2.not();
+        for (int i = 0; i < size; i++) {
+            assertEquals(i % 6 == 0, and.contains(i));
+            assertEquals(i % 2 == 0 || i % 3 == 0, or.contains(i));
+            assertEquals(i % 2 == 0 && i % 3 != 0, andNot.contains(i));
+            assertEquals(i % 2 != 0, not.contains(i));
+        }
+        assertEquals(100, not.cardinality());
+        assertEquals(RowSet.all(size), set2.or(not));
+
+        // iteration
+        final int[] rows = and.toArray();
+        assertEquals(and.cardinality(), rows.length);
+        int k = 0;
+        for (int row = and.nextRow(0); row != RowSet.NONE;
+             row = and.nextRow(row + 1)) {
+            assertEquals(rows[k++], row);
+            assertEquals(0, row % 6);
+        }
+        assertEquals(rows.length, k);
+        assertEquals(66, and.nextRow(61));
+        assertEquals(RowSet.NONE, and.nextRow(199));
+        assertEquals(RowSet.NONE, and.nextRow(size));
+
+        // equality
+        assertEquals(and, set3.and(set2));
+        assertEquals(and.hashCode(), set3.and(set2).hashCode());
+        assertNotEquals(and, or);
+        assertNotEquals(RowSet.none(1), RowSet.none(2));
+
+        // Force IllegalArgumentException
+        try {
+            set2.and(RowSet.all(size + 1));
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}